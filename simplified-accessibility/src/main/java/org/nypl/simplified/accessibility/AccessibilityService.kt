@@ -5,6 +5,7 @@ import io.reactivex.disposables.CompositeDisposable
 import org.nypl.simplified.books.book_registry.BookRegistryReadableType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookStatusEvent
+import org.nypl.simplified.books.book_registry.BookStatusEventThrottling
 import org.slf4j.LoggerFactory
 
 /**
@@ -37,7 +38,10 @@ class AccessibilityService private constructor(
 
   private val subscriptions =
     CompositeDisposable(
-      bookRegistry.bookEvents().subscribe(this::onBookEvent)
+      BookStatusEventThrottling.throttleProgress(
+        events = bookRegistry.bookEvents(),
+        intervalMilliseconds = BookRegistryReadableType.PROGRESS_INTERVAL_MILLISECONDS_DEFAULT
+      ).subscribe(this::onBookEvent)
     )
 
   override val spokenFeedbackEnabled: Boolean
@@ -37,6 +37,8 @@ import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.files.DirectoryUtilities
 import org.nypl.simplified.files.FileLocking
 import org.nypl.simplified.files.FileUtilities
+import org.nypl.simplified.json.core.JSONCodecs
+import org.nypl.simplified.metrics.api.Tracing
 import org.nypl.simplified.taskrecorder.api.TaskResult
 import org.slf4j.LoggerFactory
 
@@ -454,7 +456,7 @@ class AccountsDatabase private constructor(
 
       val accounts = ConcurrentSkipListMap<AccountID, Account>()
       val accountsByProvider = ConcurrentSkipListMap<URI, Account>()
-      val objectMapper = ObjectMapper()
+      val objectMapper = JSONCodecs.mapper()
 
       val errors = ArrayList<Exception>()
       if (!directory.exists()) {
@@ -545,18 +547,20 @@ class AccountsDatabase private constructor(
           this.logger.debug("opening account: {}/{}", directory, accountIdName)
 
           val account =
-            this.openOneAccount(
-              accountEvents = accountEvents,
-              accountIdName = accountIdName,
-              accountProviderResolver = accountProviderResolver,
-              bookDatabases = bookDatabases,
-              bookFormatSupport = bookFormatSupport,
-              context = context,
-              credentialsStore = accountCredentials,
-              directory = directory,
-              errors = errors,
-              objectMapper = objectMapper
-            )
+            Tracing.trace("accountOpen", "accounts") {
+              this.openOneAccount(
+                accountEvents = accountEvents,
+                accountIdName = accountIdName,
+                accountProviderResolver = accountProviderResolver,
+                bookDatabases = bookDatabases,
+                bookFormatSupport = bookFormatSupport,
+                context = context,
+                credentialsStore = accountCredentials,
+                directory = directory,
+                errors = errors,
+                objectMapper = objectMapper
+              )
+            }
 
           if (account != null) {
             val existingAccount = accountsByProvider[account.provider.id]
@@ -765,7 +769,8 @@ class AccountsDatabase private constructor(
         FileUtilities.fileWriteUTF8Atomically(
           accountFile,
           accountFileTemp,
-          AccountDescriptionJSON.serializeToString(ObjectMapper(), description)
+          AccountDescriptionJSON.serializeToString(JSONCodecs.mapper(), description),
+          FileUtilities.Durability.DIRECTORY
         )
       }
     }
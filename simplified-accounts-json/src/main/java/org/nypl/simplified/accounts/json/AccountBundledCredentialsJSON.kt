@@ -7,6 +7,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode
 import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
 import org.nypl.simplified.accounts.api.AccountBundledCredentialsType
 import org.nypl.simplified.accounts.json.AccountAuthenticationCredentialsJSON.serializeToJSON
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.json.core.JSONParseException
 import org.nypl.simplified.json.core.JSONParserUtilities
 import java.io.IOException
@@ -121,7 +122,7 @@ object AccountBundledCredentialsJSON {
     mapper: ObjectMapper,
     credentials: AccountBundledCredentialsType
   ): ByteArray {
-    return mapper.writeValueAsBytes(serializeToJSON(mapper, credentials))
+    return JSONCodecs.compactWriter().writeValueAsBytes(serializeToJSON(mapper, credentials))
   }
 
   /**
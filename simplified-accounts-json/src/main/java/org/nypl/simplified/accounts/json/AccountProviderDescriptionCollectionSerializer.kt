@@ -1,11 +1,11 @@
 package org.nypl.simplified.accounts.json
 
-import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.node.ArrayNode
 import com.fasterxml.jackson.databind.node.ObjectNode
 import org.nypl.simplified.accounts.api.AccountProviderDescriptionCollection
 import org.nypl.simplified.accounts.api.AccountProviderDescriptionCollectionSerializerType
 import org.nypl.simplified.accounts.api.AccountProviderDescriptionSerializersType
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.links.json.LinkSerialization
 import java.io.OutputStream
 import java.net.URI
@@ -21,14 +21,14 @@ class AccountProviderDescriptionCollectionSerializer internal constructor(
   private val serializers: AccountProviderDescriptionSerializersType
 ) : AccountProviderDescriptionCollectionSerializerType {
 
-  private val mapper = ObjectMapper()
+  private val mapper = JSONCodecs.mapper()
 
   override fun serialize() {
     val objectNode = this.mapper.createObjectNode()
     objectNode.set<ArrayNode>("catalogs", this.serializeCatalogs())
     objectNode.set<ObjectNode>("metadata", this.serializeMetadata())
     objectNode.set<ArrayNode>("links", this.serializeLinksNode())
-    this.mapper.writerWithDefaultPrettyPrinter().writeValue(this.stream, objectNode)
+    JSONCodecs.prettyWriter().writeValue(this.stream, objectNode)
   }
 
   private fun serializeLinksNode(): ArrayNode {
@@ -1,10 +1,10 @@
 package org.nypl.simplified.accounts.json
 
-import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.node.ArrayNode
 import com.fasterxml.jackson.databind.node.ObjectNode
 import org.nypl.simplified.accounts.api.AccountProviderDescription
 import org.nypl.simplified.accounts.api.AccountProviderDescriptionSerializerType
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.links.json.LinkSerialization
 import java.io.OutputStream
 import java.net.URI
@@ -15,7 +15,7 @@ class AccountProviderDescriptionSerializer internal constructor(
   private val document: AccountProviderDescription
 ) : AccountProviderDescriptionSerializerType {
 
-  private val mapper = ObjectMapper()
+  private val mapper = JSONCodecs.mapper()
 
   override fun serializeToObject(): ObjectNode {
     val metaNode = this.mapper.createObjectNode()
@@ -50,7 +50,7 @@ class AccountProviderDescriptionSerializer internal constructor(
   }
 
   override fun serialize() {
-    this.mapper.writerWithDefaultPrettyPrinter()
+    JSONCodecs.prettyWriter()
       .writeValue(this.stream, this.serializeToObject())
   }
 }
@@ -26,6 +26,7 @@ import org.nypl.simplified.accounts.api.AccountProviderAuthenticationDescription
 import org.nypl.simplified.accounts.api.AccountProviderType
 import org.nypl.simplified.announcements.Announcement
 import org.nypl.simplified.announcements.AnnouncementJSON
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.json.core.JSONParseException
 import org.nypl.simplified.json.core.JSONParserUtilities
 import org.slf4j.LoggerFactory
@@ -54,7 +55,7 @@ object AccountProvidersJSON {
    */
 
   fun serializeToJSON(provider: AccountProviderType): ObjectNode {
-    val mapper = ObjectMapper()
+    val mapper = JSONCodecs.mapper()
     val node = mapper.createObjectNode()
 
     node.put("@version", "20200527")
@@ -541,8 +542,7 @@ object AccountProvidersJSON {
 
   @Throws(IOException::class)
   fun deserializeCollectionFromStream(stream: InputStream): Map<URI, AccountProvider> {
-    val jom = ObjectMapper()
-    val node = this.mapNullToTextNode(jom.readTree(stream))
+    val node = this.mapNullToTextNode(JSONCodecs.treeReader().readTree(stream))
     return this.deserializeCollectionFromJSONArray(JSONParserUtilities.checkArray(null, node))
   }
 
@@ -556,8 +556,7 @@ object AccountProvidersJSON {
 
   @Throws(IOException::class)
   fun deserializeOneFromStream(stream: InputStream): AccountProvider {
-    val jom = ObjectMapper()
-    val node = this.mapNullToTextNode(jom.readTree(stream))
+    val node = this.mapNullToTextNode(JSONCodecs.treeReader().readTree(stream))
     return this.deserializeFromJSON(JSONParserUtilities.checkObject(null, node))
   }
 
@@ -9,7 +9,6 @@ import android.provider.Settings;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.io7m.jfunctional.Option;
 import com.io7m.jfunctional.OptionType;
@@ -33,6 +32,7 @@ import org.nypl.drm.core.AdobeAdeptResourceProviderType;
 import org.nypl.drm.core.DRMException;
 import org.nypl.drm.core.DRMUnsupportedException;
 import org.nypl.simplified.files.DirectoryUtilities;
+import org.nypl.simplified.json.core.JSONCodecs;
 import org.nypl.simplified.json.core.JSONParserUtilities;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -363,8 +363,7 @@ public final class AdobeDRMServices {
     final byte[] r)
     throws DRMUnsupportedException {
     try {
-      final ObjectMapper jom = new ObjectMapper();
-      final JsonNode json = jom.readTree(r);
+      final JsonNode json = JSONCodecs.treeReader().readTree(r);
       final ObjectNode o = JSONParserUtilities.checkObject(null, json);
       final String appid = JSONParserUtilities.getString(o, "appid");
 
@@ -9,6 +9,7 @@ import com.io7m.jfunctional.Some
 import org.joda.time.DateTime
 import org.joda.time.DateTimeZone
 import org.joda.time.format.ISODateTimeFormat
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.json.core.JSONParseException
 import org.nypl.simplified.json.core.JSONParserUtilities
 import org.nypl.simplified.json.core.JSONSerializerUtilities
@@ -260,7 +261,7 @@ object BookmarkJSON {
   ): String {
     val json = this.serializeToJSON(objectMapper, bookmarks)
     val output = ByteArrayOutputStream(1024)
-    val writer = objectMapper.writerWithDefaultPrettyPrinter()
+    val writer = JSONCodecs.prettyWriter()
     writer.writeValue(output, json)
     return output.toString("UTF-8")
   }
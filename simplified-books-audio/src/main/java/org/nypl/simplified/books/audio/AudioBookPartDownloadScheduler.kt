@@ -0,0 +1,514 @@
+package org.nypl.simplified.books.audio
+
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.MoreExecutors
+import com.google.common.util.concurrent.SettableFuture
+import org.librarysimplified.audiobook.api.PlayerDownloadProviderType
+import org.librarysimplified.audiobook.api.PlayerDownloadRequest
+import org.librarysimplified.audiobook.api.PlayerDownloadRequestCredentials
+import org.librarysimplified.http.api.LSHTTPAuthorizationBasic
+import org.librarysimplified.http.api.LSHTTPAuthorizationBearerToken
+import org.librarysimplified.http.api.LSHTTPAuthorizationType
+import org.librarysimplified.http.api.LSHTTPClientType
+import org.librarysimplified.http.api.LSHTTPRequestBuilderType.AllowRedirects.ALLOW_UNSAFE_REDIRECTS
+import org.librarysimplified.http.api.LSHTTPResponseStatus
+import org.slf4j.LoggerFactory
+import java.io.ByteArrayInputStream
+import java.io.Closeable
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.net.URI
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A download provider for audio book parts that downloads at most `parallelism` parts at
+ * any given time.
+ *
+ * Queued parts are ordered by their distance from the part at the current playhead: The
+ * part under the playhead is downloaded first, followed by the parts that come after it,
+ * followed by the parts that precede it. Moving the playhead reorders the queue and, if
+ * necessary, pauses running downloads of distant parts so that the parts around the new
+ * playhead position can start immediately.
+ *
+ * Parts are downloaded to a `.part` file next to the output file and renamed into place on
+ * completion. A download that is paused, cancelled, or interrupted leaves its `.part` file
+ * behind, and the next download of the same part resumes with an HTTP range request if the
+ * server supplied a strong validator for the original response.
+ */
+
+class AudioBookPartDownloadScheduler(
+  private val http: LSHTTPClientType,
+  private val executor: ExecutorService,
+  private val parallelism: Int,
+  private val clock: () -> Long = System::nanoTime
+) : PlayerDownloadProviderType, Closeable {
+
+  init {
+    require(this.parallelism >= 1) {
+      "Parallelism ${this.parallelism} must be >= 1"
+    }
+  }
+
+  private val logger =
+    LoggerFactory.getLogger(AudioBookPartDownloadScheduler::class.java)
+
+  private val lock = Any()
+  private val jobs = mutableMapOf<File, Job>()
+  private val queued = mutableListOf<Job>()
+  private val running = mutableListOf<Job>()
+  private val bytesReceived = AtomicLong(0L)
+
+  private var partOrder: Map<URI, Int> = mapOf()
+  private var playheadPart: Int = 0
+  private var sequence: Int = 0
+  private var closed: Boolean = false
+  private var partsCompleted: Int = 0
+  private var partsFailed: Int = 0
+  private var partsResumed: Int = 0
+  private var activeNanos: Long = 0L
+  private var activeSince: Long = 0L
+
+  private class Job(
+    val request: PlayerDownloadRequest,
+    val sequence: Int,
+    val future: SettableFuture<Unit>
+  ) {
+    @Volatile
+    var preempted: Boolean = false
+  }
+
+  private class PreemptedException : Exception()
+
+  private val comparator: Comparator<Job> =
+    compareBy<Job> { job -> this.rankOf(job) }.thenBy { job -> job.sequence }
+
+  /**
+   * Set the order of the parts of the book. The given list contains the URIs of the parts
+   * in reading order, and requests for URIs that do not appear in the list are downloaded
+   * after all other parts, in the order in which they were requested.
+   */
+
+  fun setPartOrder(uris: List<URI>) {
+    synchronized(this.lock) {
+      this.partOrder = uris.withIndex().associate { (index, uri) -> Pair(uri, index) }
+      this.preemptLocked()
+      this.pumpLocked()
+    }
+  }
+
+  /**
+   * Indicate that the playhead has moved to the part with the given index.
+   */
+
+  fun setPlayheadPart(index: Int) {
+    synchronized(this.lock) {
+      if (index == this.playheadPart) {
+        return
+      }
+      this.logger.debug("playhead moved to part {}", index)
+      this.playheadPart = index
+      this.preemptLocked()
+      this.pumpLocked()
+    }
+  }
+
+  /**
+   * @return A snapshot of the aggregate state of the scheduler
+   */
+
+  fun statistics(): AudioBookPartDownloadStatistics {
+    synchronized(this.lock) {
+      val activeNow =
+        if (this.running.isEmpty()) {
+          0L
+        } else {
+          this.clock() - this.activeSince
+        }
+
+      return AudioBookPartDownloadStatistics(
+        partsQueued = this.queued.size,
+        partsRunning = this.running.size,
+        partsCompleted = this.partsCompleted,
+        partsFailed = this.partsFailed,
+        partsResumed = this.partsResumed,
+        bytesReceived = this.bytesReceived.get(),
+        activeNanos = this.activeNanos + activeNow
+      )
+    }
+  }
+
+  override fun download(request: PlayerDownloadRequest): ListenableFuture<Unit> {
+    synchronized(this.lock) {
+      if (this.closed) {
+        return Futures.immediateFailedFuture(IllegalStateException("Scheduler is closed"))
+      }
+
+      val key = request.outputFile.absoluteFile
+      val existing = this.jobs[key]
+      if (existing != null && !existing.future.isDone) {
+        return existing.future
+      }
+
+      val job = Job(request, this.sequence++, SettableFuture.create())
+      job.future.addListener({ this.onJobFinished(job) }, MoreExecutors.directExecutor())
+      this.jobs[key] = job
+      this.queued.add(job)
+      this.pumpLocked()
+      return job.future
+    }
+  }
+
+  override fun close() {
+    val cancelled =
+      synchronized(this.lock) {
+        this.closed = true
+        this.jobs.values.toList()
+      }
+
+    for (job in cancelled) {
+      job.future.cancel(false)
+    }
+  }
+
+  private fun onJobFinished(job: Job) {
+    synchronized(this.lock) {
+      this.queued.remove(job)
+      val key = job.request.outputFile.absoluteFile
+      if (this.jobs[key] === job) {
+        this.jobs.remove(key)
+      }
+    }
+  }
+
+  /**
+   * The rank of a part: Lower ranks are downloaded first.
+   */
+
+  private fun rankOf(job: Job): Long {
+    val index = this.partOrder[job.request.uri]
+      ?: return RANK_UNKNOWN + job.sequence
+    return if (index >= this.playheadPart) {
+      (index - this.playheadPart).toLong()
+    } else {
+      RANK_BEHIND + (this.playheadPart - index)
+    }
+  }
+
+  /**
+   * Pause any running downloads that are not among the `parallelism` highest priority parts.
+   */
+
+  private fun preemptLocked() {
+    if (this.queued.isEmpty()) {
+      return
+    }
+
+    val wanted =
+      (this.queued + this.running)
+        .sortedWith(this.comparator)
+        .take(this.parallelism)
+        .toSet()
+
+    for (job in this.running) {
+      if (!wanted.contains(job)) {
+        this.logger.debug("pausing download of {}", job.request.uri)
+        job.preempted = true
+      }
+    }
+  }
+
+  private fun pumpLocked() {
+    if (this.closed) {
+      return
+    }
+
+    while (this.running.size < this.parallelism && this.queued.isNotEmpty()) {
+      this.queued.sortWith(this.comparator)
+      val job = this.queued.removeAt(0)
+      if (this.running.isEmpty()) {
+        this.activeSince = this.clock()
+      }
+      job.preempted = false
+      this.running.add(job)
+
+      try {
+        this.executor.execute { this.runJob(job) }
+      } catch (e: RejectedExecutionException) {
+        this.finishRunningLocked(job)
+        this.partsFailed += 1
+        job.future.setException(e)
+      }
+    }
+  }
+
+  private fun finishRunningLocked(job: Job) {
+    this.running.remove(job)
+    if (this.running.isEmpty()) {
+      this.activeNanos += this.clock() - this.activeSince
+    }
+  }
+
+  private fun runJob(job: Job) {
+    var failure: Exception? = null
+    var preempted = false
+
+    try {
+      this.transfer(job)
+    } catch (e: PreemptedException) {
+      preempted = true
+    } catch (e: CancellationException) {
+      this.logger.debug("cancelled download of {}", job.request.uri)
+    } catch (e: Exception) {
+      this.logger.error("failed to download {}: ", job.request.uri, e)
+      failure = e
+    }
+
+    synchronized(this.lock) {
+      this.finishRunningLocked(job)
+      when {
+        preempted && !job.future.isDone && !this.closed ->
+          this.queued.add(job)
+        job.future.isDone ->
+          Unit
+        failure != null ->
+          this.partsFailed += 1
+        else ->
+          this.partsCompleted += 1
+      }
+      this.pumpLocked()
+    }
+
+    if (!preempted) {
+      if (failure != null) {
+        job.future.setException(failure)
+      } else {
+        job.future.set(Unit)
+        val statistics = this.statistics()
+        this.logger.debug(
+          "downloaded {} ({} completed, {} queued, {} bytes, {} bytes/s)",
+          job.request.uri,
+          statistics.partsCompleted,
+          statistics.partsQueued,
+          statistics.bytesReceived,
+          statistics.bytesPerSecond
+        )
+      }
+    }
+  }
+
+  private fun transfer(job: Job) {
+    val outputFile = job.request.outputFile
+    val partialFile = File(outputFile.parentFile, outputFile.name + ".part")
+    val validatorFile = File(outputFile.parentFile, outputFile.name + ".part.validator")
+    outputFile.parentFile?.mkdirs()
+
+    /*
+     * A resumed download may need to be restarted from the beginning if the server no longer
+     * agrees with the local partial file. Restart at most once.
+     */
+
+    for (attempt in 0..1) {
+      if (this.transferOnce(job, partialFile, validatorFile)) {
+        if (!partialFile.renameTo(outputFile)) {
+          throw IOException("Could not rename $partialFile to $outputFile")
+        }
+        validatorFile.delete()
+        return
+      }
+      this.logger.debug("restarting download of {}", job.request.uri)
+      partialFile.delete()
+      validatorFile.delete()
+    }
+    throw IOException("Could not download ${job.request.uri}")
+  }
+
+  /**
+   * @return `true` if the part was transferred, `false` if the download must be restarted
+   */
+
+  private fun transferOnce(
+    job: Job,
+    partialFile: File,
+    validatorFile: File
+  ): Boolean {
+    val validator =
+      if (partialFile.isFile && validatorFile.isFile) {
+        validatorFile.readText().trim().ifEmpty { null }
+      } else {
+        null
+      }
+    val existing =
+      if (validator != null) partialFile.length() else 0L
+
+    val request =
+      this.http.newRequest(job.request.uri)
+        .setAuthorization(this.authorizationOf(job.request.credentials))
+        .allowRedirects(ALLOW_UNSAFE_REDIRECTS)
+        .setRequestModifier { properties ->
+          if (existing > 0L && validator != null) {
+            val headers = sortedMapOf<String, String>()
+            headers.putAll(properties.headers)
+            headers["Range"] = "bytes=$existing-"
+            headers["If-Range"] = validator
+            properties.copy(headers = headers)
+          } else {
+            properties
+          }
+        }
+        .build()
+
+    return request.execute().use { response ->
+      when (val status = response.status) {
+        is LSHTTPResponseStatus.Responded.OK -> {
+          val headers = status.properties.headers
+          val append = existing > 0L && status.properties.status == 206
+          if (append && rangeStartOf(headers) != existing) {
+            return false
+          }
+
+          if (!append) {
+            val newValidator = validatorOf(headers)
+            if (newValidator != null) {
+              validatorFile.writeText(newValidator)
+            } else {
+              validatorFile.delete()
+            }
+          } else {
+            synchronized(this.lock) {
+              this.partsResumed += 1
+            }
+            this.logger.debug("resuming download of {} at {}", job.request.uri, existing)
+          }
+
+          val expected =
+            if (append) {
+              rangeTotalOf(headers)
+            } else {
+              headers["content-length"]?.firstOrNull()?.trim()?.toLongOrNull()
+            }
+
+          this.copy(
+            job = job,
+            input = status.bodyStream ?: ByteArrayInputStream(ByteArray(0)),
+            partialFile = partialFile,
+            start = if (append) existing else 0L,
+            expected = expected
+          )
+          true
+        }
+
+        is LSHTTPResponseStatus.Responded.Error -> {
+          if (existing > 0L && status.properties.status == 416) {
+            false
+          } else {
+            throw IOException(
+              "HTTP request failed: ${status.properties.originalStatus} ${status.properties.message}"
+            )
+          }
+        }
+
+        is LSHTTPResponseStatus.Failed ->
+          throw IOException(status.exception)
+      }
+    }
+  }
+
+  private fun copy(
+    job: Job,
+    input: InputStream,
+    partialFile: File,
+    start: Long,
+    expected: Long?
+  ) {
+    var received = start
+    var lastPercent = -1
+
+    FileOutputStream(partialFile, start > 0L).use { output ->
+      val buffer = ByteArray(BUFFER_SIZE)
+      while (true) {
+        if (job.future.isCancelled) {
+          throw CancellationException()
+        }
+        if (job.preempted) {
+          throw PreemptedException()
+        }
+
+        val r = input.read(buffer)
+        if (r == -1) {
+          break
+        }
+        output.write(buffer, 0, r)
+        received += r
+        this.bytesReceived.addAndGet(r.toLong())
+
+        if (expected != null && expected > 0L) {
+          val percent = ((received * 100L) / expected).toInt()
+          if (percent != lastPercent) {
+            lastPercent = percent
+            job.request.onProgress(percent)
+          }
+        }
+      }
+      output.flush()
+    }
+
+    if (expected != null && received != expected) {
+      throw IOException("Received $received bytes but expected $expected")
+    }
+  }
+
+  private fun authorizationOf(
+    credentials: PlayerDownloadRequestCredentials?
+  ): LSHTTPAuthorizationType? {
+    return when (credentials) {
+      is PlayerDownloadRequestCredentials.Basic ->
+        LSHTTPAuthorizationBasic.ofUsernamePassword(
+          userName = credentials.user,
+          password = credentials.password
+        )
+      is PlayerDownloadRequestCredentials.BearerToken ->
+        LSHTTPAuthorizationBearerToken.ofToken(credentials.token)
+      null ->
+        null
+    }
+  }
+
+  companion object {
+
+    private const val BUFFER_SIZE = 65536
+    private const val RANK_BEHIND = 1_000_000L
+    private const val RANK_UNKNOWN = 2_000_000L
+
+    private val CONTENT_RANGE =
+      Regex("^bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)$")
+
+    /**
+     * Find a validator suitable for use in an `If-Range` header. Weak entity tags cannot be
+     * used for range requests.
+     */
+
+    private fun validatorOf(headers: Map<String, List<String>>): String? {
+      val etag = headers["etag"]?.firstOrNull()?.trim()
+      if (etag != null && !etag.startsWith("W/")) {
+        return etag
+      }
+      return headers["last-modified"]?.firstOrNull()?.trim()
+    }
+
+    private fun rangeStartOf(headers: Map<String, List<String>>): Long? {
+      val value = headers["content-range"]?.firstOrNull()?.trim() ?: return null
+      return CONTENT_RANGE.matchEntire(value)?.groupValues?.get(1)?.toLongOrNull()
+    }
+
+    private fun rangeTotalOf(headers: Map<String, List<String>>): Long? {
+      val value = headers["content-range"]?.firstOrNull()?.trim() ?: return null
+      return CONTENT_RANGE.matchEntire(value)?.groupValues?.get(3)?.toLongOrNull()
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package org.nypl.simplified.books.audio
+
+/**
+ * A snapshot of the aggregate state of an [AudioBookPartDownloadScheduler].
+ */
+
+data class AudioBookPartDownloadStatistics(
+
+  /**
+   * The number of parts waiting to be downloaded.
+   */
+
+  val partsQueued: Int,
+
+  /**
+   * The number of parts currently downloading.
+   */
+
+  val partsRunning: Int,
+
+  /**
+   * The number of parts that have been downloaded successfully.
+   */
+
+  val partsCompleted: Int,
+
+  /**
+   * The number of parts that failed to download.
+   */
+
+  val partsFailed: Int,
+
+  /**
+   * The number of parts that were resumed from a partially downloaded file.
+   */
+
+  val partsResumed: Int,
+
+  /**
+   * The total number of bytes received across all parts.
+   */
+
+  val bytesReceived: Long,
+
+  /**
+   * The total time, in nanoseconds, during which at least one part was downloading.
+   */
+
+  val activeNanos: Long
+) {
+
+  /**
+   * The aggregate throughput across all parts, measured over the time during which at
+   * least one part was downloading.
+   */
+
+  val bytesPerSecond: Long
+    get() =
+      if (this.activeNanos <= 0L) {
+        0L
+      } else {
+        ((this.bytesReceived.toDouble() * 1_000_000_000.0) / this.activeNanos.toDouble()).toLong()
+      }
+}
@@ -1,5 +1,6 @@
 package org.nypl.simplified.books.borrowing
 
+import one.irradia.mime.api.MIMEType
 import org.joda.time.Instant
 import org.librarysimplified.http.api.LSHTTPClientType
 import org.librarysimplified.services.api.ServiceDirectoryType
@@ -9,6 +10,7 @@ import org.nypl.simplified.accounts.api.AccountReadableType
 import org.nypl.simplified.books.api.Book
 import org.nypl.simplified.books.audio.AudioBookManifestStrategiesType
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressCounter
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.borrowing.internal.BorrowErrorCodes
 import org.nypl.simplified.books.borrowing.subtasks.BorrowSubtaskException.BorrowSubtaskCancelled
@@ -139,6 +141,16 @@ interface BorrowContextType {
   @Throws(IOException::class)
   fun temporaryFile(): File
 
+  /**
+   * Return the file that holds a partial download of content of the given type for the
+   * current book. The same file is returned for the same book and content type across tasks
+   * (and across restarts of the application), so that an interrupted download can be resumed
+   * by a later task. The file need not exist.
+   */
+
+  @Throws(IOException::class)
+  fun partialDownloadFile(contentType: MIMEType): File
+
   /**
    * The full OPDS acquisition path that we are currently traversing.
    */
@@ -182,6 +194,14 @@ interface BorrowContextType {
     bytesPerSecond: Long? = null
   )
 
+  /**
+   * The byte counter for the download of the current book. Subtasks that copy content
+   * should update the counter for each chunk received instead of publishing a book status
+   * for each chunk; the counter is sampled and delivered to the user interface separately.
+   */
+
+  fun bookDownloadProgress(): BookDownloadProgressCounter
+
   /**
    * Indicate that downloading the current book failed. Implementations should base the
    * actual resulting book status on the current status of the loan in the book database.
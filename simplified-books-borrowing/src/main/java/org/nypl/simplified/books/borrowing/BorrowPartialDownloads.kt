@@ -0,0 +1,113 @@
+package org.nypl.simplified.books.borrowing
+
+import one.irradia.mime.api.MIMEType
+import org.joda.time.Instant
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookID
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * Functions to locate and delete the partial downloads that borrow tasks keep in the temporary
+ * directory so that interrupted downloads can be resumed.
+ */
+
+object BorrowPartialDownloads {
+
+  /**
+   * The default age after which a partial download is assumed to have been abandoned.
+   */
+
+  val AGE_MAXIMUM_MILLISECONDS_DEFAULT =
+    TimeUnit.DAYS.toMillis(7L)
+
+  private const val SUFFIX = ".partial"
+
+  /**
+   * @return The file that holds a partial download of content of the given type for a book
+   */
+
+  fun file(
+    directory: File,
+    accountID: AccountID,
+    bookID: BookID,
+    contentType: MIMEType
+  ): File {
+    val type = contentType.fullType.replace(Regex("[^A-Za-z0-9]"), "_")
+    return File(directory, "${this.prefixOf(accountID, bookID)}$type$SUFFIX")
+  }
+
+  /**
+   * Delete the partial downloads, of any content type, of the given book.
+   *
+   * @return The number of bytes freed
+   */
+
+  fun deleteForBook(
+    directory: File,
+    accountID: AccountID,
+    bookID: BookID
+  ): Long {
+    val prefix = this.prefixOf(accountID, bookID)
+    return this.deleteMatching(directory) { file -> file.name.startsWith(prefix) }
+  }
+
+  /**
+   * Delete the partial downloads of all of the books of the given account.
+   *
+   * @return The number of bytes freed
+   */
+
+  fun deleteForAccount(
+    directory: File,
+    accountID: AccountID
+  ): Long {
+    val prefix = "${accountID.uuid}-"
+    return this.deleteMatching(directory) { file -> file.name.startsWith(prefix) }
+  }
+
+  /**
+   * Delete the partial downloads that were last modified before the given time. Downloads
+   * that have not been touched for that long are assumed to have been abandoned.
+   *
+   * @return The number of bytes freed
+   */
+
+  fun deleteOlderThan(
+    directory: File,
+    modifiedBefore: Instant
+  ): Long {
+    return this.deleteMatching(directory) { file ->
+      file.lastModified() < modifiedBefore.millis
+    }
+  }
+
+  private fun prefixOf(
+    accountID: AccountID,
+    bookID: BookID
+  ): String =
+    "${accountID.uuid}-${bookID.value()}-"
+
+  /*
+   * The validators of a partial download are stored next to it in files whose names extend
+   * the name of the download, and so are matched along with it.
+   */
+
+  private fun deleteMatching(
+    directory: File,
+    predicate: (File) -> Boolean
+  ): Long {
+    val files = directory.listFiles() ?: return 0L
+    var freed = 0L
+    for (file in files) {
+      if (!file.isFile || !file.name.contains(SUFFIX) || !predicate(file)) {
+        continue
+      }
+      val size = file.length()
+      if (file.delete()) {
+        freed += size
+      }
+    }
+    return freed
+  }
+}
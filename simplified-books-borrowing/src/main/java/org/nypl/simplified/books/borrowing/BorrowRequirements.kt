@@ -6,6 +6,7 @@ import org.librarysimplified.services.api.ServiceDirectoryType
 import org.nypl.drm.core.AdobeAdeptExecutorType
 import org.nypl.drm.core.AxisNowServiceType
 import org.nypl.simplified.books.audio.AudioBookManifestStrategiesType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.borrowing.subtasks.BorrowSubtaskDirectoryType
 import org.nypl.simplified.books.bundled.api.BundledContentResolverType
@@ -28,6 +29,7 @@ data class BorrowRequirements(
   val cacheDirectory: File,
   val clock: () -> Instant,
   val contentResolver: ContentResolverType,
+  val downloadProgress: BookDownloadProgressChannelType,
   val httpClient: LSHTTPClientType,
   val profiles: ProfilesDatabaseType,
   val services: ServiceDirectoryType,
@@ -52,6 +54,7 @@ data class BorrowRequirements(
         cacheDirectory = cacheDirectory,
         clock = clock,
         contentResolver = services.requireService(ContentResolverType::class.java),
+        downloadProgress = services.requireService(BookDownloadProgressChannelType::class.java),
         httpClient = services.requireService(LSHTTPClientType::class.java),
         profiles = services.requireService(ProfilesDatabaseType::class.java),
         services = services,
@@ -1,5 +1,6 @@
 package org.nypl.simplified.books.borrowing
 
+import one.irradia.mime.api.MIMEType
 import org.joda.time.Instant
 import org.librarysimplified.http.api.LSHTTPClientType
 import org.librarysimplified.services.api.ServiceDirectoryType
@@ -12,6 +13,8 @@ import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.api.BookIDs
 import org.nypl.simplified.books.audio.AudioBookManifestStrategiesType
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressCounter
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookWithStatus
@@ -182,6 +185,7 @@ class BorrowTask private constructor(
         bookDatabaseEntry = this.databaseEntry!!,
         bookInitial = book,
         bookRegistry = this.requirements.bookRegistry,
+        bookDownloadProgress = this.requirements.downloadProgress,
         bundledContent = this.requirements.bundledContent,
         cacheDirectory = this.requirements.cacheDirectory,
         cancelled = this.cancelled,
@@ -380,6 +384,7 @@ class BorrowTask private constructor(
 
   private fun publishBookFailure(book: Book) {
     val failure = this.taskRecorder.finishFailure<Unit>()
+    this.requirements.downloadProgress.finish(book.id)
     this.requirements.bookRegistry.update(BookWithStatus(book, BookStatus.FailedLoan(book.id, failure)))
   }
 
@@ -395,6 +400,7 @@ class BorrowTask private constructor(
     override val opdsAcquisitionPath: OPDSAcquisitionPath,
     bookInitial: Book,
     private val bookRegistry: BookRegistryType,
+    private val bookDownloadProgress: BookDownloadProgressChannelType,
     private val logger: Logger,
     private val temporaryDirectory: File,
     var currentOPDSAcquisitionPathElement: OPDSAcquisitionPathElement,
@@ -448,7 +454,13 @@ class BorrowTask private constructor(
       )
     }
 
+    override fun bookDownloadProgress(): BookDownloadProgressCounter =
+      this.bookDownloadProgress.counterFor(this.bookCurrent.id)
+
     override fun bookPublishStatus(status: BookStatus) {
+      if (status !is BookStatus.Downloading) {
+        this.bookDownloadProgress.finish(this.bookCurrent.id)
+      }
       this.bookRegistry.update(BookWithStatus(this.bookDatabaseEntry.book, status))
     }
 
@@ -521,6 +533,12 @@ class BorrowTask private constructor(
       throw IOException("Could not create a temporary file within 100 attempts!")
     }
 
+    override fun partialDownloadFile(contentType: MIMEType): File {
+      this.temporaryDirectory.mkdirs()
+      val book = this.bookCurrent
+      return BorrowPartialDownloads.file(this.temporaryDirectory, book.account, book.id, contentType)
+    }
+
     override fun opdsAcquisitionPathRemaining(): List<OPDSAcquisitionPathElement> {
       return this.currentRemainingOPDSPathElements
     }
@@ -126,7 +126,8 @@ class BorrowCopy private constructor() : BorrowSubtaskType {
           expectedSize = size,
         )
 
-        val perSecond = BorrowUnitsPerSecond(context.clock)
+        val counter = context.bookDownloadProgress()
+        counter.set(consumed, size)
         while (true) {
           val r = input.read(buffer)
           if (r == -1) {
@@ -135,16 +136,15 @@ class BorrowCopy private constructor() : BorrowSubtaskType {
 
           consumed += r.toLong()
           output.write(buffer, 0, r)
-
-          if (perSecond.update(r.toLong())) {
-            context.bookDownloadIsRunning(
-              message = "Copying...",
-              receivedSize = consumed,
-              expectedSize = size,
-            )
-          }
+          counter.add(r.toLong())
         }
         output.flush()
+
+        context.bookDownloadIsRunning(
+          message = "Copying...",
+          receivedSize = consumed,
+          expectedSize = size,
+        )
       }
       context.taskRecorder.currentStepSucceeded("Copied book.")
     }
@@ -21,6 +21,7 @@ object BorrowErrorCodes {
   const val contentFileNotFound = "contentFileNotFound"
   const val httpConnectionFailed = "httpConnectionFailed"
   const val httpContentTypeIncompatible = "httpContentTypeIncompatible"
+  const val httpDownloadCorrupt = "httpDownloadCorrupt"
   const val httpRequestFailed = "httpRequestFailed"
   const val noFormatHandle = "noFormatHandle"
   const val noSubtaskAvailable = "noSubtaskAvailable"
@@ -8,6 +8,7 @@ import org.librarysimplified.http.api.LSHTTPAuthorizationBearerToken
 import org.librarysimplified.http.api.LSHTTPAuthorizationType
 import org.librarysimplified.http.api.LSHTTPRequestBuilderType.AllowRedirects.ALLOW_UNSAFE_REDIRECTS
 import org.librarysimplified.http.api.LSHTTPRequestProperties
+import org.librarysimplified.http.api.LSHTTPResponseStatus
 import org.librarysimplified.http.downloads.LSHTTPDownloadRequest
 import org.librarysimplified.http.downloads.LSHTTPDownloadState
 import org.librarysimplified.http.downloads.LSHTTPDownloadState.DownloadReceiving
@@ -17,7 +18,6 @@ import org.librarysimplified.http.downloads.LSHTTPDownloadState.LSHTTPDownloadRe
 import org.librarysimplified.http.downloads.LSHTTPDownloadState.LSHTTPDownloadResult.DownloadFailed.DownloadFailedExceptionally
 import org.librarysimplified.http.downloads.LSHTTPDownloadState.LSHTTPDownloadResult.DownloadFailed.DownloadFailedServer
 import org.librarysimplified.http.downloads.LSHTTPDownloadState.LSHTTPDownloadResult.DownloadFailed.DownloadFailedUnacceptableMIME
-import org.librarysimplified.http.downloads.LSHTTPDownloads
 import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
 import org.nypl.simplified.accounts.api.AccountLoginState.AccountLoggedIn
 import org.nypl.simplified.accounts.api.AccountLoginState.AccountLoggingIn
@@ -31,7 +31,11 @@ import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle
 import org.nypl.simplified.books.borrowing.BorrowContextType
 import org.nypl.simplified.books.borrowing.subtasks.BorrowSubtaskException
 import org.nypl.simplified.books.borrowing.subtasks.BorrowSubtaskException.BorrowSubtaskFailed
+import java.io.ByteArrayInputStream
 import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
 import java.net.URI
 
 /**
@@ -40,6 +44,11 @@ import java.net.URI
 
 object BorrowHTTP {
 
+  private const val DOWNLOAD_BUFFER_SIZE = 65536
+
+  private val contentRangePattern =
+    Regex("^bytes\\s+(\\d+)-(\\d+)/(\\d+)$")
+
   /**
    * Create a download request for the given URI, downloading content to the given output file.
    * Events will be delivered to the given borrow context.
@@ -142,9 +151,21 @@ object BorrowHTTP {
     result: DownloadFailedServer
   ): BorrowSubtaskFailed {
     val status = result.responseStatus
-    context.taskRecorder.addAttributes(status.properties.problemReport?.toMap() ?: emptyMap())
+    return this.onRequestFailedServer(
+      context = context,
+      problemReport = status.properties.problemReport?.toMap(),
+      statusLine = "${status.properties.originalStatus} ${status.properties.message}"
+    )
+  }
+
+  private fun onRequestFailedServer(
+    context: BorrowContextType,
+    problemReport: Map<String, String>?,
+    statusLine: String
+  ): BorrowSubtaskFailed {
+    context.taskRecorder.addAttributes(problemReport ?: emptyMap())
     context.taskRecorder.currentStepFailed(
-      message = "HTTP request failed: ${status.properties.originalStatus} ${status.properties.message}",
+      message = "HTTP request failed: $statusLine",
       errorCode = BorrowErrorCodes.httpRequestFailed,
       exception = null
     )
@@ -158,45 +179,50 @@ object BorrowHTTP {
   fun onDownloadFailedExceptionally(
     context: BorrowContextType,
     result: DownloadFailedExceptionally
+  ): BorrowSubtaskFailed {
+    return this.onConnectionFailed(context, result.exception)
+  }
+
+  private fun onConnectionFailed(
+    context: BorrowContextType,
+    exception: Throwable
   ): BorrowSubtaskFailed {
     context.taskRecorder.currentStepFailed(
-      message = result.exception.message ?: "Exception raised during connection attempt.",
+      message = exception.message ?: "Exception raised during connection attempt.",
       errorCode = BorrowErrorCodes.httpConnectionFailed,
-      exception = result.exception
+      exception = exception
     )
     return BorrowSubtaskFailed()
   }
 
   /**
-   * A default handler for DownloadFailedUnacceptableMIME that just throws BorrowSubtaskFailed.
+   * A default handler for unacceptable content types that just throws BorrowSubtaskFailed.
    */
 
   fun onDownloadFailedUnacceptableMimeDefault(
     context: BorrowContextType,
-    result: DownloadFailedUnacceptableMIME
+    status: LSHTTPResponseStatus.Responded.OK
   ) {
     throw BorrowSubtaskFailed()
   }
 
+  /*
+   * Requests created by [createDownloadRequest] fetch small files such as licenses, after which
+   * the subtask that made the request usually reports progress of its own (Adobe fulfillment,
+   * for example). The book registry is therefore told once that the fetch is running, and the
+   * download progress counter, which belongs to the book's content download, is left alone.
+   */
+
   private fun onDownloadProgressEvent(
     context: BorrowContextType,
     event: LSHTTPDownloadState
   ) {
     when (event) {
-      is DownloadReceiving -> {
-        context.bookDownloadIsRunning(
-          message = this.downloadingMessage(
-            expectedSize = event.expectedSize,
-            currentSize = event.receivedSize,
-            perSecond = event.bytesPerSecond
-          ),
-          receivedSize = event.receivedSize,
-          expectedSize = event.expectedSize,
-          bytesPerSecond = event.bytesPerSecond
-        )
+      DownloadStarted -> {
+        this.publishProgress(context, expected = null, received = 0L, perSecond = 0L)
       }
 
-      DownloadStarted,
+      is DownloadReceiving,
       DownloadCancelled,
       is DownloadFailedServer,
       is DownloadFailedUnacceptableMIME,
@@ -222,16 +248,22 @@ object BorrowHTTP {
   /**
    * Download the file indicated by the given borrowing context.
    *
+   * The file is downloaded into a partial download file that is specific to the current book
+   * and content type, and that is kept if the download fails or is cancelled. If the server
+   * supplied a validator and a content length for the original response, the next attempt to
+   * download the same book resumes the download with an HTTP range request. The downloaded
+   * file is checked against the declared content length before it is saved.
+   *
    * @param context The borrowing context.
-   * @param onDownloadFailedUnacceptableMIME A handler to be called if the downloaded file has a
-   * content type that is not acceptable according to the borrowing context. If not provided, a
+   * @param onDownloadFailedUnacceptableMIME A handler to be called if the server responds with
+   * a content type that is not acceptable according to the borrowing context. If not provided, a
    * BorrowSubtaskFailed exception is thrown.
    */
 
   fun download(
     context: BorrowContextType,
     onDownloadFailedUnacceptableMIME:
-      (BorrowContextType, DownloadFailedUnacceptableMIME) -> Unit =
+      (BorrowContextType, LSHTTPResponseStatus.Responded.OK) -> Unit =
         this::onDownloadFailedUnacceptableMimeDefault,
     requestModifier:
       ((LSHTTPRequestProperties) -> LSHTTPRequestProperties)? = null
@@ -242,38 +274,249 @@ object BorrowHTTP {
       context.taskRecorder.beginNewStep("Downloading $currentURI...")
       context.taskRecorder.addAttribute("URI", currentURI.toString())
 
-      val temporaryFile = context.temporaryFile()
+      val partial =
+        BorrowPartialDownload.open(
+          context.partialDownloadFile(context.currentAcquisitionPathElement.mimeType)
+        )
+
+      /*
+       * If the server no longer agrees with the partial download, the download is restarted
+       * from the beginning. This happens at most once.
+       */
 
-      try {
-        val downloadRequest =
-          createDownloadRequest(
+      for (attempt in 0..1) {
+        val result =
+          this.transfer(
             context = context,
             target = currentURI,
-            outputFile = temporaryFile,
+            partial = partial,
+            onDownloadFailedUnacceptableMIME = onDownloadFailedUnacceptableMIME,
             requestModifier = requestModifier
           )
 
-        when (val result = LSHTTPDownloads.download(downloadRequest)) {
-          DownloadCancelled ->
-            throw BorrowSubtaskException.BorrowSubtaskCancelled()
-          is DownloadFailedServer ->
-            throw onDownloadFailedServer(context, result)
-          is DownloadFailedUnacceptableMIME ->
-            onDownloadFailedUnacceptableMIME(context, result)
-          is DownloadFailedExceptionally ->
-            throw onDownloadFailedExceptionally(context, result)
-          is DownloadCompletedSuccessfully ->
-            this.saveDownloadedContent(context, temporaryFile)
+        when (result) {
+          TransferResult.COMPLETED -> {
+            this.checkIntegrity(context, partial)
+            this.saveDownloadedContent(context, partial.file)
+            partial.delete()
+            return
+          }
+          TransferResult.UNACCEPTABLE ->
+            return
+          TransferResult.RESTART -> {
+            context.logDebug("server rejected the partial download; restarting")
+            partial.delete()
+          }
         }
-      } finally {
-        temporaryFile.delete()
       }
+
+      context.taskRecorder.currentStepFailed(
+        message = "The server repeatedly rejected the range request for the download.",
+        errorCode = BorrowErrorCodes.httpRequestFailed
+      )
+      throw BorrowSubtaskFailed()
     } catch (e: BorrowSubtaskFailed) {
       context.bookDownloadFailed()
       throw e
     }
   }
 
+  private enum class TransferResult {
+    COMPLETED,
+    RESTART,
+    UNACCEPTABLE
+  }
+
+  private fun transfer(
+    context: BorrowContextType,
+    target: URI,
+    partial: BorrowPartialDownload,
+    onDownloadFailedUnacceptableMIME:
+      (BorrowContextType, LSHTTPResponseStatus.Responded.OK) -> Unit,
+    requestModifier:
+      ((LSHTTPRequestProperties) -> LSHTTPRequestProperties)?
+  ): TransferResult {
+    val offset = partial.resumeOffset()
+    val ifRange = partial.ifRange
+    if (offset > 0L) {
+      context.logDebug("resuming download at {} of {}", offset, partial.expectedLength)
+      context.taskRecorder.addAttribute("Resumed At", offset.toString())
+    }
+
+    val request =
+      context.httpClient.newRequest(target)
+        .setAuthorization(authorizationOf(context.account))
+        .allowRedirects(ALLOW_UNSAFE_REDIRECTS)
+        .setRequestModifier { properties ->
+          val modified = requestModifier?.invoke(properties) ?: properties
+          if (offset > 0L && ifRange != null) {
+            val headers = sortedMapOf<String, String>()
+            headers.putAll(modified.headers)
+            headers["Range"] = "bytes=$offset-"
+            headers["If-Range"] = ifRange
+            modified.copy(headers = headers)
+          } else {
+            modified
+          }
+        }
+        .build()
+
+    return request.execute().use { response ->
+      when (val status = response.status) {
+        is LSHTTPResponseStatus.Failed ->
+          throw this.onConnectionFailed(context, status.exception)
+
+        is LSHTTPResponseStatus.Responded.Error -> {
+          if (offset > 0L && status.properties.status == 416) {
+            TransferResult.RESTART
+          } else {
+            throw this.onRequestFailedServer(
+              context = context,
+              problemReport = status.properties.problemReport?.toMap(),
+              statusLine = "${status.properties.originalStatus} ${status.properties.message}"
+            )
+          }
+        }
+
+        is LSHTTPResponseStatus.Responded.OK -> {
+          if (!this.isMimeTypeAcceptable(context, status.properties.contentType)) {
+            onDownloadFailedUnacceptableMIME(context, status)
+            return TransferResult.UNACCEPTABLE
+          }
+
+          val headers = status.properties.headers
+          val resumed = offset > 0L && status.properties.status == 206
+          if (resumed) {
+            val range = contentRangeOf(headers)
+            if (range == null || range.first != offset || range.second != partial.expectedLength) {
+              return TransferResult.RESTART
+            }
+          } else {
+            partial.begin(
+              entityTag = headers["etag"]?.firstOrNull(),
+              lastModified = headers["last-modified"]?.firstOrNull(),
+              expectedLength = headers["content-length"]?.firstOrNull()?.trim()?.toLongOrNull()
+            )
+          }
+
+          this.receive(
+            context = context,
+            input = status.bodyStream ?: ByteArrayInputStream(ByteArray(0)),
+            partial = partial,
+            start = if (resumed) offset else 0L
+          )
+          TransferResult.COMPLETED
+        }
+      }
+    }
+  }
+
+  private fun receive(
+    context: BorrowContextType,
+    input: InputStream,
+    partial: BorrowPartialDownload,
+    start: Long
+  ) {
+    val expected = partial.expectedLength
+    var received = start
+
+    /*
+     * The book registry is told once that the download is running. Progress for each chunk
+     * only updates the download counter, which is sampled for the user interface at a fixed
+     * rate on a separate thread.
+     */
+
+    val counter = context.bookDownloadProgress()
+    counter.set(received, expected)
+    this.publishProgress(context, expected, received, 0L)
+
+    FileOutputStream(partial.file, start > 0L).use { output ->
+      val buffer = ByteArray(DOWNLOAD_BUFFER_SIZE)
+      while (true) {
+        if (context.isCancelled) {
+          throw BorrowSubtaskException.BorrowSubtaskCancelled()
+        }
+
+        val r =
+          try {
+            input.read(buffer)
+          } catch (e: IOException) {
+            throw this.onConnectionFailed(context, e)
+          }
+        if (r == -1) {
+          break
+        }
+
+        output.write(buffer, 0, r)
+        received += r
+        counter.add(r.toLong())
+      }
+      output.flush()
+    }
+
+    this.publishProgress(context, expected, received, 0L)
+
+    if (expected != null && received < expected) {
+      throw this.onConnectionFailed(
+        context,
+        IOException("The connection was closed after $received of $expected bytes.")
+      )
+    }
+  }
+
+  private fun publishProgress(
+    context: BorrowContextType,
+    expected: Long?,
+    received: Long,
+    perSecond: Long
+  ) {
+    context.bookDownloadIsRunning(
+      message = this.downloadingMessage(
+        expectedSize = expected,
+        currentSize = received,
+        perSecond = perSecond
+      ),
+      receivedSize = received,
+      expectedSize = expected,
+      bytesPerSecond = perSecond
+    )
+  }
+
+  /**
+   * Check that the downloaded file matches the length declared by the server. A file that
+   * fails the check is discarded so that the next attempt starts from the beginning.
+   */
+
+  private fun checkIntegrity(
+    context: BorrowContextType,
+    partial: BorrowPartialDownload
+  ) {
+    val expected = partial.expectedLength ?: return
+    val length = partial.file.length()
+    if (length != expected) {
+      partial.delete()
+      context.taskRecorder.currentStepFailed(
+        message = "The downloaded file is $length bytes long, but the server declared $expected bytes.",
+        errorCode = BorrowErrorCodes.httpDownloadCorrupt
+      )
+      throw BorrowSubtaskFailed()
+    }
+  }
+
+  /**
+   * Parse the start offset and total length from a `Content-Range` header.
+   */
+
+  private fun contentRangeOf(
+    headers: Map<String, List<String>>
+  ): Pair<Long, Long>? {
+    val value = headers["content-range"]?.firstOrNull()?.trim() ?: return null
+    val groups = this.contentRangePattern.matchEntire(value)?.groupValues ?: return null
+    val start = groups[1].toLongOrNull() ?: return null
+    val total = groups[3].toLongOrNull() ?: return null
+    return Pair(start, total)
+  }
+
   private fun saveDownloadedContent(
     context: BorrowContextType,
     temporaryFile: File
@@ -0,0 +1,145 @@
+package org.nypl.simplified.books.borrowing.internal
+
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.Properties
+
+/**
+ * A partially downloaded file, along with the validators that the server supplied when the
+ * download began. The validators are stored in a small properties file next to the download
+ * so that a download interrupted by a network failure, a cancellation, or the death of the
+ * application process can be resumed with an HTTP range request.
+ */
+
+internal class BorrowPartialDownload private constructor(
+  val file: File,
+  private val metaFile: File
+) {
+
+  /**
+   * The strong entity tag of the original response, if any.
+   */
+
+  var entityTag: String? = null
+    private set
+
+  /**
+   * The `Last-Modified` value of the original response, if any.
+   */
+
+  var lastModified: String? = null
+    private set
+
+  /**
+   * The total length of the content, if the server declared it.
+   */
+
+  var expectedLength: Long? = null
+    private set
+
+  /**
+   * The value that should be sent in an `If-Range` header when resuming the download, if the
+   * server supplied a usable validator.
+   */
+
+  val ifRange: String?
+    get() = this.entityTag ?: this.lastModified
+
+  /**
+   * The offset at which the download can be resumed, or `0` if the download must start
+   * from the beginning. A download can only be resumed if the server supplied both a
+   * validator and a content length, and the partial file is shorter than the content.
+   */
+
+  fun resumeOffset(): Long {
+    val expected = this.expectedLength ?: return 0L
+    if (this.ifRange == null) {
+      return 0L
+    }
+    val length = this.file.length()
+    return if (length in 1 until expected) length else 0L
+  }
+
+  /**
+   * Start a new download, discarding any existing data, and record the given validators.
+   */
+
+  @Throws(IOException::class)
+  fun begin(
+    entityTag: String?,
+    lastModified: String?,
+    expectedLength: Long?
+  ) {
+    this.entityTag = entityTag?.takeUnless { tag -> tag.startsWith("W/") }
+    this.lastModified = lastModified
+    this.expectedLength = expectedLength
+
+    this.file.parentFile?.mkdirs()
+    FileOutputStream(this.file, false).use { }
+
+    val properties = Properties()
+    this.entityTag?.let { properties.setProperty(ENTITY_TAG, it) }
+    this.lastModified?.let { properties.setProperty(LAST_MODIFIED, it) }
+    this.expectedLength?.let { properties.setProperty(LENGTH, it.toString()) }
+
+    val metaTemp = File(this.metaFile.parentFile, this.metaFile.name + ".tmp")
+    FileOutputStream(metaTemp).use { stream ->
+      properties.store(stream, null)
+      stream.flush()
+    }
+    if (!metaTemp.renameTo(this.metaFile)) {
+      throw IOException("Could not rename $metaTemp to ${this.metaFile}")
+    }
+  }
+
+  /**
+   * Delete the partial download and its validators.
+   */
+
+  fun delete() {
+    this.file.delete()
+    this.metaFile.delete()
+    this.entityTag = null
+    this.lastModified = null
+    this.expectedLength = null
+  }
+
+  private fun load() {
+    if (!this.metaFile.isFile) {
+      return
+    }
+
+    try {
+      val properties = Properties()
+      FileInputStream(this.metaFile).use(properties::load)
+      this.entityTag = properties.getProperty(ENTITY_TAG)
+      this.lastModified = properties.getProperty(LAST_MODIFIED)
+      this.expectedLength = properties.getProperty(LENGTH)?.toLongOrNull()
+    } catch (e: Exception) {
+      this.delete()
+    }
+  }
+
+  companion object {
+
+    private const val ENTITY_TAG = "etag"
+    private const val LAST_MODIFIED = "lastModified"
+    private const val LENGTH = "length"
+
+    /**
+     * Open the partial download stored in the given file. The file need not exist.
+     */
+
+    fun open(file: File): BorrowPartialDownload {
+      val download =
+        BorrowPartialDownload(
+          file = file,
+          metaFile = File(file.parentFile, file.name + ".meta")
+        )
+      download.load()
+      return download
+    }
+  }
+}
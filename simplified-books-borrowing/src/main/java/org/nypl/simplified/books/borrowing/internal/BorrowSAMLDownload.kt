@@ -3,7 +3,6 @@ package org.nypl.simplified.books.borrowing.internal
 import one.irradia.mime.api.MIMECompatibility
 import one.irradia.mime.api.MIMEType
 import org.librarysimplified.http.api.LSHTTPResponseStatus
-import org.librarysimplified.http.downloads.LSHTTPDownloadState.LSHTTPDownloadResult.DownloadFailed.DownloadFailedUnacceptableMIME
 import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
 import org.nypl.simplified.accounts.api.AccountReadableType
 import org.nypl.simplified.books.borrowing.BorrowContextType
@@ -97,9 +96,8 @@ class BorrowSAMLDownload private constructor() : BorrowSubtaskType {
 
   private fun onDownloadFailedUnacceptableMIME(
     context: BorrowContextType,
-    result: DownloadFailedUnacceptableMIME
+    status: LSHTTPResponseStatus.Responded.OK
   ) {
-    val status = result.responseStatus as LSHTTPResponseStatus.Responded.OK
     val receivedType = status.properties.contentType
 
     if (MIMECompatibility.isCompatibleLax(receivedType, loginPageContentType)) {
@@ -0,0 +1,20 @@
+package org.nypl.simplified.books.controller.api
+
+/**
+ * The networks on which queued book downloads are allowed to run.
+ */
+
+enum class BookDownloadNetworkPolicy {
+
+  /**
+   * Downloads run on any available network, including metered mobile networks.
+   */
+
+  DOWNLOAD_ON_ANY_NETWORK,
+
+  /**
+   * Downloads run only while a Wi-Fi network is available, and wait in the queue otherwise.
+   */
+
+  DOWNLOAD_ON_WIFI_ONLY
+}
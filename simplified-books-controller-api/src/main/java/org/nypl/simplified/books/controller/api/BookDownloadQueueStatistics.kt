@@ -0,0 +1,53 @@
+package org.nypl.simplified.books.controller.api
+
+import org.nypl.simplified.accounts.api.AccountID
+
+/**
+ * Information about the book download queue.
+ */
+
+data class BookDownloadQueueStatistics(
+
+  /**
+   * The number of downloads waiting to start, for each account that has any.
+   */
+
+  val queued: Map<AccountID, Int>,
+
+  /**
+   * The number of downloads currently running.
+   */
+
+  val running: Int,
+
+  /**
+   * `true` if queued downloads are waiting for a network permitted by the current
+   * [BookDownloadNetworkPolicy].
+   */
+
+  val waitingForNetwork: Boolean,
+
+  /**
+   * The number of downloads that have succeeded since the application started.
+   */
+
+  val succeeded: Long,
+
+  /**
+   * The number of downloads that have failed since the application started.
+   */
+
+  val failed: Long,
+
+  /**
+   * The average time taken by the downloads that have finished since the application started.
+   */
+
+  val averageDurationMilliseconds: Long,
+
+  /**
+   * The number of downloads that finished in the last minute.
+   */
+
+  val finishedInLastMinute: Int
+)
@@ -0,0 +1,33 @@
+package org.nypl.simplified.books.controller.api
+
+/**
+ * The limits on the space used by downloaded book content. When a limit is exceeded, the
+ * content of the least recently read books is deleted until the limit is met again. Only the
+ * downloaded content is deleted: the books stay on loan, and keep their bookmarks and reading
+ * positions, and can be downloaded again.
+ */
+
+data class BookStorageQuotas(
+
+  /**
+   * The maximum number of bytes of downloaded content across all accounts.
+   */
+
+  val totalBytes: Long = TOTAL_BYTES_DEFAULT,
+
+  /**
+   * The maximum number of bytes of downloaded content for any one account.
+   */
+
+  val accountBytes: Long = TOTAL_BYTES_DEFAULT
+) {
+
+  companion object {
+
+    /**
+     * The default maximum number of bytes of downloaded content.
+     */
+
+    const val TOTAL_BYTES_DEFAULT = 4L * 1024L * 1024L * 1024L
+  }
+}
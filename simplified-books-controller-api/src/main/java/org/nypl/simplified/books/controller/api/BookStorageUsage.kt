@@ -0,0 +1,49 @@
+package org.nypl.simplified.books.controller.api
+
+import org.nypl.simplified.accounts.api.AccountID
+
+/**
+ * Information about the space used by downloaded book content.
+ */
+
+data class BookStorageUsage(
+
+  /**
+   * The number of bytes of downloaded content held for each account.
+   */
+
+  val accounts: Map<AccountID, Long>,
+
+  /**
+   * The limits on the space used by downloaded content.
+   */
+
+  val quotas: BookStorageQuotas,
+
+  /**
+   * The number of books whose content has been deleted to meet the limits since the
+   * application started.
+   */
+
+  val evictedBooks: Long,
+
+  /**
+   * The number of bytes of content deleted to meet the limits since the application started.
+   */
+
+  val evictedBytes: Long,
+
+  /**
+   * The number of bytes of orphaned temporary files deleted since the application started.
+   */
+
+  val temporaryBytesDeleted: Long
+) {
+
+  /**
+   * The number of bytes of downloaded content held across all accounts.
+   */
+
+  val totalBytes: Long
+    get() = this.accounts.values.sum()
+}
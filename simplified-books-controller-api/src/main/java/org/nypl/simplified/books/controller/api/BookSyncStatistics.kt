@@ -0,0 +1,42 @@
+package org.nypl.simplified.books.controller.api
+
+import org.joda.time.DateTime
+import org.nypl.simplified.accounts.api.AccountID
+
+/**
+ * Information about the most recent book sync of an account.
+ */
+
+data class BookSyncStatistics(
+
+  /**
+   * The account that was synced.
+   */
+
+  val accountID: AccountID,
+
+  /**
+   * The time that the sync finished.
+   */
+
+  val finished: DateTime,
+
+  /**
+   * The time taken by the sync.
+   */
+
+  val durationMilliseconds: Long,
+
+  /**
+   * `true` if the account provider was resolved again as part of the sync, or `false` if
+   * the cached provider was fresh enough to be used as-is.
+   */
+
+  val providerResolved: Boolean,
+
+  /**
+   * `true` if the sync succeeded.
+   */
+
+  val succeeded: Boolean
+)
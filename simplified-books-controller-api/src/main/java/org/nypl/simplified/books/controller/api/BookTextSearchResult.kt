@@ -0,0 +1,42 @@
+package org.nypl.simplified.books.controller.api
+
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.api.BookLocation
+
+/**
+ * A passage of a downloaded book that matched a full-text search.
+ */
+
+data class BookTextSearchResult(
+
+  /**
+   * The account that owns the book.
+   */
+
+  val accountID: AccountID,
+
+  /**
+   * The ID of the book.
+   */
+
+  val bookID: BookID,
+
+  /**
+   * The location of the match, suitable for opening the book in the reader.
+   */
+
+  val location: BookLocation.BookLocationR2,
+
+  /**
+   * The relevance of the match. Results with higher scores are more relevant.
+   */
+
+  val score: Double,
+
+  /**
+   * A short passage of text around the match.
+   */
+
+  val excerpt: String
+)
@@ -14,7 +14,10 @@ import org.nypl.simplified.taskrecorder.api.TaskResult
 interface BooksControllerType {
 
   /**
-   * Attempt to borrow the given book.
+   * Attempt to borrow the given book. The borrow joins the download queue, which runs a limited
+   * number of downloads at a time, alternates between accounts, and is written to storage so that
+   * downloads interrupted by the application being killed are resumed when the profile is next
+   * selected. The returned future completes when the borrow has finished.
    *
    * @param accountID The account that will receive the book
    * @param entry The OPDS feed entry for the book
@@ -49,6 +52,79 @@ interface BooksControllerType {
     bookID: BookID
   )
 
+  /**
+   * Set the networks on which queued downloads are allowed to run.
+   *
+   * @param policy The network policy
+   */
+
+  fun bookDownloadNetworkPolicy(
+    policy: BookDownloadNetworkPolicy
+  )
+
+  /**
+   * @return Information about the book download queue
+   */
+
+  fun bookDownloadQueueStatistics(): BookDownloadQueueStatistics
+
+  /**
+   * Record that the given book has been opened for reading. The time is used to decide which
+   * downloaded books are deleted first when storage limits are exceeded.
+   *
+   * @param accountID The account that owns the book
+   * @param bookID The ID of the book
+   */
+
+  fun bookOpened(
+    accountID: AccountID,
+    bookID: BookID
+  )
+
+  /**
+   * Record that the given book, previously opened with [bookOpened], has been closed. A book
+   * that is open is never deleted to meet storage limits, and the time at which it is closed
+   * counts as the time at which it was last read.
+   *
+   * @param accountID The account that owns the book
+   * @param bookID The ID of the book
+   */
+
+  fun bookClosed(
+    accountID: AccountID,
+    bookID: BookID
+  )
+
+  /**
+   * Set the limits on the space used by downloaded book content, deleting content as
+   * necessary to meet the new limits.
+   *
+   * @param quotas The limits
+   */
+
+  fun bookStorageQuotas(
+    quotas: BookStorageQuotas
+  )
+
+  /**
+   * @return Information about the space used by downloaded book content
+   */
+
+  fun bookStorageUsage(): BookStorageUsage
+
+  /**
+   * Search the text of all downloaded books. Books are indexed in the background after they
+   * are downloaded; books that have not yet been indexed, and books protected by DRM, do not
+   * appear in the results.
+   *
+   * @param query The search terms
+   * @return The matching passages, most relevant first
+   */
+
+  fun bookTextSearch(
+    query: String
+  ): FluentFuture<List<BookTextSearchResult>>
+
   /**
    * Submit a problem report for a book
    *
@@ -64,7 +140,8 @@ interface BooksControllerType {
   ): FluentFuture<TaskResult<Unit>>
 
   /**
-   * Sync all books for the given account.
+   * Sync all books for the given account. Syncs of different accounts may run concurrently,
+   * and a sync requested for an account that is already syncing returns the running sync.
    *
    * @param account The account
    */
@@ -73,6 +150,12 @@ interface BooksControllerType {
     accountID: AccountID
   ): FluentFuture<TaskResult<Unit>>
 
+  /**
+   * @return Information about the most recent book sync of each account synced so far
+   */
+
+  fun booksSyncStatistics(): Map<AccountID, BookSyncStatistics>
+
   /**
    * Revoke the given book.
    *
@@ -1,5 +1,8 @@
 package org.nypl.simplified.books.controller
 
+import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.MoreExecutors
 import org.librarysimplified.http.api.LSHTTPAuthorizationType
 import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP
 import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
@@ -7,6 +10,8 @@ import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.accounts.database.api.AccountType
 import org.nypl.simplified.books.borrowing.internal.BorrowErrorCodes
 import org.nypl.simplified.books.controller.api.BookRevokeExceptionNoCredentials
+import org.nypl.simplified.futures.FluentFutureExtensions.map
+import org.nypl.simplified.futures.FluentFutureExtensions.onAnyError
 import org.nypl.simplified.profiles.api.ProfileID
 import org.nypl.simplified.profiles.api.ProfileNonexistentException
 import org.nypl.simplified.profiles.api.ProfileReadableType
@@ -15,6 +20,8 @@ import org.nypl.simplified.taskrecorder.api.TaskRecorderType
 import org.nypl.simplified.taskrecorder.api.TaskResult
 import org.slf4j.Logger
 import java.util.concurrent.Callable
+import java.util.concurrent.CancellationException
+import java.util.concurrent.Executor
 
 /**
  * A base class for BooksController tasks.
@@ -41,12 +48,19 @@ abstract class AbstractBookTask(
   protected abstract val taskRecorder: TaskRecorderType
 
   /**
-   * The actual task code.
+   * The actual task code. The returned future is expected to complete when the task completes.
+   * Tasks that wait on I/O are expected to perform any work that follows a wait on [executor]
+   * so that no thread is occupied while waiting; other tasks can simply return a future that
+   * has already completed.
    *
-   * Throw a TaskFailedHandled when you already have called taskRecorder.currentStepFailed or
-   * any other exception if don't have specific error information to provide the taskRecorder with.
+   * Throw (or fail the future with) a TaskFailedHandled when you already have called
+   * taskRecorder.currentStepFailed or any other exception if don't have specific error
+   * information to provide the taskRecorder with.
    */
-  protected abstract fun execute(account: AccountType): TaskResult.Success<Unit>
+  protected abstract fun executeAsync(
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<TaskResult.Success<Unit>>
 
   /**
    * Will be called before the task fails when an exception is caught.
@@ -54,26 +68,63 @@ abstract class AbstractBookTask(
   protected abstract fun onFailure(result: TaskResult.Failure<Unit>)
 
   override fun call(): TaskResult<Unit> {
+    return this.callAsync(MoreExecutors.directExecutor()).get()
+  }
+
+  /**
+   * Run the task, performing any work that follows a wait on the given executor. If the
+   * returned future is cancelled, the task fails as if it had raised a [CancellationException].
+   */
+
+  fun callAsync(executor: Executor): FluentFuture<TaskResult<Unit>> {
     this.logger.debug("starting task")
 
-    return try {
+    val execution = try {
       val profile = this.findProfile(profileID)
       val account = this.findAccount(accountID, profile)
-      val result = this.execute(account)
-      this.logger.debug("task succeeded")
-      result
-    } catch (e: TaskFailedHandled) {
-      this.logger.error("task failed with handled exception: ", e.cause)
-      val result = this.taskRecorder.finishFailure<Unit>()
-      this.onFailure(result)
-      result
-    } catch (e: Exception) {
-      this.logger.error("task failed with unhandled exception: ", e)
-      val msg = e.message ?: e.javaClass.name
-      this.taskRecorder.currentStepFailedAppending(msg, BorrowErrorCodes.unexpectedException, e)
-      val result = this.taskRecorder.finishFailure<Unit>()
-      this.onFailure(result)
-      result
+      this.executeAsync(account, executor)
+    } catch (e: Throwable) {
+      FluentFuture.from(Futures.immediateFailedFuture(e))
+    }
+
+    val result =
+      execution
+        .map<TaskResult.Success<Unit>, TaskResult<Unit>> { result ->
+          this.logger.debug("task succeeded")
+          result
+        }
+        .onAnyError({ e -> this.onException(e) }, executor)
+
+    /*
+     * A cancelled future never reaches the error handler above, so the task would otherwise
+     * be left without calling onFailure.
+     */
+
+    result.addListener({
+      if (result.isCancelled) {
+        this.onException(CancellationException("Task cancelled"))
+      }
+    }, executor)
+    return result
+  }
+
+  private fun onException(e: Throwable): TaskResult<Unit> {
+    return when (e) {
+      is TaskFailedHandled -> {
+        this.logger.error("task failed with handled exception: ", e.cause)
+        val result = this.taskRecorder.finishFailure<Unit>()
+        this.onFailure(result)
+        result
+      }
+      is Exception -> {
+        this.logger.error("task failed with unhandled exception: ", e)
+        val msg = e.message ?: e.javaClass.name
+        this.taskRecorder.currentStepFailedAppending(msg, BorrowErrorCodes.unexpectedException, e)
+        val result = this.taskRecorder.finishFailure<Unit>()
+        this.onFailure(result)
+        result
+      }
+      else -> throw e
     }
   }
 
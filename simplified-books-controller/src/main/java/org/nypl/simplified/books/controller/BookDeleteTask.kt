@@ -1,5 +1,6 @@
 package org.nypl.simplified.books.controller
 
+import com.google.common.util.concurrent.FluentFuture
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.accounts.database.api.AccountType
 import org.nypl.simplified.books.api.BookID
@@ -7,6 +8,7 @@ import org.nypl.simplified.books.book_database.api.BookDatabaseException
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookWithStatus
+import org.nypl.simplified.futures.FluentFutureExtensions
 import org.nypl.simplified.profiles.api.ProfileID
 import org.nypl.simplified.profiles.api.ProfilesDatabaseType
 import org.nypl.simplified.taskrecorder.api.TaskRecorder
@@ -14,6 +16,7 @@ import org.nypl.simplified.taskrecorder.api.TaskRecorderType
 import org.nypl.simplified.taskrecorder.api.TaskResult
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
+import java.util.concurrent.Executor
 
 class BookDeleteTask(
   accountID: AccountID,
@@ -29,8 +32,14 @@ class BookDeleteTask(
   override val taskRecorder: TaskRecorderType =
     TaskRecorder.create()
 
+  override fun executeAsync(
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<TaskResult.Success<Unit>> =
+    FluentFutureExtensions.fluentFutureOfValue(this.execute(account))
+
   @Throws(BookDatabaseException::class)
-  override fun execute(account: AccountType): TaskResult.Success<Unit> {
+  private fun execute(account: AccountType): TaskResult.Success<Unit> {
     this.logger.debug("[{}] deleting book", this.bookID.brief())
     this.taskRecorder.beginNewStep("Deleting book...")
 
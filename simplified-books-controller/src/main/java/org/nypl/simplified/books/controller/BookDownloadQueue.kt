@@ -0,0 +1,503 @@
+package org.nypl.simplified.books.controller
+
+import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.MoreExecutors
+import com.google.common.util.concurrent.SettableFuture
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.api.BookIDs
+import org.nypl.simplified.books.book_database.api.BookDatabaseType
+import org.nypl.simplified.books.book_registry.BookRegistryType
+import org.nypl.simplified.books.book_registry.BookStatus
+import org.nypl.simplified.books.book_registry.BookWithStatus
+import org.nypl.simplified.books.borrowing.BorrowRequest
+import org.nypl.simplified.books.borrowing.BorrowTaskType
+import org.nypl.simplified.books.controller.api.BookDownloadNetworkPolicy
+import org.nypl.simplified.books.controller.api.BookDownloadQueueStatistics
+import org.nypl.simplified.futures.FluentFutureExtensions
+import org.nypl.simplified.futures.FluentFutureExtensions.map
+import org.nypl.simplified.networkconnectivity.api.NetworkConnectivityType
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAvailabilityHeld
+import org.nypl.simplified.opds.core.OPDSAvailabilityHeldReady
+import org.nypl.simplified.opds.core.OPDSAvailabilityLoaned
+import org.nypl.simplified.profiles.api.ProfileID
+import org.nypl.simplified.taskrecorder.api.TaskRecorder
+import org.nypl.simplified.taskrecorder.api.TaskResult
+import org.nypl.simplified.threads.NamedThreadPools
+import org.slf4j.LoggerFactory
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import javax.annotation.concurrent.GuardedBy
+
+/**
+ * Runs book borrows and downloads.
+ *
+ * Downloads run concurrently, up to [concurrency] at a time, on threads separate from the
+ * controller's task thread. Waiting downloads are started in turn from each account that has
+ * any, so that a large queue for one account does not hold up the downloads of another. Every
+ * queued download is recorded in the book database of its account until it finishes, so that
+ * downloads interrupted by the process being killed can be [resume]d. Downloads only start
+ * while the network permits them under the current [networkPolicy]; the network is checked
+ * again every [networkRetryMilliseconds] while downloads are waiting for it. [onDownloaded] is
+ * called for each download that succeeds, and [onCancelled] for each download that is cancelled
+ * once it has stopped, so that anything the download left behind can be deleted. A download
+ * cancelled before it starts deletes the database entry that queueing it created, unless the
+ * book has content or a loan or hold.
+ *
+ * The tasks that change a book database while downloads may be running, such as revoking,
+ * deleting, and logging out, are expected to [cancelAndWait] for the downloads of the books
+ * that they change, and syncs are expected to leave alone any book that [isQueued].
+ */
+
+class BookDownloadQueue(
+  private val bookRegistry: BookRegistryType,
+  private val network: NetworkConnectivityType?,
+  private val createTask: (BorrowRequest.Start) -> BorrowTaskType,
+  private val concurrency: Int = DOWNLOAD_CONCURRENCY_DEFAULT,
+  private val networkRetryMilliseconds: Long = NETWORK_RETRY_MILLISECONDS_DEFAULT,
+  private val onDownloaded: (BookID) -> Unit = {},
+  private val onCancelled: (AccountID, BookID) -> Unit = { _, _ -> }
+) {
+
+  companion object {
+
+    /**
+     * The default number of downloads that can run at the same time.
+     */
+
+    const val DOWNLOAD_CONCURRENCY_DEFAULT = 3
+
+    /**
+     * The default time between checks of the network while downloads are waiting for it.
+     */
+
+    val NETWORK_RETRY_MILLISECONDS_DEFAULT =
+      TimeUnit.SECONDS.toMillis(30L)
+  }
+
+  private class Download(
+    val bookID: BookID,
+    val request: BorrowRequest.Start,
+    val database: BookDatabaseType
+  ) {
+    val future: SettableFuture<TaskResult<*>> = SettableFuture.create()
+
+    @Volatile
+    var task: BorrowTaskType? = null
+
+    @Volatile
+    var cancelled = false
+  }
+
+  private val logger =
+    LoggerFactory.getLogger(BookDownloadQueue::class.java)
+
+  private val downloadExecutor =
+    NamedThreadPools.namedDaemonThreadPool("simplified-books-download", this.concurrency)
+
+  private val networkRetryExecutor: ScheduledExecutorService =
+    Executors.newSingleThreadScheduledExecutor { runnable ->
+      val thread = Thread(runnable, "simplified-books-download-network")
+      thread.isDaemon = true
+      thread
+    }
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private val downloads = HashMap<BookID, Download>()
+
+  /**
+   * The waiting downloads of each account. The account at the head of the map is the next
+   * to start a download, after which it moves to the tail.
+   */
+
+  @GuardedBy("lock")
+  private val waiting = LinkedHashMap<AccountID, ArrayDeque<Download>>()
+
+  @GuardedBy("lock")
+  private var running = 0
+
+  @GuardedBy("lock")
+  private var waitingForNetwork = false
+
+  @GuardedBy("lock")
+  private var networkRetryScheduled = false
+
+  @GuardedBy("lock")
+  private var succeeded = 0L
+
+  @GuardedBy("lock")
+  private var failed = 0L
+
+  @GuardedBy("lock")
+  private var durationTotalMilliseconds = 0L
+
+  @GuardedBy("lock")
+  private val finishTimes = ArrayDeque<Long>()
+
+  /**
+   * The networks on which downloads are allowed to start.
+   */
+
+  @Volatile
+  var networkPolicy: BookDownloadNetworkPolicy =
+    BookDownloadNetworkPolicy.DOWNLOAD_ON_ANY_NETWORK
+    set(value) {
+      field = value
+      this.startWaiting()
+    }
+
+  /**
+   * Queue a download of the given book. If the book is already queued, the future of the
+   * existing download is returned.
+   */
+
+  fun enqueue(
+    profileID: ProfileID,
+    accountID: AccountID,
+    database: BookDatabaseType,
+    entry: OPDSAcquisitionFeedEntry
+  ): FluentFuture<TaskResult<*>> {
+    val bookID = BookIDs.newFromOPDSEntry(entry)
+    synchronized(this.lock) {
+      val existing = this.downloads[bookID]
+      if (existing != null) {
+        this.logger.debug("[{}]: download already queued", bookID.brief())
+        return FluentFuture.from(existing.future)
+      }
+    }
+
+    /*
+     * The book database entry holds the OPDS entry from which a resumed download will start.
+     * If the entry can't be written, the download runs anyway without being recorded, and
+     * the borrow task reports the database failure.
+     */
+
+    try {
+      val databaseEntry = database.createOrUpdate(bookID, entry)
+      database.downloadQueued(bookID)
+      this.bookRegistry.update(
+        BookWithStatus(databaseEntry.book, BookStatus.RequestingDownload(bookID))
+      )
+    } catch (e: Exception) {
+      this.logger.error("[{}]: could not record queued download: ", bookID.brief(), e)
+    }
+
+    return this.admit(
+      Download(bookID, BorrowRequest.Start(accountID, profileID, entry), database)
+    )
+  }
+
+  /**
+   * Queue the downloads recorded in the given book database that have not finished, such as
+   * those interrupted by the process being killed.
+   */
+
+  fun resume(
+    profileID: ProfileID,
+    accountID: AccountID,
+    database: BookDatabaseType
+  ) {
+    for (bookID in database.downloadsQueued()) {
+      try {
+        val book = database.entry(bookID).book
+        this.logger.debug("[{}]: resuming download", bookID.brief())
+        this.bookRegistry.update(BookWithStatus(book, BookStatus.RequestingDownload(bookID)))
+        this.admit(
+          Download(bookID, BorrowRequest.Start(accountID, profileID, book.entry), database)
+        )
+      } catch (e: Exception) {
+        this.logger.error("[{}]: could not resume download: ", bookID.brief(), e)
+        this.finishRecord(bookID, database)
+      }
+    }
+  }
+
+  /**
+   * Cancel the download of the given book. A download that has not yet started is removed
+   * from the queue; a running download is asked to stop.
+   */
+
+  fun cancel(bookID: BookID) {
+    val download = synchronized(this.lock) {
+      val download = this.downloads[bookID] ?: return
+      val accountID = download.request.accountId
+      val queue = this.waiting[accountID]
+      if (queue == null || !queue.remove(download)) {
+        download.cancelled = true
+        download.task?.cancel()
+        return
+      }
+      if (queue.isEmpty()) {
+        this.waiting.remove(accountID)
+      }
+      this.downloads.remove(bookID)
+      download
+    }
+
+    this.logger.debug("[{}]: cancelled before starting", bookID.brief())
+    this.finishRecord(bookID, download.database)
+    this.notifyCancelled(download)
+
+    /*
+     * The book database entry was only created so that the download could be resumed. If
+     * the book has neither content nor a loan or hold, nothing was ever borrowed, and the
+     * entry is deleted rather than left behind for a book that isn't on the shelf.
+     */
+
+    try {
+      val databaseEntry = download.database.entry(bookID)
+      val book = databaseEntry.book
+      if (!book.isDownloaded && !this.isLoanedOrHeld(book.entry)) {
+        this.logger.debug("[{}]: deleting the entry of a book never borrowed", bookID.brief())
+        databaseEntry.delete()
+        this.bookRegistry.clearFor(bookID)
+      } else {
+        this.bookRegistry.update(BookWithStatus(book, BookStatus.fromBook(book)))
+      }
+    } catch (e: Exception) {
+      this.logger.error("[{}]: could not restore book status: ", bookID.brief(), e)
+    }
+
+    val recorder = TaskRecorder.create()
+    recorder.beginNewStep("Waiting for the download to start...")
+    recorder.currentStepSucceeded("Download cancelled.")
+    download.future.set(recorder.finishSuccess(Unit))
+  }
+
+  private fun isLoanedOrHeld(entry: OPDSAcquisitionFeedEntry): Boolean {
+    return when (entry.availability) {
+      is OPDSAvailabilityLoaned,
+      is OPDSAvailabilityHeld,
+      is OPDSAvailabilityHeldReady -> true
+      else -> false
+    }
+  }
+
+  /**
+   * Cancel the download of the given book, if any, as [cancel] does.
+   *
+   * @return A future that completes when the download has stopped
+   */
+
+  fun cancelAndWait(bookID: BookID): FluentFuture<Unit> {
+    val download = synchronized(this.lock) {
+      this.downloads[bookID]
+    } ?: return FluentFutureExtensions.fluentFutureOfValue(Unit)
+
+    val stopped = SettableFuture.create<Unit>()
+    download.future.addListener({ stopped.set(Unit) }, MoreExecutors.directExecutor())
+    this.cancel(bookID)
+    return FluentFuture.from(stopped)
+  }
+
+  /**
+   * Cancel the downloads of all of the books of the given account, as [cancel] does.
+   *
+   * @return A future that completes when all of the downloads have stopped
+   */
+
+  fun cancelAndWaitForAccount(accountID: AccountID): FluentFuture<Unit> {
+    val bookIDs = synchronized(this.lock) {
+      this.downloads.values
+        .filter { download -> download.request.accountId == accountID }
+        .map { download -> download.bookID }
+    }
+    return FluentFutureExtensions.fluentFutureOfAll(bookIDs.map(this::cancelAndWait))
+      .map { Unit }
+  }
+
+  /**
+   * @return `true` if a download of the given book is waiting to start or running
+   */
+
+  fun isQueued(bookID: BookID): Boolean =
+    synchronized(this.lock) {
+      this.downloads.containsKey(bookID)
+    }
+
+  private fun admit(download: Download): FluentFuture<TaskResult<*>> {
+    synchronized(this.lock) {
+      val existing = this.downloads.putIfAbsent(download.bookID, download)
+      if (existing != null) {
+        return FluentFuture.from(existing.future)
+      }
+      this.waiting.getOrPut(download.request.accountId) { ArrayDeque() }.addLast(download)
+    }
+    this.startWaiting()
+    return FluentFuture.from(download.future)
+  }
+
+  /**
+   * Start as many waiting downloads as the concurrency limit and network allow.
+   */
+
+  private fun startWaiting() {
+    while (true) {
+      val download = synchronized(this.lock) {
+        if (this.running >= this.concurrency || this.waiting.isEmpty()) {
+          return
+        }
+
+        this.waitingForNetwork = !this.networkPermitsDownloads()
+        if (this.waitingForNetwork) {
+          this.scheduleNetworkRetry()
+          return
+        }
+
+        val accountID = this.waiting.keys.first()
+        val queue = this.waiting.remove(accountID)!!
+        val download = queue.removeFirst()
+        if (queue.isNotEmpty()) {
+          this.waiting[accountID] = queue
+        }
+        ++this.running
+        download
+      }
+      this.downloadExecutor.execute { this.run(download) }
+    }
+  }
+
+  @GuardedBy("lock")
+  private fun networkPermitsDownloads(): Boolean {
+    val network = this.network ?: return true
+    return when (this.networkPolicy) {
+      BookDownloadNetworkPolicy.DOWNLOAD_ON_ANY_NETWORK ->
+        network.isNetworkAvailable
+      BookDownloadNetworkPolicy.DOWNLOAD_ON_WIFI_ONLY ->
+        network.isWifiAvailable
+    }
+  }
+
+  @GuardedBy("lock")
+  private fun scheduleNetworkRetry() {
+    if (this.networkRetryScheduled) {
+      return
+    }
+    this.logger.debug("waiting for the network")
+    this.networkRetryScheduled = true
+    this.networkRetryExecutor.schedule(
+      {
+        synchronized(this.lock) {
+          this.networkRetryScheduled = false
+        }
+        this.startWaiting()
+      },
+      this.networkRetryMilliseconds,
+      TimeUnit.MILLISECONDS
+    )
+  }
+
+  private fun run(download: Download) {
+    val timeThen = System.nanoTime()
+    var result: TaskResult<*>? = null
+    var failure: Throwable? = null
+
+    try {
+      val task = this.createTask(download.request)
+      download.task = task
+      if (download.cancelled) {
+        task.cancel()
+      }
+      result = task.execute()
+    } catch (e: Throwable) {
+      this.logger.error("[{}]: download failed: ", download.bookID.brief(), e)
+      failure = e
+    }
+
+    this.finishRecord(download.bookID, download.database)
+    this.finish(download, timeThen, result is TaskResult.Success)
+    if (download.cancelled) {
+      this.notifyCancelled(download)
+    }
+
+    if (result is TaskResult.Success) {
+      try {
+        this.onDownloaded(download.bookID)
+      } catch (e: Exception) {
+        this.logger.error("[{}]: download listener failed: ", download.bookID.brief(), e)
+      }
+    }
+
+    if (failure != null) {
+      download.future.setException(failure)
+    } else {
+      download.future.set(result)
+    }
+    this.startWaiting()
+  }
+
+  private fun notifyCancelled(download: Download) {
+    try {
+      this.onCancelled(download.request.accountId, download.bookID)
+    } catch (e: Exception) {
+      this.logger.error("[{}]: cancellation listener failed: ", download.bookID.brief(), e)
+    }
+  }
+
+  private fun finishRecord(
+    bookID: BookID,
+    database: BookDatabaseType
+  ) {
+    try {
+      database.downloadFinished(bookID)
+    } catch (e: Exception) {
+      this.logger.error("[{}]: could not record finished download: ", bookID.brief(), e)
+    }
+  }
+
+  private fun finish(
+    download: Download,
+    timeThen: Long,
+    succeeded: Boolean
+  ) {
+    val timeNow = System.nanoTime()
+    val duration = TimeUnit.NANOSECONDS.toMillis(timeNow - timeThen)
+    this.logger.debug("[{}]: download took {}ms", download.bookID.brief(), duration)
+
+    synchronized(this.lock) {
+      --this.running
+      this.downloads.remove(download.bookID)
+      if (succeeded) {
+        ++this.succeeded
+      } else {
+        ++this.failed
+      }
+      this.durationTotalMilliseconds += duration
+      this.finishTimes.addLast(timeNow)
+      this.trimFinishTimes(timeNow)
+    }
+  }
+
+  @GuardedBy("lock")
+  private fun trimFinishTimes(timeNow: Long) {
+    val minute = TimeUnit.MINUTES.toNanos(1L)
+    while (this.finishTimes.isNotEmpty() && timeNow - this.finishTimes.first() > minute) {
+      this.finishTimes.removeFirst()
+    }
+  }
+
+  /**
+   * @return Information about the queue
+   */
+
+  fun statistics(): BookDownloadQueueStatistics {
+    synchronized(this.lock) {
+      this.trimFinishTimes(System.nanoTime())
+      val finished = this.succeeded + this.failed
+      return BookDownloadQueueStatistics(
+        queued = this.waiting.mapValues { entry -> entry.value.size },
+        running = this.running,
+        waitingForNetwork = this.waitingForNetwork && this.waiting.isNotEmpty(),
+        succeeded = this.succeeded,
+        failed = this.failed,
+        averageDurationMilliseconds =
+          if (finished == 0L) 0L else this.durationTotalMilliseconds / finished,
+        finishedInLastMinute = this.finishTimes.size
+      )
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package org.nypl.simplified.books.controller
 
+import com.google.common.util.concurrent.FluentFuture
 import com.io7m.jfunctional.Some
 import com.io7m.junreachable.UnreachableCodeException
 import org.joda.time.DateTime
@@ -28,10 +29,16 @@ import org.nypl.simplified.feeds.api.Feed
 import org.nypl.simplified.feeds.api.FeedEntry.FeedEntryCorrupt
 import org.nypl.simplified.feeds.api.FeedEntry.FeedEntryOPDS
 import org.nypl.simplified.feeds.api.FeedHTTPTransportException
+import org.nypl.simplified.feeds.api.FeedLoaderResult
 import org.nypl.simplified.feeds.api.FeedLoaderResult.FeedLoaderFailure.FeedLoaderFailedAuthentication
 import org.nypl.simplified.feeds.api.FeedLoaderResult.FeedLoaderFailure.FeedLoaderFailedGeneral
 import org.nypl.simplified.feeds.api.FeedLoaderResult.FeedLoaderSuccess
 import org.nypl.simplified.feeds.api.FeedLoaderType
+import org.nypl.simplified.futures.FluentFutureExtensions
+import org.nypl.simplified.futures.FluentFutureExtensions.flatMap
+import org.nypl.simplified.futures.FluentFutureExtensions.map
+import org.nypl.simplified.futures.FluentFutureExtensions.onAnyError
+import org.nypl.simplified.futures.FluentFutureExtensions.withTimeout
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSAvailabilityHeld
 import org.nypl.simplified.opds.core.OPDSAvailabilityHeldReady
@@ -50,10 +57,19 @@ import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 import java.net.URI
 import java.util.concurrent.CancellationException
-import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
 
+/**
+ * A task that revokes a loan or hold.
+ *
+ * The task waits on the Adobe ACS and on the revocation server without occupying a thread:
+ * each wait is a future, and the work that follows it is performed on the executor passed to
+ * [callAsync]. The controller doesn't start another task for the same book until this one
+ * has completed.
+ */
+
 class BookRevokeTask(
   private val accountID: AccountID,
   profileID: ProfileID,
@@ -76,15 +92,31 @@ class BookRevokeTask(
   override val taskRecorder: TaskRecorderType =
     TaskRecorder.create()
 
-  override fun execute(account: AccountType): TaskResult.Success<Unit> {
+  override fun executeAsync(
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<TaskResult.Success<Unit>> {
     this.debug("revoke")
     this.taskRecorder.beginNewStep(this.revokeStrings.revokeStarted)
     this.publishRequestingRevokeStatus()
     this.setupBookDatabaseEntry(account)
-    this.revokeFormatHandle(account)
-    this.revokeNotifyServer(account)
-    this.revokeNotifyServerDeleteBook()
-    return this.taskRecorder.finishSuccess(Unit)
+
+    /*
+     * Other book tasks for this book are serialized with this one, but a sync may delete the
+     * database entry while the task waits, so the entry is looked up again after each wait.
+     */
+
+    return this.revokeFormatHandle(account, executor)
+      .flatMap({
+        this.setupBookDatabaseEntry(account)
+        this.revokeNotifyServer(account, executor)
+      }, executor)
+      .map({ newEntry ->
+        this.setupBookDatabaseEntry(account)
+        this.revokeNotifyServerSaveNewEntry(newEntry)
+        this.revokeNotifyServerDeleteBook()
+        this.taskRecorder.finishSuccess(Unit)
+      }, executor)
   }
 
   override fun onFailure(result: TaskResult.Failure<Unit>) {
@@ -152,7 +184,10 @@ class BookRevokeTask(
     this.publishBookStatus(BookStatus.Revoked(this.bookID))
   }
 
-  private fun revokeNotifyServer(account: AccountType) {
+  private fun revokeNotifyServer(
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<FeedEntryOPDS> {
     this.debug("notifying server of revocation")
     this.taskRecorder.beginNewStep(this.revokeStrings.revokeServerNotify)
     this.publishRequestingRevokeStatus()
@@ -161,26 +196,30 @@ class BookRevokeTask(
     val availability = feedEntry.availability
     this.debug("availability is {}", availability)
 
-    val newEntry = when (availability) {
+    return when (availability) {
       is OPDSAvailabilityHeldReady -> {
         val uriOpt = availability.revoke
         if (uriOpt is Some<URI>) {
-          this.revokeNotifyServerURI(uriOpt.get(), RevokeType.HOLD, account)
+          this.revokeNotifyServerURI(uriOpt.get(), RevokeType.HOLD, account, executor)
         } else {
           this.debug("no revoke URI, nothing to do")
           this.taskRecorder.currentStepSucceeded(this.revokeStrings.revokeServerNotifyNoURI)
-          this.feedEntryWithAvailability(accountID, feedEntry, OPDSAvailabilityLoanable.get())
+          FluentFutureExtensions.fluentFutureOfValue(
+            this.feedEntryWithAvailability(accountID, feedEntry, OPDSAvailabilityLoanable.get())
+          )
         }
       }
 
       is OPDSAvailabilityHeld -> {
         val uriOpt = availability.revoke
         if (uriOpt is Some<URI>) {
-          this.revokeNotifyServerURI(uriOpt.get(), RevokeType.HOLD, account)
+          this.revokeNotifyServerURI(uriOpt.get(), RevokeType.HOLD, account, executor)
         } else {
           this.debug("no revoke URI, nothing to do")
           this.taskRecorder.currentStepSucceeded(this.revokeStrings.revokeServerNotifyNoURI)
-          this.feedEntryWithAvailability(accountID, feedEntry, OPDSAvailabilityHoldable.get())
+          FluentFutureExtensions.fluentFutureOfValue(
+            this.feedEntryWithAvailability(accountID, feedEntry, OPDSAvailabilityHoldable.get())
+          )
         }
       }
 
@@ -195,11 +234,13 @@ class BookRevokeTask(
       is OPDSAvailabilityLoaned -> {
         val uriOpt = availability.revoke
         if (uriOpt is Some<URI>) {
-          this.revokeNotifyServerURI(uriOpt.get(), RevokeType.LOAN, account)
+          this.revokeNotifyServerURI(uriOpt.get(), RevokeType.LOAN, account, executor)
         } else {
           this.debug("no revoke URI, nothing to do")
           this.taskRecorder.currentStepSucceeded(this.revokeStrings.revokeServerNotifyNoURI)
-          this.feedEntryWithAvailability(accountID, feedEntry, OPDSAvailabilityLoanable.get())
+          FluentFutureExtensions.fluentFutureOfValue(
+            this.feedEntryWithAvailability(accountID, feedEntry, OPDSAvailabilityLoanable.get())
+          )
         }
       }
 
@@ -214,22 +255,20 @@ class BookRevokeTask(
       is OPDSAvailabilityOpenAccess -> {
         val uriOpt = availability.revoke
         if (uriOpt is Some<URI>) {
-          this.revokeNotifyServerURI(uriOpt.get(), RevokeType.LOAN, account)
+          this.revokeNotifyServerURI(uriOpt.get(), RevokeType.LOAN, account, executor)
         } else {
           this.debug("no revoke URI, nothing to do")
           this.taskRecorder.currentStepSucceeded(this.revokeStrings.revokeServerNotifyNoURI)
-          FeedEntryOPDS(accountID, feedEntry)
+          FluentFutureExtensions.fluentFutureOfValue(FeedEntryOPDS(accountID, feedEntry))
         }
       }
 
       is OPDSAvailabilityRevoked ->
-        this.revokeNotifyServerURI(availability.revoke, RevokeType.LOAN, account)
+        this.revokeNotifyServerURI(availability.revoke, RevokeType.LOAN, account, executor)
 
       else ->
         throw UnreachableCodeException()
     }
-
-    this.revokeNotifyServerSaveNewEntry(newEntry)
   }
 
   private fun feedEntryWithAvailability(
@@ -248,18 +287,15 @@ class BookRevokeTask(
   private fun revokeNotifyServerURI(
     targetURI: URI,
     revokeType: RevokeType,
-    account: AccountType
-  ): FeedEntryOPDS {
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<FeedEntryOPDS> {
     this.debug("notifying server of {} revocation via {}", revokeType, targetURI)
     this.taskRecorder.beginNewStep(this.revokeStrings.revokeServerNotifyURI(targetURI))
     this.publishRequestingRevokeStatus()
 
-    val feed =
-      this.revokeNotifyServerURIFeed(targetURI, account)
-    val entry =
-      this.revokeNotifyServerURIProcessFeed(feed)
-
-    return entry
+    return this.revokeNotifyServerURIFeed(targetURI, account, executor)
+      .map({ feed -> this.revokeNotifyServerURIProcessFeed(feed) }, executor)
   }
 
   private fun revokeNotifyServerSaveNewEntry(entry: FeedEntryOPDS) {
@@ -289,7 +325,11 @@ class BookRevokeTask(
    * XXX: Use [FeedLoading.loadSingleEntryFeed]
    */
 
-  private fun revokeNotifyServerURIFeed(targetURI: URI, account: AccountType): Feed {
+  private fun revokeNotifyServerURIFeed(
+    targetURI: URI,
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<Feed> {
     val httpAuth = this.createHttpAuthIfRequired(account)
 
     /*
@@ -298,28 +338,33 @@ class BookRevokeTask(
      * entry seen by an unauthenticated user browsing the catalog right now.
      */
 
-    val feedResult = try {
-      this.feedLoader.fetchURI(
-        account.id,
-        targetURI,
-        httpAuth,
-        "PUT"
-      ).get(this.revokeServerTimeoutDuration.standardSeconds, TimeUnit.SECONDS)
-    } catch (e: TimeoutException) {
+    return this.feedLoader.fetchURI(
+      account.id,
+      targetURI,
+      httpAuth,
+      "PUT"
+    ).withTimeout(this.revokeServerTimeoutDuration.standardSeconds, TimeUnit.SECONDS)
+      .onAnyError({ e -> throw this.revokeNotifyServerURIFeedFailed(e) }, executor)
+      .map({ feedResult -> this.revokeNotifyServerURIFeedResult(feedResult) }, executor)
+  }
+
+  private fun revokeNotifyServerURIFeedFailed(e: Throwable): TaskFailedHandled {
+    if (e is TimeoutException) {
       val message = this.revokeStrings.revokeServerNotifyFeedTimedOut
       this.taskRecorder.currentStepFailed(message, "timedOut", e)
-      throw TaskFailedHandled(e)
-    } catch (e: ExecutionException) {
-      val ex = e.cause!!
-      if (ex is FeedHTTPTransportException) {
-        this.taskRecorder.addAttributesIfPresent(ex.report?.toMap())
-      }
+      return TaskFailedHandled(e)
+    }
 
-      val message = this.revokeStrings.revokeServerNotifyFeedTimedOut
-      this.taskRecorder.currentStepFailed(message, "feedLoaderFailed", ex)
-      throw TaskFailedHandled(ex)
+    if (e is FeedHTTPTransportException) {
+      this.taskRecorder.addAttributesIfPresent(e.report?.toMap())
     }
 
+    val message = this.revokeStrings.revokeServerNotifyFeedTimedOut
+    this.taskRecorder.currentStepFailed(message, "feedLoaderFailed", e)
+    return TaskFailedHandled(e)
+  }
+
+  private fun revokeNotifyServerURIFeedResult(feedResult: FeedLoaderResult): Feed {
     return when (feedResult) {
       is FeedLoaderSuccess -> {
         this.taskRecorder.currentStepSucceeded(this.revokeStrings.revokeServerNotifyFeedOK)
@@ -376,27 +421,38 @@ class BookRevokeTask(
     }
   }
 
-  private fun revokeFormatHandle(account: AccountType) {
+  private fun revokeFormatHandle(
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<Unit> {
     this.debug("revoking via format handle")
     this.taskRecorder.beginNewStep(this.revokeStrings.revokeFormat)
     this.publishRequestingRevokeStatus()
 
     return when (val handle = this.databaseEntry.findPreferredFormatHandle()) {
       is BookDatabaseEntryFormatHandleEPUB ->
-        this.revokeFormatHandleEPUB(handle, account)
-      is BookDatabaseEntryFormatHandlePDF ->
+        this.revokeFormatHandleEPUB(handle, account, executor)
+      is BookDatabaseEntryFormatHandlePDF -> {
         this.revokeFormatHandlePDF(handle)
-      is BookDatabaseEntryFormatHandleAudioBook ->
+        FluentFutureExtensions.fluentFutureOfValue(Unit)
+      }
+      is BookDatabaseEntryFormatHandleAudioBook -> {
         this.revokeFormatHandleAudioBook(handle)
+        FluentFutureExtensions.fluentFutureOfValue(Unit)
+      }
       null -> {
         this.debug("no format handle available, nothing to do!")
         this.taskRecorder.currentStepSucceeded(this.revokeStrings.revokeFormatNothingToDo)
-        Unit
+        FluentFutureExtensions.fluentFutureOfValue(Unit)
       }
     }
   }
 
-  private fun revokeFormatHandleEPUB(handle: BookDatabaseEntryFormatHandleEPUB, account: AccountType) {
+  private fun revokeFormatHandleEPUB(
+    handle: BookDatabaseEntryFormatHandleEPUB,
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<Unit> {
     this.debug("revoking via EPUB format handle")
     this.taskRecorder.beginNewStep(this.revokeStrings.revokeFormatSpecific("EPUB"))
     this.publishRequestingRevokeStatus()
@@ -405,15 +461,17 @@ class BookRevokeTask(
       is BookDRMInformationHandle.ACSHandle -> {
         val adobeRights = drm.info.rights
         if (adobeRights != null) {
-          this.revokeFormatHandleEPUBAdobe(handle, adobeRights.second, account)
+          this.revokeFormatHandleEPUBAdobe(handle, adobeRights.second, account, executor)
         } else {
           this.debug("no Adobe rights, nothing to do!")
+          FluentFutureExtensions.fluentFutureOfValue(Unit)
         }
       }
       is BookDRMInformationHandle.LCPHandle,
       is BookDRMInformationHandle.AxisHandle,
       is BookDRMInformationHandle.NoneHandle -> {
         // Nothing required
+        FluentFutureExtensions.fluentFutureOfValue(Unit)
       }
     }
   }
@@ -421,8 +479,9 @@ class BookRevokeTask(
   private fun revokeFormatHandleEPUBAdobe(
     handle: BookDatabaseEntryFormatHandleEPUB,
     adobeRights: AdobeAdeptLoan,
-    account: AccountType
-  ) {
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<Unit> {
     this.debug("revoking Adobe ACS loan")
     this.taskRecorder.beginNewStep(this.revokeStrings.revokeACSLoan)
     this.publishRequestingRevokeStatus()
@@ -435,7 +494,7 @@ class BookRevokeTask(
       this.debug("loan is not returnable")
       this.taskRecorder.currentStepSucceeded(this.revokeStrings.revokeACSLoanNotReturnable)
       this.deleteAdobeRights(handle)
-      return
+      return FluentFutureExtensions.fluentFutureOfValue(Unit)
     }
 
     /*
@@ -449,11 +508,11 @@ class BookRevokeTask(
       this.debug("DRM is not supported")
       this.taskRecorder.currentStepSucceeded(this.revokeStrings.revokeACSLoanNotSupported)
       this.deleteAdobeRights(handle)
-      return
+      return FluentFutureExtensions.fluentFutureOfValue(Unit)
     }
 
-    this.revokeFormatHandleEPUBAdobeExecute(this.adobeDRM, adobeRights, account)
-    this.deleteAdobeRights(handle)
+    return this.revokeFormatHandleEPUBAdobeExecute(this.adobeDRM, adobeRights, account, executor)
+      .map({ this.deleteAdobeRights(handle) }, executor)
   }
 
   /**
@@ -463,8 +522,9 @@ class BookRevokeTask(
   private fun revokeFormatHandleEPUBAdobeExecute(
     adobeDRM: AdobeAdeptExecutorType,
     adobeRights: AdobeAdeptLoan,
-    account: AccountType
-  ) {
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<Unit> {
     val credentials =
       this.revokeFormatHandleEPUBAdobeWithConnectorGetCredentials(account)
 
@@ -474,35 +534,34 @@ class BookRevokeTask(
     val adeptFuture =
       AdobeDRMExtensions.revoke(adobeDRM, adobeRights, credentials.userID)
 
-    try {
-      adeptFuture.get(this.revokeACSTimeoutDuration.standardSeconds, TimeUnit.SECONDS)
-    } catch (e: TimeoutException) {
-      val message = this.revokeStrings.revokeACSTimedOut
-      this.taskRecorder.currentStepFailed(message, "timedOut", e)
-      throw TaskFailedHandled(e)
-    } catch (e: ExecutionException) {
-      throw when (val cause = e.cause!!) {
-        is CancellationException -> {
-          val message = this.revokeStrings.revokeBookCancelled
-          this.taskRecorder.currentStepFailed(message, "cancelled", cause)
-          TaskFailedHandled(cause)
-        }
-        is AdobeDRMExtensions.AdobeDRMRevokeException -> {
-          val message = this.revokeStrings.revokeBookACSConnectorFailed(cause.errorCode)
-          this.taskRecorder.currentStepFailed(message, "${this.adobeACS}: ${cause.errorCode}", cause)
-          TaskFailedHandled(cause)
-        }
-        else -> {
-          this.taskRecorder.currentStepFailed(this.revokeStrings.revokeBookACSFailed, "unexpectedException", cause)
-          TaskFailedHandled(cause)
-        }
+    return FluentFuture.from(adeptFuture)
+      .withTimeout(this.revokeACSTimeoutDuration.standardSeconds, TimeUnit.SECONDS)
+      .onAnyError({ e -> throw this.revokeFormatHandleEPUBAdobeExecuteFailed(e) }, executor)
+      .map({ this.taskRecorder.currentStepSucceeded(this.revokeStrings.revokeACSExecuteOK) }, executor)
+  }
+
+  private fun revokeFormatHandleEPUBAdobeExecuteFailed(e: Throwable): TaskFailedHandled {
+    return when (e) {
+      is TimeoutException -> {
+        val message = this.revokeStrings.revokeACSTimedOut
+        this.taskRecorder.currentStepFailed(message, "timedOut", e)
+        TaskFailedHandled(e)
+      }
+      is CancellationException -> {
+        val message = this.revokeStrings.revokeBookCancelled
+        this.taskRecorder.currentStepFailed(message, "cancelled", e)
+        TaskFailedHandled(e)
+      }
+      is AdobeDRMExtensions.AdobeDRMRevokeException -> {
+        val message = this.revokeStrings.revokeBookACSConnectorFailed(e.errorCode)
+        this.taskRecorder.currentStepFailed(message, "${this.adobeACS}: ${e.errorCode}", e)
+        TaskFailedHandled(e)
+      }
+      else -> {
+        this.taskRecorder.currentStepFailed(this.revokeStrings.revokeBookACSFailed, "unexpectedException", e)
+        TaskFailedHandled(e)
       }
-    } catch (e: Throwable) {
-      this.taskRecorder.currentStepFailed(this.revokeStrings.revokeBookACSFailed, "unexpectedException", e)
-      throw TaskFailedHandled(e)
     }
-
-    this.taskRecorder.currentStepSucceeded(this.revokeStrings.revokeACSExecuteOK)
   }
 
   /**
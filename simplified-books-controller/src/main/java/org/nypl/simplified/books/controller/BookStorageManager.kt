@@ -0,0 +1,338 @@
+package org.nypl.simplified.books.controller
+
+import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.MoreExecutors
+import org.joda.time.Instant
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookFormat
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle
+import org.nypl.simplified.books.book_database.api.BookDatabaseEntryType
+import org.nypl.simplified.books.book_database.api.BookDatabaseType
+import org.nypl.simplified.books.book_registry.BookRegistryType
+import org.nypl.simplified.books.book_registry.BookStatus
+import org.nypl.simplified.books.book_registry.BookWithStatus
+import org.nypl.simplified.books.borrowing.BorrowPartialDownloads
+import org.nypl.simplified.books.controller.api.BookStorageQuotas
+import org.nypl.simplified.books.controller.api.BookStorageUsage
+import org.nypl.simplified.threads.NamedThreadPools
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.util.concurrent.Callable
+import java.util.concurrent.atomic.AtomicLong
+import javax.annotation.concurrent.GuardedBy
+
+/**
+ * Manages the space used by downloaded book content.
+ *
+ * The manager measures the EPUB and PDF content held in the book databases returned by
+ * [databases], and deletes the content of the least recently read books when the total for an
+ * account, or for all accounts, exceeds the current [quotas]. A book's recency is the time at
+ * which it was last opened or closed or, if it has never been opened, the time at which its
+ * content was downloaded. The most recently used book is never deleted, so content that has
+ * just been downloaded or opened stays available even if it alone exceeds a limit. Nor is a
+ * book that is open in a viewer, however long ago it was opened; viewers call [bookOpened]
+ * when they are created and [bookClosed] when they are destroyed. Audio book parts are held
+ * by the audio engines rather than the book database, and are not managed.
+ *
+ * Partial downloads kept in [temporaryDirectory] so that interrupted downloads can be resumed
+ * are deleted once they have not been modified for [partialDownloadAgeMaximumMilliseconds].
+ *
+ * All work runs on a single background thread in the order in which it was requested.
+ */
+
+class BookStorageManager(
+  private val bookRegistry: BookRegistryType,
+  private val databases: () -> Collection<BookDatabaseType>,
+  quotas: BookStorageQuotas = BookStorageQuotas(),
+  private val temporaryDirectory: File? = null,
+  private val partialDownloadAgeMaximumMilliseconds: Long =
+    BorrowPartialDownloads.AGE_MAXIMUM_MILLISECONDS_DEFAULT
+) {
+
+  private class Content(
+    val accountID: AccountID,
+    val entry: BookDatabaseEntryType,
+    val handle: BookDatabaseEntryFormatHandle,
+    val size: Long,
+    val recency: Long
+  )
+
+  private val logger =
+    LoggerFactory.getLogger(BookStorageManager::class.java)
+
+  private val executor =
+    MoreExecutors.listeningDecorator(
+      NamedThreadPools.namedDaemonThreadPool("simplified-books-storage", 1)
+    )
+
+  private val evictedBooks = AtomicLong(0L)
+  private val evictedBytes = AtomicLong(0L)
+  private val temporaryBytesDeleted = AtomicLong(0L)
+
+  @Volatile
+  private var accountsUsed: Map<AccountID, Long> = mapOf()
+
+  /**
+   * The number of times each book is open. A book can be open in more than one viewer.
+   */
+
+  @GuardedBy("booksOpen")
+  private val booksOpen = HashMap<Pair<AccountID, BookID>, Int>()
+
+  /**
+   * The limits on the space used by downloaded content. Setting new limits deletes content as
+   * necessary to meet them.
+   */
+
+  @Volatile
+  var quotas: BookStorageQuotas = quotas
+    set(value) {
+      field = value
+      this.enforceQuotas()
+    }
+
+  /**
+   * Delete the temporary files left in the book databases and the temporary directory by
+   * operations that never completed, along with any abandoned partial downloads, and then
+   * enforce the quotas.
+   *
+   * @param modifiedBefore The time before which temporary files must have been last modified
+   */
+
+  fun deleteOrphans(modifiedBefore: Instant): FluentFuture<Unit> {
+    return this.submit {
+      for (database in this.databases()) {
+        try {
+          this.temporaryBytesDeleted.addAndGet(database.deleteTemporaryFiles(modifiedBefore))
+        } catch (e: Exception) {
+          this.logger.error("[{}]: could not delete temporary files: ", database.owner().uuid, e)
+        }
+      }
+      this.deleteTemporaryDirectoryOrphans(modifiedBefore)
+      this.enforceQuotasNow()
+    }
+  }
+
+  /**
+   * Measure the downloaded content and delete content as necessary to meet the quotas.
+   */
+
+  fun enforceQuotas(): FluentFuture<Unit> {
+    return this.submit { this.enforceQuotasNow() }
+  }
+
+  /**
+   * Record that the given book was opened for reading at the given time. The book's content
+   * is not deleted until the book is closed with [bookClosed].
+   */
+
+  fun bookOpened(
+    accountID: AccountID,
+    bookID: BookID,
+    time: Instant
+  ): FluentFuture<Unit> {
+    synchronized(this.booksOpen) {
+      val key = Pair(accountID, bookID)
+      this.booksOpen[key] = (this.booksOpen[key] ?: 0) + 1
+    }
+    return this.submit { this.setLastOpened(accountID, bookID, time) }
+  }
+
+  /**
+   * Record that the given book, opened with [bookOpened], was closed at the given time.
+   */
+
+  fun bookClosed(
+    accountID: AccountID,
+    bookID: BookID,
+    time: Instant
+  ): FluentFuture<Unit> {
+    synchronized(this.booksOpen) {
+      val key = Pair(accountID, bookID)
+      val count = this.booksOpen[key] ?: 0
+      if (count <= 1) {
+        this.booksOpen.remove(key)
+      } else {
+        this.booksOpen[key] = count - 1
+      }
+    }
+    return this.submit { this.setLastOpened(accountID, bookID, time) }
+  }
+
+  private fun setLastOpened(
+    accountID: AccountID,
+    bookID: BookID,
+    time: Instant
+  ) {
+    val database = this.databases().find { database -> database.owner() == accountID }
+    if (database != null && database.books().contains(bookID)) {
+      for (handle in database.entry(bookID).formatHandles) {
+        handle.setLastOpened(time)
+      }
+    }
+  }
+
+  private fun isOpen(content: Content): Boolean =
+    synchronized(this.booksOpen) {
+      this.booksOpen.containsKey(Pair(content.accountID, content.entry.book.id))
+    }
+
+  /**
+   * @return The space used by downloaded content as of the most recent measurement
+   */
+
+  fun usage(): BookStorageUsage {
+    return BookStorageUsage(
+      accounts = this.accountsUsed,
+      quotas = this.quotas,
+      evictedBooks = this.evictedBooks.get(),
+      evictedBytes = this.evictedBytes.get(),
+      temporaryBytesDeleted = this.temporaryBytesDeleted.get()
+    )
+  }
+
+  private fun submit(task: () -> Unit): FluentFuture<Unit> {
+    return FluentFuture.from(
+      this.executor.submit(
+        Callable {
+          try {
+            task.invoke()
+          } catch (e: Exception) {
+            this.logger.error("storage task failed: ", e)
+            throw e
+          }
+        }
+      )
+    )
+  }
+
+  private fun deleteTemporaryDirectoryOrphans(modifiedBefore: Instant) {
+    val directory = this.temporaryDirectory ?: return
+    try {
+      val partialBefore =
+        Instant.now().minus(this.partialDownloadAgeMaximumMilliseconds)
+      this.temporaryBytesDeleted.addAndGet(
+        BorrowPartialDownloads.deleteOlderThan(directory, partialBefore)
+      )
+
+      for (file in directory.listFiles() ?: arrayOf()) {
+        if (!file.isFile || !file.name.endsWith(".tmp")) {
+          continue
+        }
+        if (file.lastModified() < modifiedBefore.millis) {
+          val size = file.length()
+          if (file.delete()) {
+            this.temporaryBytesDeleted.addAndGet(size)
+          }
+        }
+      }
+    } catch (e: Exception) {
+      this.logger.error("could not delete temporary files: ", e)
+    }
+  }
+
+  private fun enforceQuotasNow() {
+    val quotas = this.quotas
+    val databases = this.databases()
+    val contents = databases.flatMap(this::measure).sortedBy { content -> content.recency }
+    val remaining = contents.toMutableList()
+
+    for (accountContents in contents.groupBy { content -> content.accountID }.values) {
+      this.evictLeastRecent(accountContents, quotas.accountBytes, remaining)
+    }
+    this.evictLeastRecent(remaining.toList(), quotas.totalBytes, remaining)
+
+    val used = HashMap<AccountID, Long>()
+    for (database in databases) {
+      used[database.owner()] = 0L
+    }
+    for (content in remaining) {
+      used[content.accountID] = (used[content.accountID] ?: 0L) + content.size
+    }
+    this.accountsUsed = used
+  }
+
+  /**
+   * Delete the given content, least recently used first, until its total size is within
+   * [limit]. The most recently used content, and the content of open books, is always kept.
+   */
+
+  private fun evictLeastRecent(
+    contents: List<Content>,
+    limit: Long,
+    remaining: MutableList<Content>
+  ) {
+    var total = contents.sumOf { content -> content.size }
+    for (content in contents.dropLast(1)) {
+      if (total <= limit) {
+        return
+      }
+      if (this.isOpen(content)) {
+        continue
+      }
+      if (this.evict(content)) {
+        total -= content.size
+        remaining.remove(content)
+      }
+    }
+  }
+
+  private fun evict(content: Content): Boolean {
+    val bookID = content.entry.book.id
+    return try {
+      this.logger.debug("[{}]: deleting {} bytes of content", bookID.brief(), content.size)
+      content.handle.deleteBookData()
+      val book = content.entry.book
+      this.bookRegistry.update(BookWithStatus(book, BookStatus.fromBook(book)))
+      this.evictedBooks.incrementAndGet()
+      this.evictedBytes.addAndGet(content.size)
+      true
+    } catch (e: Exception) {
+      this.logger.error("[{}]: could not delete content: ", bookID.brief(), e)
+      false
+    }
+  }
+
+  private fun measure(database: BookDatabaseType): List<Content> {
+    val accountID = database.owner()
+    val contents = mutableListOf<Content>()
+    for (bookID in database.books()) {
+      val entry = try {
+        database.entry(bookID)
+      } catch (e: Exception) {
+        continue
+      }
+
+      for (handle in entry.formatHandles) {
+        val file = when (val format = handle.format) {
+          is BookFormat.BookFormatEPUB -> format.file
+          is BookFormat.BookFormatPDF -> format.file
+          is BookFormat.BookFormatAudioBook -> null
+        }
+        if (file == null || !file.exists()) {
+          continue
+        }
+
+        contents.add(
+          Content(
+            accountID = accountID,
+            entry = entry,
+            handle = handle,
+            size = sizeOf(file),
+            recency = handle.lastOpened?.millis ?: file.lastModified()
+          )
+        )
+      }
+    }
+    return contents
+  }
+
+  private fun sizeOf(file: File): Long {
+    return if (file.isDirectory) {
+      file.walkTopDown().filter { child -> child.isFile }.sumOf { child -> child.length() }
+    } else {
+      file.length()
+    }
+  }
+}
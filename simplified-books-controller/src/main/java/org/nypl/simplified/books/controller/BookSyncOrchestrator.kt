@@ -0,0 +1,133 @@
+package org.nypl.simplified.books.controller
+
+import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.SettableFuture
+import org.joda.time.DateTime
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.controller.api.BookSyncStatistics
+import org.nypl.simplified.taskrecorder.api.TaskResult
+import org.nypl.simplified.threads.NamedThreadPools
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs book syncs.
+ *
+ * Syncs of different accounts run concurrently, up to [concurrency] at a time, on threads
+ * separate from the controller's task thread; only the changes that a sync makes to the book
+ * database are made on the task thread. A sync that fails only affects the account being
+ * synced. At most one sync runs for each account: a sync requested for an account that
+ * is already syncing receives the future of the running sync.
+ */
+
+internal class BookSyncOrchestrator(
+  private val concurrency: Int = SYNC_CONCURRENCY_DEFAULT,
+  providerFreshnessMilliseconds: Long = PROVIDER_FRESHNESS_MILLISECONDS_DEFAULT
+) {
+
+  companion object {
+
+    /**
+     * The default number of accounts that can be synced at the same time.
+     */
+
+    const val SYNC_CONCURRENCY_DEFAULT = 3
+
+    /**
+     * The default time for which a resolved account provider is reused by syncs.
+     */
+
+    val PROVIDER_FRESHNESS_MILLISECONDS_DEFAULT =
+      TimeUnit.MINUTES.toMillis(30L)
+  }
+
+  private val logger =
+    LoggerFactory.getLogger(BookSyncOrchestrator::class.java)
+
+  private val syncExecutor =
+    NamedThreadPools.namedDaemonThreadPool("simplified-books-sync", this.concurrency)
+
+  /**
+   * An executor for requests that syncs issue alongside their main request. Each sync issues
+   * at most one such request at a time, so this executor can never starve a sync.
+   */
+
+  val requestExecutor =
+    NamedThreadPools.namedDaemonThreadPool("simplified-books-sync-request", this.concurrency)
+
+  /**
+   * The freshness of account providers resolved by syncs.
+   */
+
+  val providerFreshness =
+    BookSyncProviderFreshness(providerFreshnessMilliseconds)
+
+  private val running =
+    ConcurrentHashMap<AccountID, FluentFuture<TaskResult<Unit>>>()
+
+  private val statistics =
+    ConcurrentHashMap<AccountID, BookSyncStatistics>()
+
+  /**
+   * Sync the given account using the task created by [createTask], unless the account is
+   * already syncing.
+   */
+
+  fun sync(
+    accountID: AccountID,
+    createTask: () -> BookSyncTask
+  ): FluentFuture<TaskResult<Unit>> {
+    val future = SettableFuture.create<TaskResult<Unit>>()
+    val fluent = FluentFuture.from(future)
+    val existing = this.running.putIfAbsent(accountID, fluent)
+    if (existing != null) {
+      this.logger.debug("[{}]: sync already running", accountID.uuid)
+      return existing
+    }
+
+    this.syncExecutor.execute {
+      val timeThen = System.nanoTime()
+      var task: BookSyncTask? = null
+      try {
+        val created = createTask()
+        task = created
+        val result = created.call()
+        this.record(accountID, timeThen, created.providerResolved, result is TaskResult.Success)
+        this.running.remove(accountID)
+        future.set(result)
+      } catch (e: Throwable) {
+        this.logger.error("[{}]: sync failed: ", accountID.uuid, e)
+        this.record(accountID, timeThen, task?.providerResolved ?: false, false)
+        this.running.remove(accountID)
+        future.setException(e)
+      }
+    }
+    return fluent
+  }
+
+  private fun record(
+    accountID: AccountID,
+    timeThen: Long,
+    providerResolved: Boolean,
+    succeeded: Boolean
+  ) {
+    val duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timeThen)
+    this.logger.debug("[{}]: sync took {}ms", accountID.uuid, duration)
+    this.statistics[accountID] =
+      BookSyncStatistics(
+        accountID = accountID,
+        finished = DateTime.now(),
+        durationMilliseconds = duration,
+        providerResolved = providerResolved,
+        succeeded = succeeded
+      )
+  }
+
+  /**
+   * @return The statistics of the most recent sync of each account
+   */
+
+  fun statistics(): Map<AccountID, BookSyncStatistics> =
+    HashMap(this.statistics)
+}
@@ -0,0 +1,46 @@
+package org.nypl.simplified.books.controller
+
+import org.nypl.simplified.accounts.api.AccountProviderDescription
+import org.nypl.simplified.accounts.api.AccountProviderType
+import java.net.URI
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tracks when account providers were last resolved by book syncs, so that syncs can skip
+ * resolving a provider (and refetching its authentication document) when it was resolved
+ * recently and the registry holds no newer description of it.
+ */
+
+internal class BookSyncProviderFreshness(
+  private val freshnessMilliseconds: Long,
+  private val clock: () -> Long = System::nanoTime
+) {
+
+  private val resolved =
+    ConcurrentHashMap<URI, Long>()
+
+  /**
+   * @return `true` if the given provider can be used without resolving it again
+   */
+
+  fun isFresh(
+    provider: AccountProviderType,
+    description: AccountProviderDescription?
+  ): Boolean {
+    val resolvedAt = this.resolved[provider.id] ?: return false
+    val age = TimeUnit.NANOSECONDS.toMillis(this.clock() - resolvedAt)
+    if (age >= this.freshnessMilliseconds) {
+      return false
+    }
+    return description == null || !description.updated.isAfter(provider.updated)
+  }
+
+  /**
+   * Record that the provider with the given ID was just resolved.
+   */
+
+  fun resolved(id: URI) {
+    this.resolved[id] = this.clock()
+  }
+}
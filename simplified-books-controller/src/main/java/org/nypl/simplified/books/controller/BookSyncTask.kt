@@ -1,5 +1,6 @@
 package org.nypl.simplified.books.controller
 
+import com.google.common.util.concurrent.FluentFuture
 import com.io7m.jfunctional.Some
 import org.librarysimplified.http.api.LSHTTPClientType
 import org.librarysimplified.http.api.LSHTTPResponseStatus
@@ -15,12 +16,15 @@ import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.api.BookIDs
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryType
 import org.nypl.simplified.books.book_database.api.BookDatabaseException
+import org.nypl.simplified.books.book_database.api.BookDatabaseType
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookWithStatus
 import org.nypl.simplified.books.controller.api.BooksControllerType
 import org.nypl.simplified.feeds.api.FeedLoaderType
 import org.nypl.simplified.feeds.api.FeedLoading
+import org.nypl.simplified.futures.FluentFutureExtensions
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSAvailabilityRevoked
 import org.nypl.simplified.opds.core.OPDSFeedParserType
 import org.nypl.simplified.opds.core.OPDSParseException
@@ -30,12 +34,18 @@ import org.nypl.simplified.profiles.api.ProfileID
 import org.nypl.simplified.profiles.api.ProfilesDatabaseType
 import org.nypl.simplified.taskrecorder.api.TaskRecorder
 import org.nypl.simplified.taskrecorder.api.TaskResult
+import org.nypl.simplified.taskrecorder.api.TaskStep
 import org.slf4j.LoggerFactory
 import java.io.ByteArrayInputStream
 import java.io.IOException
 import java.io.InputStream
 import java.net.URI
 import java.util.HashSet
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
 import java.util.concurrent.TimeUnit
 
 class BookSyncTask(
@@ -48,7 +58,11 @@ class BookSyncTask(
   private val feedLoader: FeedLoaderType,
   private val patronParsers: PatronUserProfileParsersType,
   private val http: LSHTTPClientType,
-  private val feedParser: OPDSFeedParserType
+  private val feedParser: OPDSFeedParserType,
+  private val providerFreshness: BookSyncProviderFreshness,
+  private val requestExecutor: ExecutorService,
+  private val databaseExecutor: ExecutorService,
+  private val isDownloading: (BookID) -> Boolean
 ) : AbstractBookTask(accountID, profileID, profiles) {
 
   override val logger =
@@ -57,7 +71,21 @@ class BookSyncTask(
   override val taskRecorder =
     TaskRecorder.create()
 
-  override fun execute(account: AccountType): TaskResult.Success<Unit> {
+  /**
+   * `true` if the account provider was resolved again by this task.
+   */
+
+  @Volatile
+  var providerResolved = false
+    private set
+
+  override fun executeAsync(
+    account: AccountType,
+    executor: Executor
+  ): FluentFuture<TaskResult.Success<Unit>> =
+    FluentFutureExtensions.fluentFutureOfValue(this.execute(account))
+
+  private fun execute(account: AccountType): TaskResult.Success<Unit> {
     this.logger.debug("syncing account {}", account.id)
     this.taskRecorder.beginNewStep("Syncing...")
 
@@ -74,11 +102,33 @@ class BookSyncTask(
       return this.taskRecorder.finishSuccess(Unit)
     }
 
-    this.fetchPatronUserProfile(
-      account = account,
-      credentials = credentials
-    )
+    /*
+     * The patron user profile is fetched alongside the loans feed; neither request depends
+     * on the result of the other.
+     */
 
+    val patronProfile =
+      this.requestExecutor.submit(
+        Callable {
+          this.fetchPatronUserProfile(
+            account = account,
+            credentials = credentials
+          )
+        }
+      )
+
+    try {
+      return this.fetchLoans(account, provider, credentials)
+    } finally {
+      this.awaitPatronUserProfile(patronProfile)
+    }
+  }
+
+  private fun fetchLoans(
+    account: AccountType,
+    provider: AccountProviderType,
+    credentials: AccountAuthenticationCredentials
+  ): TaskResult.Success<Unit> {
     val loansURI = provider.loansURI
     if (loansURI == null) {
       this.logger.debug("no loans URI, aborting!")
@@ -117,14 +167,25 @@ class BookSyncTask(
     }
   }
 
+  private fun awaitPatronUserProfile(patronProfile: Future<List<TaskStep>>) {
+    try {
+      this.taskRecorder.addAll(patronProfile.get())
+    } catch (e: Exception) {
+      this.logger.error("patron user profile: ", e)
+    }
+  }
+
   private fun fetchPatronUserProfile(
     account: AccountType,
     credentials: AccountAuthenticationCredentials
-  ) {
+  ): List<TaskStep> {
+    val taskRecorder = TaskRecorder.create()
+    taskRecorder.beginNewStep("Fetching patron user profile...")
+
     try {
       val profile =
         PatronUserProfiles.runPatronProfileRequest(
-          taskRecorder = this.taskRecorder,
+          taskRecorder = taskRecorder,
           patronParsers = this.patronParsers,
           credentials = credentials,
           http = this.http,
@@ -137,6 +198,7 @@ class BookSyncTask(
     } catch (e: Exception) {
       this.logger.error("patron user profile: ", e)
     }
+    return taskRecorder.finishSuccess(Unit).steps
   }
 
   private fun withNewAnnotationsURI(
@@ -163,6 +225,11 @@ class BookSyncTask(
     val oldProvider = account.provider
     var newDescription =
       this.accountRegistry.findAccountProviderDescription(oldProvider.id)
+    if (this.providerFreshness.isFresh(oldProvider, newDescription)) {
+      this.logger.debug("account provider {} was resolved recently", oldProvider.id)
+      return oldProvider
+    }
+
     if (newDescription == null) {
       this.logger.debug("could not find account description for {} in registry", oldProvider.id)
       newDescription = oldProvider.toDescription()
@@ -181,6 +248,8 @@ class BookSyncTask(
     return when (newProviderResult) {
       is TaskResult.Success -> {
         this.logger.debug("successfully resolved the account provider")
+        this.providerResolved = true
+        this.providerFreshness.resolved(oldProvider.id)
         account.setAccountProvider(newProviderResult.result)
         newProviderResult.result
       }
@@ -202,6 +271,23 @@ class BookSyncTask(
     }
   }
 
+  private fun createOrUpdateEach(
+    bookDatabase: BookDatabaseType,
+    received: Map<BookID, OPDSAcquisitionFeedEntry>
+  ): Map<BookID, BookDatabaseEntryType> {
+    val updated = LinkedHashMap<BookID, BookDatabaseEntryType>(received.size)
+    for ((bookId, opdsEntry) in received) {
+      this.logger.debug("[{}] updating", bookId.brief())
+
+      try {
+        updated[bookId] = bookDatabase.createOrUpdate(bookId, opdsEntry)
+      } catch (e: BookDatabaseException) {
+        this.logger.error("[{}] unable to update database entry: ", bookId.brief(), e)
+      }
+    }
+    return updated
+  }
+
   @Throws(OPDSParseException::class)
   private fun parseFeed(
     stream: InputStream,
@@ -210,33 +296,75 @@ class BookSyncTask(
   ) {
     val feed = this.feedParser.parse(provider.loansURI, stream)
 
+    /*
+     * Handle each book in the received feed.
+     */
+
+    val received = LinkedHashMap<BookID, OPDSAcquisitionFeedEntry>(64)
+    for (opdsEntry in feed.feedEntries) {
+      received[BookIDs.newFromOPDSEntry(opdsEntry)] = opdsEntry
+    }
+
+    /*
+     * The book database is changed on the database executor, so that the changes can't be
+     * interleaved with those of the other tasks that change it, such as revoking, deleting,
+     * or logging out.
+     */
+
+    try {
+      this.databaseExecutor.submit(Callable { this.updateDatabase(received, account) }).get()
+    } catch (e: ExecutionException) {
+      throw e.cause ?: e
+    }
+  }
+
+  private fun updateDatabase(
+    feedEntries: Map<BookID, OPDSAcquisitionFeedEntry>,
+    account: AccountType
+  ) {
+    /*
+     * Books that are queued for download are left alone: the borrow writes the entry that it
+     * receives from the server, and a book borrowed after the feed was fetched is not in
+     * the feed.
+     */
+
+    val bookDatabase = account.bookDatabase
+    val downloading = HashSet(bookDatabase.downloadsQueued())
+    val received = LinkedHashMap<BookID, OPDSAcquisitionFeedEntry>(feedEntries.size)
+    for ((bookId, opdsEntry) in feedEntries) {
+      if (this.isDownloadingNow(bookId, downloading)) {
+        this.logger.debug("[{}] downloading, not updating", bookId.brief())
+      } else {
+        received[bookId] = opdsEntry
+      }
+    }
+
     /*
      * Obtain the set of books that are on disk already. If any
      * of these books are not in the received feed, then they have
      * expired and should be deleted.
      */
 
-    val bookDatabase = account.bookDatabase
     val existing = bookDatabase.books()
 
     /*
-     * Handle each book in the received feed.
+     * Databases that can do so write every entry in a single transaction. If that fails,
+     * update the entries one at a time so that one bad entry does not prevent the others
+     * from being updated.
      */
 
-    val received = HashSet<BookID>(64)
-    val entries = feed.feedEntries
-    for (opdsEntry in entries) {
-      val bookId = BookIDs.newFromOPDSEntry(opdsEntry)
-      received.add(bookId)
-      this.logger.debug("[{}] updating", bookId.brief())
-
+    val databaseEntries =
       try {
-        val databaseEntry = bookDatabase.createOrUpdate(bookId, opdsEntry)
-        val book = databaseEntry.book
-        this.bookRegistry.update(BookWithStatus(book, BookStatus.fromBook(book)))
+        this.logger.debug("updating {} entries", received.size)
+        bookDatabase.createOrUpdateAll(received)
       } catch (e: BookDatabaseException) {
-        this.logger.error("[{}] unable to update database entry: ", bookId.brief(), e)
+        this.logger.error("unable to update database entries together: ", e)
+        this.createOrUpdateEach(bookDatabase, received)
       }
+
+    for (databaseEntry in databaseEntries.values) {
+      val book = databaseEntry.book
+      this.bookRegistry.update(BookWithStatus(book, BookStatus.fromBook(book)))
     }
 
     /*
@@ -249,7 +377,9 @@ class BookSyncTask(
       try {
         this.logger.debug("[{}] checking for deletion", existingId.brief())
 
-        if (!received.contains(existingId)) {
+        if (this.isDownloadingNow(existingId, downloading)) {
+          this.logger.debug("[{}] downloading, keeping", existingId.brief())
+        } else if (!received.containsKey(existingId)) {
           val dbEntry = bookDatabase.entry(existingId)
           val a = dbEntry.book.entry.availability
           if (a is OPDSAvailabilityRevoked) {
@@ -277,6 +407,12 @@ class BookSyncTask(
     }
   }
 
+  private fun isDownloadingNow(
+    bookId: BookID,
+    queued: Set<BookID>
+  ): Boolean =
+    queued.contains(bookId) || this.isDownloading(bookId)
+
   private fun updateRegistryForBook(
     account: AccountType,
     dbEntry: BookDatabaseEntryType
@@ -0,0 +1,66 @@
+package org.nypl.simplified.books.controller
+
+import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.MoreExecutors
+import com.google.common.util.concurrent.SettableFuture
+import org.nypl.simplified.books.api.BookID
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Runs the tasks for each book one after another.
+ *
+ * Book tasks wait on futures without occupying the task thread, so two tasks for the same
+ * book could otherwise interleave at each wait and act on a database entry that the other
+ * task has since changed. A task submitted for a book starts only once every task submitted
+ * earlier for that book has completed, whether it succeeded or failed. Tasks for different
+ * books are not ordered with respect to each other.
+ */
+
+class BookTaskSerializer {
+
+  private val lastTasks =
+    ConcurrentHashMap<BookID, SettableFuture<Unit>>()
+
+  /**
+   * Start [task] for the given book once all earlier tasks for the book have completed.
+   * Cancelling the returned future cancels the future returned by the task.
+   */
+
+  fun <A> submit(
+    bookID: BookID,
+    task: () -> FluentFuture<A>
+  ): FluentFuture<A> {
+    val future = SettableFuture.create<A>()
+
+    /*
+     * The book is released once this task has completed and the tasks before it have too;
+     * a task cancelled while it is still waiting therefore doesn't let later tasks overtake
+     * the earlier ones.
+     */
+
+    val released = SettableFuture.create<Unit>()
+    val previous = this.lastTasks.put(bookID, released)
+    val release = Runnable {
+      this.lastTasks.remove(bookID, released)
+      released.set(Unit)
+    }
+
+    val start = Runnable {
+      if (!future.isDone) {
+        try {
+          future.setFuture(task.invoke())
+        } catch (e: Throwable) {
+          future.setException(e)
+        }
+      }
+      future.addListener(release, MoreExecutors.directExecutor())
+    }
+
+    if (previous != null) {
+      previous.addListener(start, MoreExecutors.directExecutor())
+    } else {
+      start.run()
+    }
+    return FluentFuture.from(future)
+  }
+}
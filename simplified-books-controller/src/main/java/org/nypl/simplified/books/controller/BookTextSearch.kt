@@ -0,0 +1,327 @@
+package org.nypl.simplified.books.controller
+
+import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.MoreExecutors
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookChapterProgress
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.api.BookLocation
+import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
+import org.nypl.simplified.books.book_database.api.BookDatabaseType
+import org.nypl.simplified.books.book_database.api.BookTextIndexType
+import org.nypl.simplified.books.book_database.api.BookTextTokens
+import org.nypl.simplified.books.controller.api.BookTextSearchResult
+import org.nypl.simplified.threads.NamedThreadPools
+import org.slf4j.LoggerFactory
+import java.util.concurrent.Callable
+import kotlin.math.ln
+
+/**
+ * Full-text search over the downloaded EPUBs in the book databases returned by [databases].
+ *
+ * Books are indexed by [indexAll], which indexes any downloaded book that does not yet have a
+ * current full-text index. Indexing runs on a single background thread so that it never
+ * competes with itself for I/O; searches run on a separate thread so that they are not queued
+ * behind indexing.
+ *
+ * Each item in the reading order of each book is ranked as a separate document using BM25, so
+ * that a passage in a long book is not drowned out by the length of the book.
+ */
+
+class BookTextSearch(
+  private val databases: () -> Collection<BookDatabaseType>
+) {
+
+  private class Indexed(
+    val accountID: AccountID,
+    val bookID: BookID,
+    val index: BookTextIndexType
+  )
+
+  private class Document(
+    val book: Indexed,
+    val item: Int
+  ) {
+    var score = 0.0
+    var locatorTermFrequency = Int.MAX_VALUE
+    var locatorOffset = 0
+  }
+
+  private data class DocumentKey(
+    val accountID: AccountID,
+    val bookID: BookID,
+    val item: Int
+  )
+
+  companion object {
+    private const val BM25_K1 = 1.2
+    private const val BM25_B = 0.75
+    private const val EXCERPT_LENGTH = 160
+  }
+
+  private val logger =
+    LoggerFactory.getLogger(BookTextSearch::class.java)
+
+  private val indexExecutor =
+    MoreExecutors.listeningDecorator(
+      NamedThreadPools.namedDaemonThreadPool("simplified-books-text-index", 1)
+    )
+
+  private val searchExecutor =
+    MoreExecutors.listeningDecorator(
+      NamedThreadPools.namedDaemonThreadPool("simplified-books-text-search", 1)
+    )
+
+  /**
+   * Build a full-text index for every downloaded EPUB that does not have a current one.
+   */
+
+  fun indexAll(): FluentFuture<Unit> {
+    return FluentFuture.from(
+      this.indexExecutor.submit(
+        Callable {
+          try {
+            this.indexAllNow()
+          } catch (e: Exception) {
+            this.logger.error("indexing failed: ", e)
+            throw e
+          }
+        }
+      )
+    )
+  }
+
+  /**
+   * Search the indexed books.
+   *
+   * @param query The search terms
+   * @param limit The maximum number of results
+   * @return The matching passages, most relevant first
+   */
+
+  fun search(
+    query: String,
+    limit: Int = 50
+  ): FluentFuture<List<BookTextSearchResult>> {
+    return FluentFuture.from(
+      this.searchExecutor.submit(
+        Callable {
+          try {
+            this.searchNow(query, limit)
+          } catch (e: Exception) {
+            this.logger.error("search failed: ", e)
+            throw e
+          }
+        }
+      )
+    )
+  }
+
+  /**
+   * Find the indexed books whose text contains every one of the given search terms. Only the
+   * dictionaries of the indexes, which the format handles keep open, are consulted.
+   *
+   * @param query The search terms
+   * @return The matching books
+   */
+
+  fun matchingBooks(query: String): FluentFuture<Set<BookID>> {
+    return FluentFuture.from(
+      this.searchExecutor.submit(
+        Callable {
+          try {
+            this.matchingBooksNow(query)
+          } catch (e: Exception) {
+            this.logger.error("search failed: ", e)
+            throw e
+          }
+        }
+      )
+    )
+  }
+
+  private fun matchingBooksNow(query: String): Set<BookID> {
+    val terms = BookTextTokens.terms(query)
+    if (terms.isEmpty()) {
+      return setOf()
+    }
+
+    val results = mutableSetOf<BookID>()
+    for (book in this.indexedBooks()) {
+      if (terms.all(book.index::contains)) {
+        results.add(book.bookID)
+      }
+    }
+    return results.toSet()
+  }
+
+  private fun indexAllNow() {
+    val timeThen = System.nanoTime()
+    var books = 0
+    var bytes = 0L
+
+    for (database in this.databases()) {
+      for (bookID in database.books()) {
+        try {
+          val handle =
+            database.entry(bookID)
+              .findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)
+              ?: continue
+          val file = handle.format.file ?: continue
+          if (handle.textIndex() != null) {
+            continue
+          }
+          if (handle.buildTextIndex() != null) {
+            ++books
+            bytes += file.length()
+          }
+        } catch (e: Exception) {
+          this.logger.error("[{}]: could not index book: ", bookID.brief(), e)
+        }
+      }
+    }
+
+    if (books > 0) {
+      val milliseconds = maxOf(1L, (System.nanoTime() - timeThen) / 1_000_000L)
+      this.logger.debug(
+        "indexed {} books ({} bytes) in {}ms ({} bytes/s)",
+        books,
+        bytes,
+        milliseconds,
+        (bytes * 1000L) / milliseconds
+      )
+    }
+  }
+
+  private fun indexedBooks(): List<Indexed> {
+    val results = mutableListOf<Indexed>()
+    for (database in this.databases()) {
+      for (bookID in database.books()) {
+        try {
+          val index =
+            database.entry(bookID)
+              .findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)
+              ?.textIndex()
+              ?: continue
+          results.add(Indexed(database.owner(), bookID, index))
+        } catch (e: Exception) {
+          this.logger.error("[{}]: could not open index: ", bookID.brief(), e)
+        }
+      }
+    }
+    return results
+  }
+
+  private fun searchNow(
+    query: String,
+    limit: Int
+  ): List<BookTextSearchResult> {
+    val timeThen = System.nanoTime()
+    val terms = BookTextTokens.terms(query)
+    if (terms.isEmpty()) {
+      return listOf()
+    }
+
+    val books = this.indexedBooks()
+    val documentCount = books.sumOf { book -> book.index.items.size }
+    if (documentCount == 0) {
+      return listOf()
+    }
+    val lengthTotal =
+      books.sumOf { book -> book.index.items.sumOf { item -> item.textLength.toLong() } }
+    val lengthAverage =
+      maxOf(1.0, lengthTotal.toDouble() / documentCount.toDouble())
+
+    /*
+     * Count the occurrences of each term in each document.
+     */
+
+    val documents = HashMap<DocumentKey, Document>()
+    val frequencies = HashMap<DocumentKey, Int>()
+
+    for (term in terms) {
+      frequencies.clear()
+      val firstOffsets = HashMap<DocumentKey, Int>()
+      for (book in books) {
+        val postings = try {
+          book.index.postings(term)
+        } catch (e: Exception) {
+          this.logger.error("[{}]: could not search book: ", book.bookID.brief(), e)
+          continue
+        }
+        for (posting in postings) {
+          val key = DocumentKey(book.accountID, book.bookID, posting.item)
+          frequencies[key] = (frequencies[key] ?: 0) + 1
+          if (!firstOffsets.containsKey(key)) {
+            firstOffsets[key] = posting.offset
+          }
+          documents.getOrPut(key) { Document(book, posting.item) }
+        }
+      }
+
+      val documentFrequency = frequencies.size.toDouble()
+      val idf = ln(1.0 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5))
+      for ((key, frequency) in frequencies) {
+        val document = documents[key]!!
+        val length = document.book.index.items[document.item].textLength.toDouble()
+        val tf = frequency.toDouble()
+        document.score +=
+          idf * (tf * (BM25_K1 + 1.0)) /
+          (tf + BM25_K1 * (1.0 - BM25_B + BM25_B * (length / lengthAverage)))
+
+        /*
+         * Locate the result at the first occurrence of the rarest term in the document.
+         */
+
+        if (frequency < document.locatorTermFrequency) {
+          document.locatorTermFrequency = frequency
+          document.locatorOffset = firstOffsets[key]!!
+        }
+      }
+    }
+
+    val results =
+      documents.values
+        .sortedByDescending { document -> document.score }
+        .take(limit)
+        .map(this::toResult)
+
+    val milliseconds = (System.nanoTime() - timeThen) / 1_000_000.0
+    this.logger.debug(
+      "search of {} documents in {} books returned {} results in {}ms",
+      documentCount,
+      books.size,
+      results.size,
+      String.format("%.2f", milliseconds)
+    )
+    return results
+  }
+
+  private fun toResult(document: Document): BookTextSearchResult {
+    val index = document.book.index
+    val item = index.items[document.item]
+    val excerpt = try {
+      index.excerpt(document.item, document.locatorOffset, EXCERPT_LENGTH)
+    } catch (e: Exception) {
+      this.logger.error("[{}]: could not load excerpt: ", document.book.bookID.brief(), e)
+      ""
+    }
+
+    return BookTextSearchResult(
+      accountID = document.book.accountID,
+      bookID = document.book.bookID,
+      location = BookLocation.BookLocationR2(
+        BookChapterProgress(
+          chapterHref = "/" + item.href,
+          chapterProgress = if (item.textLength > 0) {
+            document.locatorOffset.toDouble() / item.textLength.toDouble()
+          } else {
+            0.0
+          }
+        )
+      ),
+      score = document.score,
+      excerpt = excerpt
+    )
+  }
+}
@@ -27,13 +27,21 @@ import org.nypl.simplified.accounts.registry.api.AccountProviderRegistryEvent
 import org.nypl.simplified.accounts.registry.api.AccountProviderRegistryType
 import org.nypl.simplified.analytics.api.AnalyticsType
 import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.book_database.api.BookDatabaseType
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookWithStatus
+import org.nypl.simplified.books.borrowing.BorrowPartialDownloads
 import org.nypl.simplified.books.borrowing.BorrowRequest
 import org.nypl.simplified.books.borrowing.BorrowRequirements
 import org.nypl.simplified.books.borrowing.BorrowTask
+import org.nypl.simplified.books.controller.api.BookDownloadNetworkPolicy
+import org.nypl.simplified.books.controller.api.BookDownloadQueueStatistics
 import org.nypl.simplified.books.controller.api.BookRevokeStringResourcesType
+import org.nypl.simplified.books.controller.api.BookStorageQuotas
+import org.nypl.simplified.books.controller.api.BookStorageUsage
+import org.nypl.simplified.books.controller.api.BookTextSearchResult
+import org.nypl.simplified.books.controller.api.BookSyncStatistics
 import org.nypl.simplified.books.controller.api.BooksControllerType
 import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.crashlytics.api.CrashlyticsServiceType
@@ -43,7 +51,9 @@ import org.nypl.simplified.feeds.api.FeedLoaderType
 import org.nypl.simplified.futures.FluentFutureExtensions
 import org.nypl.simplified.futures.FluentFutureExtensions.flatMap
 import org.nypl.simplified.futures.FluentFutureExtensions.map
+import org.nypl.simplified.futures.FluentFutureExtensions.onAnyError
 import org.nypl.simplified.metrics.api.MetricServiceType
+import org.nypl.simplified.networkconnectivity.api.NetworkConnectivityType
 import org.nypl.simplified.opds.auth_document.api.AuthenticationDocumentParsersType
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSFeedParserType
@@ -69,12 +79,12 @@ import org.nypl.simplified.profiles.controller.api.ProfileAccountLoginRequest
 import org.nypl.simplified.profiles.controller.api.ProfileFeedRequest
 import org.nypl.simplified.profiles.controller.api.ProfilesControllerType
 import org.nypl.simplified.taskrecorder.api.TaskResult
+import org.nypl.simplified.threads.NamedThreadPools
 import org.slf4j.LoggerFactory
 import java.io.File
 import java.net.URI
 import java.util.SortedMap
 import java.util.concurrent.Callable
-import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ExecutorService
 
 /**
@@ -89,7 +99,14 @@ class Controller private constructor(
   private val taskExecutor: ListeningExecutorService
 ) : BooksControllerType, ProfilesControllerType {
 
-  private val borrows: ConcurrentHashMap<BookID, BorrowTask>
+  private val bookDownloads: BookDownloadQueue
+  private val bookStorage: BookStorageManager
+  private val bookTextSearch: BookTextSearch
+
+  private val bookSyncs =
+    BookSyncOrchestrator()
+  private val bookTasks =
+    BookTaskSerializer()
 
   private val borrowRequirements: BorrowRequirements
   private val accountLoginStringResources =
@@ -132,10 +149,30 @@ class Controller private constructor(
     this.services.optionalService(CrashlyticsServiceType::class.java)
   private val metrics =
     this.services.optionalService(MetricServiceType::class.java)
+  private val networkConnectivity =
+    this.services.optionalService(NetworkConnectivityType::class.java)
 
   private val temporaryDirectory =
     File(this.cacheDirectory, "tmp")
 
+  /*
+   * Profile changes are flushed on a thread of their own so that a flush requested as the
+   * application is paused doesn't wait behind long running tasks on the task executor.
+   */
+
+  private val profileFlushExecutor =
+    MoreExecutors.listeningDecorator(
+      NamedThreadPools.namedDaemonThreadPool("simplified-profile-flush", 1)
+    )
+
+  /*
+   * Temporary files in the book databases that were last modified before the controller was
+   * created can't belong to any operation that is still running.
+   */
+
+  private val timeCreated =
+    Instant.now()
+
   private val accountRegistrySubscription: Disposable
   private val accountSubscription: Disposable
   private val profileSelectionSubscription: Disposable
@@ -153,8 +190,24 @@ class Controller private constructor(
         temporaryDirectory = this.temporaryDirectory
       )
 
-    this.borrows =
-      ConcurrentHashMap()
+    this.bookStorage =
+      BookStorageManager(
+        bookRegistry = this.bookRegistry,
+        databases = this::bookDatabasesCurrent,
+        temporaryDirectory = this.temporaryDirectory
+      )
+
+    this.bookTextSearch =
+      BookTextSearch(databases = this::bookDatabasesCurrent)
+
+    this.bookDownloads =
+      BookDownloadQueue(
+        bookRegistry = this.bookRegistry,
+        network = this.networkConnectivity,
+        createTask = { request -> BorrowTask.createBorrowTask(this.borrowRequirements, request) },
+        onDownloaded = { this.onBookDownloaded() },
+        onCancelled = this::deletePartialDownloads
+      )
 
     this.accountRegistrySubscription =
       this.accountProviders.events.subscribe(this::onAccountRegistryEvent)
@@ -211,9 +264,82 @@ class Controller private constructor(
       this.logger.error("failed to trigger book syncing: ", e)
     }
 
+    /*
+     * Resume any downloads that were interrupted the last time the profile was in use.
+     */
+
+    try {
+      val profile = this.profiles.currentProfileUnsafe()
+      for (account in profile.accounts().values) {
+        this.bookDownloads.resume(profile.id, account.id, account.bookDatabase)
+      }
+    } catch (e: Exception) {
+      this.logger.error("failed to resume book downloads: ", e)
+    }
+
+    /*
+     * Clean up after any operations that were interrupted, and bring the space used by
+     * downloaded books back within the quotas.
+     */
+
+    this.bookStorage.deleteOrphans(this.timeCreated)
+      .addListener({ this.bookTextSearch.indexAll() }, MoreExecutors.directExecutor())
     this.updateCrashlytics()
   }
 
+  /*
+   * Books are indexed for searching only after the quotas have been enforced, so that time
+   * isn't spent indexing content that is about to be deleted.
+   */
+
+  private fun onBookDownloaded() {
+    this.bookStorage.enforceQuotas()
+      .addListener({ this.bookTextSearch.indexAll() }, MoreExecutors.directExecutor())
+  }
+
+  /*
+   * Partial downloads are kept so that interrupted downloads can be resumed, but are of no use
+   * once a download has been cancelled or the book has been returned or deleted.
+   */
+
+  private fun deletePartialDownloads(
+    accountID: AccountID,
+    bookID: BookID
+  ) {
+    try {
+      BorrowPartialDownloads.deleteForBook(this.temporaryDirectory, accountID, bookID)
+    } catch (e: Exception) {
+      this.logger.error("[{}]: could not delete partial downloads: ", bookID.brief(), e)
+    }
+  }
+
+  private fun <A> deletePartialDownloadsIfSucceeded(
+    accountID: AccountID,
+    bookID: BookID,
+    result: TaskResult<A>
+  ): TaskResult<A> {
+    if (result is TaskResult.Success) {
+      this.deletePartialDownloads(accountID, bookID)
+    }
+    return result
+  }
+
+  private fun bookDatabasesCurrent(): List<BookDatabaseType> {
+    return try {
+      if (this.profileAnyIsCurrent()) {
+        this.profiles.currentProfileUnsafe()
+          .accounts()
+          .values
+          .map { account -> account.bookDatabase }
+      } else {
+        listOf()
+      }
+    } catch (e: Exception) {
+      this.logger.error("could not list book databases: ", e)
+      listOf()
+    }
+  }
+
   private fun updateCrashlytics() {
     try {
       val profile = this.profileCurrent()
@@ -278,6 +404,26 @@ class Controller private constructor(
     return FluentFuture.from(future)
   }
 
+  /**
+   * Submit a task that completes asynchronously. The task is started on the task executor,
+   * and the returned future completes when the future returned by the task completes.
+   * Cancelling the returned future cancels the task's future.
+   */
+
+  private fun <A> submitTaskAsync(task: () -> FluentFuture<A>): FluentFuture<A> {
+    val future = SettableFuture.create<A>()
+    this.taskExecutor.execute {
+      try {
+        future.setFuture(task.invoke())
+      } catch (e: Throwable) {
+        this.logger.error("exception raised during task execution: ", e)
+        future.setException(e)
+        throw e
+      }
+    }
+    return FluentFuture.from(future)
+  }
+
   private fun <A> submitTask(task: Callable<A>): FluentFuture<A> {
     val future = SettableFuture.create<A>()
     this.taskExecutor.execute {
@@ -354,13 +500,13 @@ class Controller private constructor(
   override fun profileAccountLogin(
     request: ProfileAccountLoginRequest
   ): FluentFuture<TaskResult<Unit>> {
-    return this.submitTask { this.runProfileAccountLogin(request) }
+    return this.submitTaskAsync { this.runProfileAccountLogin(request) }
       .flatMap { result -> this.runSyncIfLoginSucceeded(result, request.accountId) }
   }
 
   private fun runProfileAccountLogin(
     request: ProfileAccountLoginRequest
-  ): TaskResult<Unit> {
+  ): FluentFuture<TaskResult<Unit>> {
     val profile = this.profileCurrent()
     val account = profile.account(request.accountId)
     return ProfileAccountLoginTask(
@@ -371,7 +517,7 @@ class Controller private constructor(
       loginStrings = this.accountLoginStringResources,
       patronParsers = this.patronUserProfileParsers,
       request = request
-    ).call()
+    ).callAsync(this.taskExecutor)
   }
 
   private fun runSyncIfLoginSucceeded(
@@ -476,20 +622,42 @@ class Controller private constructor(
   override fun profileAccountLogout(
     accountID: AccountID
   ): FluentFuture<TaskResult<Unit>> {
-    return this.submitTask {
-      val profile = this.profileCurrent()
-      val account = profile.account(accountID)
-      ProfileAccountLogoutTask(
-        adeptExecutor = this.adobeDrm,
-        account = account,
-        bookRegistry = this.bookRegistry,
-        feedLoader = this.feedLoader,
-        patronParsers = this.patronUserProfileParsers,
-        http = this.lsHttp,
-        logoutStrings = this.accountLogoutStringResources,
-        profile = profile
-      ).call()
-    }
+    return this.submitTaskAsync { this.bookDownloads.cancelAndWaitForAccount(accountID) }
+      .flatMap { this.submitTaskAsync { this.runProfileAccountLogout(accountID) } }
+      .map { result ->
+        if (result is TaskResult.Success) {
+          try {
+            BorrowPartialDownloads.deleteForAccount(this.temporaryDirectory, accountID)
+          } catch (e: Exception) {
+            this.logger.error("[{}]: could not delete partial downloads: ", accountID.uuid, e)
+          }
+        }
+        result
+      }
+  }
+
+  /*
+   * The downloads of an account are cancelled, and have stopped, before the account is logged
+   * out, and the download of a book before the book is returned or deleted, so that no
+   * download writes to the book database at the same time. Downloads are cancelled on the task
+   * executor, on which borrows are queued, so that a borrow requested earlier is cancelled too.
+   */
+
+  private fun runProfileAccountLogout(
+    accountID: AccountID
+  ): FluentFuture<TaskResult<Unit>> {
+    val profile = this.profileCurrent()
+    val account = profile.account(accountID)
+    return ProfileAccountLogoutTask(
+      adeptExecutor = this.adobeDrm,
+      account = account,
+      bookRegistry = this.bookRegistry,
+      feedLoader = this.feedLoader,
+      patronParsers = this.patronUserProfileParsers,
+      http = this.lsHttp,
+      logoutStrings = this.accountLogoutStringResources,
+      profile = profile
+    ).callAsync(this.taskExecutor)
   }
 
   override fun profileUpdate(
@@ -519,18 +687,53 @@ class Controller private constructor(
     )
   }
 
+  override fun profileFlushPendingWrites(): FluentFuture<Unit> {
+    return FluentFuture.from(
+      this.profileFlushExecutor.submit(
+        Callable {
+          try {
+            this.profiles.flushPendingWrites()
+          } catch (e: Exception) {
+            this.logger.error("could not flush profile changes: ", e)
+            throw e
+          }
+        }
+      )
+    )
+  }
+
   @Throws(ProfileNoneCurrentException::class)
   override fun profileFeed(
     request: ProfileFeedRequest
   ): FluentFuture<Feed.FeedWithoutGroups> {
-    return this.submitTask(
-      ProfileFeedTask(
-        bookFormatSupport = this.bookFormatSupport,
-        bookRegistry = this.bookRegistry,
-        profiles = this,
-        request = request
+    /*
+     * The full text query runs on the search thread so that reading the text indexes never
+     * holds up the book tasks; the feed task only starts once the matches are known.
+     */
+
+    val search = request.search
+    val textMatches =
+      if (search != null) {
+        this.bookTextSearch.matchingBooks(search)
+          .onAnyError { e ->
+            this.logger.error("could not search book text: ", e)
+            setOf<BookID>()
+          }
+      } else {
+        FluentFutureExtensions.fluentFutureOfValue(setOf<BookID>())
+      }
+
+    return textMatches.flatMap { matches ->
+      this.submitTask(
+        ProfileFeedTask(
+          bookFormatSupport = this.bookFormatSupport,
+          bookRegistry = this.bookRegistry,
+          profiles = this,
+          request = request,
+          textMatches = matches
+        )
       )
-    )
+    }
   }
 
   @Throws(ProfileNoneCurrentException::class, AccountsDatabaseNonexistentException::class)
@@ -552,25 +755,41 @@ class Controller private constructor(
     accountID: AccountID,
     entry: OPDSAcquisitionFeedEntry
   ): FluentFuture<TaskResult<*>> {
-    return this.submitTask(
-      Callable<TaskResult<*>> {
+    return this.submitTaskAsync {
+      val profile = this.profileCurrent()
+      val database = try {
+        profile.account(accountID).bookDatabase
+      } catch (e: Exception) {
+        null
+      }
+
+      /*
+       * If the account can't be found, the borrow task runs immediately so that it reports
+       * the failure in the usual way.
+       */
+
+      if (database == null) {
         val request =
           BorrowRequest.Start(
             accountId = accountID,
-            profileId = this.profileCurrent().id,
+            profileId = profile.id,
             opdsAcquisitionFeedEntry = entry
           )
-        BorrowTask.createBorrowTask(this.borrowRequirements, request)
-          .execute()
+        FluentFutureExtensions.fluentFutureOfValue(
+          BorrowTask.createBorrowTask(this.borrowRequirements, request)
+            .execute()
+        )
+      } else {
+        this.bookDownloads.enqueue(profile.id, accountID, database, entry)
       }
-    )
+    }
   }
 
   override fun bookBorrowFailedDismiss(
     accountID: AccountID,
     bookID: BookID
   ) {
-    this.submitTask(
+    val task =
       BookBorrowFailedDismissTask(
         accountID = accountID,
         profileID = this.profileCurrent().id,
@@ -578,16 +797,53 @@ class Controller private constructor(
         bookID = bookID,
         bookRegistry = this.bookRegistry,
       )
-    )
+    this.bookTasks.submit(bookID) { this.submitTask(task) }
   }
 
   override fun bookDownloadCancel(
     accountID: AccountID,
     bookID: BookID
   ) {
-    this.borrows[bookID]?.cancel()
+    this.bookDownloads.cancel(bookID)
+  }
+
+  override fun bookDownloadNetworkPolicy(
+    policy: BookDownloadNetworkPolicy
+  ) {
+    this.bookDownloads.networkPolicy = policy
+  }
+
+  override fun bookDownloadQueueStatistics(): BookDownloadQueueStatistics =
+    this.bookDownloads.statistics()
+
+  override fun bookOpened(
+    accountID: AccountID,
+    bookID: BookID
+  ) {
+    this.bookStorage.bookOpened(accountID, bookID, Instant.now())
+  }
+
+  override fun bookClosed(
+    accountID: AccountID,
+    bookID: BookID
+  ) {
+    this.bookStorage.bookClosed(accountID, bookID, Instant.now())
+  }
+
+  override fun bookStorageQuotas(
+    quotas: BookStorageQuotas
+  ) {
+    this.bookStorage.quotas = quotas
   }
 
+  override fun bookStorageUsage(): BookStorageUsage =
+    this.bookStorage.usage()
+
+  override fun bookTextSearch(
+    query: String
+  ): FluentFuture<List<BookTextSearchResult>> =
+    this.bookTextSearch.search(query)
+
   override fun bookReport(
     accountID: AccountID,
     feedEntry: FeedEntry.FeedEntryOPDS,
@@ -599,10 +855,11 @@ class Controller private constructor(
   override fun booksSync(
     accountID: AccountID
   ): FluentFuture<TaskResult<Unit>> {
-    return this.submitTask(
+    val profileID = this.profileCurrent().id
+    return this.bookSyncs.sync(accountID) {
       BookSyncTask(
         accountID = accountID,
-        profileID = this.profileCurrent().id,
+        profileID = profileID,
         profiles = this.profiles,
         accountRegistry = this.accountProviders,
         bookRegistry = this.bookRegistry,
@@ -610,17 +867,23 @@ class Controller private constructor(
         feedParser = this.feedParser,
         feedLoader = this.feedLoader,
         patronParsers = this.patronUserProfileParsers,
-        http = this.lsHttp
+        http = this.lsHttp,
+        providerFreshness = this.bookSyncs.providerFreshness,
+        requestExecutor = this.bookSyncs.requestExecutor,
+        databaseExecutor = this.taskExecutor,
+        isDownloading = this.bookDownloads::isQueued
       )
-    )
+    }
   }
 
+  override fun booksSyncStatistics(): Map<AccountID, BookSyncStatistics> =
+    this.bookSyncs.statistics()
+
   override fun bookRevoke(
     accountID: AccountID,
     bookId: BookID
   ): FluentFuture<TaskResult<Unit>> {
-    this.publishRequestingDelete(bookId)
-    return this.submitTask(
+    val task =
       BookRevokeTask(
         accountID = accountID,
         profileID = this.profileCurrent().id,
@@ -631,15 +894,21 @@ class Controller private constructor(
         feedLoader = this.feedLoader,
         revokeStrings = this.revokeStrings
       )
-    )
+    return this.bookTasks.submit(bookId) {
+      this.submitTaskAsync { this.bookDownloads.cancelAndWait(bookId) }
+        .flatMap {
+          this.publishRequestingDelete(bookId)
+          this.submitTaskAsync { task.callAsync(this.taskExecutor) }
+        }
+        .map { result -> this.deletePartialDownloadsIfSucceeded(accountID, bookId, result) }
+    }
   }
 
   override fun bookDelete(
     accountID: AccountID,
     bookId: BookID
   ): FluentFuture<TaskResult<Unit>> {
-    this.publishRequestingDelete(bookId)
-    return this.submitTask(
+    val task =
       BookDeleteTask(
         accountID = accountID,
         profileID = this.profileCurrent().id,
@@ -647,7 +916,14 @@ class Controller private constructor(
         bookID = bookId,
         bookRegistry = this.bookRegistry,
       )
-    )
+    return this.bookTasks.submit(bookId) {
+      this.submitTaskAsync { this.bookDownloads.cancelAndWait(bookId) }
+        .flatMap {
+          this.publishRequestingDelete(bookId)
+          this.submitTask(task)
+        }
+        .map { result -> this.deletePartialDownloadsIfSucceeded(accountID, bookId, result) }
+    }
   }
 
   private fun publishRequestingDelete(bookId: BookID) {
@@ -665,7 +941,7 @@ class Controller private constructor(
     accountID: AccountID,
     bookID: BookID
   ): FluentFuture<TaskResult<Unit>> {
-    return this.submitTask(
+    val task =
       BookRevokeFailedDismissTask(
         accountID = accountID,
         profileID = this.profileCurrent().id,
@@ -673,7 +949,7 @@ class Controller private constructor(
         bookID = bookID,
         bookRegistry = this.bookRegistry,
       )
-    )
+    return this.bookTasks.submit(bookID) { this.submitTask(task) }
   }
 
   override fun profileAnyIsCurrent(): Boolean =
@@ -1,6 +1,8 @@
 package org.nypl.simplified.books.controller
 
 import com.google.common.base.Preconditions
+import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.MoreExecutors
 import one.irradia.mime.api.MIMEType
 import org.librarysimplified.http.api.LSHTTPClientType
 import org.librarysimplified.http.api.LSHTTPRequestBuilderType.Method.Post
@@ -8,6 +10,7 @@ import org.nypl.drm.core.AdobeAdeptExecutorType
 import org.nypl.drm.core.AdobeVendorID
 import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP
 import org.nypl.simplified.accounts.api.AccountAuthenticationAdobeClientToken
+import org.nypl.simplified.accounts.api.AccountAuthenticationAdobePostActivationCredentials
 import org.nypl.simplified.accounts.api.AccountAuthenticationAdobePreActivationCredentials
 import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
 import org.nypl.simplified.accounts.api.AccountLoginState.AccountLoggedIn
@@ -23,6 +26,10 @@ import org.nypl.simplified.accounts.api.AccountProviderAuthenticationDescription
 import org.nypl.simplified.accounts.api.AccountProviderAuthenticationDescription.SAML2_0
 import org.nypl.simplified.accounts.database.api.AccountType
 import org.nypl.simplified.adobe.extensions.AdobeDRMExtensions
+import org.nypl.simplified.futures.FluentFutureExtensions
+import org.nypl.simplified.futures.FluentFutureExtensions.map
+import org.nypl.simplified.futures.FluentFutureExtensions.onAnyError
+import org.nypl.simplified.futures.FluentFutureExtensions.withTimeout
 import org.nypl.simplified.patron.api.PatronDRM
 import org.nypl.simplified.patron.api.PatronDRMAdobe
 import org.nypl.simplified.patron.api.PatronUserProfileParsersType
@@ -43,11 +50,15 @@ import org.slf4j.LoggerFactory
 import java.net.URI
 import java.nio.charset.Charset
 import java.util.concurrent.Callable
-import java.util.concurrent.ExecutionException
+import java.util.concurrent.CancellationException
+import java.util.concurrent.Executor
 import java.util.concurrent.TimeUnit
 
 /**
  * A task that performs a login for the given account in the given profile.
+ *
+ * Device activation waits on the Adobe ACS without occupying a thread; the rest of the login
+ * is performed on the executor passed to [callAsync] once activation completes.
  */
 
 class ProfileAccountLoginTask(
@@ -79,8 +90,16 @@ class ProfileAccountLoginTask(
   private val logger =
     LoggerFactory.getLogger(ProfileAccountLoginTask::class.java)
 
-  override fun call() =
-    this.run()
+  override fun call(): TaskResult<Unit> =
+    this.callAsync(MoreExecutors.directExecutor()).get()
+
+  /**
+   * Run the task, performing any work that follows a wait on the given executor. If the
+   * returned future is cancelled, the login fails.
+   */
+
+  fun callAsync(executor: Executor): FluentFuture<TaskResult<Unit>> =
+    this.run(executor)
 
   private fun debug(message: String, vararg arguments: Any?) =
     this.logger.debug("[{}][{}] $message", this.profile.id.uuid, this.account.id, *arguments)
@@ -91,49 +110,82 @@ class ProfileAccountLoginTask(
   private fun warn(message: String, vararg arguments: Any?) =
     this.logger.warn("[{}][{}] $message", this.profile.id.uuid, this.account.id, *arguments)
 
-  private fun run(): TaskResult<Unit> {
-    return try {
-      if (!this.updateLoggingInState(
-          this.steps.beginNewStep(this.loginStrings.loginCheckAuthRequired)
-        )
-      ) {
-        return this.steps.finishSuccess(Unit)
-      }
+  private fun run(executor: Executor): FluentFuture<TaskResult<Unit>> {
+    val result = try {
+      this.runStages(executor)
+    } catch (e: Throwable) {
+      return FluentFutureExtensions.fluentFutureOfValue(this.onLoginFailed(e))
+    }
+    val future = result.onAnyError({ e -> this.onLoginFailed(e) }, executor)
 
-      if (!this.validateRequest()) {
-        this.debug("account does not support the given authentication")
-        this.steps.currentStepFailed(this.loginStrings.loginAuthNotRequired, "loginAuthNotRequired")
-        this.account.setLoginState(AccountLoginFailed(this.steps.finishFailure<Unit>()))
-        return this.steps.finishFailure()
-      }
+    /*
+     * A cancelled future never reaches the error handler above, so the account would
+     * otherwise be left logging in.
+     */
 
-      this.steps.currentStepSucceeded(this.loginStrings.loginAuthRequired)
-
-      when (this.request) {
-        is Basic ->
-          this.runBasicLogin(this.request)
-        is OAuthWithIntermediaryInitiate ->
-          this.runOAuthWithIntermediaryInitiate(this.request)
-        is OAuthWithIntermediaryComplete ->
-          this.runOAuthWithIntermediaryComplete(this.request)
-        is OAuthWithIntermediaryCancel ->
-          this.runOAuthWithIntermediaryCancel(this.request)
-        is SAML20Initiate ->
-          this.runSAML20Initiate(this.request)
-        is SAML20Complete ->
-          this.runSAML20Complete(this.request)
-        is SAML20Cancel ->
-          this.runSAML20Cancel(this.request)
+    future.addListener({
+      if (future.isCancelled) {
+        this.onLoginFailed(CancellationException("Login cancelled"))
       }
-    } catch (e: Throwable) {
-      this.logger.error("error during login process: ", e)
-      this.steps.currentStepFailedAppending(
-        this.loginStrings.loginUnexpectedException, "unexpectedException", e
+    }, executor)
+    return future
+  }
+
+  private fun runStages(executor: Executor): FluentFuture<TaskResult<Unit>> {
+    if (!this.updateLoggingInState(
+        this.steps.beginNewStep(this.loginStrings.loginCheckAuthRequired)
       )
-      val failure = this.steps.finishFailure<Unit>()
-      this.account.setLoginState(AccountLoginFailed(failure))
-      failure
+    ) {
+      return FluentFutureExtensions.fluentFutureOfValue(this.steps.finishSuccess(Unit))
+    }
+
+    if (!this.validateRequest()) {
+      this.debug("account does not support the given authentication")
+      this.steps.currentStepFailed(this.loginStrings.loginAuthNotRequired, "loginAuthNotRequired")
+      this.account.setLoginState(AccountLoginFailed(this.steps.finishFailure<Unit>()))
+      return FluentFutureExtensions.fluentFutureOfValue(this.steps.finishFailure())
     }
+
+    this.steps.currentStepSucceeded(this.loginStrings.loginAuthRequired)
+
+    return when (this.request) {
+      is Basic ->
+        this.runBasicLogin(this.request, executor)
+      is OAuthWithIntermediaryInitiate ->
+        FluentFutureExtensions.fluentFutureOfValue(this.runOAuthWithIntermediaryInitiate(this.request))
+      is OAuthWithIntermediaryComplete ->
+        this.runOAuthWithIntermediaryComplete(this.request, executor)
+      is OAuthWithIntermediaryCancel ->
+        FluentFutureExtensions.fluentFutureOfValue(this.runOAuthWithIntermediaryCancel(this.request))
+      is SAML20Initiate ->
+        FluentFutureExtensions.fluentFutureOfValue(this.runSAML20Initiate(this.request))
+      is SAML20Complete ->
+        this.runSAML20Complete(this.request, executor)
+      is SAML20Cancel ->
+        FluentFutureExtensions.fluentFutureOfValue(this.runSAML20Cancel(this.request))
+    }
+  }
+
+  private fun onLoginFailed(e: Throwable): TaskResult<Unit> {
+    this.logger.error("error during login process: ", e)
+    this.steps.currentStepFailedAppending(
+      this.loginStrings.loginUnexpectedException, "unexpectedException", e
+    )
+    val failure = this.steps.finishFailure<Unit>()
+    this.account.setLoginState(AccountLoginFailed(failure))
+    return failure
+  }
+
+  /**
+   * Activate the device (if necessary) and then mark the account as logged in.
+   */
+
+  private fun runDeviceActivationThenLogIn(executor: Executor): FluentFuture<TaskResult<Unit>> {
+    return this.runDeviceActivation(executor)
+      .map({
+        this.account.setLoginState(AccountLoggedIn(this.credentials))
+        this.steps.finishSuccess(Unit)
+      }, executor)
   }
 
   private fun runSAML20Cancel(
@@ -161,8 +213,9 @@ class ProfileAccountLoginTask(
   }
 
   private fun runSAML20Complete(
-    request: SAML20Complete
-  ): TaskResult<Unit> {
+    request: SAML20Complete,
+    executor: Executor
+  ): FluentFuture<TaskResult<Unit>> {
     this.steps.beginNewStep("Accepting login token...")
     return when (this.account.loginState) {
       is AccountLoggingIn,
@@ -178,9 +231,7 @@ class ProfileAccountLoginTask(
           )
 
         this.handlePatronUserProfile()
-        this.runDeviceActivation()
-        this.account.setLoginState(AccountLoggedIn(this.credentials))
-        this.steps.finishSuccess(Unit)
+        this.runDeviceActivationThenLogIn(executor)
       }
 
       AccountNotLoggedIn,
@@ -191,7 +242,7 @@ class ProfileAccountLoginTask(
         this.steps.currentStepSucceeded(
           "Ignored the authentication token because the account wasn't waiting for one."
         )
-        this.steps.finishSuccess(Unit)
+        FluentFutureExtensions.fluentFutureOfValue(this.steps.finishSuccess(Unit))
       }
     }
   }
@@ -233,8 +284,9 @@ class ProfileAccountLoginTask(
   }
 
   private fun runOAuthWithIntermediaryComplete(
-    request: OAuthWithIntermediaryComplete
-  ): TaskResult<Unit> {
+    request: OAuthWithIntermediaryComplete,
+    executor: Executor
+  ): FluentFuture<TaskResult<Unit>> {
     this.steps.beginNewStep("Accepting login token...")
     return when (this.account.loginState) {
       is AccountLoggingIn,
@@ -248,9 +300,7 @@ class ProfileAccountLoginTask(
           )
 
         this.handlePatronUserProfile()
-        this.runDeviceActivation()
-        this.account.setLoginState(AccountLoggedIn(this.credentials))
-        this.steps.finishSuccess(Unit)
+        this.runDeviceActivationThenLogIn(executor)
       }
 
       AccountNotLoggedIn,
@@ -261,7 +311,7 @@ class ProfileAccountLoginTask(
         this.steps.currentStepSucceeded(
           "Ignored the authentication token because the account wasn't waiting for one."
         )
-        this.steps.finishSuccess(Unit)
+        FluentFutureExtensions.fluentFutureOfValue(this.steps.finishSuccess(Unit))
       }
     }
   }
@@ -279,8 +329,9 @@ class ProfileAccountLoginTask(
   }
 
   private fun runBasicLogin(
-    request: Basic
-  ): TaskResult.Success<Unit> {
+    request: Basic,
+    executor: Executor
+  ): FluentFuture<TaskResult<Unit>> {
     this.credentials =
       AccountAuthenticationCredentials.Basic(
         userName = request.username,
@@ -291,9 +342,7 @@ class ProfileAccountLoginTask(
       )
 
     this.handlePatronUserProfile()
-    this.runDeviceActivation()
-    this.account.setLoginState(AccountLoggedIn(this.credentials))
-    return this.steps.finishSuccess(Unit)
+    return this.runDeviceActivationThenLogIn(executor)
   }
 
   private fun handlePatronUserProfile() {
@@ -352,16 +401,20 @@ class ProfileAccountLoginTask(
     }
   }
 
-  private fun runDeviceActivation() {
+  private fun runDeviceActivation(executor: Executor): FluentFuture<Unit> {
     this.debug("running device activation")
 
     val adobeDRMValues = this.adobeDRM
     if (adobeDRMValues != null) {
-      this.runDeviceActivationAdobe(adobeDRMValues)
+      return this.runDeviceActivationAdobe(adobeDRMValues, executor)
     }
+    return FluentFutureExtensions.fluentFutureOfValue(Unit)
   }
 
-  private fun runDeviceActivationAdobe(adobeDRM: PatronDRMAdobe) {
+  private fun runDeviceActivationAdobe(
+    adobeDRM: PatronDRMAdobe,
+    executor: Executor
+  ): FluentFuture<Unit> {
     this.debug("runDeviceActivationAdobe: executing")
 
     this.updateLoggingInState(this.steps.beginNewStep(this.loginStrings.loginDeviceActivationAdobe))
@@ -386,7 +439,7 @@ class ProfileAccountLoginTask(
     val adeptExecutor = this.adeptExecutor
     if (adeptExecutor == null) {
       this.steps.currentStepSucceeded(this.loginStrings.loginDeviceDRMNotSupported)
-      return
+      return FluentFutureExtensions.fluentFutureOfValue(Unit)
     }
 
     val adeptFuture =
@@ -398,46 +451,49 @@ class ProfileAccountLoginTask(
         clientToken = adobePreCredentials.clientToken
       )
 
-    try {
-      val postCredentials =
-        adeptFuture.get(1L, TimeUnit.MINUTES)
+    return FluentFuture.from(adeptFuture)
+      .withTimeout(1L, TimeUnit.MINUTES)
+      .map({ postCredentials ->
+        this.runDeviceActivationAdobeActivated(adobePreCredentials, postCredentials)
+      }, executor)
+      .onAnyError({ e ->
+        this.logger.error("exception raised waiting for adept future: ", e)
+        this.handleAdobeDRMConnectorException(e)
+        throw e
+      }, executor)
+      .map({
+        if (deviceManagerURI != null) {
+          this.runDeviceActivationAdobeSendDeviceManagerRequest(deviceManagerURI)
+        }
+      }, executor)
+  }
 
-      Preconditions.checkState(
-        postCredentials.isNotEmpty(),
-        "Must have returned at least one activation"
-      )
+  private fun runDeviceActivationAdobeActivated(
+    adobePreCredentials: AccountAuthenticationAdobePreActivationCredentials,
+    postCredentials: List<AccountAuthenticationAdobePostActivationCredentials>
+  ) {
+    Preconditions.checkState(
+      postCredentials.isNotEmpty(),
+      "Must have returned at least one activation"
+    )
 
-      /*
-       * Find the newly activated credentials (the one whose user id is not associated with any
-       * account). There should only be one, and it should be the last in the list, but this check
-       * makes sure.
-       */
+    /*
+     * Find the newly activated credentials (the one whose user id is not associated with any
+     * account). There should only be one, and it should be the last in the list, but this check
+     * makes sure.
+     */
 
-      val newPostCredentials = postCredentials.last { credentials ->
-        this.profile.accounts().values.none { account ->
-          account.loginState.credentials?.adobeCredentials?.postActivationCredentials?.userID ==
-            credentials.userID
-        }
+    val newPostCredentials = postCredentials.last { credentials ->
+      this.profile.accounts().values.none { account ->
+        account.loginState.credentials?.adobeCredentials?.postActivationCredentials?.userID ==
+          credentials.userID
       }
-
-      this.credentials = this.credentials.withAdobePreActivationCredentials(
-        adobePreCredentials.copy(postActivationCredentials = newPostCredentials)
-      )
-      this.steps.currentStepSucceeded(this.loginStrings.loginDeviceActivated)
-    } catch (e: ExecutionException) {
-      val ex = e.cause!!
-      this.logger.error("exception raised waiting for adept future: ", ex)
-      this.handleAdobeDRMConnectorException(ex)
-      throw ex
-    } catch (e: Throwable) {
-      this.logger.error("exception raised waiting for adept future: ", e)
-      this.handleAdobeDRMConnectorException(e)
-      throw e
     }
 
-    if (deviceManagerURI != null) {
-      this.runDeviceActivationAdobeSendDeviceManagerRequest(deviceManagerURI)
-    }
+    this.credentials = this.credentials.withAdobePreActivationCredentials(
+      adobePreCredentials.copy(postActivationCredentials = newPostCredentials)
+    )
+    this.steps.currentStepSucceeded(this.loginStrings.loginDeviceActivated)
   }
 
   private fun handleAdobeDRMConnectorException(ex: Throwable): TaskStep {
@@ -1,6 +1,10 @@
 package org.nypl.simplified.books.controller
 
 import com.google.common.base.Preconditions
+import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.MoreExecutors
+import com.google.common.util.concurrent.SettableFuture
 import org.librarysimplified.http.api.LSHTTPClientType
 import org.librarysimplified.http.api.LSHTTPRequestBuilderType
 import org.nypl.drm.core.AdobeAdeptExecutorType
@@ -18,6 +22,8 @@ import org.nypl.simplified.accounts.api.AccountLoginState.AccountNotLoggedIn
 import org.nypl.simplified.accounts.api.AccountLogoutStringResourcesType
 import org.nypl.simplified.accounts.database.api.AccountType
 import org.nypl.simplified.adobe.extensions.AdobeDRMExtensions
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.book_database.api.BookDatabaseEntryType
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookWithStatus
@@ -25,6 +31,11 @@ import org.nypl.simplified.feeds.api.Feed
 import org.nypl.simplified.feeds.api.FeedEntry
 import org.nypl.simplified.feeds.api.FeedLoaderResult
 import org.nypl.simplified.feeds.api.FeedLoaderType
+import org.nypl.simplified.futures.FluentFutureExtensions
+import org.nypl.simplified.futures.FluentFutureExtensions.flatMap
+import org.nypl.simplified.futures.FluentFutureExtensions.map
+import org.nypl.simplified.futures.FluentFutureExtensions.onAnyError
+import org.nypl.simplified.futures.FluentFutureExtensions.withTimeout
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.getOrNull
 import org.nypl.simplified.patron.api.PatronDRMAdobe
@@ -36,12 +47,28 @@ import org.slf4j.LoggerFactory
 import java.io.IOException
 import java.net.URI
 import java.util.concurrent.Callable
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * A task that performs a logout for the given account in the given profile.
+ *
+ * The OPDS entries of the account's books are refreshed in two stages: the entries are
+ * fetched with at most [opdsRefreshConcurrency] requests in flight, each of which is cancelled
+ * and abandoned after [opdsRefreshTimeoutMilliseconds], and then the fetched entries are
+ * written to the book database in a single pass. A request that has been abandoned counts
+ * towards the requests in flight until it has actually stopped.
+ *
+ * Neither device deactivation nor the OPDS entry refresh occupies a thread while waiting;
+ * the work that follows each of them is performed on the executor passed to [callAsync].
  */
 
 class ProfileAccountLogoutTask(
@@ -52,16 +79,54 @@ class ProfileAccountLogoutTask(
   private val http: LSHTTPClientType,
   private val logoutStrings: AccountLogoutStringResourcesType,
   private val patronParsers: PatronUserProfileParsersType,
-  private val profile: ProfileReadableType
+  private val profile: ProfileReadableType,
+  private val opdsRefreshConcurrency: Int = OPDS_REFRESH_CONCURRENCY_DEFAULT,
+  private val opdsRefreshTimeoutMilliseconds: Long = OPDS_REFRESH_TIMEOUT_MILLISECONDS_DEFAULT
 ) : Callable<TaskResult<Unit>> {
 
+  companion object {
+
+    /**
+     * The default maximum number of OPDS entries fetched at the same time.
+     */
+
+    const val OPDS_REFRESH_CONCURRENCY_DEFAULT = 4
+
+    /**
+     * The default time after which fetching a single OPDS entry is abandoned.
+     */
+
+    const val OPDS_REFRESH_TIMEOUT_MILLISECONDS_DEFAULT = 30_000L
+
+    private fun daemonThreadFactory(name: String): ThreadFactory {
+      val index = AtomicInteger(0)
+      return ThreadFactory { runnable ->
+        val thread = Thread(runnable, "$name-${index.incrementAndGet()}")
+        thread.isDaemon = true
+        thread
+      }
+    }
+  }
+
   private class StepFailedHandled(override val cause: Throwable) : Exception()
 
+  private class OPDSEntryRefresh(
+    val book: BookID,
+    val entry: BookDatabaseEntryType,
+    val alternate: URI
+  ) {
+    lateinit var result: ListenableFuture<FeedLoaderResult>
+  }
+
   init {
     Preconditions.checkState(
       this.profile.accounts().containsKey(this.account.id),
       "Profile must contain the given account"
     )
+    Preconditions.checkArgument(
+      this.opdsRefreshConcurrency > 0,
+      "OPDS refresh concurrency must be positive"
+    )
   }
 
   private lateinit var credentials: AccountAuthenticationCredentials
@@ -81,7 +146,15 @@ class ProfileAccountLogoutTask(
   private fun error(message: String, vararg arguments: Any?) =
     this.logger.error("[{}][{}] $message", this.profile.id.uuid, this.account.id, *arguments)
 
-  override fun call(): TaskResult<Unit> {
+  override fun call(): TaskResult<Unit> =
+    this.callAsync(MoreExecutors.directExecutor()).get()
+
+  /**
+   * Run the task, performing any work that follows a wait on the given executor. If the
+   * returned future is cancelled, the logout fails.
+   */
+
+  fun callAsync(executor: Executor): FluentFuture<TaskResult<Unit>> {
     this.steps.beginNewStep(this.logoutStrings.logoutStarted)
 
     this.credentials =
@@ -95,31 +168,50 @@ class ProfileAccountLogoutTask(
         is AccountLoggingOut -> {
           this.warn("attempted to log out with account in state {}", state.javaClass.canonicalName)
           this.steps.currentStepSucceeded(this.logoutStrings.logoutNotLoggedIn)
-          return this.steps.finishSuccess(Unit)
+          return FluentFutureExtensions.fluentFutureOfValue(this.steps.finishSuccess(Unit))
         }
       }
 
-    return try {
+    val result = try {
       this.updateLoggingOutState()
-      this.runDeviceDeactivation()
-      this.runUpdateOPDSEntries()
-      this.runBookRegistryClear()
-      this.account.setLoginState(AccountNotLoggedIn)
-      return this.steps.finishSuccess(Unit)
+      this.runDeviceDeactivation(executor)
+        .flatMap({ this.runUpdateOPDSEntries(executor) }, executor)
+        .map({
+          this.runBookRegistryClear()
+          this.account.setLoginState(AccountNotLoggedIn)
+          this.steps.finishSuccess(Unit)
+        }, executor)
     } catch (e: Throwable) {
-      this.steps.currentStepFailedAppending(
-        this.logoutStrings.logoutUnexpectedException,
-        "unexpectedException",
-        e
-      )
-
-      val failure = this.steps.finishFailure<Unit>()
-      this.account.setLoginState(AccountLogoutFailed(failure, this.credentials))
-      failure
+      return FluentFutureExtensions.fluentFutureOfValue(this.onLogoutFailed(e))
     }
+    val future = result.onAnyError({ e -> this.onLogoutFailed(e) }, executor)
+
+    /*
+     * A cancelled future never reaches the error handler above, so the account would
+     * otherwise be left logging out.
+     */
+
+    future.addListener({
+      if (future.isCancelled) {
+        this.onLogoutFailed(CancellationException("Logout cancelled"))
+      }
+    }, executor)
+    return future
+  }
+
+  private fun onLogoutFailed(e: Throwable): TaskResult<Unit> {
+    this.steps.currentStepFailedAppending(
+      this.logoutStrings.logoutUnexpectedException,
+      "unexpectedException",
+      e
+    )
+
+    val failure = this.steps.finishFailure<Unit>()
+    this.account.setLoginState(AccountLogoutFailed(failure, this.credentials))
+    return failure
   }
 
-  private fun runDeviceDeactivation() {
+  private fun runDeviceDeactivation(executor: Executor): FluentFuture<Unit> {
     this.debug("running device deactivation")
 
     this.steps.beginNewStep(this.logoutStrings.logoutDeactivatingDeviceAdobe)
@@ -127,9 +219,9 @@ class ProfileAccountLogoutTask(
 
     val adobeCredentialsMaybe = this.credentials.adobeCredentials
     if (adobeCredentialsMaybe != null) {
-      this.runDeviceDeactivationAdobe(adobeCredentialsMaybe)
-      return
+      return this.runDeviceDeactivationAdobe(adobeCredentialsMaybe, executor)
     }
+    return FluentFutureExtensions.fluentFutureOfValue(Unit)
   }
 
   private fun handlePatronUserProfile(): PatronDRMAdobe? {
@@ -147,13 +239,14 @@ class ProfileAccountLogoutTask(
   }
 
   private fun runDeviceDeactivationAdobe(
-    adobeCredentials: AccountAuthenticationAdobePreActivationCredentials
-  ) {
+    adobeCredentials: AccountAuthenticationAdobePreActivationCredentials,
+    executor: Executor
+  ): FluentFuture<Unit> {
     val postActivation = adobeCredentials.postActivationCredentials
     if (postActivation == null) {
       this.debug("device does not appear to be activated")
       this.steps.currentStepSucceeded(this.logoutStrings.logoutDeactivatingDeviceAdobeNotActive)
-      return
+      return FluentFutureExtensions.fluentFutureOfValue(Unit)
     }
 
     /*
@@ -167,7 +260,7 @@ class ProfileAccountLogoutTask(
     if (adeptExecutor == null) {
       this.warn("device is activated but DRM is unsupported")
       this.steps.currentStepSucceeded(this.logoutStrings.logoutDeactivatingDeviceAdobeUnsupported)
-      return
+      return FluentFutureExtensions.fluentFutureOfValue(Unit)
     }
 
     this.debug("device is activated and DRM is supported, running deactivation")
@@ -189,25 +282,22 @@ class ProfileAccountLogoutTask(
         clientToken = AccountAuthenticationAdobeClientToken.parse(token.clientToken)
       )
 
-    try {
-      adeptFuture.get(1L, TimeUnit.MINUTES)
-    } catch (e: ExecutionException) {
-      val ex = e.cause!!
-      this.logger.error("exception raised waiting for adept future: ", ex)
-      this.handleAdobeDRMConnectorException(ex)
-      throw ex
-    } catch (e: Throwable) {
-      this.logger.error("exception raised waiting for adept future: ", e)
-      this.handleAdobeDRMConnectorException(e)
-      throw e
-    }
-
-    this.credentials = this.credentials.withoutAdobePostActivationCredentials()
-    this.steps.currentStepSucceeded(this.logoutStrings.logoutDeactivatingDeviceAdobeDeactivated)
-
-    adobeCredentials.deviceManagerURI?.let { uri ->
-      this.runDeviceDeactivationAdobeSendDeviceManagerRequest(uri)
-    }
+    return FluentFuture.from(adeptFuture)
+      .withTimeout(1L, TimeUnit.MINUTES)
+      .onAnyError({ e ->
+        this.logger.error("exception raised waiting for adept future: ", e)
+        this.handleAdobeDRMConnectorException(e)
+        throw e
+      }, executor)
+      .map({
+        this.credentials = this.credentials.withoutAdobePostActivationCredentials()
+        this.steps.currentStepSucceeded(this.logoutStrings.logoutDeactivatingDeviceAdobeDeactivated)
+
+        val deviceManagerURI = adobeCredentials.deviceManagerURI
+        if (deviceManagerURI != null) {
+          this.runDeviceDeactivationAdobeSendDeviceManagerRequest(deviceManagerURI)
+        }
+      }, executor)
   }
 
   private fun runDeviceDeactivationAdobeSendDeviceManagerRequest(
@@ -260,26 +350,48 @@ class ProfileAccountLogoutTask(
     )
   }
 
-  private fun runUpdateOPDSEntries() {
+  private fun runUpdateOPDSEntries(executor: Executor): FluentFuture<Unit> {
     this.debug("updating OPDS entries in the database")
     this.updateLoggingOutState("Updating OPDS entries in the database.")
 
+    val refreshes = mutableListOf<OPDSEntryRefresh>()
     for (book in this.account.bookDatabase.books()) {
-      val stepDesc = this.logoutStrings.logoutUpdatingOPDSEntry(book.toString())
-      this.debug(stepDesc)
-      this.steps.beginNewStep(stepDesc)
-
       try {
         val entry = account.bookDatabase.entry(book)
         val alternate = entry.book.entry.alternate.getOrNull()
         if (alternate == null) {
+          this.steps.beginNewStep(this.logoutStrings.logoutUpdatingOPDSEntry(book.toString()))
           this.error("no alternate link available for book $book. skipping...")
           val message = this.logoutStrings.logoutNoAlternateLinkInDatabase
           this.steps.currentStepFailed(message, "noAlternateLink")
         } else {
-          val newFeedEntry = this.fetchOPDSEntry(alternate)
-          entry.writeOPDSEntry(newFeedEntry)
+          refreshes.add(OPDSEntryRefresh(book, entry, alternate))
         }
+      } catch (e: Exception) {
+        this.steps.beginNewStep(this.logoutStrings.logoutUpdatingOPDSEntry(book.toString()))
+        this.error("step failed with unexpected exception", e)
+        val message = this.logoutStrings.logoutUnexpectedException
+        this.steps.currentStepFailed(message, "unexpectedException", e)
+      }
+    }
+
+    if (refreshes.isEmpty()) {
+      return FluentFutureExtensions.fluentFutureOfValue(Unit)
+    }
+
+    return this.fetchOPDSEntries(refreshes)
+      .map({ this.writeOPDSEntries(refreshes) }, executor)
+  }
+
+  private fun writeOPDSEntries(refreshes: List<OPDSEntryRefresh>) {
+    for (refresh in refreshes) {
+      val stepDesc = this.logoutStrings.logoutUpdatingOPDSEntry(refresh.book.toString())
+      this.debug(stepDesc)
+      this.steps.beginNewStep(stepDesc)
+
+      try {
+        val newFeedEntry = this.opdsEntryOf(refresh.result)
+        refresh.entry.writeOPDSEntry(newFeedEntry)
       } catch (e: StepFailedHandled) {
         this.error("step failed with exception", e.cause)
       } catch (e: Exception) {
@@ -290,20 +402,108 @@ class ProfileAccountLogoutTask(
     }
   }
 
-  private fun fetchOPDSEntry(uri: URI): OPDSAcquisitionFeedEntry {
-    val feedResult = try {
+  /**
+   * Fetch the OPDS entries of all of the given books, returning a future that completes when
+   * every fetch has either completed or timed out. The requests are made on threads owned by
+   * this task so that a logout does not delay feeds being loaded elsewhere in the application.
+   */
+
+  private fun fetchOPDSEntries(refreshes: List<OPDSEntryRefresh>): FluentFuture<Unit> {
+    this.debug(
+      "fetching {} OPDS entries ({} at a time)",
+      refreshes.size,
+      this.opdsRefreshConcurrency
+    )
+
+    val requestExecutor =
+      MoreExecutors.listeningDecorator(
+        Executors.newCachedThreadPool(daemonThreadFactory("simplified-logout-opds"))
+      )
+
+    val timeThen = System.nanoTime()
+    val queued = ConcurrentLinkedQueue(refreshes)
+    val remaining = AtomicInteger(refreshes.size)
+    val completed = SettableFuture.create<Unit>()
+
+    /*
+     * Each fetch runs the request on a thread of its own and starts the next queued fetch
+     * when the request has stopped, so at most [opdsRefreshConcurrency] requests are in
+     * flight. A fetch that times out is cancelled, which interrupts its thread, and its result
+     * fails immediately; the next queued fetch still waits for the request to stop.
+     */
+
+    fun fetchNext() {
+      if (completed.isCancelled) {
+        return
+      }
+
+      val refresh = queued.poll() ?: return
+      val request =
+        requestExecutor.submit(
+          Callable {
+            try {
+              this.fetchOPDSEntry(refresh)
+            } finally {
+              fetchNext()
+            }
+          }
+        )
+
+      val future =
+        FluentFuture.from(request)
+          .withTimeout(this.opdsRefreshTimeoutMilliseconds, TimeUnit.MILLISECONDS)
+
+      refresh.result = future
+      future.addListener({
+        if (remaining.decrementAndGet() == 0) {
+          completed.set(Unit)
+        }
+      }, MoreExecutors.directExecutor())
+    }
+
+    completed.addListener({
+      requestExecutor.shutdown()
+      this.debug(
+        "fetched {} OPDS entries in {}ms",
+        refreshes.size,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timeThen)
+      )
+    }, MoreExecutors.directExecutor())
+
+    for (index in 0 until minOf(this.opdsRefreshConcurrency, refreshes.size)) {
+      fetchNext()
+    }
+    return FluentFuture.from(completed)
+  }
+
+  private fun fetchOPDSEntry(refresh: OPDSEntryRefresh): FeedLoaderResult {
+    val future =
       this.feedLoader.fetchURI(
         account = this.account.id,
-        uri = uri,
+        uri = refresh.alternate,
         auth = null,
-        method = "GET"
-      ).get()
-    } catch (e: TimeoutException) {
-      val message = this.logoutStrings.logoutOPDSFeedTimedOut
-      this.steps.currentStepFailed(message, "timedOut", e)
-      throw StepFailedHandled(e)
+        method = "GET",
+        executor = MoreExecutors.newDirectExecutorService()
+      )
+
+    try {
+      return future.get()
+    } catch (e: ExecutionException) {
+      throw e.cause ?: e
+    }
+  }
+
+  private fun opdsEntryOf(result: Future<FeedLoaderResult>): OPDSAcquisitionFeedEntry {
+    val feedResult = try {
+      result.get()
     } catch (e: ExecutionException) {
-      throw e.cause!!
+      val cause = e.cause!!
+      if (cause is TimeoutException) {
+        val message = this.logoutStrings.logoutOPDSFeedTimedOut
+        this.steps.currentStepFailed(message, "timedOut", cause)
+        throw StepFailedHandled(cause)
+      }
+      throw cause
     }
 
     val feed =
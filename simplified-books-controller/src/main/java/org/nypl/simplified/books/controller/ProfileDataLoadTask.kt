@@ -1,5 +1,6 @@
 package org.nypl.simplified.books.controller
 
+import org.nypl.simplified.books.api.Book
 import org.nypl.simplified.books.book_database.api.BookDatabaseException
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
@@ -7,38 +8,101 @@ import org.nypl.simplified.books.book_registry.BookWithStatus
 import org.nypl.simplified.profiles.api.ProfileType
 import org.slf4j.LoggerFactory
 
+/**
+ * A task that loads the books of every account in a profile into the book registry.
+ *
+ * Books are loaded in two stages: [loadFirstPage] replaces the contents of the registry with
+ * up to [firstPageSize] books, and [loadRemaining] adds all of the remaining books. The first
+ * page holds the books that the My Books feed lists first, sorted by title. Each stage
+ * publishes a single registry snapshot event, and the status of each book is only computed
+ * when it is first accessed.
+ */
+
 class ProfileDataLoadTask(
   private val profile: ProfileType,
-  private val bookRegistry: BookRegistryType
+  private val bookRegistry: BookRegistryType,
+  private val firstPageSize: Int = FIRST_PAGE_SIZE
 ) : Runnable {
 
+  companion object {
+
+    /**
+     * The default number of books loaded before profile selection completes.
+     */
+
+    const val FIRST_PAGE_SIZE = 50
+  }
+
   private val logger = LoggerFactory.getLogger(ProfileDataLoadTask::class.java)
 
+  private var remaining: List<Book> = listOf()
+
   override fun run() {
+    this.loadFirstPage()
+    this.loadRemaining()
+  }
+
+  /**
+   * Replace the contents of the registry with the first page of books.
+   */
+
+  fun loadFirstPage() {
+    this.logger.debug("load: profile {}", this.profile.displayName)
+
+    val books = this.loadBooks().sortedWith(ProfileFeedTask.TITLE_ORDER)
+    val firstPage = books.take(this.firstPageSize)
+    this.remaining = books.drop(firstPage.size)
+
+    this.logger.debug(
+      "load: updating {} of {} books",
+      firstPage.size,
+      books.size
+    )
+    this.bookRegistry.updateAll(
+      statuses = this.statusesOf(firstPage),
+      replace = true,
+      complete = this.remaining.isEmpty()
+    )
+  }
+
+  /**
+   * Add the books that were not loaded by [loadFirstPage] to the registry.
+   */
+
+  fun loadRemaining() {
     try {
-      this.logger.debug("load: profile {}", this.profile.displayName)
-      this.logger.debug("clearing the book registry")
-      this.bookRegistry.clear()
-
-      val accounts = this.profile.accounts()
-      for (account in accounts.values) {
-        this.logger.debug("load: profile {} / account {}", this.profile.displayName, account.id)
-        val books = account.bookDatabase
-        val bookIDs = books.books()
-        this.logger.debug("load: updating {} books", bookIDs.size)
-        for (bookId in bookIDs) {
-          try {
-            val entry = books.entry(bookId)
-            val book = entry.book
-            val status = BookStatus.fromBook(book)
-            this.bookRegistry.update(BookWithStatus(book, status))
-          } catch (e: BookDatabaseException) {
-            this.logger.error("load: could not load book {}: ", bookId.value(), e)
-          }
-        }
+      val books = this.remaining
+      this.remaining = listOf()
+      if (books.isEmpty()) {
+        return
       }
+
+      this.logger.debug("load: updating {} remaining books", books.size)
+      this.bookRegistry.updateAll(
+        statuses = this.statusesOf(books),
+        replace = false,
+        complete = true
+      )
     } finally {
       this.logger.debug("load: profile {} loaded", this.profile.displayName)
     }
   }
+
+  private fun loadBooks(): List<Book> {
+    val results = ArrayList<Book>()
+    for (account in this.profile.accounts().values) {
+      val database = account.bookDatabase
+      for (bookId in database.books()) {
+        try {
+          results.add(database.entry(bookId).book)
+        } catch (e: BookDatabaseException) {
+          this.logger.error("load: could not load book {}: ", bookId.value(), e)
+        }
+      }
+    }
+    return results
+  }
+
+  private fun statusesOf(books: List<Book>): List<BookWithStatus> =
+    books.map { book -> BookWithStatus.deferred(book) { b -> BookStatus.fromBook(b) } }
 }
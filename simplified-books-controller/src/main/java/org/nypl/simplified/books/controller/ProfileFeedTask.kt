@@ -2,6 +2,8 @@ package org.nypl.simplified.books.controller
 
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.accounts.api.AccountLoginState
+import org.nypl.simplified.books.api.Book
+import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.book_registry.BookRegistryReadableType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookWithStatus
@@ -26,9 +28,21 @@ internal class ProfileFeedTask(
   private val bookFormatSupport: BookFormatSupportType,
   private val bookRegistry: BookRegistryReadableType,
   private val profiles: ProfilesControllerType,
-  private val request: ProfileFeedRequest
+  private val request: ProfileFeedRequest,
+  private val textMatches: Set<BookID> = setOf()
 ) : Callable<Feed.FeedWithoutGroups> {
 
+  companion object {
+
+    /**
+     * The order of books sorted by title, which is the order in which the feed lists books
+     * unless another order is requested.
+     */
+
+    val TITLE_ORDER: Comparator<Book> =
+      Comparator { book0, book1 -> book0.entry.title.compareTo(book1.entry.title) }
+  }
+
   private val logger =
     LoggerFactory.getLogger(ProfileFeedTask::class.java)
 
@@ -125,7 +139,8 @@ internal class ProfileFeedTask(
   }
 
   /**
-   * Filter the given books by the given search terms.
+   * Filter the given books by the given search terms. A book matches if its metadata contains
+   * every term, or if the full text of its downloaded content does.
    */
 
   private fun searchBooks(
@@ -140,7 +155,7 @@ internal class ProfileFeedTask(
     val iterator = books.iterator()
     while (iterator.hasNext()) {
       val book = iterator.next()
-      if (!this.searchMatches(termsUpper, book)) {
+      if (!this.searchMatches(termsUpper, book) && !this.textMatches.contains(book.book.id)) {
         iterator.remove()
       }
     }
@@ -175,9 +190,7 @@ internal class ProfileFeedTask(
 
   private fun sortBooksByTitle(books: ArrayList<BookWithStatus>) {
     Collections.sort(books) { book0, book1 ->
-      val entry0 = book0.book.entry
-      val entry1 = book1.book.entry
-      entry0.title.compareTo(entry1.title)
+      TITLE_ORDER.compare(book0.book, book1.book)
     }
   }
 
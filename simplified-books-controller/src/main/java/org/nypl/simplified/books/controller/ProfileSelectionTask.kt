@@ -5,6 +5,7 @@ import org.joda.time.LocalDateTime
 import org.nypl.simplified.analytics.api.AnalyticsEvent
 import org.nypl.simplified.analytics.api.AnalyticsType
 import org.nypl.simplified.books.book_registry.BookRegistryType
+import org.nypl.simplified.metrics.api.Tracing
 import org.nypl.simplified.profiles.api.ProfileAnonymousEnabledException
 import org.nypl.simplified.profiles.api.ProfileEvent
 import org.nypl.simplified.profiles.api.ProfileID
@@ -28,20 +29,29 @@ class ProfileSelectionTask(
 
   @Throws(ProfileNonexistentException::class, ProfileAnonymousEnabledException::class)
   override fun call() {
-    try {
-      this.logger.debug("[{}]: profile selection in progress", this.id.uuid)
-      if (this.profiles.anonymousProfileEnabled() === ANONYMOUS_PROFILE_ENABLED) {
+    val span = Tracing.begin("profileSelection", "profiles")
+    val loadTask =
+      try {
+        this.logger.debug("[{}]: profile selection in progress", this.id.uuid)
+        if (this.profiles.anonymousProfileEnabled() != ANONYMOUS_PROFILE_ENABLED) {
+          this.profiles.setProfileCurrent(this.id)
+        }
         this.events.onNext(ProfileSelectionInProgress(this.id))
-        return this.loadData()
+        this.loadFirstPage()
+      } finally {
+        span.close()
+        this.logger.debug("[{}]: profile selection completed", this.id.uuid)
+        this.events.onNext(ProfileSelection.ProfileSelectionCompleted(this.id))
+        this.publishAnalyticsEvent()
       }
 
-      this.profiles.setProfileCurrent(this.id)
-      this.events.onNext(ProfileSelectionInProgress(this.id))
-      return this.loadData()
-    } finally {
-      this.logger.debug("[{}]: profile selection completed", this.id.uuid)
-      this.events.onNext(ProfileSelection.ProfileSelectionCompleted(this.id))
-      this.publishAnalyticsEvent()
+    /*
+     * The rest of the profile's books are loaded after selection has completed so that
+     * the first page of books can be displayed as early as possible.
+     */
+
+    Tracing.trace("profileDataLoadRemaining", "profiles") {
+      loadTask.loadRemaining()
     }
   }
 
@@ -58,11 +68,15 @@ class ProfileSelectionTask(
     )
   }
 
-  private fun loadData() {
-    return ProfileDataLoadTask(
-      profile = this.profiles.currentProfileUnsafe(),
-      bookRegistry = this.bookRegistry
-    )
-      .run()
+  private fun loadFirstPage(): ProfileDataLoadTask {
+    val task =
+      ProfileDataLoadTask(
+        profile = this.profiles.currentProfileUnsafe(),
+        bookRegistry = this.bookRegistry
+      )
+    Tracing.trace("profileDataLoadFirstPage", "profiles") {
+      task.loadFirstPage()
+    }
+    return task
   }
 }
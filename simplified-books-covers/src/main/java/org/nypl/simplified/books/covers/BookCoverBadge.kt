@@ -7,6 +7,15 @@ import android.graphics.Bitmap
  */
 
 data class BookCoverBadge(
+
+  /**
+   * A name that uniquely identifies the badge image, such as "audiobook". Two badges with
+   * the same name, size, and background color are assumed to produce identical badged
+   * covers, and this is used to share badged covers in the image cache.
+   */
+
+  val id: String,
+
   val bitmap: Bitmap,
   val width: Int,
   val height: Int,
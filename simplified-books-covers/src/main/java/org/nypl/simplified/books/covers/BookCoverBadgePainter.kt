@@ -5,51 +5,70 @@ import android.graphics.Canvas
 import android.graphics.Paint
 import android.graphics.Rect
 import com.squareup.picasso.Transformation
-import org.nypl.simplified.feeds.api.FeedEntry
 
 /**
- * An image transformer that optionally adds a badge image to the loaded book cover.
+ * An image transformer that adds a badge image to the loaded book cover.
+ *
+ * The badge is drawn directly onto the loaded cover when the cover bitmap is mutable, which
+ * is the case for resized and generated covers; otherwise the cover is copied exactly once.
+ * The transformation key identifies the badge, so that badged covers can be shared in the
+ * image cache with other books that have the same badge, and are never confused with
+ * unbadged covers.
  */
 
 class BookCoverBadgePainter(
-  val entry: FeedEntry.FeedEntryOPDS,
-  val badges: BookCoverBadgeLookupType
+  val badge: BookCoverBadge
 ) : Transformation {
 
+  private val colorBackground: Int =
+    this.badge.backgroundColorRGBA()
+
+  private val key: String =
+    StringBuilder(96)
+      .append("org.nypl.simplified.books.covers.BookCoverBadgePainter[")
+      .append(this.badge.id)
+      .append(' ')
+      .append(this.badge.width)
+      .append('x')
+      .append(this.badge.height)
+      .append(" #")
+      .append(Integer.toHexString(this.colorBackground))
+      .append(']')
+      .toString()
+
   override fun key(): String {
-    return "org.nypl.simplified.books.covers.BookCoverBadgePainter"
+    return this.key
   }
 
   override fun transform(source: Bitmap): Bitmap {
-    val badge = this.badges.badgeForEntry(this.entry)
-    if (badge == null) {
-      return source
-    }
+    val result =
+      if (source.isMutable) {
+        source
+      } else {
+        val copy = source.copy(source.config ?: Bitmap.Config.ARGB_8888, true)
+        source.recycle()
+        copy
+      }
 
-    val workingBitmap = Bitmap.createBitmap(source)
-    val result = workingBitmap.copy(source.config, true)
     val canvas = Canvas(result)
 
-    val left = source.width - badge.width
-    val right = source.width
-    val top = source.height - badge.height
-    val bottom = source.height
+    val left = result.width - this.badge.width
+    val right = result.width
+    val top = result.height - this.badge.height
+    val bottom = result.height
     val targetRect = Rect(left, top, right, bottom)
 
-    val colorBackground = badge.backgroundColorRGBA()
-    if (colorBackground != 0x00_00_00_00) {
+    if (this.colorBackground != 0x00_00_00_00) {
       val backgroundPaint = Paint()
-      backgroundPaint.color = colorBackground
+      backgroundPaint.color = this.colorBackground
       backgroundPaint.isAntiAlias = true
       canvas.drawRect(targetRect, backgroundPaint)
     }
 
     val imagePaint = Paint()
     imagePaint.isAntiAlias = true
-    val sourceRect = Rect(0, 0, badge.bitmap.width, badge.bitmap.height)
-    canvas.drawBitmap(badge.bitmap, sourceRect, targetRect, imagePaint)
-
-    source.recycle()
+    val sourceRect = Rect(0, 0, this.badge.bitmap.width, this.badge.bitmap.height)
+    canvas.drawBitmap(this.badge.bitmap, sourceRect, targetRect, imagePaint)
     return result
   }
 }
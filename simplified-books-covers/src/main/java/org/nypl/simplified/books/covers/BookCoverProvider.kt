@@ -9,6 +9,7 @@ import com.io7m.jfunctional.OptionType
 import com.io7m.jfunctional.Some
 import com.squareup.picasso.Callback
 import com.squareup.picasso.Picasso
+import com.squareup.picasso.RequestCreator
 import org.nypl.simplified.books.book_registry.BookRegistryReadableType
 import org.nypl.simplified.books.bundled.api.BundledContentResolverType
 import org.nypl.simplified.feeds.api.FeedEntry
@@ -80,7 +81,8 @@ class BookCoverProvider private constructor(
       }
     }
 
-    val badgePainter = BookCoverBadgePainter(entry, this.badgeLookup)
+    val badgePainter =
+      this.badgeLookup.badgeForEntry(entry)?.let(::BookCoverBadgePainter)
     if (uriSpecified != null) {
       this.logger.debug("{}: {}: loading specified uri {}", tag, entry.bookID, uriSpecified)
 
@@ -98,36 +100,46 @@ class BookCoverProvider private constructor(
             e
           )
 
-          this@BookCoverProvider.picasso.load(uriGenerated.toString())
-            .tag(tag)
-            .error(R.drawable.cover_error)
-            .placeholder(R.drawable.cover_loading)
-            .resize(width, height)
-            .transform(badgePainter)
+          this@BookCoverProvider.request(uriGenerated, tag, width, height, badgePainter)
             .into(imageView, callbackFinal)
         }
       }
 
-      this.picasso.load(uriSpecified.toString())
-        .tag(tag)
-        .error(R.drawable.cover_error)
-        .placeholder(R.drawable.cover_loading)
-        .resize(width, height)
-        .transform(badgePainter)
+      this.request(uriSpecified, tag, width, height, badgePainter)
         .into(imageView, fallbackToGeneration)
     } else {
       this.logger.debug("{}: {}: loading generated uri {}", tag, entry.bookID, uriGenerated)
 
-      this.picasso.load(uriGenerated.toString())
+      this.request(uriGenerated, tag, width, height, badgePainter)
+        .into(imageView, callbackFinal)
+    }
+
+    return FluentFuture.from(future)
+  }
+
+  /**
+   * Create a request for the given image. Covers without badges are not transformed, so
+   * that they share cache entries with every other request for the same image.
+   */
+
+  private fun request(
+    uri: URI,
+    tag: String,
+    width: Int,
+    height: Int,
+    badgePainter: BookCoverBadgePainter?
+  ): RequestCreator {
+    val request =
+      this.picasso.load(uri.toString())
         .tag(tag)
         .error(R.drawable.cover_error)
         .placeholder(R.drawable.cover_loading)
         .resize(width, height)
-        .transform(badgePainter)
-        .into(imageView, callbackFinal)
-    }
 
-    return FluentFuture.from(future)
+    if (badgePainter != null) {
+      request.transform(badgePainter)
+    }
+    return request
   }
 
   private fun coverURIOf(entry: FeedEntry.FeedEntryOPDS): URI? {
@@ -200,6 +212,7 @@ class BookCoverProvider private constructor(
      * @param bundledContentResolver A bundled content resolver
      * @param bookRegistry The book registry
      * @param coverGenerator A cover generator
+     * @param coverStore The store used for remote covers
      * @param executor An executor
      *
      * @return A new cover provider
@@ -211,6 +224,7 @@ class BookCoverProvider private constructor(
       coverGenerator: BookCoverGeneratorType,
       badgeLookup: BookCoverBadgeLookupType,
       bundledContentResolver: BundledContentResolverType,
+      coverStore: BookCoverStoreType,
       executor: ExecutorService,
       debugCacheIndicators: Boolean,
       debugLogging: Boolean
@@ -221,6 +235,7 @@ class BookCoverProvider private constructor(
       picassoBuilder.loggingEnabled(debugLogging)
       picassoBuilder.addRequestHandler(BookCoverGeneratorRequestHandler(coverGenerator))
       picassoBuilder.addRequestHandler(BookCoverBundledRequestHandler(bundledContentResolver))
+      picassoBuilder.addRequestHandler(BookCoverStoreRequestHandler(coverStore))
       picassoBuilder.executor(executor)
 
       val picasso = picassoBuilder.build()
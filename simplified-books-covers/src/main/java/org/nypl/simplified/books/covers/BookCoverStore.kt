@@ -0,0 +1,192 @@
+package org.nypl.simplified.books.covers
+
+import org.nypl.simplified.files.FileUtilities
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.IOException
+import java.net.URI
+import java.security.MessageDigest
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * The default implementation of the [BookCoverStoreType] interface.
+ *
+ * Each stored image is a single file in the store directory. The recency of each file is
+ * recorded in its modification time, so that the least recently used images are evicted first
+ * even across restarts.
+ */
+
+class BookCoverStore private constructor(
+  private val directory: File,
+  private val maximumBytes: Long
+) : BookCoverStoreType {
+
+  companion object {
+
+    /**
+     * The default size bound of a cover store.
+     */
+
+    const val MAXIMUM_BYTES_DEFAULT = 64L * 1024L * 1024L
+
+    /**
+     * Open the cover store in the given directory, creating it if necessary.
+     */
+
+    fun open(
+      directory: File,
+      maximumBytes: Long = MAXIMUM_BYTES_DEFAULT
+    ): BookCoverStoreType {
+      directory.mkdirs()
+      val store = BookCoverStore(directory, maximumBytes)
+      store.load()
+      return store
+    }
+
+    /**
+     * @return The key under which images fetched from the given URI are stored
+     */
+
+    fun keyOf(uri: URI): String {
+      val digest = MessageDigest.getInstance("SHA-256")
+      val bytes = digest.digest(uri.toString().toByteArray(Charsets.UTF_8))
+      val text = StringBuilder(bytes.size * 2)
+      for (byte in bytes) {
+        text.append(String.format("%02x", byte))
+      }
+      return text.toString()
+    }
+  }
+
+  private val logger =
+    LoggerFactory.getLogger(BookCoverStore::class.java)
+
+  private val lock = Any()
+
+  /*
+   * The stored files and their sizes, in access order.
+   */
+
+  private val entries =
+    LinkedHashMap<String, Long>(64, 0.75f, true)
+
+  private var sizeBytes = 0L
+
+  private val hits = AtomicLong(0L)
+  private val misses = AtomicLong(0L)
+  private val evictions = AtomicLong(0L)
+
+  private fun load() {
+    val files = this.directory.listFiles() ?: arrayOf()
+    val stored = mutableListOf<File>()
+    for (file in files) {
+      if (file.name.endsWith(".tmp")) {
+        file.delete()
+      } else if (file.isFile) {
+        stored.add(file)
+      }
+    }
+
+    stored.sortBy { file -> file.lastModified() }
+    synchronized(this.lock) {
+      for (file in stored) {
+        val size = file.length()
+        this.entries[file.name] = size
+        this.sizeBytes += size
+      }
+      this.evictLocked(keep = null)
+    }
+
+    this.logger.debug("opened cover store with {} images ({} bytes)", stored.size, this.sizeBytes)
+  }
+
+  private fun nameOf(
+    uri: URI,
+    variant: BookCoverVariant
+  ): String =
+    "${keyOf(uri)}-${variant.name}.jpg"
+
+  override fun file(
+    uri: URI,
+    variant: BookCoverVariant
+  ): File? {
+    val name = this.nameOf(uri, variant)
+    val present = synchronized(this.lock) {
+      this.entries[name] != null
+    }
+
+    val file = File(this.directory, name)
+    if (!present || !file.isFile) {
+      if (present) {
+        this.removeEntry(name)
+      }
+      this.misses.incrementAndGet()
+      return null
+    }
+
+    file.setLastModified(System.currentTimeMillis())
+    this.hits.incrementAndGet()
+    return file
+  }
+
+  override fun put(
+    uri: URI,
+    variant: BookCoverVariant,
+    data: ByteArray
+  ): File {
+    val name = this.nameOf(uri, variant)
+    val file = File(this.directory, name)
+    val fileTmp = File(this.directory, "$name.${UUID.randomUUID()}.tmp")
+    FileUtilities.fileWriteBytesAtomically(file, fileTmp, data)
+
+    synchronized(this.lock) {
+      val previous = this.entries.put(name, data.size.toLong()) ?: 0L
+      this.sizeBytes += data.size.toLong() - previous
+      this.evictLocked(keep = name)
+    }
+    return file
+  }
+
+  private fun removeEntry(name: String) {
+    synchronized(this.lock) {
+      val size = this.entries.remove(name)
+      if (size != null) {
+        this.sizeBytes -= size
+      }
+    }
+  }
+
+  private fun evictLocked(keep: String?) {
+    val iterator = this.entries.entries.iterator()
+    while (this.sizeBytes > this.maximumBytes && iterator.hasNext()) {
+      val entry = iterator.next()
+      if (entry.key == keep) {
+        continue
+      }
+
+      iterator.remove()
+      this.sizeBytes -= entry.value
+      this.evictions.incrementAndGet()
+
+      try {
+        FileUtilities.fileDelete(File(this.directory, entry.key))
+      } catch (e: IOException) {
+        this.logger.error("could not delete evicted cover {}: ", entry.key, e)
+      }
+    }
+  }
+
+  override fun statistics(): BookCoverStoreStatistics {
+    return synchronized(this.lock) {
+      BookCoverStoreStatistics(
+        entries = this.entries.size,
+        sizeBytes = this.sizeBytes,
+        maximumBytes = this.maximumBytes,
+        hits = this.hits.get(),
+        misses = this.misses.get(),
+        evictions = this.evictions.get()
+      )
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package org.nypl.simplified.books.covers
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import com.squareup.picasso.Picasso
+import com.squareup.picasso.Request
+import com.squareup.picasso.RequestHandler
+import org.slf4j.LoggerFactory
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.URI
+import java.net.URL
+
+/**
+ * A request handler that serves remote covers from a [BookCoverStoreType].
+ *
+ * When a cover is not in the store, the original image is fetched once, every
+ * [BookCoverVariant] is generated from it, and all of the variants are stored. Later requests
+ * for the cover at any size are then served from the store.
+ */
+
+class BookCoverStoreRequestHandler(
+  private val store: BookCoverStoreType
+) : RequestHandler() {
+
+  private val logger =
+    LoggerFactory.getLogger(BookCoverStoreRequestHandler::class.java)
+
+  private companion object {
+    const val CONNECT_TIMEOUT_MILLISECONDS = 15_000
+    const val READ_TIMEOUT_MILLISECONDS = 30_000
+    const val JPEG_QUALITY = 85
+  }
+
+  override fun canHandleRequest(
+    data: Request
+  ): Boolean {
+    val scheme = data.uri?.scheme
+    return scheme == "http" || scheme == "https"
+  }
+
+  override fun load(
+    request: Request,
+    networkPolicy: Int
+  ): Result {
+    val uri = URI.create(request.uri.toString())
+    val variant = BookCoverVariant.forSize(request.targetWidth, request.targetHeight)
+
+    val stored = this.store.file(uri, variant)
+    if (stored != null) {
+      val bitmap =
+        BitmapFactory.decodeFile(stored.path)
+          ?: throw IOException("Unable to decode stored cover $stored")
+      return Result(bitmap, Picasso.LoadedFrom.DISK)
+    }
+
+    val original = this.fetch(uri)
+    val bitmap = this.storeVariants(uri, original, variant)
+    return Result(bitmap, Picasso.LoadedFrom.NETWORK)
+  }
+
+  private fun storeVariants(
+    uri: URI,
+    original: ByteArray,
+    requested: BookCoverVariant
+  ): Bitmap {
+    val decoded = this.decodeSampled(original)
+
+    var result: Bitmap? = null
+    for (variant in BookCoverVariant.values()) {
+      val scaled = this.scale(decoded, variant)
+      val output = ByteArrayOutputStream(original.size)
+      scaled.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, output)
+      this.store.put(uri, variant, output.toByteArray())
+
+      if (variant == requested) {
+        result = scaled
+      } else if (scaled !== decoded) {
+        scaled.recycle()
+      }
+    }
+
+    if (result !== decoded) {
+      decoded.recycle()
+    }
+
+    this.logger.debug("stored cover variants for {}", uri)
+    return result!!
+  }
+
+  /*
+   * Decode the image, subsampling it if it is much larger than the largest variant.
+   */
+
+  private fun decodeSampled(data: ByteArray): Bitmap {
+    val bounds = BitmapFactory.Options()
+    bounds.inJustDecodeBounds = true
+    BitmapFactory.decodeByteArray(data, 0, data.size, bounds)
+
+    val largest = BookCoverVariant.DETAIL
+    var sampleSize = 1
+    while (bounds.outWidth / (sampleSize * 2) >= largest.maximumWidth &&
+      bounds.outHeight / (sampleSize * 2) >= largest.maximumHeight
+    ) {
+      sampleSize *= 2
+    }
+
+    val options = BitmapFactory.Options()
+    options.inSampleSize = sampleSize
+    return BitmapFactory.decodeByteArray(data, 0, data.size, options)
+      ?: throw IOException("Unable to decode cover image")
+  }
+
+  private fun scale(
+    bitmap: Bitmap,
+    variant: BookCoverVariant
+  ): Bitmap {
+    val scale =
+      minOf(
+        variant.maximumWidth.toDouble() / bitmap.width.toDouble(),
+        variant.maximumHeight.toDouble() / bitmap.height.toDouble()
+      )
+    if (scale >= 1.0) {
+      return bitmap
+    }
+
+    val width = maxOf(1, (bitmap.width * scale).toInt())
+    val height = maxOf(1, (bitmap.height * scale).toInt())
+    return Bitmap.createScaledBitmap(bitmap, width, height, true)
+  }
+
+  private fun fetch(uri: URI): ByteArray {
+    val connection = URL(uri.toString()).openConnection() as HttpURLConnection
+    try {
+      connection.connectTimeout = CONNECT_TIMEOUT_MILLISECONDS
+      connection.readTimeout = READ_TIMEOUT_MILLISECONDS
+      connection.instanceFollowRedirects = true
+
+      val code = connection.responseCode
+      if (code >= 300) {
+        throw IOException("$uri: HTTP $code ${connection.responseMessage}")
+      }
+      return connection.inputStream.use { stream -> stream.readBytes() }
+    } finally {
+      connection.disconnect()
+    }
+  }
+}
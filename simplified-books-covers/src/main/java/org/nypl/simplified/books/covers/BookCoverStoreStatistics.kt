@@ -0,0 +1,44 @@
+package org.nypl.simplified.books.covers
+
+/**
+ * Statistics of a cover store.
+ */
+
+data class BookCoverStoreStatistics(
+
+  /**
+   * The number of stored images.
+   */
+
+  val entries: Int,
+
+  /**
+   * The total size of the stored images.
+   */
+
+  val sizeBytes: Long,
+
+  /**
+   * The size bound of the store.
+   */
+
+  val maximumBytes: Long,
+
+  /**
+   * The number of lookups that found a stored image.
+   */
+
+  val hits: Long,
+
+  /**
+   * The number of lookups that did not find a stored image.
+   */
+
+  val misses: Long,
+
+  /**
+   * The number of images evicted to keep the store within its size bound.
+   */
+
+  val evictions: Long
+)
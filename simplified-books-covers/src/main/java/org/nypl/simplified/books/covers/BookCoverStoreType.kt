@@ -0,0 +1,45 @@
+package org.nypl.simplified.books.covers
+
+import java.io.File
+import java.io.IOException
+import java.net.URI
+
+/**
+ * A persistent, size-bounded store of cover images.
+ *
+ * Images are addressed by a hash of the URI from which they were fetched, so the same cover
+ * is stored once regardless of how many feeds, lanes, or accounts refer to it. Each cover is
+ * held in every [BookCoverVariant]. When the store exceeds its size bound, the least recently
+ * used images are evicted.
+ */
+
+interface BookCoverStoreType {
+
+  /**
+   * @return The stored file for the given variant of the image at [uri], if one exists
+   */
+
+  fun file(
+    uri: URI,
+    variant: BookCoverVariant
+  ): File?
+
+  /**
+   * Store the given variant of the image at [uri].
+   *
+   * @return The stored file
+   */
+
+  @Throws(IOException::class)
+  fun put(
+    uri: URI,
+    variant: BookCoverVariant,
+    data: ByteArray
+  ): File
+
+  /**
+   * @return The current statistics of the store
+   */
+
+  fun statistics(): BookCoverStoreStatistics
+}
@@ -0,0 +1,52 @@
+package org.nypl.simplified.books.covers
+
+/**
+ * The pre-scaled variants of each cover held in the cover store.
+ */
+
+enum class BookCoverVariant(
+
+  /**
+   * The maximum width of the variant.
+   */
+
+  val maximumWidth: Int,
+
+  /**
+   * The maximum height of the variant.
+   */
+
+  val maximumHeight: Int
+) {
+
+  /**
+   * The variant shown in catalog lanes and lists.
+   */
+
+  THUMBNAIL(maximumWidth = 320, maximumHeight = 480),
+
+  /**
+   * The variant shown on book detail screens.
+   */
+
+  DETAIL(maximumWidth = 800, maximumHeight = 1200);
+
+  companion object {
+
+    /**
+     * @return The smallest variant that can be displayed at the given size without being
+     * scaled up. A dimension of `0` means that the dimension is not constrained.
+     */
+
+    fun forSize(
+      width: Int,
+      height: Int
+    ): BookCoverVariant {
+      return if (width <= THUMBNAIL.maximumWidth && height <= THUMBNAIL.maximumHeight) {
+        THUMBNAIL
+      } else {
+        DETAIL
+      }
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package org.nypl.simplified.books.book_database.api
 
 import one.irradia.mime.api.MIMEType
+import org.joda.time.Instant
 import org.librarysimplified.audiobook.api.PlayerPosition
 import org.nypl.simplified.books.api.Book
 import org.nypl.simplified.books.api.BookDRMKind
@@ -169,6 +170,22 @@ sealed class BookDatabaseEntryFormatHandle {
   @Throws(IOException::class)
   abstract fun deleteBookData()
 
+  /**
+   * The time at which the book data was last opened for reading, or `null` if it has never
+   * been opened.
+   */
+
+  abstract val lastOpened: Instant?
+
+  /**
+   * Record the time at which the book data was opened for reading.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  abstract fun setLastOpened(time: Instant)
+
   /**
    * The interface exposed by the EPUB format in database entries.
    */
@@ -191,6 +208,18 @@ sealed class BookDatabaseEntryFormatHandle {
     @Throws(IOException::class)
     abstract fun copyInBook(file: File)
 
+    /**
+     * Move the given EPUB file into the directory as the book data. The file is renamed if it
+     * is on the same file system as the database, and is otherwise copied and then deleted.
+     *
+     * @param file The file to be moved
+     *
+     * @throws IOException On I/O errors
+     */
+
+    @Throws(IOException::class)
+    abstract fun moveInBook(file: File)
+
     /**
      * Set the last read location for the book.
      *
@@ -212,6 +241,36 @@ sealed class BookDatabaseEntryFormatHandle {
 
     @Throws(IOException::class)
     abstract fun setBookmarks(bookmarks: List<Bookmark>)
+
+    /**
+     * Retrieve the index of the book data. The index is built when the book is copied in, and
+     * is rebuilt if it is missing or no longer matches the book data.
+     *
+     * @return The index, or `null` if there is no book data or the book data can't be indexed
+     */
+
+    abstract fun index(): EPUBIndex?
+
+    /**
+     * Retrieve the full-text index of the book data, if one has been built and still matches
+     * the book data.
+     *
+     * @return The full-text index, or `null` if there is no current full-text index
+     */
+
+    abstract fun textIndex(): BookTextIndexType?
+
+    /**
+     * Build the full-text index of the book data if there is no current full-text index.
+     * Books protected by DRM are not indexed.
+     *
+     * @return The full-text index, or `null` if the book data can't be indexed
+     *
+     * @throws IOException On I/O errors
+     */
+
+    @Throws(IOException::class)
+    abstract fun buildTextIndex(): BookTextIndexType?
   }
 
   /**
@@ -1,5 +1,6 @@
 package org.nypl.simplified.books.book_database.api
 
+import org.joda.time.Instant
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
@@ -55,6 +56,23 @@ interface BookDatabaseType {
     entry: OPDSAcquisitionFeedEntry
   ): BookDatabaseEntryType
 
+  /**
+   * Create new, or update existing, database entries for all of the given books. Databases
+   * that are able to do so write all of the entries in a single atomic operation, in which
+   * case either all of the entries are written or none are. The default implementation calls
+   * [createOrUpdate] for each book in turn.
+   *
+   * @param entries The current OPDS entries of the books
+   * @return The database entries
+   * @throws BookDatabaseException On errors
+   */
+
+  @Throws(BookDatabaseException::class)
+  fun createOrUpdateAll(
+    entries: Map<BookID, OPDSAcquisitionFeedEntry>
+  ): Map<BookID, BookDatabaseEntryType> =
+    entries.mapValues { (id, entry) -> this.createOrUpdate(id, entry) }
+
   /**
    * Find an existing database entry for the given book ID.
    *
@@ -65,4 +83,44 @@ interface BookDatabaseType {
 
   @Throws(BookDatabaseException::class)
   fun entry(id: BookID): BookDatabaseEntryType
+
+  /**
+   * @return The books in the database that are queued for download, in the order in which
+   * they were queued
+   */
+
+  fun downloadsQueued(): List<BookID>
+
+  /**
+   * Record that the given book is queued for download. The queue is written to storage
+   * before this method returns, and so survives the application being restarted.
+   *
+   * @param id The book ID
+   * @throws BookDatabaseException On errors
+   */
+
+  @Throws(BookDatabaseException::class)
+  fun downloadQueued(id: BookID)
+
+  /**
+   * Record that the given book is no longer queued for download, either because the download
+   * has finished (successfully or otherwise) or because it was cancelled.
+   *
+   * @param id The book ID
+   * @throws BookDatabaseException On errors
+   */
+
+  @Throws(BookDatabaseException::class)
+  fun downloadFinished(id: BookID)
+
+  /**
+   * Delete the temporary files left in database entries by operations that never completed,
+   * such as downloads interrupted by the application being killed. Only files last modified
+   * before the given time are deleted, so that the files of running operations are kept.
+   *
+   * @param modifiedBefore The time before which temporary files must have been last modified
+   * @return The number of bytes freed
+   */
+
+  fun deleteTemporaryFiles(modifiedBefore: Instant): Long
 }
@@ -0,0 +1,97 @@
+package org.nypl.simplified.books.book_database.api
+
+import java.io.IOException
+
+/**
+ * A full-text index of the text of a downloaded book.
+ *
+ * The text of each item in the book's reading order is indexed separately. Every occurrence
+ * of a term is recorded as a posting giving the item and the character offset of the
+ * occurrence within the item's text.
+ */
+
+interface BookTextIndexType {
+
+  /**
+   * An item in the book's reading order.
+   */
+
+  data class Item(
+
+    /**
+     * The path of the item within the book.
+     */
+
+    val href: String,
+
+    /**
+     * The length in characters of the item's text.
+     */
+
+    val textLength: Int
+  )
+
+  /**
+   * An occurrence of a term.
+   */
+
+  data class Posting(
+
+    /**
+     * The index of the item in [items].
+     */
+
+    val item: Int,
+
+    /**
+     * The character offset of the occurrence within the item's text.
+     */
+
+    val offset: Int
+  )
+
+  /**
+   * The indexed items, in reading order.
+   */
+
+  val items: List<Item>
+
+  /**
+   * The number of distinct terms in the index.
+   */
+
+  val termCount: Int
+
+  /**
+   * @return `true` if the given term occurs anywhere in the book. This is answered from the
+   * index's dictionary, without reading any postings.
+   *
+   * @param term A term produced by [BookTextTokens]
+   */
+
+  fun contains(term: String): Boolean
+
+  /**
+   * @return The occurrences of the given term, ordered by item and then offset
+   *
+   * @param term A term produced by [BookTextTokens]
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun postings(term: String): List<Posting>
+
+  /**
+   * @return Up to `length` characters of the text of the given item, centred on `offset`
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun excerpt(
+    item: Int,
+    offset: Int,
+    length: Int
+  ): String
+}
@@ -0,0 +1,76 @@
+package org.nypl.simplified.books.book_database.api
+
+import java.text.Normalizer
+import java.util.Locale
+
+/**
+ * The tokenizer shared by full-text indexing and searching.
+ *
+ * Terms are maximal runs of letters and digits, lowercased and with diacritics removed.
+ * Terms shorter than [TERM_LENGTH_MINIMUM] are ignored, and longer terms are truncated to
+ * [TERM_LENGTH_MAXIMUM] characters.
+ */
+
+object BookTextTokens {
+
+  /**
+   * The shortest term that is indexed.
+   */
+
+  const val TERM_LENGTH_MINIMUM = 2
+
+  /**
+   * The longest term that is indexed.
+   */
+
+  const val TERM_LENGTH_MAXIMUM = 32
+
+  private val diacritics =
+    Regex("\\p{Mn}+")
+
+  /**
+   * Split the given text into terms, passing each term and the character offset at which it
+   * starts to `receiver`.
+   */
+
+  fun tokenize(
+    text: CharSequence,
+    receiver: (term: String, offset: Int) -> Unit
+  ) {
+    var start = -1
+    for (index in 0..text.length) {
+      val isTermCharacter = index < text.length && Character.isLetterOrDigit(text[index])
+      if (isTermCharacter) {
+        if (start < 0) {
+          start = index
+        }
+      } else if (start >= 0) {
+        if (index - start >= TERM_LENGTH_MINIMUM) {
+          receiver.invoke(this.normalize(text.subSequence(start, index)), start)
+        }
+        start = -1
+      }
+    }
+  }
+
+  /**
+   * @return The distinct terms of the given query, in the order in which they appear
+   */
+
+  fun terms(query: String): List<String> {
+    val terms = LinkedHashSet<String>()
+    this.tokenize(query) { term, _ -> terms.add(term) }
+    return terms.toList()
+  }
+
+  private fun normalize(term: CharSequence): String {
+    val lower = term.toString().toLowerCase(Locale.ROOT)
+    val plain =
+      if (lower.all { it < '\u0080' }) {
+        lower
+      } else {
+        this.diacritics.replace(Normalizer.normalize(lower, Normalizer.Form.NFD), "")
+      }
+    return if (plain.length > TERM_LENGTH_MAXIMUM) plain.substring(0, TERM_LENGTH_MAXIMUM) else plain
+  }
+}
@@ -0,0 +1,163 @@
+package org.nypl.simplified.books.book_database.api
+
+/**
+ * An index of the structure of a downloaded EPUB, built once when the book is copied into
+ * the database so that readers don't need to recompute it each time the book is opened.
+ */
+
+data class EPUBIndex(
+
+  /**
+   * The version of the index format. Indexes with any other version than [CURRENT_VERSION]
+   * are rebuilt.
+   */
+
+  val version: Int,
+
+  /**
+   * The length of the EPUB file that was indexed.
+   */
+
+  val bookLength: Long,
+
+  /**
+   * The modification time of the EPUB file that was indexed, in milliseconds since the epoch.
+   */
+
+  val bookLastModified: Long,
+
+  /**
+   * The path of the package document within the EPUB.
+   */
+
+  val packagePath: String,
+
+  /**
+   * `true` if the publication uses a fixed (pre-paginated) layout.
+   */
+
+  val fixedLayout: Boolean,
+
+  /**
+   * The central directory of the EPUB archive, in archive order.
+   */
+
+  val entries: List<Entry>,
+
+  /**
+   * The spine of the publication, in reading order.
+   */
+
+  val readingOrder: List<Item>,
+
+  /**
+   * The table of contents, flattened in document order.
+   */
+
+  val tableOfContents: List<TOCEntry>
+) {
+
+  /**
+   * An entry in the archive's central directory.
+   */
+
+  data class Entry(
+
+    /**
+     * The path of the entry within the archive.
+     */
+
+    val path: String,
+
+    /**
+     * The offset of the entry's local header from the start of the archive.
+     */
+
+    val offset: Long,
+
+    /**
+     * The length of the entry's data as stored in the archive.
+     */
+
+    val compressedLength: Long,
+
+    /**
+     * The length of the entry's data once uncompressed.
+     */
+
+    val length: Long,
+
+    /**
+     * `true` if the entry is compressed.
+     */
+
+    val compressed: Boolean
+  )
+
+  /**
+   * An item in the publication's spine.
+   */
+
+  data class Item(
+
+    /**
+     * The path of the item within the archive.
+     */
+
+    val href: String,
+
+    /**
+     * The media type of the item.
+     */
+
+    val mediaType: String,
+
+    /**
+     * The number of positions in the item. Reflowable items have one position for every
+     * [POSITION_LENGTH] bytes of stored data, and fixed layout items have one position each.
+     */
+
+    val positions: Int
+  )
+
+  /**
+   * An entry in the table of contents.
+   */
+
+  data class TOCEntry(
+
+    /**
+     * The title of the entry.
+     */
+
+    val title: String,
+
+    /**
+     * The path within the archive, and optional fragment, that the entry refers to.
+     */
+
+    val href: String,
+
+    /**
+     * The nesting depth of the entry, starting at 0.
+     */
+
+    val depth: Int
+  )
+
+  companion object {
+
+    /**
+     * The current version of the index format.
+     */
+
+    const val CURRENT_VERSION = 1
+
+    /**
+     * The number of bytes of stored data per position in a reflowable item. This matches
+     * the archive entry length strategy used by Readium.
+     */
+
+    const val POSITION_LENGTH = 1024
+  }
+}
@@ -1,6 +1,5 @@
 package org.nypl.simplified.books.book_database
 
-import com.fasterxml.jackson.databind.ObjectMapper
 import org.nypl.drm.core.AdobeAdeptLoan
 import org.nypl.drm.core.AdobeLoanID
 import org.nypl.simplified.books.api.BookDRMInformation
@@ -8,6 +7,7 @@ import org.nypl.simplified.books.api.BookDRMKind
 import org.nypl.simplified.books.book_database.api.BookDRMInformationHandle
 import org.nypl.simplified.books.book_database.api.BookFormats
 import org.nypl.simplified.files.FileUtilities
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.json.core.JSONParserUtilities
 import org.nypl.simplified.json.core.JSONSerializerUtilities
 import java.io.ByteArrayOutputStream
@@ -22,10 +22,11 @@ import java.util.concurrent.atomic.AtomicBoolean
 class BookDRMInformationHandleACS(
   private val directory: File,
   format: BookFormats.BookFormatDefinition,
-  private val onUpdate: () -> Unit
+  private val onUpdate: () -> Unit,
+  records: BookDatabaseRecordsType = BookDatabaseRecordsDirectory(directory)
 ) : BookDRMInformationHandle.ACSHandle(), BookDRMInformationHandleBase {
 
-  private val objectMapper = ObjectMapper()
+  private val objectMapper = JSONCodecs.mapper()
   private val closed = AtomicBoolean(false)
 
   companion object {
@@ -53,7 +54,8 @@ class BookDRMInformationHandleACS(
     BookDRMInformationHandles.writeDRMInfo(
       directory = this.directory,
       format = format,
-      kind = BookDRMKind.ACS
+      kind = BookDRMKind.ACS,
+      records = records
     )
   }
 
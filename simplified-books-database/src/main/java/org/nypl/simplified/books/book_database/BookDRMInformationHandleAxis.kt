@@ -15,7 +15,8 @@ import java.util.concurrent.atomic.AtomicBoolean
 class BookDRMInformationHandleAxis(
   private val directory: File,
   format: BookFormats.BookFormatDefinition,
-  private val onUpdate: () -> Unit
+  private val onUpdate: () -> Unit,
+  records: BookDatabaseRecordsType = BookDatabaseRecordsDirectory(directory)
 ) : BookDRMInformationHandle.AxisHandle(), BookDRMInformationHandleBase {
 
   private val closed = AtomicBoolean(false)
@@ -32,7 +33,8 @@ class BookDRMInformationHandleAxis(
     BookDRMInformationHandles.writeDRMInfo(
       directory = directory,
       format = format,
-      kind = BookDRMKind.AXIS
+      kind = BookDRMKind.AXIS,
+      records = records
     )
   }
 
@@ -13,7 +13,8 @@ import java.util.concurrent.atomic.AtomicBoolean
 
 class BookDRMInformationHandleLCP(
   directory: File,
-  format: BookFormats.BookFormatDefinition
+  format: BookFormats.BookFormatDefinition,
+  records: BookDatabaseRecordsType = BookDatabaseRecordsDirectory(directory)
 ) : BookDRMInformationHandle.LCPHandle(), BookDRMInformationHandleBase {
 
   private val closed = AtomicBoolean(false)
@@ -22,7 +23,8 @@ class BookDRMInformationHandleLCP(
     BookDRMInformationHandles.writeDRMInfo(
       directory = directory,
       format = format,
-      kind = BookDRMKind.LCP
+      kind = BookDRMKind.LCP,
+      records = records
     )
   }
 
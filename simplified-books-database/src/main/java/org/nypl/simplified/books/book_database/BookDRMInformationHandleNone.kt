@@ -13,7 +13,8 @@ import java.util.concurrent.atomic.AtomicBoolean
 
 class BookDRMInformationHandleNone(
   directory: File,
-  format: BookFormats.BookFormatDefinition
+  format: BookFormats.BookFormatDefinition,
+  records: BookDatabaseRecordsType = BookDatabaseRecordsDirectory(directory)
 ) : BookDRMInformationHandle.NoneHandle(), BookDRMInformationHandleBase {
 
   private val closed = AtomicBoolean(false)
@@ -22,7 +23,8 @@ class BookDRMInformationHandleNone(
     BookDRMInformationHandles.writeDRMInfo(
       directory = directory,
       format = format,
-      kind = BookDRMKind.NONE
+      kind = BookDRMKind.NONE,
+      records = records
     )
   }
 
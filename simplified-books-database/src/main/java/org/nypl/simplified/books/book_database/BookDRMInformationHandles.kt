@@ -5,10 +5,8 @@ import org.nypl.simplified.books.book_database.api.BookDRMInformationHandle
 import org.nypl.simplified.books.book_database.api.BookFormats
 import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.files.DirectoryUtilities
-import org.nypl.simplified.files.FileUtilities
 import org.slf4j.LoggerFactory
 import java.io.File
-import java.io.FileNotFoundException
 
 /**
  * Functions to open DRM information handle.
@@ -21,25 +19,25 @@ object BookDRMInformationHandles {
 
   /**
    * Open a DRM information handle for the given format, from the given directory. If no DRM
-   * info file is present, try to infer the DRM system from the files present.
+   * info record is present, try to infer the DRM system from the files present.
    */
 
   fun open(
     directory: File,
     format: BookFormats.BookFormatDefinition,
     bookFormats: BookFormatSupportType,
-    onUpdate: () -> Unit
+    onUpdate: () -> Unit,
+    records: BookDatabaseRecordsType = BookDatabaseRecordsDirectory(directory)
   ): BookDRMInformationHandle? {
-    val drmInfoFile =
-      File(directory, "${format.shortName}-drm.txt")
+    val drmInfoName = this.drmInfoName(format)
 
     val drmKind =
       try {
-        BookDRMKind.valueOf(drmInfoFile.readText().trim())
-      } catch (e: FileNotFoundException) {
-        this.inferDRMKind(directory, format)
+        records.readUTF8(drmInfoName)
+          ?.let { text -> BookDRMKind.valueOf(text.trim()) }
+          ?: this.inferDRMKind(directory, format)
       } catch (e: Exception) {
-        this.logger.error("could not read {}: ", drmInfoFile, e)
+        this.logger.error("could not read {}: ", drmInfoName, e)
         this.inferDRMKind(directory, format)
       }
 
@@ -47,12 +45,12 @@ object BookDRMInformationHandles {
      * Create an initial DRM handle, and then use it to delete the "unsupported" data.
      */
 
-    val createInitial = this.create(directory, format, drmKind) { }
+    val createInitial = this.create(directory, format, drmKind, { }, records)
     return if (bookFormats.isDRMSupported(drmKind)) {
-      this.create(directory, format, drmKind, onUpdate)
+      this.create(directory, format, drmKind, onUpdate, records)
     } else {
       try {
-        FileUtilities.fileDelete(drmInfoFile)
+        records.delete(drmInfoName)
       } catch (e: Exception) {
         this.logger.error("unable to delete DRM file: ", e)
       }
@@ -93,36 +91,35 @@ object BookDRMInformationHandles {
     directory: File,
     format: BookFormats.BookFormatDefinition,
     drmKind: BookDRMKind,
-    onUpdate: () -> Unit
+    onUpdate: () -> Unit,
+    records: BookDatabaseRecordsType = BookDatabaseRecordsDirectory(directory)
   ): BookDRMInformationHandle {
     return when (drmKind) {
       BookDRMKind.NONE ->
-        BookDRMInformationHandleNone(directory, format)
+        BookDRMInformationHandleNone(directory, format, records)
       BookDRMKind.LCP ->
-        BookDRMInformationHandleLCP(directory, format)
+        BookDRMInformationHandleLCP(directory, format, records)
       BookDRMKind.ACS ->
-        BookDRMInformationHandleACS(directory, format, onUpdate)
+        BookDRMInformationHandleACS(directory, format, onUpdate, records)
       BookDRMKind.AXIS ->
-        BookDRMInformationHandleAxis(directory, format, onUpdate)
+        BookDRMInformationHandleAxis(directory, format, onUpdate, records)
     }
   }
 
   /**
-   * Write the name of the given DRM system for to the DRM info file for the given format.
+   * Write the name of the given DRM system for to the DRM info record for the given format.
    */
 
   fun writeDRMInfo(
     directory: File,
     format: BookFormats.BookFormatDefinition,
-    kind: BookDRMKind
+    kind: BookDRMKind,
+    records: BookDatabaseRecordsType = BookDatabaseRecordsDirectory(directory)
   ) {
     DirectoryUtilities.directoryCreate(directory)
-
-    val drmInfoFile =
-      File(directory, "${format.shortName}-drm.txt")
-    val drmInfoFileTmp =
-      File(directory, "${format.shortName}-drm.txt.tmp")
-
-    FileUtilities.fileWriteUTF8Atomically(drmInfoFile, drmInfoFileTmp, kind.name)
+    records.writeUTF8(this.drmInfoName(format), kind.name)
   }
+
+  private fun drmInfoName(format: BookFormats.BookFormatDefinition): String =
+    "${format.shortName}-drm.txt"
 }
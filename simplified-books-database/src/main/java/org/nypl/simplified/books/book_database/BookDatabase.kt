@@ -2,6 +2,7 @@ package org.nypl.simplified.books.book_database
 
 import android.content.Context
 import com.io7m.jnull.Nullable
+import org.joda.time.Instant
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.books.api.Book
 import org.nypl.simplified.books.api.BookID
@@ -11,11 +12,11 @@ import org.nypl.simplified.books.book_database.api.BookDatabaseType
 import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.files.DirectoryUtilities
 import org.nypl.simplified.files.FileUtilities
-import org.nypl.simplified.json.core.JSONSerializerUtilities
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSJSONParserType
 import org.nypl.simplified.opds.core.OPDSJSONSerializerType
 import org.slf4j.LoggerFactory
+import java.io.ByteArrayInputStream
 import java.io.File
 import java.io.FileInputStream
 import java.io.IOException
@@ -34,6 +35,8 @@ class BookDatabase private constructor(
   private val owner: AccountID,
   private val directory: File,
   private val maps: BookMaps,
+  private val downloads: BookDownloadJournal,
+  private val log: BookDatabaseLog?,
   private val serializer: OPDSJSONSerializerType,
   private val formats: BookFormatSupportType
 ) : BookDatabaseType {
@@ -92,11 +95,13 @@ class BookDatabase private constructor(
   @Throws(BookDatabaseException::class)
   override fun delete() {
     try {
+      this.log?.clear()
       DirectoryUtilities.directoryDelete(this.directory)
     } catch (e: IOException) {
       throw BookDatabaseException("Could not delete book database", listOf<Exception>(e))
     } finally {
       this.maps.clear()
+      this.downloads.clear()
     }
   }
 
@@ -112,49 +117,75 @@ class BookDatabase private constructor(
         LOG.debug("Adding entry for {}", id)
       }
       try {
-        val bookDir = File(this.directory, id.value())
-        DirectoryUtilities.directoryCreate(bookDir)
-
-        val fileMeta = File(bookDir, "meta.json")
-        val fileMetaTmp = File(bookDir, "meta.json.tmp")
-
-        val cover = fileOrNull(directory, BookDatabaseEntry.COVER_FILENAME)
-        val thumb = fileOrNull(directory, BookDatabaseEntry.THUMB_FILENAME)
-
-        FileUtilities.fileWriteUTF8Atomically(
-          fileMeta,
-          fileMetaTmp,
-          JSONSerializerUtilities.serializeToString(this.serializer.serializeFeedEntry(entry))
-        )
+        DirectoryUtilities.directoryCreate(File(this.directory, id.value()))
+        BookDatabaseEntry.writeMetadata(this.serializer, this.recordsFor(id), entry)
+        return this.addEntryLocked(id, entry)
+      } catch (e: IOException) {
+        throw BookDatabaseException(e.message, listOf<Exception>(e))
+      }
+    }
+  }
 
-        val book =
-          Book(
-            id = id,
-            account = this.owner,
-            cover = cover,
-            thumbnail = thumb,
-            entry = entry,
-            formats = listOf()
-          )
+  @Throws(BookDatabaseException::class)
+  override fun createOrUpdateAll(
+    entries: Map<BookID, OPDSAcquisitionFeedEntry>
+  ): Map<BookID, BookDatabaseEntryType> {
+    val log = this.log ?: return super.createOrUpdateAll(entries)
 
-        val dbEntry =
-          BookDatabaseEntry(
-            context = this.context,
-            bookDir = bookDir,
-            serializer = this.serializer,
-            formats = this.formats,
-            bookRef = book,
-            onDelete = Runnable { this.maps.delete(id) }
+    synchronized(this.maps.mapsLock) {
+      LOG.debug("Writing {} entries in one transaction", entries.size)
+      try {
+        val changes = entries.map { (id, entry) ->
+          DirectoryUtilities.directoryCreate(File(this.directory, id.value()))
+          BookDatabaseLog.Change.Put(
+            bookID = id,
+            name = BookDatabaseRecordsDirectory.META,
+            data = BookDatabaseEntry.serializeMetadata(this.serializer, entry)
           )
-
-        this.maps.addEntry(dbEntry)
-        return dbEntry
+        }
+        log.commit(changes)
+        return entries.mapValues { (id, entry) -> this.addEntryLocked(id, entry) }
       } catch (e: IOException) {
         throw BookDatabaseException(e.message, listOf<Exception>(e))
       }
     }
   }
 
+  @GuardedBy("maps.mapsLock")
+  private fun addEntryLocked(
+    id: BookID,
+    entry: OPDSAcquisitionFeedEntry
+  ): BookDatabaseEntry {
+    val bookDir = File(this.directory, id.value())
+
+    val book =
+      Book(
+        id = id,
+        account = this.owner,
+        cover = fileOrNull(directory, BookDatabaseEntry.COVER_FILENAME),
+        thumbnail = fileOrNull(directory, BookDatabaseEntry.THUMB_FILENAME),
+        entry = entry,
+        formats = listOf()
+      )
+
+    val dbEntry =
+      BookDatabaseEntry(
+        context = this.context,
+        bookDir = bookDir,
+        records = this.recordsFor(id),
+        serializer = this.serializer,
+        formats = this.formats,
+        bookRef = book,
+        onDelete = Runnable { this.maps.delete(id) }
+      )
+
+    this.maps.addEntry(dbEntry)
+    return dbEntry
+  }
+
+  private fun recordsFor(id: BookID): BookDatabaseRecordsType =
+    this.log?.records(id) ?: BookDatabaseRecordsDirectory(File(this.directory, id.value()))
+
   @Throws(BookDatabaseException::class)
   override fun entry(id: BookID): BookDatabaseEntryType {
     synchronized(this.maps.mapsLock) {
@@ -164,10 +195,67 @@ class BookDatabase private constructor(
     }
   }
 
+  override fun downloadsQueued(): List<BookID> =
+    this.downloads.queued()
+
+  @Throws(BookDatabaseException::class)
+  override fun downloadQueued(id: BookID) {
+    try {
+      this.downloads.add(id)
+    } catch (e: IOException) {
+      throw BookDatabaseException(e.message, listOf<Exception>(e))
+    }
+  }
+
+  @Throws(BookDatabaseException::class)
+  override fun downloadFinished(id: BookID) {
+    try {
+      this.downloads.remove(id)
+    } catch (e: IOException) {
+      throw BookDatabaseException(e.message, listOf<Exception>(e))
+    }
+  }
+
+  override fun deleteTemporaryFiles(modifiedBefore: Instant): Long {
+    var freed = 0L
+    for (id in this.books()) {
+      val files = File(this.directory, id.value()).listFiles() ?: continue
+      for (file in files) {
+        if (!isTemporaryFile(file) || file.lastModified() >= modifiedBefore.millis) {
+          continue
+        }
+        val size = file.length()
+        try {
+          FileUtilities.fileDelete(file)
+          freed += size
+        } catch (e: IOException) {
+          LOG.error("could not delete temporary file: {}: ", file, e)
+        }
+      }
+    }
+
+    if (freed > 0L) {
+      LOG.debug("deleted {} bytes of temporary files", freed)
+    }
+    return freed
+  }
+
   companion object {
 
     private val LOG = LoggerFactory.getLogger(BookDatabase::class.java)
 
+    /**
+     * The name of the log file used by [BookDatabaseStorage.LOG] databases.
+     */
+
+    const val LOG_FILENAME = "books.log"
+
+    /**
+     * Open the book database in the given directory.
+     *
+     * @param storage The way in which the metadata records of entries are stored
+     */
+
     @Throws(BookDatabaseException::class)
     fun open(
       context: Context,
@@ -175,22 +263,55 @@ class BookDatabase private constructor(
       serializer: OPDSJSONSerializerType,
       formats: BookFormatSupportType,
       owner: AccountID,
-      directory: File
+      directory: File,
+      storage: BookDatabaseStorage = BookDatabaseStorage.DIRECTORIES
     ): BookDatabaseType {
-      LOG.debug("opening book database: {}", directory)
+      LOG.debug("opening book database: {} ({})", directory, storage)
       val maps = BookMaps()
       val errors = ArrayList<Exception>()
 
-      openAllBooks(
-        context = context,
-        parser = parser,
-        serializer = serializer,
-        formats = formats,
-        account = owner,
-        directory = directory,
-        maps = maps,
-        errors = errors
-      )
+      val log = when (storage) {
+        BookDatabaseStorage.DIRECTORIES ->
+          null
+        BookDatabaseStorage.LOG ->
+          try {
+            openLog(directory)
+          } catch (e: IOException) {
+            throw BookDatabaseException("Could not open book database log", listOf<Exception>(e))
+          }
+      }
+
+      if (log == null) {
+        openAllBooks(
+          context = context,
+          parser = parser,
+          serializer = serializer,
+          formats = formats,
+          account = owner,
+          directory = directory,
+          maps = maps,
+          errors = errors
+        )
+      } else {
+        openAllBooksFromLog(
+          context = context,
+          parser = parser,
+          serializer = serializer,
+          formats = formats,
+          account = owner,
+          directory = directory,
+          log = log,
+          maps = maps,
+          errors = errors
+        )
+      }
+
+      val downloads = try {
+        BookDownloadJournal.open(directory)
+      } catch (e: IOException) {
+        errors.add(e)
+        null
+      }
 
       if (errors.isNotEmpty()) {
         errors.forEach { exception -> LOG.error("error opening book database: ", exception) }
@@ -204,11 +325,129 @@ class BookDatabase private constructor(
         owner = owner,
         directory = directory,
         maps = maps,
+        downloads = downloads!!,
+        log = log,
         serializer = serializer,
         formats = formats
       )
     }
 
+    /**
+     * Open the database log. If the log holds no committed records, the records of any entries
+     * stored in the directory layout are moved into it in a single transaction. The records are
+     * only deleted from the entry directories once that transaction has been committed, so a
+     * migration that was interrupted at any point is simply run again when the log is next
+     * opened.
+     */
+
+    @Throws(IOException::class)
+    private fun openLog(directory: File): BookDatabaseLog {
+      DirectoryUtilities.directoryCreate(directory)
+
+      val log = BookDatabaseLog.open(File(directory, LOG_FILENAME), FileUtilities.Durability.FILE)
+      if (log.books().isEmpty()) {
+        migrateToLog(directory, log)
+      }
+      return log
+    }
+
+    @Throws(IOException::class)
+    private fun migrateToLog(
+      directory: File,
+      log: BookDatabaseLog
+    ) {
+      val timeThen = System.nanoTime()
+      val changes = ArrayList<BookDatabaseLog.Change>()
+      val migrated = ArrayList<File>()
+
+      for (name in directory.list() ?: arrayOf()) {
+        val bookDirectory = File(directory, name)
+        if (!bookDirectory.isDirectory) {
+          continue
+        }
+        if (!File(bookDirectory, BookDatabaseRecordsDirectory.META).isFile) {
+          LOG.error("not migrating {}: no metadata", bookDirectory)
+          continue
+        }
+
+        val bookID = BookID.create(name)
+        for (record in BookDatabaseRecordsDirectory.NAMES) {
+          val file = File(bookDirectory, record)
+          if (file.isFile) {
+            changes.add(BookDatabaseLog.Change.Put(bookID, record, file.readBytes()))
+            migrated.add(file)
+          }
+        }
+      }
+
+      if (changes.isEmpty()) {
+        return
+      }
+
+      log.commit(changes)
+
+      /*
+       * The log now holds every record, so failing to delete the old files is harmless: they
+       * are never read again by a database with log storage. They are deleted nonetheless so
+       * that the directory layout can't be mistaken for a current copy of the database.
+       */
+
+      for (file in migrated) {
+        try {
+          FileUtilities.fileDelete(file)
+        } catch (e: IOException) {
+          LOG.error("could not delete migrated record {}: ", file, e)
+        }
+      }
+
+      LOG.debug(
+        "migrated {} records to {} in {}ms",
+        changes.size,
+        directory,
+        (System.nanoTime() - timeThen) / 1_000_000L
+      )
+    }
+
+    private fun openAllBooksFromLog(
+      context: Context,
+      parser: OPDSJSONParserType,
+      serializer: OPDSJSONSerializerType,
+      formats: BookFormatSupportType,
+      account: AccountID,
+      directory: File,
+      log: BookDatabaseLog,
+      maps: BookMaps,
+      errors: MutableList<Exception>
+    ) {
+      for (bookId in log.books()) {
+        val meta = log.read(bookId, BookDatabaseRecordsDirectory.META) ?: continue
+        LOG.debug("opening book: {}/{}", directory, bookId.value())
+
+        try {
+          val entry: OPDSAcquisitionFeedEntry =
+            ByteArrayInputStream(meta).use { stream ->
+              parser.parseAcquisitionFeedEntryFromStream(stream)
+            }
+
+          maps.addEntry(
+            newEntry(
+              context = context,
+              serializer = serializer,
+              formats = formats,
+              accountID = account,
+              directory = File(directory, bookId.value()),
+              records = log.records(bookId),
+              maps = maps,
+              bookId = bookId,
+              entry = entry
+            )
+          )
+        } catch (e: IOException) {
+          errors.add(e)
+        }
+      }
+    }
+
     private fun openAllBooks(
       context: Context,
       parser: OPDSJSONParserType,
@@ -268,41 +507,69 @@ class BookDatabase private constructor(
         }
 
         val bookId = BookID.create(name)
-        val fileMeta = File(directory, "meta.json")
+        val fileMeta = File(directory, BookDatabaseRecordsDirectory.META)
         val entry: OPDSAcquisitionFeedEntry =
           FileInputStream(fileMeta).use { stream ->
             parser.parseAcquisitionFeedEntryFromStream(stream)
           }
 
-        val cover = fileOrNull(directory, BookDatabaseEntry.COVER_FILENAME)
-        val thumb = fileOrNull(directory, BookDatabaseEntry.THUMB_FILENAME)
-
-        val book =
-          Book(
-            id = bookId,
-            account = accountID,
-            cover = cover,
-            thumbnail = thumb,
-            entry = entry,
-            formats = listOf()
-          )
-
-        return BookDatabaseEntry(
+        return newEntry(
           context = context,
-          bookDir = directory,
           serializer = serializer,
           formats = formats,
-          bookRef = book,
-          onDelete = Runnable { maps.delete(bookId) }
+          accountID = accountID,
+          directory = directory,
+          records = BookDatabaseRecordsDirectory(directory),
+          maps = maps,
+          bookId = bookId,
+          entry = entry
         )
       } catch (e: IOException) {
         errors.add(e)
         return null
       }
     }
+
+    private fun newEntry(
+      context: Context,
+      serializer: OPDSJSONSerializerType,
+      formats: BookFormatSupportType,
+      accountID: AccountID,
+      directory: File,
+      records: BookDatabaseRecordsType,
+      maps: BookMaps,
+      bookId: BookID,
+      entry: OPDSAcquisitionFeedEntry
+    ): BookDatabaseEntry {
+      val book =
+        Book(
+          id = bookId,
+          account = accountID,
+          cover = fileOrNull(directory, BookDatabaseEntry.COVER_FILENAME),
+          thumbnail = fileOrNull(directory, BookDatabaseEntry.THUMB_FILENAME),
+          entry = entry,
+          formats = listOf()
+        )
+
+      return BookDatabaseEntry(
+        context = context,
+        bookDir = directory,
+        records = records,
+        serializer = serializer,
+        formats = formats,
+        bookRef = book,
+        onDelete = Runnable { maps.delete(bookId) }
+      )
+    }
   }
 }
 
+/** Return `true` if the given file in a database entry is a temporary file. */
+
+private fun isTemporaryFile(file: File): Boolean =
+  file.isFile &&
+    (file.name.startsWith(BookDatabaseEntry.TEMPORARY_PREFIX) || file.name.endsWith(".tmp"))
+
 /** Return the file, or null if it does not exist or is not a file. */
 
 private fun fileOrNull(bookDir: File, filename: String) = File(bookDir, filename)
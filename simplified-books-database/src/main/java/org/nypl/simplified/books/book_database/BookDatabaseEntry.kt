@@ -14,13 +14,13 @@ import org.nypl.simplified.books.book_database.api.BookFormats
 import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.files.DirectoryUtilities
 import org.nypl.simplified.files.FileUtilities
-import org.nypl.simplified.json.core.JSONSerializerUtilities
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSJSONSerializerType
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
+import java.io.ByteArrayOutputStream
 import java.io.File
-import java.io.FileOutputStream
 import java.io.IOException
 import java.util.EnumMap
 import javax.annotation.concurrent.GuardedBy
@@ -32,6 +32,7 @@ import javax.annotation.concurrent.GuardedBy
 internal class BookDatabaseEntry internal constructor(
   private val context: Context,
   private val bookDir: File,
+  private val records: BookDatabaseRecordsType,
   private val serializer: OPDSJSONSerializerType,
   private val formats: BookFormatSupportType,
   @GuardedBy("bookLock")
@@ -97,7 +98,7 @@ internal class BookDatabaseEntry internal constructor(
         }
     }
 
-    val objectMapper = ObjectMapper()
+    val objectMapper = JSONCodecs.mapper()
     synchronized(this.bookLock) {
       this.bookRef.entry.acquisitions.forEach { acquisition ->
         createFormatHandleIfRequired(
@@ -106,6 +107,7 @@ internal class BookDatabaseEntry internal constructor(
           owner = this,
           constructors = this.formatHandleConstructors,
           ownerDirectory = this.bookDir,
+          ownerRecords = this.records,
           onUpdate = { format -> this.onFormatUpdated(format) },
           existingFormats = this.formatHandlesRef,
           contentTypes = acquisition.availableFinalContentTypes(),
@@ -136,29 +138,14 @@ internal class BookDatabaseEntry internal constructor(
     synchronized(this.bookLock) {
       Preconditions.checkArgument(!this.deleted, "Entry must not have been deleted")
 
-      val fileMeta = File(this.bookDir, "meta.json")
-      val fileMetaTmp = File(this.bookDir, "meta.json.tmp")
-
       try {
         DirectoryUtilities.directoryCreate(this.bookDir)
 
-        FileUtilities.fileWriteUTF8Atomically(
-          fileMeta,
-          fileMetaTmp,
-          JSONSerializerUtilities.serializeToString(
-            this.serializer.serializeFeedEntry(opdsEntry)
-          )
-        )
+        writeMetadata(this.serializer, this.records, opdsEntry)
 
         this.bookRef = this.bookRef.copy(entry = opdsEntry)
       } catch (e: IOException) {
         throw BookDatabaseException(e.message, listOf<Exception>(e))
-      } finally {
-        try {
-          FileUtilities.fileDelete(fileMetaTmp)
-        } catch (ignored: IOException) {
-          LOG.error("could not delete temporary file: {}: ", fileMetaTmp, ignored)
-        }
       }
     }
   }
@@ -191,6 +178,7 @@ internal class BookDatabaseEntry internal constructor(
 
       try {
         DirectoryUtilities.directoryDelete(this.bookDir)
+        this.records.deleteAll()
         this.onDelete.run()
       } catch (e: IOException) {
         throw BookDatabaseException(e.message, listOf<Exception>(e))
@@ -233,14 +221,7 @@ internal class BookDatabaseEntry internal constructor(
     synchronized(this.bookLock) {
       Preconditions.checkArgument(!this.deleted, "Entry must not have been deleted")
 
-      for (index in 0 until Integer.MAX_VALUE) {
-        val file = File(this.bookDir, "temporary_$index")
-        if (!file.exists()) {
-          FileOutputStream(file).use { return file }
-        }
-      }
-
-      throw IOException("Could not find an available temporary file")
+      return File.createTempFile(TEMPORARY_PREFIX, null, this.bookDir)
     }
   }
 
@@ -248,6 +229,40 @@ internal class BookDatabaseEntry internal constructor(
     const val COVER_FILENAME = "cover.jpg"
     const val THUMB_FILENAME = "thumb.jpg"
 
+    /**
+     * The prefix of the names of temporary files in database entries.
+     */
+
+    const val TEMPORARY_PREFIX = "temporary_"
+
+    /**
+     * Serialize the given entry directly into a byte buffer, and then replace the metadata
+     * record with it. No intermediate JSON tree or string is constructed.
+     */
+
+    @Throws(IOException::class)
+    internal fun writeMetadata(
+      serializer: OPDSJSONSerializerType,
+      records: BookDatabaseRecordsType,
+      entry: OPDSAcquisitionFeedEntry
+    ) {
+      records.write(BookDatabaseRecordsDirectory.META, serializeMetadata(serializer, entry))
+    }
+
+    /**
+     * Serialize the given entry directly into a byte buffer.
+     */
+
+    @Throws(IOException::class)
+    internal fun serializeMetadata(
+      serializer: OPDSJSONSerializerType,
+      entry: OPDSAcquisitionFeedEntry
+    ): ByteArray {
+      val bytes = ByteArrayOutputStream(4096)
+      serializer.serializeFeedEntryToStream(entry, bytes)
+      return bytes.toByteArray()
+    }
+
     /**
      * Create a format handle if required. This checks to see if there is a content type that is
      * accepted by any of the available formats, and instantiates one if one doesn't already exist.
@@ -259,6 +274,7 @@ internal class BookDatabaseEntry internal constructor(
       objectMapper: ObjectMapper,
       constructors: EnumMap<BookFormats.BookFormatDefinition, DatabaseBookFormatHandleConstructor>,
       ownerDirectory: File,
+      ownerRecords: BookDatabaseRecordsType,
       owner: BookDatabaseEntryType,
       onUpdate: (BookFormat) -> Unit,
       bookFormats: BookFormatSupportType,
@@ -296,6 +312,7 @@ internal class BookDatabaseEntry internal constructor(
                 context = context,
                 bookID = owner.book.id,
                 directory = ownerDirectory,
+                records = ownerRecords,
                 onUpdated = onUpdate,
                 entry = owner,
                 contentType = contentType,
@@ -0,0 +1,519 @@
+package org.nypl.simplified.books.book_database
+
+import net.jcip.annotations.GuardedBy
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.files.FileUtilities
+import org.slf4j.LoggerFactory
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.util.zip.CRC32
+
+/**
+ * The metadata records of every entry of a book database, held in a single append-only log.
+ *
+ * The log consists of a header followed by a sequence of transactions. Each transaction is a
+ * length, a CRC32 checksum, and a list of changes, and is written with a single write call. A
+ * transaction that was only partly written when the application died fails its checksum, and
+ * the log is truncated to the end of the last complete transaction when it is next opened, so
+ * each transaction is applied either entirely or not at all.
+ *
+ * All records are held in memory. The log is rewritten as a single transaction whenever it
+ * grows to more than twice the size of the records it holds.
+ */
+
+internal class BookDatabaseLog private constructor(
+  private val file: File,
+  private val fileTmp: File,
+  private val durability: FileUtilities.Durability,
+  @GuardedBy("lock")
+  private val records: MutableMap<BookID, MutableMap<String, ByteArray>>,
+  @GuardedBy("lock")
+  private var fileSize: Long
+) {
+
+  /**
+   * A change to the records in the log.
+   */
+
+  sealed class Change {
+
+    /**
+     * Create or replace a record.
+     */
+
+    class Put(
+      val bookID: BookID,
+      val name: String,
+      val data: ByteArray
+    ) : Change()
+
+    /**
+     * Delete a record.
+     */
+
+    class Delete(
+      val bookID: BookID,
+      val name: String
+    ) : Change()
+
+    /**
+     * Delete all of the records of a book.
+     */
+
+    class DeleteBook(
+      val bookID: BookID
+    ) : Change()
+  }
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private var output: FileOutputStream? = null
+
+  @GuardedBy("lock")
+  private var compactionCheckSize: Long = COMPACTION_MINIMUM
+
+  companion object {
+
+    private const val MAGIC = 0x53424c47
+    private const val VERSION = 1
+    private const val HEADER_SIZE = 8L
+    private const val COMPACTION_MINIMUM = 256L * 1024L
+
+    private const val OP_PUT = 1
+    private const val OP_DELETE = 2
+    private const val OP_DELETE_BOOK = 3
+
+    private val logger =
+      LoggerFactory.getLogger(BookDatabaseLog::class.java)
+
+    /**
+     * Open the log in the given file, creating it if it does not exist.
+     *
+     * @throws IOException On I/O errors, or if the file is not a log of a supported version
+     */
+
+    @Throws(IOException::class)
+    fun open(
+      file: File,
+      durability: FileUtilities.Durability
+    ): BookDatabaseLog {
+      val timeThen = System.nanoTime()
+      val records = HashMap<BookID, MutableMap<String, ByteArray>>()
+      val fileSize = if (file.isFile) this.load(file, records) else 0L
+
+      if (file.isFile && file.length() > fileSize) {
+        this.logger.warn(
+          "discarding {} bytes of incomplete transactions from {}",
+          file.length() - fileSize,
+          file
+        )
+        RandomAccessFile(file, "rw").use { raf -> raf.setLength(fileSize) }
+      }
+
+      this.logger.debug(
+        "opened {} ({} bytes, {} books) in {}ms",
+        file,
+        fileSize,
+        records.size,
+        (System.nanoTime() - timeThen) / 1_000_000L
+      )
+
+      val log =
+        BookDatabaseLog(
+          file = file,
+          fileTmp = File(file.parentFile, file.name + ".tmp"),
+          durability = durability,
+          records = records,
+          fileSize = fileSize
+        )
+      synchronized(log.lock) {
+        log.compactIfNecessaryLocked()
+      }
+      return log
+    }
+
+    /**
+     * Load all complete transactions from the given file.
+     *
+     * @return The offset of the end of the last complete transaction
+     */
+
+    @Throws(IOException::class)
+    private fun load(
+      file: File,
+      records: MutableMap<BookID, MutableMap<String, ByteArray>>
+    ): Long {
+      val fileLength = file.length()
+      if (fileLength < HEADER_SIZE) {
+        return 0L
+      }
+
+      DataInputStream(BufferedInputStream(FileInputStream(file), 65536)).use { input ->
+        if (input.readInt() != MAGIC) {
+          throw IOException("$file is not a book database log")
+        }
+        val version = input.readInt()
+        if (version != VERSION) {
+          throw IOException("$file has unsupported version $version")
+        }
+
+        var position = HEADER_SIZE
+        while (true) {
+          try {
+            val length = input.readInt()
+            val checksum = input.readInt()
+            if (length < 0 || position + 8L + length > fileLength) {
+              break
+            }
+
+            val payload = ByteArray(length)
+            input.readFully(payload)
+            val crc = CRC32()
+            crc.update(payload)
+            if (crc.value.toInt() != checksum) {
+              break
+            }
+
+            this.apply(records, this.decode(payload))
+            position += 8L + length
+          } catch (e: EOFException) {
+            break
+          }
+        }
+        return position
+      }
+    }
+
+    private fun encode(changes: List<Change>): ByteArray {
+      val bytes = ByteArrayOutputStream()
+      DataOutputStream(bytes).use { output ->
+        output.writeInt(changes.size)
+        for (change in changes) {
+          when (change) {
+            is Change.Put -> {
+              output.writeByte(OP_PUT)
+              output.writeUTF(change.bookID.value())
+              output.writeUTF(change.name)
+              output.writeInt(change.data.size)
+              output.write(change.data)
+            }
+            is Change.Delete -> {
+              output.writeByte(OP_DELETE)
+              output.writeUTF(change.bookID.value())
+              output.writeUTF(change.name)
+            }
+            is Change.DeleteBook -> {
+              output.writeByte(OP_DELETE_BOOK)
+              output.writeUTF(change.bookID.value())
+            }
+          }
+        }
+      }
+      return bytes.toByteArray()
+    }
+
+    @Throws(IOException::class)
+    private fun decode(payload: ByteArray): List<Change> {
+      DataInputStream(ByteArrayInputStream(payload)).use { input ->
+        val count = input.readInt()
+        val changes = ArrayList<Change>(count)
+        for (index in 0 until count) {
+          changes.add(
+            when (val op = input.readUnsignedByte()) {
+              OP_PUT -> {
+                val bookID = BookID.create(input.readUTF())
+                val name = input.readUTF()
+                val data = ByteArray(input.readInt())
+                input.readFully(data)
+                Change.Put(bookID, name, data)
+              }
+              OP_DELETE ->
+                Change.Delete(BookID.create(input.readUTF()), input.readUTF())
+              OP_DELETE_BOOK ->
+                Change.DeleteBook(BookID.create(input.readUTF()))
+              else ->
+                throw IOException("Unrecognized operation $op")
+            }
+          )
+        }
+        return changes
+      }
+    }
+
+    private fun apply(
+      records: MutableMap<BookID, MutableMap<String, ByteArray>>,
+      changes: List<Change>
+    ) {
+      for (change in changes) {
+        when (change) {
+          is Change.Put ->
+            records.getOrPut(change.bookID) { HashMap() }[change.name] = change.data
+          is Change.Delete -> {
+            val book = records[change.bookID] ?: continue
+            book.remove(change.name)
+            if (book.isEmpty()) {
+              records.remove(change.bookID)
+            }
+          }
+          is Change.DeleteBook ->
+            records.remove(change.bookID)
+        }
+      }
+    }
+
+    @Throws(IOException::class)
+    private fun writeTransaction(
+      output: DataOutputStream,
+      payload: ByteArray
+    ) {
+      val crc = CRC32()
+      crc.update(payload)
+      output.writeInt(payload.size)
+      output.writeInt(crc.value.toInt())
+      output.write(payload)
+    }
+  }
+
+  /**
+   * @return The books that have at least one record
+   */
+
+  fun books(): Set<BookID> {
+    return synchronized(this.lock) {
+      this.records.keys.toSet()
+    }
+  }
+
+  /**
+   * @return The contents of the given record, or `null` if there is no such record
+   */
+
+  fun read(
+    bookID: BookID,
+    name: String
+  ): ByteArray? {
+    return synchronized(this.lock) {
+      this.records[bookID]?.get(name)?.copyOf()
+    }
+  }
+
+  /**
+   * @return A view of the records of the given book
+   */
+
+  fun records(bookID: BookID): BookDatabaseRecordsType =
+    Records(bookID)
+
+  /**
+   * Apply all of the given changes in a single transaction.
+   *
+   * @throws IOException On I/O errors; none of the changes are applied
+   */
+
+  @Throws(IOException::class)
+  fun commit(changes: List<Change>) {
+    if (changes.isEmpty()) {
+      return
+    }
+
+    val transaction = ByteArrayOutputStream()
+    DataOutputStream(transaction).use { output ->
+      writeTransaction(output, encode(changes))
+    }
+
+    synchronized(this.lock) {
+      val output = this.outputLocked()
+      try {
+        transaction.writeTo(output)
+        output.flush()
+        if (this.durability != FileUtilities.Durability.NONE) {
+          output.fd.sync()
+        }
+      } catch (e: IOException) {
+
+        /*
+         * Remove any part of the transaction that was written, so that later transactions are
+         * not appended after it and lost along with it when the log is next opened.
+         */
+
+        try {
+          output.channel.truncate(this.fileSize)
+        } catch (x: IOException) {
+          logger.error("could not truncate {}: ", this.file, x)
+        }
+        throw e
+      }
+
+      this.fileSize += transaction.size()
+      apply(this.records, changes)
+      this.compactIfNecessaryLocked()
+    }
+  }
+
+  /**
+   * Delete the log and all of its records.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun clear() {
+    synchronized(this.lock) {
+      this.closeLocked()
+      this.records.clear()
+      this.fileSize = 0L
+      FileUtilities.fileDelete(this.file)
+      FileUtilities.fileDelete(this.fileTmp)
+    }
+  }
+
+  @GuardedBy("lock")
+  @Throws(IOException::class)
+  private fun outputLocked(): FileOutputStream {
+    val existing = this.output
+    if (existing != null) {
+      return existing
+    }
+
+    if (this.fileSize == 0L) {
+      this.file.parentFile?.mkdirs()
+      FileOutputStream(this.file).use { stream ->
+        val output = DataOutputStream(stream)
+        output.writeInt(MAGIC)
+        output.writeInt(VERSION)
+        output.flush()
+        stream.fd.sync()
+      }
+      if (this.durability == FileUtilities.Durability.DIRECTORY) {
+        FileUtilities.directorySync(this.file.parentFile)
+      }
+      this.fileSize = HEADER_SIZE
+    }
+
+    val output = FileOutputStream(this.file, true)
+    this.output = output
+    return output
+  }
+
+  @GuardedBy("lock")
+  private fun closeLocked() {
+    try {
+      this.output?.close()
+    } catch (e: IOException) {
+      logger.error("could not close {}: ", this.file, e)
+    }
+    this.output = null
+  }
+
+  @GuardedBy("lock")
+  private fun compactIfNecessaryLocked() {
+    if (this.fileSize < this.compactionCheckSize) {
+      return
+    }
+
+    val live = this.records.entries.sumOf { (bookID, records) ->
+      records.entries.sumOf { (name, data) ->
+        12L + bookID.value().length + name.length + data.size
+      }
+    }
+
+    if (this.fileSize > live * 2L) {
+      try {
+        this.compactLocked()
+      } catch (e: IOException) {
+        logger.error("could not compact {}: ", this.file, e)
+        try {
+          FileUtilities.fileDelete(this.fileTmp)
+        } catch (x: IOException) {
+          logger.error("could not delete {}: ", this.fileTmp, x)
+        }
+      }
+    }
+    this.compactionCheckSize = maxOf(COMPACTION_MINIMUM, this.fileSize * 2L)
+  }
+
+  @GuardedBy("lock")
+  @Throws(IOException::class)
+  private fun compactLocked() {
+    val timeThen = System.nanoTime()
+    val sizeThen = this.fileSize
+
+    val changes = ArrayList<Change>()
+    for ((bookID, records) in this.records) {
+      for ((name, data) in records) {
+        changes.add(Change.Put(bookID, name, data))
+      }
+    }
+
+    FileOutputStream(this.fileTmp).use { stream ->
+      val output = DataOutputStream(BufferedOutputStream(stream, 65536))
+      output.writeInt(MAGIC)
+      output.writeInt(VERSION)
+      writeTransaction(output, encode(changes))
+      output.flush()
+      stream.fd.sync()
+    }
+
+    this.closeLocked()
+    FileUtilities.fileRename(this.fileTmp, this.file)
+    if (this.durability == FileUtilities.Durability.DIRECTORY) {
+      FileUtilities.directorySync(this.file.parentFile)
+    }
+    this.fileSize = this.file.length()
+
+    logger.debug(
+      "compacted {} from {} to {} bytes in {}ms",
+      this.file,
+      sizeThen,
+      this.fileSize,
+      (System.nanoTime() - timeThen) / 1_000_000L
+    )
+  }
+
+  private inner class Records(
+    private val bookID: BookID
+  ) : BookDatabaseRecordsType {
+
+    override fun read(name: String): ByteArray? =
+      this@BookDatabaseLog.read(this.bookID, name)
+
+    override fun write(
+      name: String,
+      data: ByteArray
+    ) {
+
+      /*
+       * Format handles rewrite some records, such as the DRM kind, every time the database is
+       * opened. Skipping writes that would not change anything keeps the log from growing,
+       * and avoids a sync per record, when the database is opened.
+       */
+
+      if (!this.read(name).contentEquals(data)) {
+        this@BookDatabaseLog.commit(listOf(Change.Put(this.bookID, name, data)))
+      }
+    }
+
+    override fun delete(name: String) {
+      if (this.read(name) != null) {
+        this@BookDatabaseLog.commit(listOf(Change.Delete(this.bookID, name)))
+      }
+    }
+
+    override fun deleteAll() {
+      if (this@BookDatabaseLog.books().contains(this.bookID)) {
+        this@BookDatabaseLog.commit(listOf(Change.DeleteBook(this.bookID)))
+      }
+    }
+  }
+}
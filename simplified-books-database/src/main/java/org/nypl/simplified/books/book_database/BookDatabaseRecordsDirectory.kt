@@ -0,0 +1,72 @@
+package org.nypl.simplified.books.book_database
+
+import org.nypl.simplified.books.book_database.api.BookFormats
+import org.nypl.simplified.files.DirectoryUtilities
+import org.nypl.simplified.files.FileUtilities
+import java.io.File
+
+/**
+ * Records stored as individual files in a book database entry directory. This is the
+ * original layout of book databases.
+ */
+
+class BookDatabaseRecordsDirectory(
+  private val directory: File
+) : BookDatabaseRecordsType {
+
+  companion object {
+
+    /**
+     * The name of the record holding the OPDS entry of a book.
+     */
+
+    const val META = "meta.json"
+
+    /**
+     * The names of all of the records that may appear in an entry directory.
+     */
+
+    val NAMES: List<String> =
+      listOf(
+        META,
+        "epub-meta_last_read.json",
+        "epub-meta_bookmarks.json",
+        "pdf-meta_last_read.json",
+        "audiobook-manifest-uri.txt",
+        "audiobook-position.json"
+      ) + BookFormats.BookFormatDefinition.values().flatMap { format ->
+        listOf(
+          "${format.shortName}-drm.txt",
+          "${format.shortName}-meta_last_opened.txt"
+        )
+      }
+  }
+
+  override fun read(name: String): ByteArray? {
+    val file = File(this.directory, name)
+    return if (file.isFile) file.readBytes() else null
+  }
+
+  override fun write(
+    name: String,
+    data: ByteArray
+  ) {
+    DirectoryUtilities.directoryCreate(this.directory)
+    FileUtilities.fileWriteBytesAtomically(
+      File(this.directory, name),
+      File(this.directory, "$name.tmp"),
+      data
+    )
+  }
+
+  override fun delete(name: String) {
+    FileUtilities.fileDelete(File(this.directory, name))
+    FileUtilities.fileDelete(File(this.directory, "$name.tmp"))
+  }
+
+  override fun deleteAll() {
+    for (name in NAMES) {
+      this.delete(name)
+    }
+  }
+}
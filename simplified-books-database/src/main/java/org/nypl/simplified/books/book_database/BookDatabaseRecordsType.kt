@@ -0,0 +1,76 @@
+package org.nypl.simplified.books.book_database
+
+import java.io.IOException
+
+/**
+ * The small metadata records of a single book database entry: the entry's OPDS metadata, the
+ * DRM system in use by each format, reading positions, and so on. Book content, covers, and
+ * anything else that is large or that must be passed to other components as a file are not
+ * records, and are always stored in the entry directory.
+ *
+ * Records are identified by name. The names are those of the files that held the records in
+ * the original directory layout.
+ */
+
+interface BookDatabaseRecordsType {
+
+  /**
+   * @return The contents of the named record, or `null` if there is no such record
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun read(name: String): ByteArray?
+
+  /**
+   * Create or replace the named record.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun write(
+    name: String,
+    data: ByteArray
+  )
+
+  /**
+   * Delete the named record, if it exists.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun delete(name: String)
+
+  /**
+   * Delete all records.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun deleteAll()
+
+  /**
+   * @return The contents of the named record as UTF-8 text, or `null` if there is no such record
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun readUTF8(name: String): String? =
+    this.read(name)?.toString(Charsets.UTF_8)
+
+  /**
+   * Create or replace the named record with the given UTF-8 text.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun writeUTF8(
+    name: String,
+    text: String
+  ) =
+    this.write(name, text.toByteArray(Charsets.UTF_8))
+}
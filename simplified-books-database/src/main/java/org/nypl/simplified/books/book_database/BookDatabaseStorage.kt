@@ -0,0 +1,26 @@
+package org.nypl.simplified.books.book_database
+
+/**
+ * The ways in which a book database can store the metadata records of its entries. In all
+ * cases, book content and covers are stored in a directory per entry.
+ */
+
+enum class BookDatabaseStorage {
+
+  /**
+   * Each record is a separate file in the entry directory.
+   */
+
+  DIRECTORIES,
+
+  /**
+   * All records of all entries are held in a single append-only log file in the database
+   * directory. The database is opened by reading one file, and several entries can be updated
+   * in a single atomic write. An existing database in the [DIRECTORIES] layout is migrated
+   * when it is first opened, and the migrated records are deleted from the entry directories.
+   * The switch is one-way: a database that has been opened with [LOG] storage must not be
+   * opened with [DIRECTORIES] storage afterwards, as it would appear to have no entries.
+   */
+
+  LOG
+}
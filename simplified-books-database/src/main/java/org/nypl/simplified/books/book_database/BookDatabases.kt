@@ -12,7 +12,25 @@ import org.nypl.simplified.opds.core.OPDSJSONSerializer
 import org.nypl.simplified.opds.core.OPDSJSONSerializerType
 import java.io.File
 
-object BookDatabases : BookDatabaseFactoryType {
+/**
+ * The default book database factory. Databases are opened with
+ * [BookDatabaseStorage.DIRECTORIES] storage; use [withStorage] to select another.
+ */
+
+object BookDatabases :
+  BookDatabaseFactoryType by BookDatabaseFactory(BookDatabaseStorage.DIRECTORIES) {
+
+  /**
+   * @return A factory that opens databases with the given storage
+   */
+
+  fun withStorage(storage: BookDatabaseStorage): BookDatabaseFactoryType =
+    BookDatabaseFactory(storage)
+}
+
+private class BookDatabaseFactory(
+  private val storage: BookDatabaseStorage
+) : BookDatabaseFactoryType {
 
   @Throws(BookDatabaseException::class)
   override fun openDatabase(
@@ -29,7 +47,8 @@ object BookDatabases : BookDatabaseFactoryType {
       serializer = serializer,
       formats = formats,
       owner = owner,
-      directory = directory
+      directory = directory,
+      storage = this.storage
     )
   }
 
@@ -46,7 +65,8 @@ object BookDatabases : BookDatabaseFactoryType {
       serializer = OPDSJSONSerializer.newSerializer(),
       formats = formats,
       owner = owner,
-      directory = directory
+      directory = directory,
+      storage = this.storage
     )
   }
 }
@@ -0,0 +1,174 @@
+package org.nypl.simplified.books.book_database
+
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.files.FileUtilities
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import javax.annotation.concurrent.GuardedBy
+
+/**
+ * An append-only journal of the books in a book database that are queued for download.
+ *
+ * Each change to the queue is appended to the journal as a single line: `+ <book>` when a
+ * book joins the queue, and `- <book>` when it leaves. A change is synced to storage before
+ * it is considered to have happened, so the queue survives the process being killed at any
+ * point. A trailing line that was only partially written is ignored when the journal is
+ * opened, and the journal is compacted on opening and whenever it grows to contain many more
+ * lines than there are queued books.
+ */
+
+internal class BookDownloadJournal private constructor(
+  private val file: File,
+  private val fileTmp: File,
+  @GuardedBy("this")
+  private val queued: LinkedHashSet<BookID>
+) {
+
+  companion object {
+
+    /**
+     * The name of the journal file within the book database directory.
+     */
+
+    const val FILENAME = "downloads.journal"
+
+    private const val COMPACTION_MINIMUM_LINES = 32
+
+    private val LOG = LoggerFactory.getLogger(BookDownloadJournal::class.java)
+
+    @Throws(IOException::class)
+    fun open(directory: File): BookDownloadJournal {
+      val file = File(directory, FILENAME)
+      val fileTmp = File(directory, "$FILENAME.tmp")
+      val queued = LinkedHashSet<BookID>()
+
+      if (file.isFile) {
+        val text = file.readText(Charsets.UTF_8)
+        val lines = text.split('\n')
+
+        /*
+         * Every complete line ends with a newline, so the last element is either empty
+         * or a line that was being written when the process died.
+         */
+
+        for (index in 0 until lines.size - 1) {
+          this.replay(queued, lines[index])
+        }
+      }
+
+      val journal = BookDownloadJournal(file, fileTmp, queued)
+      synchronized(journal) {
+        journal.compact()
+      }
+      return journal
+    }
+
+    private fun replay(
+      queued: LinkedHashSet<BookID>,
+      line: String
+    ) {
+      if (line.length < 3 || line[1] != ' ') {
+        LOG.warn("ignoring malformed journal line: {}", line)
+        return
+      }
+
+      val id = try {
+        BookID.create(line.substring(2))
+      } catch (e: IllegalArgumentException) {
+        LOG.warn("ignoring malformed journal line: {}", line)
+        return
+      }
+
+      when (line[0]) {
+        '+' -> queued.add(id)
+        '-' -> queued.remove(id)
+        else -> LOG.warn("ignoring malformed journal line: {}", line)
+      }
+    }
+  }
+
+  @GuardedBy("this")
+  private var lines = 0
+
+  /**
+   * @return The queued books, in the order in which they were queued
+   */
+
+  @Synchronized
+  fun queued(): List<BookID> =
+    this.queued.toList()
+
+  /**
+   * Add the given book to the queue.
+   */
+
+  @Synchronized
+  @Throws(IOException::class)
+  fun add(id: BookID) {
+    if (this.queued.add(id)) {
+      this.append("+ ${id.value()}\n")
+    }
+  }
+
+  /**
+   * Remove the given book from the queue.
+   */
+
+  @Synchronized
+  @Throws(IOException::class)
+  fun remove(id: BookID) {
+    if (this.queued.remove(id)) {
+      this.append("- ${id.value()}\n")
+      if (this.lines >= COMPACTION_MINIMUM_LINES && this.lines > this.queued.size * 4) {
+        this.compact()
+      }
+    }
+  }
+
+  /**
+   * Forget all queued books without touching the journal file. This is used when the
+   * database, and therefore the journal, has been deleted.
+   */
+
+  @Synchronized
+  fun clear() {
+    this.queued.clear()
+    this.lines = 0
+  }
+
+  @GuardedBy("this")
+  private fun append(line: String) {
+    FileOutputStream(this.file, true).use { stream ->
+      stream.write(line.toByteArray(Charsets.UTF_8))
+      stream.flush()
+      stream.fd.sync()
+    }
+    ++this.lines
+  }
+
+  @GuardedBy("this")
+  private fun compact() {
+    if (this.queued.isEmpty()) {
+      FileUtilities.fileDelete(this.file)
+      this.lines = 0
+      return
+    }
+
+    val text = StringBuilder()
+    for (id in this.queued) {
+      text.append("+ ")
+      text.append(id.value())
+      text.append('\n')
+    }
+
+    FileOutputStream(this.fileTmp).use { stream ->
+      stream.write(text.toString().toByteArray(Charsets.UTF_8))
+      stream.flush()
+      stream.fd.sync()
+    }
+    FileUtilities.fileRename(this.fileTmp, this.file)
+    this.lines = this.queued.size
+  }
+}
@@ -0,0 +1,370 @@
+package org.nypl.simplified.books.book_database
+
+import org.nypl.simplified.books.book_database.api.BookTextIndexType
+import org.nypl.simplified.books.book_database.api.BookTextTokens
+import org.nypl.simplified.books.book_database.api.EPUBIndex
+import org.nypl.simplified.files.FileUtilities
+import org.slf4j.LoggerFactory
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.RandomAccessFile
+import java.util.zip.ZipFile
+
+/**
+ * A full-text index stored in a single file next to the book it indexes.
+ *
+ * The file holds a header identifying the indexed book, the items of the book's reading
+ * order, a dictionary of terms in sorted order, and then the postings of every term. The
+ * dictionary is read when the index is opened; postings are read from the file on demand.
+ * Postings are stored as variable-length integers, with items and offsets delta-encoded.
+ */
+
+internal class BookTextIndexFile private constructor(
+  private val file: File,
+  private val bookFile: File,
+  private val bookLength: Long,
+  private val bookLastModified: Long,
+  override val items: List<BookTextIndexType.Item>,
+  private val dictionary: Map<String, Term>,
+  private val postingsStart: Long
+) : BookTextIndexType {
+
+  private class Term(
+    val count: Int,
+    val offset: Long,
+    val length: Int
+  )
+
+  companion object {
+
+    private const val MAGIC = 0x53455449
+    private const val VERSION = 1
+
+    private val logger =
+      LoggerFactory.getLogger(BookTextIndexFile::class.java)
+
+    /**
+     * Open the index in the given file, if it is an index of the given book file in its current
+     * state.
+     *
+     * @return The index, or `null` if the index is missing, of another version, or stale
+     */
+
+    fun openIfCurrent(
+      file: File,
+      bookFile: File
+    ): BookTextIndexFile? {
+      if (!file.isFile || !bookFile.isFile) {
+        return null
+      }
+
+      return try {
+        val counter = CountingInputStream(BufferedInputStream(FileInputStream(file), 65536))
+        DataInputStream(counter).use { input ->
+          if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            return null
+          }
+          val bookLength = input.readLong()
+          val bookLastModified = input.readLong()
+          if (bookLength != bookFile.length() || bookLastModified != bookFile.lastModified()) {
+            return null
+          }
+
+          val itemCount = input.readInt()
+          val items = ArrayList<BookTextIndexType.Item>(itemCount)
+          for (index in 0 until itemCount) {
+            val href = input.readUTF()
+            val textLength = input.readInt()
+            items.add(BookTextIndexType.Item(href, textLength))
+          }
+
+          val termCount = input.readInt()
+          val dictionary = HashMap<String, Term>(termCount * 2)
+          for (index in 0 until termCount) {
+            val term = input.readUTF()
+            val count = input.readInt()
+            val offset = input.readLong()
+            val length = input.readInt()
+            dictionary[term] = Term(count, offset, length)
+          }
+
+          BookTextIndexFile(
+            file = file,
+            bookFile = bookFile,
+            bookLength = bookLength,
+            bookLastModified = bookLastModified,
+            items = items,
+            dictionary = dictionary,
+            postingsStart = counter.count
+          )
+        }
+      } catch (e: Exception) {
+        this.logger.error("could not open text index {}: ", file, e)
+        null
+      }
+    }
+
+    /**
+     * Build an index of the given EPUB and write it to `file`, using `fileTmp` as a temporary
+     * file.
+     *
+     * @throws IOException On I/O errors
+     */
+
+    @Throws(IOException::class)
+    fun build(
+      file: File,
+      fileTmp: File,
+      bookFile: File,
+      epubIndex: EPUBIndex
+    ): BookTextIndexFile {
+      val timeThen = System.nanoTime()
+      val bookLength = bookFile.length()
+      val bookLastModified = bookFile.lastModified()
+
+      val items = ArrayList<BookTextIndexType.Item>(epubIndex.readingOrder.size)
+      val postings = HashMap<String, PostingsBuilder>()
+      var characters = 0L
+
+      ZipFile(bookFile).use { zip ->
+        epubIndex.readingOrder.forEachIndexed { itemIndex, item ->
+          val text = this.itemText(zip, item.href)
+          characters += text.length
+          items.add(BookTextIndexType.Item(item.href, text.length))
+          BookTextTokens.tokenize(text) { term, offset ->
+            postings.getOrPut(term) { PostingsBuilder() }.add(itemIndex, offset)
+          }
+        }
+      }
+
+      val terms = postings.keys.sorted()
+      val blob = ByteArrayOutputStream()
+      val dictionary = HashMap<String, Term>(terms.size * 2)
+      for (term in terms) {
+        val builder = postings[term]!!
+        val offset = blob.size().toLong()
+        builder.writeTo(blob)
+        dictionary[term] = Term(builder.count, offset, blob.size() - offset.toInt())
+      }
+
+      var postingsStart = 0L
+      FileOutputStream(fileTmp).use { stream ->
+        val output = DataOutputStream(BufferedOutputStream(stream, 65536))
+        output.writeInt(MAGIC)
+        output.writeInt(VERSION)
+        output.writeLong(bookLength)
+        output.writeLong(bookLastModified)
+        output.writeInt(items.size)
+        for (item in items) {
+          output.writeUTF(item.href)
+          output.writeInt(item.textLength)
+        }
+        output.writeInt(terms.size)
+        for (term in terms) {
+          val entry = dictionary[term]!!
+          output.writeUTF(term)
+          output.writeInt(entry.count)
+          output.writeLong(entry.offset)
+          output.writeInt(entry.length)
+        }
+        postingsStart = output.size().toLong()
+        blob.writeTo(output)
+        output.flush()
+        stream.fd.sync()
+      }
+      FileUtilities.fileRename(fileTmp, file)
+
+      val timeNow = System.nanoTime()
+      val milliseconds = maxOf(1L, (timeNow - timeThen) / 1_000_000L)
+      this.logger.debug(
+        "indexed {} characters ({} terms) of {} in {}ms ({} characters/s)",
+        characters,
+        terms.size,
+        bookFile,
+        milliseconds,
+        (characters * 1000L) / milliseconds
+      )
+      return BookTextIndexFile(
+        file = file,
+        bookFile = bookFile,
+        bookLength = bookLength,
+        bookLastModified = bookLastModified,
+        items = items,
+        dictionary = dictionary,
+        postingsStart = postingsStart
+      )
+    }
+
+    @Throws(IOException::class)
+    private fun itemText(
+      zip: ZipFile,
+      href: String
+    ): String {
+      val entry = zip.getEntry(href) ?: return ""
+      val document = zip.getInputStream(entry).use { stream ->
+        String(stream.readBytes(), Charsets.UTF_8)
+      }
+      return EPUBTextExtractor.extract(document)
+    }
+  }
+
+  /**
+   * The postings of a single term, encoded as they are added.
+   */
+
+  private class PostingsBuilder {
+    private val output = ByteArrayOutputStream(16)
+    private var itemLast = 0
+    private var offsetLast = 0
+    var count = 0
+
+    fun add(
+      item: Int,
+      offset: Int
+    ) {
+      writeVarInt(this.output, item - this.itemLast)
+      writeVarInt(this.output, if (item == this.itemLast) offset - this.offsetLast else offset)
+      this.itemLast = item
+      this.offsetLast = offset
+      ++this.count
+    }
+
+    fun writeTo(output: ByteArrayOutputStream) {
+      this.output.writeTo(output)
+    }
+  }
+
+  /**
+   * A stream that counts the bytes read from it, used to find the start of the postings.
+   */
+
+  private class CountingInputStream(
+    input: InputStream
+  ) : FilterInputStream(input) {
+    var count = 0L
+
+    override fun read(): Int {
+      val result = super.read()
+      if (result >= 0) {
+        ++this.count
+      }
+      return result
+    }
+
+    override fun read(
+      buffer: ByteArray,
+      offset: Int,
+      length: Int
+    ): Int {
+      val result = super.read(buffer, offset, length)
+      if (result > 0) {
+        this.count += result
+      }
+      return result
+    }
+  }
+
+  /**
+   * @return `true` if this index still matches the book data, and the index file still exists
+   */
+
+  fun isCurrent(): Boolean {
+    return this.file.isFile &&
+      this.bookFile.length() == this.bookLength &&
+      this.bookFile.lastModified() == this.bookLastModified
+  }
+
+  override val termCount: Int
+    get() = this.dictionary.size
+
+  override fun contains(term: String): Boolean =
+    this.dictionary.containsKey(term)
+
+  override fun postings(term: String): List<BookTextIndexType.Posting> {
+    val entry = this.dictionary[term] ?: return listOf()
+    val bytes = ByteArray(entry.length)
+    RandomAccessFile(this.file, "r").use { input ->
+      input.seek(this.postingsStart + entry.offset)
+      input.readFully(bytes)
+    }
+
+    val results = ArrayList<BookTextIndexType.Posting>(entry.count)
+    val position = intArrayOf(0)
+    var item = 0
+    var offset = 0
+    for (index in 0 until entry.count) {
+      val itemDelta = readVarInt(bytes, position)
+      val offsetValue = readVarInt(bytes, position)
+      offset = if (itemDelta == 0) offset + offsetValue else offsetValue
+      item += itemDelta
+      results.add(BookTextIndexType.Posting(item, offset))
+    }
+    return results
+  }
+
+  override fun excerpt(
+    item: Int,
+    offset: Int,
+    length: Int
+  ): String {
+    val href = this.items.getOrNull(item)?.href ?: return ""
+    val text = ZipFile(this.bookFile).use { zip -> itemText(zip, href) }
+    var start = maxOf(0, minOf(offset - length / 2, text.length - length))
+    var end = minOf(text.length, start + length)
+
+    /*
+     * Avoid starting or ending the excerpt part way through a word.
+     */
+
+    if (start > 0) {
+      val space = text.indexOf(' ', start)
+      if (space in start until offset) {
+        start = space + 1
+      }
+    }
+    if (end < text.length) {
+      val space = text.lastIndexOf(' ', end)
+      if (space > offset) {
+        end = space
+      }
+    }
+    return text.substring(start, end).replace('\n', ' ').trim()
+  }
+}
+
+private fun writeVarInt(
+  output: ByteArrayOutputStream,
+  value: Int
+) {
+  var remaining = value
+  while (remaining and 0x7f.inv() != 0) {
+    output.write((remaining and 0x7f) or 0x80)
+    remaining = remaining ushr 7
+  }
+  output.write(remaining)
+}
+
+private fun readVarInt(
+  bytes: ByteArray,
+  position: IntArray
+): Int {
+  var result = 0
+  var shift = 0
+  while (true) {
+    val byte = bytes[position[0]++].toInt() and 0xff
+    result = result or ((byte and 0x7f) shl shift)
+    if (byte and 0x80 == 0) {
+      return result
+    }
+    shift += 7
+  }
+}
@@ -3,6 +3,7 @@ package org.nypl.simplified.books.book_database
 import com.fasterxml.jackson.databind.ObjectMapper
 import net.jcip.annotations.GuardedBy
 import one.irradia.mime.api.MIMEType
+import org.joda.time.Instant
 import org.librarysimplified.audiobook.api.PlayerAudioEngineRequest
 import org.librarysimplified.audiobook.api.PlayerAudioEngines
 import org.librarysimplified.audiobook.api.PlayerPosition
@@ -41,14 +42,10 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
 
   private val fileManifest: File =
     File(this.parameters.directory, "audiobook-manifest.json")
-  private val fileManifestURI: File =
-    File(this.parameters.directory, "audiobook-manifest-uri.txt")
-  private val fileManifestURITmp: File =
-    File(this.parameters.directory, "audiobook-manifest-uri.txt.tmp")
-  private val filePosition: File =
-    File(this.parameters.directory, "audiobook-position.json")
-  private val filePositionTmp: File =
-    File(this.parameters.directory, "audiobook-position.json.tmp")
+  private val recordManifestURI: String =
+    "audiobook-manifest-uri.txt"
+  private val recordPosition: String =
+    "audiobook-position.json"
 
   private val dataLock: Any = Any()
 
@@ -61,7 +58,8 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
         directory = this.parameters.directory,
         format = this.formatDefinition,
         bookFormats = this.parameters.bookFormatSupport,
-        onUpdate = this::onDRMUpdated
+        onUpdate = this::onDRMUpdated,
+        records = this.parameters.records
       )
 
     if (drmHandleInitial == null) {
@@ -76,7 +74,8 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
           directory = this.parameters.directory,
           format = this.formatDefinition,
           bookFormats = this.parameters.bookFormatSupport,
-          onUpdate = this::onDRMUpdated
+          onUpdate = this::onDRMUpdated,
+          records = this.parameters.records
         ) ?: throw IllegalStateException("Still could not open a DRM handle!")
 
       this.drmHandleRef = drmHandleNext
@@ -91,8 +90,8 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
       loadInitial(
         objectMapper = this.parameters.objectMapper,
         fileManifest = this.fileManifest,
-        fileManifestURI = this.fileManifestURI,
-        filePosition = this.filePosition,
+        manifestURI = this.parameters.records.readUTF8(this.recordManifestURI),
+        position = this.parameters.records.read(this.recordPosition),
         contentType = this.parameters.contentType,
         drmInfo = this.drmInformationHandle.info
       )
@@ -115,6 +114,15 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
   override val drmInformationHandle: BookDRMInformationHandle
     get() = synchronized(this.dataLock) { this.drmHandleRef }
 
+  private val lastOpenedRef =
+    DatabaseFormatHandleLastOpened(this.parameters.records, "audiobook")
+
+  override val lastOpened: Instant?
+    get() = this.lastOpenedRef.time
+
+  override fun setLastOpened(time: Instant) =
+    this.lastOpenedRef.set(time)
+
   override fun setDRMKind(kind: BookDRMKind) {
     synchronized(this.dataLock) {
       val oldRef = (this.drmHandleRef as BookDRMInformationHandleBase)
@@ -122,7 +130,8 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
         directory = this.parameters.directory,
         format = this.formatDefinition,
         drmKind = kind,
-        onUpdate = this::onDRMUpdated
+        onUpdate = this::onDRMUpdated,
+        records = this.parameters.records
       )
       oldRef.close()
       this.onDRMUpdated()
@@ -131,7 +140,7 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
 
   override fun deleteBookData() {
     val newFormat = synchronized(this.dataLock) {
-      FileUtilities.fileDelete(this.filePosition)
+      this.parameters.records.delete(this.recordPosition)
 
       this.formatRef = this.formatRef.copy(position = null)
       this.formatRef
@@ -223,9 +232,7 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
       FileUtilities.fileWriteBytes(
         data, this.fileManifest
       )
-      FileUtilities.fileWriteUTF8Atomically(
-        this.fileManifestURI, this.fileManifestURITmp, manifestURI.toString()
-      )
+      this.parameters.records.writeUTF8(this.recordManifestURI, manifestURI.toString())
 
       this.formatRef =
         this.formatRef.copy(
@@ -245,7 +252,7 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
       JSONSerializerUtilities.serializeToString(PlayerPositions.serializeToObjectNode(position))
 
     val newFormat = synchronized(this.dataLock) {
-      FileUtilities.fileWriteUTF8Atomically(this.filePosition, this.filePositionTmp, text)
+      this.parameters.records.writeUTF8(this.recordPosition, text)
       this.formatRef = this.formatRef.copy(position = position)
       this.formatRef
     }
@@ -255,7 +262,7 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
 
   override fun clearPlayerPosition() {
     val newFormat = synchronized(this.dataLock) {
-      FileUtilities.fileDelete(this.filePosition)
+      this.parameters.records.delete(this.recordPosition)
       this.formatRef = this.formatRef.copy(position = null)
       this.formatRef
     }
@@ -268,14 +275,14 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
     private fun loadInitial(
       objectMapper: ObjectMapper,
       fileManifest: File,
-      fileManifestURI: File,
-      filePosition: File,
+      manifestURI: String?,
+      position: ByteArray?,
       contentType: MIMEType,
       drmInfo: BookDRMInformation
     ): BookFormat.BookFormatAudioBook {
       return BookFormat.BookFormatAudioBook(
-        manifest = this.loadManifestIfNecessary(fileManifest, fileManifestURI),
-        position = this.loadPositionIfNecessary(objectMapper, filePosition),
+        manifest = this.loadManifestIfNecessary(fileManifest, manifestURI),
+        position = this.loadPositionIfNecessary(objectMapper, position),
         contentType = contentType,
         drmInformation = drmInfo
       )
@@ -283,10 +290,10 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
 
     private fun loadPositionIfNecessary(
       objectMapper: ObjectMapper,
-      filePosition: File
+      position: ByteArray?
     ): PlayerPosition? {
-      return if (filePosition.isFile) {
-        this.loadPosition(objectMapper, filePosition)
+      return if (position != null) {
+        this.loadPosition(objectMapper, position)
       } else {
         null
       }
@@ -294,22 +301,18 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
 
     private fun loadPosition(
       objectMapper: ObjectMapper,
-      filePosition: File
+      position: ByteArray
     ): PlayerPosition? {
       return try {
-        FileInputStream(filePosition).use { stream ->
-          val result =
-            PlayerPositions.parseFromObjectNode(
-              JSONParserUtilities.checkObject(null, objectMapper.readTree(stream))
-            )
+        val result =
+          PlayerPositions.parseFromObjectNode(
+            JSONParserUtilities.checkObject(null, objectMapper.readTree(position))
+          )
 
-          when (result) {
-            is PlayerResult.Success -> result.result
-            is PlayerResult.Failure -> throw result.failure
-          }
+        when (result) {
+          is PlayerResult.Success -> result.result
+          is PlayerResult.Failure -> throw result.failure
         }
-      } catch (e: FileNotFoundException) {
-        null
       } catch (e: Exception) {
         throw IOException(e)
       }
@@ -317,10 +320,10 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
 
     private fun loadManifestIfNecessary(
       fileManifest: File,
-      fileManifestURI: File
+      manifestURI: String?
     ): BookFormat.AudioBookManifestReference? {
       return if (fileManifest.isFile) {
-        this.loadManifest(fileManifest, fileManifestURI)
+        this.loadManifest(fileManifest, manifestURI)
       } else {
         null
       }
@@ -328,11 +331,13 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
 
     private fun loadManifest(
       fileManifest: File,
-      fileManifestURI: File
+      manifestURI: String?
     ): BookFormat.AudioBookManifestReference {
       return BookFormat.AudioBookManifestReference(
         manifestFile = fileManifest,
-        manifestURI = URI.create(FileUtilities.fileReadUTF8(fileManifestURI))
+        manifestURI = URI.create(
+          manifestURI ?: throw FileNotFoundException("Missing manifest URI for $fileManifest")
+        )
       )
     }
   }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper
 import com.google.common.base.Preconditions
 import net.jcip.annotations.GuardedBy
 import one.irradia.mime.api.MIMEType
+import org.joda.time.Instant
 import org.nypl.simplified.books.api.BookDRMInformation
 import org.nypl.simplified.books.api.BookDRMKind
 import org.nypl.simplified.books.api.BookFormat
@@ -13,9 +14,12 @@ import org.nypl.simplified.books.api.BookmarkKind.ReaderBookmarkExplicit
 import org.nypl.simplified.books.api.BookmarkKind.ReaderBookmarkLastReadLocation
 import org.nypl.simplified.books.book_database.api.BookDRMInformationHandle
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
+import org.nypl.simplified.books.book_database.api.BookTextIndexType
+import org.nypl.simplified.books.book_database.api.EPUBIndex
 import org.nypl.simplified.files.DirectoryUtilities
 import org.nypl.simplified.files.FileUtilities
 import org.nypl.simplified.json.core.JSONParserUtilities
+import org.slf4j.LoggerFactory
 import java.io.File
 import java.io.IOException
 import java.lang.IllegalStateException
@@ -30,17 +34,36 @@ internal class DatabaseFormatHandleEPUB internal constructor(
 
   private val fileBook: File =
     File(this.parameters.directory, "epub-book.epub")
-  private val fileLastRead: File =
-    File(this.parameters.directory, "epub-meta_last_read.json")
-  private val fileLastReadTmp: File =
-    File(this.parameters.directory, "epub-meta_last_read.json.tmp")
-  private val fileBookmarks: File =
-    File(this.parameters.directory, "epub-meta_bookmarks.json")
-  private val fileBookmarksTmp: File =
-    File(this.parameters.directory, "epub-meta_bookmarks.json.tmp")
+  private val recordLastRead: String =
+    "epub-meta_last_read.json"
+  private val recordBookmarks: String =
+    "epub-meta_bookmarks.json"
+  private val fileIndex: File =
+    File(this.parameters.directory, "epub-index.json")
+  private val fileIndexTmp: File =
+    File(this.parameters.directory, "epub-index.json.tmp")
+  private val fileTextIndex: File =
+    File(this.parameters.directory, "epub-text.index")
+  private val fileTextIndexTmp: File =
+    File(this.parameters.directory, "epub-text.index.tmp")
+
+  private val logger =
+    LoggerFactory.getLogger(DatabaseFormatHandleEPUB::class.java)
 
   private val dataLock: Any = Any()
 
+  /*
+   * Building a full-text index can take several seconds, so builds are serialized by their own
+   * lock, and neither the data lock nor the lock that guards the opened index are held while
+   * building.
+   */
+
+  private val textIndexBuildLock: Any = Any()
+  private val textIndexLock: Any = Any()
+
+  @GuardedBy("textIndexLock")
+  private var textIndexRef: BookTextIndexFile? = null
+
   @GuardedBy("dataLock")
   private var drmHandleRef: BookDRMInformationHandle
 
@@ -50,7 +73,8 @@ internal class DatabaseFormatHandleEPUB internal constructor(
         directory = this.parameters.directory,
         format = this.formatDefinition,
         bookFormats = this.parameters.bookFormatSupport,
-        onUpdate = this::onDRMUpdated
+        onUpdate = this::onDRMUpdated,
+        records = this.parameters.records
       )
 
     if (drmHandleInitial == null) {
@@ -69,7 +93,8 @@ internal class DatabaseFormatHandleEPUB internal constructor(
           directory = this.parameters.directory,
           format = this.formatDefinition,
           bookFormats = this.parameters.bookFormatSupport,
-          onUpdate = this::onDRMUpdated
+          onUpdate = this::onDRMUpdated,
+          records = this.parameters.records
         ) ?: throw IllegalStateException("Still could not open a DRM handle!")
 
       this.drmHandleRef = drmHandleNext
@@ -83,9 +108,10 @@ internal class DatabaseFormatHandleEPUB internal constructor(
     synchronized(this.dataLock) {
       loadInitial(
         objectMapper = this.parameters.objectMapper,
-        fileBookmarks = this.fileBookmarks,
+        records = this.parameters.records,
+        recordBookmarks = this.recordBookmarks,
         fileBook = this.fileBook,
-        fileLastRead = this.fileLastRead,
+        recordLastRead = this.recordLastRead,
         contentType = this.parameters.contentType,
         drmInfo = this.drmInformationHandle.info
       )
@@ -108,6 +134,15 @@ internal class DatabaseFormatHandleEPUB internal constructor(
   override val drmInformationHandle: BookDRMInformationHandle
     get() = synchronized(this.dataLock, this::drmHandleRef)
 
+  private val lastOpenedRef =
+    DatabaseFormatHandleLastOpened(this.parameters.records, "epub")
+
+  override val lastOpened: Instant?
+    get() = this.lastOpenedRef.time
+
+  override fun setLastOpened(time: Instant) =
+    this.lastOpenedRef.set(time)
+
   override fun setDRMKind(kind: BookDRMKind) {
     synchronized(this.dataLock) {
       val oldRef = (this.drmHandleRef as BookDRMInformationHandleBase)
@@ -115,7 +150,8 @@ internal class DatabaseFormatHandleEPUB internal constructor(
         directory = this.parameters.directory,
         format = this.formatDefinition,
         drmKind = kind,
-        onUpdate = this::onDRMUpdated
+        onUpdate = this::onDRMUpdated,
+        records = this.parameters.records
       )
       oldRef.close()
       this.onDRMUpdated()
@@ -129,6 +165,8 @@ internal class DatabaseFormatHandleEPUB internal constructor(
       } else {
         FileUtilities.fileDelete(this.fileBook)
       }
+      FileUtilities.fileDelete(this.fileIndex)
+      FileUtilities.fileDelete(this.fileTextIndex)
       this.formatRef = this.formatRef.copy(file = null)
       this.formatRef
     }
@@ -138,19 +176,52 @@ internal class DatabaseFormatHandleEPUB internal constructor(
 
   override fun copyInBook(file: File) {
     val newFormat = synchronized(this.dataLock) {
-      if (file.isDirectory) {
-        DirectoryUtilities.directoryCopy(file, this.fileBook)
-      } else {
-        FileUtilities.fileCopy(file, this.fileBook)
-      }
+      this.copyInBookLocked(file)
+      this.onBookReplacedLocked()
+    }
 
-      this.formatRef = this.formatRef.copy(file = this.fileBook)
-      this.formatRef
+    this.parameters.onUpdated.invoke(newFormat)
+  }
+
+  override fun moveInBook(file: File) {
+    val newFormat = synchronized(this.dataLock) {
+      if (file.isDirectory || !file.renameTo(this.fileBook)) {
+        this.logger.debug("could not rename {}, copying it instead", file)
+        this.copyInBookLocked(file)
+        if (file.isDirectory) {
+          DirectoryUtilities.directoryDelete(file)
+        } else {
+          FileUtilities.fileDelete(file)
+        }
+      }
+      this.onBookReplacedLocked()
     }
 
     this.parameters.onUpdated.invoke(newFormat)
   }
 
+  @GuardedBy("dataLock")
+  private fun copyInBookLocked(file: File) {
+    if (file.isDirectory) {
+      DirectoryUtilities.directoryCopy(file, this.fileBook)
+    } else {
+      FileUtilities.fileCopy(file, this.fileBook)
+    }
+  }
+
+  /**
+   * Rebuild the index of new book data, and discard anything derived from the old book data.
+   */
+
+  @GuardedBy("dataLock")
+  private fun onBookReplacedLocked(): BookFormat.BookFormatEPUB {
+    FileUtilities.fileDelete(this.fileIndex)
+    FileUtilities.fileDelete(this.fileTextIndex)
+    this.indexLocked()
+    this.formatRef = this.formatRef.copy(file = this.fileBook)
+    return this.formatRef
+  }
+
   override fun setLastReadLocation(bookmark: Bookmark?) {
     val newFormat = synchronized(this.dataLock) {
       if (bookmark != null) {
@@ -159,13 +230,12 @@ internal class DatabaseFormatHandleEPUB internal constructor(
           "Must use a last-read-location bookmark"
         )
 
-        FileUtilities.fileWriteUTF8Atomically(
-          this.fileLastRead,
-          this.fileLastReadTmp,
+        this.parameters.records.writeUTF8(
+          this.recordLastRead,
           BookmarkJSON.serializeToString(this.parameters.objectMapper, bookmark)
         )
       } else {
-        FileUtilities.fileDelete(this.fileLastRead)
+        this.parameters.records.delete(this.recordLastRead)
       }
 
       this.formatRef = this.formatRef.copy(lastReadLocation = bookmark)
@@ -177,9 +247,8 @@ internal class DatabaseFormatHandleEPUB internal constructor(
 
   override fun setBookmarks(bookmarks: List<Bookmark>) {
     val newFormat = synchronized(this.dataLock) {
-      FileUtilities.fileWriteUTF8Atomically(
-        this.fileBookmarks,
-        this.fileBookmarksTmp,
+      this.parameters.records.writeUTF8(
+        this.recordBookmarks,
         BookmarkJSON.serializeToString(this.parameters.objectMapper, bookmarks)
       )
       this.formatRef = this.formatRef.copy(bookmarks = bookmarks)
@@ -189,21 +258,116 @@ internal class DatabaseFormatHandleEPUB internal constructor(
     this.parameters.onUpdated.invoke(newFormat)
   }
 
+  override fun index(): EPUBIndex? {
+    return synchronized(this.dataLock) {
+      this.indexLocked()
+    }
+  }
+
+  override fun textIndex(): BookTextIndexType? {
+    return synchronized(this.textIndexLock) {
+      this.textIndexLocked()
+    }
+  }
+
+  override fun buildTextIndex(): BookTextIndexType? {
+    val index = synchronized(this.dataLock) {
+      if (this.drmInformationHandle.info !is BookDRMInformation.None) {
+        return null
+      }
+      this.indexLocked()
+    } ?: return null
+
+    return synchronized(this.textIndexBuildLock) {
+      this.textIndex()
+        ?: BookTextIndexFile.build(
+          file = this.fileTextIndex,
+          fileTmp = this.fileTextIndexTmp,
+          bookFile = this.fileBook,
+          epubIndex = index
+        ).also { built ->
+          synchronized(this.textIndexLock) {
+            this.textIndexRef = built
+          }
+        }
+    }
+  }
+
+  /**
+   * Return the opened full-text index if it still matches the book data, reopening it from
+   * disk if necessary.
+   */
+
+  @GuardedBy("textIndexLock")
+  private fun textIndexLocked(): BookTextIndexType? {
+    val existing = this.textIndexRef
+    if (existing != null && existing.isCurrent()) {
+      return existing
+    }
+    this.textIndexRef = BookTextIndexFile.openIfCurrent(this.fileTextIndex, this.fileBook)
+    return this.textIndexRef
+  }
+
+  /**
+   * Load the index of the book data, rebuilding it if it is missing or stale. Books held as
+   * unpacked directories are not indexed.
+   */
+
+  @GuardedBy("dataLock")
+  private fun indexLocked(): EPUBIndex? {
+    if (!this.fileBook.isFile) {
+      return null
+    }
+
+    if (this.fileIndex.isFile) {
+      try {
+        val index =
+          EPUBIndexJSON.deserializeFromString(
+            this.parameters.objectMapper,
+            FileUtilities.fileReadUTF8(this.fileIndex)
+          )
+        if (index.bookLength == this.fileBook.length() &&
+          index.bookLastModified == this.fileBook.lastModified()
+        ) {
+          return index
+        }
+        this.logger.debug("index is stale, rebuilding it")
+      } catch (e: Exception) {
+        this.logger.debug("could not load index, rebuilding it: ", e)
+      }
+    }
+
+    return try {
+      val index = EPUBIndexer.index(this.fileBook)
+      FileUtilities.fileWriteUTF8Atomically(
+        this.fileIndex,
+        this.fileIndexTmp,
+        EPUBIndexJSON.serializeToString(this.parameters.objectMapper, index)
+      )
+      index
+    } catch (e: Exception) {
+      this.logger.error("could not index book: ", e)
+      null
+    }
+  }
+
   companion object {
 
     @Throws(IOException::class)
     private fun loadInitial(
       objectMapper: ObjectMapper,
+      records: BookDatabaseRecordsType,
       fileBook: File,
-      fileBookmarks: File,
-      fileLastRead: File,
+      recordBookmarks: String,
+      recordLastRead: String,
       contentType: MIMEType,
       drmInfo: BookDRMInformation
     ): BookFormat.BookFormatEPUB {
       return BookFormat.BookFormatEPUB(
-        bookmarks = loadBookmarksIfPresent(objectMapper, fileBookmarks),
+        bookmarks = loadBookmarksIfPresent(objectMapper, records.read(recordBookmarks)),
         file = if (fileBook.exists()) fileBook else null,
-        lastReadLocation = loadLastReadLocationIfPresent(objectMapper, fileLastRead),
+        lastReadLocation =
+          loadLastReadLocationIfPresent(objectMapper, records.readUTF8(recordLastRead)),
         contentType = contentType,
         drmInformation = drmInfo
       )
@@ -212,12 +376,12 @@ internal class DatabaseFormatHandleEPUB internal constructor(
     @Throws(IOException::class)
     private fun loadBookmarksIfPresent(
       objectMapper: ObjectMapper,
-      fileBookmarks: File
+      bookmarks: ByteArray?
     ): List<Bookmark> {
-      return if (fileBookmarks.isFile) {
+      return if (bookmarks != null) {
         loadBookmarks(
           objectMapper = objectMapper,
-          fileBookmarks = fileBookmarks
+          bookmarks = bookmarks
         )
       } else {
         listOf()
@@ -226,9 +390,9 @@ internal class DatabaseFormatHandleEPUB internal constructor(
 
     private fun loadBookmarks(
       objectMapper: ObjectMapper,
-      fileBookmarks: File
+      bookmarks: ByteArray
     ): List<Bookmark> {
-      val tree = objectMapper.readTree(fileBookmarks)
+      val tree = objectMapper.readTree(bookmarks)
       val array = JSONParserUtilities.checkArray(null, tree)
       return array.map { node ->
         BookmarkJSON.deserializeFromJSON(
@@ -242,29 +406,17 @@ internal class DatabaseFormatHandleEPUB internal constructor(
     @Throws(IOException::class)
     private fun loadLastReadLocationIfPresent(
       objectMapper: ObjectMapper,
-      fileLastRead: File
+      lastRead: String?
     ): Bookmark? {
-      return if (fileLastRead.isFile) {
-        loadLastReadLocation(
+      return if (lastRead != null) {
+        BookmarkJSON.deserializeFromString(
           objectMapper = objectMapper,
-          fileLastRead = fileLastRead
+          kind = ReaderBookmarkLastReadLocation,
+          serialized = lastRead
         )
       } else {
         null
       }
     }
-
-    @Throws(IOException::class)
-    private fun loadLastReadLocation(
-      objectMapper: ObjectMapper,
-      fileLastRead: File
-    ): Bookmark {
-      val serialized = FileUtilities.fileReadUTF8(fileLastRead)
-      return BookmarkJSON.deserializeFromString(
-        objectMapper = objectMapper,
-        kind = ReaderBookmarkLastReadLocation,
-        serialized = serialized
-      )
-    }
   }
 }
@@ -0,0 +1,46 @@
+package org.nypl.simplified.books.book_database
+
+import org.joda.time.Instant
+import org.slf4j.LoggerFactory
+import java.io.IOException
+
+/**
+ * The time at which the book data of a format handle was last opened, stored in the
+ * database entry records as milliseconds since the epoch.
+ */
+
+internal class DatabaseFormatHandleLastOpened(
+  private val records: BookDatabaseRecordsType,
+  prefix: String
+) {
+
+  private val logger =
+    LoggerFactory.getLogger(DatabaseFormatHandleLastOpened::class.java)
+
+  private val name: String =
+    "$prefix-meta_last_opened.txt"
+
+  @Volatile
+  private var timeRef: Instant? =
+    this.load()
+
+  private fun load(): Instant? {
+    return try {
+      this.records.readUTF8(this.name)?.let { text -> Instant(text.trim().toLong()) }
+    } catch (e: Exception) {
+      this.logger.error("could not read last opened time: {}: ", this.name, e)
+      null
+    }
+  }
+
+  val time: Instant?
+    get() = this.timeRef
+
+  @Throws(IOException::class)
+  fun set(time: Instant) {
+    synchronized(this) {
+      this.records.writeUTF8(this.name, time.millis.toString())
+      this.timeRef = time
+    }
+  }
+}
@@ -2,6 +2,7 @@ package org.nypl.simplified.books.book_database
 
 import net.jcip.annotations.GuardedBy
 import one.irradia.mime.api.MIMEType
+import org.joda.time.Instant
 import org.nypl.simplified.books.api.BookDRMInformation
 import org.nypl.simplified.books.api.BookDRMKind
 import org.nypl.simplified.books.api.BookFormat
@@ -22,10 +23,8 @@ internal class DatabaseFormatHandlePDF internal constructor(
 
   private val fileBook: File =
     File(this.parameters.directory, "pdf-book.pdf")
-  private val fileLastRead: File =
-    File(this.parameters.directory, "pdf-meta_last_read.json")
-  private val fileLastReadTmp: File =
-    File(this.parameters.directory, "pdf-meta_last_read.json.tmp")
+  private val recordLastRead: String =
+    "pdf-meta_last_read.json"
 
   private val dataLock: Any = Any()
 
@@ -38,7 +37,8 @@ internal class DatabaseFormatHandlePDF internal constructor(
         directory = this.parameters.directory,
         format = this.formatDefinition,
         bookFormats = this.parameters.bookFormatSupport,
-        onUpdate = this::onDRMUpdated
+        onUpdate = this::onDRMUpdated,
+        records = this.parameters.records
       )
 
     if (drmHandleInitial == null) {
@@ -53,7 +53,8 @@ internal class DatabaseFormatHandlePDF internal constructor(
           directory = this.parameters.directory,
           format = this.formatDefinition,
           bookFormats = this.parameters.bookFormatSupport,
-          onUpdate = this::onDRMUpdated
+          onUpdate = this::onDRMUpdated,
+          records = this.parameters.records
         ) ?: throw IllegalStateException("Still could not open a DRM handle!")
 
       this.drmHandleRef = drmHandleNext
@@ -67,7 +68,7 @@ internal class DatabaseFormatHandlePDF internal constructor(
     synchronized(this.dataLock) {
       loadInitial(
         fileBook = this.fileBook,
-        fileLastRead = this.fileLastRead,
+        lastRead = this.parameters.records.readUTF8(this.recordLastRead),
         contentType = this.parameters.contentType,
         drmInfo = this.drmInformationHandle.info
       )
@@ -90,6 +91,15 @@ internal class DatabaseFormatHandlePDF internal constructor(
   override val drmInformationHandle: BookDRMInformationHandle
     get() = synchronized(this.dataLock, this::drmHandleRef)
 
+  private val lastOpenedRef =
+    DatabaseFormatHandleLastOpened(this.parameters.records, "pdf")
+
+  override val lastOpened: Instant?
+    get() = this.lastOpenedRef.time
+
+  override fun setLastOpened(time: Instant) =
+    this.lastOpenedRef.set(time)
+
   override fun setDRMKind(kind: BookDRMKind) {
     synchronized(this.dataLock) {
       val oldRef = (this.drmHandleRef as BookDRMInformationHandleBase)
@@ -97,7 +107,8 @@ internal class DatabaseFormatHandlePDF internal constructor(
         directory = this.parameters.directory,
         format = this.formatDefinition,
         drmKind = kind,
-        onUpdate = this::onDRMUpdated
+        onUpdate = this::onDRMUpdated,
+        records = this.parameters.records
       )
       oldRef.close()
       this.onDRMUpdated()
@@ -127,13 +138,9 @@ internal class DatabaseFormatHandlePDF internal constructor(
   override fun setLastReadLocation(pageNumber: Int?) {
     val newFormat = synchronized(this.dataLock) {
       if (pageNumber != null) {
-        FileUtilities.fileWriteUTF8Atomically(
-          this.fileLastRead,
-          this.fileLastReadTmp,
-          pageNumber.toString()
-        )
+        this.parameters.records.writeUTF8(this.recordLastRead, pageNumber.toString())
       } else {
-        FileUtilities.fileDelete(this.fileLastRead)
+        this.parameters.records.delete(this.recordLastRead)
       }
 
       this.formatRef = this.formatRef.copy(lastReadLocation = pageNumber)
@@ -148,33 +155,16 @@ internal class DatabaseFormatHandlePDF internal constructor(
     @Throws(IOException::class)
     private fun loadInitial(
       fileBook: File,
-      fileLastRead: File,
+      lastRead: String?,
       contentType: MIMEType,
       drmInfo: BookDRMInformation
     ): BookFormat.BookFormatPDF {
       return BookFormat.BookFormatPDF(
         file = if (fileBook.isFile) fileBook else null,
-        lastReadLocation = loadLastReadLocationIfPresent(fileLastRead),
+        lastReadLocation = lastRead?.trim()?.toInt(),
         contentType = contentType,
         drmInformation = drmInfo
       )
     }
-
-    @Throws(IOException::class)
-    private fun loadLastReadLocation(fileLastRead: File): Int {
-      val serialized = FileUtilities.fileReadUTF8(fileLastRead)
-      return serialized.toInt()
-    }
-
-    @Throws(IOException::class)
-    private fun loadLastReadLocationIfPresent(
-      fileLastRead: File
-    ): Int? {
-      return if (fileLastRead.isFile) {
-        loadLastReadLocation(fileLastRead)
-      } else {
-        null
-      }
-    }
   }
 }
@@ -33,6 +33,13 @@ internal data class DatabaseFormatHandleParameters(
 
   val directory: File,
 
+  /**
+   * The metadata records of the database entry. Small metadata such as reading positions must
+   * be stored here rather than as files in [directory].
+   */
+
+  val records: BookDatabaseRecordsType,
+
   /**
    * A callback to be executed whenever something causes the contents of a format handle
    * to change. In practice, this is used by the book database to update its internal snapshots
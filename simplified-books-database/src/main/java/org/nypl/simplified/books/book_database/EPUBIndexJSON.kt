@@ -0,0 +1,129 @@
+package org.nypl.simplified.books.book_database
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.ObjectNode
+import org.nypl.simplified.books.book_database.api.EPUBIndex
+import org.nypl.simplified.json.core.JSONParseException
+import org.nypl.simplified.json.core.JSONParserUtilities
+import org.nypl.simplified.json.core.JSONSerializerUtilities
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+
+/**
+ * Functions to serialize EPUB indexes to/from JSON.
+ */
+
+internal object EPUBIndexJSON {
+
+  /**
+   * Deserialize an index from the given JSON text. Indexes of any version other than the
+   * current version are rejected.
+   *
+   * @throws JSONParseException On parse errors
+   */
+
+  @Throws(IOException::class)
+  fun deserializeFromString(
+    objectMapper: ObjectMapper,
+    text: String
+  ): EPUBIndex {
+    val node = JSONParserUtilities.checkObject(null, objectMapper.readTree(text))
+    val version = JSONParserUtilities.getInteger(node, "@version")
+    if (version != EPUBIndex.CURRENT_VERSION) {
+      throw JSONParseException("Unsupported index version: $version")
+    }
+
+    return EPUBIndex(
+      version = version,
+      bookLength = JSONParserUtilities.getNode(node, "bookLength").asLong(),
+      bookLastModified = JSONParserUtilities.getNode(node, "bookLastModified").asLong(),
+      packagePath = JSONParserUtilities.getString(node, "packagePath"),
+      fixedLayout = JSONParserUtilities.getBoolean(node, "fixedLayout"),
+      entries = JSONParserUtilities.getArray(node, "entries").map { element ->
+        val entry = JSONParserUtilities.checkObject(null, element)
+        EPUBIndex.Entry(
+          path = JSONParserUtilities.getString(entry, "path"),
+          offset = JSONParserUtilities.getNode(entry, "offset").asLong(),
+          compressedLength = JSONParserUtilities.getNode(entry, "compressedLength").asLong(),
+          length = JSONParserUtilities.getNode(entry, "length").asLong(),
+          compressed = JSONParserUtilities.getBoolean(entry, "compressed")
+        )
+      },
+      readingOrder = JSONParserUtilities.getArray(node, "readingOrder").map { element ->
+        val item = JSONParserUtilities.checkObject(null, element)
+        EPUBIndex.Item(
+          href = JSONParserUtilities.getString(item, "href"),
+          mediaType = JSONParserUtilities.getString(item, "mediaType"),
+          positions = JSONParserUtilities.getInteger(item, "positions")
+        )
+      },
+      tableOfContents = JSONParserUtilities.getArray(node, "tableOfContents").map { element ->
+        val toc = JSONParserUtilities.checkObject(null, element)
+        EPUBIndex.TOCEntry(
+          title = JSONParserUtilities.getString(toc, "title"),
+          href = JSONParserUtilities.getString(toc, "href"),
+          depth = JSONParserUtilities.getInteger(toc, "depth")
+        )
+      }
+    )
+  }
+
+  /**
+   * Serialize an index to JSON.
+   */
+
+  fun serializeToJSON(
+    objectMapper: ObjectMapper,
+    index: EPUBIndex
+  ): ObjectNode {
+    val node = objectMapper.createObjectNode()
+    node.put("@version", index.version)
+    node.put("bookLength", index.bookLength)
+    node.put("bookLastModified", index.bookLastModified)
+    node.put("packagePath", index.packagePath)
+    node.put("fixedLayout", index.fixedLayout)
+
+    val entries = node.putArray("entries")
+    for (entry in index.entries) {
+      val entryNode = entries.addObject()
+      entryNode.put("path", entry.path)
+      entryNode.put("offset", entry.offset)
+      entryNode.put("compressedLength", entry.compressedLength)
+      entryNode.put("length", entry.length)
+      entryNode.put("compressed", entry.compressed)
+    }
+
+    val readingOrder = node.putArray("readingOrder")
+    for (item in index.readingOrder) {
+      val itemNode = readingOrder.addObject()
+      itemNode.put("href", item.href)
+      itemNode.put("mediaType", item.mediaType)
+      itemNode.put("positions", item.positions)
+    }
+
+    val tableOfContents = node.putArray("tableOfContents")
+    for (toc in index.tableOfContents) {
+      val tocNode = tableOfContents.addObject()
+      tocNode.put("title", toc.title)
+      tocNode.put("href", toc.href)
+      tocNode.put("depth", toc.depth)
+    }
+    return node
+  }
+
+  /**
+   * Serialize an index to a JSON string.
+   *
+   * @throws IOException On serialization errors
+   */
+
+  @Throws(IOException::class)
+  fun serializeToString(
+    objectMapper: ObjectMapper,
+    index: EPUBIndex
+  ): String {
+    val output = ByteArrayOutputStream(4096)
+    JSONSerializerUtilities.serialize(this.serializeToJSON(objectMapper, index), output)
+    return output.toString("UTF-8")
+  }
+}
@@ -0,0 +1,387 @@
+package org.nypl.simplified.books.book_database
+
+import org.nypl.simplified.books.book_database.api.EPUBIndex
+import org.slf4j.LoggerFactory
+import org.w3c.dom.Document
+import org.w3c.dom.Element
+import org.w3c.dom.Node
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.net.URI
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.zip.ZipFile
+import javax.xml.parsers.DocumentBuilderFactory
+
+/**
+ * Functions to build indexes of EPUB files.
+ */
+
+internal object EPUBIndexer {
+
+  private val logger =
+    LoggerFactory.getLogger(EPUBIndexer::class.java)
+
+  private const val NAMESPACE_CONTAINER =
+    "urn:oasis:names:tc:opendocument:xmlns:container"
+  private const val NAMESPACE_OPF =
+    "http://www.idpf.org/2007/opf"
+  private const val NAMESPACE_OPS =
+    "http://www.idpf.org/2007/ops"
+  private const val NAMESPACE_NCX =
+    "http://www.daisy.org/z3986/2005/ncx/"
+  private const val NAMESPACE_XHTML =
+    "http://www.w3.org/1999/xhtml"
+
+  private const val SIGNATURE_END_OF_CENTRAL_DIRECTORY = 0x06054b50
+  private const val SIGNATURE_CENTRAL_DIRECTORY_HEADER = 0x02014b50
+  private const val LENGTH_END_OF_CENTRAL_DIRECTORY = 22
+  private const val LENGTH_CENTRAL_DIRECTORY_HEADER = 46
+  private const val LENGTH_COMMENT_MAXIMUM = 0xffff
+  private const val METHOD_STORED = 0
+
+  private class ManifestItem(
+    val href: String,
+    val mediaType: String,
+    val properties: List<String>
+  )
+
+  /**
+   * Index the given EPUB file.
+   *
+   * @throws IOException If the file is not a readable EPUB
+   */
+
+  @Throws(IOException::class)
+  fun index(file: File): EPUBIndex {
+    val timeThen = System.nanoTime()
+    val length = file.length()
+    val lastModified = file.lastModified()
+    val entries = this.readCentralDirectory(file)
+    val entriesByPath = entries.associateBy { entry -> entry.path }
+
+    val index = ZipFile(file).use { zip ->
+      val container = this.parse(zip, "META-INF/container.xml")
+      val packagePath =
+        container.getElementsByTagNameNS(NAMESPACE_CONTAINER, "rootfile")
+          .elements()
+          .map { element -> element.getAttribute("full-path") }
+          .firstOrNull { path -> path.isNotEmpty() }
+          ?: throw IOException("The container does not name a package document")
+
+      val opf = this.parse(zip, packagePath)
+      val manifest = HashMap<String, ManifestItem>()
+      for (item in opf.getElementsByTagNameNS(NAMESPACE_OPF, "item").elements()) {
+        manifest[item.getAttribute("id")] =
+          ManifestItem(
+            href = this.resolve(packagePath, item.getAttribute("href")),
+            mediaType = item.getAttribute("media-type"),
+            properties = item.getAttribute("properties").split(' ').filter { it.isNotEmpty() }
+          )
+      }
+
+      val fixedLayout =
+        opf.getElementsByTagNameNS(NAMESPACE_OPF, "meta")
+          .elements()
+          .any { meta ->
+            meta.getAttribute("property") == "rendition:layout" &&
+              meta.textContent.trim() == "pre-paginated"
+          }
+
+      val spine =
+        opf.getElementsByTagNameNS(NAMESPACE_OPF, "spine")
+          .elements()
+          .firstOrNull()
+          ?: throw IOException("The package document has no spine")
+
+      val readingOrder =
+        spine.getElementsByTagNameNS(NAMESPACE_OPF, "itemref")
+          .elements()
+          .mapNotNull { itemref -> manifest[itemref.getAttribute("idref")] }
+          .map { item ->
+            val stored = entriesByPath[item.href]?.compressedLength ?: 0L
+            EPUBIndex.Item(
+              href = item.href,
+              mediaType = item.mediaType,
+              positions = if (fixedLayout) 1 else this.positionsOf(stored)
+            )
+          }
+
+      val nav = manifest.values.firstOrNull { item -> item.properties.contains("nav") }
+      val ncx = manifest[spine.getAttribute("toc")]
+      val tableOfContents =
+        try {
+          when {
+            nav != null -> this.tocOfNav(zip, nav.href)
+            ncx != null -> this.tocOfNCX(zip, ncx.href)
+            else -> listOf()
+          }
+        } catch (e: Exception) {
+          this.logger.warn("could not read the table of contents: {}: ", file, e)
+          listOf()
+        }
+
+      EPUBIndex(
+        version = EPUBIndex.CURRENT_VERSION,
+        bookLength = length,
+        bookLastModified = lastModified,
+        packagePath = packagePath,
+        fixedLayout = fixedLayout,
+        entries = entries,
+        readingOrder = readingOrder,
+        tableOfContents = tableOfContents
+      )
+    }
+
+    this.logger.debug(
+      "indexed {} ({} entries, {} spine items) in {}ms",
+      file,
+      index.entries.size,
+      index.readingOrder.size,
+      (System.nanoTime() - timeThen) / 1_000_000L
+    )
+    return index
+  }
+
+  private fun positionsOf(storedLength: Long): Int =
+    maxOf(1L, (storedLength + EPUBIndex.POSITION_LENGTH - 1) / EPUBIndex.POSITION_LENGTH).toInt()
+
+  /**
+   * Read the central directory directly from the end of the archive, so that the offsets of
+   * the local headers are available.
+   */
+
+  @Throws(IOException::class)
+  private fun readCentralDirectory(file: File): List<EPUBIndex.Entry> {
+    RandomAccessFile(file, "r").use { input ->
+      val length = input.length()
+      val tailLength =
+        minOf(length, (LENGTH_END_OF_CENTRAL_DIRECTORY + LENGTH_COMMENT_MAXIMUM).toLong()).toInt()
+      val tail = ByteArray(tailLength)
+      input.seek(length - tailLength)
+      input.readFully(tail)
+
+      val tailBuffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN)
+      var end = tailLength - LENGTH_END_OF_CENTRAL_DIRECTORY
+      while (end >= 0 && tailBuffer.getInt(end) != SIGNATURE_END_OF_CENTRAL_DIRECTORY) {
+        --end
+      }
+      if (end < 0) {
+        throw IOException("Not a zip archive")
+      }
+
+      val count = tailBuffer.getShort(end + 10).toInt() and 0xffff
+      val directoryLength = tailBuffer.getInt(end + 12).toLong() and 0xffffffffL
+      val directoryOffset = tailBuffer.getInt(end + 16).toLong() and 0xffffffffL
+      if (directoryOffset + directoryLength > length) {
+        throw IOException("The central directory lies outside the archive")
+      }
+
+      val directory = ByteArray(directoryLength.toInt())
+      input.seek(directoryOffset)
+      input.readFully(directory)
+
+      val buffer = ByteBuffer.wrap(directory).order(ByteOrder.LITTLE_ENDIAN)
+      val entries = ArrayList<EPUBIndex.Entry>(count)
+      var position = 0
+      for (index in 0 until count) {
+        if (position + LENGTH_CENTRAL_DIRECTORY_HEADER > directory.size ||
+          buffer.getInt(position) != SIGNATURE_CENTRAL_DIRECTORY_HEADER
+        ) {
+          throw IOException("Malformed central directory entry $index")
+        }
+
+        val method = buffer.getShort(position + 10).toInt() and 0xffff
+        val compressedLength = buffer.getInt(position + 20).toLong() and 0xffffffffL
+        val uncompressedLength = buffer.getInt(position + 24).toLong() and 0xffffffffL
+        val nameLength = buffer.getShort(position + 28).toInt() and 0xffff
+        val extraLength = buffer.getShort(position + 30).toInt() and 0xffff
+        val commentLength = buffer.getShort(position + 32).toInt() and 0xffff
+        val offset = buffer.getInt(position + 42).toLong() and 0xffffffffL
+        val name =
+          String(directory, position + LENGTH_CENTRAL_DIRECTORY_HEADER, nameLength, Charsets.UTF_8)
+
+        entries.add(
+          EPUBIndex.Entry(
+            path = name,
+            offset = offset,
+            compressedLength = compressedLength,
+            length = uncompressedLength,
+            compressed = method != METHOD_STORED
+          )
+        )
+        position += LENGTH_CENTRAL_DIRECTORY_HEADER + nameLength + extraLength + commentLength
+      }
+      return entries
+    }
+  }
+
+  private fun tocOfNav(
+    zip: ZipFile,
+    navPath: String
+  ): List<EPUBIndex.TOCEntry> {
+    val document = this.parse(zip, navPath)
+    val nav =
+      document.getElementsByTagNameNS(NAMESPACE_XHTML, "nav")
+        .elements()
+        .firstOrNull { element ->
+          element.getAttributeNS(NAMESPACE_OPS, "type").split(' ').contains("toc")
+        } ?: return listOf()
+
+    val results = mutableListOf<EPUBIndex.TOCEntry>()
+    val list = nav.childElements().firstOrNull { element -> element.localName == "ol" }
+    if (list != null) {
+      this.tocOfNavList(navPath, list, 0, results)
+    }
+    return results
+  }
+
+  private fun tocOfNavList(
+    navPath: String,
+    list: Element,
+    depth: Int,
+    results: MutableList<EPUBIndex.TOCEntry>
+  ) {
+    for (item in list.childElements().filter { element -> element.localName == "li" }) {
+      val children = item.childElements()
+      val label =
+        children.firstOrNull { element -> element.localName == "a" || element.localName == "span" }
+      if (label != null) {
+        val href = label.getAttribute("href")
+        results.add(
+          EPUBIndex.TOCEntry(
+            title = label.textContent.trim().replace(Regex("\\s+"), " "),
+            href = if (href.isEmpty()) "" else this.resolve(navPath, href),
+            depth = depth
+          )
+        )
+      }
+      val sublist = children.firstOrNull { element -> element.localName == "ol" }
+      if (sublist != null) {
+        this.tocOfNavList(navPath, sublist, depth + 1, results)
+      }
+    }
+  }
+
+  private fun tocOfNCX(
+    zip: ZipFile,
+    ncxPath: String
+  ): List<EPUBIndex.TOCEntry> {
+    val document = this.parse(zip, ncxPath)
+    val navMap =
+      document.getElementsByTagNameNS(NAMESPACE_NCX, "navMap")
+        .elements()
+        .firstOrNull() ?: return listOf()
+
+    val results = mutableListOf<EPUBIndex.TOCEntry>()
+    this.tocOfNCXPoints(ncxPath, navMap, 0, results)
+    return results
+  }
+
+  private fun tocOfNCXPoints(
+    ncxPath: String,
+    parent: Element,
+    depth: Int,
+    results: MutableList<EPUBIndex.TOCEntry>
+  ) {
+    for (point in parent.childElements().filter { element -> element.localName == "navPoint" }) {
+      val children = point.childElements()
+      val title =
+        children.firstOrNull { element -> element.localName == "navLabel" }
+          ?.textContent
+          ?.trim()
+          ?.replace(Regex("\\s+"), " ")
+          ?: ""
+      val src =
+        children.firstOrNull { element -> element.localName == "content" }
+          ?.getAttribute("src")
+          ?: ""
+
+      results.add(
+        EPUBIndex.TOCEntry(
+          title = title,
+          href = if (src.isEmpty()) "" else this.resolve(ncxPath, src),
+          depth = depth
+        )
+      )
+      this.tocOfNCXPoints(ncxPath, point, depth + 1, results)
+    }
+  }
+
+  @Throws(IOException::class)
+  private fun parse(
+    zip: ZipFile,
+    path: String
+  ): Document {
+    val entry = zip.getEntry(path) ?: throw IOException("Missing archive entry: $path")
+    val factory = DocumentBuilderFactory.newInstance()
+    factory.isNamespaceAware = true
+    factory.isValidating = false
+    try {
+      factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false)
+    } catch (e: Exception) {
+      // Not every parser supports this feature.
+    }
+
+    return try {
+      zip.getInputStream(entry).use { stream -> factory.newDocumentBuilder().parse(stream) }
+    } catch (e: IOException) {
+      throw e
+    } catch (e: Exception) {
+      throw IOException("Could not parse $path", e)
+    }
+  }
+
+  /**
+   * Resolve `href` against the document at `base`, both relative to the root of the archive,
+   * and return the resulting path with percent-encoding removed.
+   */
+
+  private fun resolve(
+    base: String,
+    href: String
+  ): String {
+    val fragmentIndex = href.indexOf('#')
+    val path = if (fragmentIndex >= 0) href.substring(0, fragmentIndex) else href
+    val fragment = if (fragmentIndex >= 0) href.substring(fragmentIndex) else ""
+
+    val decoded = try {
+      URI(path).path ?: path
+    } catch (e: Exception) {
+      path
+    }
+
+    val segments =
+      if (decoded.isEmpty()) {
+        base.split('/').toMutableList()
+      } else {
+        (base.split('/').dropLast(1) + decoded.split('/')).toMutableList()
+      }
+
+    val normalized = mutableListOf<String>()
+    for (segment in segments) {
+      when (segment) {
+        "", "." -> Unit
+        ".." -> if (normalized.isNotEmpty()) normalized.removeAt(normalized.size - 1)
+        else -> normalized.add(segment)
+      }
+    }
+    return normalized.joinToString("/") + fragment
+  }
+
+  private fun org.w3c.dom.NodeList.elements(): List<Element> =
+    (0 until this.length).mapNotNull { index -> this.item(index) as? Element }
+
+  private fun Element.childElements(): List<Element> {
+    val results = mutableListOf<Element>()
+    var node: Node? = this.firstChild
+    while (node != null) {
+      if (node is Element) {
+        results.add(node)
+      }
+      node = node.nextSibling
+    }
+    return results
+  }
+}
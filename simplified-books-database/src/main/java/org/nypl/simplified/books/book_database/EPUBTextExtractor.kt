@@ -0,0 +1,173 @@
+package org.nypl.simplified.books.book_database
+
+import java.util.Locale
+
+/**
+ * Functions to extract the readable text from XHTML content documents.
+ *
+ * This is deliberately not an XML parser: content documents in the wild are frequently not
+ * well-formed, and the only requirement is that the extracted text is stable so that offsets
+ * recorded at indexing time can be used to find the same text again later.
+ */
+
+internal object EPUBTextExtractor {
+
+  private val ignoredElements =
+    setOf("head", "script", "style", "svg")
+
+  private val blockElements =
+    setOf(
+      "address", "blockquote", "br", "dd", "div", "dt", "figcaption", "h1", "h2", "h3", "h4",
+      "h5", "h6", "hr", "li", "p", "pre", "section", "td", "th", "tr"
+    )
+
+  private val entities =
+    mapOf(
+      "amp" to "&",
+      "apos" to "'",
+      "gt" to ">",
+      "lt" to "<",
+      "nbsp" to " ",
+      "quot" to "\"",
+      "mdash" to "—",
+      "ndash" to "–",
+      "hellip" to "…",
+      "lsquo" to "‘",
+      "rsquo" to "’",
+      "ldquo" to "“",
+      "rdquo" to "”"
+    )
+
+  /**
+   * Extract the text of the given document. Runs of whitespace are collapsed to a single
+   * space, and block elements are separated by a newline.
+   */
+
+  fun extract(document: String): String {
+    val output = StringBuilder(document.length / 2)
+    var ignoredDepth = 0
+    var index = 0
+
+    while (index < document.length) {
+      val ch = document[index]
+      when {
+        ch == '<' -> {
+          val end = this.tagEnd(document, index)
+          val tag = document.substring(index + 1, end)
+          index = end + 1
+
+          if (tag.startsWith("!") || tag.startsWith("?")) {
+            continue
+          }
+
+          val closing = tag.startsWith("/")
+          val selfClosing = tag.endsWith("/")
+          val name = this.tagName(tag.removePrefix("/"))
+
+          if (this.ignoredElements.contains(name) && !selfClosing) {
+            ignoredDepth = if (closing) maxOf(0, ignoredDepth - 1) else ignoredDepth + 1
+          }
+          if (ignoredDepth == 0 && this.blockElements.contains(name)) {
+            this.appendBreak(output)
+          }
+        }
+
+        ignoredDepth > 0 -> {
+          ++index
+        }
+
+        ch == '&' -> {
+          val end = document.indexOf(';', index)
+          if (end > index && end - index <= 10) {
+            val decoded = this.decodeEntity(document.substring(index + 1, end))
+            if (decoded != null) {
+              this.appendText(output, decoded)
+              index = end + 1
+              continue
+            }
+          }
+          this.appendText(output, "&")
+          ++index
+        }
+
+        else -> {
+          this.appendCharacter(output, ch)
+          ++index
+        }
+      }
+    }
+
+    return output.trim().toString()
+  }
+
+  private fun tagEnd(
+    document: String,
+    start: Int
+  ): Int {
+    if (document.startsWith("<!--", start)) {
+      val end = document.indexOf("-->", start + 4)
+      return if (end < 0) document.length - 1 else end + 2
+    }
+    val end = document.indexOf('>', start)
+    return if (end < 0) document.length - 1 else end
+  }
+
+  private fun tagName(tag: String): String {
+    var end = 0
+    while (end < tag.length && !tag[end].isWhitespace() && tag[end] != '/' && tag[end] != '>') {
+      ++end
+    }
+    val name = tag.substring(0, end)
+    val colon = name.indexOf(':')
+    return (if (colon >= 0) name.substring(colon + 1) else name).toLowerCase(Locale.ROOT)
+  }
+
+  private fun decodeEntity(entity: String): String? {
+    return try {
+      when {
+        entity.startsWith("#x") || entity.startsWith("#X") ->
+          String(Character.toChars(entity.substring(2).toInt(16)))
+        entity.startsWith("#") ->
+          String(Character.toChars(entity.substring(1).toInt()))
+        else ->
+          this.entities[entity]
+      }
+    } catch (e: Exception) {
+      null
+    }
+  }
+
+  private fun appendBreak(output: StringBuilder) {
+    if (output.isEmpty()) {
+      return
+    }
+    if (output.last() == ' ') {
+      output.setLength(output.length - 1)
+    }
+    if (output.isNotEmpty() && output.last() != '\n') {
+      output.append('\n')
+    }
+  }
+
+  private fun appendText(
+    output: StringBuilder,
+    text: String
+  ) {
+    for (ch in text) {
+      this.appendCharacter(output, ch)
+    }
+  }
+
+  private fun appendCharacter(
+    output: StringBuilder,
+    ch: Char
+  ) {
+    if (ch.isWhitespace()) {
+      if (output.isNotEmpty() && !output.last().isWhitespace()) {
+        output.append(' ')
+      }
+    } else {
+      output.append(ch)
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package org.nypl.simplified.books.book_registry
+
+import org.nypl.simplified.books.api.BookID
+
+/**
+ * A sample of the progress of a book download.
+ */
+
+data class BookDownloadProgress(
+
+  /**
+   * The book being downloaded.
+   */
+
+  val bookID: BookID,
+
+  /**
+   * The number of bytes received so far.
+   */
+
+  val receivedBytes: Long,
+
+  /**
+   * The expected total number of bytes, if known.
+   */
+
+  val expectedBytes: Long?,
+
+  /**
+   * The recent download rate.
+   */
+
+  val bytesPerSecond: Long,
+
+  /**
+   * The estimated time until the download completes, if it can be estimated.
+   */
+
+  val secondsRemaining: Long?
+) {
+
+  /**
+   * The progress of the download as a percentage, if the expected size is known.
+   */
+
+  val progressPercent: Double?
+    get() {
+      val expected = this.expectedBytes ?: return null
+      if (expected <= 0L) {
+        return null
+      }
+      return (this.receivedBytes.toDouble() / expected.toDouble()) * 100.0
+    }
+}
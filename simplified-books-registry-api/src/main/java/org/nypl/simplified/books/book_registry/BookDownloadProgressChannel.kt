@@ -0,0 +1,161 @@
+package org.nypl.simplified.books.book_registry
+
+import io.reactivex.Observable
+import io.reactivex.subjects.PublishSubject
+import org.nypl.simplified.books.api.BookID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * The default implementation of the [BookDownloadProgressChannelType] interface.
+ *
+ * Counters are sampled on the given executor every [sampleIntervalMilliseconds], but only
+ * while at least one download is being tracked. A sample is only published for a download
+ * if its counters have changed since the previous sample.
+ */
+
+class BookDownloadProgressChannel(
+  private val executor: ScheduledExecutorService,
+  private val sampleIntervalMilliseconds: Long = SAMPLE_INTERVAL_MILLISECONDS_DEFAULT,
+  private val clock: () -> Long = System::nanoTime
+) : BookDownloadProgressChannelType {
+
+  companion object {
+
+    /**
+     * The default interval between samples.
+     */
+
+    const val SAMPLE_INTERVAL_MILLISECONDS_DEFAULT = 250L
+
+    /*
+     * The weight given to the most recent sample when smoothing the download rate.
+     */
+
+    private const val RATE_SMOOTHING = 0.3
+
+    /**
+     * Create a progress channel that samples downloads on its own thread.
+     */
+
+    fun create(): BookDownloadProgressChannelType {
+      val executor =
+        ScheduledThreadPoolExecutor(1) { runnable ->
+          val thread = Thread(runnable, "simplified-download-progress")
+          thread.isDaemon = true
+          thread
+        }.apply {
+          this.setKeepAliveTime(5L, TimeUnit.SECONDS)
+          this.allowCoreThreadTimeOut(true)
+        }
+      return BookDownloadProgressChannel(executor)
+    }
+  }
+
+  private val counters =
+    ConcurrentHashMap<BookID, BookDownloadProgressCounter>()
+  private val latest =
+    ConcurrentHashMap<BookID, BookDownloadProgress>()
+  private val samples =
+    PublishSubject.create<BookDownloadProgress>()
+
+  private val samplingLock = Any()
+
+  private var sampling: ScheduledFuture<*>? = null
+
+  override fun counterFor(id: BookID): BookDownloadProgressCounter {
+    val counter = BookDownloadProgressCounter(id)
+    val existing = this.counters.putIfAbsent(id, counter)
+    if (existing != null) {
+      return existing
+    }
+
+    synchronized(this.samplingLock) {
+      if (this.sampling == null) {
+        this.sampling =
+          this.executor.scheduleAtFixedRate(
+            { this.sample() },
+            this.sampleIntervalMilliseconds,
+            this.sampleIntervalMilliseconds,
+            TimeUnit.MILLISECONDS
+          )
+      }
+    }
+    return counter
+  }
+
+  override fun finish(id: BookID) {
+    this.counters.remove(id)
+    this.latest.remove(id)
+
+    synchronized(this.samplingLock) {
+      if (this.counters.isEmpty()) {
+        this.sampling?.cancel(false)
+        this.sampling = null
+      }
+    }
+  }
+
+  override fun progressNow(id: BookID): BookDownloadProgress? =
+    this.latest[id]
+
+  override fun progress(): Observable<BookDownloadProgress> =
+    this.samples
+
+  /**
+   * Sample all downloads immediately. This is called at a fixed rate while downloads are
+   * being tracked.
+   */
+
+  fun sample() {
+    val now = this.clock()
+    for (counter in this.counters.values) {
+      val received = counter.receivedBytes
+      if (received == counter.sampledBytes) {
+        continue
+      }
+
+      if (counter.sampledBytes >= 0L) {
+        val elapsed = now - counter.sampledTime
+        if (elapsed > 0L) {
+          val rate =
+            ((received - counter.sampledBytes).toDouble() * TimeUnit.SECONDS.toNanos(1L)) / elapsed
+          counter.sampledRate =
+            if (counter.sampledRate == 0.0) {
+              rate
+            } else {
+              (RATE_SMOOTHING * rate) + ((1.0 - RATE_SMOOTHING) * counter.sampledRate)
+            }
+        }
+      }
+      counter.sampledBytes = received
+      counter.sampledTime = now
+
+      val expected = counter.expectedBytes
+      val bytesPerSecond = counter.sampledRate.toLong()
+      val secondsRemaining =
+        if (expected != null && bytesPerSecond > 0L) {
+          maxOf(0L, expected - received) / bytesPerSecond
+        } else {
+          null
+        }
+
+      val sample =
+        BookDownloadProgress(
+          bookID = counter.bookID,
+          receivedBytes = received,
+          expectedBytes = expected,
+          bytesPerSecond = bytesPerSecond,
+          secondsRemaining = secondsRemaining
+        )
+
+      if (this.counters[counter.bookID] === counter) {
+        this.latest[counter.bookID] = sample
+        this.samples.onNext(sample)
+      }
+    }
+  }
+}
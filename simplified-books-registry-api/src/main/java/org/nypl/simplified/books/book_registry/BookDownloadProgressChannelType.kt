@@ -0,0 +1,48 @@
+package org.nypl.simplified.books.book_registry
+
+import io.reactivex.Observable
+import org.nypl.simplified.books.api.BookID
+
+/**
+ * A channel that delivers the byte-level progress of book downloads.
+ *
+ * The book registry only records that a book is downloading. The number of bytes received,
+ * the download rate, and the estimated time remaining are delivered separately by this
+ * channel: downloads update lock-free counters, and the channel samples the counters at a
+ * fixed rate suitable for displaying in a user interface.
+ */
+
+interface BookDownloadProgressChannelType {
+
+  /**
+   * Start tracking the download of the given book, or return the counter of a download of
+   * the book that is already being tracked.
+   */
+
+  fun counterFor(id: BookID): BookDownloadProgressCounter
+
+  /**
+   * Stop tracking the download of the given book.
+   */
+
+  fun finish(id: BookID)
+
+  /**
+   * @return The most recent progress sample for the given book, if it is being downloaded
+   */
+
+  fun progressNow(id: BookID): BookDownloadProgress?
+
+  /**
+   * @return An observable that publishes progress samples for all downloads
+   */
+
+  fun progress(): Observable<BookDownloadProgress>
+
+  /**
+   * @return An observable that publishes progress samples for the given book
+   */
+
+  fun progressFor(id: BookID): Observable<BookDownloadProgress> =
+    this.progress().filter { sample -> sample.bookID == id }
+}
@@ -0,0 +1,71 @@
+package org.nypl.simplified.books.book_registry
+
+import org.nypl.simplified.books.api.BookID
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * The byte counters of a single download.
+ *
+ * Counters are updated by the thread performing the download, once per chunk, and are read
+ * by the progress channel at a fixed rate. Updates are lock-free and never allocate.
+ */
+
+class BookDownloadProgressCounter internal constructor(
+
+  /**
+   * The book being downloaded.
+   */
+
+  val bookID: BookID
+) {
+
+  private val received = AtomicLong(0L)
+
+  @Volatile
+  private var expected = -1L
+
+  /*
+   * State owned by the sampling thread.
+   */
+
+  internal var sampledBytes = -1L
+  internal var sampledTime = 0L
+  internal var sampledRate = 0.0
+
+  /**
+   * The number of bytes received so far.
+   */
+
+  val receivedBytes: Long
+    get() = this.received.get()
+
+  /**
+   * The expected total number of bytes, if known.
+   */
+
+  val expectedBytes: Long?
+    get() {
+      val value = this.expected
+      return if (value < 0L) null else value
+    }
+
+  /**
+   * Record that [bytes] more bytes have been received.
+   */
+
+  fun add(bytes: Long) {
+    this.received.addAndGet(bytes)
+  }
+
+  /**
+   * Set the absolute number of received and expected bytes.
+   */
+
+  fun set(
+    receivedBytes: Long,
+    expectedBytes: Long?
+  ) {
+    this.expected = expectedBytes ?: -1L
+    this.received.set(receivedBytes)
+  }
+}
@@ -5,6 +5,7 @@ import com.io7m.jfunctional.Option
 import com.io7m.jfunctional.OptionType
 import io.reactivex.Observable
 import io.reactivex.subjects.PublishSubject
+import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.books.api.BookID
 import org.slf4j.LoggerFactory
 import java.util.Collections
@@ -19,7 +20,9 @@ class BookRegistry private constructor(
     LoggerFactory.getLogger(BookRegistry::class.java)
   private val booksReadOnly: SortedMap<BookID, BookWithStatus> =
     Collections.unmodifiableSortedMap(this.books)
-  private val observable: PublishSubject<BookStatusEvent> =
+  private val events =
+    BookStatusEventDispatcher()
+  private val snapshots: PublishSubject<BookRegistrySnapshotEvent> =
     PublishSubject.create()
 
   override fun books(): SortedMap<BookID, BookWithStatus> {
@@ -27,7 +30,31 @@ class BookRegistry private constructor(
   }
 
   override fun bookEvents(): Observable<BookStatusEvent> {
-    return this.observable
+    return this.events.events()
+  }
+
+  override fun bookEventsFor(
+    id: BookID,
+    progressIntervalMilliseconds: Long
+  ): Observable<BookStatusEvent> {
+    return BookStatusEventThrottling.throttleProgress(
+      events = this.events.eventsForBook(id),
+      intervalMilliseconds = progressIntervalMilliseconds
+    )
+  }
+
+  override fun bookEventsForAccount(
+    id: AccountID,
+    progressIntervalMilliseconds: Long
+  ): Observable<BookStatusEvent> {
+    return BookStatusEventThrottling.throttleProgress(
+      events = this.events.eventsForAccount(id),
+      intervalMilliseconds = progressIntervalMilliseconds
+    )
+  }
+
+  override fun bookSnapshots(): Observable<BookRegistrySnapshotEvent> {
+    return this.snapshots
   }
 
   override fun bookStatus(id: BookID): OptionType<BookStatus> {
@@ -63,7 +90,7 @@ class BookRegistry private constructor(
         )
       }
 
-    this.observable.onNext(event)
+    this.events.publish(newStatus.book.account, event)
   }
 
   override fun updateIfStatusIsMoreImportant(status: BookWithStatus) {
@@ -84,10 +111,62 @@ class BookRegistry private constructor(
     }
   }
 
+  override fun updateAll(
+    statuses: Collection<BookWithStatus>,
+    replace: Boolean,
+    complete: Boolean
+  ) {
+    val bookIds = HashSet<BookID>(statuses.size)
+    for (status in statuses) {
+      bookIds.add(status.book.id)
+    }
+
+    val removed = if (replace) {
+      this.books.filterKeys { id -> !bookIds.contains(id) }
+    } else {
+      mapOf()
+    }
+    this.books.keys.removeAll(removed.keys)
+    val changed = mutableListOf<Pair<BookWithStatus, BookWithStatus>>()
+    for (status in statuses) {
+      val oldStatus = this.books.put(status.book.id, status)
+
+      /*
+       * A status that was never computed cannot have been seen by anyone, so there is no
+       * change to publish for it.
+       */
+
+      if (oldStatus != null && oldStatus.isStatusComputed) {
+        changed.add(Pair(oldStatus, status))
+      }
+    }
+
+    for (entry in removed) {
+      this.events.publish(
+        entry.value.book.account,
+        BookStatusEvent.BookStatusEventRemoved(entry.key, entry.value.status)
+      )
+    }
+    for ((oldStatus, newStatus) in changed) {
+      this.publishUpdateEvent(oldStatus, newStatus)
+    }
+
+    this.snapshots.onNext(
+      BookRegistrySnapshotEvent(
+        bookIds = bookIds,
+        replaced = replace,
+        complete = complete
+      )
+    )
+  }
+
   override fun clear() {
     val entries = this.books.toMap()
     for (entry in entries) {
-      this.observable.onNext(BookStatusEvent.BookStatusEventRemoved(entry.key, entry.value.status))
+      this.events.publish(
+        entry.value.book.account,
+        BookStatusEvent.BookStatusEventRemoved(entry.key, entry.value.status)
+      )
     }
     this.books.clear()
   }
@@ -95,7 +174,10 @@ class BookRegistry private constructor(
   override fun clearFor(id: BookID) {
     val oldStatus = this.books.remove(id)
     if (oldStatus != null) {
-      this.observable.onNext(BookStatusEvent.BookStatusEventRemoved(id, oldStatus.status))
+      this.events.publish(
+        oldStatus.book.account,
+        BookStatusEvent.BookStatusEventRemoved(id, oldStatus.status)
+      )
     }
   }
 
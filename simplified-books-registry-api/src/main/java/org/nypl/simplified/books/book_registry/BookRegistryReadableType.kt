@@ -5,7 +5,7 @@ import com.io7m.jfunctional.OptionType
 import com.io7m.jfunctional.OptionVisitorType
 import com.io7m.jfunctional.Some
 import io.reactivex.Observable
-
+import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.books.api.BookID
 
 import java.util.NoSuchElementException
@@ -17,6 +17,15 @@ import java.util.SortedMap
 
 interface BookRegistryReadableType {
 
+  companion object {
+
+    /**
+     * The default minimum time between progress events for a book in scoped event streams.
+     */
+
+    const val PROGRESS_INTERVAL_MILLISECONDS_DEFAULT = 250L
+  }
+
   /**
    * @return A read-only map of the known books
    */
@@ -29,6 +38,38 @@ interface BookRegistryReadableType {
 
   fun bookEvents(): Observable<BookStatusEvent>
 
+  /**
+   * @param id The book ID
+   * @param progressIntervalMilliseconds The minimum time between progress events
+   * @return An observable that publishes status events for the given book
+   *
+   * @see [BookStatusEventThrottling.throttleProgress]
+   */
+
+  fun bookEventsFor(
+    id: BookID,
+    progressIntervalMilliseconds: Long = PROGRESS_INTERVAL_MILLISECONDS_DEFAULT
+  ): Observable<BookStatusEvent>
+
+  /**
+   * @param id The account ID
+   * @param progressIntervalMilliseconds The minimum time between progress events for each book
+   * @return An observable that publishes status events for books owned by the given account
+   *
+   * @see [BookStatusEventThrottling.throttleProgress]
+   */
+
+  fun bookEventsForAccount(
+    id: AccountID,
+    progressIntervalMilliseconds: Long = PROGRESS_INTERVAL_MILLISECONDS_DEFAULT
+  ): Observable<BookStatusEvent>
+
+  /**
+   * @return An observable that publishes an event each time many books are updated at once
+   */
+
+  fun bookSnapshots(): Observable<BookRegistrySnapshotEvent>
+
   /**
    * @param id The book ID
    * @return The status for the given book, if any.
@@ -0,0 +1,29 @@
+package org.nypl.simplified.books.book_registry
+
+import org.nypl.simplified.books.api.BookID
+
+/**
+ * Many books were added to (or replaced in) the registry at once. Bulk updates publish a
+ * single snapshot event instead of one [BookStatusEvent] per book.
+ */
+
+data class BookRegistrySnapshotEvent(
+
+  /**
+   * The books that were added or updated.
+   */
+
+  val bookIds: Set<BookID>,
+
+  /**
+   * `true` if the previous contents of the registry were discarded.
+   */
+
+  val replaced: Boolean,
+
+  /**
+   * `true` if no further bulk updates are expected for the current load.
+   */
+
+  val complete: Boolean
+)
@@ -23,6 +23,24 @@ interface BookRegistryType : BookRegistryReadableType {
 
   fun updateIfStatusIsMoreImportant(status: BookWithStatus)
 
+  /**
+   * Unconditionally update the statuses of all of the given books. Rather than publishing a
+   * status event for each book added, a single snapshot event is published. A change event is
+   * published for each book already in the registry whose status has changed. If [replace] is
+   * `true`, all books not in [statuses] are removed from the registry, and a removal event is
+   * published for each of them.
+   *
+   * @param complete `true` if no further bulk updates are expected for the current load
+   *
+   * @see [BookRegistryReadableType.bookSnapshots]
+   */
+
+  fun updateAll(
+    statuses: Collection<BookWithStatus>,
+    replace: Boolean,
+    complete: Boolean
+  )
+
   /**
    * Clear the book registry.
    */
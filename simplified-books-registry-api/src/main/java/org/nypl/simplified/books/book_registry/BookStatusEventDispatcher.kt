@@ -0,0 +1,90 @@
+package org.nypl.simplified.books.book_registry
+
+import io.reactivex.Observable
+import io.reactivex.subjects.PublishSubject
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookID
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A dispatcher that delivers book status events to subscribers indexed by book and by
+ * account, so that publishing an event only reaches the subscribers that asked for it,
+ * rather than waking every subscriber and leaving each one to filter.
+ */
+
+internal class BookStatusEventDispatcher {
+
+  private class Subscribers {
+    val subject: PublishSubject<BookStatusEvent> = PublishSubject.create()
+    var count = 0
+  }
+
+  private val all: PublishSubject<BookStatusEvent> =
+    PublishSubject.create()
+  private val byBook =
+    ConcurrentHashMap<BookID, Subscribers>()
+  private val byAccount =
+    ConcurrentHashMap<AccountID, Subscribers>()
+
+  /**
+   * @return All events
+   */
+
+  fun events(): Observable<BookStatusEvent> =
+    this.all
+
+  /**
+   * @return Events for the given book
+   */
+
+  fun eventsForBook(id: BookID): Observable<BookStatusEvent> =
+    this.scoped(this.byBook, id)
+
+  /**
+   * @return Events for books owned by the given account
+   */
+
+  fun eventsForAccount(id: AccountID): Observable<BookStatusEvent> =
+    this.scoped(this.byAccount, id)
+
+  /**
+   * Publish an event for a book owned by the given account.
+   */
+
+  fun publish(
+    account: AccountID,
+    event: BookStatusEvent
+  ) {
+    this.all.onNext(event)
+    this.byBook[event.bookId]?.subject?.onNext(event)
+    this.byAccount[account]?.subject?.onNext(event)
+  }
+
+  /*
+   * Each key's subject is created when the first subscriber subscribes, and removed from the
+   * index when the last subscriber is disposed.
+   */
+
+  private fun <K : Any> scoped(
+    index: ConcurrentHashMap<K, Subscribers>,
+    key: K
+  ): Observable<BookStatusEvent> {
+    return Observable.defer {
+      val subscribers =
+        synchronized(index) {
+          val existing = index[key] ?: Subscribers().also { created -> index[key] = created }
+          existing.count += 1
+          existing
+        }
+
+      subscribers.subject.doFinally {
+        synchronized(index) {
+          subscribers.count -= 1
+          if (subscribers.count == 0) {
+            index.remove(key, subscribers)
+          }
+        }
+      }
+    }
+  }
+}
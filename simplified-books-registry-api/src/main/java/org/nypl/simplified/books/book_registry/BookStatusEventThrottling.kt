@@ -0,0 +1,156 @@
+package org.nypl.simplified.books.book_registry
+
+import io.reactivex.Observable
+import io.reactivex.ObservableEmitter
+import io.reactivex.Scheduler
+import io.reactivex.disposables.Disposable
+import io.reactivex.schedulers.Schedulers
+import org.nypl.simplified.books.api.BookID
+import java.util.concurrent.TimeUnit
+
+/**
+ * Functions to limit the rate of download progress events.
+ */
+
+object BookStatusEventThrottling {
+
+  /**
+   * Limit the rate at which progress events are delivered. An event that moves a book from
+   * one [BookStatus.Downloading] status to another is held back if a progress event for the
+   * same book was delivered less than [intervalMilliseconds] ago; when the interval ends, the
+   * most recent event that was held back is delivered, so the last progress of a download
+   * is never lost. All other events, including the first event that moves a book into the
+   * [BookStatus.Downloading] status, are always delivered immediately, and discard any
+   * progress event held back for the same book.
+   *
+   * @param events The events
+   * @param intervalMilliseconds The minimum time between progress events for each book
+   * @param scheduler The scheduler that supplies the time and delivers held back events
+   */
+
+  fun throttleProgress(
+    events: Observable<BookStatusEvent>,
+    intervalMilliseconds: Long,
+    scheduler: Scheduler = Schedulers.computation()
+  ): Observable<BookStatusEvent> {
+    if (intervalMilliseconds <= 0L) {
+      return events
+    }
+
+    return Observable.create { emitter ->
+      val throttle = Throttle(emitter, scheduler, intervalMilliseconds)
+      val subscription =
+        events.subscribe(throttle::onEvent, throttle::onError, throttle::onComplete)
+      emitter.setCancellable {
+        subscription.dispose()
+        throttle.dispose()
+      }
+    }
+  }
+
+  private class Window(
+    var lastDelivered: Long
+  ) {
+    var held: BookStatusEvent? = null
+    var timer: Disposable? = null
+  }
+
+  /*
+   * Events are delivered while holding the lock, so that an event held back and delivered
+   * by the timer can never be delivered after a later event for the same book.
+   */
+
+  private class Throttle(
+    private val emitter: ObservableEmitter<BookStatusEvent>,
+    scheduler: Scheduler,
+    intervalMilliseconds: Long
+  ) {
+    private val worker = scheduler.createWorker()
+    private val intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMilliseconds)
+    private val lock = Any()
+
+    private val windows = HashMap<BookID, Window>()
+
+    fun onEvent(event: BookStatusEvent) {
+      synchronized(this.lock) {
+        if (!isProgress(event)) {
+          this.windows.remove(event.bookId)?.timer?.dispose()
+          this.emitter.onNext(event)
+          return
+        }
+
+        val now = this.worker.now(TimeUnit.NANOSECONDS)
+        val window = this.windows[event.bookId]
+        if (window == null) {
+          this.windows[event.bookId] = Window(now)
+          this.emitter.onNext(event)
+          return
+        }
+
+        val elapsed = now - window.lastDelivered
+        if (elapsed >= this.intervalNanos) {
+          window.timer?.dispose()
+          window.timer = null
+          window.held = null
+          window.lastDelivered = now
+          this.emitter.onNext(event)
+          return
+        }
+
+        window.held = event
+        if (window.timer == null) {
+          window.timer =
+            this.worker.schedule(
+              { this.onWindowEnd(event.bookId, window) },
+              this.intervalNanos - elapsed,
+              TimeUnit.NANOSECONDS
+            )
+        }
+      }
+    }
+
+    private fun onWindowEnd(
+      bookID: BookID,
+      window: Window
+    ) {
+      synchronized(this.lock) {
+        if (this.windows[bookID] !== window) {
+          return
+        }
+        val held = window.held
+        window.held = null
+        window.timer = null
+        if (held != null) {
+          window.lastDelivered = this.worker.now(TimeUnit.NANOSECONDS)
+          this.emitter.onNext(held)
+        }
+      }
+    }
+
+    fun onError(e: Throwable) {
+      synchronized(this.lock) {
+        this.emitter.onError(e)
+      }
+    }
+
+    fun onComplete() {
+      synchronized(this.lock) {
+        for (window in this.windows.values) {
+          window.timer?.dispose()
+          window.held?.let(this.emitter::onNext)
+        }
+        this.windows.clear()
+        this.emitter.onComplete()
+      }
+    }
+
+    fun dispose() {
+      this.worker.dispose()
+    }
+  }
+
+  private fun isProgress(event: BookStatusEvent): Boolean {
+    return event.statusNow is BookStatus.Downloading &&
+      event.statusPrevious is BookStatus.Downloading
+  }
+}
@@ -4,9 +4,70 @@ import org.nypl.simplified.books.api.Book
 
 /**
  * A book with an associated status value.
+ *
+ * The status may be computed lazily: values created with [deferred] compute their status the
+ * first time that it is accessed.
  */
 
-data class BookWithStatus(
+class BookWithStatus private constructor(
   val book: Book,
+  private val statusValue: Lazy<BookStatus>
+) {
+
+  constructor(
+    book: Book,
+    status: BookStatus
+  ) : this(book, lazyOf(status))
+
+  /**
+   * The status of the book.
+   */
+
   val status: BookStatus
-)
+    get() = this.statusValue.value
+
+  /**
+   * `true` if the status has been computed (or was never deferred).
+   */
+
+  internal val isStatusComputed: Boolean
+    get() = this.statusValue.isInitialized()
+
+  override fun equals(other: Any?): Boolean {
+    if (this === other) {
+      return true
+    }
+    if (other !is BookWithStatus) {
+      return false
+    }
+    return this.book == other.book && this.status == other.status
+  }
+
+  override fun hashCode(): Int {
+    return (31 * this.book.hashCode()) + this.status.hashCode()
+  }
+
+  override fun toString(): String {
+    return "BookWithStatus(book=${this.book}, status=${this.status})"
+  }
+
+  operator fun component1(): Book =
+    this.book
+
+  operator fun component2(): BookStatus =
+    this.status
+
+  companion object {
+
+    /**
+     * Create a book whose status is computed by [statusOf] when it is first accessed.
+     */
+
+    fun deferred(
+      book: Book,
+      statusOf: (Book) -> BookStatus
+    ): BookWithStatus {
+      return BookWithStatus(book, lazy { statusOf(book) })
+    }
+  }
+}
@@ -1,11 +1,14 @@
 package org.nypl.simplified.feeds.api
 
+import com.io7m.jfunctional.Pair
+import com.io7m.jfunctional.Some
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.api.BookIDs.newFromText
 import org.nypl.simplified.books.book_database.api.BookFormats
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import java.io.Serializable
+import java.net.URI
 
 /**
  * The type of feed entries.
@@ -25,6 +28,36 @@ sealed class FeedEntry : Serializable {
 
   abstract val bookID: BookID
 
+  /**
+   * A fingerprint of the content of the feed entry. The fingerprint is computed once when
+   * the entry is created. Two entries with the same book ID and different fingerprints
+   * have different content; two entries with the same book ID and the same fingerprint
+   * can be assumed to have the same content. This allows for comparing entries (such as
+   * when diffing lists of entries) without a deep comparison of the underlying OPDS data.
+   */
+
+  abstract val contentFingerprint: Long
+
+  /**
+   * @return `true` if this entry and the given entry refer to the same book
+   */
+
+  fun isSameItemAs(other: FeedEntry): Boolean {
+    return this.javaClass == other.javaClass &&
+      this.bookID == other.bookID &&
+      this.accountID == other.accountID
+  }
+
+  /**
+   * @return `true` if this entry and the given entry refer to the same book and have the
+   * same content
+   */
+
+  fun isSameContentAs(other: FeedEntry): Boolean {
+    return this.isSameItemAs(other) &&
+      this.contentFingerprint == other.contentFingerprint
+  }
+
   /**
    * A corrupt feed entry.
    *
@@ -36,7 +69,11 @@ sealed class FeedEntry : Serializable {
     override val accountID: AccountID,
     override val bookID: BookID,
     val error: Throwable
-  ) : FeedEntry()
+  ) : FeedEntry() {
+
+    override val contentFingerprint: Long =
+      fingerprintOf(this.bookID.value(), this.error.javaClass.name, this.error.message)
+  }
 
   /**
    * An entry from an OPDS feed.
@@ -47,10 +84,105 @@ sealed class FeedEntry : Serializable {
     val feedEntry: OPDSAcquisitionFeedEntry
   ) : FeedEntry() {
 
-    override val bookID: BookID
-      get() = newFromText(feedEntry.id)
+    override val bookID: BookID =
+      newFromText(this.feedEntry.id)
+
+    override val contentFingerprint: Long =
+      fingerprintOf(
+        this.feedEntry.id,
+        this.feedEntry.title,
+        this.feedEntry.updated,
+        this.feedEntry.availability,
+        this.feedEntry.acquisitions,
+        this.feedEntry.authors,
+        this.feedEntry.categories,
+        this.feedEntry.groups,
+        this.feedEntry.cover,
+        this.feedEntry.thumbnail,
+        this.feedEntry.alternate,
+        this.feedEntry.analytics,
+        this.feedEntry.annotations,
+        this.feedEntry.issues,
+        this.feedEntry.related,
+        this.feedEntry.published,
+        this.feedEntry.publisher,
+        this.feedEntry.licensor,
+        this.feedEntry.distribution,
+        this.feedEntry.summary
+      )
 
     val probableFormat: BookFormats.BookFormatDefinition? =
       BookFormats.inferFormat(feedEntry)
   }
+
+  private companion object {
+
+    private const val FNV_OFFSET = -0x340d631b7bdddcdbL
+    private const val FNV_PRIME = 0x100000001b3L
+
+    /**
+     * Combine the given values into a 64-bit FNV-1a fingerprint. Strings and URIs are
+     * hashed character by character, and optional values, lists, sets, and pairs are
+     * hashed through their elements, so a change to any of those contributes a full 64
+     * bits. Other values are mixed in through their 32-bit hash codes. The result depends
+     * on the order of the values, but not on the iteration order of sets.
+     */
+
+    fun fingerprintOf(vararg values: Any?): Long {
+      var hash = FNV_OFFSET
+      for (value in values) {
+        hash = mix(hash, value)
+      }
+      return hash
+    }
+
+    private fun mix(hash: Long, value: Any?): Long {
+      return when (value) {
+        null ->
+          mixInt(hash, 0)
+        is CharSequence ->
+          mixChars(hash, value)
+        is URI ->
+          mixChars(hash, value.toString())
+        is Some<*> ->
+          mix(mixInt(hash, 1), value.get())
+        is Pair<*, *> ->
+          mix(mix(hash, value.left), value.right)
+        is List<*> ->
+          value.fold(mixInt(hash, value.size)) { current, element -> mix(current, element) }
+        is Set<*> ->
+          mixLong(
+            mixInt(hash, value.size),
+            value.fold(0L) { sum, element -> sum + mix(FNV_OFFSET, element) }
+          )
+        else ->
+          mixInt(hash, value.hashCode())
+      }
+    }
+
+    private fun mixChars(hash: Long, text: CharSequence): Long {
+      var current = mixInt(hash, text.length)
+      for (index in text.indices) {
+        val c = text[index].code
+        current = mixByte(mixByte(current, c), c ushr 8)
+      }
+      return current
+    }
+
+    private fun mixLong(hash: Long, value: Long): Long {
+      return mixInt(mixInt(hash, value.toInt()), (value ushr 32).toInt())
+    }
+
+    private fun mixInt(hash: Long, value: Int): Long {
+      var current = hash
+      for (shift in 0 until 32 step 8) {
+        current = mixByte(current, value ushr shift)
+      }
+      return current
+    }
+
+    private fun mixByte(hash: Long, value: Int): Long {
+      return (hash xor (value and 0xff).toLong()) * FNV_PRIME
+    }
+  }
 }
@@ -64,9 +64,25 @@ class FeedLoader private constructor(
     uri: URI,
     auth: LSHTTPAuthorizationType?,
     method: String,
+  ): FluentFuture<FeedLoaderResult> {
+    return this.fetchURI(
+      account = account,
+      uri = uri,
+      auth = auth,
+      method = method,
+      executor = this.exec
+    )
+  }
+
+  override fun fetchURI(
+    account: AccountID,
+    uri: URI,
+    auth: LSHTTPAuthorizationType?,
+    method: String,
+    executor: ListeningExecutorService
   ): FluentFuture<FeedLoaderResult> {
     return FluentFuture.from(
-      this.exec.submit(
+      executor.submit(
         Callable {
           this.fetchSynchronously(
             accountId = account,
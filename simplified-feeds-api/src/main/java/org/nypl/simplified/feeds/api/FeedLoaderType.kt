@@ -1,6 +1,7 @@
 package org.nypl.simplified.feeds.api
 
 import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.ListeningExecutorService
 import org.librarysimplified.http.api.LSHTTPAuthorizationType
 import org.nypl.simplified.accounts.api.AccountID
 import java.net.URI
@@ -32,4 +33,24 @@ interface FeedLoaderType {
     auth: LSHTTPAuthorizationType?,
     method: String
   ): FluentFuture<FeedLoaderResult>
+
+  /**
+   * Load a feed from the given URI, fetching and parsing it on the given executor rather than
+   * on the loader's own executor. This allows callers that load many feeds at once to do so
+   * without delaying other feeds.
+   *
+   * @param uri      The URI
+   * @param auth     HTTP authentication details, if any
+   * @param executor The executor on which the feed will be loaded
+   *
+   * @return A future that can be used to cancel the loading feed
+   */
+
+  fun fetchURI(
+    account: AccountID,
+    uri: URI,
+    auth: LSHTTPAuthorizationType?,
+    method: String,
+    executor: ListeningExecutorService
+  ): FluentFuture<FeedLoaderResult>
 }
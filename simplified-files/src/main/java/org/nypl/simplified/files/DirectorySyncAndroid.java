@@ -0,0 +1,45 @@
+package org.nypl.simplified.files;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import com.io7m.jnull.NullCheck;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * Directory syncing on Android. {@code FileChannel} can only open
+ * directories from API level 26, so the directory is opened and synced with
+ * the system calls directly, which are available from API level 21.
+ */
+
+final class DirectorySyncAndroid implements DirectorySyncType
+{
+  DirectorySyncAndroid()
+  {
+
+  }
+
+  @Override
+  public void sync(
+    final File directory)
+    throws IOException
+  {
+    NullCheck.notNull(directory);
+
+    try {
+      final FileDescriptor fd =
+        Os.open(directory.getAbsolutePath(), OsConstants.O_RDONLY, 0);
+      try {
+        Os.fsync(fd);
+      } finally {
+        Os.close(fd);
+      }
+    } catch (final ErrnoException e) {
+      throw e.rethrowAsIOException();
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package org.nypl.simplified.files;
+
+import com.io7m.jnull.NullCheck;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Directory syncing on platforms whose {@code FileChannel} can open
+ * directories.
+ */
+
+final class DirectorySyncChannel implements DirectorySyncType
+{
+  DirectorySyncChannel()
+  {
+
+  }
+
+  @Override
+  public void sync(
+    final File directory)
+    throws IOException
+  {
+    NullCheck.notNull(directory);
+
+    final FileChannel channel =
+      FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+    try {
+      channel.force(true);
+    } finally {
+      channel.close();
+    }
+  }
+}
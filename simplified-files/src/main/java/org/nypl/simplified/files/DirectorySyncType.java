@@ -0,0 +1,25 @@
+package org.nypl.simplified.files;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A means of flushing the entries of a directory to the underlying storage
+ * device.
+ *
+ * @see FileUtilities#setDirectorySync(DirectorySyncType)
+ */
+
+public interface DirectorySyncType
+{
+  /**
+   * Flush the entries of the given directory.
+   *
+   * @param directory The directory
+   *
+   * @throws IOException If the directory could not be synced
+   */
+
+  void sync(File directory)
+    throws IOException;
+}
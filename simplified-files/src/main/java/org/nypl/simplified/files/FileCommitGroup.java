@@ -0,0 +1,206 @@
+package org.nypl.simplified.files;
+
+import com.io7m.jnull.NullCheck;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A group of atomic file replacements that are made durable together.
+ *
+ * Each staged write is written to its temporary file immediately, but no file
+ * is replaced until {@link #commit()} is called. Committing syncs every
+ * temporary file, renames each one over its target, and then syncs each
+ * affected directory once, so that the cost of directory syncs is shared by
+ * every write in the group rather than paid by each write. Writes that are
+ * staged but never committed are discarded by {@link #close()}.
+ *
+ * Groups are not thread-safe.
+ */
+
+public final class FileCommitGroup implements Closeable
+{
+  private final FileUtilities.Durability durability;
+  private final List<Staged>             staged;
+
+  private static final class Staged
+  {
+    private final File file;
+    private final File file_tmp;
+
+    Staged(
+      final File in_file,
+      final File in_file_tmp)
+    {
+      this.file = in_file;
+      this.file_tmp = in_file_tmp;
+    }
+  }
+
+  private FileCommitGroup(
+    final FileUtilities.Durability in_durability)
+  {
+    this.durability = NullCheck.notNull(in_durability);
+    this.staged = new ArrayList<Staged>(32);
+  }
+
+  /**
+   * Create a new, empty commit group.
+   *
+   * @param durability The durability of the group once committed
+   *
+   * @return A new group
+   */
+
+  public static FileCommitGroup create(
+    final FileUtilities.Durability durability)
+  {
+    return new FileCommitGroup(durability);
+  }
+
+  /**
+   * Stage a replacement of {@code file} with the given text. For portability,
+   * {@code file_tmp} and {@code file} should be in the same directory.
+   *
+   * @param file     The file
+   * @param file_tmp The temporary file
+   * @param text     The text
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void stageUTF8(
+    final File file,
+    final File file_tmp,
+    final String text)
+    throws IOException
+  {
+    NullCheck.notNull(text);
+    this.stage(file, file_tmp);
+    FileUtilities.fileWriteUTF8(file_tmp, text, false);
+  }
+
+  /**
+   * Stage a replacement of {@code file} with the given bytes. For
+   * portability, {@code file_tmp} and {@code file} should be in the same
+   * directory.
+   *
+   * @param file     The file
+   * @param file_tmp The temporary file
+   * @param data     The data
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void stageBytes(
+    final File file,
+    final File file_tmp,
+    final byte[] data)
+    throws IOException
+  {
+    NullCheck.notNull(data);
+    this.stage(file, file_tmp);
+    FileUtilities.fileWriteBytes(data, file_tmp, false);
+  }
+
+  /**
+   * Stage a replacement of {@code file} with the contents of the given
+   * stream. For portability, {@code file_tmp} and {@code file} should be in
+   * the same directory.
+   *
+   * @param file     The file
+   * @param file_tmp The temporary file
+   * @param stream   The input stream
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void stageStream(
+    final File file,
+    final File file_tmp,
+    final InputStream stream)
+    throws IOException
+  {
+    NullCheck.notNull(stream);
+    this.stage(file, file_tmp);
+    FileUtilities.fileWriteStream(file_tmp, stream, false);
+  }
+
+  /**
+   * @return The number of writes staged and not yet committed
+   */
+
+  public int size()
+  {
+    return this.staged.size();
+  }
+
+  /**
+   * Replace every staged file. If a replacement fails, the replacements that
+   * have not yet been made remain staged, and no directory is synced.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void commit()
+    throws IOException
+  {
+    if (this.durability != FileUtilities.Durability.NONE) {
+      for (final Staged write : this.staged) {
+        FileUtilities.fileSync(write.file_tmp);
+      }
+    }
+
+    final Set<File> directories = new LinkedHashSet<File>(8);
+    int committed = 0;
+    try {
+      for (final Staged write : this.staged) {
+        FileUtilities.fileRename(write.file_tmp, write.file);
+        directories.add(write.file.getAbsoluteFile().getParentFile());
+        ++committed;
+      }
+    } finally {
+      this.staged.subList(0, committed).clear();
+    }
+
+    if (this.durability == FileUtilities.Durability.DIRECTORY) {
+      for (final File directory : directories) {
+        FileUtilities.directorySync(directory);
+      }
+    }
+  }
+
+  /**
+   * Discard any writes that have been staged and not committed.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    try {
+      for (final Staged write : this.staged) {
+        FileUtilities.fileDelete(write.file_tmp);
+      }
+    } finally {
+      this.staged.clear();
+    }
+  }
+
+  private void stage(
+    final File file,
+    final File file_tmp)
+  {
+    NullCheck.notNull(file);
+    NullCheck.notNull(file_tmp);
+    this.staged.add(new Staged(file, file_tmp));
+  }
+}
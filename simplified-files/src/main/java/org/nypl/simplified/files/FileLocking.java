@@ -9,23 +9,48 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Trivial file locking utilities.
+ *
+ * Locks are identified by the canonical path of the lock file, so any two
+ * {@link File} values that name the same file share a lock. Locks are held in
+ * a fixed number of stripes, each guarded by its own monitor, so that callers
+ * locking unrelated files do not contend with each other. A lock is removed
+ * from its stripe when the last thread using it releases it.
  */
 
 public final class FileLocking
 {
-  private static final Logger                   LOG;
-  private static final Map<File, ReentrantLock> PATH_LOCKS;
+  private static final Logger   LOG;
+  private static final int      STRIPE_COUNT = 32;
+  private static final long     PROCESS_LOCK_POLL_MS = 10L;
+  private static final Stripe[] STRIPES;
+
+  private static final AtomicLong ACQUISITIONS;
+  private static final AtomicLong CONTENTIONS;
+  private static final AtomicLong TIMEOUTS;
+  private static final AtomicLong WAIT_NANOSECONDS;
 
   static {
     LOG = NullCheck.notNull(LoggerFactory.getLogger(FileLocking.class));
-    PATH_LOCKS = new WeakHashMap<File, ReentrantLock>(16);
+    STRIPES = new Stripe[FileLocking.STRIPE_COUNT];
+    for (int index = 0; index < FileLocking.STRIPE_COUNT; ++index) {
+      FileLocking.STRIPES[index] = new Stripe();
+    }
+    ACQUISITIONS = new AtomicLong(0L);
+    CONTENTIONS = new AtomicLong(0L);
+    TIMEOUTS = new AtomicLong(0L);
+    WAIT_NANOSECONDS = new AtomicLong(0L);
   }
 
   private FileLocking()
@@ -33,6 +58,172 @@ public final class FileLocking
     throw new UnreachableCodeException();
   }
 
+  /**
+   * The mode in which a lock is held.
+   */
+
+  public enum Mode
+  {
+    /**
+     * Any number of threads may hold a lock in read mode at the same time,
+     * provided that no thread holds it in write mode.
+     */
+
+    READ,
+
+    /**
+     * At most one thread may hold a lock in write mode.
+     */
+
+    WRITE
+  }
+
+  /**
+   * Statistics describing the use of file locks since the application
+   * started.
+   */
+
+  public static final class Statistics
+  {
+    private final long acquisitions;
+    private final long contentions;
+    private final long timeouts;
+    private final long wait_nanoseconds;
+    private final int  paths;
+
+    Statistics(
+      final long in_acquisitions,
+      final long in_contentions,
+      final long in_timeouts,
+      final long in_wait_nanoseconds,
+      final int in_paths)
+    {
+      this.acquisitions = in_acquisitions;
+      this.contentions = in_contentions;
+      this.timeouts = in_timeouts;
+      this.wait_nanoseconds = in_wait_nanoseconds;
+      this.paths = in_paths;
+    }
+
+    /**
+     * @return The number of locks acquired
+     */
+
+    public long getAcquisitions()
+    {
+      return this.acquisitions;
+    }
+
+    /**
+     * @return The number of lock requests that could not be satisfied
+     * immediately because another thread held the lock
+     */
+
+    public long getContentions()
+    {
+      return this.contentions;
+    }
+
+    /**
+     * @return The number of lock requests that timed out
+     */
+
+    public long getTimeouts()
+    {
+      return this.timeouts;
+    }
+
+    /**
+     * @return The total time spent waiting for contended locks
+     */
+
+    public long getWaitNanoseconds()
+    {
+      return this.wait_nanoseconds;
+    }
+
+    /**
+     * @return The number of paths that are currently locked or waited upon
+     */
+
+    public int getPaths()
+    {
+      return this.paths;
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format(
+        "[acquisitions %d, contentions %d, timeouts %d, waited %dms, paths %d]",
+        Long.valueOf(this.acquisitions),
+        Long.valueOf(this.contentions),
+        Long.valueOf(this.timeouts),
+        Long.valueOf(this.wait_nanoseconds / 1_000_000L),
+        Integer.valueOf(this.paths));
+    }
+  }
+
+  /**
+   * A lock for a single path, along with the number of threads that are
+   * currently using it.
+   */
+
+  private static final class PathLock
+  {
+    private final ReentrantReadWriteLock lock;
+    private int references;
+
+    PathLock()
+    {
+      this.lock = new ReentrantReadWriteLock(true);
+      this.references = 0;
+    }
+  }
+
+  /**
+   * A set of path locks guarded by a single monitor.
+   */
+
+  private static final class Stripe
+  {
+    private final Map<String, PathLock> locks;
+
+    Stripe()
+    {
+      this.locks = new HashMap<String, PathLock>(8);
+    }
+
+    synchronized PathLock acquire(final String path)
+    {
+      PathLock lock = this.locks.get(path);
+      if (lock == null) {
+        FileLocking.LOG.trace("lock new {}", path);
+        lock = new PathLock();
+        this.locks.put(path, lock);
+      } else {
+        FileLocking.LOG.trace("lock reuse {}", path);
+      }
+      ++lock.references;
+      return lock;
+    }
+
+    synchronized void release(
+      final String path,
+      final PathLock lock)
+    {
+      --lock.references;
+      if (lock.references == 0) {
+        this.locks.remove(path);
+      }
+    }
+
+    synchronized int size()
+    {
+      return this.locks.size();
+    }
+  }
+
   /**
    * Attempt to acquire a lock on {@code file}, waiting for a maximum of {@code
    * milliseconds} ms. Locks are per-thread. Concurrent access to locks is not
@@ -58,50 +249,216 @@ public final class FileLocking
     final long milliseconds,
     final PartialFunctionType<Unit, T, E> p)
     throws E, IOException
+  {
+    return FileLocking.withFileThreadLocked(file, milliseconds, Mode.WRITE, p);
+  }
+
+  /**
+   * Attempt to acquire a lock on {@code file} in the given mode, waiting for a
+   * maximum of {@code milliseconds} ms. This behaves exactly as
+   * {@link #withFileThreadLocked(File, long, PartialFunctionType)} except that
+   * any number of threads may hold the lock at once in {@link Mode#READ} mode.
+   *
+   * @param file         The lock file
+   * @param milliseconds The maximum wait time
+   * @param mode         The lock mode
+   * @param p            The function to evaluate
+   * @param <T>          The type of returned values
+   * @param <E>          The type of thrown exceptions
+   *
+   * @return The value returned by {@code p}
+   *
+   * @throws E           If {@code p} raises {@code E}
+   * @throws IOException If the lock cannot be acquired in the given time limit
+   */
+
+  public static <T, E extends Exception> T withFileThreadLocked(
+    final File file,
+    final long milliseconds,
+    final Mode mode,
+    final PartialFunctionType<Unit, T, E> p)
+    throws E, IOException
+  {
+    return FileLocking.withFileLocked(file, milliseconds, mode, false, p);
+  }
+
+  /**
+   * Attempt to acquire a lock on {@code file} that excludes other processes as
+   * well as other threads, waiting for a maximum of {@code milliseconds} ms.
+   * The lock file is created if it does not exist. In {@link Mode#READ} mode,
+   * the lock may be shared with other processes that also hold it in read
+   * mode; within this process, holders of a process lock on a given file are
+   * always serialized.
+   *
+   * @param file         The lock file
+   * @param milliseconds The maximum wait time
+   * @param mode         The lock mode
+   * @param p            The function to evaluate
+   * @param <T>          The type of returned values
+   * @param <E>          The type of thrown exceptions
+   *
+   * @return The value returned by {@code p}
+   *
+   * @throws E           If {@code p} raises {@code E}
+   * @throws IOException If the lock cannot be acquired in the given time limit
+   */
+
+  public static <T, E extends Exception> T withFileProcessLocked(
+    final File file,
+    final long milliseconds,
+    final Mode mode,
+    final PartialFunctionType<Unit, T, E> p)
+    throws E, IOException
+  {
+    return FileLocking.withFileLocked(file, milliseconds, mode, true, p);
+  }
+
+  /**
+   * @return The current lock statistics
+   */
+
+  public static Statistics statistics()
+  {
+    int paths = 0;
+    for (final Stripe stripe : FileLocking.STRIPES) {
+      paths += stripe.size();
+    }
+
+    return new Statistics(
+      FileLocking.ACQUISITIONS.get(),
+      FileLocking.CONTENTIONS.get(),
+      FileLocking.TIMEOUTS.get(),
+      FileLocking.WAIT_NANOSECONDS.get(),
+      paths);
+  }
+
+  private static <T, E extends Exception> T withFileLocked(
+    final File file,
+    final long milliseconds,
+    final Mode mode,
+    final boolean process,
+    final PartialFunctionType<Unit, T, E> p)
+    throws E, IOException
   {
     NullCheck.notNull(file);
+    NullCheck.notNull(mode);
     NullCheck.notNull(p);
 
+    final long deadline =
+      System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(milliseconds);
     final File f = file.getCanonicalFile();
-    final ReentrantLock lock = FileLocking.getFileLock(file);
+    final String path = f.getPath();
+    final Stripe stripe =
+      FileLocking.STRIPES[(path.hashCode() & 0x7fffffff) % FileLocking.STRIPE_COUNT];
+
+    FileLocking.LOG.trace("lock request {}", path);
+    final PathLock path_lock = stripe.acquire(path);
     try {
-      if (lock.isHeldByCurrentThread()) {
+      final ReentrantReadWriteLock rw = path_lock.lock;
+      if (rw.isWriteLockedByCurrentThread() || rw.getReadHoldCount() > 0) {
         throw new IOException(
           String.format("Lock of file %s already held by this thread", f));
       }
 
-      if (lock.tryLock(milliseconds, TimeUnit.MILLISECONDS)) {
-        try {
-          FileLocking.LOG.trace("lock obtain {}", file);
-          return p.call(Unit.unit());
-        } finally {
-          FileLocking.LOG.trace("lock unlock {}", file);
-          lock.unlock();
-        }
-      } else {
+      /*
+       * The JVM does not allow a process to hold overlapping locks on a file,
+       * so process locks are always exclusive within this process.
+       */
+
+      final Lock lock =
+        (mode == Mode.READ && !process) ? rw.readLock() : rw.writeLock();
+
+      if (!FileLocking.lockBefore(lock, deadline)) {
         throw new IOException(
           String.format(
             "Timed out waiting for lock of file %s", f));
       }
+
+      try {
+        FileLocking.LOG.trace("lock obtain {}", path);
+        if (process) {
+          return FileLocking.withProcessLocked(f, mode, deadline, p);
+        }
+        return p.call(Unit.unit());
+      } finally {
+        FileLocking.LOG.trace("lock unlock {}", path);
+        lock.unlock();
+      }
     } catch (final InterruptedException e) {
       throw new IOException(
         String.format("Interrupted waiting for lock of file %s", f));
+    } finally {
+      stripe.release(path, path_lock);
     }
   }
 
-  private static synchronized ReentrantLock getFileLock(final File file)
+  private static boolean lockBefore(
+    final Lock lock,
+    final long deadline)
+    throws InterruptedException
   {
-    FileLocking.LOG.trace("lock request {}", file);
+    if (lock.tryLock()) {
+      FileLocking.ACQUISITIONS.incrementAndGet();
+      return true;
+    }
 
-    final ReentrantLock lock = FileLocking.PATH_LOCKS.get(file);
-    if (lock != null) {
-      FileLocking.LOG.trace("lock reuse {}", file);
-      return lock;
+    FileLocking.CONTENTIONS.incrementAndGet();
+    final long time_then = System.nanoTime();
+    try {
+      if (lock.tryLock(Math.max(0L, deadline - time_then), TimeUnit.NANOSECONDS)) {
+        FileLocking.ACQUISITIONS.incrementAndGet();
+        return true;
+      }
+      FileLocking.TIMEOUTS.incrementAndGet();
+      return false;
+    } finally {
+      FileLocking.WAIT_NANOSECONDS.addAndGet(System.nanoTime() - time_then);
     }
+  }
+
+  private static <T, E extends Exception> T withProcessLocked(
+    final File file,
+    final Mode mode,
+    final long deadline,
+    final PartialFunctionType<Unit, T, E> p)
+    throws E, IOException, InterruptedException
+  {
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final long time_then = System.nanoTime();
+      boolean contended = false;
+
+      while (true) {
+        final FileLock lock =
+          channel.tryLock(0L, Long.MAX_VALUE, mode == Mode.READ);
+
+        if (lock != null) {
+          if (contended) {
+            FileLocking.WAIT_NANOSECONDS.addAndGet(System.nanoTime() - time_then);
+          }
+          try {
+            return p.call(Unit.unit());
+          } finally {
+            lock.release();
+          }
+        }
 
-    FileLocking.LOG.trace("lock new {}", file);
-    final ReentrantLock new_lock = new ReentrantLock(true);
-    FileLocking.PATH_LOCKS.put(file, new_lock);
-    return new_lock;
+        if (!contended) {
+          FileLocking.CONTENTIONS.incrementAndGet();
+          contended = true;
+        }
+        if (System.nanoTime() >= deadline) {
+          FileLocking.TIMEOUTS.incrementAndGet();
+          FileLocking.WAIT_NANOSECONDS.addAndGet(System.nanoTime() - time_then);
+          throw new IOException(
+            String.format(
+              "Timed out waiting for process lock of file %s", file));
+        }
+        Thread.sleep(FileLocking.PROCESS_LOCK_POLL_MS);
+      }
+    } finally {
+      raf.close();
+    }
   }
 }
@@ -13,7 +13,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.security.SecureRandom;
 
 /**
@@ -22,11 +24,46 @@ import java.security.SecureRandom;
 
 public final class FileUtilities
 {
+  private static volatile DirectorySyncType DIRECTORY_SYNC =
+    FileUtilities.directorySyncDefault();
+
   private FileUtilities()
   {
     throw new UnreachableCodeException();
   }
 
+  /**
+   * The degree to which an atomic write survives the device losing power.
+   */
+
+  public enum Durability
+  {
+    /**
+     * Nothing is synced. Other processes will only ever see the old or new
+     * contents of the file, but if power is lost, the file may be left empty
+     * or with its old contents on some file systems.
+     */
+
+    NONE,
+
+    /**
+     * The temporary file is synced before it is renamed, so after a power
+     * loss the file has either its complete old contents or its complete new
+     * contents.
+     */
+
+    FILE,
+
+    /**
+     * As {@link #FILE}, and the directory containing the file is synced after
+     * the rename, so the new contents survive a power loss once the write
+     * returns. If the directory cannot be synced, the write fails with an
+     * {@link IOException} even though the file has already been replaced.
+     */
+
+    DIRECTORY
+  }
+
   /**
    * Copy the file {@code from} to {@code to}.
    *
@@ -226,16 +263,25 @@ public final class FileUtilities
   {
     NullCheck.notNull(file);
     NullCheck.notNull(text);
+    FileUtilities.fileWriteUTF8(file, text, false);
+  }
 
-    final Writer out = new BufferedWriter(
-      new OutputStreamWriter(
-        new FileOutputStream(file), "UTF-8"));
-
+  static void fileWriteUTF8(
+    final File file,
+    final String text,
+    final boolean sync)
+    throws IOException
+  {
+    final FileOutputStream fs = new FileOutputStream(file);
     try {
+      final Writer out = new BufferedWriter(new OutputStreamWriter(fs, "UTF-8"));
       out.write(text);
       out.flush();
+      if (sync) {
+        fs.getFD().sync();
+      }
     } finally {
-      out.close();
+      fs.close();
     }
   }
 
@@ -256,12 +302,36 @@ public final class FileUtilities
     final File f_tmp,
     final String text)
     throws IOException
+  {
+    FileUtilities.fileWriteUTF8Atomically(f, f_tmp, text, Durability.NONE);
+  }
+
+  /**
+   * Write the given string to the given file, completely replacing it if it
+   * already exists. The file {@code f_tmp} is used as a temporary file and is
+   * atomically renamed to {@code f} on writing.
+   *
+   * @param f          The file
+   * @param f_tmp      The temporary intermediate file
+   * @param text       The text
+   * @param durability The durability of the write
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void fileWriteUTF8Atomically(
+    final File f,
+    final File f_tmp,
+    final String text,
+    final Durability durability)
+    throws IOException
   {
     NullCheck.notNull(f);
     NullCheck.notNull(f_tmp);
     NullCheck.notNull(text);
-    FileUtilities.fileWriteUTF8(f_tmp, text);
-    FileUtilities.fileRename(f_tmp, f);
+    NullCheck.notNull(durability);
+    FileUtilities.fileWriteUTF8(f_tmp, text, durability != Durability.NONE);
+    FileUtilities.fileReplace(f_tmp, f, durability);
   }
 
   /**
@@ -316,12 +386,22 @@ public final class FileUtilities
   {
     NullCheck.notNull(data);
     NullCheck.notNull(file);
+    FileUtilities.fileWriteBytes(data, file, false);
+  }
 
+  static void fileWriteBytes(
+    final byte[] data,
+    final File file,
+    final boolean sync)
+    throws IOException
+  {
     final FileOutputStream fs = new FileOutputStream(file);
     try {
       fs.write(data);
       fs.flush();
-      fs.close();
+      if (sync) {
+        fs.getFD().sync();
+      }
     } finally {
       fs.close();
     }
@@ -344,13 +424,37 @@ public final class FileUtilities
     final File file_tmp,
     final InputStream stream)
     throws IOException
+  {
+    FileUtilities.fileWriteStreamAtomically(file, file_tmp, stream, Durability.NONE);
+  }
+
+  /**
+   * Write {@code stream} to {@code file_tmp}, atomically renaming {@code
+   * file_tmp} to {@code file} on success. For portability, {@code file_tmp} and
+   * {@code file} should be in the same directory.
+   *
+   * @param file       The file
+   * @param file_tmp   The temporary file
+   * @param stream     The input stream
+   * @param durability The durability of the write
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void fileWriteStreamAtomically(
+    final File file,
+    final File file_tmp,
+    final InputStream stream,
+    final Durability durability)
+    throws IOException
   {
     NullCheck.notNull(file);
     NullCheck.notNull(file_tmp);
     NullCheck.notNull(stream);
+    NullCheck.notNull(durability);
 
-    FileUtilities.fileWriteStream(file_tmp, stream);
-    FileUtilities.fileRename(file_tmp, file);
+    FileUtilities.fileWriteStream(file_tmp, stream, durability != Durability.NONE);
+    FileUtilities.fileReplace(file_tmp, file, durability);
   }
 
   /**
@@ -369,7 +473,15 @@ public final class FileUtilities
   {
     NullCheck.notNull(file);
     NullCheck.notNull(stream);
+    FileUtilities.fileWriteStream(file, stream, false);
+  }
 
+  static void fileWriteStream(
+    final File file,
+    final InputStream stream,
+    final boolean sync)
+    throws IOException
+  {
     final FileOutputStream fs = new FileOutputStream(file);
     try {
       final byte[] buffer = new byte[8192];
@@ -381,7 +493,9 @@ public final class FileUtilities
         fs.write(buffer, 0, r);
       }
       fs.flush();
-      fs.close();
+      if (sync) {
+        fs.getFD().sync();
+      }
     } finally {
       fs.close();
     }
@@ -404,12 +518,117 @@ public final class FileUtilities
     final File file_tmp,
     final byte[] data)
     throws IOException
+  {
+    FileUtilities.fileWriteBytesAtomically(file, file_tmp, data, Durability.NONE);
+  }
+
+  /**
+   * Write {@code data} to {@code file_tmp}, atomically renaming {@code
+   * file_tmp} to {@code file} on success. For portability, {@code file_tmp} and
+   * {@code file} should be in the same directory.
+   *
+   * @param file       The file
+   * @param file_tmp   The temporary file
+   * @param data       The input data
+   * @param durability The durability of the write
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void fileWriteBytesAtomically(
+    final File file,
+    final File file_tmp,
+    final byte[] data,
+    final Durability durability)
+    throws IOException
   {
     NullCheck.notNull(file);
     NullCheck.notNull(file_tmp);
     NullCheck.notNull(data);
+    NullCheck.notNull(durability);
+
+    FileUtilities.fileWriteBytes(data, file_tmp, durability != Durability.NONE);
+    FileUtilities.fileReplace(file_tmp, file, durability);
+  }
+
+  /**
+   * Flush the contents of the given file to the underlying storage device.
+   *
+   * @param file The file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void fileSync(
+    final File file)
+    throws IOException
+  {
+    NullCheck.notNull(file);
+
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      raf.getFD().sync();
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Replace the means by which directories are synced. The default syncs
+   * directories through the system calls on Android, and through
+   * {@link FileChannel} elsewhere.
+   *
+   * @param sync The new means of syncing directories
+   *
+   * @return The previous means of syncing directories
+   */
+
+  public static DirectorySyncType setDirectorySync(
+    final DirectorySyncType sync)
+  {
+    NullCheck.notNull(sync);
+
+    final DirectorySyncType previous = FileUtilities.DIRECTORY_SYNC;
+    FileUtilities.DIRECTORY_SYNC = sync;
+    return previous;
+  }
 
-    FileUtilities.fileWriteBytes(data, file_tmp);
+  /**
+   * Flush the entries of the given directory to the underlying storage
+   * device, so that files that were recently created in or renamed into the
+   * directory survive a power loss.
+   *
+   * @param directory The directory
+   *
+   * @throws IOException If the directory could not be synced
+   * @see #setDirectorySync(DirectorySyncType)
+   */
+
+  public static void directorySync(
+    final File directory)
+    throws IOException
+  {
+    NullCheck.notNull(directory);
+    FileUtilities.DIRECTORY_SYNC.sync(directory);
+  }
+
+  private static DirectorySyncType directorySyncDefault()
+  {
+    if ("Dalvik".equals(System.getProperty("java.vm.name"))) {
+      return new DirectorySyncAndroid();
+    }
+    return new DirectorySyncChannel();
+  }
+
+  private static void fileReplace(
+    final File file_tmp,
+    final File file,
+    final Durability durability)
+    throws IOException
+  {
     FileUtilities.fileRename(file_tmp, file);
+    if (durability == Durability.DIRECTORY) {
+      FileUtilities.directorySync(file.getAbsoluteFile().getParentFile());
+    }
   }
 }
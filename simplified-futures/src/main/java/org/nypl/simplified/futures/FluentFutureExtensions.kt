@@ -6,6 +6,9 @@ import com.google.common.util.concurrent.FluentFuture
 import com.google.common.util.concurrent.Futures
 import com.google.common.util.concurrent.MoreExecutors
 import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
 
 /**
  * Extension functions to get around the lack of SAM conversion in Kotlin.
@@ -13,6 +16,18 @@ import java.util.concurrent.Executor
 
 object FluentFutureExtensions {
 
+  /**
+   * A single daemon thread on which all timeouts are scheduled.
+   */
+
+  private val timeouts: ScheduledExecutorService by lazy {
+    Executors.newSingleThreadScheduledExecutor { runnable ->
+      val thread = Thread(runnable, "simplified-futures-timeouts")
+      thread.isDaemon = true
+      thread
+    }
+  }
+
   /**
    * Apply a function `f` to the value of the current future.
    *
@@ -40,6 +55,15 @@ object FluentFutureExtensions {
     return this.transformAsync(AsyncFunction<A, B> { x -> f.invoke(x!!) }, MoreExecutors.directExecutor())
   }
 
+  /**
+   * Apply a function `f` to the value of the current future, yielding a new future. The
+   * function is evaluated on the given executor.
+   */
+
+  fun <A, B> FluentFuture<A>.flatMap(f: (A) -> FluentFuture<B>, executor: Executor): FluentFuture<B> {
+    return this.transformAsync(AsyncFunction<A, B> { x -> f.invoke(x!!) }, executor)
+  }
+
   /**
    * Apply a function `f` to an exception raised by the current future (if any).
    */
@@ -70,6 +94,25 @@ object FluentFutureExtensions {
     return this.onError(Throwable::class.java, f)
   }
 
+  /**
+   * Apply a function `f` to an exception raised by the current future (if any). The function
+   * is evaluated on the given executor.
+   */
+
+  fun <A> FluentFuture<A>.onAnyError(f: (Throwable) -> A, executor: Executor): FluentFuture<A> {
+    return this.catching(Throwable::class.java, Function<Throwable, A> { x -> f.invoke(x!!) }, executor)
+  }
+
+  /**
+   * Fail with a [java.util.concurrent.TimeoutException] and cancel the current future if it
+   * has not completed within the given time. Nothing waits for the current future; the timeout
+   * is scheduled on a thread shared by all futures.
+   */
+
+  fun <A> FluentFuture<A>.withTimeout(time: Long, unit: TimeUnit): FluentFuture<A> {
+    return this.withTimeout(time, unit, this@FluentFutureExtensions.timeouts)
+  }
+
   /**
    * A future that completes when all of the given futures complete.
    */
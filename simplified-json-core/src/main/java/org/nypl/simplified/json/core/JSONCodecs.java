@@ -0,0 +1,111 @@
+package org.nypl.simplified.json.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.io.IOException;
+
+/**
+ * <p>Shared, pre-configured Jackson codecs.</p>
+ * <p>
+ * <p>Every {@link ObjectMapper} instance builds its own serializer and deserializer caches,
+ * so creating a mapper per operation is expensive in both time and heap. The instances
+ * exposed here are created once and are thread-safe, and should be used in preference to
+ * creating new mappers.</p>
+ * <p>
+ * <p>The shared mapper must never be reconfigured (with {@code configure}, {@code enable},
+ * {@code registerModule}, and so on) as doing so would affect every user of the mapper.
+ * Code requiring different settings should derive an {@link ObjectReader} or
+ * {@link ObjectWriter} from the mapper; derived readers and writers are immutable and
+ * share the caches of the mapper.</p>
+ */
+
+public final class JSONCodecs {
+
+  private static final ObjectMapper MAPPER =
+    new ObjectMapper();
+  private static final ObjectReader TREE_READER =
+    MAPPER.readerFor(JsonNode.class);
+  private static final ObjectWriter PRETTY_WRITER =
+    MAPPER.writerWithDefaultPrettyPrinter();
+  private static final ObjectWriter COMPACT_WRITER =
+    MAPPER.writer();
+  private static final ObjectWriter CANONICAL_WRITER =
+    MAPPER.writer()
+      .without(SerializationFeature.INDENT_OUTPUT)
+      .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+  private JSONCodecs() {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * @return The shared object mapper. The mapper must not be reconfigured.
+   */
+
+  public static ObjectMapper mapper() {
+    return MAPPER;
+  }
+
+  /**
+   * @return A reader that produces JSON trees
+   */
+
+  public static ObjectReader treeReader() {
+    return TREE_READER;
+  }
+
+  /**
+   * @return A writer that produces pretty-printed JSON
+   */
+
+  public static ObjectWriter prettyWriter() {
+    return PRETTY_WRITER;
+  }
+
+  /**
+   * @return A writer that produces compact JSON
+   */
+
+  public static ObjectWriter compactWriter() {
+    return COMPACT_WRITER;
+  }
+
+  /**
+   * @return A writer that produces compact JSON with map entries ordered by key
+   */
+
+  public static ObjectWriter canonicalWriter() {
+    return CANONICAL_WRITER;
+  }
+
+  /**
+   * Warm the shared codecs by performing a small round trip through each of them. This
+   * populates the serializer and deserializer caches so that the first real document
+   * parsed by the application does not pay for cache construction. This is intended to be
+   * called once on a background thread during application startup.
+   *
+   * @throws IOException On errors
+   */
+
+  public static void warm()
+    throws IOException {
+    final ObjectNode node = MAPPER.createObjectNode();
+    node.put("string", "x");
+    node.put("integer", 23);
+    node.put("double", 23.0);
+    node.put("boolean", true);
+    node.putNull("null");
+    node.putArray("array").add(1);
+    node.putObject("object").put("x", "y");
+
+    TREE_READER.readTree(PRETTY_WRITER.writeValueAsString(node));
+    TREE_READER.readTree(COMPACT_WRITER.writeValueAsBytes(node));
+    TREE_READER.readTree(CANONICAL_WRITER.writeValueAsBytes(node));
+  }
+}
@@ -1,8 +1,5 @@
 package org.nypl.simplified.json.core;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.io7m.jnull.NullCheck;
 import com.io7m.junreachable.UnreachableCodeException;
@@ -38,9 +35,7 @@ public final class JSONSerializerUtilities
     NullCheck.notNull(d);
     NullCheck.notNull(os);
 
-    final ObjectMapper jom = new ObjectMapper();
-    final ObjectWriter jw = jom.writerWithDefaultPrettyPrinter();
-    jw.writeValue(os, d);
+    JSONCodecs.prettyWriter().writeValue(os, d);
   }
 
   /**
@@ -59,8 +54,6 @@ public final class JSONSerializerUtilities
   {
     NullCheck.notNull(d);
 
-    final ObjectMapper jom = new ObjectMapper();
-    final ObjectWriter jw = jom.writerWithDefaultPrettyPrinter();
-    return jw.writeValueAsString(d);
+    return JSONCodecs.prettyWriter().writeValueAsString(d);
   }
 }
@@ -151,6 +151,21 @@ class MainActivity : AppCompatActivity(R.layout.main_host) {
     this.listenerRepo.registerHandler(this::handleEvent)
   }
 
+  override fun onPause() {
+    super.onPause()
+
+    /*
+     * Profile changes are written to disk lazily; make sure they reach the disk before the
+     * application is potentially killed.
+     */
+
+    if (Services.isInitialized()) {
+      Services.serviceDirectory()
+        .requireService(ProfilesControllerType::class.java)
+        .profileFlushPendingWrites()
+    }
+  }
+
   override fun onStop() {
     super.onStop()
     this.listenerRepo.unregisterHandler()
@@ -11,6 +11,7 @@ import org.librarysimplified.services.api.ServiceDirectoryType
 import org.nypl.simplified.boot.api.BootEvent
 import org.nypl.simplified.boot.api.BootLoader
 import org.nypl.simplified.boot.api.BootProcessType
+import org.nypl.simplified.metrics.api.StartupTracing
 import org.slf4j.LoggerFactory
 import java.io.File
 import java.io.IOException
@@ -39,6 +40,7 @@ class MainApplication : Application() {
   override fun onCreate() {
     super.onCreate()
 
+    StartupTracing.startIfEnabled(this, force = BuildConfig.DEBUG)
     MainLogging.configure(cacheDir)
     this.configureHttpCache()
     this.configureStrictMode()
@@ -5,7 +5,6 @@ import android.content.pm.PackageManager
 import android.content.res.AssetManager
 import android.content.res.Resources
 import android.graphics.Color
-import com.fasterxml.jackson.databind.ObjectMapper
 import com.squareup.picasso.Picasso
 import io.reactivex.subjects.PublishSubject
 import org.joda.time.LocalDateTime
@@ -46,6 +45,8 @@ import org.nypl.simplified.books.audio.AudioBookFeedbooksSecretServiceType
 import org.nypl.simplified.books.audio.AudioBookManifestStrategiesType
 import org.nypl.simplified.books.audio.AudioBookManifests
 import org.nypl.simplified.books.audio.AudioBookOverdriveSecretServiceType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannel
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
 import org.nypl.simplified.books.book_registry.BookRegistry
 import org.nypl.simplified.books.book_registry.BookRegistryReadableType
 import org.nypl.simplified.books.book_registry.BookRegistryType
@@ -60,6 +61,8 @@ import org.nypl.simplified.books.covers.BookCoverGenerator
 import org.nypl.simplified.books.covers.BookCoverGeneratorType
 import org.nypl.simplified.books.covers.BookCoverProvider
 import org.nypl.simplified.books.covers.BookCoverProviderType
+import org.nypl.simplified.books.covers.BookCoverStore
+import org.nypl.simplified.books.covers.BookCoverStoreType
 import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.books.reader.bookmarks.ReaderBookmarkHTTPCalls
 import org.nypl.simplified.books.reader.bookmarks.ReaderBookmarkService
@@ -75,8 +78,10 @@ import org.nypl.simplified.feeds.api.FeedHTTPTransport
 import org.nypl.simplified.feeds.api.FeedLoader
 import org.nypl.simplified.feeds.api.FeedLoaderType
 import org.nypl.simplified.files.DirectoryUtilities
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.metrics.api.MetricServiceFactoryType
 import org.nypl.simplified.metrics.api.MetricServiceType
+import org.nypl.simplified.metrics.api.Tracing
 import org.nypl.simplified.migration.api.MigrationsType
 import org.nypl.simplified.networkconnectivity.NetworkConnectivity
 import org.nypl.simplified.networkconnectivity.api.NetworkConnectivityType
@@ -293,7 +298,7 @@ internal object MainServices {
   @Throws(IOException::class)
   private fun createBundledCredentials(assets: AssetManager): AccountBundledCredentialsType {
     return assets.open("account_bundled_credentials.json").use { stream ->
-      AccountBundledCredentialsJSON.deserializeFromStream(ObjectMapper(), stream)
+      AccountBundledCredentialsJSON.deserializeFromStream(JSONCodecs.mapper(), stream)
     }
   }
 
@@ -413,7 +418,7 @@ internal object MainServices {
       ReaderBookmarkServiceProviderType.Requirements(
         threads = threadFactory,
         events = PublishSubject.create(),
-        httpCalls = ReaderBookmarkHTTPCalls(ObjectMapper(), http),
+        httpCalls = ReaderBookmarkHTTPCalls(JSONCodecs.mapper(), http),
         profilesController = bookController
       )
     )
@@ -424,6 +429,7 @@ internal object MainServices {
     bookRegistry: BookRegistryReadableType,
     bundledContentResolver: BundledContentResolverType,
     coverGenerator: BookCoverGeneratorType,
+    coverStore: BookCoverStoreType,
     badgeLookup: BookCoverBadgeLookupType
   ): BookCoverProviderType {
     val execCovers =
@@ -434,6 +440,7 @@ internal object MainServices {
       coverGenerator = coverGenerator,
       badgeLookup = badgeLookup,
       bundledContentResolver = bundledContentResolver,
+      coverStore = coverStore,
       executor = execCovers,
       debugCacheIndicators = false,
       debugLogging = false
@@ -529,6 +536,7 @@ internal object MainServices {
       onProgress.invoke(BootEvent.BootInProgress(message))
     }
 
+    val bootSpan = Tracing.begin("boot", "boot")
     BootFailureTesting.failBootProcessForTestingPurposesIfRequested(context)
 
     val services = ServiceDirectory.builder()
@@ -541,7 +549,9 @@ internal object MainServices {
       serviceConstructor: () -> T
     ): T {
       publishEvent(message)
-      val service = serviceConstructor.invoke()
+      val service = Tracing.trace(interfaceType.simpleName, "boot") {
+        serviceConstructor.invoke()
+      }
       services.addService(interfaceType, service)
       return service
     }
@@ -552,7 +562,9 @@ internal object MainServices {
       serviceConstructor: () -> T?
     ): T? {
       publishEvent(message)
-      val service = serviceConstructor.invoke()
+      val service = Tracing.trace(interfaceType.simpleName, "boot") {
+        serviceConstructor.invoke()
+      }
       if (service != null) {
         services.addService(interfaceType, service)
       }
@@ -564,7 +576,9 @@ internal object MainServices {
       interfaceType: Class<T>
     ): T? {
       publishEvent(message)
-      val service = ServiceLoader.load(interfaceType).firstOrNull()
+      val service = Tracing.trace(interfaceType.simpleName, "boot") {
+        ServiceLoader.load(interfaceType).firstOrNull()
+      }
       if (service != null) {
         services.addService(interfaceType, service)
       } else {
@@ -623,8 +637,15 @@ internal object MainServices {
         serviceConstructor = { MainHTTP.create(context) }
       )
 
+    publishEvent(strings.bootingGeneral("JSON codecs"))
+    Tracing.trace("JSONCodecs", "boot") {
+      this.warmJSONCodecs()
+    }
+
     publishEvent(strings.bootingGeneral("Directories"))
-    val directories = this.initializeDirectories(context)
+    val directories = Tracing.trace("Directories", "boot") {
+      this.initializeDirectories(context)
+    }
 
     val adobeConfiguration = this.findAdobeConfiguration(context.resources)
     val adobeDRM =
@@ -665,6 +686,11 @@ internal object MainServices {
       interfaceType = BookRegistryReadableType::class.java,
       serviceConstructor = { bookRegistry }
     )
+    addService(
+      message = strings.bootingGeneral("download progress"),
+      interfaceType = BookDownloadProgressChannelType::class.java,
+      serviceConstructor = { BookDownloadProgressChannel.create() }
+    )
 
     addService(
       message = strings.bootingGeneral("accessibility service"),
@@ -888,6 +914,12 @@ internal object MainServices {
       serviceConstructor = { createMetricService(context) }
     )
 
+    addService(
+      message = strings.bootingGeneral("network connectivity service"),
+      interfaceType = NetworkConnectivityType::class.java,
+      serviceConstructor = { NetworkConnectivity.create(context) }
+    )
+
     val bookController = this.run {
       publishEvent(strings.bootingGeneral("books controller"))
       val execBooks =
@@ -940,6 +972,13 @@ internal object MainServices {
         }
       )
 
+    val coverStore =
+      addService(
+        message = strings.bootingGeneral("book cover store"),
+        interfaceType = BookCoverStoreType::class.java,
+        serviceConstructor = { BookCoverStore.open(File(context.filesDir, "covers")) }
+      )
+
     addService(
       message = strings.bootingGeneral("book cover provider"),
       interfaceType = BookCoverProviderType::class.java,
@@ -949,17 +988,12 @@ internal object MainServices {
           bookRegistry = bookRegistry,
           bundledContentResolver = bundledContent,
           coverGenerator = coverGenerator,
+          coverStore = coverStore,
           badgeLookup = badgeLookup
         )
       }
     )
 
-    addService(
-      message = strings.bootingGeneral("network connectivity service"),
-      interfaceType = NetworkConnectivityType::class.java,
-      serviceConstructor = { NetworkConnectivity.create(context) }
-    )
-
     val idleTimerConfiguration =
       addService(
         message = strings.bootingGeneral("idle timer configuration service"),
@@ -997,6 +1031,7 @@ internal object MainServices {
     val finalServices = services.build()
     Services.initialize(finalServices)
     this.logger.debug("boot completed")
+    bootSpan.close()
     onProgress.invoke(BootEvent.BootCompleted(strings.bootCompleted))
     return finalServices
   }
@@ -1026,6 +1061,17 @@ internal object MainServices {
     }
   }
 
+  private fun warmJSONCodecs() {
+    try {
+      val timeThen = System.nanoTime()
+      JSONCodecs.warm()
+      val timeNow = System.nanoTime()
+      this.logger.debug("warmed JSON codecs in {}us", (timeNow - timeThen) / 1000L)
+    } catch (e: Exception) {
+      this.logger.error("could not warm JSON codecs: ", e)
+    }
+  }
+
   private fun showThreads() {
     val threadSet =
       Thread.getAllStackTraces()
@@ -0,0 +1,95 @@
+package org.nypl.simplified.metrics.api
+
+import android.content.Context
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+
+/**
+ * Functions to control tracing of the application's startup.
+ *
+ * Whether startup is traced is a persistent setting so that it can be enabled on production
+ * builds for the next application start.
+ */
+
+object StartupTracing {
+
+  private val logger = LoggerFactory.getLogger(StartupTracing::class.java)
+
+  /**
+   * The name of the file to which traces are written.
+   */
+
+  const val TRACE_FILE_NAME = "trace-startup.json"
+
+  /**
+   * @return `true` if startup tracing is enabled
+   */
+
+  fun isEnabled(context: Context): Boolean {
+    val prefs = context.getSharedPreferences("testing", Context.MODE_PRIVATE)
+    return prefs.getBoolean("traceStartup", false)
+  }
+
+  /**
+   * Enable or disable startup tracing from the next application start.
+   */
+
+  fun setEnabled(
+    context: Context,
+    enabled: Boolean
+  ) {
+    this.logger.debug("enabling startup tracing: {}", enabled)
+    val prefs = context.getSharedPreferences("testing", Context.MODE_PRIVATE)
+    try {
+      prefs.edit()
+        .putBoolean("traceStartup", enabled)
+        .commit()
+    } catch (e: Exception) {
+      this.logger.error("could not set traceStartup: ", e)
+    }
+  }
+
+  /**
+   * Start tracing if startup tracing is enabled, or if [force] is `true`.
+   */
+
+  fun startIfEnabled(
+    context: Context,
+    force: Boolean
+  ) {
+    if (force || this.isEnabled(context)) {
+      this.logger.debug("tracing startup")
+      Tracing.start()
+    }
+  }
+
+  /**
+   * Write the current trace to the cache directory so that it is included in reports.
+   *
+   * @return The trace file, or `null` if tracing is not enabled
+   */
+
+  fun writeTrace(context: Context): File? {
+    if (!Tracing.isEnabled) {
+      return null
+    }
+
+    val file = File(context.cacheDir, TRACE_FILE_NAME)
+    return try {
+      FileOutputStream(file, false).use { stream ->
+        Tracing.writeChromeTrace(stream)
+      }
+      this.logger.debug(
+        "wrote trace to {} ({} spans dropped)",
+        file,
+        Tracing.droppedEvents()
+      )
+      file
+    } catch (e: IOException) {
+      this.logger.error("could not write trace: ", e)
+      null
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package org.nypl.simplified.metrics.api
+
+import java.io.BufferedWriter
+import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.util.Locale
+
+/**
+ * Functions to serialize spans in the Chrome trace event format.
+ *
+ * Each span is written as a complete ("X") event attributed to the thread on which it began,
+ * and each thread is named with a metadata ("M") event. Timestamps are in microseconds with
+ * nanosecond precision.
+ */
+
+object TraceChromeFormat {
+
+  private const val PROCESS_ID = 1
+
+  /**
+   * Write the given spans to the given stream. The stream is not closed.
+   */
+
+  fun write(
+    events: List<TraceEvent>,
+    output: OutputStream
+  ) {
+    val writer = BufferedWriter(OutputStreamWriter(output, Charsets.UTF_8))
+    writer.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[")
+
+    var first = true
+    val threads = LinkedHashMap<Long, String>()
+    for (event in events) {
+      threads.putIfAbsent(event.threadId, event.threadName)
+    }
+
+    for ((threadId, threadName) in threads) {
+      if (!first) {
+        writer.write(",")
+      }
+      first = false
+      writer.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":")
+      writer.write(PROCESS_ID.toString())
+      writer.write(",\"tid\":")
+      writer.write(threadId.toString())
+      writer.write(",\"args\":{\"name\":")
+      writeString(writer, threadName)
+      writer.write("}}")
+    }
+
+    for (event in events) {
+      if (!first) {
+        writer.write(",")
+      }
+      first = false
+      writer.write("\n{\"name\":")
+      writeString(writer, event.name)
+      writer.write(",\"cat\":")
+      writeString(writer, event.category)
+      writer.write(",\"ph\":\"X\",\"ts\":")
+      writer.write(microseconds(event.startNanoseconds))
+      writer.write(",\"dur\":")
+      writer.write(microseconds(event.durationNanoseconds))
+      writer.write(",\"pid\":")
+      writer.write(PROCESS_ID.toString())
+      writer.write(",\"tid\":")
+      writer.write(event.threadId.toString())
+      writer.write(",\"args\":{\"id\":")
+      writer.write(event.id.toString())
+      writer.write(",\"parent\":")
+      writer.write(event.parent.toString())
+      writer.write("}}")
+    }
+
+    writer.write("\n]}\n")
+    writer.flush()
+  }
+
+  private fun microseconds(nanoseconds: Long): String {
+    val whole = nanoseconds / 1000L
+    val fraction = nanoseconds % 1000L
+    return String.format(Locale.ROOT, "%d.%03d", whole, fraction)
+  }
+
+  private fun writeString(
+    writer: BufferedWriter,
+    text: String
+  ) {
+    writer.write("\"")
+    for (c in text) {
+      when {
+        c == '"' -> writer.write("\\\"")
+        c == '\\' -> writer.write("\\\\")
+        c == '\n' -> writer.write("\\n")
+        c == '\r' -> writer.write("\\r")
+        c == '\t' -> writer.write("\\t")
+        c < ' ' -> writer.write(String.format(Locale.ROOT, "\\u%04x", c.toInt()))
+        else -> writer.write(c.toInt())
+      }
+    }
+    writer.write("\"")
+  }
+}
@@ -0,0 +1,57 @@
+package org.nypl.simplified.metrics.api
+
+/**
+ * A completed span.
+ */
+
+data class TraceEvent(
+
+  /**
+   * The unique identifier of the span within the trace.
+   */
+
+  val id: Long,
+
+  /**
+   * The identifier of the span that was open on the same thread when this span began, or
+   * `0` if there was none.
+   */
+
+  val parent: Long,
+
+  /**
+   * The name of the span.
+   */
+
+  val name: String,
+
+  /**
+   * The category of the span.
+   */
+
+  val category: String,
+
+  /**
+   * The ID of the thread on which the span began.
+   */
+
+  val threadId: Long,
+
+  /**
+   * The name of the thread on which the span began.
+   */
+
+  val threadName: String,
+
+  /**
+   * The time the span began, in nanoseconds since tracing started.
+   */
+
+  val startNanoseconds: Long,
+
+  /**
+   * The duration of the span in nanoseconds.
+   */
+
+  val durationNanoseconds: Long
+)
@@ -0,0 +1,15 @@
+package org.nypl.simplified.metrics.api
+
+import java.io.Closeable
+
+/**
+ * A span of time being traced. A span ends when it is closed; closing a span more than once
+ * has no effect.
+ *
+ * @see Tracing
+ */
+
+interface TraceSpan : Closeable {
+
+  override fun close()
+}
@@ -0,0 +1,216 @@
+package org.nypl.simplified.metrics.api
+
+import java.io.OutputStream
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * A process-wide, span-based tracer.
+ *
+ * Tracing is disabled until [start] is called. While tracing is disabled, [begin] performs a
+ * single volatile read and returns a shared span that does nothing, so instrumented code can
+ * be left in place at negligible cost. While tracing is enabled, spans record nanosecond
+ * timestamps and the thread on which they began; a span that begins while another span is
+ * open on the same thread is recorded as a child of that span. At most a fixed number of
+ * spans are recorded per trace, and spans that would exceed that number are dropped.
+ */
+
+object Tracing {
+
+  /**
+   * The default maximum number of spans recorded by a trace.
+   */
+
+  const val MAXIMUM_EVENTS_DEFAULT = 4096
+
+  /**
+   * The category used for spans that do not specify one.
+   */
+
+  const val CATEGORY_DEFAULT = "app"
+
+  private class Trace(
+    val originNanoseconds: Long,
+    maximumEvents: Int
+  ) {
+    val events = AtomicReferenceArray<TraceEvent?>(maximumEvents)
+    val eventsCount = AtomicInteger(0)
+    val dropped = AtomicInteger(0)
+    val spanIds = AtomicLong(0L)
+    val current = ThreadLocal<RecordingSpan?>()
+
+    fun record(event: TraceEvent) {
+      val index = this.eventsCount.getAndIncrement()
+      if (index < this.events.length()) {
+        this.events.set(index, event)
+      } else {
+        this.eventsCount.decrementAndGet()
+        this.dropped.incrementAndGet()
+      }
+    }
+
+    fun snapshot(): List<TraceEvent> {
+      val count = minOf(this.eventsCount.get(), this.events.length())
+      val results = ArrayList<TraceEvent>(count)
+      for (index in 0 until count) {
+        val event = this.events.get(index)
+        if (event != null) {
+          results.add(event)
+        }
+      }
+      results.sortBy { event -> event.startNanoseconds }
+      return results
+    }
+  }
+
+  private object DisabledSpan : TraceSpan {
+    override fun close() = Unit
+  }
+
+  private class RecordingSpan(
+    private val trace: Trace,
+    private val name: String,
+    private val category: String,
+    nested: Boolean
+  ) : TraceSpan {
+    private val id = this.trace.spanIds.incrementAndGet()
+    private val parent = if (nested) this.trace.current.get() else null
+    private val thread = Thread.currentThread()
+    private val startNanoseconds = System.nanoTime()
+    private var closed = false
+
+    init {
+      if (nested) {
+        this.trace.current.set(this)
+      }
+    }
+
+    override fun close() {
+      val timeNow = System.nanoTime()
+      synchronized(this) {
+        if (this.closed) {
+          return
+        }
+        this.closed = true
+      }
+
+      /*
+       * A span may be closed on a thread other than the one on which it began; the current
+       * span of the closing thread is only restored if this span is that thread's current span.
+       */
+
+      if (this.trace.current.get() === this) {
+        this.trace.current.set(this.parent)
+      }
+
+      this.trace.record(
+        TraceEvent(
+          id = this.id,
+          parent = this.parent?.id ?: 0L,
+          name = this.name,
+          category = this.category,
+          threadId = this.thread.id,
+          threadName = this.thread.name,
+          startNanoseconds = this.startNanoseconds - this.trace.originNanoseconds,
+          durationNanoseconds = timeNow - this.startNanoseconds
+        )
+      )
+    }
+  }
+
+  @Volatile
+  private var trace: Trace? = null
+
+  /**
+   * @return `true` if tracing is enabled
+   */
+
+  val isEnabled: Boolean
+    get() = this.trace != null
+
+  /**
+   * Start a new trace, discarding any existing trace.
+   */
+
+  fun start(maximumEvents: Int = MAXIMUM_EVENTS_DEFAULT) {
+    require(maximumEvents > 0) { "Maximum events must be positive" }
+    this.trace = Trace(System.nanoTime(), maximumEvents)
+  }
+
+  /**
+   * Stop tracing and discard the current trace.
+   */
+
+  fun stop() {
+    this.trace = null
+  }
+
+  /**
+   * Begin a span. The span must be closed when the traced operation completes.
+   */
+
+  fun begin(
+    name: String,
+    category: String = CATEGORY_DEFAULT
+  ): TraceSpan {
+    val current = this.trace ?: return DisabledSpan
+    return RecordingSpan(current, name, category, nested = true)
+  }
+
+  /**
+   * Begin a span for an operation that completes asynchronously, typically on another thread.
+   * Unlike spans created with [begin], the span does not become the parent of spans that begin
+   * on the current thread while it is open.
+   */
+
+  fun beginAsync(
+    name: String,
+    category: String = CATEGORY_DEFAULT
+  ): TraceSpan {
+    val current = this.trace ?: return DisabledSpan
+    return RecordingSpan(current, name, category, nested = false)
+  }
+
+  /**
+   * Evaluate [body] within a span.
+   */
+
+  inline fun <T> trace(
+    name: String,
+    category: String = CATEGORY_DEFAULT,
+    body: () -> T
+  ): T {
+    val span = this.begin(name, category)
+    try {
+      return body()
+    } finally {
+      span.close()
+    }
+  }
+
+  /**
+   * @return The spans completed so far in the current trace, in order of their start times
+   */
+
+  fun events(): List<TraceEvent> {
+    return this.trace?.snapshot() ?: listOf()
+  }
+
+  /**
+   * @return The number of spans dropped from the current trace because it was full
+   */
+
+  fun droppedEvents(): Int {
+    return this.trace?.dropped?.get() ?: 0
+  }
+
+  /**
+   * Write the spans completed so far in the current trace to the given stream in the Chrome
+   * trace event format, suitable for loading into `chrome://tracing` or Perfetto.
+   */
+
+  fun writeChromeTrace(output: OutputStream) {
+    TraceChromeFormat.write(this.events(), output)
+  }
+}
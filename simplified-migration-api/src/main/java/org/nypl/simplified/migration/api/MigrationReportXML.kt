@@ -36,6 +36,15 @@ object MigrationReportXML : MigrationReportXMLType {
     root.setAttribute("migration", report.migrationService)
     document.appendChild(root)
 
+    val throughput = report.throughput
+    if (throughput != null) {
+      val throughputElement = document.createElement("throughput")
+      throughputElement.setAttribute("books", "${throughput.books}")
+      throughputElement.setAttribute("bytes", "${throughput.bytes}")
+      throughputElement.setAttribute("durationMilliseconds", "${throughput.durationMilliseconds}")
+      root.appendChild(throughputElement)
+    }
+
     val events = document.createElement("events")
     root.appendChild(events)
 
@@ -3,7 +3,6 @@ package org.nypl.simplified.migration.from3master
 import android.content.Context
 import android.os.Environment
 import com.fasterxml.jackson.core.type.TypeReference
-import com.fasterxml.jackson.databind.ObjectMapper
 import com.google.common.base.Preconditions
 import io.reactivex.Observable
 import io.reactivex.subjects.PublishSubject
@@ -34,6 +33,7 @@ import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
 import org.nypl.simplified.files.DirectoryUtilities
 import org.nypl.simplified.files.FileUtilities
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.json.core.JSONParserUtilities
 import org.nypl.simplified.migration.spi.MigrationEvent
 import org.nypl.simplified.migration.spi.MigrationEvent.MigrationStepError
@@ -45,6 +45,7 @@ import org.nypl.simplified.migration.spi.MigrationEvent.Subject.BOOK
 import org.nypl.simplified.migration.spi.MigrationEvent.Subject.BOOKMARK
 import org.nypl.simplified.migration.spi.MigrationReport
 import org.nypl.simplified.migration.spi.MigrationServiceDependencies
+import org.nypl.simplified.migration.spi.MigrationThroughput
 import org.nypl.simplified.migration.spi.MigrationType
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSJSONParser
@@ -55,6 +56,12 @@ import java.io.FileInputStream
 import java.io.FileNotFoundException
 import java.io.InputStream
 import java.net.URI
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * A migration from version 3.0 of the app (2019 pre-LFA master branch).
@@ -81,11 +88,27 @@ class MigrationFrom3Master(
   private val oldBaseDataDirectory =
     this.determineDiskDataDirectory(this.services.context)
 
-  private val objectMapper = ObjectMapper()
+  private val objectMapper = JSONCodecs.mapper()
   private val noticesLog = mutableListOf<MigrationEvent>()
-  private val noticesObservable = PublishSubject.create<MigrationEvent>()
   private val filesToDelete = mutableListOf<File>()
 
+  /*
+   * Books are migrated on several threads at once, so events must be serialized.
+   */
+
+  private val noticesObservable =
+    PublishSubject.create<MigrationEvent>().toSerialized()
+
+  /**
+   * The checkpoint that records which steps of the migration have completed.
+   */
+
+  private val checkpointFile =
+    File(this.oldBaseAccountsDirectory, "migration-from3master-checkpoint.json")
+
+  private val booksMigrated = AtomicInteger(0)
+  private val bytesMigrated = AtomicLong(0L)
+
   /**
    * The presence of any of these files will cause the migration to run.
    */
@@ -95,7 +118,11 @@ class MigrationFrom3Master(
       .map { name -> File(this.oldBaseAccountsDirectory, name).absoluteFile }
 
   init {
-    this.noticesObservable.subscribe { notice -> this.noticesLog.add(notice) }
+    this.noticesObservable.subscribe { notice ->
+      synchronized(this.noticesLog) {
+        this.noticesLog.add(notice)
+      }
+    }
   }
 
   override val events: Observable<MigrationEvent> =
@@ -176,6 +203,16 @@ class MigrationFrom3Master(
     val loadedBook: LoadedBook
   )
 
+  companion object {
+
+    /**
+     * The maximum number of books that will be migrated at once. Migration is mostly I/O
+     * bound, and more threads than this just compete for the same storage.
+     */
+
+    private const val BOOK_THREADS_MAXIMUM = 4
+  }
+
   override fun run(): MigrationReport {
     val subscription =
       this.services.accountEvents.subscribe { event ->
@@ -187,8 +224,22 @@ class MigrationFrom3Master(
         }
       }
 
+    val checkpoint =
+      MigrationFrom3MasterCheckpoint.open(this.objectMapper, this.checkpointFile)
+    val threads =
+      maxOf(1, minOf(BOOK_THREADS_MAXIMUM, Runtime.getRuntime().availableProcessors()))
+    val threadIndex = AtomicInteger(0)
+    val executor =
+      Executors.newFixedThreadPool(threads) { runnable ->
+        val thread =
+          Thread(runnable, "simplified-migration-from3master-${threadIndex.incrementAndGet()}")
+        thread.isDaemon = true
+        thread
+      }
+
     try {
       val time = LocalDateTime.now()
+      val timeThen = System.nanoTime()
 
       val accounts = this.enumerateAccountsToMigrate()
       this.logger.debug("{} accounts to migrate", accounts.size)
@@ -204,22 +255,32 @@ class MigrationFrom3Master(
           ++createdAccounts
 
           this.pushLoadedAccountToDeletionQueue(createdAccount.loadedAccount)
-
-          val books = this.loadBooksForAccount(createdAccount)
-          val copiedBooks = this.copyBooks(books)
-          for (copiedBook in copiedBooks) {
-            this.publishStepSucceeded(BOOK, this.strings.successCopiedBook(copiedBook.loadedBook.bookEntry.title))
-          }
-          this.authenticateAccount(createdAccount)
+          this.migrateBooks(checkpoint, executor, createdAccount)
+          this.authenticateAccountIfNecessary(checkpoint, createdAccount)
         }
       }
 
+      val throughput =
+        MigrationThroughput(
+          books = this.booksMigrated.get(),
+          bytes = this.bytesMigrated.get(),
+          durationMilliseconds = (System.nanoTime() - timeThen) / 1_000_000L
+        )
+      this.logger.debug(
+        "migrated {} books ({} bytes) in {}ms ({} bytes/s)",
+        throughput.books,
+        throughput.bytes,
+        throughput.durationMilliseconds,
+        throughput.bytesPerSecond.toLong()
+      )
+
       /*
        * If there are no accounts left that couldn't be migrated, add all of the triggering files
        * to the deletion queue so that the migration is not prompted to run again.
        */
 
-      if (accounts.size == createdAccounts) {
+      val completed = accounts.size == createdAccounts
+      if (completed) {
         this.filesTriggering.forEach(this::pushFileToDeletionQueue)
       }
 
@@ -236,18 +297,129 @@ class MigrationFrom3Master(
         }
       }
 
+      /*
+       * The checkpoint is only useful for as long as the migration might run again.
+       */
+
+      if (completed) {
+        try {
+          checkpoint.delete()
+        } catch (e: Exception) {
+          this.logger.error("could not delete checkpoint: ", e)
+        }
+      }
+
       this.publishStepSucceeded(this.strings.successDeletedOldData)
       return MigrationReport(
-        this.services.applicationVersion,
-        this.javaClass.canonicalName ?: "unknown",
-        time,
-        this.noticesLog.toList()
+        application = this.services.applicationVersion,
+        migrationService = this.javaClass.canonicalName ?: "unknown",
+        timestamp = time,
+        events = synchronized(this.noticesLog) { this.noticesLog.toList() },
+        throughput = throughput
       )
     } finally {
+      executor.shutdown()
       subscription.dispose()
     }
   }
 
+  /**
+   * Migrate the books of the given account that have not already been migrated, several at a
+   * time. Each book is loaded, copied into the account's book database, and then recorded in
+   * the checkpoint, which is flushed once every book of the account has been migrated.
+   */
+
+  private fun migrateBooks(
+    checkpoint: MigrationFrom3MasterCheckpoint,
+    executor: ExecutorService,
+    createdAccount: CreatedAccount
+  ) {
+    val accountID = createdAccount.loadedAccount.enumeratedAccount.idNumeric
+    val booksDirectory = createdAccount.loadedAccount.booksDataDirectory
+
+    this.logger.debug("enumerating books directory {}", booksDirectory)
+    val entries = booksDirectory.list()
+    if (entries == null) {
+      this.logger.error("could not list {}", booksDirectory)
+      return
+    }
+
+    val remaining =
+      entries.sorted().filter { entry -> !checkpoint.isBookMigrated(accountID, entry) }
+    this.logger.debug(
+      "{} books to migrate, {} already migrated",
+      remaining.size,
+      checkpoint.booksMigrated(accountID)
+    )
+
+    val futures = remaining.map { entry ->
+      executor.submit(
+        Callable {
+          this.migrateBook(checkpoint, createdAccount, File(booksDirectory, entry))
+        }
+      )
+    }
+
+    for (future in futures) {
+      try {
+        future.get()
+      } catch (e: ExecutionException) {
+        this.logger.error("book migration failed: ", e.cause)
+      }
+    }
+
+    try {
+      checkpoint.flush()
+    } catch (e: Exception) {
+      this.logger.error("could not update checkpoint: ", e)
+    }
+  }
+
+  private fun migrateBook(
+    checkpoint: MigrationFrom3MasterCheckpoint,
+    createdAccount: CreatedAccount,
+    bookDirectory: File
+  ) {
+    val loadedBook =
+      this.loadBook(createdAccount, bookDirectory) ?: return
+    val size =
+      loadedBook.epubFile.length()
+    val copiedBook =
+      this.copyBook(loadedBook) ?: return
+
+    this.publishStepSucceeded(BOOK, this.strings.successCopiedBook(copiedBook.loadedBook.bookEntry.title))
+    this.booksMigrated.incrementAndGet()
+    this.bytesMigrated.addAndGet(size)
+
+    try {
+      checkpoint.bookMigrated(
+        account = createdAccount.loadedAccount.enumeratedAccount.idNumeric,
+        book = bookDirectory.name
+      )
+    } catch (e: Exception) {
+      this.logger.error("could not update checkpoint: ", e)
+    }
+  }
+
+  private fun authenticateAccountIfNecessary(
+    checkpoint: MigrationFrom3MasterCheckpoint,
+    createdAccount: CreatedAccount
+  ) {
+    val accountID = createdAccount.loadedAccount.enumeratedAccount.idNumeric
+    if (checkpoint.isAuthenticated(accountID)) {
+      this.logger.debug("account {} was authenticated by an earlier attempt", accountID)
+      return
+    }
+
+    if (this.authenticateAccount(createdAccount)) {
+      try {
+        checkpoint.authenticated(accountID)
+      } catch (e: Exception) {
+        this.logger.error("could not update checkpoint: ", e)
+      }
+    }
+  }
+
   private fun pushLoadedAccountToDeletionQueue(l: LoadedAccount) {
     this.pushFileToDeletionQueue(l.booksDataDirectory)
     this.pushFileToDeletionQueue(l.booksDirectory)
@@ -260,7 +432,13 @@ class MigrationFrom3Master(
     return file != context.filesDir && file != context.getExternalFilesDir(null)
   }
 
-  private fun authenticateAccount(createdAccount: CreatedAccount) {
+  /**
+   * Authenticate the given account.
+   *
+   * @return `true` if the account is authenticated, or does not require authentication
+   */
+
+  private fun authenticateAccount(createdAccount: CreatedAccount): Boolean {
     this.logger.debug("authenticating account {}", createdAccount.account.id)
 
     val accountTitle = createdAccount.account.provider.displayName
@@ -271,7 +449,7 @@ class MigrationFrom3Master(
           this.publishStepSucceeded(
             ACCOUNT, this.strings.successAuthenticatedAccountNotRequired(accountTitle)
           )
-          return
+          return true
         }
         is AccountProviderAuthenticationDescription.Basic -> {
         }
@@ -289,7 +467,7 @@ class MigrationFrom3Master(
             )
           )
         )
-        return
+        return false
       }
 
       val credentials =
@@ -302,10 +480,14 @@ class MigrationFrom3Master(
         )
 
       when (val taskResult = this.services.loginAccount(createdAccount.account, credentials)) {
-        is TaskResult.Success ->
+        is TaskResult.Success -> {
           this.publishStepSucceeded(ACCOUNT, this.strings.successAuthenticatedAccount(accountTitle))
-        is TaskResult.Failure ->
+          true
+        }
+        is TaskResult.Failure -> {
           this.publishStepError(MigrationStepError(taskResult.message))
+          false
+        }
       }
     } catch (e: Exception) {
       this.logger.error("failed to authenticate account: ", e)
@@ -319,6 +501,7 @@ class MigrationFrom3Master(
           exception = e
         )
       )
+      false
     }
   }
 
@@ -331,27 +514,13 @@ class MigrationFrom3Master(
     fileAdobeMeta: File
   ): AdobeAdeptLoan {
     val serialized = FileUtilities.fileReadBytes(fileAdobeRights)
-    val objectMapper = ObjectMapper()
-    val rootNode = objectMapper.readTree(fileAdobeMeta)
+    val rootNode = this.objectMapper.readTree(fileAdobeMeta)
     val rootObject = JSONParserUtilities.checkObject(null, rootNode)
     val loanID = AdobeLoanID(JSONParserUtilities.getString(rootObject, "loan-id"))
     val returnable = JSONParserUtilities.getBoolean(rootObject, "returnable")
     return AdobeAdeptLoan(loanID, serialized, returnable)
   }
 
-  /**
-   * Copy all of the loaded books to their respective modern accounts.
-   */
-
-  private fun copyBooks(loadedBooks: List<LoadedBook>): List<CopiedBook> {
-    this.logger.debug("copying {} books", loadedBooks.size)
-    val copiedBooks = mutableListOf<CopiedBook>()
-    for (book in loadedBooks) {
-      this.copyBook(book)?.let { copied -> copiedBooks.add(copied) }
-    }
-    return copiedBooks.toList()
-  }
-
   /**
    * Copy the loaded book to its respective modern account.
    */
@@ -424,8 +593,13 @@ class MigrationFrom3Master(
     var result: CopiedBook? = CopiedBook(book)
 
     try {
+      /*
+       * The old data is deleted once the migration completes, so the book can be moved rather
+       * than copied. This is a rename if the old and new data are on the same volume.
+       */
+
       if (book.epubFile.isFile) {
-        handle.copyInBook(book.epubFile)
+        handle.moveInBook(book.epubFile)
       }
     } catch (e: Exception) {
       this.logger.error("failed to copy epub: ", e)
@@ -495,116 +669,104 @@ class MigrationFrom3Master(
   }
 
   /**
-   * Load all of the books from a given account.
+   * Load the book in the given directory of the given account.
    */
 
-  private fun loadBooksForAccount(createdAccount: CreatedAccount): List<LoadedBook> {
-    val booksDirectory = createdAccount.loadedAccount.booksDataDirectory
-
-    this.logger.debug("enumerating books directory {}", booksDirectory)
-    val entries = booksDirectory.list()
-    if (entries == null) {
-      this.logger.error("could not list {}", booksDirectory)
-      return listOf()
-    }
+  private fun loadBook(
+    createdAccount: CreatedAccount,
+    bookDirectory: File
+  ): LoadedBook? {
+    val entry = bookDirectory.name
+    this.logger.debug("loading book {}", entry)
 
-    val loadedBooks = mutableListOf<LoadedBook>()
-    for (entry in entries) {
-      val bookDirectory = File(booksDirectory, entry)
+    try {
+      val fileMeta =
+        File(bookDirectory, "meta.json")
 
-      this.logger.debug("loading book {}", entry)
+      val parser = OPDSJSONParser.newParser()
+      val bookEntry =
+        FileInputStream(fileMeta).use { stream ->
+          parser.parseAcquisitionFeedEntryFromStream(stream)
+        }
 
       try {
-        val fileMeta =
-          File(bookDirectory, "meta.json")
+        val fileEPUB =
+          File(bookDirectory, "book.epub")
+        val fileAdobeRights =
+          File(bookDirectory, "rights_adobe.xml")
+        val fileAdobeMeta =
+          File(bookDirectory, "meta_adobe.json")
+        val fileAnnotations =
+          File(bookDirectory, "annotations.json")
+        val fileAudioManifest =
+          File(bookDirectory, "audiobook-manifest.json")
+        val fileAudioManifestURI =
+          File(bookDirectory, "audiobook-manifest-uri.txt")
+        val fileAudioPosition =
+          File(bookDirectory, "audiobook-position.json")
+
+        val epubAdobeLoan =
+          if (fileAdobeRights.isFile && fileAdobeMeta.isFile) {
+            this.loadAdobeRights(fileAdobeRights, fileAdobeMeta)
+          } else {
+            null
+          }
 
-        val parser = OPDSJSONParser.newParser()
-        val bookEntry =
-          FileInputStream(fileMeta).use { stream ->
-            parser.parseAcquisitionFeedEntryFromStream(stream)
+        val epubBookmarks =
+          if (fileAnnotations.isFile) {
+            this.loadBookmarks(bookEntry.title, fileAnnotations)
+          } else {
+            null
           }
 
-        try {
-          val fileEPUB =
-            File(bookDirectory, "book.epub")
-          val fileAdobeRights =
-            File(bookDirectory, "rights_adobe.xml")
-          val fileAdobeMeta =
-            File(bookDirectory, "meta_adobe.json")
-          val fileAnnotations =
-            File(bookDirectory, "annotations.json")
-          val fileAudioManifest =
-            File(bookDirectory, "audiobook-manifest.json")
-          val fileAudioManifestURI =
-            File(bookDirectory, "audiobook-manifest-uri.txt")
-          val fileAudioPosition =
-            File(bookDirectory, "audiobook-position.json")
-
-          val epubAdobeLoan =
-            if (fileAdobeRights.isFile && fileAdobeMeta.isFile) {
-              this.loadAdobeRights(fileAdobeRights, fileAdobeMeta)
-            } else {
-              null
-            }
-
-          val epubBookmarks =
-            if (fileAnnotations.isFile) {
-              this.loadBookmarks(bookEntry.title, fileAnnotations)
-            } else {
-              null
-            }
-
-          val audioBookPosition =
-            this.loadAudioPlayerPositionOptionally(fileAudioPosition)
-
-          val audioBookManifest =
-            if (fileAudioManifest.isFile) {
-              BookFormat.AudioBookManifestReference(
-                manifestURI = this.loadAudioPlayerManifestURI(fileAudioManifestURI),
-                manifestFile = fileAudioManifest
-              )
-            } else {
-              null
-            }
-
-          loadedBooks.add(
-            LoadedBook(
-              owner = createdAccount,
-              bookID = BookIDs.newFromOPDSEntry(bookEntry),
-              bookDirectory = bookDirectory,
-              bookEntry = bookEntry,
-              epubFile = fileEPUB,
-              epubAdobeLoan = epubAdobeLoan,
-              epubBookmarks = epubBookmarks,
-              audioBookManifest = audioBookManifest,
-              audioBookPosition = audioBookPosition
-            )
-          )
-        } catch (e: Exception) {
-          this.logger.error("could not load book: ", e)
-          this.publishStepError(
-            MigrationStepError(
-              message = this.strings.errorBookLoadTitledFailure(bookEntry.title),
-              attributes = mapOf(
-                Pair("bookDirectory", bookDirectory.toString()),
-                Pair("bookTitle", bookEntry.title)
-              ),
-              exception = e
+        val audioBookPosition =
+          this.loadAudioPlayerPositionOptionally(fileAudioPosition)
+
+        val audioBookManifest =
+          if (fileAudioManifest.isFile) {
+            BookFormat.AudioBookManifestReference(
+              manifestURI = this.loadAudioPlayerManifestURI(fileAudioManifestURI),
+              manifestFile = fileAudioManifest
             )
-          )
-        }
+          } else {
+            null
+          }
+
+        return LoadedBook(
+          owner = createdAccount,
+          bookID = BookIDs.newFromOPDSEntry(bookEntry),
+          bookDirectory = bookDirectory,
+          bookEntry = bookEntry,
+          epubFile = fileEPUB,
+          epubAdobeLoan = epubAdobeLoan,
+          epubBookmarks = epubBookmarks,
+          audioBookManifest = audioBookManifest,
+          audioBookPosition = audioBookPosition
+        )
       } catch (e: Exception) {
         this.logger.error("could not load book: ", e)
         this.publishStepError(
           MigrationStepError(
-            message = this.strings.errorBookLoadFailure(entry),
-            attributes = mapOf(Pair("bookDirectory", bookDirectory.toString())),
+            message = this.strings.errorBookLoadTitledFailure(bookEntry.title),
+            attributes = mapOf(
+              Pair("bookDirectory", bookDirectory.toString()),
+              Pair("bookTitle", bookEntry.title)
+            ),
             exception = e
           )
         )
       }
+    } catch (e: Exception) {
+      this.logger.error("could not load book: ", e)
+      this.publishStepError(
+        MigrationStepError(
+          message = this.strings.errorBookLoadFailure(entry),
+          attributes = mapOf(Pair("bookDirectory", bookDirectory.toString())),
+          exception = e
+        )
+      )
     }
-    return loadedBooks.toList()
+    return null
   }
 
   /**
@@ -642,9 +804,8 @@ class MigrationFrom3Master(
    */
 
   private fun parseBookmarks(stream: InputStream): List<BookmarkAnnotation> {
-    val mapper = ObjectMapper()
     val jsonObj: Map<String, List<BookmarkAnnotation>> =
-      mapper.readValue(
+      this.objectMapper.readValue(
         stream,
         object : TypeReference<Map<String, List<BookmarkAnnotation>>>() {
         }
@@ -720,10 +881,9 @@ class MigrationFrom3Master(
   private fun loadAudioPlayerPositionOptionally(fileAudioPosition: File): PlayerPosition? {
     return try {
       FileInputStream(fileAudioPosition).use { stream ->
-        val objectMapper = ObjectMapper()
         val result =
           PlayerPositions.parseFromObjectNode(
-            JSONParserUtilities.checkObject(null, objectMapper.readTree(stream))
+            JSONParserUtilities.checkObject(null, JSONCodecs.treeReader().readTree(stream))
           )
 
         when (result) {
@@ -0,0 +1,249 @@
+package org.nypl.simplified.migration.from3master
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import net.jcip.annotations.GuardedBy
+import org.nypl.simplified.files.FileUtilities
+import org.nypl.simplified.json.core.JSONCodecs
+import org.nypl.simplified.json.core.JSONParseException
+import org.nypl.simplified.json.core.JSONParserUtilities
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.IOException
+
+/**
+ * A record of the parts of a migration that have completed, so that a migration that was
+ * interrupted can resume from where it stopped instead of starting again.
+ *
+ * Accounts are identified by their numeric 3.0 provider ID, and books by the name of their
+ * directory in the old data directory. Rewriting the whole checkpoint for every book would
+ * write a quadratic number of bytes over a large library, so migrated books are written to
+ * disk in batches: once [saveBooks] books are unsaved, or once [saveIntervalMilliseconds] have
+ * passed since the last save, and whenever [flush] is called. A book that was migrated but not
+ * yet saved is simply migrated again if the migration is interrupted. Authentication is
+ * written to disk before [authenticated] returns.
+ */
+
+internal class MigrationFrom3MasterCheckpoint private constructor(
+  private val objectMapper: ObjectMapper,
+  private val file: File,
+  private val fileTmp: File,
+  private val saveBooks: Int,
+  private val saveIntervalMilliseconds: Long,
+  @GuardedBy("lock")
+  private val accounts: MutableMap<Int, AccountProgress>
+) {
+
+  private class AccountProgress(
+    val books: MutableSet<String> = mutableSetOf(),
+    var authenticated: Boolean = false
+  )
+
+  private val lock = Any()
+
+  @GuardedBy("lock")
+  private var unsavedBooks = 0
+
+  @GuardedBy("lock")
+  private var savedAt = System.nanoTime()
+
+  companion object {
+
+    private const val VERSION = 1
+
+    /**
+     * The default number of migrated books that may be unsaved.
+     */
+
+    const val SAVE_BOOKS_DEFAULT = 32
+
+    /**
+     * The default time for which migrated books may be unsaved.
+     */
+
+    const val SAVE_INTERVAL_MILLISECONDS_DEFAULT = 2_000L
+
+    private val logger =
+      LoggerFactory.getLogger(MigrationFrom3MasterCheckpoint::class.java)
+
+    /**
+     * Open the checkpoint stored in the given file. A missing or unreadable checkpoint is
+     * treated as an empty one.
+     */
+
+    fun open(
+      objectMapper: ObjectMapper,
+      file: File,
+      saveBooks: Int = SAVE_BOOKS_DEFAULT,
+      saveIntervalMilliseconds: Long = SAVE_INTERVAL_MILLISECONDS_DEFAULT
+    ): MigrationFrom3MasterCheckpoint {
+      val accounts = try {
+        if (file.isFile) {
+          this.parse(objectMapper, file)
+        } else {
+          mutableMapOf()
+        }
+      } catch (e: Exception) {
+        this.logger.error("could not read checkpoint {}, starting from scratch: ", file, e)
+        mutableMapOf()
+      }
+
+      return MigrationFrom3MasterCheckpoint(
+        objectMapper = objectMapper,
+        file = file,
+        fileTmp = File(file.parentFile, file.name + ".tmp"),
+        saveBooks = saveBooks,
+        saveIntervalMilliseconds = saveIntervalMilliseconds,
+        accounts = accounts
+      )
+    }
+
+    @Throws(IOException::class)
+    private fun parse(
+      objectMapper: ObjectMapper,
+      file: File
+    ): MutableMap<Int, AccountProgress> {
+      val root = JSONParserUtilities.checkObject(null, objectMapper.readTree(file))
+      val version = JSONParserUtilities.getInteger(root, "@version")
+      if (version != VERSION) {
+        throw JSONParseException("Unsupported checkpoint version: $version")
+      }
+
+      val accounts = mutableMapOf<Int, AccountProgress>()
+      for (element in JSONParserUtilities.getArray(root, "accounts")) {
+        val account = JSONParserUtilities.checkObject(null, element)
+        val books = JSONParserUtilities.getArray(account, "books").map { book -> book.asText() }
+        accounts[JSONParserUtilities.getInteger(account, "id")] =
+          AccountProgress(
+            books = books.toMutableSet(),
+            authenticated = JSONParserUtilities.getBoolean(account, "authenticated")
+          )
+      }
+      return accounts
+    }
+  }
+
+  /**
+   * @return `true` if the given book of the given account has been migrated
+   */
+
+  fun isBookMigrated(
+    account: Int,
+    book: String
+  ): Boolean {
+    return synchronized(this.lock) {
+      this.accounts[account]?.books?.contains(book) == true
+    }
+  }
+
+  /**
+   * @return The number of books of the given account that have been migrated
+   */
+
+  fun booksMigrated(account: Int): Int {
+    return synchronized(this.lock) {
+      this.accounts[account]?.books?.size ?: 0
+    }
+  }
+
+  /**
+   * @return `true` if the given account has been authenticated
+   */
+
+  fun isAuthenticated(account: Int): Boolean {
+    return synchronized(this.lock) {
+      this.accounts[account]?.authenticated == true
+    }
+  }
+
+  /**
+   * Record that the given book of the given account has been migrated. The record is written
+   * to disk with the next batch.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun bookMigrated(
+    account: Int,
+    book: String
+  ) {
+    synchronized(this.lock) {
+      if (this.accounts.getOrPut(account) { AccountProgress() }.books.add(book)) {
+        ++this.unsavedBooks
+      }
+
+      val elapsed = (System.nanoTime() - this.savedAt) / 1_000_000L
+      if (this.unsavedBooks >= this.saveBooks || elapsed >= this.saveIntervalMilliseconds) {
+        this.saveLocked()
+      }
+    }
+  }
+
+  /**
+   * Write any migrated books that have not yet been written to disk.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun flush() {
+    synchronized(this.lock) {
+      if (this.unsavedBooks > 0) {
+        this.saveLocked()
+      }
+    }
+  }
+
+  /**
+   * Record that the given account has been authenticated.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun authenticated(account: Int) {
+    synchronized(this.lock) {
+      this.accounts.getOrPut(account) { AccountProgress() }.authenticated = true
+      this.saveLocked()
+    }
+  }
+
+  /**
+   * Delete the checkpoint. This is done once the migration has completed and the old data
+   * has been deleted.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Throws(IOException::class)
+  fun delete() {
+    synchronized(this.lock) {
+      this.accounts.clear()
+      this.unsavedBooks = 0
+      FileUtilities.fileDelete(this.file)
+      FileUtilities.fileDelete(this.fileTmp)
+    }
+  }
+
+  @GuardedBy("lock")
+  private fun saveLocked() {
+    val root = this.objectMapper.createObjectNode()
+    root.put("@version", VERSION)
+    val accounts = root.putArray("accounts")
+    for ((id, progress) in this.accounts.toSortedMap()) {
+      val account = accounts.addObject()
+      account.put("id", id)
+      account.put("authenticated", progress.authenticated)
+      val books = account.putArray("books")
+      progress.books.sorted().forEach { book -> books.add(book) }
+    }
+
+    FileUtilities.fileWriteUTF8Atomically(
+      this.file,
+      this.fileTmp,
+      JSONCodecs.compactWriter().writeValueAsString(root)
+    )
+    this.unsavedBooks = 0
+    this.savedAt = System.nanoTime()
+  }
+}
@@ -30,5 +30,12 @@ data class MigrationReport(
    * The events that occurred, if any.
    */
 
-  val events: List<MigrationEvent>
+  val events: List<MigrationEvent>,
+
+  /**
+   * The amount of book data migrated and the time it took, if the migration service measures
+   * it.
+   */
+
+  val throughput: MigrationThroughput? = null
 )
@@ -0,0 +1,41 @@
+package org.nypl.simplified.migration.spi
+
+/**
+ * The amount of data moved by a migration, and the time it took.
+ */
+
+data class MigrationThroughput(
+
+  /**
+   * The number of books migrated.
+   */
+
+  val books: Int,
+
+  /**
+   * The number of bytes of book data migrated.
+   */
+
+  val bytes: Long,
+
+  /**
+   * The time taken to migrate the books, in milliseconds.
+   */
+
+  val durationMilliseconds: Long
+) {
+
+  /**
+   * The number of books migrated per second.
+   */
+
+  val booksPerSecond: Double
+    get() = (this.books * 1000.0) / maxOf(1L, this.durationMilliseconds)
+
+  /**
+   * The number of bytes of book data migrated per second.
+   */
+
+  val bytesPerSecond: Double
+    get() = (this.bytes * 1000.0) / maxOf(1L, this.durationMilliseconds)
+}
@@ -85,6 +85,7 @@ class NotificationsService(
     this.bookRegistrySubscription =
       this.bookRegistry.bookEvents()
         .ofType(BookStatusEvent.BookStatusEventChanged::class.java)
+        .filter { event -> event.statusNow is BookStatus.Held.HeldReady }
         .observeOn(Schedulers.from(this.executor))
         .subscribe(this::onBookEvent)
   }
@@ -1,6 +1,6 @@
 package org.nypl.simplified.opds.auth_document
 
-import com.fasterxml.jackson.databind.ObjectMapper
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.opds.auth_document.api.AuthenticationDocumentParserType
 import org.nypl.simplified.opds.auth_document.api.AuthenticationDocumentParsersType
 import java.io.InputStream
@@ -8,7 +8,7 @@ import java.net.URI
 
 class AuthenticationDocumentParsers : AuthenticationDocumentParsersType {
 
-  private val mapper = ObjectMapper()
+  private val mapper = JSONCodecs.mapper()
 
   override fun createParser(
     uri: URI,
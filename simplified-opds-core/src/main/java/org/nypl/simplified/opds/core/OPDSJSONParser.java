@@ -1,17 +1,24 @@
 package org.nypl.simplified.opds.core;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.io7m.jfunctional.Option;
 import com.io7m.jfunctional.OptionType;
+import com.io7m.jfunctional.Pair;
 import com.io7m.jfunctional.PartialFunctionType;
+import com.io7m.jfunctional.Some;
 import com.io7m.jfunctional.Unit;
 import com.io7m.jnull.NullCheck;
 
 import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.nypl.simplified.json.core.JSONCodecs;
 import org.nypl.simplified.json.core.JSONParseException;
 import org.nypl.simplified.json.core.JSONParserUtilities;
 import org.nypl.simplified.opds.core.OPDSAcquisition.Relation;
@@ -22,7 +29,9 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import one.irradia.mime.api.MIMEType;
 import one.irradia.mime.vanilla.MIMEParser;
@@ -40,6 +49,12 @@ public final class OPDSJSONParser implements OPDSJSONParserType {
   public static final String INDIRECT_ACQUISITIONS_FIELD = "indirect_acquisitions";
   public static final String CONTENT_TYPE_FIELD = "content_type";
 
+  /**
+   * A shared factory for streaming parsers. Factories are thread-safe once configured.
+   */
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
   private OPDSJSONParser() {
     // Nothing
   }
@@ -476,13 +491,13 @@ public final class OPDSJSONParser implements OPDSJSONParserType {
   public OPDSAcquisitionFeedEntry parseAcquisitionFeedEntryFromStream(
     final InputStream s)
     throws OPDSParseException {
-    try {
-      final ObjectMapper jom = new ObjectMapper();
-      return this.parseAcquisitionFeedEntry(
-        JSONParserUtilities.checkObject(
-          null, jom.readTree(s)));
-    } catch (final JsonProcessingException e) {
-      throw new OPDSParseException(e);
+    NullCheck.notNull(s);
+
+    try (JsonParser p = JSON_FACTORY.createParser(s)) {
+      expectToken(p, p.nextToken(), JsonToken.START_OBJECT, "entry");
+      return streamFeedEntry(p);
+    } catch (final OPDSParseException e) {
+      throw e;
     } catch (final IOException e) {
       throw new OPDSParseException(e);
     }
@@ -493,14 +508,555 @@ public final class OPDSJSONParser implements OPDSJSONParserType {
     final InputStream s)
     throws OPDSParseException {
     try {
-      final ObjectMapper jom = new ObjectMapper();
       return this.parseAcquisitionFeed(
         JSONParserUtilities.checkObject(
-          null, jom.readTree(s)));
+          null, JSONCodecs.treeReader().readTree(s)));
     } catch (final JsonProcessingException e) {
       throw new OPDSParseException(e);
     } catch (final IOException e) {
       throw new OPDSParseException(e);
     }
   }
+
+  /*
+   * The functions below parse entries directly from a stream of tokens, without constructing
+   * an intermediate tree. They accept exactly the documents accepted by the tree-based functions
+   * above: fields may appear in any order, unknown fields are ignored, and the same fields are
+   * required.
+   */
+
+  private static void expectToken(
+    final JsonParser p,
+    final JsonToken received,
+    final JsonToken expected,
+    final String key)
+    throws OPDSParseException {
+    if (received != expected) {
+      throw new OPDSParseException(
+        String.format(
+          "Expected: A key '%s' with a value of type %s\nGot: %s (at %s)\n",
+          key,
+          expected,
+          received,
+          p.getCurrentLocation()));
+    }
+  }
+
+  private static void expectField(
+    final Object value,
+    final String key)
+    throws OPDSParseException {
+    if (value == null) {
+      throw new OPDSParseException(
+        String.format("Expected: A key '%s'\nGot: nothing\n", key));
+    }
+  }
+
+  private static String streamString(
+    final JsonParser p,
+    final String key)
+    throws IOException {
+    expectToken(p, p.currentToken(), JsonToken.VALUE_STRING, key);
+    return p.getText();
+  }
+
+  private static OptionType<String> streamStringOptional(
+    final JsonParser p,
+    final String key)
+    throws IOException {
+    if (p.currentToken() == JsonToken.VALUE_NULL) {
+      return Option.none();
+    }
+    return Option.some(streamString(p, key));
+  }
+
+  private static URI streamURI(
+    final JsonParser p,
+    final String key)
+    throws IOException {
+    try {
+      return new URI(streamString(p, key));
+    } catch (final URISyntaxException e) {
+      throw new OPDSParseException(e);
+    }
+  }
+
+  private static OptionType<URI> streamURIOptional(
+    final JsonParser p,
+    final String key)
+    throws IOException {
+    if (p.currentToken() == JsonToken.VALUE_NULL) {
+      return Option.none();
+    }
+    return Option.some(streamURI(p, key));
+  }
+
+  private static DateTime streamTimestamp(
+    final JsonParser p,
+    final DateTimeFormatter fmt,
+    final String key)
+    throws IOException {
+    try {
+      return fmt.parseDateTime(streamString(p, key));
+    } catch (final IllegalArgumentException e) {
+      throw new OPDSParseException(
+        String.format("Could not parse RFC3999 date for key '%s'", key), e);
+    }
+  }
+
+  private static MIMEType streamMIMEType(
+    final JsonParser p,
+    final String key)
+    throws IOException {
+    final String text = streamString(p, key);
+    try {
+      return MIMEParser.Companion.parseRaisingException(text);
+    } catch (final Exception e) {
+      throw new OPDSParseException(e);
+    }
+  }
+
+  private static OPDSAcquisitionFeedEntry streamFeedEntry(
+    final JsonParser p)
+    throws IOException {
+    final DateTimeFormatter fmt = ISODateTimeFormat.dateTimeParser();
+
+    String in_id = null;
+    String in_title = null;
+    DateTime in_updated = null;
+    OPDSAvailabilityType in_availability = null;
+    String in_distribution = null;
+    List<String> in_authors = null;
+    List<OPDSAcquisition> in_acquisitions = null;
+    List<OPDSCategory> in_categories = null;
+    List<Pair<URI, String>> in_groups = null;
+    OptionType<DRMLicensor> in_licensor = Option.none();
+    OptionType<URI> in_cover = Option.none();
+    OptionType<URI> in_thumbnail = Option.none();
+    OptionType<URI> in_alternate = Option.none();
+    OptionType<URI> in_analytics = Option.none();
+    OptionType<URI> in_annotations = Option.none();
+    OptionType<DateTime> in_published = Option.none();
+    OptionType<String> in_publisher = Option.none();
+    OptionType<String> in_summary = Option.none();
+
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      final String key = p.getCurrentName();
+      p.nextToken();
+
+      switch (key) {
+        case "id":
+          in_id = streamString(p, key);
+          break;
+        case "title":
+          in_title = streamString(p, key);
+          break;
+        case "updated":
+          in_updated = streamTimestamp(p, fmt, key);
+          break;
+        case "availability":
+          in_availability = streamAvailability(p, fmt);
+          break;
+        case "distribution":
+          in_distribution = streamString(p, key);
+          break;
+        case "authors": {
+          expectToken(p, p.currentToken(), JsonToken.START_ARRAY, key);
+          in_authors = new ArrayList<>();
+          while (p.nextToken() != JsonToken.END_ARRAY) {
+            in_authors.add(p.getValueAsString(""));
+            p.skipChildren();
+          }
+          break;
+        }
+        case "acquisitions": {
+          expectToken(p, p.currentToken(), JsonToken.START_ARRAY, key);
+          in_acquisitions = new ArrayList<>();
+          while (p.nextToken() != JsonToken.END_ARRAY) {
+            in_acquisitions.add(streamAcquisition(p));
+          }
+          break;
+        }
+        case "categories": {
+          expectToken(p, p.currentToken(), JsonToken.START_ARRAY, key);
+          in_categories = new ArrayList<>();
+          while (p.nextToken() != JsonToken.END_ARRAY) {
+            in_categories.add(streamCategory(p));
+          }
+          break;
+        }
+        case "groups": {
+          expectToken(p, p.currentToken(), JsonToken.START_ARRAY, key);
+          in_groups = new ArrayList<>();
+          while (p.nextToken() != JsonToken.END_ARRAY) {
+            in_groups.add(streamGroup(p));
+          }
+          break;
+        }
+        case "licensor":
+          in_licensor = Option.some(streamLicensor(p));
+          break;
+        case "cover":
+          in_cover = streamURIOptional(p, key);
+          break;
+        case "thumbnail":
+          in_thumbnail = streamURIOptional(p, key);
+          break;
+        case "alternate":
+          in_alternate = streamURIOptional(p, key);
+          break;
+        case "analytics":
+          in_analytics = streamURIOptional(p, key);
+          break;
+        case "annotations":
+          in_annotations = streamURIOptional(p, key);
+          break;
+        case "published":
+          in_published = Option.some(streamTimestamp(p, fmt, key));
+          break;
+        case "publisher":
+          in_publisher = streamStringOptional(p, key);
+          break;
+        case "summary":
+          in_summary = streamStringOptional(p, key);
+          break;
+        default:
+          p.skipChildren();
+          break;
+      }
+    }
+
+    expectToken(p, p.currentToken(), JsonToken.END_OBJECT, "entry");
+    expectField(in_id, "id");
+    expectField(in_title, "title");
+    expectField(in_updated, "updated");
+    expectField(in_availability, "availability");
+    expectField(in_authors, "authors");
+    expectField(in_acquisitions, "acquisitions");
+    expectField(in_categories, "categories");
+    expectField(in_groups, "groups");
+    expectField(in_distribution, "distribution");
+
+    final OPDSAcquisitionFeedEntryBuilderType fb =
+      OPDSAcquisitionFeedEntry.newBuilder(in_id, in_title, in_updated, in_availability);
+
+    for (final String author : in_authors) {
+      fb.addAuthor(author);
+    }
+    for (final OPDSAcquisition acquisition : in_acquisitions) {
+      fb.addAcquisition(acquisition);
+    }
+    fb.setLicensorOption(in_licensor);
+    for (final OPDSCategory category : in_categories) {
+      fb.addCategory(category);
+    }
+    for (final Pair<URI, String> group : in_groups) {
+      fb.addGroup(group.getLeft(), group.getRight());
+    }
+
+    fb.setCoverOption(in_cover);
+    fb.setThumbnailOption(in_thumbnail);
+    fb.setAlternateOption(in_alternate);
+    fb.setAnalyticsOption(in_analytics);
+    fb.setAnnotationsOption(in_annotations);
+    fb.setPublishedOption(in_published);
+    fb.setPublisherOption(in_publisher);
+    fb.setDistribution(in_distribution);
+    fb.setSummaryOption(in_summary);
+    return fb.build();
+  }
+
+  private static Pair<URI, String> streamGroup(
+    final JsonParser p)
+    throws IOException {
+    expectToken(p, p.currentToken(), JsonToken.START_OBJECT, "groups");
+
+    URI in_uri = null;
+    String in_name = null;
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      final String key = p.getCurrentName();
+      p.nextToken();
+      switch (key) {
+        case "uri":
+          in_uri = streamURI(p, key);
+          break;
+        case "name":
+          in_name = streamString(p, key);
+          break;
+        default:
+          p.skipChildren();
+          break;
+      }
+    }
+
+    expectField(in_uri, "uri");
+    expectField(in_name, "name");
+    return Pair.pair(in_uri, in_name);
+  }
+
+  private static OPDSCategory streamCategory(
+    final JsonParser p)
+    throws IOException {
+    expectToken(p, p.currentToken(), JsonToken.START_OBJECT, "categories");
+
+    String in_term = null;
+    String in_scheme = null;
+    OptionType<String> in_label = Option.none();
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      final String key = p.getCurrentName();
+      p.nextToken();
+      switch (key) {
+        case "term":
+          in_term = streamString(p, key);
+          break;
+        case "scheme":
+          in_scheme = streamString(p, key);
+          break;
+        case "label":
+          in_label = streamStringOptional(p, key);
+          break;
+        default:
+          p.skipChildren();
+          break;
+      }
+    }
+
+    expectField(in_term, "term");
+    expectField(in_scheme, "scheme");
+    return new OPDSCategory(in_term, in_scheme, in_label);
+  }
+
+  private static DRMLicensor streamLicensor(
+    final JsonParser p)
+    throws IOException {
+    expectToken(p, p.currentToken(), JsonToken.START_OBJECT, "licensor");
+
+    String in_vendor = null;
+    String in_client_token = null;
+    OptionType<String> in_device_manager = Option.none();
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      final String key = p.getCurrentName();
+      p.nextToken();
+      switch (key) {
+        case "vendor":
+          in_vendor = streamString(p, key);
+          break;
+        case "clientToken":
+          in_client_token = streamString(p, key);
+          break;
+        case "deviceManager":
+          in_device_manager = streamStringOptional(p, key);
+          break;
+        default:
+          p.skipChildren();
+          break;
+      }
+    }
+
+    expectField(in_vendor, "vendor");
+    expectField(in_client_token, "clientToken");
+    return new DRMLicensor(in_vendor, in_client_token, in_device_manager);
+  }
+
+  private static OPDSAcquisition streamAcquisition(
+    final JsonParser p)
+    throws IOException {
+    expectToken(p, p.currentToken(), JsonToken.START_OBJECT, "acquisitions");
+
+    Relation in_relation = null;
+    URI in_uri = null;
+    List<OPDSIndirectAcquisition> in_indirects = Collections.emptyList();
+
+    /*
+     * XXX: COMPATIBILITY: The content type field will not be present for old versions of the
+     * book database. Luckily, old book databases can only contain epub files.
+     */
+
+    MIMEType in_type = null;
+
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      final String key = p.getCurrentName();
+      p.nextToken();
+      switch (key) {
+
+        /*
+         * XXX: COMPATIBILITY: this field is called "type" when it should really be called
+         * "relation". See parseAcquisition.
+         */
+
+        case "type":
+          try {
+            in_relation = Relation.valueOf(streamString(p, key));
+          } catch (final IllegalArgumentException e) {
+            throw new OPDSParseException(e);
+          }
+          break;
+        case "uri":
+          in_uri = streamURI(p, key);
+          break;
+        case CONTENT_TYPE_FIELD:
+          in_type = streamMIMEType(p, key);
+          break;
+        case INDIRECT_ACQUISITIONS_FIELD:
+          in_indirects = streamIndirectAcquisitions(p);
+          break;
+        default:
+          p.skipChildren();
+          break;
+      }
+    }
+
+    expectField(in_relation, "type");
+    expectField(in_uri, "uri");
+    if (in_type == null) {
+      try {
+        in_type = MIMEParser.Companion.parseRaisingException("application/epub+zip");
+      } catch (final Exception e) {
+        throw new OPDSParseException(e);
+      }
+    }
+    return new OPDSAcquisition(in_relation, in_uri, in_type, in_indirects);
+  }
+
+  private static List<OPDSIndirectAcquisition> streamIndirectAcquisitions(
+    final JsonParser p)
+    throws IOException {
+    expectToken(p, p.currentToken(), JsonToken.START_ARRAY, INDIRECT_ACQUISITIONS_FIELD);
+
+    final List<OPDSIndirectAcquisition> results = new ArrayList<>();
+    while (p.nextToken() != JsonToken.END_ARRAY) {
+      expectToken(p, p.currentToken(), JsonToken.START_OBJECT, INDIRECT_ACQUISITIONS_FIELD);
+
+      MIMEType in_type = null;
+      List<OPDSIndirectAcquisition> in_indirects = null;
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        final String key = p.getCurrentName();
+        p.nextToken();
+        switch (key) {
+          case "type":
+            in_type = streamMIMEType(p, key);
+            break;
+          case INDIRECT_ACQUISITIONS_FIELD:
+            in_indirects = streamIndirectAcquisitions(p);
+            break;
+          default:
+            p.skipChildren();
+            break;
+        }
+      }
+
+      expectField(in_type, "type");
+      expectField(in_indirects, INDIRECT_ACQUISITIONS_FIELD);
+      results.add(new OPDSIndirectAcquisition(in_type, in_indirects));
+    }
+    return results;
+  }
+
+  /**
+   * The fields that may appear inside any of the availability objects.
+   */
+
+  private static final class AvailabilityFields {
+    private OptionType<DateTime> start_date = Option.none();
+    private OptionType<DateTime> end_date = Option.none();
+    private OptionType<Integer> position = Option.none();
+    private OptionType<URI> revoke = Option.none();
+  }
+
+  private static AvailabilityFields streamAvailabilityFields(
+    final JsonParser p,
+    final DateTimeFormatter fmt,
+    final String name)
+    throws IOException {
+    expectToken(p, p.currentToken(), JsonToken.START_OBJECT, name);
+
+    final AvailabilityFields fields = new AvailabilityFields();
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      final String key = p.getCurrentName();
+      p.nextToken();
+      switch (key) {
+        case "start_date":
+          fields.start_date = Option.some(streamTimestamp(p, fmt, key));
+          break;
+        case "end_date":
+          fields.end_date = Option.some(streamTimestamp(p, fmt, key));
+          break;
+        case "position":
+          expectToken(p, p.currentToken(), JsonToken.VALUE_NUMBER_INT, key);
+          fields.position = Option.some(p.getIntValue());
+          break;
+        case "revoke":
+          fields.revoke = streamURIOptional(p, key);
+          break;
+        default:
+          p.skipChildren();
+          break;
+      }
+    }
+    return fields;
+  }
+
+  private static OPDSAvailabilityType streamAvailability(
+    final JsonParser p,
+    final DateTimeFormatter fmt)
+    throws IOException {
+    expectToken(p, p.currentToken(), JsonToken.START_OBJECT, "availability");
+
+    /*
+     * Availability objects contain exactly one field in practice, but the tree-based parser
+     * checks the fields in a fixed order, so the same precedence is applied here.
+     */
+
+    final Map<String, AvailabilityFields> present = new HashMap<>(2);
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      final String key = p.getCurrentName();
+      p.nextToken();
+      switch (key) {
+        case "loanable":
+        case "holdable":
+        case "loaned":
+        case "held":
+        case "held_ready":
+        case "open_access":
+        case "revoked":
+          present.put(key, streamAvailabilityFields(p, fmt, key));
+          break;
+        default:
+          p.skipChildren();
+          break;
+      }
+    }
+
+    if (present.containsKey("loanable")) {
+      return OPDSAvailabilityLoanable.get();
+    }
+    if (present.containsKey("holdable")) {
+      return OPDSAvailabilityHoldable.get();
+    }
+    if (present.containsKey("loaned")) {
+      final AvailabilityFields f = present.get("loaned");
+      return OPDSAvailabilityLoaned.get(f.start_date, f.end_date, f.revoke);
+    }
+    if (present.containsKey("held")) {
+      final AvailabilityFields f = present.get("held");
+      return OPDSAvailabilityHeld.get(f.start_date, f.position, f.end_date, f.revoke);
+    }
+    if (present.containsKey("held_ready")) {
+      final AvailabilityFields f = present.get("held_ready");
+      return OPDSAvailabilityHeldReady.get(f.end_date, f.revoke);
+    }
+    if (present.containsKey("open_access")) {
+      final AvailabilityFields f = present.get("open_access");
+      return OPDSAvailabilityOpenAccess.get(f.revoke);
+    }
+    if (present.containsKey("revoked")) {
+      final AvailabilityFields f = present.get("revoked");
+      if (f.revoke.isNone()) {
+        throw new OPDSParseException("Expected: A key 'revoke'\nGot: nothing\n");
+      }
+      return OPDSAvailabilityRevoked.get(((Some<URI>) f.revoke).get());
+    }
+
+    throw new OPDSParseException("Expected availability information");
+  }
 }
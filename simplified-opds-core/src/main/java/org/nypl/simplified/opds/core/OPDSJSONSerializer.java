@@ -1,5 +1,7 @@
 package org.nypl.simplified.opds.core;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -10,8 +12,10 @@ import com.io7m.jfunctional.Unit;
 import com.io7m.jnull.NullCheck;
 import com.io7m.junreachable.UnreachableCodeException;
 
+import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
+import org.nypl.simplified.json.core.JSONCodecs;
 import org.nypl.simplified.json.core.JSONSerializerUtilities;
 
 import java.io.IOException;
@@ -25,6 +29,15 @@ import java.util.Set;
  */
 
 public final class OPDSJSONSerializer implements OPDSJSONSerializerType {
+
+  /**
+   * A shared factory for streaming generators. Factories are thread-safe once configured. The
+   * factory does not close the streams passed to it; closing is the responsibility of callers.
+   */
+
+  private static final JsonFactory JSON_FACTORY =
+    new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
   private OPDSJSONSerializer() {
     // Nothing
   }
@@ -43,7 +56,7 @@ public final class OPDSJSONSerializer implements OPDSJSONSerializerType {
     throws OPDSSerializationException {
     NullCheck.notNull(a, "Acquisition");
 
-    final ObjectMapper jom = new ObjectMapper();
+    final ObjectMapper jom = JSONCodecs.mapper();
     final ObjectNode node = jom.createObjectNode();
     node.put("type", a.getRelation().toString());
     node.put("uri", a.getUri().toString());
@@ -58,7 +71,7 @@ public final class OPDSJSONSerializer implements OPDSJSONSerializerType {
     throws OPDSSerializationException {
     NullCheck.notNull(indirects, "Indirects");
 
-    final ObjectMapper jom = new ObjectMapper();
+    final ObjectMapper jom = JSONCodecs.mapper();
     final ArrayNode node = jom.createArrayNode();
 
     for (OPDSIndirectAcquisition indirect : indirects) {
@@ -73,7 +86,7 @@ public final class OPDSJSONSerializer implements OPDSJSONSerializerType {
     throws OPDSSerializationException {
     NullCheck.notNull(indirect, "Indirect");
 
-    final ObjectMapper jom = new ObjectMapper();
+    final ObjectMapper jom = JSONCodecs.mapper();
     final ObjectNode node = jom.createObjectNode();
 
     node.put("type", indirect.getType().getFullType());
@@ -88,7 +101,7 @@ public final class OPDSJSONSerializer implements OPDSJSONSerializerType {
     NullCheck.notNull(av);
 
     final DateTimeFormatter fmt = ISODateTimeFormat.dateTime();
-    final ObjectMapper jom = new ObjectMapper();
+    final ObjectMapper jom = JSONCodecs.mapper();
     return av.matchAvailability(
       new OPDSAvailabilityMatcherType<ObjectNode, UnreachableCodeException>() {
         @Override
@@ -194,7 +207,7 @@ public final class OPDSJSONSerializer implements OPDSJSONSerializerType {
     final OPDSCategory c) {
     NullCheck.notNull(c);
 
-    final ObjectMapper jom = new ObjectMapper();
+    final ObjectMapper jom = JSONCodecs.mapper();
     final ObjectNode je = jom.createObjectNode();
     je.put("scheme", c.getScheme());
     je.put("term", c.getTerm());
@@ -212,7 +225,7 @@ public final class OPDSJSONSerializer implements OPDSJSONSerializerType {
   public ObjectNode serializeLicensor(final DRMLicensor l) {
     NullCheck.notNull(l);
 
-    final ObjectMapper jom = new ObjectMapper();
+    final ObjectMapper jom = JSONCodecs.mapper();
     final ObjectNode je = jom.createObjectNode();
     je.put("vendor", l.getVendor());
     je.put("clientToken", l.getClientToken());
@@ -228,7 +241,7 @@ public final class OPDSJSONSerializer implements OPDSJSONSerializerType {
   public ObjectNode serializeFeedEntry(
     final OPDSAcquisitionFeedEntry e)
     throws OPDSSerializationException {
-    final ObjectMapper jom = new ObjectMapper();
+    final ObjectMapper jom = JSONCodecs.mapper();
     final ObjectNode je = jom.createObjectNode();
     final DateTimeFormatter fmt = ISODateTimeFormat.dateTime();
 
@@ -327,7 +340,7 @@ public final class OPDSJSONSerializer implements OPDSJSONSerializerType {
     throws OPDSSerializationException {
     NullCheck.notNull(e);
 
-    final ObjectMapper jom = new ObjectMapper();
+    final ObjectMapper jom = JSONCodecs.mapper();
     final ObjectNode je = jom.createObjectNode();
     final DateTimeFormatter fmt = ISODateTimeFormat.dateTime();
 
@@ -375,6 +388,259 @@ public final class OPDSJSONSerializer implements OPDSJSONSerializerType {
     return NullCheck.notNull(je);
   }
 
+  @Override
+  public void serializeFeedEntryToStream(
+    final OPDSAcquisitionFeedEntry e,
+    final OutputStream os)
+    throws IOException {
+    NullCheck.notNull(e, "Entry");
+    NullCheck.notNull(os, "Output stream");
+
+    try (JsonGenerator g = JSON_FACTORY.createGenerator(os)) {
+      g.useDefaultPrettyPrinter();
+      writeFeedEntry(g, e, ISODateTimeFormat.dateTime());
+    }
+  }
+
+  /*
+   * The streaming functions below must write fields in exactly the same order as the
+   * tree-based functions above so that the two produce byte-identical output.
+   */
+
+  private static void writeFeedEntry(
+    final JsonGenerator g,
+    final OPDSAcquisitionFeedEntry e,
+    final DateTimeFormatter fmt)
+    throws IOException {
+    g.writeStartObject();
+
+    g.writeArrayFieldStart("authors");
+    for (final String a : e.getAuthors()) {
+      g.writeString(a);
+    }
+    g.writeEndArray();
+
+    g.writeArrayFieldStart("acquisitions");
+    for (final OPDSAcquisition a : e.getAcquisitions()) {
+      writeAcquisition(g, NullCheck.notNull(a));
+    }
+    g.writeEndArray();
+
+    g.writeFieldName("availability");
+    writeAvailability(g, e.getAvailability(), fmt);
+
+    final OptionType<DRMLicensor> licensor_opt = e.getLicensor();
+    if (licensor_opt.isSome()) {
+      g.writeFieldName("licensor");
+      writeLicensor(g, ((Some<DRMLicensor>) licensor_opt).get());
+    }
+
+    g.writeArrayFieldStart("categories");
+    for (final OPDSCategory c : e.getCategories()) {
+      writeCategory(g, NullCheck.notNull(c));
+    }
+    g.writeEndArray();
+
+    writeURIOptional(g, "cover", e.getCover());
+
+    g.writeArrayFieldStart("groups");
+    for (final Pair<String, URI> p : e.getGroups()) {
+      g.writeStartObject();
+      g.writeStringField("name", p.getLeft());
+      g.writeStringField("uri", p.getRight().toString());
+      g.writeEndObject();
+    }
+    g.writeEndArray();
+
+    g.writeStringField("id", e.getID());
+
+    final OptionType<DateTime> published_opt = e.getPublished();
+    if (published_opt.isSome()) {
+      g.writeStringField("published", fmt.print(((Some<DateTime>) published_opt).get()));
+    }
+
+    final OptionType<String> publisher_opt = e.getPublisher();
+    if (publisher_opt.isSome()) {
+      g.writeStringField("publisher", ((Some<String>) publisher_opt).get());
+    }
+
+    g.writeStringField("distribution", e.getDistribution());
+    g.writeStringField("summary", e.getSummary());
+    g.writeStringField("title", e.getTitle());
+
+    writeURIOptional(g, "thumbnail", e.getThumbnail());
+
+    final OptionType<URI> alternate_opt = e.getAlternate();
+    if (alternate_opt.isSome()) {
+      final String alternate = ((Some<URI>) alternate_opt).get().toString();
+      g.writeStringField("alternate", alternate);
+      g.writeStringField("analytics", alternate.replace("/works/", "/analytics/"));
+    }
+
+    writeURIOptional(g, "annotations", e.getAnnotations());
+
+    g.writeStringField("updated", fmt.print(e.getUpdated()));
+    g.writeEndObject();
+  }
+
+  private static void writeURIOptional(
+    final JsonGenerator g,
+    final String name,
+    final OptionType<URI> uri_opt)
+    throws IOException {
+    if (uri_opt.isSome()) {
+      g.writeStringField(name, ((Some<URI>) uri_opt).get().toString());
+    }
+  }
+
+  private static void writeAcquisition(
+    final JsonGenerator g,
+    final OPDSAcquisition a)
+    throws IOException {
+    g.writeStartObject();
+    g.writeStringField("type", a.getRelation().toString());
+    g.writeStringField("uri", a.getUri().toString());
+    g.writeStringField("content_type", a.getType().getFullType());
+    g.writeFieldName("indirect_acquisitions");
+    writeIndirectAcquisitions(g, a.getIndirectAcquisitions());
+    g.writeEndObject();
+  }
+
+  private static void writeIndirectAcquisitions(
+    final JsonGenerator g,
+    final List<OPDSIndirectAcquisition> indirects)
+    throws IOException {
+    g.writeStartArray();
+    for (final OPDSIndirectAcquisition indirect : indirects) {
+      g.writeStartObject();
+      g.writeStringField("type", indirect.getType().getFullType());
+      g.writeFieldName("indirect_acquisitions");
+      writeIndirectAcquisitions(g, indirect.getIndirectAcquisitions());
+      g.writeEndObject();
+    }
+    g.writeEndArray();
+  }
+
+  private static void writeCategory(
+    final JsonGenerator g,
+    final OPDSCategory c)
+    throws IOException {
+    g.writeStartObject();
+    g.writeStringField("scheme", c.getScheme());
+    g.writeStringField("term", c.getTerm());
+
+    final OptionType<String> label_opt = c.getLabel();
+    if (label_opt.isSome()) {
+      g.writeStringField("label", ((Some<String>) label_opt).get());
+    }
+    g.writeEndObject();
+  }
+
+  private static void writeLicensor(
+    final JsonGenerator g,
+    final DRMLicensor l)
+    throws IOException {
+    g.writeStartObject();
+    g.writeStringField("vendor", l.getVendor());
+    g.writeStringField("clientToken", l.getClientToken());
+
+    if (l.getDeviceManager().isSome()) {
+      g.writeStringField("deviceManager", ((Some<String>) l.getDeviceManager()).get());
+    }
+    g.writeEndObject();
+  }
+
+  private static void writeAvailability(
+    final JsonGenerator g,
+    final OPDSAvailabilityType av,
+    final DateTimeFormatter fmt)
+    throws IOException {
+    g.writeStartObject();
+    av.matchAvailability(
+      new OPDSAvailabilityMatcherType<Unit, IOException>() {
+        @Override
+        public Unit onHeldReady(final OPDSAvailabilityHeldReady a)
+          throws IOException {
+          g.writeObjectFieldStart("held_ready");
+          writeTimestampOptional(g, "end_date", a.getEndDate(), fmt);
+          writeURIOptional(g, "revoke", a.getRevoke());
+          g.writeEndObject();
+          return Unit.unit();
+        }
+
+        @Override
+        public Unit onHeld(final OPDSAvailabilityHeld a)
+          throws IOException {
+          g.writeObjectFieldStart("held");
+          writeTimestampOptional(g, "start_date", a.getStartDate(), fmt);
+          final OptionType<Integer> position_opt = a.getPosition();
+          if (position_opt.isSome()) {
+            g.writeNumberField("position", ((Some<Integer>) position_opt).get());
+          }
+          writeURIOptional(g, "revoke", a.getRevoke());
+          g.writeEndObject();
+          return Unit.unit();
+        }
+
+        @Override
+        public Unit onHoldable(final OPDSAvailabilityHoldable a)
+          throws IOException {
+          g.writeObjectFieldStart("holdable");
+          g.writeEndObject();
+          return Unit.unit();
+        }
+
+        @Override
+        public Unit onLoaned(final OPDSAvailabilityLoaned a)
+          throws IOException {
+          g.writeObjectFieldStart("loaned");
+          writeTimestampOptional(g, "start_date", a.getStartDate(), fmt);
+          writeTimestampOptional(g, "end_date", a.getEndDate(), fmt);
+          writeURIOptional(g, "revoke", a.getRevoke());
+          g.writeEndObject();
+          return Unit.unit();
+        }
+
+        @Override
+        public Unit onLoanable(final OPDSAvailabilityLoanable a)
+          throws IOException {
+          g.writeObjectFieldStart("loanable");
+          g.writeEndObject();
+          return Unit.unit();
+        }
+
+        @Override
+        public Unit onOpenAccess(final OPDSAvailabilityOpenAccess a)
+          throws IOException {
+          g.writeObjectFieldStart("open_access");
+          writeURIOptional(g, "revoke", a.getRevoke());
+          g.writeEndObject();
+          return Unit.unit();
+        }
+
+        @Override
+        public Unit onRevoked(final OPDSAvailabilityRevoked a)
+          throws IOException {
+          g.writeObjectFieldStart("revoked");
+          g.writeStringField("revoke", a.getRevoke().toString());
+          g.writeEndObject();
+          return Unit.unit();
+        }
+      });
+    g.writeEndObject();
+  }
+
+  private static void writeTimestampOptional(
+    final JsonGenerator g,
+    final String name,
+    final OptionType<DateTime> time_opt,
+    final DateTimeFormatter fmt)
+    throws IOException {
+    if (time_opt.isSome()) {
+      g.writeStringField(name, fmt.print(((Some<DateTime>) time_opt).get()));
+    }
+  }
+
   @Override
   public void serializeToStream(
     final ObjectNode d,
@@ -37,6 +37,24 @@ public interface OPDSJSONSerializerType {
     OPDSAcquisitionFeedEntry e)
     throws OPDSSerializationException;
 
+  /**
+   * Serialize the given feed entry directly to the given output stream. The
+   * entry is written token-by-token without constructing an intermediate JSON
+   * tree or string, and the output is identical to that produced by
+   * {@link #serializeFeedEntry(OPDSAcquisitionFeedEntry)} followed by
+   * {@link #serializeToStream(ObjectNode, OutputStream)}. The stream is
+   * flushed but not closed.
+   *
+   * @param e  The feed entry
+   * @param os The output stream
+   * @throws IOException On I/O or serialization errors
+   */
+
+  void serializeFeedEntryToStream(
+    OPDSAcquisitionFeedEntry e,
+    OutputStream os)
+    throws IOException;
+
   /**
    * Serialize the given availability type to JSON.
    *
@@ -1,6 +1,6 @@
 package org.nypl.simplified.patron
 
-import com.fasterxml.jackson.databind.ObjectMapper
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.patron.api.PatronUserProfileParserType
 import org.nypl.simplified.patron.api.PatronUserProfileParsersType
 import java.io.InputStream
@@ -12,7 +12,7 @@ import java.net.URI
 
 class PatronUserProfileParsers : PatronUserProfileParsersType {
 
-  private val mapper = ObjectMapper()
+  private val mapper = JSONCodecs.mapper()
 
   override fun createParser(
     uri: URI,
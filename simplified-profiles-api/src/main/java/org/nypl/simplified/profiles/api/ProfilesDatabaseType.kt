@@ -5,6 +5,7 @@ import com.io7m.jfunctional.OptionType
 import org.nypl.simplified.accounts.api.AccountProviderType
 
 import java.io.File
+import java.io.IOException
 import java.util.SortedMap
 
 /**
@@ -129,4 +130,15 @@ interface ProfilesDatabaseType {
 
   @Throws(ProfileNoneCurrentException::class)
   fun currentProfileUnsafe(): ProfileType
+
+  /**
+   * Write any profile changes that are being held in memory to disk. Profile descriptions
+   * are persisted shortly after being changed; this method should be called when the
+   * application is paused or shut down so that recent changes are not lost.
+   *
+   * @throws IOException If any changes could not be written; they are retried by the next flush
+   */
+
+  @Throws(IOException::class)
+  fun flushPendingWrites()
 }
@@ -239,6 +239,16 @@ interface ProfilesControllerType {
     update: (ProfileDescription) -> ProfileDescription
   ): FluentFuture<ProfileUpdated>
 
+  /**
+   * Write any profile changes that are being held in memory to disk. This should be called
+   * when the application is paused or stopped.
+   *
+   * @return A future that completes when all pending changes have been written, or fails if
+   * any of them could not be written
+   */
+
+  fun profileFlushPendingWrites(): FluentFuture<Unit>
+
   /**
    * Produce a feed of all the books in the current profile.
    *
@@ -120,8 +120,17 @@ internal class Profile internal constructor(
         }
       }
 
-      ProfilesDatabases.writeDescription(this.directory, newDescription)
+      if (newDescription == this.descriptionCurrent) {
+        return
+      }
+
+      /*
+       * The description is updated in memory immediately, and written to disk shortly
+       * afterwards by the database's description writer.
+       */
+
       this.descriptionCurrent = newDescription
+      this.owner!!.descriptionWriter.schedule(this.directory, newDescription)
     }
 
     this.logProfileModified()
@@ -0,0 +1,246 @@
+package org.nypl.simplified.profiles
+
+import org.nypl.simplified.files.FileUtilities
+import org.nypl.simplified.json.core.JSONCodecs
+import org.nypl.simplified.profiles.api.ProfileDescription
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.IOException
+import java.util.Collections
+import java.util.WeakHashMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import javax.annotation.concurrent.GuardedBy
+
+/**
+ * A single writer that persists profile descriptions to disk.
+ *
+ * Profile descriptions can be updated many times a second (reader preference sliders, for
+ * example, update the profile on every change). Rather than writing `profile.json` on every
+ * update, descriptions are queued here and written after a short delay; a description that
+ * is replaced before the delay expires is never written. A description that serializes to
+ * exactly the content already on disk is not written at all.
+ *
+ * Writers created with [create] share one daemon thread, and are flushed by a single
+ * shutdown hook when the process exits. A writer that is no longer used can be garbage
+ * collected along with its database.
+ */
+
+internal class ProfileDescriptionWriter(
+  private val executor: ScheduledExecutorService,
+  private val delayMilliseconds: Long
+) {
+
+  companion object {
+
+    private val logger =
+      LoggerFactory.getLogger(ProfileDescriptionWriter::class.java)
+
+    private val sharedExecutor =
+      ScheduledThreadPoolExecutor(1) { runnable ->
+        val thread = Thread(runnable, "simplified-profile-writer")
+        thread.isDaemon = true
+        thread
+      }.apply {
+        this.setKeepAliveTime(5L, TimeUnit.SECONDS)
+        this.allowCoreThreadTimeOut(true)
+      }
+
+    @GuardedBy("liveWriters")
+    private val liveWriters =
+      Collections.newSetFromMap(WeakHashMap<ProfileDescriptionWriter, Boolean>())
+
+    init {
+
+      /*
+       * The writer thread is a daemon thread, and so pending descriptions would be lost if
+       * the process exits before the write delay expires.
+       */
+
+      Runtime.getRuntime().addShutdownHook(
+        Thread({ this.flushAll() }, "simplified-profile-writer-shutdown")
+      )
+    }
+
+    /**
+     * Create a writer that runs on the shared writer thread and is flushed on shutdown.
+     */
+
+    fun create(delayMilliseconds: Long): ProfileDescriptionWriter {
+      val writer = ProfileDescriptionWriter(this.sharedExecutor, delayMilliseconds)
+      synchronized(this.liveWriters) {
+        this.liveWriters.add(writer)
+      }
+      return writer
+    }
+
+    private fun flushAll() {
+      val writers = synchronized(this.liveWriters) {
+        this.liveWriters.toList()
+      }
+      for (writer in writers) {
+        try {
+          writer.flush()
+        } catch (e: Exception) {
+          this.logger.error("could not write profile descriptions on shutdown: ", e)
+        }
+      }
+    }
+  }
+
+  private val logger =
+    LoggerFactory.getLogger(ProfileDescriptionWriter::class.java)
+
+  /**
+   * The descriptions waiting to be written, keyed by profile directory.
+   */
+
+  private val pending =
+    ConcurrentHashMap<File, ProfileDescription>()
+
+  /**
+   * The serialized content most recently written to (or read from) each profile directory.
+   */
+
+  private val written =
+    ConcurrentHashMap<File, String>()
+
+  private val writeLock = Any()
+
+  private val scheduleLock = Any()
+  @GuardedBy("scheduleLock")
+  private var scheduled: ScheduledFuture<*>? = null
+
+  /**
+   * Queue the given description to be written to the given profile directory. Any description
+   * already queued for the directory is replaced.
+   */
+
+  fun schedule(
+    directory: File,
+    description: ProfileDescription
+  ) {
+    this.pending[directory] = description
+
+    synchronized(this.scheduleLock) {
+      if (this.scheduled == null) {
+        this.scheduled =
+          this.executor.schedule(
+            { this.onScheduledWrite() },
+            this.delayMilliseconds,
+            TimeUnit.MILLISECONDS
+          )
+      }
+    }
+  }
+
+  private fun onScheduledWrite() {
+
+    /*
+     * Descriptions queued from this point onwards are picked up by a new scheduled write.
+     */
+
+    synchronized(this.scheduleLock) {
+      this.scheduled = null
+    }
+    this.writePending()
+  }
+
+  /**
+   * Record that the given description has just been written to the given profile directory
+   * by some other means (such as when a profile is first created).
+   */
+
+  fun written(
+    directory: File,
+    description: ProfileDescription
+  ) {
+    this.written[directory] = this.serialize(description)
+  }
+
+  /**
+   * Discard any pending write for the given profile directory. This is used when the profile
+   * is deleted, as writing the description would otherwise recreate the directory.
+   */
+
+  fun cancel(directory: File) {
+    synchronized(this.writeLock) {
+      this.pending.remove(directory)
+      this.written.remove(directory)
+    }
+  }
+
+  /**
+   * Write all pending descriptions on the calling thread, and wait for any write already in
+   * progress to complete.
+   *
+   * @throws IOException If any description could not be written; the descriptions that could
+   * not be written remain pending
+   */
+
+  @Throws(IOException::class)
+  fun flush() {
+    val failures = this.writePending()
+    if (failures.isNotEmpty()) {
+      val exception = IOException("Could not write ${failures.size} profile description(s)")
+      failures.forEach(exception::addSuppressed)
+      throw exception
+    }
+  }
+
+  private fun writePending(): List<Exception> {
+    val failures = mutableListOf<Exception>()
+    synchronized(this.writeLock) {
+      for (directory in this.pending.keys.toList()) {
+        val description = this.pending.remove(directory) ?: continue
+        try {
+          this.writeIfChanged(directory, description)
+        } catch (e: Exception) {
+          this.logger.error("[{}]: could not write profile description: ", directory, e)
+
+          /*
+           * Keep the description so that the next flush retries it, unless a newer
+           * description has been queued in the meantime.
+           */
+
+          this.pending.putIfAbsent(directory, description)
+          failures.add(e)
+        }
+      }
+    }
+    return failures
+  }
+
+  @Throws(IOException::class)
+  private fun writeIfChanged(
+    directory: File,
+    description: ProfileDescription
+  ) {
+    val text = this.serialize(description)
+    val previous = this.written[directory] ?: this.readExisting(directory)
+    if (text == previous) {
+      this.logger.debug("[{}]: profile description unchanged, not writing", directory)
+      this.written[directory] = text
+      return
+    }
+
+    ProfilesDatabases.writeDescriptionText(directory, text)
+    this.written[directory] = text
+  }
+
+  private fun readExisting(directory: File): String? {
+    return try {
+      val file = File(directory, "profile.json")
+      if (file.isFile) FileUtilities.fileReadUTF8(file) else null
+    } catch (e: IOException) {
+      null
+    }
+  }
+
+  private fun serialize(description: ProfileDescription): String {
+    return ProfileDescriptionJSON.serializeToString(JSONCodecs.mapper(), description)
+  }
+}
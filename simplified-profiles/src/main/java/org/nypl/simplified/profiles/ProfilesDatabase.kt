@@ -63,6 +63,15 @@ internal class ProfilesDatabase internal constructor(
   @GuardedBy("profileCurrentLock")
   private var profileCurrent: ProfileID? = null
 
+  /**
+   * The writer through which all profiles in the database persist their descriptions.
+   */
+
+  internal val descriptionWriter: ProfileDescriptionWriter =
+    ProfileDescriptionWriter.create(
+      delayMilliseconds = ProfilesDatabases.DESCRIPTION_WRITE_DELAY_MILLISECONDS
+    )
+
   /**
    * Perform an unchecked (but safe) cast of the given map type. The cast is safe because
    * `V <: VB`.
@@ -145,6 +154,7 @@ internal class ProfilesDatabase internal constructor(
 
     this.profiles[profile.id] = profile
     profile.setOwner(this)
+    this.descriptionWriter.written(profile.directory, profile.description())
 
     logProfileCreated(profile)
     return profile
@@ -224,10 +234,16 @@ internal class ProfilesDatabase internal constructor(
         this.profileCurrent = null
       }
 
+      this.descriptionWriter.cancel(profile.directory)
       DirectoryUtilities.directoryDelete(profile.directory)
     }
   }
 
+  @Throws(IOException::class)
+  override fun flushPendingWrites() {
+    this.descriptionWriter.flush()
+  }
+
   private fun logProfileCreated(profile: Profile) {
     this.analytics.publishEvent(
       AnalyticsEvent.ProfileCreated(
@@ -20,6 +20,7 @@ import org.nypl.simplified.analytics.api.AnalyticsType
 import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.files.FileLocking
 import org.nypl.simplified.files.FileUtilities
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.profiles.api.ProfileAttributes
 import org.nypl.simplified.profiles.api.ProfileDatabaseAccountsException
 import org.nypl.simplified.profiles.api.ProfileDatabaseException
@@ -52,6 +53,13 @@ object ProfilesDatabases {
   val ANONYMOUS_PROFILE_ID =
     ProfileID(UUID(0L, 0L))
 
+  /**
+   * The time that profile description changes are held in memory before being written to
+   * disk. Changes made within this period are coalesced into a single write.
+   */
+
+  const val DESCRIPTION_WRITE_DELAY_MILLISECONDS = 1_000L
+
   /**
    * Open a profile database from the given directory, creating a new database if one does not
    * exist. The anonymous profile will not be enabled, and will be ignored even if one is present
@@ -76,7 +84,7 @@ object ProfilesDatabases {
     this.logger.debug("opening profile database: {}", directory)
 
     val profiles = ConcurrentSkipListMap<ProfileID, Profile>()
-    val jom = ObjectMapper()
+    val jom = JSONCodecs.mapper()
 
     val errors = ArrayList<Exception>()
     this.openAllProfiles(
@@ -189,7 +197,7 @@ object ProfilesDatabases {
     this.logger.debug("opening profile database: {}", directory)
 
     val profiles = ConcurrentSkipListMap<ProfileID, Profile>()
-    val jom = ObjectMapper()
+    val jom = JSONCodecs.mapper()
 
     val errors = ArrayList<Exception>()
     this.openAllProfiles(
@@ -643,6 +651,17 @@ object ProfilesDatabases {
   internal fun writeDescription(
     directory: File,
     newDescription: ProfileDescription
+  ) {
+    this.writeDescriptionText(
+      directory,
+      ProfileDescriptionJSON.serializeToString(JSONCodecs.mapper(), newDescription)
+    )
+  }
+
+  @Throws(IOException::class)
+  internal fun writeDescriptionText(
+    directory: File,
+    text: String
   ) {
     val profileLock =
       File(directory, "lock")
@@ -665,7 +684,8 @@ object ProfilesDatabases {
       FileUtilities.fileWriteUTF8Atomically(
         profileFile,
         profileFileTemp,
-        ProfileDescriptionJSON.serializeToString(ObjectMapper(), newDescription)
+        text,
+        FileUtilities.Durability.DIRECTORY
       )
     }
   }
@@ -11,6 +11,7 @@ import org.librarysimplified.http.api.LSHTTPRequestBuilderType.Method.Put
 import org.librarysimplified.http.api.LSHTTPResponseStatus
 import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP
 import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
+import org.nypl.simplified.json.core.JSONCodecs
 import org.nypl.simplified.json.core.JSONParserUtilities
 import org.nypl.simplified.reader.bookmarks.api.BookmarkAnnotation
 import org.nypl.simplified.reader.bookmarks.api.BookmarkAnnotationsJSON
@@ -208,6 +209,6 @@ class ReaderBookmarkHTTPCalls(
     settingsNode.put("simplified:synchronize_annotations", enabled)
     val node = this.objectMapper.createObjectNode()
     node.put("settings", settingsNode)
-    return this.objectMapper.writeValueAsBytes(node)
+    return JSONCodecs.compactWriter().writeValueAsBytes(node)
   }
 }
@@ -4,6 +4,7 @@ import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
 import androidx.core.content.FileProvider
+import org.nypl.simplified.metrics.api.StartupTracing
 import org.nypl.simplified.reports.Reports.Result.NoFiles
 import org.nypl.simplified.reports.Reports.Result.RaisedException
 import org.nypl.simplified.reports.Reports.Result.Sent
@@ -50,7 +51,8 @@ object Reports {
   }
 
   /**
-   * Try to send a report using the default settings.
+   * Try to send a report using the default settings. If tracing is enabled, the current
+   * trace is attached to the report.
    */
 
   @JvmStatic
@@ -64,21 +66,26 @@ object Reports {
       arrayListOf(cacheDir, File(cacheDir, "migrations"))
     } ?: emptyList()
 
+    StartupTracing.writeTrace(context)
+
     return sendReport(
       context = context,
       baseDirectories = directories,
       address = address,
       subject = subject,
       body = body,
-      includeFile = this::isLogFileOrMigrationReport
+      includeFile = this::isLogFileOrMigrationReportOrTrace
     )
   }
 
   @JvmStatic
-  private fun isLogFileOrMigrationReport(name: String): Boolean {
+  private fun isLogFileOrMigrationReportOrTrace(name: String): Boolean {
     if (name.startsWith("report-") && name.endsWith(".xml")) {
       return true
     }
+    if (name == StartupTracing.TRACE_FILE_NAME) {
+      return true
+    }
     return name.startsWith("log.txt")
   }
 
@@ -5,39 +5,39 @@ import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
 import android.graphics.Path;
 import android.graphics.RectF;
 import android.graphics.Region.Op;
-import android.graphics.Typeface;
 import android.text.Layout;
 import android.text.StaticLayout;
 import android.text.TextPaint;
 import com.io7m.jnull.NullCheck;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
 /**
  * The default implementation of the {@link TenPrintGeneratorType} interface.
  */
 
 public final class TenPrintGenerator implements TenPrintGeneratorType
 {
-  private static final List<Character> C64_CHARACTER_LIST;
-  private static final Set<Character>  C64_CHARACTER_SET;
-  private static final int             TITLE_LENGTH_MAX;
-  private static final int             TITLE_LENGTH_MIN;
+  private static final String C64_CHARACTERS;
+  private static final int    TITLE_LENGTH_MAX;
+  private static final int    TITLE_LENGTH_MIN;
+
+  private static final ThreadLocal<TenPrintRenderState> RENDER_STATE =
+    new ThreadLocal<TenPrintRenderState>()
+    {
+      @Override protected TenPrintRenderState initialValue()
+      {
+        return new TenPrintRenderState();
+      }
+    };
 
   static {
     TITLE_LENGTH_MIN = 2;
     TITLE_LENGTH_MAX = 60;
-    C64_CHARACTER_LIST = TenPrintGenerator.getC64Characters();
-    C64_CHARACTER_SET =
-      new HashSet<Character>(TenPrintGenerator.C64_CHARACTER_LIST);
+    C64_CHARACTERS =
+      " qQwWeErRtTyYuUiIoOpPaAsSdDfFgGhHjJkKlL:zZxXcCvVbBnNmM1234567890.";
   }
 
   private TenPrintGenerator()
@@ -53,45 +53,31 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
     return Math.min(Math.max(v, x0), x1);
   }
 
-  private static List<Character> getC64Characters()
-  {
-    final String base =
-      " qQwWeErRtTyYuUiIoOpPaAsSdDfFgGhHjJkKlL:zZxXcCvVbBnNmM1234567890.";
-    final List<Character> chars = new ArrayList<Character>(base.length());
-    for (int index = 0; index < base.length(); ++index) {
-      final Character c = Character.valueOf(base.charAt(index));
-      chars.add(c);
-    }
-    return chars;
-  }
+  /**
+   * @return The C64 character that will be drawn in the given grid cell for the given title
+   */
 
-  private static String getC64String(
-    final String s)
+  private static char getC64Character(
+    final String title,
+    final int cell)
   {
-    final Set<Character> c64_set = TenPrintGenerator.C64_CHARACTER_SET;
-    final List<Character> c64_seq = TenPrintGenerator.C64_CHARACTER_LIST;
-
     final String text;
-    if (s.isEmpty()) {
+    if (title.isEmpty()) {
       text = "default";
     } else {
-      text = s;
+      text = title;
     }
 
-    final StringBuilder sb = new StringBuilder(text.length());
-    for (int index = 0; index < text.length(); ++index) {
-      final char c = text.charAt(index);
-      final Character cc = Character.valueOf(c);
-      if (c64_set.contains(cc)) {
-        sb.append(c);
-      } else {
-        sb.append(c64_seq.get((int) c % c64_seq.size()));
-      }
+    final String c64 = TenPrintGenerator.C64_CHARACTERS;
+    final char c = text.charAt(cell % text.length());
+    if (c64.indexOf(c) >= 0) {
+      return c;
     }
-    return NullCheck.notNull(sb.toString());
+    return c64.charAt((int) c % c64.length());
   }
 
   private static int getColorBase(
+    final TenPrintRenderState state,
     final TenPrintInput i,
     final int text_length)
   {
@@ -102,12 +88,15 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         80.0, 0.0, 360.0);
     final float base_saturation = i.getBaseSaturation();
     final float base_brightness = i.getBaseBrightness();
-    final float[] base_hsv = {
-      base_hue, base_saturation, base_brightness, };
+    final float[] base_hsv = state.hsv;
+    base_hsv[0] = base_hue;
+    base_hsv[1] = base_saturation;
+    base_hsv[2] = base_brightness;
     return Color.HSVToColor(base_hsv);
   }
 
   private static int getColorShape(
+    final TenPrintRenderState state,
     final TenPrintInput i,
     final int text_length)
   {
@@ -117,8 +106,10 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
 
     final float shape_saturation = i.getBaseSaturation();
     final float shape_brightness = i.getBaseBrightness();
-    final float[] shape_hsv = {
-      shape_hue, shape_saturation, shape_brightness, };
+    final float[] shape_hsv = state.hsv;
+    shape_hsv[0] = shape_hue;
+    shape_hsv[1] = shape_saturation;
+    shape_hsv[2] = shape_brightness;
     return Color.HSVToColor(shape_hsv);
   }
 
@@ -171,7 +162,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
   }
 
   private static void renderEllipse(
-    final Canvas canvas,
+    final TenPrintRenderState state,
     final int x,
     final int y,
     final int w,
@@ -180,12 +171,13 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
   {
     final float right = (float) (x + w);
     final float bottom = (float) (y + h);
-    final RectF oval = new RectF((float) x, (float) y, right, bottom);
-    canvas.drawOval(oval, p);
+    final RectF oval = state.rect;
+    oval.set((float) x, (float) y, right, bottom);
+    state.canvas.drawOval(oval, p);
   }
 
   private static void renderEllipseCenter(
-    final Canvas canvas,
+    final TenPrintRenderState state,
     final int x,
     final int y,
     final int w,
@@ -196,21 +188,24 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
     final float top = (float) (y - (h / 2));
     final float right = (float) (x + (w / 2));
     final float bottom = (float) (y + (h / 2));
-    final RectF oval = new RectF(left, top, right, bottom);
-    canvas.drawOval(oval, p);
+    final RectF oval = state.rect;
+    oval.set(left, top, right, bottom);
+    state.canvas.drawOval(oval, p);
   }
 
   private static void renderGridCharacter(
-    final Canvas canvas,
+    final TenPrintRenderState state,
+    final TenPrintGlyphPaths glyphs,
     final TenPrintInput i,
-    final Paint paint_base,
-    final Paint paint_shape,
     final char c,
     final int x,
     final int y,
     final int grid_size)
   {
-    final int thick = (grid_size * i.getShapeThickness()) / 100;
+    final Canvas canvas = state.canvas;
+    final Paint paint_base = state.paint_base;
+    final Paint paint_shape = state.paint_shape;
+    final int thick = glyphs.getThickness();
     final int thick2 = thick * 2;
     final int thick3 = thick * 3;
     final int x_max = x + grid_size;
@@ -233,47 +228,47 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         case 'q':
         case 'Q': {
           TenPrintGenerator.renderEllipse(
-            canvas, x, y, grid_size, grid_size, paint_shape);
+            state, x, y, grid_size, grid_size, paint_shape);
           break;
         }
         case 'W':
         case 'w': {
           TenPrintGenerator.renderEllipse(
-            canvas, x, y, grid_size, grid_size, paint_shape);
+            state, x, y, grid_size, grid_size, paint_shape);
 
           final int size_smaller = grid_size - thick2;
           TenPrintGenerator.renderEllipse(
-            canvas, x + thick, y + thick, size_smaller, size_smaller, paint_base);
+            state, x + thick, y + thick, size_smaller, size_smaller, paint_base);
           break;
         }
         case 'E':
         case 'e': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y + thick, grid_size, thick, paint_shape);
+            state, x, y + thick, grid_size, thick, paint_shape);
           break;
         }
         case 'R':
         case 'r': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y + (grid_size - thick2), grid_size, thick, paint_shape);
+            state, x, y + (grid_size - thick2), grid_size, thick, paint_shape);
           break;
         }
         case 'T':
         case 't': {
           TenPrintGenerator.renderRectangle(
-            canvas, x + thick, y, thick, grid_size, paint_shape);
+            state, x + thick, y, thick, grid_size, paint_shape);
           break;
         }
         case 'Y':
         case 'y': {
           TenPrintGenerator.renderRectangle(
-            canvas, x + (grid_size - thick2), y, thick, grid_size, paint_shape);
+            state, x + (grid_size - thick2), y, thick, grid_size, paint_shape);
           break;
         }
         case 'U':
         case 'u': {
           TenPrintGenerator.renderRing(
-            canvas,
+            state,
             x,
             y,
             grid_size_double,
@@ -286,7 +281,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         case 'I':
         case 'i': {
           TenPrintGenerator.renderRing(
-            canvas,
+            state,
             x - grid_size,
             y,
             grid_size_double,
@@ -299,69 +294,59 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         case 'O':
         case 'o': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, grid_size, grid_size, paint_shape);
+            state, x, y, grid_size, grid_size, paint_shape);
           TenPrintGenerator.renderRectangle(
-            canvas, x + thick, y + thick, grid_size, grid_size, paint_base);
+            state, x + thick, y + thick, grid_size, grid_size, paint_base);
           break;
         }
         case 'P':
         case 'p': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, grid_size, grid_size, paint_shape);
+            state, x, y, grid_size, grid_size, paint_shape);
           TenPrintGenerator.renderRectangle(
-            canvas, x - thick, y + thick, grid_size, grid_size, paint_base);
+            state, x - thick, y + thick, grid_size, grid_size, paint_base);
           break;
         }
         case 'A':
         case 'a': {
-          final Path p = new Path();
-          p.moveTo((float) x, (float) y_max);
-          p.lineTo((float) x_center, (float) y);
-          p.lineTo((float) x_max, (float) y_max);
-          p.lineTo((float) x, (float) y_max);
-          p.close();
-          canvas.drawPath(p, paint_shape);
+          TenPrintGenerator.renderPaths(
+            state, glyphs.shapePathsFor(c), x, y, paint_shape);
           break;
         }
         case 'S':
         case 's': {
-          final Path p = new Path();
-          p.moveTo((float) x, (float) y);
-          p.lineTo((float) x_center, (float) y_max);
-          p.lineTo((float) x_max, (float) y);
-          p.lineTo((float) x, (float) y);
-          p.close();
-          canvas.drawPath(p, paint_shape);
+          TenPrintGenerator.renderPaths(
+            state, glyphs.shapePathsFor(c), x, y, paint_shape);
           break;
         }
         case 'D':
         case 'd': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y + thick2, grid_size, thick, paint_shape);
+            state, x, y + thick2, grid_size, thick, paint_shape);
           break;
         }
         case 'F':
         case 'f': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y + thick3, grid_size, thick, paint_shape);
+            state, x, y + thick3, grid_size, thick, paint_shape);
           break;
         }
         case 'G':
         case 'g': {
           TenPrintGenerator.renderRectangle(
-            canvas, x + thick2, y, thick, grid_size, paint_shape);
+            state, x + thick2, y, thick, grid_size, paint_shape);
           break;
         }
         case 'H':
         case 'h': {
           TenPrintGenerator.renderRectangle(
-            canvas, x + (grid_size - thick3), y, thick, grid_size, paint_shape);
+            state, x + (grid_size - thick3), y, thick, grid_size, paint_shape);
           break;
         }
         case 'J':
         case 'j': {
           TenPrintGenerator.renderRing(
-            canvas,
+            state,
             x,
             y - grid_size,
             grid_size_double,
@@ -374,7 +359,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         case 'K':
         case 'k': {
           TenPrintGenerator.renderRing(
-            canvas,
+            state,
             x - grid_size,
             y - grid_size,
             grid_size_double,
@@ -387,40 +372,23 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         case 'L':
         case 'l': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, grid_size, grid_size, paint_shape);
+            state, x, y, grid_size, grid_size, paint_shape);
           TenPrintGenerator.renderRectangle(
-            canvas, x + thick, y - thick, grid_size, grid_size, paint_base);
+            state, x + thick, y - thick, grid_size, grid_size, paint_base);
           break;
         }
         case ':': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, grid_size, grid_size, paint_shape);
+            state, x, y, grid_size, grid_size, paint_shape);
           TenPrintGenerator.renderRectangle(
-            canvas, x - thick, y - thick, grid_size, grid_size, paint_base);
+            state, x - thick, y - thick, grid_size, grid_size, paint_base);
           break;
         }
 
         case 'Z':
         case 'z': {
-          {
-            final Path p = new Path();
-            p.moveTo((float) x, (float) y_center);
-            p.lineTo((float) x_center, (float) y);
-            p.lineTo((float) x_max, (float) y_center);
-            p.lineTo((float) x, (float) y_center);
-            p.close();
-            canvas.drawPath(p, paint_shape);
-          }
-
-          {
-            final Path p = new Path();
-            p.moveTo((float) x, (float) y_center);
-            p.lineTo((float) x_center, (float) y_max);
-            p.lineTo((float) x_max, (float) y_center);
-            p.lineTo((float) x, (float) y_center);
-            p.close();
-            canvas.drawPath(p, paint_shape);
-          }
+          TenPrintGenerator.renderPaths(
+            state, glyphs.shapePathsFor(c), x, y, paint_shape);
           break;
         }
 
@@ -428,152 +396,65 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         case 'x': {
           final int gs_3 = grid_size / 3;
           TenPrintGenerator.renderEllipseCenter(
-            canvas, x_center, y + gs_3, thick2, thick2, paint_shape);
+            state, x_center, y + gs_3, thick2, thick2, paint_shape);
           TenPrintGenerator.renderEllipseCenter(
-            canvas, x + gs_3, y_max - gs_3, thick2, thick2, paint_shape);
+            state, x + gs_3, y_max - gs_3, thick2, thick2, paint_shape);
           TenPrintGenerator.renderEllipseCenter(
-            canvas, x_max - gs_3, y_max - gs_3, thick2, thick2, paint_shape);
+            state, x_max - gs_3, y_max - gs_3, thick2, thick2, paint_shape);
           break;
         }
 
         case 'C':
         case 'c': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y + thick3, grid_size, thick, paint_shape);
+            state, x, y + thick3, grid_size, thick, paint_shape);
           break;
         }
 
         case 'V':
         case 'v': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, grid_size, grid_size, paint_shape);
-
-          {
-            final Path p = new Path();
-            p.moveTo((float) x, (float) (y + thick));
-            p.lineTo((float) (x_center - thick), (float) y_center);
-            p.lineTo((float) x, (float) (y_max - thick));
-            p.lineTo((float) x, (float) (y + thick));
-            p.close();
-            canvas.drawPath(p, paint_base);
-          }
-
-          {
-            final Path p = new Path();
-            p.moveTo((float) x_max, (float) (y + thick));
-            p.lineTo((float) (x_center + thick), (float) y_center);
-            p.lineTo((float) x_max, (float) (y_max - thick));
-            p.lineTo((float) x_max, (float) (y + thick));
-            p.close();
-            canvas.drawPath(p, paint_base);
-          }
-
-          {
-            final Path p = new Path();
-            p.moveTo((float) x_max, (float) (y + thick));
-            p.lineTo((float) (x_center + thick), (float) y_center);
-            p.lineTo((float) x_max, (float) (y_max - thick));
-            p.lineTo((float) x_max, (float) (y + thick));
-            p.close();
-            canvas.drawPath(p, paint_base);
-          }
-
-          {
-            final Path p = new Path();
-            p.moveTo((float) (x + thick), (float) y_max);
-            p.lineTo((float) x_center, (float) (y_center + thick));
-            p.lineTo((float) (x_max - thick), (float) y_max);
-            p.lineTo((float) (x + thick), (float) y_max);
-            p.close();
-            canvas.drawPath(p, paint_base);
-          }
-
-          {
-            final Path p = new Path();
-            p.moveTo((float) (x + thick), (float) y);
-            p.lineTo((float) x_center, (float) (y_center - thick));
-            p.lineTo((float) (x_max - thick), (float) y);
-            p.lineTo((float) (x + thick), (float) y);
-            p.close();
-            canvas.drawPath(p, paint_base);
-          }
-
+            state, x, y, grid_size, grid_size, paint_shape);
+          TenPrintGenerator.renderPaths(
+            state, glyphs.basePathsFor(c), x, y, paint_base);
           break;
         }
 
         case 'B':
         case 'b': {
           TenPrintGenerator.renderRectangle(
-            canvas, x + thick3, y, thick, grid_size, paint_shape);
+            state, x + thick3, y, thick, grid_size, paint_shape);
           break;
         }
 
         case 'N':
         case 'n': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, grid_size, grid_size, paint_shape);
-
-          {
-            final Path p = new Path();
-            p.moveTo((float) x, (float) y);
-            p.lineTo((float) (x_max - thick), (float) y);
-            p.lineTo((float) x, (float) (y_max - thick));
-            p.lineTo((float) x, (float) y);
-            p.close();
-            canvas.drawPath(p, paint_base);
-          }
-
-          {
-            final Path p = new Path();
-            p.moveTo((float) (x + thick), (float) y_max);
-            p.lineTo((float) (x_max + thick), (float) y_max);
-            p.lineTo((float) (x_max + thick), (float) y);
-            p.lineTo((float) (x + thick), (float) y_max);
-            p.close();
-            canvas.drawPath(p, paint_base);
-          }
-
+            state, x, y, grid_size, grid_size, paint_shape);
+          TenPrintGenerator.renderPaths(
+            state, glyphs.basePathsFor(c), x, y, paint_base);
           break;
         }
 
         case 'M':
         case 'm': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, grid_size, grid_size, paint_shape);
-
-          {
-            final Path p = new Path();
-            p.moveTo((float) x, (float) (y + thick));
-            p.lineTo((float) x, (float) (y_max + thick));
-            p.lineTo((float) x_max, (float) (y_max + thick));
-            p.lineTo((float) x, (float) (y + thick));
-            p.close();
-            canvas.drawPath(p, paint_base);
-          }
-
-          {
-            final Path p = new Path();
-            p.moveTo((float) x, (float) (y - thick));
-            p.lineTo((float) x_max, (float) (y_max - thick));
-            p.lineTo((float) x_max, (float) (y - thick));
-            p.lineTo((float) x, (float) (y - thick));
-            p.close();
-            canvas.drawPath(p, paint_base);
-          }
-
+            state, x, y, grid_size, grid_size, paint_shape);
+          TenPrintGenerator.renderPaths(
+            state, glyphs.basePathsFor(c), x, y, paint_base);
           break;
         }
 
         case '0': {
           TenPrintGenerator.renderRectangle(
-            canvas,
+            state,
             x_center - (thick / 2),
             y_center - (thick / 2),
             thick,
             (grid_size / 2) + (thick / 2),
             paint_shape);
           TenPrintGenerator.renderRectangle(
-            canvas,
+            state,
             x_center - (thick / 2),
             y_center - (thick / 2),
             (grid_size / 2) + thick,
@@ -585,9 +466,9 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
 
         case '1': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y_center - (thick / 2), grid_size, thick, paint_shape);
+            state, x, y_center - (thick / 2), grid_size, thick, paint_shape);
           TenPrintGenerator.renderRectangle(
-            canvas,
+            state,
             x_center - (thick / 2),
             y,
             thick,
@@ -599,10 +480,10 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
 
         case '2': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y_center - (thick / 2), grid_size, thick, paint_shape);
+            state, x, y_center - (thick / 2), grid_size, thick, paint_shape);
 
           TenPrintGenerator.renderRectangle(
-            canvas,
+            state,
             x_center - (thick / 2),
             y_center - (thick / 2),
             thick,
@@ -614,55 +495,55 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
 
         case '3': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y_center - (thick / 2), grid_size / 2, thick, paint_shape);
+            state, x, y_center - (thick / 2), grid_size / 2, thick, paint_shape);
 
           TenPrintGenerator.renderRectangle(
-            canvas, x_center - (thick / 2), y, thick, grid_size, paint_shape);
+            state, x_center - (thick / 2), y, thick, grid_size, paint_shape);
 
           break;
         }
 
         case '4': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, thick2, grid_size, paint_shape);
+            state, x, y, thick2, grid_size, paint_shape);
           break;
         }
 
         case '5': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, thick3, grid_size, paint_shape);
+            state, x, y, thick3, grid_size, paint_shape);
           break;
         }
 
         case '6': {
           TenPrintGenerator.renderRectangle(
-            canvas, x_max - thick3, y, thick3, grid_size, paint_shape);
+            state, x_max - thick3, y, thick3, grid_size, paint_shape);
           break;
         }
 
         case '7': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, grid_size, thick2, paint_shape);
+            state, x, y, grid_size, thick2, paint_shape);
           break;
         }
 
         case '8': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, grid_size, thick3, paint_shape);
+            state, x, y, grid_size, thick3, paint_shape);
           break;
         }
 
         case '9': {
           TenPrintGenerator.renderRectangle(
-            canvas, x, y, thick, grid_size, paint_shape);
+            state, x, y, thick, grid_size, paint_shape);
           TenPrintGenerator.renderRectangle(
-            canvas, x, y_max - thick3, grid_size, thick3, paint_shape);
+            state, x, y_max - thick3, grid_size, thick3, paint_shape);
           break;
         }
 
         case '.': {
           TenPrintGenerator.renderRectangle(
-            canvas,
+            state,
             x_center - (thick / 2),
             y_center - (thick / 2),
             thick,
@@ -670,7 +551,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
             paint_shape);
 
           TenPrintGenerator.renderRectangle(
-            canvas,
+            state,
             x,
             y_center - (thick / 2),
             (grid_size / 2) + (thick / 2),
@@ -681,10 +562,10 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
       }
 
       if (i.debugArtworkEnabled()) {
-        final Paint pt = new Paint();
-        pt.setColor(Color.BLACK);
-        pt.setTextSize(16.0f);
-        canvas.drawText(Character.toString(c),
+        final Paint pt = state.paint_debug;
+        pt.setStyle(Style.FILL);
+        state.debug_char[0] = c;
+        canvas.drawText(state.debug_char, 0, 1,
                         (float) (x + 10),
                         (float) (y_max - 16), pt);
 
@@ -707,12 +588,13 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
   }
 
   private static void renderLabel(
-    final Canvas canvas,
+    final TenPrintRenderState state,
     final TenPrintInput i,
     final int cw,
     final int ch,
     final int start_y)
   {
+    final Canvas canvas = state.canvas;
     final int margin = (i.getCoverHeight() * i.getMargin()) / 100;
     final int margin_half = margin / 2;
 
@@ -721,16 +603,12 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
      */
 
     {
-      final Paint paint_label = new Paint();
-      paint_label.setColor(Color.WHITE);
-      paint_label.setAntiAlias(true);
-      paint_label.setFilterBitmap(true);
       canvas.clipRect(
         (float) margin_half,
         (float) margin_half,
         (float) (cw - margin_half),
         (float) start_y, Op.INTERSECT);
-      canvas.drawRect(0.0F, 0.0F, (float) cw, (float) ch, paint_label);
+      canvas.drawRect(0.0F, 0.0F, (float) cw, (float) ch, state.paint_label);
     }
 
     /**
@@ -738,24 +616,12 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
      */
 
     final float title_size = (float) i.getCoverWidth() * 0.08f;
-    final TextPaint title_paint = new TextPaint();
-    title_paint.setColor(Color.BLACK);
+    final TextPaint title_paint = state.paint_title;
     title_paint.setTextSize(title_size);
-    title_paint.setTextAlign(Align.LEFT);
-    title_paint.setTypeface(
-      Typeface.create(
-        Typeface.SANS_SERIF, Typeface.BOLD));
-    title_paint.setAntiAlias(true);
 
     final float author_size = (float) i.getCoverWidth() * 0.07f;
-    final TextPaint author_paint = new TextPaint();
-    author_paint.setColor(Color.BLACK);
+    final TextPaint author_paint = state.paint_author;
     author_paint.setTextSize(author_size);
-    author_paint.setTextAlign(Align.LEFT);
-    author_paint.setTypeface(
-      Typeface.create(
-        Typeface.SANS_SERIF, Typeface.NORMAL));
-    author_paint.setAntiAlias(true);
 
     final int text_width = canvas.getWidth() - (margin * 2);
     final StaticLayout title_layout = new StaticLayout(
@@ -791,7 +657,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
   }
 
   private static void renderRectangle(
-    final Canvas canvas,
+    final TenPrintRenderState state,
     final int x,
     final int y,
     final int w,
@@ -800,12 +666,27 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
   {
     final float right = (float) (x + w);
     final float bottom = (float) (y + h);
-    final RectF r = new RectF((float) x, (float) y, right, bottom);
-    canvas.drawRect(r, p);
+    final RectF r = state.rect;
+    r.set((float) x, (float) y, right, bottom);
+    state.canvas.drawRect(r, p);
+  }
+
+  private static void renderPaths(
+    final TenPrintRenderState state,
+    final Path[] paths,
+    final int x,
+    final int y,
+    final Paint p)
+  {
+    final Path offset = state.path;
+    for (int index = 0; index < paths.length; ++index) {
+      paths[index].offset((float) x, (float) y, offset);
+      state.canvas.drawPath(offset, p);
+    }
   }
 
   private static void renderRing(
-    final Canvas c,
+    final TenPrintRenderState state,
     final int x,
     final int y,
     final int w,
@@ -817,8 +698,9 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
     {
       final float right = (float) (x + w);
       final float bottom = (float) (y + h);
-      final RectF oval = new RectF((float) x, (float) y, right, bottom);
-      c.drawOval(oval, p);
+      final RectF oval = state.rect;
+      oval.set((float) x, (float) y, right, bottom);
+      state.canvas.drawOval(oval, p);
     }
 
     {
@@ -826,8 +708,9 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
       final float top = (float) (y + thick);
       final float right = (float) (x + (w - thick));
       final float bottom = (float) (y + (h - thick));
-      final RectF oval = new RectF(left, top, right, bottom);
-      c.drawOval(oval, q);
+      final RectF oval = state.rect;
+      oval.set(left, top, right, bottom);
+      state.canvas.drawOval(oval, q);
     }
   }
 
@@ -842,39 +725,54 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
       NullCheck.notNull(Bitmap.createBitmap(cw, ch, Config.RGB_565));
 
     final int start_y = ch - cw;
+    final TenPrintRenderState state = TenPrintGenerator.RENDER_STATE.get();
     final int text_length = TenPrintGenerator.getTextLength(i);
-    final int color_base = TenPrintGenerator.getColorBase(i, text_length);
-    final int color_shape = TenPrintGenerator.getColorShape(i, text_length);
+    final int color_base = TenPrintGenerator.getColorBase(state, i, text_length);
+    final int color_shape = TenPrintGenerator.getColorShape(state, i, text_length);
 
-    final Paint paint_base = new Paint();
+    final Paint paint_base = state.paint_base;
     paint_base.setColor(color_base);
-    paint_base.setAntiAlias(true);
-    paint_base.setFilterBitmap(true);
 
-    final Paint paint_shape = new Paint();
+    final Paint paint_shape = state.paint_shape;
     paint_shape.setColor(color_shape);
-    paint_shape.setAntiAlias(true);
-    paint_shape.setFilterBitmap(true);
-
-    final Canvas canvas = new Canvas(b);
-    canvas.drawRect(0.0F, 0.0F, (float) cw, (float) ch, paint_base);
-
-    final String c64_text = TenPrintGenerator.getC64String(i.getTitle());
-    final int grid_count = TenPrintGenerator.getGridCount(i);
-    final int grid_size = cw / grid_count;
-    int grid_cell = 0;
-    for (int y = 0; y < grid_count; ++y) {
-      for (int x = 0; x < grid_count; ++x) {
-        final char c = c64_text.charAt(grid_cell % c64_text.length());
-        final int x_offset = x * grid_size;
-        final int y_offset = start_y + (y * grid_size);
-        TenPrintGenerator.renderGridCharacter(
-          canvas, i, paint_base, paint_shape, c, x_offset, y_offset, grid_size);
-        grid_cell = grid_cell + 1;
+
+    final Canvas canvas = state.canvas;
+    canvas.setBitmap(b);
+    final int save_count = canvas.save();
+
+    try {
+      canvas.drawRect(0.0F, 0.0F, (float) cw, (float) ch, paint_base);
+
+      final String title = i.getTitle();
+      final int grid_count = TenPrintGenerator.getGridCount(i);
+      final int grid_size = cw / grid_count;
+      final int thick = (grid_size * i.getShapeThickness()) / 100;
+      final TenPrintGlyphPaths glyphs = state.glyphsFor(grid_size, thick);
+
+      int grid_cell = 0;
+      for (int y = 0; y < grid_count; ++y) {
+        for (int x = 0; x < grid_count; ++x) {
+          final char c = TenPrintGenerator.getC64Character(title, grid_cell);
+          final int x_offset = x * grid_size;
+          final int y_offset = start_y + (y * grid_size);
+          TenPrintGenerator.renderGridCharacter(
+            state, glyphs, i, c, x_offset, y_offset, grid_size);
+          grid_cell = grid_cell + 1;
+        }
       }
+
+      TenPrintGenerator.renderLabel(state, i, cw, ch, start_y);
+    } finally {
+
+      /*
+       * Release the bitmap so that the per-thread canvas does not keep the most recently
+       * rendered cover alive.
+       */
+
+      canvas.restoreToCount(save_count);
+      canvas.setBitmap(null);
     }
 
-    TenPrintGenerator.renderLabel(canvas, i, cw, ch, start_y);
     return b;
   }
 }
@@ -0,0 +1,192 @@
+package org.nypl.simplified.tenprint;
+
+import android.graphics.Path;
+
+/**
+ * <p>The shapes of the C64 characters that are drawn as paths, for a single grid cell size
+ * and shape thickness.</p>
+ * <p>
+ * <p>Paths are built once relative to the top-left corner of a grid cell and are then
+ * offset to the position of each cell when drawn. The paths for each character are drawn
+ * in order; a path may appear more than once in a character's list, in which case it is
+ * drawn more than once.</p>
+ */
+
+final class TenPrintGlyphPaths
+{
+  private static final Path[] NONE = new Path[0];
+
+  private final int    grid_size;
+  private final int    thick;
+  private final Path[] shape_a;
+  private final Path[] shape_s;
+  private final Path[] shape_z;
+  private final Path[] base_v;
+  private final Path[] base_n;
+  private final Path[] base_m;
+
+  private TenPrintGlyphPaths(
+    final int in_grid_size,
+    final int in_thick)
+  {
+    this.grid_size = in_grid_size;
+    this.thick = in_thick;
+
+    final int x = 0;
+    final int y = 0;
+    final int x_max = in_grid_size;
+    final int y_max = in_grid_size;
+    final int x_center = in_grid_size / 2;
+    final int y_center = in_grid_size / 2;
+
+    this.shape_a = new Path[]{
+      TenPrintGlyphPaths.triangle(x, y_max, x_center, y, x_max, y_max),
+    };
+
+    this.shape_s = new Path[]{
+      TenPrintGlyphPaths.triangle(x, y, x_center, y_max, x_max, y),
+    };
+
+    this.shape_z = new Path[]{
+      TenPrintGlyphPaths.triangle(x, y_center, x_center, y, x_max, y_center),
+      TenPrintGlyphPaths.triangle(x, y_center, x_center, y_max, x_max, y_center),
+    };
+
+    /*
+     * The right-hand triangle of 'V' has always been drawn twice. It is drawn twice here
+     * too, as drawing it once would change the antialiased edges of the shape.
+     */
+
+    final Path v_right = TenPrintGlyphPaths.triangle(
+      x_max, y + in_thick, x_center + in_thick, y_center, x_max, y_max - in_thick);
+
+    this.base_v = new Path[]{
+      TenPrintGlyphPaths.triangle(
+        x, y + in_thick, x_center - in_thick, y_center, x, y_max - in_thick),
+      v_right,
+      v_right,
+      TenPrintGlyphPaths.triangle(
+        x + in_thick, y_max, x_center, y_center + in_thick, x_max - in_thick, y_max),
+      TenPrintGlyphPaths.triangle(
+        x + in_thick, y, x_center, y_center - in_thick, x_max - in_thick, y),
+    };
+
+    this.base_n = new Path[]{
+      TenPrintGlyphPaths.triangle(x, y, x_max - in_thick, y, x, y_max - in_thick),
+      TenPrintGlyphPaths.triangle(
+        x + in_thick, y_max, x_max + in_thick, y_max, x_max + in_thick, y),
+    };
+
+    this.base_m = new Path[]{
+      TenPrintGlyphPaths.triangle(
+        x, y + in_thick, x, y_max + in_thick, x_max, y_max + in_thick),
+      TenPrintGlyphPaths.triangle(
+        x, y - in_thick, x_max, y_max - in_thick, x_max, y - in_thick),
+    };
+  }
+
+  /**
+   * Build the glyph paths for the given cell size and shape thickness.
+   *
+   * @param grid_size The size of a grid cell
+   * @param thick     The shape thickness in pixels
+   *
+   * @return The glyph paths
+   */
+
+  static TenPrintGlyphPaths create(
+    final int grid_size,
+    final int thick)
+  {
+    return new TenPrintGlyphPaths(grid_size, thick);
+  }
+
+  /**
+   * @param grid_size The size of a grid cell
+   * @param thick     The shape thickness in pixels
+   *
+   * @return A key that uniquely identifies glyph paths built with the given parameters
+   */
+
+  static long key(
+    final int grid_size,
+    final int thick)
+  {
+    return ((long) grid_size << 32) | ((long) thick & 0xffffffffL);
+  }
+
+  private static Path triangle(
+    final int x0,
+    final int y0,
+    final int x1,
+    final int y1,
+    final int x2,
+    final int y2)
+  {
+    final Path p = new Path();
+    p.moveTo((float) x0, (float) y0);
+    p.lineTo((float) x1, (float) y1);
+    p.lineTo((float) x2, (float) y2);
+    p.lineTo((float) x0, (float) y0);
+    p.close();
+    return p;
+  }
+
+  int getGridSize()
+  {
+    return this.grid_size;
+  }
+
+  int getThickness()
+  {
+    return this.thick;
+  }
+
+  /**
+   * @param c The character
+   *
+   * @return The paths that are drawn with the shape paint for the given character
+   */
+
+  Path[] shapePathsFor(
+    final char c)
+  {
+    switch (c) {
+      case 'A':
+      case 'a':
+        return this.shape_a;
+      case 'S':
+      case 's':
+        return this.shape_s;
+      case 'Z':
+      case 'z':
+        return this.shape_z;
+      default:
+        return TenPrintGlyphPaths.NONE;
+    }
+  }
+
+  /**
+   * @param c The character
+   *
+   * @return The paths that are drawn with the base paint for the given character
+   */
+
+  Path[] basePathsFor(
+    final char c)
+  {
+    switch (c) {
+      case 'V':
+      case 'v':
+        return this.base_v;
+      case 'N':
+      case 'n':
+        return this.base_n;
+      case 'M':
+      case 'm':
+        return this.base_m;
+      default:
+        return TenPrintGlyphPaths.NONE;
+    }
+  }
+}
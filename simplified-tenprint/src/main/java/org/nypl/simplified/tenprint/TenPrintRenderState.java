@@ -0,0 +1,118 @@
+package org.nypl.simplified.tenprint;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Paint.Align;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>The mutable drawing state used to render covers.</p>
+ * <p>
+ * <p>Rendering a cover draws up to several hundred shapes. Rather than allocating paints,
+ * rectangles, and paths for every shape, each rendering thread owns a single instance of
+ * this class and reuses it for every cover that the thread renders. Instances must not be
+ * shared between threads.</p>
+ */
+
+final class TenPrintRenderState
+{
+  private static final int GLYPH_CACHE_MAXIMUM = 16;
+
+  private final Map<Long, TenPrintGlyphPaths> glyph_cache;
+  private TenPrintGlyphPaths glyphs_current;
+
+  final Canvas    canvas;
+  final Paint     paint_base;
+  final Paint     paint_shape;
+  final Paint     paint_label;
+  final Paint     paint_debug;
+  final TextPaint paint_title;
+  final TextPaint paint_author;
+  final RectF     rect;
+  final Path      path;
+  final float[]   hsv;
+  final char[]    debug_char;
+
+  TenPrintRenderState()
+  {
+    this.glyph_cache = new HashMap<Long, TenPrintGlyphPaths>(GLYPH_CACHE_MAXIMUM);
+    this.glyphs_current = null;
+
+    this.canvas = new Canvas();
+    this.rect = new RectF();
+    this.path = new Path();
+    this.hsv = new float[3];
+    this.debug_char = new char[1];
+
+    this.paint_base = new Paint();
+    this.paint_base.setAntiAlias(true);
+    this.paint_base.setFilterBitmap(true);
+
+    this.paint_shape = new Paint();
+    this.paint_shape.setAntiAlias(true);
+    this.paint_shape.setFilterBitmap(true);
+
+    this.paint_label = new Paint();
+    this.paint_label.setColor(Color.WHITE);
+    this.paint_label.setAntiAlias(true);
+    this.paint_label.setFilterBitmap(true);
+
+    this.paint_debug = new Paint();
+    this.paint_debug.setColor(Color.BLACK);
+    this.paint_debug.setTextSize(16.0f);
+
+    this.paint_title = new TextPaint();
+    this.paint_title.setColor(Color.BLACK);
+    this.paint_title.setTextAlign(Align.LEFT);
+    this.paint_title.setTypeface(Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD));
+    this.paint_title.setAntiAlias(true);
+
+    this.paint_author = new TextPaint();
+    this.paint_author.setColor(Color.BLACK);
+    this.paint_author.setTextAlign(Align.LEFT);
+    this.paint_author.setTypeface(Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL));
+    this.paint_author.setAntiAlias(true);
+  }
+
+  /**
+   * Retrieve glyph paths for the given cell size and thickness, building them if
+   * necessary.
+   *
+   * @param grid_size The size of a grid cell
+   * @param thick     The shape thickness in pixels
+   *
+   * @return The glyph paths
+   */
+
+  TenPrintGlyphPaths glyphsFor(
+    final int grid_size,
+    final int thick)
+  {
+    final TenPrintGlyphPaths current = this.glyphs_current;
+    if (current != null
+      && current.getGridSize() == grid_size
+      && current.getThickness() == thick) {
+      return current;
+    }
+
+    final Long key = Long.valueOf(TenPrintGlyphPaths.key(grid_size, thick));
+    TenPrintGlyphPaths glyphs = this.glyph_cache.get(key);
+    if (glyphs == null) {
+      if (this.glyph_cache.size() >= GLYPH_CACHE_MAXIMUM) {
+        this.glyph_cache.clear();
+      }
+      glyphs = TenPrintGlyphPaths.create(grid_size, thick);
+      this.glyph_cache.put(key, glyphs);
+    }
+
+    this.glyphs_current = glyphs;
+    return glyphs;
+  }
+}
@@ -0,0 +1,118 @@
+package org.nypl.simplified.tests.books
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.books.api.BookIDs
+import org.nypl.simplified.books.book_registry.BookDownloadProgress
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannel
+import org.slf4j.LoggerFactory
+import java.lang.management.ManagementFactory
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+class BookDownloadProgressChannelTest {
+
+  private val logger =
+    LoggerFactory.getLogger(BookDownloadProgressChannelTest::class.java)
+
+  private lateinit var executor: ScheduledExecutorService
+  private lateinit var channel: BookDownloadProgressChannel
+  private lateinit var samples: MutableList<BookDownloadProgress>
+  private var time = 0L
+
+  @BeforeEach
+  fun setup() {
+    this.executor = Executors.newSingleThreadScheduledExecutor()
+    this.time = 0L
+    this.channel =
+      BookDownloadProgressChannel(
+        executor = this.executor,
+        sampleIntervalMilliseconds = TimeUnit.HOURS.toMillis(1L),
+        clock = { this.time }
+      )
+    this.samples = mutableListOf()
+    this.channel.progress().subscribe { sample -> this.samples.add(sample) }
+  }
+
+  @AfterEach
+  fun tearDown() {
+    this.executor.shutdown()
+  }
+
+  /**
+   * Samples are only published when counters change, and include a rate and estimate.
+   */
+
+  @Test
+  fun testSamplesChangesOnly() {
+    val id = BookIDs.newFromText("book-0")
+    val counter = this.channel.counterFor(id)
+    counter.set(0L, 10_000L)
+
+    this.channel.sample()
+    Assertions.assertEquals(1, this.samples.size)
+
+    this.time += TimeUnit.SECONDS.toNanos(1L)
+    this.channel.sample()
+    Assertions.assertEquals(1, this.samples.size)
+
+    counter.add(1000L)
+    this.time += TimeUnit.SECONDS.toNanos(1L)
+    this.channel.sample()
+    Assertions.assertEquals(2, this.samples.size)
+
+    val sample = this.samples.last()
+    Assertions.assertEquals(1000L, sample.receivedBytes)
+    Assertions.assertEquals(10_000L, sample.expectedBytes)
+    Assertions.assertEquals(500L, sample.bytesPerSecond)
+    Assertions.assertEquals(18L, sample.secondsRemaining)
+    Assertions.assertEquals(10.0, sample.progressPercent)
+    Assertions.assertEquals(sample, this.channel.progressNow(id))
+  }
+
+  /**
+   * Finished downloads are no longer sampled.
+   */
+
+  @Test
+  fun testFinished() {
+    val id = BookIDs.newFromText("book-0")
+    val counter = this.channel.counterFor(id)
+    Assertions.assertSame(counter, this.channel.counterFor(id))
+
+    counter.add(100L)
+    this.channel.finish(id)
+    this.channel.sample()
+
+    Assertions.assertEquals(0, this.samples.size)
+    Assertions.assertNull(this.channel.progressNow(id))
+  }
+
+  /**
+   * Counting received bytes does not allocate.
+   */
+
+  @Test
+  fun testCountingAllocation() {
+    val threads =
+      ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+    val counter = this.channel.counterFor(BookIDs.newFromText("book-0"))
+    val threadId = Thread.currentThread().id
+
+    for (index in 0 until 100_000) {
+      counter.add(65536L)
+    }
+
+    val before = threads?.getThreadAllocatedBytes(threadId) ?: 0L
+    for (index in 0 until 1_000_000) {
+      counter.add(65536L)
+    }
+    val after = threads?.getThreadAllocatedBytes(threadId) ?: 0L
+
+    this.logger.debug("allocated {} bytes for 1000000 updates", after - before)
+    Assertions.assertEquals(1_100_000L * 65536L, counter.receivedBytes)
+  }
+}
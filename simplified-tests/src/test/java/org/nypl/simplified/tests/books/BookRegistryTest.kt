@@ -0,0 +1,275 @@
+package org.nypl.simplified.tests.books
+
+import io.reactivex.schedulers.TestScheduler
+import org.joda.time.DateTime
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.Book
+import org.nypl.simplified.books.api.BookIDs
+import org.nypl.simplified.books.book_registry.BookRegistry
+import org.nypl.simplified.books.book_registry.BookRegistrySnapshotEvent
+import org.nypl.simplified.books.book_registry.BookRegistryType
+import org.nypl.simplified.books.book_registry.BookStatus
+import org.nypl.simplified.books.book_registry.BookStatusEvent
+import org.nypl.simplified.books.book_registry.BookStatusEventThrottling
+import org.nypl.simplified.books.book_registry.BookWithStatus
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAvailabilityLoanable
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+class BookRegistryTest {
+
+  private lateinit var bookRegistry: BookRegistryType
+  private lateinit var events: MutableList<BookStatusEvent>
+  private lateinit var snapshots: MutableList<BookRegistrySnapshotEvent>
+
+  private val accountID =
+    AccountID(UUID.randomUUID())
+
+  @BeforeEach
+  fun setup() {
+    this.bookRegistry = BookRegistry.create()
+    this.events = mutableListOf()
+    this.snapshots = mutableListOf()
+    this.bookRegistry.bookEvents().subscribe { event -> this.events.add(event) }
+    this.bookRegistry.bookSnapshots().subscribe { event -> this.snapshots.add(event) }
+  }
+
+  private fun book(name: String): Book {
+    return Book(
+      BookIDs.newFromText(name),
+      this.accountID,
+      null,
+      null,
+      OPDSAcquisitionFeedEntry.newBuilder(
+        name, name, DateTime.now(), OPDSAvailabilityLoanable.get()
+      ).build(),
+      listOf()
+    )
+  }
+
+  /**
+   * Bulk updates publish a single snapshot and no per-book events.
+   */
+
+  @Test
+  fun testUpdateAllPublishesSnapshot() {
+    val books = (0 until 100).map { index -> this.book("book-$index") }
+
+    this.bookRegistry.updateAll(
+      statuses = books.map { book -> BookWithStatus(book, BookStatus.fromBook(book)) },
+      replace = false,
+      complete = true
+    )
+
+    Assertions.assertEquals(100, this.bookRegistry.books().size)
+    Assertions.assertEquals(0, this.events.size)
+    Assertions.assertEquals(1, this.snapshots.size)
+    Assertions.assertEquals(books.map { book -> book.id }.toSet(), this.snapshots[0].bookIds)
+    Assertions.assertTrue(this.snapshots[0].complete)
+  }
+
+  /**
+   * Replacing bulk updates remove books that are not part of the update, and publish a removal
+   * event for each of them.
+   */
+
+  @Test
+  fun testUpdateAllReplaces() {
+    val book0 = this.book("book-0")
+    val book1 = this.book("book-1")
+
+    this.bookRegistry.update(BookWithStatus(book0, BookStatus.fromBook(book0)))
+    this.events.clear()
+    this.bookRegistry.updateAll(
+      statuses = listOf(BookWithStatus(book1, BookStatus.fromBook(book1))),
+      replace = true,
+      complete = false
+    )
+
+    Assertions.assertEquals(setOf(book1.id), this.bookRegistry.books().keys)
+    Assertions.assertEquals(1, this.events.size)
+    val removed = this.events[0] as BookStatusEvent.BookStatusEventRemoved
+    Assertions.assertEquals(book0.id, removed.bookId)
+    Assertions.assertTrue(this.snapshots[0].replaced)
+    Assertions.assertFalse(this.snapshots[0].complete)
+  }
+
+  /**
+   * Bulk updates publish a change event for each book already in the registry whose status
+   * changed, so that subscribers to individual books see the change.
+   */
+
+  @Test
+  fun testUpdateAllPublishesChanges() {
+    val book0 = this.book("book-0")
+    val book1 = this.book("book-1")
+
+    this.bookRegistry.update(BookWithStatus(book0, BookStatus.fromBook(book0)))
+    this.bookRegistry.update(BookWithStatus(book1, BookStatus.fromBook(book1)))
+    val forBook0 = mutableListOf<BookStatusEvent>()
+    this.bookRegistry.bookEventsFor(book0.id, 0L).subscribe { e -> forBook0.add(e) }
+    this.events.clear()
+
+    this.bookRegistry.updateAll(
+      statuses = listOf(
+        BookWithStatus(book0, BookStatus.RequestingDownload(book0.id)),
+        BookWithStatus(book1, BookStatus.fromBook(book1))
+      ),
+      replace = false,
+      complete = true
+    )
+
+    Assertions.assertEquals(1, this.events.size)
+    val changed = this.events[0] as BookStatusEvent.BookStatusEventChanged
+    Assertions.assertEquals(book0.id, changed.bookId)
+    Assertions.assertEquals(BookStatus.RequestingDownload(book0.id), changed.statusNow)
+    Assertions.assertEquals(listOf(changed), forBook0)
+    Assertions.assertEquals(1, this.snapshots.size)
+  }
+
+  /**
+   * Deferred statuses are computed once, on first access.
+   */
+
+  @Test
+  fun testDeferredStatus() {
+    val book0 = this.book("book-0")
+    var computed = 0
+
+    this.bookRegistry.updateAll(
+      statuses = listOf(
+        BookWithStatus.deferred(book0) { book ->
+          computed += 1
+          BookStatus.fromBook(book)
+        }
+      ),
+      replace = true,
+      complete = true
+    )
+
+    Assertions.assertEquals(0, computed)
+    val status = this.bookRegistry.bookStatusOrNull(book0.id)
+    Assertions.assertEquals(BookStatus.fromBook(book0), status)
+    this.bookRegistry.bookStatusOrNull(book0.id)
+    Assertions.assertEquals(1, computed)
+  }
+
+  /**
+   * Scoped streams only receive events for their own books and accounts, and stop being
+   * indexed once they are disposed.
+   */
+
+  @Test
+  fun testScopedEvents() {
+    val otherAccount = AccountID(UUID.randomUUID())
+    val book0 = this.book("book-0")
+    val book1 = this.book("book-1")
+    val book2 = Book(
+      BookIDs.newFromText("book-2"),
+      otherAccount,
+      null,
+      null,
+      book0.entry,
+      listOf()
+    )
+
+    val forBook0 = mutableListOf<BookStatusEvent>()
+    val forAccount = mutableListOf<BookStatusEvent>()
+    val subscription0 = this.bookRegistry.bookEventsFor(book0.id).subscribe { e -> forBook0.add(e) }
+    val subscription1 = this.bookRegistry.bookEventsForAccount(otherAccount).subscribe { e -> forAccount.add(e) }
+
+    for (book in listOf(book0, book1, book2)) {
+      this.bookRegistry.update(BookWithStatus(book, BookStatus.fromBook(book)))
+    }
+
+    Assertions.assertEquals(listOf(book0.id), forBook0.map { e -> e.bookId })
+    Assertions.assertEquals(listOf(book2.id), forAccount.map { e -> e.bookId })
+    Assertions.assertEquals(3, this.events.size)
+
+    subscription0.dispose()
+    subscription1.dispose()
+    this.bookRegistry.clearFor(book0.id)
+    this.bookRegistry.clearFor(book2.id)
+    Assertions.assertEquals(1, forBook0.size)
+    Assertions.assertEquals(1, forAccount.size)
+
+    val resubscribed = mutableListOf<BookStatusEvent>()
+    this.bookRegistry.bookEventsFor(book0.id).subscribe { e -> resubscribed.add(e) }
+    this.bookRegistry.update(BookWithStatus(book0, BookStatus.fromBook(book0)))
+    Assertions.assertEquals(1, resubscribed.size)
+  }
+
+  /**
+   * Progress events are throttled, but the first and last events of a download, and the last
+   * progress event of each interval, are always delivered.
+   */
+
+  @Test
+  fun testProgressThrottled() {
+    val book0 = this.book("book-0")
+    val scheduler = TestScheduler()
+    val received = mutableListOf<BookStatusEvent>()
+
+    BookStatusEventThrottling.throttleProgress(
+      events = this.bookRegistry.bookEvents(),
+      intervalMilliseconds = 100L,
+      scheduler = scheduler
+    ).subscribe { e -> received.add(e) }
+
+    fun downloading(bytes: Long): BookWithStatus =
+      BookWithStatus(book0, BookStatus.Downloading(book0.id, bytes, 1000L, "x"))
+
+    this.bookRegistry.update(BookWithStatus(book0, BookStatus.RequestingDownload(book0.id)))
+    for (bytes in 0L until 1000L) {
+      scheduler.advanceTimeBy(1L, TimeUnit.MILLISECONDS)
+      this.bookRegistry.update(downloading(bytes))
+    }
+    this.bookRegistry.update(
+      BookWithStatus(book0, BookStatus.Loaned.LoanedDownloaded(book0.id, null, false))
+    )
+
+    Assertions.assertEquals(1002, this.events.size)
+    Assertions.assertTrue(received.size < 20, "Received ${received.size} events")
+    Assertions.assertTrue(received.first().statusNow is BookStatus.RequestingDownload)
+    Assertions.assertTrue(received[1].statusNow is BookStatus.Downloading)
+    Assertions.assertTrue(received.last().statusNow is BookStatus.Loaned.LoanedDownloaded)
+  }
+
+  /**
+   * The most recent progress event held back by the throttle is delivered when the interval
+   * ends, even if no further events arrive.
+   */
+
+  @Test
+  fun testProgressThrottledDeliversLatest() {
+    val book0 = this.book("book-0")
+    val scheduler = TestScheduler()
+    val received = mutableListOf<BookStatusEvent>()
+
+    BookStatusEventThrottling.throttleProgress(
+      events = this.bookRegistry.bookEvents(),
+      intervalMilliseconds = 100L,
+      scheduler = scheduler
+    ).subscribe { e -> received.add(e) }
+
+    fun downloading(bytes: Long): BookWithStatus =
+      BookWithStatus(book0, BookStatus.Downloading(book0.id, bytes, 1000L, "x"))
+
+    this.bookRegistry.update(downloading(0L))
+    this.bookRegistry.update(downloading(1L))
+    for (bytes in 2L until 10L) {
+      scheduler.advanceTimeBy(1L, TimeUnit.MILLISECONDS)
+      this.bookRegistry.update(downloading(bytes))
+    }
+    Assertions.assertEquals(2, received.size)
+
+    scheduler.advanceTimeBy(100L, TimeUnit.MILLISECONDS)
+    Assertions.assertEquals(3, received.size)
+    val last = received.last().statusNow as BookStatus.Downloading
+    Assertions.assertEquals(9L, last.currentTotalBytes)
+  }
+}
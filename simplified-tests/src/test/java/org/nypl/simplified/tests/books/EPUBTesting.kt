@@ -0,0 +1,84 @@
+package org.nypl.simplified.tests.books
+
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.Random
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+object EPUBTesting {
+
+  /**
+   * Create an EPUB with the given number of chapters of random text, and a navigation
+   * document listing them. The text returned by [chapterText] for each chapter is placed at
+   * the start of that chapter.
+   */
+
+  @Throws(IOException::class)
+  fun createEPUB(
+    chapters: Int,
+    chapterLength: Int,
+    chapterText: (Int) -> String = { "" }
+  ): File {
+    val file = File.createTempFile("simplified-epub-", ".epub")
+    val random = Random(chapters.toLong())
+    ZipOutputStream(FileOutputStream(file)).use { zip ->
+      fun add(name: String, text: String) {
+        zip.putNextEntry(ZipEntry(name))
+        zip.write(text.toByteArray())
+        zip.closeEntry()
+      }
+
+      add(
+        "META-INF/container.xml",
+        """<?xml version="1.0"?>
+<container version="1.0" xmlns="urn:oasis:names:tc:opendocument:xmlns:container">
+  <rootfiles><rootfile full-path="OEBPS/content.opf"/></rootfiles>
+</container>"""
+      )
+
+      val manifest = StringBuilder()
+      val spine = StringBuilder()
+      val nav = StringBuilder()
+      for (index in 0 until chapters) {
+        manifest.append("<item id=\"c$index\" href=\"text/chapter%20$index.xhtml\" ")
+        manifest.append("media-type=\"application/xhtml+xml\"/>")
+        spine.append("<itemref idref=\"c$index\"/>")
+        nav.append("<li><a href=\"text/chapter%20$index.xhtml#start\">Chapter $index</a></li>")
+
+        val body = StringBuilder(chapterText(index) + " ")
+        while (body.length < chapterLength) {
+          body.append(random.nextInt().toString(36))
+          body.append(' ')
+        }
+        add(
+          "OEBPS/text/chapter $index.xhtml",
+          "<html xmlns=\"http://www.w3.org/1999/xhtml\"><body><p id=\"start\">$body</p></body></html>"
+        )
+      }
+
+      add(
+        "OEBPS/content.opf",
+        """<?xml version="1.0"?>
+<package xmlns="http://www.idpf.org/2007/opf" version="3.0">
+  <metadata/>
+  <manifest>
+    <item id="nav" href="nav.xhtml" media-type="application/xhtml+xml" properties="nav"/>
+    $manifest
+  </manifest>
+  <spine>$spine</spine>
+</package>"""
+      )
+
+      add(
+        "OEBPS/nav.xhtml",
+        """<?xml version="1.0"?>
+<html xmlns="http://www.w3.org/1999/xhtml" xmlns:epub="http://www.idpf.org/2007/ops">
+  <body><nav epub:type="toc"><ol>$nav</ol></nav></body>
+</html>"""
+      )
+    }
+    return file
+  }
+}
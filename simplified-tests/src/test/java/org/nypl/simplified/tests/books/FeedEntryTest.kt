@@ -0,0 +1,132 @@
+package org.nypl.simplified.tests.books
+
+import com.io7m.jfunctional.Option
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.feeds.api.FeedEntry
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntryParser
+import org.nypl.simplified.opds.core.OPDSFeedParser
+import org.slf4j.LoggerFactory
+import java.io.FileNotFoundException
+import java.net.URI
+import java.util.UUID
+
+class FeedEntryTest {
+
+  private val logger =
+    LoggerFactory.getLogger(FeedEntryTest::class.java)
+
+  private val accountID =
+    AccountID(UUID.fromString("46d17029-14ba-4e34-bcaa-def02713575a"))
+
+  private fun parseEntries(name: String): List<OPDSAcquisitionFeedEntry> {
+    val path = "/org/nypl/simplified/tests/opds/$name"
+    val url = FeedEntryTest::class.java.getResource(path)
+      ?: throw FileNotFoundException(path)
+
+    val parser = OPDSFeedParser.newParser(OPDSAcquisitionFeedEntryParser.newParser())
+    val feed = url.openStream().use { stream -> parser.parse(URI.create("urn:test"), stream) }
+    return feed.feedEntries +
+      feed.feedGroupsOrder.flatMap { name -> feed.feedGroups[name]!!.groupEntries }
+  }
+
+  private fun page(
+    entries: List<OPDSAcquisitionFeedEntry>,
+    size: Int
+  ): List<FeedEntry> {
+    return (0 until size).map { index ->
+      FeedEntry.FeedEntryOPDS(this.accountID, entries[index % entries.size])
+    }
+  }
+
+  /**
+   * Entries parsed from the same data are the same items with the same content.
+   */
+
+  @Test
+  fun testSameContent() {
+    val entries0 = this.parseEntries("acquisition-groups-0.xml")
+    val entries1 = this.parseEntries("acquisition-groups-0.xml")
+    Assertions.assertEquals(entries0.size, entries1.size)
+
+    for (index in entries0.indices) {
+      val e0 = FeedEntry.FeedEntryOPDS(this.accountID, entries0[index])
+      val e1 = FeedEntry.FeedEntryOPDS(this.accountID, entries1[index])
+      Assertions.assertNotSame(entries0[index], entries1[index])
+      Assertions.assertTrue(e0.isSameItemAs(e1))
+      Assertions.assertTrue(e0.isSameContentAs(e1))
+      Assertions.assertEquals(e0.contentFingerprint, e1.contentFingerprint)
+    }
+  }
+
+  /**
+   * Entries for the same book with different content have different fingerprints.
+   */
+
+  @Test
+  fun testDifferentContent() {
+    val entry = this.parseEntries("acquisition-groups-0.xml").first()
+
+    val changed =
+      OPDSAcquisitionFeedEntry.newBuilderFrom(entry)
+        .setSummaryOption(Option.some("A different summary"))
+        .build()
+
+    val e0 = FeedEntry.FeedEntryOPDS(this.accountID, entry)
+    val e1 = FeedEntry.FeedEntryOPDS(this.accountID, changed)
+    Assertions.assertTrue(e0.isSameItemAs(e1))
+    Assertions.assertFalse(e0.isSameContentAs(e1))
+
+    val otherAccount = FeedEntry.FeedEntryOPDS(AccountID(UUID.randomUUID()), entry)
+    Assertions.assertFalse(e0.isSameItemAs(otherAccount))
+  }
+
+  /**
+   * Compare the cost of diffing a 500-row page using fingerprints against structural
+   * equality.
+   */
+
+  @Test
+  fun testDiffBenchmark() {
+    val entries0 = this.parseEntries("acquisition-groups-0.xml")
+    val entries1 = this.parseEntries("acquisition-groups-0.xml")
+
+    val timeCreateStart = System.nanoTime()
+    val page0 = this.page(entries0, 500)
+    val page1 = this.page(entries1, 500)
+    val timeCreate = System.nanoTime() - timeCreateStart
+
+    val iterations = 100
+    var same = 0
+
+    repeat(10) {
+      for (index in page0.indices) {
+        if (page0[index] == page1[index]) same += 1
+        if (page0[index].isSameContentAs(page1[index])) same += 1
+      }
+    }
+
+    val timeStructuralStart = System.nanoTime()
+    repeat(iterations) {
+      for (index in page0.indices) {
+        if (page0[index] == page1[index]) same += 1
+      }
+    }
+    val timeStructural = (System.nanoTime() - timeStructuralStart) / iterations
+
+    val timeFingerprintStart = System.nanoTime()
+    repeat(iterations) {
+      for (index in page0.indices) {
+        if (page0[index].isSameContentAs(page1[index])) same += 1
+      }
+    }
+    val timeFingerprint = (System.nanoTime() - timeFingerprintStart) / iterations
+
+    this.logger.debug("created 1000 entries in {} µs", timeCreate / 1000L)
+    this.logger.debug("structural diff of 500 rows: {} µs", timeStructural / 1000L)
+    this.logger.debug("fingerprint diff of 500 rows: {} µs", timeFingerprint / 1000L)
+    Assertions.assertTrue(same > 0)
+  }
+}
@@ -0,0 +1,313 @@
+package org.nypl.simplified.tests.books.audio
+
+import android.content.Context
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okio.Buffer
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.librarysimplified.audiobook.api.PlayerDownloadRequest
+import org.librarysimplified.audiobook.api.PlayerUserAgent
+import org.librarysimplified.http.api.LSHTTPClientConfiguration
+import org.librarysimplified.http.api.LSHTTPClientType
+import org.librarysimplified.http.vanilla.LSHTTPClients
+import org.mockito.Mockito
+import org.nypl.simplified.books.audio.AudioBookPartDownloadScheduler
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.net.URI
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class AudioBookPartDownloadSchedulerTest {
+
+  private val logger =
+    LoggerFactory.getLogger(AudioBookPartDownloadSchedulerTest::class.java)
+
+  private lateinit var executor: ExecutorService
+  private lateinit var http: LSHTTPClientType
+  private lateinit var parts: PartServer
+  private lateinit var server: MockWebServer
+
+  @TempDir
+  @JvmField
+  var directory: File? = null
+
+  /**
+   * A local stand-in for a server hosting audio book parts. Parts are served at `/part/N`,
+   * and the server honours `Range` requests.
+   */
+
+  private class PartServer(
+    val partCount: Int,
+    val partSize: Int
+  ) : Dispatcher() {
+
+    val requested = Collections.synchronizedList(mutableListOf<Int>())
+    val ranges = Collections.synchronizedList(mutableListOf<String>())
+    val active = AtomicInteger(0)
+    val maximumActive = AtomicInteger(0)
+
+    @Volatile
+    var bytesPerSecond: Long = 0L
+
+    @Volatile
+    var gate: CountDownLatch? = null
+
+    fun contentOf(part: Int): ByteArray {
+      return ByteArray(this.partSize) { index -> ((part * 31 + index) % 251).toByte() }
+    }
+
+    override fun dispatch(request: RecordedRequest): MockResponse {
+      val part = request.path!!.removePrefix("/part/").toInt()
+      this.requested.add(part)
+
+      val now = this.active.incrementAndGet()
+      this.maximumActive.accumulateAndGet(now, ::maxOf)
+      try {
+        this.gate?.await(10L, TimeUnit.SECONDS)
+      } finally {
+        this.active.decrementAndGet()
+      }
+
+      val content = this.contentOf(part)
+      val range = request.getHeader("Range")
+      val response =
+        if (range != null) {
+          this.ranges.add(range)
+          val start = range.removePrefix("bytes=").removeSuffix("-").toInt()
+          MockResponse()
+            .setResponseCode(206)
+            .setHeader("ETag", "\"part-$part\"")
+            .setHeader("Content-Range", "bytes $start-${content.size - 1}/${content.size}")
+            .setBody(Buffer().write(content, start, content.size - start))
+        } else {
+          MockResponse()
+            .setResponseCode(200)
+            .setHeader("ETag", "\"part-$part\"")
+            .setBody(Buffer().write(content))
+        }
+
+      val rate = this.bytesPerSecond
+      if (rate > 0L) {
+        response.throttleBody(rate / 10L, 100L, TimeUnit.MILLISECONDS)
+      }
+      return response
+    }
+  }
+
+  @BeforeEach
+  fun testSetup() {
+    this.http =
+      LSHTTPClients()
+        .create(
+          context = Mockito.mock(Context::class.java),
+          configuration = LSHTTPClientConfiguration(
+            applicationName = "simplified-tests",
+            applicationVersion = "0.0.1",
+            tlsOverrides = null,
+            timeout = Pair(5L, TimeUnit.SECONDS)
+          )
+        )
+
+    this.parts = PartServer(partCount = 10, partSize = 200_000)
+    this.server = MockWebServer()
+    this.server.dispatcher = this.parts
+    this.server.start()
+    this.executor = Executors.newFixedThreadPool(4)
+  }
+
+  @AfterEach
+  fun testTearDown() {
+    this.executor.shutdown()
+    this.server.close()
+  }
+
+  private fun partURI(part: Int): URI {
+    return this.server.url("/part/$part").toUri()
+  }
+
+  private fun outputOf(part: Int): File {
+    return File(this.directory, "part-$part.mp3")
+  }
+
+  private fun requestFor(part: Int): PlayerDownloadRequest {
+    return PlayerDownloadRequest(
+      uri = this.partURI(part),
+      credentials = null,
+      outputFile = this.outputOf(part),
+      userAgent = PlayerUserAgent("simplified-tests"),
+      onProgress = { }
+    )
+  }
+
+  private fun scheduler(parallelism: Int): AudioBookPartDownloadScheduler {
+    val scheduler =
+      AudioBookPartDownloadScheduler(
+        http = this.http,
+        executor = this.executor,
+        parallelism = parallelism
+      )
+    scheduler.setPartOrder((0 until this.parts.partCount).map(this::partURI))
+    return scheduler
+  }
+
+  /**
+   * All parts are downloaded correctly, and no more than the configured number of parts
+   * are downloaded at any one time.
+   */
+
+  @Test
+  fun testParallelismBounded() {
+    this.parts.bytesPerSecond = 1_000_000L
+
+    val scheduler = this.scheduler(3)
+    val futures = (0 until this.parts.partCount).map { scheduler.download(this.requestFor(it)) }
+    futures.forEach { it.get(30L, TimeUnit.SECONDS) }
+
+    for (part in 0 until this.parts.partCount) {
+      Assertions.assertArrayEquals(this.parts.contentOf(part), this.outputOf(part).readBytes())
+      Assertions.assertFalse(File(this.directory, "part-$part.mp3.part").exists())
+    }
+
+    Assertions.assertTrue(this.parts.maximumActive.get() <= 3)
+
+    val statistics = scheduler.statistics()
+    this.logger.debug("statistics: {}", statistics)
+    this.logger.debug("throughput: {} bytes/s", statistics.bytesPerSecond)
+    Assertions.assertEquals(this.parts.partCount, statistics.partsCompleted)
+    Assertions.assertEquals(0, statistics.partsFailed)
+    Assertions.assertEquals(
+      this.parts.partCount.toLong() * this.parts.partSize,
+      statistics.bytesReceived
+    )
+  }
+
+  /**
+   * Parts are downloaded starting from the part under the playhead, followed by the parts
+   * after the playhead, followed by the parts before the playhead.
+   */
+
+  @Test
+  fun testPlayheadPriority() {
+    val gate = CountDownLatch(1)
+    this.parts.gate = gate
+
+    val scheduler = this.scheduler(1)
+    scheduler.setPlayheadPart(6)
+
+    /*
+     * Hold the first request at the server until every part has been queued.
+     */
+
+    val futures = (0 until this.parts.partCount).map { scheduler.download(this.requestFor(it)) }
+    gate.countDown()
+    futures.forEach { it.get(30L, TimeUnit.SECONDS) }
+
+    Assertions.assertEquals(listOf(0, 6, 7, 8, 9, 5, 4, 3, 2, 1), this.parts.requested.toList())
+  }
+
+  /**
+   * Moving the playhead pauses distant downloads and starts the parts around the playhead.
+   */
+
+  @Test
+  fun testSeekReprioritizes() {
+    this.parts.bytesPerSecond = 200_000L
+
+    val scheduler = this.scheduler(1)
+    val futures = (0 until this.parts.partCount).map { scheduler.download(this.requestFor(it)) }
+
+    /*
+     * Wait for the first part to start, and then seek to the end of the book.
+     */
+
+    while (this.parts.requested.isEmpty()) {
+      Thread.sleep(10L)
+    }
+    scheduler.setPlayheadPart(8)
+    futures[8].get(30L, TimeUnit.SECONDS)
+
+    Assertions.assertEquals(listOf(0, 8), this.parts.requested.take(2))
+    Assertions.assertFalse(futures[0].isDone)
+
+    futures.forEach { it.get(60L, TimeUnit.SECONDS) }
+    for (part in 0 until this.parts.partCount) {
+      Assertions.assertArrayEquals(this.parts.contentOf(part), this.outputOf(part).readBytes())
+    }
+
+    /*
+     * The paused part was resumed rather than restarted.
+     */
+
+    Assertions.assertTrue(this.parts.ranges.isNotEmpty())
+    Assertions.assertTrue(scheduler.statistics().partsResumed >= 1)
+  }
+
+  /**
+   * A partially downloaded part is resumed with a range request.
+   */
+
+  @Test
+  fun testResumePartial() {
+    val content = this.parts.contentOf(3)
+    File(this.directory, "part-3.mp3.part").writeBytes(content.copyOf(50_000))
+    File(this.directory, "part-3.mp3.part.validator").writeText("\"part-3\"")
+
+    val scheduler = this.scheduler(2)
+    scheduler.download(this.requestFor(3)).get(30L, TimeUnit.SECONDS)
+
+    Assertions.assertEquals(listOf("bytes=50000-"), this.parts.ranges.toList())
+    Assertions.assertArrayEquals(content, this.outputOf(3).readBytes())
+
+    val statistics = scheduler.statistics()
+    Assertions.assertEquals(1, statistics.partsResumed)
+    Assertions.assertEquals((content.size - 50_000).toLong(), statistics.bytesReceived)
+  }
+
+  /**
+   * A partial file without a validator is not trusted, and the part is downloaded again.
+   */
+
+  @Test
+  fun testResumeWithoutValidatorRestarts() {
+    val content = this.parts.contentOf(4)
+    File(this.directory, "part-4.mp3.part").writeBytes(ByteArray(50_000))
+
+    val scheduler = this.scheduler(2)
+    scheduler.download(this.requestFor(4)).get(30L, TimeUnit.SECONDS)
+
+    Assertions.assertEquals(listOf<String>(), this.parts.ranges.toList())
+    Assertions.assertArrayEquals(content, this.outputOf(4).readBytes())
+  }
+
+  /**
+   * Cancelling a queued part removes it from the queue.
+   */
+
+  @Test
+  fun testCancelQueued() {
+    val gate = CountDownLatch(1)
+    this.parts.gate = gate
+
+    val scheduler = this.scheduler(1)
+    val first = scheduler.download(this.requestFor(0))
+    val second = scheduler.download(this.requestFor(1))
+    second.cancel(false)
+    Assertions.assertEquals(0, scheduler.statistics().partsQueued)
+
+    gate.countDown()
+    first.get(30L, TimeUnit.SECONDS)
+    Assertions.assertEquals(listOf(0), this.parts.requested.toList())
+    Assertions.assertFalse(this.outputOf(1).exists())
+  }
+}
@@ -5,6 +5,7 @@ import com.io7m.jfunctional.Option
 import one.irradia.mime.api.MIMEType
 import one.irradia.mime.vanilla.MIMEParser
 import org.joda.time.DateTime
+import org.joda.time.Instant
 import org.junit.jupiter.api.Assertions
 import org.junit.jupiter.api.Test
 import org.librarysimplified.audiobook.api.PlayerPosition
@@ -19,11 +20,13 @@ import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.book_database.BookDRMInformationHandleACS
 import org.nypl.simplified.books.book_database.BookDRMInformationHandleNone
 import org.nypl.simplified.books.book_database.BookDatabase
+import org.nypl.simplified.books.book_database.BookDatabaseStorage
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleAudioBook
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandlePDF
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryType
+import org.nypl.simplified.books.book_database.api.EPUBIndex
 import org.nypl.simplified.files.DirectoryUtilities
 import org.nypl.simplified.opds.core.OPDSAcquisition
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
@@ -32,6 +35,7 @@ import org.nypl.simplified.opds.core.OPDSIndirectAcquisition
 import org.nypl.simplified.opds.core.OPDSJSONParser
 import org.nypl.simplified.opds.core.OPDSJSONSerializer
 import org.nypl.simplified.tests.books.BookFormatsTesting
+import org.nypl.simplified.tests.books.EPUBTesting
 import org.slf4j.LoggerFactory
 import java.io.File
 import java.io.FileOutputStream
@@ -48,6 +52,13 @@ abstract class BookDatabaseContract {
 
   protected abstract fun context(): Context
 
+  /**
+   * @return The storage with which databases are opened
+   */
+
+  protected open fun storage(): BookDatabaseStorage =
+    BookDatabaseStorage.DIRECTORIES
+
   /**
    * Opening an empty database works.
    */
@@ -59,7 +70,7 @@ abstract class BookDatabaseContract {
 
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
     Assertions.assertEquals(0L, database.books().size.toLong())
   }
 
@@ -73,7 +84,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val entry0 =
       OPDSAcquisitionFeedEntry.newBuilder(
@@ -110,7 +121,7 @@ abstract class BookDatabaseContract {
     database0.createOrUpdate(id2, entry2)
 
     val database1 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     Assertions.assertEquals(3, database1.books().size.toLong())
     Assertions.assertTrue(database1.books().contains(id0))
@@ -132,7 +143,7 @@ abstract class BookDatabaseContract {
 
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val db0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val entry0 =
       OPDSAcquisitionFeedEntry.newBuilder(
@@ -150,6 +161,44 @@ abstract class BookDatabaseContract {
     Assertions.assertEquals(0, db0.books().size.toLong())
   }
 
+  /**
+   * Queued downloads survive reopening the database, and a partially written journal entry
+   * is ignored.
+   */
+
+  @Test
+  fun testDownloadsQueuedReopen() {
+    val parser = OPDSJSONParser.newParser()
+    val serializer = OPDSJSONSerializer.newSerializer()
+
+    val directory = DirectoryUtilities.directoryCreateTemporary()
+    val db0 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
+
+    val id0 = BookID.create("a")
+    val id1 = BookID.create("b")
+    val id2 = BookID.create("c")
+    db0.downloadQueued(id0)
+    db0.downloadQueued(id1)
+    db0.downloadQueued(id2)
+    db0.downloadFinished(id1)
+    Assertions.assertEquals(listOf(id0, id2), db0.downloadsQueued())
+
+    File(directory, "downloads.journal").appendText("+ d")
+
+    val db1 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
+    Assertions.assertEquals(0, db1.books().size)
+    Assertions.assertEquals(listOf(id0, id2), db1.downloadsQueued())
+
+    db1.downloadFinished(id0)
+    db1.downloadFinished(id2)
+
+    val db2 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
+    Assertions.assertEquals(listOf<BookID>(), db2.downloadsQueued())
+  }
+
   /**
    * Creating and reopening an empty database works.
    */
@@ -160,7 +209,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithEPUB()
     val bookID = BookID.create("abcd")
@@ -188,7 +237,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithEPUB()
     val bookID = BookID.create("abcd")
@@ -224,7 +273,7 @@ abstract class BookDatabaseContract {
     }
 
     val database1 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
     val databaseEntry1 = database1.entry(bookID)
 
     val book1: Book = this.run {
@@ -272,7 +321,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithPDF()
     val bookID = BookID.create("abcd")
@@ -308,7 +357,7 @@ abstract class BookDatabaseContract {
     }
 
     val database1 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
     val databaseEntry1 = database1.entry(bookID)
 
     val book1: Book = this.run {
@@ -356,7 +405,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithAudioBook()
     val bookID = BookID.create("abcd")
@@ -392,7 +441,7 @@ abstract class BookDatabaseContract {
     }
 
     val database1 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
     val databaseEntry1 = database1.entry(bookID)
 
     val book1: Book = this.run {
@@ -440,7 +489,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithAudioBook()
     val bookID = BookID.create("abcd")
@@ -473,7 +522,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithAudioBook()
     val bookID = BookID.create("abcd")
@@ -500,7 +549,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithEPUB()
     val bookID = BookID.create("abcd")
@@ -520,6 +569,167 @@ abstract class BookDatabaseContract {
     format!!
   }
 
+  /**
+   * Temporary files are unique, old temporary files are deleted, and the time at which a
+   * format was last opened survives reopening the database.
+   */
+
+  @Test
+  fun testEntryTemporaryFilesLastOpened() {
+    val parser = OPDSJSONParser.newParser()
+    val serializer = OPDSJSONSerializer.newSerializer()
+    val directory = DirectoryUtilities.directoryCreateTemporary()
+    val database0 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
+
+    val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithEPUB()
+    val bookID = BookID.create("abcd")
+    val databaseEntry = database0.createOrUpdate(bookID, feedEntry)
+
+    val temporary0 = databaseEntry.temporaryFile()
+    val temporary1 = databaseEntry.temporaryFile()
+    Assertions.assertNotEquals(temporary0, temporary1)
+    temporary0.writeText("0123456789")
+    temporary0.setLastModified(1000L)
+
+    Assertions.assertEquals(10L, database0.deleteTemporaryFiles(Instant(2000L)))
+    Assertions.assertFalse(temporary0.exists())
+    Assertions.assertTrue(temporary1.exists())
+
+    val format0 = databaseEntry.findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+    Assertions.assertNull(format0.lastOpened)
+    format0.setLastOpened(Instant(3000L))
+
+    val database1 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
+    val format1 =
+      database1.entry(bookID).findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+    Assertions.assertEquals(Instant(3000L), format1.lastOpened)
+  }
+
+  /**
+   * Copying in an EPUB builds an index of it, and the index is rebuilt if it goes missing.
+   */
+
+  @Test
+  fun testEntryEPUBIndex() {
+    val parser = OPDSJSONParser.newParser()
+    val serializer = OPDSJSONSerializer.newSerializer()
+    val directory = DirectoryUtilities.directoryCreateTemporary()
+    val database0 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
+
+    val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithEPUB()
+    val bookID = BookID.create("abcd")
+    val databaseEntry = database0.createOrUpdate(bookID, feedEntry)
+    val format = databaseEntry.findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+
+    Assertions.assertNull(format.index())
+
+    val timeCopyThen = System.nanoTime()
+    format.copyInBook(EPUBTesting.createEPUB(chapters = 200, chapterLength = 20_000))
+    val timeCopyNow = System.nanoTime()
+
+    val timeLoadThen = System.nanoTime()
+    val index = format.index()!!
+    val timeLoadNow = System.nanoTime()
+
+    logger.debug(
+      "copy and index: {}ms, load index: {}ms",
+      (timeCopyNow - timeCopyThen) / 1_000_000L,
+      (timeLoadNow - timeLoadThen) / 1_000_000L
+    )
+
+    Assertions.assertEquals(EPUBIndex.CURRENT_VERSION, index.version)
+    Assertions.assertEquals("OEBPS/content.opf", index.packagePath)
+    Assertions.assertFalse(index.fixedLayout)
+    Assertions.assertEquals(200, index.readingOrder.size)
+    Assertions.assertEquals("OEBPS/text/chapter 0.xhtml", index.readingOrder[0].href)
+
+    val entries = index.entries.associateBy { entry -> entry.path }
+    for (item in index.readingOrder) {
+      val stored = entries[item.href]!!.compressedLength
+      Assertions.assertEquals(((stored + 1023) / 1024).toInt(), item.positions)
+    }
+
+    Assertions.assertEquals(200, index.tableOfContents.size)
+    Assertions.assertEquals(
+      EPUBIndex.TOCEntry("Chapter 1", "OEBPS/text/chapter 1.xhtml#start", 0),
+      index.tableOfContents[1]
+    )
+
+    File(File(directory, bookID.value()), "epub-index.json").delete()
+    Assertions.assertEquals(index, format.index())
+
+    format.deleteBookData()
+    Assertions.assertNull(format.index())
+  }
+
+  /**
+   * A full-text index can be built for an EPUB, survives reopening the database, and is
+   * deleted along with the book data. Books protected by DRM are not indexed.
+   */
+
+  @Test
+  fun testEntryEPUBTextIndex() {
+    val parser = OPDSJSONParser.newParser()
+    val serializer = OPDSJSONSerializer.newSerializer()
+    val directory = DirectoryUtilities.directoryCreateTemporary()
+    val database0 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
+
+    val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithEPUB()
+    val bookID = BookID.create("abcd")
+    val databaseEntry = database0.createOrUpdate(bookID, feedEntry)
+    val format0 = databaseEntry.findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+
+    Assertions.assertNull(format0.buildTextIndex())
+
+    format0.copyInBook(
+      EPUBTesting.createEPUB(chapters = 100, chapterLength = 20_000) { chapter ->
+        "Chapter Marker$chapter &amp; Café"
+      }
+    )
+    Assertions.assertNull(format0.textIndex())
+
+    val timeThen = System.nanoTime()
+    val index0 = format0.buildTextIndex()!!
+    val timeNow = System.nanoTime()
+    logger.debug(
+      "built text index of {} terms in {}ms",
+      index0.termCount,
+      (timeNow - timeThen) / 1_000_000L
+    )
+
+    Assertions.assertEquals(100, index0.items.size)
+    Assertions.assertEquals("OEBPS/text/chapter 0.xhtml", index0.items[0].href)
+    Assertions.assertEquals(100, index0.postings("chapter").size)
+    Assertions.assertEquals(100, index0.postings("cafe").size)
+    Assertions.assertEquals(listOf<Any>(), index0.postings("amp"))
+
+    val postings = index0.postings("marker42")
+    Assertions.assertEquals(1, postings.size)
+    Assertions.assertEquals(42, postings[0].item)
+    Assertions.assertTrue(
+      index0.excerpt(postings[0].item, postings[0].offset, 40).startsWith("Chapter Marker42 & Café")
+    )
+
+    val database1 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
+    val format1 =
+      database1.entry(bookID).findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+    val index1 = format1.textIndex()!!
+    Assertions.assertEquals(index0.items, index1.items)
+    Assertions.assertEquals(postings, index1.postings("marker42"))
+
+    format1.deleteBookData()
+    Assertions.assertNull(format1.textIndex())
+
+    format1.copyInBook(EPUBTesting.createEPUB(chapters = 1, chapterLength = 100))
+    format1.setDRMKind(BookDRMKind.LCP)
+    Assertions.assertNull(format1.buildTextIndex())
+  }
+
   /**
    * Creating a book database entry with an epub format, and copying in a book and then
    * destroying the entry, works.
@@ -533,7 +743,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithEPUB()
     val bookID = BookID.create("abcd")
@@ -560,7 +770,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithPDF()
     val bookID = BookID.create("abcd")
@@ -593,7 +803,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithPDF()
     val bookID = BookID.create("abcd")
@@ -620,7 +830,7 @@ abstract class BookDatabaseContract {
     val serializer = OPDSJSONSerializer.newSerializer()
     val directory = DirectoryUtilities.directoryCreateTemporary()
     val database0 =
-      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
 
     val feedEntry: OPDSAcquisitionFeedEntry = this.acquisitionFeedEntryWithAudioBook()
     val bookID = BookID.create("abcd")
@@ -684,7 +894,7 @@ abstract class BookDatabaseContract {
 
     run {
       val database =
-        BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+        BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
       val feedEntry: OPDSAcquisitionFeedEntry =
         this.acquisitionFeedEntryWithAdobeDRMEPUB()
       val entry0 =
@@ -713,7 +923,7 @@ abstract class BookDatabaseContract {
 
     run {
       val database =
-        BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+        BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
       val entry0 =
         database.entry(bookID)
       val formatHandle =
@@ -734,7 +944,7 @@ abstract class BookDatabaseContract {
 
     run {
       val database =
-        BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsNothing, accountID, directory)
+        BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsNothing, accountID, directory, this.storage())
       val entry0 =
         database.entry(bookID)
       val formatHandle =
@@ -754,7 +964,7 @@ abstract class BookDatabaseContract {
 
     run {
       val database =
-        BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+        BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory, this.storage())
       val entry0 =
         database.entry(bookID)
       val formatHandle =
@@ -0,0 +1,22 @@
+package org.nypl.simplified.tests.books.book_database;
+
+import android.content.Context;
+
+import org.jetbrains.annotations.NotNull;
+import org.mockito.Mockito;
+import org.nypl.simplified.books.book_database.BookDatabaseStorage;
+
+public final class BookDatabaseLogTest extends BookDatabaseContract {
+
+  @NotNull
+  @Override
+  protected Context context() {
+    return Mockito.mock(Context.class);
+  }
+
+  @NotNull
+  @Override
+  protected BookDatabaseStorage storage() {
+    return BookDatabaseStorage.LOG;
+  }
+}
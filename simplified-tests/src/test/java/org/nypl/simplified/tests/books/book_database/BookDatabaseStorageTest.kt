@@ -0,0 +1,265 @@
+package org.nypl.simplified.tests.books.book_database
+
+import android.content.Context
+import com.io7m.jfunctional.Option
+import one.irradia.mime.vanilla.MIMEParser
+import org.joda.time.DateTime
+import org.joda.time.Instant
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.mockito.Mockito
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookDRMKind
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.book_database.BookDatabase
+import org.nypl.simplified.books.book_database.BookDatabaseStorage
+import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
+import org.nypl.simplified.books.book_database.api.BookDatabaseType
+import org.nypl.simplified.opds.core.OPDSAcquisition
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAvailabilityOpenAccess
+import org.nypl.simplified.opds.core.OPDSJSONParser
+import org.nypl.simplified.opds.core.OPDSJSONSerializer
+import org.nypl.simplified.tests.books.BookFormatsTesting
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.RandomAccessFile
+import java.net.URI
+import java.util.UUID
+
+class BookDatabaseStorageTest {
+
+  private val logger =
+    LoggerFactory.getLogger(BookDatabaseStorageTest::class.java)
+
+  private val accountID =
+    AccountID(UUID.fromString("46d17029-14ba-4e34-bcaa-def02713575a"))
+
+  @TempDir
+  @JvmField
+  var directory: File? = null
+
+  private fun open(
+    directory: File,
+    storage: BookDatabaseStorage
+  ): BookDatabaseType {
+    return BookDatabase.open(
+      context = Mockito.mock(Context::class.java),
+      parser = OPDSJSONParser.newParser(),
+      serializer = OPDSJSONSerializer.newSerializer(),
+      formats = BookFormatsTesting.supportsEverything,
+      owner = this.accountID,
+      directory = directory,
+      storage = storage
+    )
+  }
+
+  private fun entryWithEPUB(id: String): OPDSAcquisitionFeedEntry {
+    val entry =
+      OPDSAcquisitionFeedEntry.newBuilder(
+        id,
+        "Title $id",
+        DateTime.now(),
+        OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+      )
+    entry.addAcquisition(
+      OPDSAcquisition(
+        OPDSAcquisition.Relation.ACQUISITION_BORROW,
+        URI.create("http://example.com/$id"),
+        MIMEParser.parseRaisingException("application/epub+zip"),
+        emptyList()
+      )
+    )
+    return entry.build()
+  }
+
+  private fun entries(count: Int): Map<BookID, OPDSAcquisitionFeedEntry> =
+    (0 until count).associate { index ->
+      BookID.create("book-$index") to this.entryWithEPUB("book-$index")
+    }
+
+  /**
+   * Opening a database in the directory layout with log storage moves every record into the
+   * log, and the records survive reopening.
+   */
+
+  @Test
+  fun testMigrateDirectoriesToLog() {
+    val databaseDirectory = File(this.directory, "books")
+    val id0 = BookID.create("a")
+    val id1 = BookID.create("b")
+
+    val db0 = this.open(databaseDirectory, BookDatabaseStorage.DIRECTORIES)
+    val format0 =
+      db0.createOrUpdate(id0, this.entryWithEPUB("a"))
+        .findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+    format0.setLastOpened(Instant(3000L))
+    format0.setDRMKind(BookDRMKind.LCP)
+    db0.createOrUpdate(id1, this.entryWithEPUB("b"))
+
+    Assertions.assertTrue(File(databaseDirectory, "a/meta.json").isFile)
+    Assertions.assertTrue(File(databaseDirectory, "a/epub-meta_last_opened.txt").isFile)
+
+    for (attempt in 0 until 2) {
+      val db1 = this.open(databaseDirectory, BookDatabaseStorage.LOG)
+      Assertions.assertEquals(setOf(id0, id1), db1.books())
+      Assertions.assertEquals("Title a", db1.entry(id0).book.entry.title)
+
+      val format1 =
+        db1.entry(id0).findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+      Assertions.assertEquals(Instant(3000L), format1.lastOpened)
+      Assertions.assertEquals(BookDRMKind.LCP, format1.drmInformationHandle.info.kind)
+    }
+
+    Assertions.assertTrue(File(databaseDirectory, BookDatabase.LOG_FILENAME).isFile)
+    Assertions.assertFalse(File(databaseDirectory, "a/meta.json").exists())
+    Assertions.assertFalse(File(databaseDirectory, "a/epub-meta_last_opened.txt").exists())
+    Assertions.assertFalse(File(databaseDirectory, "a/epub-drm.txt").exists())
+    Assertions.assertTrue(File(databaseDirectory, "a").isDirectory)
+  }
+
+  /**
+   * A migration that was interrupted before its transaction was committed runs again the next
+   * time that the database is opened.
+   */
+
+  @Test
+  fun testMigrateInterrupted() {
+    val databaseDirectory = File(this.directory, "books")
+    val id0 = BookID.create("a")
+
+    val db0 = this.open(databaseDirectory, BookDatabaseStorage.DIRECTORIES)
+    db0.createOrUpdate(id0, this.entryWithEPUB("a"))
+
+    /*
+     * The log is created before the records are committed to it.
+     */
+
+    File(databaseDirectory, BookDatabase.LOG_FILENAME).writeBytes(byteArrayOf())
+
+    val db1 = this.open(databaseDirectory, BookDatabaseStorage.LOG)
+    Assertions.assertEquals(setOf(id0), db1.books())
+    Assertions.assertEquals("Title a", db1.entry(id0).book.entry.title)
+    Assertions.assertFalse(File(databaseDirectory, "a/meta.json").exists())
+  }
+
+  /**
+   * A transaction that was only partly written is discarded when the log is opened, and the
+   * transactions that follow it are not lost.
+   */
+
+  @Test
+  fun testLogTornTransaction() {
+    val databaseDirectory = File(this.directory, "books")
+    val log = File(databaseDirectory, BookDatabase.LOG_FILENAME)
+
+    val db0 = this.open(databaseDirectory, BookDatabaseStorage.LOG)
+    db0.createOrUpdate(BookID.create("a"), this.entryWithEPUB("a"))
+    db0.createOrUpdate(BookID.create("b"), this.entryWithEPUB("b"))
+
+    val sizeThen = log.length()
+    db0.createOrUpdate(BookID.create("c"), this.entryWithEPUB("c"))
+    RandomAccessFile(log, "rw").use { file -> file.setLength(sizeThen + 100L) }
+
+    val db1 = this.open(databaseDirectory, BookDatabaseStorage.LOG)
+    Assertions.assertEquals(setOf(BookID.create("a"), BookID.create("b")), db1.books())
+    Assertions.assertEquals(sizeThen, log.length())
+
+    db1.createOrUpdate(BookID.create("d"), this.entryWithEPUB("d"))
+
+    val db2 = this.open(databaseDirectory, BookDatabaseStorage.LOG)
+    Assertions.assertEquals(
+      setOf(BookID.create("a"), BookID.create("b"), BookID.create("d")),
+      db2.books()
+    )
+  }
+
+  /**
+   * Entries written together are written in a single transaction, and so are either all
+   * present or all absent.
+   */
+
+  @Test
+  fun testLogCreateOrUpdateAllAtomic() {
+    val databaseDirectory = File(this.directory, "books")
+    val log = File(databaseDirectory, BookDatabase.LOG_FILENAME)
+
+    val db0 = this.open(databaseDirectory, BookDatabaseStorage.LOG)
+    val entries = this.entries(10)
+    val sizeThen = log.length()
+    Assertions.assertEquals(entries.keys, db0.createOrUpdateAll(entries).keys)
+    Assertions.assertEquals(entries.keys, db0.books())
+
+    val db1 = this.open(databaseDirectory, BookDatabaseStorage.LOG)
+    Assertions.assertEquals(entries.keys, db1.books())
+
+    RandomAccessFile(log, "rw").use { file -> file.setLength(sizeThen + 100L) }
+
+    val db2 = this.open(databaseDirectory, BookDatabaseStorage.LOG)
+    Assertions.assertEquals(setOf<BookID>(), db2.books())
+  }
+
+  /**
+   * Deleting an entry removes its records from the log.
+   */
+
+  @Test
+  fun testLogDeleteEntry() {
+    val databaseDirectory = File(this.directory, "books")
+    val id0 = BookID.create("a")
+
+    val db0 = this.open(databaseDirectory, BookDatabaseStorage.LOG)
+    db0.createOrUpdate(id0, this.entryWithEPUB("a"))
+      .findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+      .setLastOpened(Instant(3000L))
+    db0.entry(id0).delete()
+
+    val db1 = this.open(databaseDirectory, BookDatabaseStorage.LOG)
+    Assertions.assertEquals(setOf<BookID>(), db1.books())
+
+    val format =
+      db1.createOrUpdate(id0, this.entryWithEPUB("a"))
+        .findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+    Assertions.assertNull(format.lastOpened)
+  }
+
+  /**
+   * Compare syncing, opening, and listing a database with each kind of storage. This does not
+   * assert anything about timing; the results are logged.
+   */
+
+  @Test
+  fun testStorageComparison() {
+    val count = 200
+    val entries = this.entries(count)
+
+    for (storage in BookDatabaseStorage.values()) {
+      val databaseDirectory = File(this.directory, storage.name)
+
+      val syncThen = System.nanoTime()
+      val db0 = this.open(databaseDirectory, storage)
+      db0.createOrUpdateAll(entries)
+      val syncTime = System.nanoTime() - syncThen
+
+      val openThen = System.nanoTime()
+      val db1 = this.open(databaseDirectory, storage)
+      val openTime = System.nanoTime() - openThen
+
+      val listThen = System.nanoTime()
+      val titles = db1.books().map { id -> db1.entry(id).book.entry.title }
+      val listTime = System.nanoTime() - listThen
+
+      Assertions.assertEquals(count, titles.size)
+
+      this.logger.debug(
+        "{}: {} books: sync {}ms, open {}ms, list {}ms",
+        storage,
+        count,
+        syncTime / 1_000_000L,
+        openTime / 1_000_000L,
+        listTime / 1_000_000L
+      )
+    }
+  }
+}
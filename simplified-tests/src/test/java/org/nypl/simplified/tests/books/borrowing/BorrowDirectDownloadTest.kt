@@ -4,6 +4,7 @@ import android.content.Context
 import io.reactivex.disposables.Disposable
 import okhttp3.mockwebserver.MockResponse
 import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.SocketPolicy
 import org.joda.time.Instant
 import org.junit.jupiter.api.AfterEach
 import org.junit.jupiter.api.Assertions
@@ -56,6 +57,7 @@ import org.nypl.simplified.tests.mocking.MockBorrowContext
 import org.nypl.simplified.tests.mocking.MockBundledContentResolver
 import org.nypl.simplified.tests.mocking.MockContentResolver
 import org.slf4j.LoggerFactory
+import java.io.File
 import java.net.URI
 import java.util.concurrent.TimeUnit
 
@@ -457,4 +459,201 @@ class BorrowDirectDownloadTest {
     assertEquals(LoanedDownloaded::class.java, this.bookStates.removeAt(0).javaClass)
     assertEquals(0, this.bookStates.size)
   }
+
+  private fun setUpEPUBDownload() {
+    this.context.currentURIField =
+      this.webServer.url("/book.epub").toUri()
+    this.context.currentAcquisitionPathElement =
+      OPDSAcquisitionPathElement(genericEPUBFiles, null)
+
+    this.bookDatabaseEntry.formatHandlesField.clear()
+    this.bookDatabaseEntry.formatHandlesField.add(this.epubHandle)
+    check(this.bookDatabaseEntry.formatHandlesField.size == 1)
+    check(BookStatus.fromBook(this.bookDatabaseEntry.book) is Loaned)
+  }
+
+  private fun largeBook(size: Int, seed: Char): String {
+    val text = StringBuilder(size)
+    for (index in 0 until size) {
+      text.append(seed + (index % 26))
+    }
+    return text.toString()
+  }
+
+  private fun writePartial(
+    partial: File,
+    data: String,
+    etag: String,
+    length: Int
+  ) {
+    partial.writeText(data)
+    File(partial.parentFile, partial.name + ".meta")
+      .writeText("etag=$etag\nlength=$length\n")
+  }
+
+  /**
+   * A download that is cut off mid-transfer is resumed with a range request.
+   */
+
+  @Test
+  fun testDownloadResumesAfterDisconnect() {
+    val task = BorrowDirectDownload.createSubtask()
+    this.setUpEPUBDownload()
+
+    val book = this.largeBook(4_000_000, 'a')
+    val partial = this.context.partialDownloadFile(genericEPUBFiles)
+
+    this.webServer.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("Content-Type", "application/epub+zip")
+        .setHeader("ETag", "\"v1\"")
+        .setBody(book)
+        .throttleBody(400_000L, 100L, TimeUnit.MILLISECONDS)
+        .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY)
+    )
+
+    val timeFirst = System.nanoTime()
+    try {
+      task.execute(this.context)
+      Assertions.fail()
+    } catch (e: Exception) {
+      this.logger.error("exception: ", e)
+    }
+    val timeFirstEnd = System.nanoTime()
+
+    assertEquals(httpConnectionFailed, this.taskRecorder.finishFailure<Unit>().lastErrorCode)
+    val received = partial.length()
+    Assertions.assertTrue(received > 0L)
+    Assertions.assertTrue(received < book.length)
+
+    this.webServer.enqueue(
+      MockResponse()
+        .setResponseCode(206)
+        .setHeader("Content-Type", "application/epub+zip")
+        .setHeader("ETag", "\"v1\"")
+        .setHeader("Content-Range", "bytes $received-${book.length - 1}/${book.length}")
+        .setBody(book.substring(received.toInt()))
+        .throttleBody(400_000L, 100L, TimeUnit.MILLISECONDS)
+    )
+
+    this.taskRecorder = TaskRecorder.create()
+    this.context.taskRecorder = this.taskRecorder
+
+    val timeResume = System.nanoTime()
+    task.execute(this.context)
+    val timeResumeEnd = System.nanoTime()
+
+    this.webServer.takeRequest()
+    val resumed = this.webServer.takeRequest()
+    assertEquals("bytes=$received-", resumed.getHeader("Range"))
+    assertEquals("\"v1\"", resumed.getHeader("If-Range"))
+
+    this.verifyBookRegistryHasStatus(LoanedDownloaded::class.java)
+    assertEquals(book, this.epubHandle.bookData)
+    Assertions.assertFalse(partial.exists())
+
+    this.logger.debug(
+      "interrupted after {} of {} bytes in {}ms, resumed in {}ms",
+      received,
+      book.length,
+      (timeFirstEnd - timeFirst) / 1_000_000L,
+      (timeResumeEnd - timeResume) / 1_000_000L
+    )
+  }
+
+  /**
+   * If the server ignores the range request and returns the whole file, the partial download
+   * is replaced.
+   */
+
+  @Test
+  fun testDownloadResumeReplacedWhenContentChanged() {
+    val task = BorrowDirectDownload.createSubtask()
+    this.setUpEPUBDownload()
+
+    val partial = this.context.partialDownloadFile(genericEPUBFiles)
+    this.writePartial(partial, "OLD!", "\"v1\"", 8)
+
+    this.webServer.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("Content-Type", "application/epub+zip")
+        .setHeader("ETag", "\"v2\"")
+        .setBody("EPUB!")
+    )
+
+    task.execute(this.context)
+
+    val sent = this.webServer.takeRequest()
+    assertEquals("bytes=4-", sent.getHeader("Range"))
+    assertEquals("\"v1\"", sent.getHeader("If-Range"))
+
+    this.verifyBookRegistryHasStatus(LoanedDownloaded::class.java)
+    assertEquals("EPUB!", this.epubHandle.bookData)
+    Assertions.assertFalse(partial.exists())
+  }
+
+  /**
+   * If the server returns a range that does not match the partial download, the download is
+   * restarted from the beginning.
+   */
+
+  @Test
+  fun testDownloadResumeRestartsOnMismatchedRange() {
+    val task = BorrowDirectDownload.createSubtask()
+    this.setUpEPUBDownload()
+
+    val partial = this.context.partialDownloadFile(genericEPUBFiles)
+    this.writePartial(partial, "EP", "\"v1\"", 5)
+
+    this.webServer.enqueue(
+      MockResponse()
+        .setResponseCode(206)
+        .setHeader("Content-Type", "application/epub+zip")
+        .setHeader("ETag", "\"v1\"")
+        .setHeader("Content-Range", "bytes 0-4/5")
+        .setBody("EPUB!")
+    )
+    this.webServer.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("Content-Type", "application/epub+zip")
+        .setHeader("ETag", "\"v1\"")
+        .setBody("EPUB!")
+    )
+
+    task.execute(this.context)
+
+    assertEquals("bytes=2-", this.webServer.takeRequest().getHeader("Range"))
+    assertEquals(null, this.webServer.takeRequest().getHeader("Range"))
+
+    this.verifyBookRegistryHasStatus(LoanedDownloaded::class.java)
+    assertEquals("EPUB!", this.epubHandle.bookData)
+  }
+
+  /**
+   * A partial download without validators is not resumed.
+   */
+
+  @Test
+  fun testDownloadNotResumedWithoutValidators() {
+    val task = BorrowDirectDownload.createSubtask()
+    this.setUpEPUBDownload()
+
+    val partial = this.context.partialDownloadFile(genericEPUBFiles)
+    partial.writeText("EP")
+
+    this.webServer.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("Content-Type", "application/epub+zip")
+        .setBody("EPUB!")
+    )
+
+    task.execute(this.context)
+
+    assertEquals(null, this.webServer.takeRequest().getHeader("Range"))
+    assertEquals("EPUB!", this.epubHandle.bookData)
+  }
 }
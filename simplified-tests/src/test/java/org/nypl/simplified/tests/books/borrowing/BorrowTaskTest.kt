@@ -40,6 +40,7 @@ import org.nypl.simplified.books.book_database.BookDatabase
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleAudioBook
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
 import org.nypl.simplified.books.book_database.api.BookDatabaseType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannel
 import org.nypl.simplified.books.book_registry.BookRegistry
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
@@ -164,6 +165,7 @@ class BorrowTaskTest {
         cacheDirectory = this.cacheDirectory,
         clock = { Instant.now() },
         contentResolver = this.contentResolver,
+        downloadProgress = BookDownloadProgressChannel.create(),
         httpClient = this.httpClient,
         profiles = this.profiles,
         services = this.services,
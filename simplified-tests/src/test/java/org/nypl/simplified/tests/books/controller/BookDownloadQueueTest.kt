@@ -0,0 +1,385 @@
+package org.nypl.simplified.tests.books.controller
+
+import com.io7m.jfunctional.Option
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.joda.time.DateTime
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.api.BookIDs
+import org.nypl.simplified.books.book_registry.BookRegistry
+import org.nypl.simplified.books.book_registry.BookRegistryType
+import org.nypl.simplified.books.borrowing.BorrowRequest
+import org.nypl.simplified.books.borrowing.BorrowTaskType
+import org.nypl.simplified.books.controller.BookDownloadQueue
+import org.nypl.simplified.books.controller.api.BookDownloadNetworkPolicy
+import org.nypl.simplified.networkconnectivity.api.NetworkConnectivityType
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAvailabilityLoaned
+import org.nypl.simplified.opds.core.OPDSAvailabilityOpenAccess
+import org.nypl.simplified.profiles.api.ProfileID
+import org.nypl.simplified.taskrecorder.api.TaskRecorder
+import org.nypl.simplified.taskrecorder.api.TaskResult
+import org.nypl.simplified.tests.mocking.MockBookDatabase
+import org.slf4j.LoggerFactory
+import java.net.HttpURLConnection
+import java.net.URI
+import java.util.Collections
+import java.util.UUID
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class BookDownloadQueueTest {
+
+  private val logger =
+    LoggerFactory.getLogger(BookDownloadQueueTest::class.java)
+
+  private lateinit var server: MockWebServer
+  private lateinit var bookRegistry: BookRegistryType
+  private lateinit var network: MockNetwork
+  private lateinit var profileID: ProfileID
+  private lateinit var started: MutableList<String>
+  private lateinit var cancelled: MutableList<BookID>
+  private lateinit var running: AtomicInteger
+  private lateinit var runningMaximum: AtomicInteger
+
+  private class MockNetwork : NetworkConnectivityType {
+    @Volatile
+    override var isNetworkAvailable: Boolean = true
+
+    @Volatile
+    var wifiAvailable: Boolean = true
+
+    /**
+     * Counted down each time the queue checks for Wi-Fi.
+     */
+
+    @Volatile
+    var wifiChecks: CountDownLatch = CountDownLatch(0)
+
+    override val isWifiAvailable: Boolean
+      get() {
+        this.wifiChecks.countDown()
+        return this.wifiAvailable
+      }
+  }
+
+  /**
+   * A borrow task that fetches the title from the server, standing in for the acquisition
+   * and download steps of a real borrow.
+   */
+
+  private inner class FetchingTask(
+    private val request: BorrowRequest.Start,
+    private val gate: CountDownLatch?
+  ) : BorrowTaskType {
+
+    override fun execute(): TaskResult<*> {
+      val title = this.request.opdsAcquisitionFeedEntry.title
+      this@BookDownloadQueueTest.started.add(title)
+      val now = this@BookDownloadQueueTest.running.incrementAndGet()
+      this@BookDownloadQueueTest.runningMaximum.accumulateAndGet(now) { x, y -> maxOf(x, y) }
+
+      try {
+        this.gate?.await(10L, TimeUnit.SECONDS)
+
+        val recorder = TaskRecorder.create()
+        recorder.beginNewStep("Downloading $title...")
+        val uri = this@BookDownloadQueueTest.server.url("/$title").toUri()
+        val connection = uri.toURL().openConnection() as HttpURLConnection
+        try {
+          connection.inputStream.use { stream -> stream.readBytes() }
+          if (connection.responseCode != 200) {
+            recorder.currentStepFailed("Status ${connection.responseCode}", "httpError")
+            return recorder.finishFailure<Unit>()
+          }
+        } finally {
+          connection.disconnect()
+        }
+        recorder.currentStepSucceeded("Downloaded.")
+        return recorder.finishSuccess(Unit)
+      } finally {
+        this@BookDownloadQueueTest.running.decrementAndGet()
+      }
+    }
+
+    override fun cancel() {
+    }
+  }
+
+  @BeforeEach
+  fun testSetup() {
+    this.server = MockWebServer()
+    this.server.dispatcher = object : Dispatcher() {
+      override fun dispatch(request: RecordedRequest): MockResponse {
+        Thread.sleep(10L)
+        return MockResponse()
+          .setResponseCode(200)
+          .setBody("Contents of ${request.path}")
+      }
+    }
+    this.server.start()
+
+    this.bookRegistry = BookRegistry.create()
+    this.network = MockNetwork()
+    this.profileID = ProfileID(UUID.randomUUID())
+    this.started = Collections.synchronizedList(mutableListOf())
+    this.cancelled = Collections.synchronizedList(mutableListOf())
+    this.running = AtomicInteger(0)
+    this.runningMaximum = AtomicInteger(0)
+  }
+
+  @AfterEach
+  fun tearDown() {
+    this.server.close()
+  }
+
+  private fun entryOf(title: String): OPDSAcquisitionFeedEntry {
+    return OPDSAcquisitionFeedEntry.newBuilder(
+      "urn:$title",
+      title,
+      DateTime.now(),
+      OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+    ).build()
+  }
+
+  private fun createQueue(
+    concurrency: Int,
+    gate: CountDownLatch? = null,
+    downloaded: CountDownLatch? = null
+  ): BookDownloadQueue {
+    return BookDownloadQueue(
+      bookRegistry = this.bookRegistry,
+      network = this.network,
+      createTask = { request -> this.FetchingTask(request, gate) },
+      concurrency = concurrency,
+      networkRetryMilliseconds = 10L,
+      onDownloaded = { downloaded?.countDown() },
+      onCancelled = { _, bookID -> this.cancelled.add(bookID) }
+    )
+  }
+
+  /**
+   * Many titles across several accounts are all downloaded, no more than the configured
+   * number at a time, and leave nothing in the journals.
+   */
+
+  @Test
+  fun testManyTitles() {
+    val queue = this.createQueue(concurrency = 4)
+    val databases = (0 until 3).map { MockBookDatabase(AccountID(UUID.randomUUID())) }
+
+    val timeThen = System.nanoTime()
+    val futures = (0 until 60).map { index ->
+      val database = databases[index % databases.size]
+      queue.enqueue(this.profileID, database.owner, database, this.entryOf("title$index"))
+    }
+    val results = futures.map { future -> future.get(30L, TimeUnit.SECONDS) }
+    val timeNow = System.nanoTime()
+
+    this.logger.debug(
+      "downloaded {} titles in {}ms",
+      results.size,
+      TimeUnit.NANOSECONDS.toMillis(timeNow - timeThen)
+    )
+
+    Assertions.assertTrue(results.all { result -> result is TaskResult.Success })
+    Assertions.assertEquals(60, this.server.requestCount)
+    Assertions.assertTrue(this.runningMaximum.get() <= 4)
+    Assertions.assertTrue(databases.all { database -> database.downloadsQueued().isEmpty() })
+
+    val statistics = queue.statistics()
+    Assertions.assertEquals(60L, statistics.succeeded)
+    Assertions.assertEquals(0L, statistics.failed)
+    Assertions.assertEquals(0, statistics.running)
+    Assertions.assertEquals(mapOf<AccountID, Int>(), statistics.queued)
+    Assertions.assertEquals(60, statistics.finishedInLastMinute)
+  }
+
+  /**
+   * Waiting downloads are started in turn from each account.
+   */
+
+  @Test
+  fun testFairness() {
+    val gate = CountDownLatch(1)
+    val queue = this.createQueue(concurrency = 1, gate = gate)
+    val database0 = MockBookDatabase(AccountID(UUID.randomUUID()))
+    val database1 = MockBookDatabase(AccountID(UUID.randomUUID()))
+
+    val futures = mutableListOf(
+      queue.enqueue(this.profileID, database0.owner, database0, this.entryOf("a0")),
+      queue.enqueue(this.profileID, database0.owner, database0, this.entryOf("a1")),
+      queue.enqueue(this.profileID, database0.owner, database0, this.entryOf("a2")),
+      queue.enqueue(this.profileID, database0.owner, database0, this.entryOf("a3")),
+      queue.enqueue(this.profileID, database1.owner, database1, this.entryOf("b0")),
+      queue.enqueue(this.profileID, database1.owner, database1, this.entryOf("b1"))
+    )
+
+    val statistics = queue.statistics()
+    Assertions.assertEquals(1, statistics.running)
+    Assertions.assertEquals(3, statistics.queued[database0.owner])
+    Assertions.assertEquals(2, statistics.queued[database1.owner])
+
+    gate.countDown()
+    futures.forEach { future -> future.get(10L, TimeUnit.SECONDS) }
+    Assertions.assertEquals(listOf("a0", "a1", "b0", "a2", "b1", "a3"), this.started.toList())
+  }
+
+  /**
+   * Downloads recorded in a book database are resumed.
+   */
+
+  @Test
+  fun testResume() {
+    val database = MockBookDatabase(AccountID(UUID.randomUUID()))
+    for (title in listOf("x", "y", "z")) {
+      val entry = this.entryOf(title)
+      val bookID = BookIDs.newFromOPDSEntry(entry)
+      database.createOrUpdate(bookID, entry)
+      database.downloadQueued(bookID)
+    }
+
+    val downloaded = CountDownLatch(3)
+    val queue = this.createQueue(concurrency = 2, downloaded = downloaded)
+    queue.resume(this.profileID, database.owner, database)
+
+    Assertions.assertTrue(downloaded.await(10L, TimeUnit.SECONDS))
+    Assertions.assertEquals(3L, queue.statistics().succeeded)
+    Assertions.assertEquals(setOf("x", "y", "z"), this.started.toSet())
+    Assertions.assertEquals(listOf<Any>(), database.downloadsQueued())
+  }
+
+  /**
+   * Downloads wait for Wi-Fi under the Wi-Fi only policy.
+   */
+
+  @Test
+  fun testWifiOnly() {
+    this.network.wifiAvailable = false
+
+    val queue = this.createQueue(concurrency = 2)
+    queue.networkPolicy = BookDownloadNetworkPolicy.DOWNLOAD_ON_WIFI_ONLY
+
+    val database = MockBookDatabase(AccountID(UUID.randomUUID()))
+    val future =
+      queue.enqueue(this.profileID, database.owner, database, this.entryOf("w"))
+
+    /*
+     * Wait for the queue to check the network again, and find that it still can't start.
+     */
+
+    Assertions.assertTrue(queue.statistics().waitingForNetwork)
+    val checks = CountDownLatch(2)
+    this.network.wifiChecks = checks
+    Assertions.assertTrue(checks.await(10L, TimeUnit.SECONDS))
+    Assertions.assertFalse(future.isDone)
+    Assertions.assertTrue(queue.statistics().waitingForNetwork)
+    Assertions.assertEquals(1, database.downloadsQueued().size)
+
+    this.network.wifiAvailable = true
+    Assertions.assertTrue(future.get(10L, TimeUnit.SECONDS) is TaskResult.Success)
+    Assertions.assertFalse(queue.statistics().waitingForNetwork)
+    Assertions.assertEquals(listOf<Any>(), database.downloadsQueued())
+  }
+
+  /**
+   * Cancelling a download that has not started removes it from the queue, and deletes the
+   * database entry of a book that was never borrowed.
+   */
+
+  @Test
+  fun testCancelWaiting() {
+    val gate = CountDownLatch(1)
+    val queue = this.createQueue(concurrency = 1, gate = gate)
+    val database = MockBookDatabase(AccountID(UUID.randomUUID()))
+
+    val entry0 = this.entryOf("c0")
+    val entry1 = this.entryOf("c1")
+    val future0 = queue.enqueue(this.profileID, database.owner, database, entry0)
+    val future1 = queue.enqueue(this.profileID, database.owner, database, entry1)
+
+    queue.cancel(BookIDs.newFromOPDSEntry(entry1))
+    Assertions.assertTrue(future1.get(10L, TimeUnit.SECONDS) is TaskResult.Success)
+    Assertions.assertEquals(listOf(BookIDs.newFromOPDSEntry(entry0)), database.downloadsQueued())
+    Assertions.assertEquals(listOf(BookIDs.newFromOPDSEntry(entry1)), this.cancelled.toList())
+    Assertions.assertTrue(database.entries[BookIDs.newFromOPDSEntry(entry1)]!!.deleted)
+    Assertions.assertTrue(this.bookRegistry.book(BookIDs.newFromOPDSEntry(entry1)).isNone)
+
+    gate.countDown()
+    future0.get(10L, TimeUnit.SECONDS)
+    Assertions.assertEquals(listOf("c0"), this.started.toList())
+    Assertions.assertEquals(1, this.server.requestCount)
+  }
+
+  /**
+   * Cancelling a download that has not started keeps the database entry of a loaned book.
+   */
+
+  @Test
+  fun testCancelWaitingKeepsLoan() {
+    val gate = CountDownLatch(1)
+    val queue = this.createQueue(concurrency = 1, gate = gate)
+    val database = MockBookDatabase(AccountID(UUID.randomUUID()))
+
+    val entry0 = this.entryOf("l0")
+    val entry1 =
+      OPDSAcquisitionFeedEntry.newBuilder(
+        "urn:l1",
+        "l1",
+        DateTime.now(),
+        OPDSAvailabilityLoaned.get(Option.none(), Option.none(), Option.none())
+      ).build()
+    val bookID1 = BookIDs.newFromOPDSEntry(entry1)
+
+    val future0 = queue.enqueue(this.profileID, database.owner, database, entry0)
+    queue.enqueue(this.profileID, database.owner, database, entry1)
+    queue.cancel(bookID1)
+
+    Assertions.assertFalse(database.entries[bookID1]!!.deleted)
+    Assertions.assertTrue(this.bookRegistry.book(bookID1).isSome)
+
+    gate.countDown()
+    future0.get(10L, TimeUnit.SECONDS)
+  }
+
+  /**
+   * Cancelling the downloads of an account completes only once its running download has
+   * stopped, and leaves the downloads of other accounts alone.
+   */
+
+  @Test
+  fun testCancelAndWaitForAccount() {
+    val gate = CountDownLatch(1)
+    val queue = this.createQueue(concurrency = 1, gate = gate)
+    val database0 = MockBookDatabase(AccountID(UUID.randomUUID()))
+    val database1 = MockBookDatabase(AccountID(UUID.randomUUID()))
+
+    val entry0 = this.entryOf("d0")
+    val entry1 = this.entryOf("d1")
+    val entry2 = this.entryOf("e0")
+    queue.enqueue(this.profileID, database0.owner, database0, entry0)
+    queue.enqueue(this.profileID, database0.owner, database0, entry1)
+    val future2 = queue.enqueue(this.profileID, database1.owner, database1, entry2)
+
+    val stopped = queue.cancelAndWaitForAccount(database0.owner)
+    Assertions.assertFalse(stopped.isDone)
+    Assertions.assertTrue(queue.isQueued(BookIDs.newFromOPDSEntry(entry0)))
+    Assertions.assertFalse(queue.isQueued(BookIDs.newFromOPDSEntry(entry1)))
+
+    gate.countDown()
+    stopped.get(10L, TimeUnit.SECONDS)
+    Assertions.assertFalse(queue.isQueued(BookIDs.newFromOPDSEntry(entry0)))
+    Assertions.assertEquals(listOf<Any>(), database0.downloadsQueued())
+
+    Assertions.assertTrue(future2.get(10L, TimeUnit.SECONDS) is TaskResult.Success)
+    Assertions.assertEquals(listOf("d0", "e0"), this.started.toList())
+  }
+}
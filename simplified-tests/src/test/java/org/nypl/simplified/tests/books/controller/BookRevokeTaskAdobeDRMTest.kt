@@ -1,6 +1,7 @@
 package org.nypl.simplified.tests.books.controller
 
 import android.content.Context
+import com.google.common.util.concurrent.FluentFuture
 import com.google.common.util.concurrent.ListeningExecutorService
 import com.google.common.util.concurrent.MoreExecutors
 import com.io7m.jfunctional.Option
@@ -604,6 +605,193 @@ class BookRevokeTaskAdobeDRMTest {
     Mockito.verify(drmHandle, Times(1)).setAdobeRightsInformation(null)
   }
 
+  /**
+   * The books executor is free to run other tasks while the DRM connector is returning a loan.
+   */
+
+  @Test
+  fun testRevokeDRMDoesNotOccupyExecutor() {
+    val account =
+      Mockito.mock(AccountType::class.java)
+    val accountProvider =
+      Mockito.mock(AccountProviderType::class.java)
+    val profile =
+      Mockito.mock(ProfileType::class.java)
+    val profilesDatabase =
+      Mockito.mock(ProfilesDatabaseType::class.java)
+    val bookDatabase =
+      Mockito.mock(BookDatabaseType::class.java)
+    val bookDatabaseEntry =
+      Mockito.mock(BookDatabaseEntryType::class.java)
+    val bookDatabaseFormatHandle =
+      Mockito.mock(BookDatabaseEntryFormatHandleEPUB::class.java)
+    val drmHandle =
+      Mockito.mock(BookDRMInformationHandleACS::class.java)
+
+    val bookFormat =
+      BookFormatEPUB(
+        drmInformation = this.basicDRMInformationReturnable,
+        file = null,
+        lastReadLocation = null,
+        bookmarks = listOf(),
+        contentType = BookFormats.epubMimeTypes().first()
+      )
+
+    val bookId =
+      BookID.create("a")
+
+    val acquisition =
+      OPDSAcquisition(
+        OPDSAcquisition.Relation.ACQUISITION_BORROW,
+        URI.create("http://www.example.com/0.feed"),
+        mimeOf("application/epub+zip"),
+        listOf()
+      )
+
+    val opdsEntryBuilder =
+      OPDSAcquisitionFeedEntry.newBuilder(
+        "a",
+        "Title",
+        DateTime.now(),
+        OPDSAvailabilityOpenAccess.get(Option.none())
+      )
+    opdsEntryBuilder.addAcquisition(acquisition)
+
+    val opdsEntry =
+      opdsEntryBuilder.build()
+
+    this.logBookEventsFor(bookId)
+
+    val book =
+      Book(
+        id = bookId,
+        account = this.accountID,
+        cover = null,
+        thumbnail = null,
+        entry = opdsEntry,
+        formats = listOf()
+      )
+
+    Mockito.`when`(account.id)
+      .thenReturn(this.accountID)
+    Mockito.`when`(account.loginState)
+      .thenReturn(
+        AccountLoginState.AccountLoggedIn(
+          AccountAuthenticationCredentials.Basic(
+            userName = AccountUsername("user"),
+            password = AccountPassword("password"),
+            adobeCredentials = AccountAuthenticationAdobePreActivationCredentials(
+              vendorID = AdobeVendorID("NYPL"),
+              clientToken = AccountAuthenticationAdobeClientToken.parse("NYNYPL|536818535|b54be3a5-385b-42eb-9496-3879cb3ac3cc|TWFuIHN1ZmZlcnMgb25seSBiZWNhdXNlIGhlIHRha2VzIHNlcmlvdXNseSB3aGF0IHRoZSBnb2RzIG1hZGUgZm9yIGZ1bi4K"),
+              deviceManagerURI = null,
+              postActivationCredentials = AccountAuthenticationAdobePostActivationCredentials(
+                AdobeDeviceID("4361a1f6-aea8-4681-ad8b-df7e6923049f"),
+                AdobeUserID("2bb42d71-42aa-4eb7-b8af-366171adcae8")
+              )
+            ),
+            authenticationDescription = null,
+            annotationsURI = URI("https://www.example.com")
+          )
+        )
+      )
+    Mockito.`when`(profile.id)
+      .thenReturn(this.profileID)
+    Mockito.`when`(profilesDatabase.profiles())
+      .thenReturn(ConcurrentSkipListMap(mapOf(this.profileID to profile)))
+    Mockito.`when`(profile.account(this.accountID))
+      .thenReturn(account)
+    Mockito.`when`(account.provider)
+      .thenReturn(accountProvider)
+    Mockito.`when`(accountProvider.displayName)
+      .thenReturn("Display name")
+    Mockito.`when`(account.bookDatabase)
+      .thenReturn(bookDatabase)
+    Mockito.`when`(bookDatabase.entry(bookId))
+      .thenReturn(bookDatabaseEntry)
+    Mockito.`when`(bookDatabaseEntry.book)
+      .thenReturn(book)
+    Mockito.`when`(bookDatabaseEntry.findPreferredFormatHandle())
+      .thenReturn(bookDatabaseFormatHandle)
+    Mockito.`when`(bookDatabaseFormatHandle.format)
+      .thenReturn(bookFormat)
+    Mockito.`when`(bookDatabaseFormatHandle.drmInformationHandle)
+      .thenReturn(drmHandle)
+    Mockito.`when`(drmHandle.info)
+      .thenReturn(this.basicDRMInformationReturnable)
+
+    /*
+     * When the code tells the connector to return the loan, it succeeds if the connector reports
+     * success.
+     */
+
+    Mockito.`when`(
+      this.adobeConnector.loanReturn(
+        this.anyNonNull(),
+        this.anyNonNull(),
+        this.anyNonNull()
+      )
+    ).then { invocation ->
+      val receiver = invocation.arguments[0] as AdobeAdeptLoanReturnListenerType
+      receiver.onLoanReturnSuccess()
+      Unit
+    }
+
+    /*
+     * The connector only runs when the test says so.
+     */
+
+    val procedures = Collections.synchronizedList(ArrayList<AdobeAdeptProcedureType>())
+    Mockito.`when`(this.adobeExecutor.execute(anyNonNull()))
+      .then { invocation ->
+        procedures.add(invocation.arguments[0] as AdobeAdeptProcedureType)
+        Unit
+      }
+
+    val task =
+      BookRevokeTask(
+        accountID = account.id,
+        profileID = profile.id,
+        profiles = profilesDatabase,
+        adobeDRM = adobeExecutor,
+        bookID = bookId,
+        bookRegistry = this.bookRegistry,
+        feedLoader = this.feedLoader,
+        revokeStrings = this.bookRevokeStrings
+      )
+
+    val executor =
+      MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor())
+
+    try {
+      val future =
+        executor.submit<FluentFuture<TaskResult<Unit>>> { task.callAsync(executor) }
+          .get(5L, TimeUnit.SECONDS)
+
+      /*
+       * The task is waiting for the connector, and yet the executor can run other tasks.
+       */
+
+      Assertions.assertEquals(1, procedures.size)
+      Assertions.assertFalse(future.isDone)
+      Assertions.assertEquals(23, executor.submit<Int> { 23 }.get(5L, TimeUnit.SECONDS))
+      Assertions.assertFalse(future.isDone)
+
+      procedures[0].executeWith(this.adobeConnector)
+
+      val result = future.get(5L, TimeUnit.SECONDS)
+      TaskDumps.dump(logger, result)
+      result as TaskResult.Success
+    } finally {
+      executor.shutdown()
+    }
+
+    val newStatus = this.bookRegistry.bookOrException(bookId).status
+    newStatus as BookStatus.Loaned.LoanedNotDownloaded
+
+    Mockito.verify(bookDatabaseEntry, Times(1)).delete()
+    Mockito.verify(drmHandle, Times(1)).setAdobeRightsInformation(null)
+  }
+
   /**
    * If the DRM connector doesn't respond, then the revocation fails.
    */
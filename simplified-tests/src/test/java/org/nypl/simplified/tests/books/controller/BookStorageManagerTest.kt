@@ -0,0 +1,250 @@
+package org.nypl.simplified.tests.books.controller
+
+import com.io7m.jfunctional.Option
+import org.joda.time.DateTime
+import org.joda.time.Instant
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.api.BookIDs
+import org.nypl.simplified.books.book_database.api.BookDatabaseType
+import org.nypl.simplified.books.book_registry.BookRegistry
+import org.nypl.simplified.books.book_registry.BookRegistryType
+import org.nypl.simplified.books.book_registry.BookStatus
+import org.nypl.simplified.books.controller.BookStorageManager
+import org.nypl.simplified.books.controller.api.BookStorageQuotas
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAvailabilityOpenAccess
+import org.nypl.simplified.tests.mocking.MockBookDatabase
+import org.nypl.simplified.tests.mocking.MockBookDatabaseEntry
+import org.nypl.simplified.tests.mocking.MockBookDatabaseEntryFormatHandleEPUB
+import java.io.File
+import java.net.URI
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+class BookStorageManagerTest {
+
+  @TempDir
+  @JvmField
+  var directory: File? = null
+
+  private lateinit var bookRegistry: BookRegistryType
+  private lateinit var databases: MutableList<BookDatabaseType>
+
+  @BeforeEach
+  fun testSetup() {
+    this.bookRegistry = BookRegistry.create()
+    this.databases = mutableListOf()
+  }
+
+  private fun createManager(quotas: BookStorageQuotas): BookStorageManager {
+    return BookStorageManager(
+      bookRegistry = this.bookRegistry,
+      databases = { this.databases.toList() },
+      quotas = quotas
+    )
+  }
+
+  private fun createDatabase(): MockBookDatabase {
+    val database = MockBookDatabase(AccountID(UUID.randomUUID()))
+    this.databases.add(database)
+    return database
+  }
+
+  /**
+   * Add a downloaded EPUB of the given size to the database, last opened at the given time.
+   */
+
+  private fun addBook(
+    database: MockBookDatabase,
+    title: String,
+    size: Int,
+    lastOpened: Long
+  ): MockBookDatabaseEntryFormatHandleEPUB {
+    val entry =
+      OPDSAcquisitionFeedEntry.newBuilder(
+        "urn:$title",
+        title,
+        DateTime.now(),
+        OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+      ).build()
+
+    val bookID = BookIDs.newFromOPDSEntry(entry)
+    val databaseEntry = database.createOrUpdate(bookID, entry) as MockBookDatabaseEntry
+    val handle = MockBookDatabaseEntryFormatHandleEPUB(bookID)
+    val file = File(this.directory, "$title.epub")
+    file.writeText("x".repeat(size))
+    handle.copyInBook(file)
+    handle.setLastOpened(Instant(lastOpened))
+    databaseEntry.formatHandlesField.add(handle)
+    return handle
+  }
+
+  private fun idOf(title: String): BookID =
+    BookIDs.newFromText("urn:$title")
+
+  /**
+   * The least recently opened books in an account are evicted until the account is within
+   * its quota.
+   */
+
+  @Test
+  fun testAccountQuota() {
+    val database = this.createDatabase()
+    val old = this.addBook(database, "old", 100, 1000L)
+    val middle = this.addBook(database, "middle", 100, 2000L)
+    val recent = this.addBook(database, "recent", 100, 3000L)
+
+    val manager = this.createManager(BookStorageQuotas(totalBytes = 1000L, accountBytes = 250L))
+    manager.enforceQuotas().get(10L, TimeUnit.SECONDS)
+
+    Assertions.assertNull(old.format.file)
+    Assertions.assertNotNull(middle.format.file)
+    Assertions.assertNotNull(recent.format.file)
+    Assertions.assertTrue(
+      this.bookRegistry.bookStatusOrNull(this.idOf("old")) is BookStatus.Loaned.LoanedNotDownloaded
+    )
+
+    val usage = manager.usage()
+    Assertions.assertEquals(mapOf(database.owner to 200L), usage.accounts)
+    Assertions.assertEquals(1L, usage.evictedBooks)
+    Assertions.assertEquals(100L, usage.evictedBytes)
+  }
+
+  /**
+   * The least recently opened books across all accounts are evicted until the total is within
+   * the global quota.
+   */
+
+  @Test
+  fun testTotalQuota() {
+    val database0 = this.createDatabase()
+    val database1 = this.createDatabase()
+    val a = this.addBook(database0, "a", 100, 1000L)
+    val b = this.addBook(database1, "b", 100, 2000L)
+    val c = this.addBook(database0, "c", 100, 3000L)
+    val d = this.addBook(database1, "d", 100, 4000L)
+
+    val manager = this.createManager(BookStorageQuotas(totalBytes = 250L, accountBytes = 1000L))
+    manager.enforceQuotas().get(10L, TimeUnit.SECONDS)
+
+    Assertions.assertNull(a.format.file)
+    Assertions.assertNull(b.format.file)
+    Assertions.assertNotNull(c.format.file)
+    Assertions.assertNotNull(d.format.file)
+    Assertions.assertEquals(200L, manager.usage().totalBytes)
+  }
+
+  /**
+   * The most recently used book is kept even if it alone exceeds the quotas.
+   */
+
+  @Test
+  fun testMostRecentKept() {
+    val database = this.createDatabase()
+    val old = this.addBook(database, "old", 100, 1000L)
+    val recent = this.addBook(database, "recent", 500, 2000L)
+
+    val manager = this.createManager(BookStorageQuotas(totalBytes = 200L, accountBytes = 200L))
+    manager.enforceQuotas().get(10L, TimeUnit.SECONDS)
+
+    Assertions.assertNull(old.format.file)
+    Assertions.assertNotNull(recent.format.file)
+    Assertions.assertEquals(500L, manager.usage().totalBytes)
+  }
+
+  /**
+   * Opening a book protects it from eviction in favour of books that were opened earlier.
+   */
+
+  @Test
+  fun testOpenedRecently() {
+    val database = this.createDatabase()
+    val first = this.addBook(database, "first", 100, 1000L)
+    val second = this.addBook(database, "second", 100, 2000L)
+    val third = this.addBook(database, "third", 100, 3000L)
+
+    val manager = this.createManager(BookStorageQuotas())
+    manager.bookOpened(database.owner, this.idOf("first"), Instant(4000L))
+    manager.quotas = BookStorageQuotas(totalBytes = 250L, accountBytes = 250L)
+    manager.enforceQuotas().get(10L, TimeUnit.SECONDS)
+
+    Assertions.assertEquals(Instant(4000L), first.lastOpened)
+    Assertions.assertNotNull(first.format.file)
+    Assertions.assertNull(second.format.file)
+    Assertions.assertNotNull(third.format.file)
+  }
+
+  /**
+   * A book that is open is never evicted, however long ago it was opened, and closing it
+   * counts as using it.
+   */
+
+  @Test
+  fun testOpenBookKept() {
+    val database = this.createDatabase()
+    val first = this.addBook(database, "first", 100, 1000L)
+    val second = this.addBook(database, "second", 100, 2000L)
+    val third = this.addBook(database, "third", 100, 3000L)
+
+    val manager = this.createManager(BookStorageQuotas())
+    manager.bookOpened(database.owner, this.idOf("first"), Instant(500L))
+    manager.quotas = BookStorageQuotas(totalBytes = 250L, accountBytes = 250L)
+    manager.enforceQuotas().get(10L, TimeUnit.SECONDS)
+
+    Assertions.assertNotNull(first.format.file)
+    Assertions.assertNull(second.format.file)
+    Assertions.assertNotNull(third.format.file)
+
+    manager.bookClosed(database.owner, this.idOf("first"), Instant(4000L))
+      .get(10L, TimeUnit.SECONDS)
+    Assertions.assertEquals(Instant(4000L), first.lastOpened)
+  }
+
+  /**
+   * Abandoned partial downloads and temporary files left by earlier runs are deleted from the
+   * temporary directory, and recent partial downloads are kept so that they can be resumed.
+   */
+
+  @Test
+  fun testDeleteOrphansTemporaryDirectory() {
+    val temporary = File(this.directory, "tmp")
+    temporary.mkdirs()
+
+    val timeNow = System.currentTimeMillis()
+    val account = UUID.randomUUID()
+    val stale = File(temporary, "$account-a-application_epub_zip.partial")
+    val staleMeta = File(temporary, "$account-a-application_epub_zip.partial.meta")
+    val recent = File(temporary, "$account-b-application_epub_zip.partial")
+    val orphan = File(temporary, "${UUID.randomUUID()}.tmp")
+    val running = File(temporary, "${UUID.randomUUID()}.tmp")
+
+    for (file in listOf(stale, staleMeta, recent, orphan, running)) {
+      file.writeText("x".repeat(10))
+    }
+    stale.setLastModified(timeNow - TimeUnit.DAYS.toMillis(2L))
+    staleMeta.setLastModified(timeNow - TimeUnit.DAYS.toMillis(2L))
+    orphan.setLastModified(timeNow - TimeUnit.HOURS.toMillis(1L))
+
+    val manager =
+      BookStorageManager(
+        bookRegistry = this.bookRegistry,
+        databases = { this.databases.toList() },
+        temporaryDirectory = temporary,
+        partialDownloadAgeMaximumMilliseconds = TimeUnit.DAYS.toMillis(1L)
+      )
+    manager.deleteOrphans(Instant(timeNow - TimeUnit.MINUTES.toMillis(1L)))
+      .get(10L, TimeUnit.SECONDS)
+
+    Assertions.assertFalse(stale.exists())
+    Assertions.assertFalse(staleMeta.exists())
+    Assertions.assertFalse(orphan.exists())
+    Assertions.assertTrue(recent.exists())
+    Assertions.assertTrue(running.exists())
+    Assertions.assertEquals(30L, manager.usage().temporaryBytesDeleted)
+  }
+}
@@ -0,0 +1,82 @@
+package org.nypl.simplified.tests.books.controller
+
+import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.SettableFuture
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.books.api.BookIDs
+import org.nypl.simplified.books.controller.BookTaskSerializer
+import java.util.concurrent.TimeUnit
+
+class BookTaskSerializerTest {
+
+  private lateinit var serializer: BookTaskSerializer
+  private lateinit var started: MutableList<String>
+
+  @BeforeEach
+  fun testSetup() {
+    this.serializer = BookTaskSerializer()
+    this.started = mutableListOf()
+  }
+
+  private fun task(
+    name: String,
+    result: SettableFuture<String>
+  ): () -> FluentFuture<String> = {
+    this.started.add(name)
+    FluentFuture.from(result)
+  }
+
+  /**
+   * A task for a book doesn't start until the earlier task for the book has completed.
+   */
+
+  @Test
+  fun testSameBookWaits() {
+    val book = BookIDs.newFromText("a")
+    val first = SettableFuture.create<String>()
+    val second = SettableFuture.create<String>()
+
+    val firstResult = this.serializer.submit(book, this.task("first", first))
+    val secondResult = this.serializer.submit(book, this.task("second", second))
+    Assertions.assertEquals(listOf("first"), this.started)
+
+    first.setException(IllegalStateException())
+    Assertions.assertEquals(listOf("first", "second"), this.started)
+    Assertions.assertTrue(firstResult.isDone)
+
+    second.set("x")
+    Assertions.assertEquals("x", secondResult.get(1L, TimeUnit.SECONDS))
+  }
+
+  /**
+   * Tasks for different books don't wait for each other.
+   */
+
+  @Test
+  fun testOtherBooksRun() {
+    this.serializer.submit(BookIDs.newFromText("a"), this.task("a", SettableFuture.create()))
+    this.serializer.submit(BookIDs.newFromText("b"), this.task("b", SettableFuture.create()))
+    Assertions.assertEquals(listOf("a", "b"), this.started)
+  }
+
+  /**
+   * A task cancelled while it waits never starts, and doesn't let later tasks overtake the
+   * task it was waiting for.
+   */
+
+  @Test
+  fun testCancelledWaitingTask() {
+    val book = BookIDs.newFromText("a")
+    val first = SettableFuture.create<String>()
+
+    this.serializer.submit(book, this.task("first", first))
+    this.serializer.submit(book, this.task("second", SettableFuture.create())).cancel(true)
+    this.serializer.submit(book, this.task("third", SettableFuture.create()))
+    Assertions.assertEquals(listOf("first"), this.started)
+
+    first.set("x")
+    Assertions.assertEquals(listOf("first", "third"), this.started)
+  }
+}
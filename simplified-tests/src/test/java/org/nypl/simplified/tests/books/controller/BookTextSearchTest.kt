@@ -0,0 +1,192 @@
+package org.nypl.simplified.tests.books.controller
+
+import android.content.Context
+import com.io7m.jfunctional.Option
+import one.irradia.mime.vanilla.MIMEParser
+import org.joda.time.DateTime
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.mockito.Mockito
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.book_database.BookDatabase
+import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
+import org.nypl.simplified.books.book_database.api.BookDatabaseType
+import org.nypl.simplified.books.controller.BookTextSearch
+import org.nypl.simplified.opds.core.OPDSAcquisition
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAvailabilityOpenAccess
+import org.nypl.simplified.opds.core.OPDSJSONParser
+import org.nypl.simplified.opds.core.OPDSJSONSerializer
+import org.nypl.simplified.tests.books.BookFormatsTesting
+import org.nypl.simplified.tests.books.EPUBTesting
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.net.URI
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+class BookTextSearchTest {
+
+  private val logger =
+    LoggerFactory.getLogger(BookTextSearchTest::class.java)
+
+  @TempDir
+  @JvmField
+  var directory: File? = null
+
+  private lateinit var database: BookDatabaseType
+  private lateinit var search: BookTextSearch
+
+  @BeforeEach
+  fun testSetup() {
+    this.database =
+      BookDatabase.open(
+        context = Mockito.mock(Context::class.java),
+        parser = OPDSJSONParser.newParser(),
+        serializer = OPDSJSONSerializer.newSerializer(),
+        formats = BookFormatsTesting.supportsEverything,
+        owner = AccountID(UUID.randomUUID()),
+        directory = File(this.directory, "books")
+      )
+    this.search = BookTextSearch(databases = { listOf(this.database) })
+  }
+
+  /**
+   * Add a downloaded EPUB to the database.
+   */
+
+  private fun addBook(
+    id: String,
+    chapters: Int,
+    chapterLength: Int,
+    chapterText: (Int) -> String
+  ): BookID {
+    val entry =
+      OPDSAcquisitionFeedEntry.newBuilder(
+        id,
+        id,
+        DateTime.now(),
+        OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+      )
+    entry.addAcquisition(
+      OPDSAcquisition(
+        OPDSAcquisition.Relation.ACQUISITION_BORROW,
+        URI.create("http://example.com/$id"),
+        MIMEParser.parseRaisingException("application/epub+zip"),
+        emptyList()
+      )
+    )
+
+    val bookID = BookID.create(id)
+    this.database.createOrUpdate(bookID, entry.build())
+      .findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+      .copyInBook(EPUBTesting.createEPUB(chapters, chapterLength, chapterText))
+    return bookID
+  }
+
+  /**
+   * Passages are ranked by relevance, and results locate the first occurrence of the rarest
+   * search term.
+   */
+
+  @Test
+  fun testSearchRanking() {
+    val many = this.addBook("many", 10, 2_000) { chapter ->
+      if (chapter == 3) "Call me Ishmael. The whale, the whale, the WHALE!" else ""
+    }
+    val once = this.addBook("once", 10, 2_000) { chapter ->
+      if (chapter == 7) "a whale and a harpoon" else ""
+    }
+    this.addBook("none", 10, 2_000) { "" }
+
+    this.search.indexAll().get(30L, TimeUnit.SECONDS)
+
+    val whales = this.search.search("whales whale").get(10L, TimeUnit.SECONDS)
+    Assertions.assertEquals(2, whales.size)
+    Assertions.assertEquals(many, whales[0].bookID)
+    Assertions.assertEquals(once, whales[1].bookID)
+    Assertions.assertTrue(whales[0].score > whales[1].score)
+    Assertions.assertEquals(
+      "/OEBPS/text/chapter 3.xhtml",
+      whales[0].location.progress.chapterHref
+    )
+    Assertions.assertTrue(whales[0].excerpt.contains("The whale"), whales[0].excerpt)
+
+    val harpoons = this.search.search("whale harpoon").get(10L, TimeUnit.SECONDS)
+    Assertions.assertEquals(once, harpoons[0].bookID)
+    Assertions.assertEquals(
+      "/OEBPS/text/chapter 7.xhtml",
+      harpoons[0].location.progress.chapterHref
+    )
+    Assertions.assertTrue(harpoons[0].excerpt.contains("harpoon"), harpoons[0].excerpt)
+
+    Assertions.assertEquals(
+      setOf(many, once),
+      this.search.matchingBooks("Whale").get(10L, TimeUnit.SECONDS)
+    )
+    Assertions.assertEquals(
+      setOf(once),
+      this.search.matchingBooks("whale harpoon").get(10L, TimeUnit.SECONDS)
+    )
+    Assertions.assertEquals(
+      setOf<BookID>(),
+      this.search.matchingBooks("!!").get(10L, TimeUnit.SECONDS)
+    )
+    Assertions.assertEquals(listOf<Any>(), this.search.search("kraken").get(10L, TimeUnit.SECONDS))
+  }
+
+  /**
+   * Books whose content is deleted are no longer found.
+   */
+
+  @Test
+  fun testSearchDeleted() {
+    val book = this.addBook("book", 2, 1_000) { "whale" }
+    this.search.indexAll().get(30L, TimeUnit.SECONDS)
+    Assertions.assertEquals(
+      setOf(book),
+      this.search.matchingBooks("whale").get(10L, TimeUnit.SECONDS)
+    )
+
+    this.database.entry(book)
+      .findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)!!
+      .deleteBookData()
+    Assertions.assertEquals(
+      setOf<BookID>(),
+      this.search.matchingBooks("whale").get(10L, TimeUnit.SECONDS)
+    )
+  }
+
+  /**
+   * Measure indexing throughput and query latency over a small library.
+   */
+
+  @Test
+  fun testSearchTiming() {
+    for (index in 0 until 10) {
+      this.addBook("book$index", 40, 10_000) { chapter -> "marker${index}x$chapter" }
+    }
+
+    val indexThen = System.nanoTime()
+    this.search.indexAll().get(120L, TimeUnit.SECONDS)
+    val indexNow = System.nanoTime()
+
+    val queries = 100
+    val queryThen = System.nanoTime()
+    for (query in 0 until queries) {
+      val results =
+        this.search.search("marker${query % 10}x${query % 40}").get(10L, TimeUnit.SECONDS)
+      Assertions.assertEquals(1, results.size)
+    }
+    val queryNow = System.nanoTime()
+
+    this.logger.debug(
+      "indexing: {}ms, mean query latency: {}ms",
+      (indexNow - indexThen) / 1_000_000L,
+      (queryNow - queryThen) / 1_000_000L / queries
+    )
+  }
+}
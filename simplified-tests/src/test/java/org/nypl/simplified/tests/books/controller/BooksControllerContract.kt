@@ -6,6 +6,8 @@ import com.google.common.util.concurrent.MoreExecutors
 import io.reactivex.subjects.PublishSubject
 import okhttp3.mockwebserver.MockResponse
 import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.QueueDispatcher
+import okhttp3.mockwebserver.RecordedRequest
 import okio.Buffer
 import org.junit.jupiter.api.AfterEach
 import org.junit.jupiter.api.Assertions
@@ -33,6 +35,8 @@ import org.nypl.simplified.analytics.api.AnalyticsType
 import org.nypl.simplified.books.api.BookEvent
 import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.audio.AudioBookManifestStrategiesType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannel
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
 import org.nypl.simplified.books.book_registry.BookRegistry
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
@@ -87,6 +91,8 @@ import java.io.InputStream
 import java.net.URI
 import java.util.ArrayList
 import java.util.Collections
+import java.util.Queue
+import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
@@ -118,6 +124,7 @@ abstract class BooksControllerContract {
   private lateinit var profileEventsReceived: MutableList<ProfileEvent>
   private lateinit var profiles: ProfilesDatabaseType
   private lateinit var server: MockWebServer
+  private val patronProfiles = ConcurrentLinkedQueue<MockResponse>()
 
   protected abstract fun context(): Context
 
@@ -185,6 +192,7 @@ abstract class BooksControllerContract {
     services.putService(AudioBookManifestStrategiesType::class.java, this.audioBookManifestStrategies)
     services.putService(AuthenticationDocumentParsersType::class.java, this.authDocumentParsers)
     services.putService(BookFormatSupportType::class.java, this.bookFormatSupport)
+    services.putService(BookDownloadProgressChannelType::class.java, BookDownloadProgressChannel.create())
     services.putService(BookRegistryType::class.java, this.bookRegistry)
     services.putService(BorrowSubtaskDirectoryType::class.java, this.borrowSubtasks)
     services.putService(BookRevokeStringResourcesType::class.java, revokeStringResources)
@@ -248,6 +256,7 @@ abstract class BooksControllerContract {
         )
 
     this.server = MockWebServer()
+    this.server.dispatcher = PatronProfileDispatcher(this.patronProfiles)
     this.server.start(port = 9000)
   }
 
@@ -296,7 +305,7 @@ abstract class BooksControllerContract {
     val account = profile.accountsByProvider()[provider.id]!!
     account.setLoginState(AccountLoggedIn(correctCredentials()))
 
-    this.server.enqueue(
+    this.patronProfiles.add(
       MockResponse()
         .setResponseCode(200)
         .setBody(this.simpleUserProfile())
@@ -346,7 +355,7 @@ abstract class BooksControllerContract {
     val account = profile.accountsByProvider()[provider.id]!!
     account.setLoginState(AccountLoggedIn(correctCredentials()))
 
-    this.server.enqueue(
+    this.patronProfiles.add(
       MockResponse()
         .setResponseCode(200)
         .setBody(this.simpleUserProfile())
@@ -473,7 +482,7 @@ abstract class BooksControllerContract {
     val account = profile.accountsByProvider()[provider.id]!!
     account.setLoginState(AccountLoggedIn(correctCredentials()))
 
-    this.server.enqueue(
+    this.patronProfiles.add(
       MockResponse()
         .setResponseCode(200)
         .setBody(this.simpleUserProfile())
@@ -524,7 +533,7 @@ abstract class BooksControllerContract {
     val account = profile.accountsByProvider()[provider.id]!!
     account.setLoginState(AccountLoggedIn(correctCredentials()))
 
-    this.server.enqueue(
+    this.patronProfiles.add(
       MockResponse()
         .setResponseCode(200)
         .setBody(this.simpleUserProfile())
@@ -608,7 +617,7 @@ abstract class BooksControllerContract {
     account.setLoginState(AccountLoggedIn(correctCredentials()))
     val bookDatabase = account.bookDatabase
 
-    this.server.enqueue(
+    this.patronProfiles.add(
       MockResponse()
         .setResponseCode(200)
         .setBody(this.simpleUserProfile())
@@ -642,7 +651,7 @@ abstract class BooksControllerContract {
      * Now run the sync again but this time with a feed that removes books.
      */
 
-    this.server.enqueue(
+    this.patronProfiles.add(
       MockResponse()
         .setResponseCode(200)
         .setBody(this.simpleUserProfile())
@@ -731,7 +740,7 @@ abstract class BooksControllerContract {
     val account = profile.accounts().values.first()
     account.setLoginState(AccountLoggedIn(correctCredentials()))
 
-    this.server.enqueue(
+    this.patronProfiles.add(
       MockResponse()
         .setResponseCode(200)
         .setBody(this.simpleUserProfile())
@@ -798,7 +807,7 @@ abstract class BooksControllerContract {
     val account = profile.accounts().values.first()
     account.setLoginState(AccountLoggedIn(correctCredentials()))
 
-    this.server.enqueue(
+    this.patronProfiles.add(
       MockResponse()
         .setResponseCode(200)
         .setBody(this.simpleUserProfile())
@@ -845,6 +854,23 @@ abstract class BooksControllerContract {
     )
   }
 
+  /**
+   * Syncs fetch the patron user profile alongside the loans feed, so the order in which the
+   * two requests arrive is not fixed. Patron user profile requests are answered from their
+   * own queue, and all other requests are answered in the order they were enqueued.
+   */
+
+  private class PatronProfileDispatcher(
+    private val patronProfiles: Queue<MockResponse>
+  ) : QueueDispatcher() {
+    override fun dispatch(request: RecordedRequest): MockResponse {
+      if (request.path == "/accounts0/patrons/me") {
+        return this.patronProfiles.poll() ?: MockResponse().setResponseCode(404)
+      }
+      return super.dispatch(request)
+    }
+  }
+
   private fun simpleUserProfile(): String {
     return resource("/org/nypl/simplified/tests/patron/example-with-device.json")
       .readBytes()
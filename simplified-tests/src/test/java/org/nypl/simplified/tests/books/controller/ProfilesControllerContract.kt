@@ -22,6 +22,8 @@ import org.nypl.simplified.accounts.database.AccountsDatabases
 import org.nypl.simplified.accounts.registry.api.AccountProviderRegistryType
 import org.nypl.simplified.analytics.api.AnalyticsType
 import org.nypl.simplified.books.audio.AudioBookManifestStrategiesType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannel
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
 import org.nypl.simplified.books.book_registry.BookRegistry
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.borrowing.BorrowSubtasks
@@ -160,6 +162,7 @@ abstract class ProfilesControllerContract {
     services.putService(AudioBookManifestStrategiesType::class.java, this.audioBookManifestStrategies)
     services.putService(AuthenticationDocumentParsersType::class.java, this.authDocumentParsers)
     services.putService(BookFormatSupportType::class.java, this.bookFormatSupport)
+    services.putService(BookDownloadProgressChannelType::class.java, BookDownloadProgressChannel.create())
     services.putService(BookRegistryType::class.java, this.bookRegistry)
     services.putService(BookRevokeStringResourcesType::class.java, this.bookRevokeStringResources)
     services.putService(BorrowSubtaskDirectoryType::class.java, BorrowSubtasks.directory())
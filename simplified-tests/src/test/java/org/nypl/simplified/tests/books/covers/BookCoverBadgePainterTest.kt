@@ -0,0 +1,114 @@
+package org.nypl.simplified.tests.books.covers
+
+import android.graphics.Bitmap
+import android.graphics.Color
+import org.junit.Test
+import org.junit.jupiter.api.Assertions
+import org.junit.runner.RunWith
+import org.nypl.simplified.books.covers.BookCoverBadge
+import org.nypl.simplified.books.covers.BookCoverBadgePainter
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.slf4j.LoggerFactory
+import java.lang.management.ManagementFactory
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class BookCoverBadgePainterTest {
+
+  private val logger =
+    LoggerFactory.getLogger(BookCoverBadgePainterTest::class.java)
+
+  private val icon =
+    Bitmap.createBitmap(48, 48, Bitmap.Config.ARGB_8888)
+
+  private fun badge(
+    id: String = "audiobook",
+    size: Int = 24,
+    color: Int = Color.RED
+  ): BookCoverBadge {
+    return BookCoverBadge(
+      id = id,
+      bitmap = this.icon,
+      width = size,
+      height = size,
+      backgroundColorRGBA = { color }
+    )
+  }
+
+  private fun thumbnail(): Bitmap {
+    return Bitmap.createBitmap(180, 270, Bitmap.Config.RGB_565)
+  }
+
+  /**
+   * Transformation keys identify the badge, its size, and its background color.
+   */
+
+  @Test
+  fun testKeysIdentifyBadges() {
+    val key = BookCoverBadgePainter(this.badge()).key()
+
+    Assertions.assertEquals(key, BookCoverBadgePainter(this.badge()).key())
+    Assertions.assertNotEquals(key, BookCoverBadgePainter(this.badge(id = "other")).key())
+    Assertions.assertNotEquals(key, BookCoverBadgePainter(this.badge(size = 32)).key())
+    Assertions.assertNotEquals(key, BookCoverBadgePainter(this.badge(color = Color.BLUE)).key())
+  }
+
+  /**
+   * Mutable covers are badged in place.
+   */
+
+  @Test
+  fun testMutableSourceBadgedInPlace() {
+    val source = this.thumbnail()
+    Assertions.assertTrue(source.isMutable)
+
+    val result = BookCoverBadgePainter(this.badge()).transform(source)
+    Assertions.assertSame(source, result)
+    Assertions.assertFalse(result.isRecycled)
+  }
+
+  /**
+   * Immutable covers are copied once, and the original is recycled.
+   */
+
+  @Test
+  fun testImmutableSourceCopiedOnce() {
+    val source = this.thumbnail().copy(Bitmap.Config.RGB_565, false)
+    Assertions.assertFalse(source.isMutable)
+
+    val result = BookCoverBadgePainter(this.badge()).transform(source)
+    Assertions.assertNotSame(source, result)
+    Assertions.assertTrue(result.isMutable)
+    Assertions.assertTrue(source.isRecycled)
+    Assertions.assertEquals(180, result.width)
+    Assertions.assertEquals(270, result.height)
+  }
+
+  /**
+   * Measure the memory allocated by badging the covers shown during a catalog fling.
+   */
+
+  @Test
+  fun testFlingAllocations() {
+    val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+    val threadId = Thread.currentThread().id
+    val coversPerFling = 60
+    val badge = this.badge()
+
+    repeat(coversPerFling) { BookCoverBadgePainter(badge).transform(this.thumbnail()) }
+
+    val sources = (0 until coversPerFling).map { this.thumbnail() }
+    val allocatedBefore = threads.getThreadAllocatedBytes(threadId)
+    for (source in sources) {
+      BookCoverBadgePainter(badge).transform(source)
+    }
+    val allocatedAfter = threads.getThreadAllocatedBytes(threadId)
+
+    this.logger.debug(
+      "{} badged covers per fling: {} bytes allocated per fling",
+      coversPerFling,
+      allocatedAfter - allocatedBefore
+    )
+  }
+}
@@ -0,0 +1,127 @@
+package org.nypl.simplified.tests.books.covers
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.books.covers.BookCoverStore
+import org.nypl.simplified.books.covers.BookCoverVariant
+import org.nypl.simplified.tests.TestDirectories
+import java.io.File
+import java.net.URI
+
+class BookCoverStoreTest {
+
+  private lateinit var directory: File
+
+  @BeforeEach
+  fun setup() {
+    this.directory = TestDirectories.temporaryDirectory()
+  }
+
+  private fun uri(index: Int): URI =
+    URI.create("https://example.com/covers/$index.jpg")
+
+  /**
+   * Stored covers are found again, and lookups are counted.
+   */
+
+  @Test
+  fun testHitsAndMisses() {
+    val store = BookCoverStore.open(this.directory)
+
+    Assertions.assertNull(store.file(this.uri(0), BookCoverVariant.THUMBNAIL))
+    store.put(this.uri(0), BookCoverVariant.THUMBNAIL, ByteArray(10))
+
+    val file = store.file(this.uri(0), BookCoverVariant.THUMBNAIL)!!
+    Assertions.assertEquals(10L, file.length())
+    Assertions.assertNull(store.file(this.uri(0), BookCoverVariant.DETAIL))
+
+    val statistics = store.statistics()
+    Assertions.assertEquals(1, statistics.entries)
+    Assertions.assertEquals(10L, statistics.sizeBytes)
+    Assertions.assertEquals(1L, statistics.hits)
+    Assertions.assertEquals(2L, statistics.misses)
+  }
+
+  /**
+   * Storing the same cover twice replaces it rather than storing a second copy.
+   */
+
+  @Test
+  fun testDeduplicated() {
+    val store = BookCoverStore.open(this.directory)
+
+    store.put(this.uri(0), BookCoverVariant.THUMBNAIL, ByteArray(10))
+    store.put(URI.create(this.uri(0).toString()), BookCoverVariant.THUMBNAIL, ByteArray(20))
+
+    val statistics = store.statistics()
+    Assertions.assertEquals(1, statistics.entries)
+    Assertions.assertEquals(20L, statistics.sizeBytes)
+    Assertions.assertEquals(1, this.directory.listFiles()!!.size)
+  }
+
+  /**
+   * The least recently used covers are evicted when the store exceeds its size bound.
+   */
+
+  @Test
+  fun testEvictsLeastRecentlyUsed() {
+    val store = BookCoverStore.open(this.directory, maximumBytes = 30L)
+
+    store.put(this.uri(0), BookCoverVariant.THUMBNAIL, ByteArray(10))
+    store.put(this.uri(1), BookCoverVariant.THUMBNAIL, ByteArray(10))
+    store.put(this.uri(2), BookCoverVariant.THUMBNAIL, ByteArray(10))
+    Assertions.assertNotNull(store.file(this.uri(0), BookCoverVariant.THUMBNAIL))
+
+    store.put(this.uri(3), BookCoverVariant.THUMBNAIL, ByteArray(10))
+
+    Assertions.assertNotNull(store.file(this.uri(0), BookCoverVariant.THUMBNAIL))
+    Assertions.assertNull(store.file(this.uri(1), BookCoverVariant.THUMBNAIL))
+    Assertions.assertNotNull(store.file(this.uri(2), BookCoverVariant.THUMBNAIL))
+    Assertions.assertNotNull(store.file(this.uri(3), BookCoverVariant.THUMBNAIL))
+
+    val statistics = store.statistics()
+    Assertions.assertEquals(1L, statistics.evictions)
+    Assertions.assertEquals(30L, statistics.sizeBytes)
+    Assertions.assertEquals(3, this.directory.listFiles()!!.size)
+  }
+
+  /**
+   * Stored covers survive reopening the store.
+   */
+
+  @Test
+  fun testPersistent() {
+    val store0 = BookCoverStore.open(this.directory)
+    store0.put(this.uri(0), BookCoverVariant.DETAIL, ByteArray(10))
+
+    val store1 = BookCoverStore.open(this.directory)
+    Assertions.assertEquals(1, store1.statistics().entries)
+    Assertions.assertNotNull(store1.file(this.uri(0), BookCoverVariant.DETAIL))
+  }
+
+  /**
+   * Temporary files left behind by interrupted writes are deleted when the store is opened.
+   */
+
+  @Test
+  fun testDeletesTemporaryFiles() {
+    val temporary = File(this.directory, "abc-THUMBNAIL.jpg.0.tmp")
+    temporary.writeBytes(ByteArray(10))
+
+    val store = BookCoverStore.open(this.directory)
+    Assertions.assertFalse(temporary.exists())
+    Assertions.assertEquals(0, store.statistics().entries)
+  }
+
+  /**
+   * Covers are displayed from the smallest variant that does not need to be scaled up.
+   */
+
+  @Test
+  fun testVariantForSize() {
+    Assertions.assertEquals(BookCoverVariant.THUMBNAIL, BookCoverVariant.forSize(0, 0))
+    Assertions.assertEquals(BookCoverVariant.THUMBNAIL, BookCoverVariant.forSize(180, 270))
+    Assertions.assertEquals(BookCoverVariant.DETAIL, BookCoverVariant.forSize(0, 900))
+  }
+}
@@ -1,9 +1,12 @@
 package org.nypl.simplified.tests.books.profiles
 
 import android.content.Context
+import com.google.common.util.concurrent.MoreExecutors
 import com.io7m.jfunctional.Option
+import okhttp3.mockwebserver.Dispatcher
 import okhttp3.mockwebserver.MockResponse
 import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
 import okio.Buffer
 import one.irradia.mime.vanilla.MIMEParser
 import org.joda.time.DateTime
@@ -40,24 +43,35 @@ import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.book_registry.BookRegistry
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
+import org.nypl.simplified.books.bundled.api.BundledContentResolverType
 import org.nypl.simplified.books.controller.ProfileAccountLogoutTask
+import org.nypl.simplified.books.formats.api.BookFormatSupportType
+import org.nypl.simplified.content.api.ContentResolverType
+import org.nypl.simplified.feeds.api.FeedHTTPTransport
+import org.nypl.simplified.feeds.api.FeedLoader
 import org.nypl.simplified.feeds.api.FeedLoaderType
 import org.nypl.simplified.opds.core.OPDSAcquisition
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntryParser
 import org.nypl.simplified.opds.core.OPDSAvailabilityOpenAccess
+import org.nypl.simplified.opds.core.OPDSFeedParser
+import org.nypl.simplified.opds.core.OPDSSearchParser
 import org.nypl.simplified.patron.PatronUserProfileParsers
 import org.nypl.simplified.patron.api.PatronUserProfileParsersType
 import org.nypl.simplified.profiles.api.ProfileID
 import org.nypl.simplified.profiles.api.ProfileReadableType
+import org.nypl.simplified.taskrecorder.api.TaskStepResolution
 import org.nypl.simplified.tests.mocking.MockAccountLogoutStringResources
 import org.nypl.simplified.tests.mocking.MockBookDatabase
 import org.nypl.simplified.tests.mocking.MockBookDatabaseEntry
 import org.nypl.simplified.tests.mocking.MockCrashingFeedLoader
 import org.slf4j.Logger
+import java.io.FileNotFoundException
 import java.io.InputStream
 import java.net.URI
 import java.util.UUID
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 abstract class ProfileAccountLogoutTaskContract {
 
@@ -567,6 +581,222 @@ abstract class ProfileAccountLogoutTaskContract {
     )
   }
 
+  /**
+   * Logging out refreshes the OPDS entries of the account's books concurrently, with
+   * a bounded number of requests in flight, and requests that take too long time out
+   * without affecting the other books. A request that has timed out still counts towards
+   * the requests in flight until it stops.
+   */
+
+  @Test
+  fun testLogoutRefreshesOPDSEntriesConcurrently() {
+    val entryBytes =
+      this.resource("/org/nypl/simplified/tests/books/revoke-epub-0.xml").readBytes()
+    val inFlight = AtomicInteger(0)
+    val inFlightMaximum = AtomicInteger(0)
+
+    this.server.dispatcher = object : Dispatcher() {
+      override fun dispatch(request: RecordedRequest): MockResponse {
+        val now = inFlight.incrementAndGet()
+        inFlightMaximum.accumulateAndGet(now) { x, y -> maxOf(x, y) }
+        try {
+          Thread.sleep(if (request.path == "/entries/slow") 2_000L else 100L)
+        } finally {
+          inFlight.decrementAndGet()
+        }
+        return MockResponse()
+          .setResponseCode(200)
+          .setBody(Buffer().write(entryBytes))
+      }
+    }
+
+    this.bookDatabase.entries.clear()
+    val bookIds =
+      listOf(BookID.create("0-slow")) + (0 until 12).map { index -> BookID.create("book$index") }
+    for (bookId in bookIds) {
+      val path = if (bookId.value() == "0-slow") "slow" else bookId.value()
+      val opdsEntry =
+        OPDSAcquisitionFeedEntry
+          .newBuilder(
+            bookId.value(),
+            "Title",
+            DateTime.now(),
+            OPDSAvailabilityOpenAccess.get(Option.none())
+          )
+          .setAlternateOption(Option.some(this.server.url("/entries/$path").toUri()))
+          .build()
+      this.bookDatabase.createOrUpdate(bookId, opdsEntry)
+    }
+
+    val provider =
+      Mockito.mock(AccountProviderType::class.java)
+
+    Mockito.`when`(provider.authentication)
+      .thenReturn(null)
+    Mockito.`when`(this.profile.id)
+      .thenReturn(this.profileID)
+    Mockito.`when`(this.profile.accounts())
+      .thenReturn(sortedMapOf(Pair(this.accountID, this.account)))
+    Mockito.`when`(this.account.id)
+      .thenReturn(this.accountID)
+    Mockito.`when`(this.account.provider)
+      .thenReturn(provider)
+    Mockito.`when`(this.account.setLoginState(anyNonNull()))
+      .then {
+        val newState = it.getArgument<AccountLoginState>(0)
+        this.loginState = newState
+        this.loginState
+      }
+    Mockito.`when`(this.account.loginState)
+      .then { this.loginState }
+    Mockito.`when`(this.account.bookDatabase)
+      .thenReturn(bookDatabase)
+
+    val credentials =
+      AccountAuthenticationCredentials.Basic(
+        userName = AccountUsername("abcd"),
+        password = AccountPassword("1234"),
+        adobeCredentials = null,
+        authenticationDescription = null,
+        annotationsURI = URI("https://www.example.com")
+      )
+
+    this.account.setLoginState(AccountLoggedIn(credentials))
+
+    val task =
+      ProfileAccountLogoutTask(
+        account = this.account,
+        adeptExecutor = null,
+        bookRegistry = this.bookRegistry,
+        feedLoader = this.createFeedLoader(),
+        http = this.http,
+        patronParsers = PatronUserProfileParsers(),
+        profile = this.profile,
+        logoutStrings = this.logoutStrings,
+        opdsRefreshConcurrency = 4,
+        opdsRefreshTimeoutMilliseconds = 500L
+      )
+
+    val timeThen = System.nanoTime()
+    val result = task.call()
+    val timeNow = System.nanoTime()
+    this.logger.debug("logout took {}ms", TimeUnit.NANOSECONDS.toMillis(timeNow - timeThen))
+    result.steps.forEach { step -> this.logger.debug("step {}: {}", step, step.resolution) }
+
+    this.account.loginState as AccountNotLoggedIn
+
+    Assertions.assertTrue(inFlightMaximum.get() <= 4, "At most 4 requests in flight")
+    Assertions.assertTrue(inFlightMaximum.get() > 1, "Requests were made concurrently")
+
+    for (bookId in bookIds) {
+      val entry = this.bookDatabase.entries[bookId]!!
+      if (bookId.value() == "0-slow") {
+        Assertions.assertEquals(0, entry.entryWrites)
+      } else {
+        Assertions.assertEquals(1, entry.entryWrites)
+      }
+    }
+
+    val failures =
+      result.steps.mapNotNull { step -> step.resolution as? TaskStepResolution.TaskStepFailed }
+    Assertions.assertEquals(listOf("timedOut"), failures.map { failure -> failure.errorCode })
+  }
+
+  /**
+   * Cancelling a logout that is waiting for OPDS entries fails the logout, rather than leaving
+   * the account logging out.
+   */
+
+  @Test
+  fun testLogoutCancelled() {
+    this.server.dispatcher = object : Dispatcher() {
+      override fun dispatch(request: RecordedRequest): MockResponse {
+        Thread.sleep(2_000L)
+        return MockResponse().setResponseCode(404)
+      }
+    }
+
+    this.bookDatabase.entries.clear()
+    val bookId = BookID.create("a")
+    val opdsEntry =
+      OPDSAcquisitionFeedEntry
+        .newBuilder(
+          bookId.value(),
+          "Title",
+          DateTime.now(),
+          OPDSAvailabilityOpenAccess.get(Option.none())
+        )
+        .setAlternateOption(Option.some(this.server.url("/entries/a").toUri()))
+        .build()
+    this.bookDatabase.createOrUpdate(bookId, opdsEntry)
+
+    val provider =
+      Mockito.mock(AccountProviderType::class.java)
+
+    Mockito.`when`(provider.authentication)
+      .thenReturn(null)
+    Mockito.`when`(this.profile.id)
+      .thenReturn(this.profileID)
+    Mockito.`when`(this.account.id)
+      .thenReturn(this.accountID)
+    Mockito.`when`(this.account.provider)
+      .thenReturn(provider)
+    Mockito.`when`(this.account.setLoginState(anyNonNull()))
+      .then {
+        val newState = it.getArgument<AccountLoginState>(0)
+        this.loginState = newState
+        this.loginState
+      }
+    Mockito.`when`(this.account.loginState)
+      .then { this.loginState }
+    Mockito.`when`(this.account.bookDatabase)
+      .thenReturn(bookDatabase)
+
+    val credentials =
+      AccountAuthenticationCredentials.Basic(
+        userName = AccountUsername("abcd"),
+        password = AccountPassword("1234"),
+        adobeCredentials = null,
+        authenticationDescription = null,
+        annotationsURI = URI("https://www.example.com")
+      )
+
+    this.account.setLoginState(AccountLoggedIn(credentials))
+
+    val task =
+      ProfileAccountLogoutTask(
+        account = this.account,
+        adeptExecutor = null,
+        bookRegistry = this.bookRegistry,
+        feedLoader = this.createFeedLoader(),
+        http = this.http,
+        patronParsers = PatronUserProfileParsers(),
+        profile = this.profile,
+        logoutStrings = this.logoutStrings
+      )
+
+    val future = task.callAsync(MoreExecutors.directExecutor())
+    Assertions.assertTrue(future.cancel(true))
+
+    val state = this.account.loginState as AccountLogoutFailed
+    Assertions.assertEquals(credentials, state.credentials)
+  }
+
+  private fun createFeedLoader(): FeedLoaderType {
+    val feedLoader =
+      FeedLoader.create(
+        bookFormatSupport = Mockito.mock(BookFormatSupportType::class.java),
+        bundledContent = BundledContentResolverType { uri -> throw FileNotFoundException("missing") },
+        contentResolver = Mockito.mock(ContentResolverType::class.java),
+        exec = MoreExecutors.newDirectExecutorService(),
+        parser = OPDSFeedParser.newParser(OPDSAcquisitionFeedEntryParser.newParser()),
+        searchParser = OPDSSearchParser.newParser(),
+        transport = FeedHTTPTransport(this.http)
+      )
+    feedLoader.showOnlySupportedBooks = false
+    return feedLoader
+  }
+
   private fun <T> anyNonNull(): T =
     Mockito.argThat { x -> x != null }
 
@@ -413,6 +413,166 @@ abstract class ProfilesDatabaseContract {
     Assertions.assertEquals(ProfileDateOfBirth(DateTime(20L), true), p0.preferences().dateOfBirth)
   }
 
+  /**
+   * Many rapid updates are applied in memory immediately, and the final description is
+   * persisted when pending writes are flushed.
+   */
+
+  @Test
+  @Throws(Exception::class)
+  fun testUpdateCoalescedAndFlushed() {
+    val fileTemp = DirectoryUtilities.directoryCreateTemporary()
+    val fileProfiles = File(fileTemp, "profiles")
+
+    val accountProviders =
+      MockAccountProviders.fakeAccountProviders()
+
+    val db0 = ProfilesDatabases.openWithAnonymousProfileDisabled(
+      this.context(),
+      this.analytics,
+      this.accountEvents,
+      accountProviders,
+      AccountBundledCredentialsEmpty.getInstance(),
+      this.credentialStore,
+      this.accountsDatabases(),
+      BookFormatsTesting.supportsEverything,
+      fileProfiles
+    )
+
+    val acc = MockAccountProviders.fakeProvider("urn:fake:0")
+    val p0 = db0.createProfile(acc, "Kermit")
+
+    for (index in 0L until 100L) {
+      p0.setDescription(
+        p0.description().copy(
+          preferences = p0.preferences().copy(
+            dateOfBirth = ProfileDateOfBirth(DateTime(index), true)
+          )
+        )
+      )
+      Assertions.assertEquals(ProfileDateOfBirth(DateTime(index), true), p0.preferences().dateOfBirth)
+    }
+
+    db0.flushPendingWrites()
+
+    val db1 = ProfilesDatabases.openWithAnonymousProfileDisabled(
+      this.context(),
+      this.analytics,
+      this.accountEvents,
+      accountProviders,
+      AccountBundledCredentialsEmpty.getInstance(),
+      this.credentialStore,
+      this.accountsDatabases(),
+      BookFormatsTesting.supportsEverything,
+      fileProfiles
+    )
+
+    val pr0 = db1.profiles()[p0.id]!!
+    Assertions.assertEquals(ProfileDateOfBirth(DateTime(99L), true), pr0.preferences().dateOfBirth)
+  }
+
+  /**
+   * Updates that leave the description unchanged on disk do not cause writes.
+   */
+
+  @Test
+  @Throws(Exception::class)
+  fun testUpdateUnchangedNotWritten() {
+    val fileTemp = DirectoryUtilities.directoryCreateTemporary()
+    val fileProfiles = File(fileTemp, "profiles")
+
+    val db = ProfilesDatabases.openWithAnonymousProfileDisabled(
+      this.context(),
+      this.analytics,
+      this.accountEvents,
+      MockAccountProviders.fakeAccountProviders(),
+      AccountBundledCredentialsEmpty.getInstance(),
+      this.credentialStore,
+      this.accountsDatabases(),
+      BookFormatsTesting.supportsEverything,
+      fileProfiles
+    )
+
+    val acc = MockAccountProviders.fakeProvider("urn:fake:0")
+    val p0 = db.createProfile(acc, "Kermit")
+    val original = p0.description()
+
+    val profileFile = File(p0.directory, "profile.json")
+    Assertions.assertTrue(profileFile.setLastModified(1000L))
+
+    /*
+     * An identical description, and a change that is reverted before being written, both
+     * leave the file untouched.
+     */
+
+    p0.setDescription(original.copy())
+    p0.setDescription(
+      original.copy(preferences = original.preferences.copy(showTestingLibraries = true))
+    )
+    p0.setDescription(original)
+    db.flushPendingWrites()
+
+    Assertions.assertEquals(1000L, profileFile.lastModified())
+    Assertions.assertEquals(original, p0.description())
+  }
+
+  /**
+   * A flush that fails to write a description raises an exception, and the description is
+   * written by the next flush.
+   */
+
+  @Test
+  @Throws(Exception::class)
+  fun testFlushFailureRetried() {
+    val fileTemp = DirectoryUtilities.directoryCreateTemporary()
+    val fileProfiles = File(fileTemp, "profiles")
+
+    val db = ProfilesDatabases.openWithAnonymousProfileDisabled(
+      this.context(),
+      this.analytics,
+      this.accountEvents,
+      MockAccountProviders.fakeAccountProviders(),
+      AccountBundledCredentialsEmpty.getInstance(),
+      this.credentialStore,
+      this.accountsDatabases(),
+      BookFormatsTesting.supportsEverything,
+      fileProfiles
+    )
+
+    val acc = MockAccountProviders.fakeProvider("urn:fake:0")
+    val p0 = db.createProfile(acc, "Kermit")
+    val updated =
+      p0.description().copy(
+        preferences = p0.preferences().copy(showTestingLibraries = true)
+      )
+
+    /*
+     * A non-empty directory in place of the temporary file makes the write fail.
+     */
+
+    val blocker = File(p0.directory, "profile.json.tmp")
+    File(blocker, "x").mkdirs()
+
+    p0.setDescription(updated)
+    Assertions.assertThrows(IOException::class.java) { db.flushPendingWrites() }
+
+    DirectoryUtilities.directoryDelete(blocker)
+    db.flushPendingWrites()
+
+    val db1 = ProfilesDatabases.openWithAnonymousProfileDisabled(
+      this.context(),
+      this.analytics,
+      this.accountEvents,
+      MockAccountProviders.fakeAccountProviders(),
+      AccountBundledCredentialsEmpty.getInstance(),
+      this.credentialStore,
+      this.accountsDatabases(),
+      BookFormatsTesting.supportsEverything,
+      fileProfiles
+    )
+    Assertions.assertTrue(db1.profiles()[p0.id]!!.preferences().showTestingLibraries)
+  }
+
   /**
    * Creating duplicate profiles fails.
    */
@@ -31,6 +31,8 @@ import org.nypl.simplified.accounts.registry.api.AccountProviderRegistryType
 import org.nypl.simplified.analytics.api.AnalyticsType
 import org.nypl.simplified.books.audio.AudioBookManifestStrategiesType
 import org.nypl.simplified.books.audio.AudioBookManifests
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannel
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
 import org.nypl.simplified.books.book_registry.BookRegistry
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.borrowing.internal.BorrowSubtaskDirectory
@@ -225,6 +227,7 @@ class Simply3635Test {
     b.addService(AudioBookManifestStrategiesType::class.java, AudioBookManifests)
     b.addService(AuthenticationDocumentParsersType::class.java, AuthenticationDocumentParsers())
     b.addService(BookFormatSupportType::class.java, bookFormatSupport)
+    b.addService(BookDownloadProgressChannelType::class.java, BookDownloadProgressChannel.create())
     b.addService(BookRegistryType::class.java, this.bookRegistry)
     b.addService(BorrowSubtaskDirectoryType::class.java, this.borrowSubtasks)
     b.addService(BundledContentResolverType::class.java, this.bundledContent)
@@ -0,0 +1,136 @@
+package org.nypl.simplified.tests.catalog
+
+import android.content.Context
+import android.view.View
+import android.view.ViewGroup
+import android.widget.FrameLayout
+import android.widget.LinearLayout
+import android.widget.TextView
+import androidx.recyclerview.widget.RecyclerView
+import com.io7m.jfunctional.Option
+import org.joda.time.DateTime
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.covers.BookCoverProviderType
+import org.nypl.simplified.feeds.api.FeedEntry
+import org.nypl.simplified.feeds.api.FeedGroup
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAvailabilityOpenAccess
+import org.nypl.simplified.ui.catalog.CatalogFeedWithGroupsLaneViewHolder
+import org.nypl.simplified.ui.catalog.CatalogLaneAdapter
+import org.nypl.simplified.ui.catalog.CatalogLaneViewPool
+import org.nypl.simplified.ui.catalog.R
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+import java.net.URI
+import java.util.UUID
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class CatalogLaneViewPoolTest {
+
+  private lateinit var context: Context
+  private lateinit var lanePool: CatalogLaneViewPool
+
+  @Before
+  fun testSetup() {
+    this.context = RuntimeEnvironment.application
+    this.lanePool =
+      CatalogLaneViewPool(
+        coverLoader = Mockito.mock(BookCoverProviderType::class.java),
+        onBookSelected = { }
+      )
+  }
+
+  /**
+   * A view holder that stands in for an inflated cover cell.
+   */
+
+  private class CellAdapter : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
+    override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): RecyclerView.ViewHolder =
+      object : RecyclerView.ViewHolder(View(parent.context)) {}
+
+    override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int) {
+    }
+
+    override fun getItemCount(): Int = 0
+  }
+
+  private fun pooled(): Int =
+    this.lanePool.pool.getRecycledViewCount(CatalogLaneAdapter.VIEW_TYPE_BOOK)
+
+  private fun fillPool(count: Int) {
+    val parent = FrameLayout(this.context)
+    val adapter = CellAdapter()
+    repeat(count) {
+      this.lanePool.pool.putRecycledView(
+        adapter.createViewHolder(parent, CatalogLaneAdapter.VIEW_TYPE_BOOK)
+      )
+    }
+  }
+
+  private fun createLane(): CatalogFeedWithGroupsLaneViewHolder {
+    val title = TextView(this.context)
+    title.id = R.id.feedLaneTitle
+    val covers = RecyclerView(this.context)
+    covers.id = R.id.feedLaneCoversScroll
+
+    val layout = LinearLayout(this.context)
+    layout.addView(title)
+    layout.addView(covers)
+    return CatalogFeedWithGroupsLaneViewHolder(layout, this.lanePool) { _, _ -> }
+  }
+
+  private fun group(
+    title: String,
+    count: Int
+  ): FeedGroup {
+    val accountID = AccountID(UUID.randomUUID())
+    val entries =
+      (0 until count).map { index ->
+        FeedEntry.FeedEntryOPDS(
+          accountID,
+          OPDSAcquisitionFeedEntry.newBuilder(
+            "urn:$title:$index",
+            "$title $index",
+            DateTime.now(),
+            OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+          ).build()
+        )
+      }
+    return FeedGroup(title, URI.create("urn:$title"), entries)
+  }
+
+  /**
+   * Cells placed in the pool ahead of time survive the first lane being bound, every lane
+   * being unbound, and a lane being bound again.
+   */
+
+  @Test
+  fun testPoolKeepsCellsAcrossBindAndUnbind() {
+    this.fillPool(8)
+    Assert.assertEquals(8, this.pooled())
+
+    val lane0 = this.createLane()
+    val lane1 = this.createLane()
+
+    lane0.bindTo(this.group("a", 3))
+    Assert.assertEquals(8, this.pooled())
+    lane1.bindTo(this.group("b", 0))
+    Assert.assertEquals(8, this.pooled())
+
+    lane0.unbind()
+    lane1.unbind()
+    Assert.assertEquals(8, this.pooled())
+
+    lane0.bindTo(this.group("c", 3))
+    Assert.assertEquals(8, this.pooled())
+    lane0.bindTo(this.group("d", 2))
+    Assert.assertEquals(8, this.pooled())
+  }
+}
@@ -11,7 +11,12 @@ import org.slf4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -152,4 +157,162 @@ public abstract class FileLockingContract {
 
     Assertions.assertEquals(Integer.valueOf(1), Integer.valueOf(count.get()));
   }
+
+  /**
+   * Test that differently spelled paths to the same file share a lock.
+   */
+
+  @Test
+  public void testLockingCanonicalPaths()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final File lock = new File(tmp, "lock.txt");
+    final File lockOther = new File(new File(new File(tmp, "x"), ".."), "lock.txt");
+    final AtomicBoolean failed = new AtomicBoolean(false);
+
+    FileLocking.withFileThreadLocked(
+      lock, 1000L, (PartialFunctionType<Unit, Unit, IOException>) u0 -> {
+        try {
+          FileLocking.withFileThreadLocked(
+            lockOther, 1000L, (PartialFunctionType<Unit, Unit, IOException>) u1 -> Unit.unit());
+        } catch (final IOException e) {
+          failed.set(true);
+        }
+        return Unit.unit();
+      });
+
+    Assertions.assertTrue(failed.get());
+  }
+
+  /**
+   * Test that many threads can hold a lock in read mode at once.
+   */
+
+  @Test
+  public void testLockingReadShared()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final File lock = new File(tmp, "lock.txt");
+    final int threads = 4;
+    final CountDownLatch latch = new CountDownLatch(threads);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+    try {
+      final List<Future<Boolean>> futures = new ArrayList<>();
+      for (int index = 0; index < threads; ++index) {
+        futures.add(executor.submit(() ->
+          FileLocking.withFileThreadLocked(
+            lock,
+            5000L,
+            FileLocking.Mode.READ,
+            (PartialFunctionType<Unit, Boolean, Exception>) x -> {
+              latch.countDown();
+              return Boolean.valueOf(latch.await(5L, TimeUnit.SECONDS));
+            })));
+      }
+
+      for (final Future<Boolean> future : futures) {
+        Assertions.assertEquals(Boolean.TRUE, future.get(10L, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Test that many threads hammering the same set of account directories,
+   * each using freshly created file values, never hold the same write lock at
+   * the same time, and that no locks are retained afterwards.
+   */
+
+  @Test
+  public void testLockingStress()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final int directories = 4;
+    final int threads = 16;
+    final int iterations = 500;
+    final AtomicInteger[] holders = new AtomicInteger[directories];
+    for (int index = 0; index < directories; ++index) {
+      holders[index] = new AtomicInteger(0);
+    }
+
+    /*
+     * Other tests may leave threads holding locks for a short time.
+     */
+
+    final int pathsBefore = FileLocking.statistics().getPaths();
+    final AtomicBoolean overlapped = new AtomicBoolean(false);
+    final AtomicInteger completed = new AtomicInteger(0);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final long timeThen = System.nanoTime();
+
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < threads; ++thread) {
+        final int seed = thread;
+        futures.add(executor.submit(() -> {
+          for (int iteration = 0; iteration < iterations; ++iteration) {
+            final int directory = (seed + iteration) % directories;
+            final File lock = new File(new File(tmp, "account" + directory), "lock");
+            final FileLocking.Mode mode =
+              iteration % 4 == 0 ? FileLocking.Mode.READ : FileLocking.Mode.WRITE;
+
+            FileLocking.withFileThreadLocked(
+              lock, 10_000L, mode, (PartialFunctionType<Unit, Unit, IOException>) x -> {
+                if (mode == FileLocking.Mode.WRITE) {
+                  if (holders[directory].incrementAndGet() != 1) {
+                    overlapped.set(true);
+                  }
+                  holders[directory].decrementAndGet();
+                }
+                completed.incrementAndGet();
+                return Unit.unit();
+              });
+          }
+          return null;
+        }));
+      }
+
+      for (final Future<?> future : futures) {
+        future.get(60L, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    final FileLocking.Statistics statistics = FileLocking.statistics();
+    this.logger().debug(
+      "{} locks in {}ms: {}",
+      Integer.valueOf(completed.get()),
+      Long.valueOf((System.nanoTime() - timeThen) / 1_000_000L),
+      statistics);
+
+    Assertions.assertFalse(overlapped.get());
+    Assertions.assertEquals(threads * iterations, completed.get());
+    Assertions.assertTrue(statistics.getPaths() <= pathsBefore);
+  }
+
+  /**
+   * Test that a process lock can be obtained and released.
+   */
+
+  @Test
+  public void testLockingProcess()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final File lock = new File(tmp, "lock.txt");
+    final AtomicInteger count = new AtomicInteger(0);
+
+    for (final FileLocking.Mode mode : FileLocking.Mode.values()) {
+      FileLocking.withFileProcessLocked(
+        lock, 1000L, mode, (PartialFunctionType<Unit, Unit, IOException>) x -> {
+          count.incrementAndGet();
+          return Unit.unit();
+        });
+    }
+
+    Assertions.assertEquals(2, count.get());
+    Assertions.assertTrue(lock.isFile());
+  }
 }
@@ -2,13 +2,23 @@ package org.nypl.simplified.tests.files;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.nypl.simplified.files.DirectorySyncType;
 import org.nypl.simplified.files.DirectoryUtilities;
+import org.nypl.simplified.files.FileCommitGroup;
 import org.nypl.simplified.files.FileUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public final class FilesTest {
 
+  private static final Logger LOG = LoggerFactory.getLogger(FilesTest.class);
+
   @Test
   public final void testDeleteRecreate()
     throws Exception {
@@ -25,4 +35,144 @@ public final class FilesTest {
     Assertions.assertFalse(file0.exists(), file0 + " does not exist");
   }
 
+  @Test
+  public final void testWriteAtomicallyDurability()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final File file = new File(tmp, "file.txt");
+    final File fileTmp = new File(tmp, "file.txt.tmp");
+
+    for (final FileUtilities.Durability durability : FileUtilities.Durability.values()) {
+      FileUtilities.fileWriteUTF8Atomically(file, fileTmp, durability.name(), durability);
+      Assertions.assertEquals(durability.name(), FileUtilities.fileReadUTF8(file));
+      Assertions.assertFalse(fileTmp.exists(), fileTmp + " does not exist");
+    }
+  }
+
+  /**
+   * Directory syncs go through the installed hook, and a sync that fails
+   * fails the write.
+   */
+
+  @Test
+  public final void testDirectorySyncFailure()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final File file = new File(tmp, "file.txt");
+    final File fileTmp = new File(tmp, "file.txt.tmp");
+    final List<File> synced = new ArrayList<>();
+
+    final DirectorySyncType previous =
+      FileUtilities.setDirectorySync(directory -> {
+        synced.add(directory);
+        throw new IOException("Cannot sync");
+      });
+
+    try {
+      FileUtilities.fileWriteUTF8Atomically(file, fileTmp, "A", FileUtilities.Durability.FILE);
+      Assertions.assertEquals(Collections.emptyList(), synced);
+
+      Assertions.assertThrows(IOException.class, () -> {
+        FileUtilities.fileWriteUTF8Atomically(
+          file, fileTmp, "B", FileUtilities.Durability.DIRECTORY);
+      });
+      Assertions.assertEquals(Collections.singletonList(tmp.getAbsoluteFile()), synced);
+      Assertions.assertEquals("B", FileUtilities.fileReadUTF8(file));
+    } finally {
+      FileUtilities.setDirectorySync(previous);
+    }
+  }
+
+  @Test
+  public final void testCommitGroup()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final File file0 = new File(tmp, "file0.txt");
+    final File file1 = new File(tmp, "file1.txt");
+    final File file0Tmp = new File(tmp, "file0.txt.tmp");
+    final File file1Tmp = new File(tmp, "file1.txt.tmp");
+    FileUtilities.fileWriteUTF8(file0, "Old.");
+
+    try (FileCommitGroup group = FileCommitGroup.create(FileUtilities.Durability.DIRECTORY)) {
+      group.stageUTF8(file0, file0Tmp, "New 0.");
+      group.stageBytes(file1, file1Tmp, "New 1.".getBytes("UTF-8"));
+      Assertions.assertEquals(2, group.size());
+      Assertions.assertEquals("Old.", FileUtilities.fileReadUTF8(file0));
+      Assertions.assertFalse(file1.exists(), file1 + " does not exist");
+
+      group.commit();
+      Assertions.assertEquals(0, group.size());
+    }
+
+    Assertions.assertEquals("New 0.", FileUtilities.fileReadUTF8(file0));
+    Assertions.assertEquals("New 1.", FileUtilities.fileReadUTF8(file1));
+    Assertions.assertFalse(file0Tmp.exists(), file0Tmp + " does not exist");
+    Assertions.assertFalse(file1Tmp.exists(), file1Tmp + " does not exist");
+  }
+
+  @Test
+  public final void testCommitGroupDiscarded()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final File file = new File(tmp, "file.txt");
+    final File fileTmp = new File(tmp, "file.txt.tmp");
+    FileUtilities.fileWriteUTF8(file, "Old.");
+
+    try (FileCommitGroup group = FileCommitGroup.create(FileUtilities.Durability.DIRECTORY)) {
+      group.stageUTF8(file, fileTmp, "New.");
+    }
+
+    Assertions.assertEquals("Old.", FileUtilities.fileReadUTF8(file));
+    Assertions.assertFalse(fileTmp.exists(), fileTmp + " does not exist");
+  }
+
+  /**
+   * Compare the cost of making many small writes durable one at a time with
+   * the cost of committing them as a group.
+   */
+
+  @Test
+  public final void testCommitGroupTiming()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final int count = 300;
+    final String text = "{\"id\":\"urn:book\",\"title\":\"A Book\"}";
+
+    final File separateDirectory = new File(tmp, "separate");
+    DirectoryUtilities.directoryCreate(separateDirectory);
+    final long separateThen = System.nanoTime();
+    for (int index = 0; index < count; ++index) {
+      FileUtilities.fileWriteUTF8Atomically(
+        new File(separateDirectory, index + ".json"),
+        new File(separateDirectory, index + ".json.tmp"),
+        text,
+        FileUtilities.Durability.DIRECTORY);
+    }
+    final long separateNow = System.nanoTime();
+
+    final File groupDirectory = new File(tmp, "group");
+    DirectoryUtilities.directoryCreate(groupDirectory);
+    final long groupThen = System.nanoTime();
+    try (FileCommitGroup group = FileCommitGroup.create(FileUtilities.Durability.DIRECTORY)) {
+      for (int index = 0; index < count; ++index) {
+        group.stageUTF8(
+          new File(groupDirectory, index + ".json"),
+          new File(groupDirectory, index + ".json.tmp"),
+          text);
+      }
+      group.commit();
+    }
+    final long groupNow = System.nanoTime();
+
+    LOG.debug(
+      "{} durable writes: separately {}ms, grouped {}ms",
+      Integer.valueOf(count),
+      Long.valueOf((separateNow - separateThen) / 1_000_000L),
+      Long.valueOf((groupNow - groupThen) / 1_000_000L));
+
+    for (int index = 0; index < count; ++index) {
+      Assertions.assertEquals(
+        text, FileUtilities.fileReadUTF8(new File(groupDirectory, index + ".json")));
+    }
+  }
 }
@@ -0,0 +1,126 @@
+package org.nypl.simplified.tests.json
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
+import com.fasterxml.jackson.databind.node.ObjectNode
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.json.core.JSONCodecs
+import org.nypl.simplified.json.core.JSONSerializerUtilities
+import org.slf4j.LoggerFactory
+import java.io.FileNotFoundException
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class JSONCodecsTest {
+
+  private val logger = LoggerFactory.getLogger(JSONCodecsTest::class.java)
+
+  private fun resource(name: String): ByteArray {
+    val path = "/org/nypl/simplified/tests/opds/$name"
+    val url = JSONCodecsTest::class.java.getResource(path)
+      ?: throw FileNotFoundException(path)
+    return url.openStream().use { stream -> stream.readBytes() }
+  }
+
+  /**
+   * The shared codecs are created once and never reconfigured.
+   */
+
+  @Test
+  fun testSharedInstances() {
+    assertSame(JSONCodecs.mapper(), JSONCodecs.mapper())
+    assertSame(JSONCodecs.treeReader(), JSONCodecs.treeReader())
+    assertSame(JSONCodecs.prettyWriter(), JSONCodecs.prettyWriter())
+    assertSame(JSONCodecs.compactWriter(), JSONCodecs.compactWriter())
+    assertSame(JSONCodecs.canonicalWriter(), JSONCodecs.canonicalWriter())
+
+    JSONCodecs.warm()
+    JSONCodecs.canonicalWriter().writeValueAsString(JSONCodecs.mapper().createObjectNode())
+
+    assertFalse(JSONCodecs.mapper().isEnabled(SerializationFeature.INDENT_OUTPUT))
+    assertFalse(JSONCodecs.mapper().isEnabled(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS))
+  }
+
+  /**
+   * The shared codecs produce the same output as freshly constructed mappers.
+   */
+
+  @Test
+  fun testSameOutputAsFreshMapper() {
+    val data = this.resource("compatibility-20180921-test-new-1.json")
+    val freshTree = ObjectMapper().readTree(data)
+    val sharedTree = JSONCodecs.treeReader().readTree(data)
+    assertEquals(freshTree, sharedTree)
+    assertEquals(
+      ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(freshTree),
+      JSONCodecs.prettyWriter().writeValueAsString(sharedTree)
+    )
+  }
+
+  /**
+   * The shared reader can be used from many threads at once.
+   */
+
+  @Test
+  fun testConcurrentReads() {
+    val data = this.resource("compatibility-20180921-test-new-1.json")
+    val expected = ObjectMapper().readTree(data)
+    val executor = Executors.newFixedThreadPool(8)
+    try {
+      val tasks = (0 until 64).map {
+        Callable { JSONCodecs.treeReader().readTree(data) }
+      }
+      for (future in executor.invokeAll(tasks)) {
+        assertEquals(expected, future.get(10L, TimeUnit.SECONDS))
+      }
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  /**
+   * Compare the cost of creating a mapper per document (as the codecs used to) against
+   * using the shared reader. This does not assert anything about timing; the results are
+   * logged.
+   */
+
+  @Test
+  fun testCostComparison() {
+    val data = this.resource("compatibility-20180921-test-new-1.json")
+    val iterations = 500
+
+    val coldThen = System.nanoTime()
+    ObjectMapper().readTree(data)
+    val coldTime = System.nanoTime() - coldThen
+
+    for (round in 0 until 2) {
+      val freshThen = System.nanoTime()
+      for (i in 0 until iterations) {
+        JSONSerializerUtilities.serializeToString(
+          ObjectMapper().readTree(data) as ObjectNode
+        )
+      }
+      val freshTime = System.nanoTime() - freshThen
+
+      val sharedThen = System.nanoTime()
+      for (i in 0 until iterations) {
+        JSONSerializerUtilities.serializeToString(
+          JSONCodecs.treeReader().readTree(data) as ObjectNode
+        )
+      }
+      val sharedTime = System.nanoTime() - sharedThen
+
+      this.logger.debug(
+        "[{}] cold mapper: {}us, per document: fresh mapper {}us, shared codecs {}us",
+        round,
+        coldTime / 1000L,
+        (freshTime / iterations) / 1000L,
+        (sharedTime / iterations) / 1000L
+      )
+    }
+  }
+}
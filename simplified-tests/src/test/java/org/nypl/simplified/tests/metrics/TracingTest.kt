@@ -0,0 +1,150 @@
+package org.nypl.simplified.tests.metrics
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.ObjectNode
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.metrics.api.Tracing
+import org.slf4j.LoggerFactory
+import java.io.ByteArrayOutputStream
+
+class TracingTest {
+
+  private val logger =
+    LoggerFactory.getLogger(TracingTest::class.java)
+
+  @AfterEach
+  fun tearDown() {
+    Tracing.stop()
+  }
+
+  /**
+   * Nothing is recorded while tracing is disabled.
+   */
+
+  @Test
+  fun testDisabled() {
+    Assertions.assertFalse(Tracing.isEnabled)
+    Tracing.trace("x") { }
+    Tracing.begin("y").close()
+    Assertions.assertEquals(listOf<Any>(), Tracing.events())
+  }
+
+  /**
+   * Spans that begin while another span is open on the same thread are its children.
+   */
+
+  @Test
+  fun testNesting() {
+    Tracing.start()
+
+    Tracing.trace("outer") {
+      Tracing.trace("inner0") { }
+      Tracing.trace("inner1") { }
+    }
+    Tracing.trace("after") { }
+
+    val events = Tracing.events()
+    Assertions.assertEquals(listOf("outer", "inner0", "inner1", "after"), events.map { e -> e.name })
+
+    val outer = events[0]
+    Assertions.assertEquals(0L, outer.parent)
+    Assertions.assertEquals(outer.id, events[1].parent)
+    Assertions.assertEquals(outer.id, events[2].parent)
+    Assertions.assertEquals(0L, events[3].parent)
+    Assertions.assertTrue(outer.durationNanoseconds >= events[1].durationNanoseconds)
+    Assertions.assertEquals(Thread.currentThread().id, outer.threadId)
+  }
+
+  /**
+   * Asynchronous spans do not become parents, and are attributed to the thread on which
+   * they began.
+   */
+
+  @Test
+  fun testAsync() {
+    Tracing.start()
+
+    val span = Tracing.beginAsync("async")
+    Tracing.trace("sync") { }
+
+    val thread = Thread { span.close() }
+    thread.start()
+    thread.join()
+    span.close()
+
+    val events = Tracing.events()
+    Assertions.assertEquals(2, events.size)
+    val async = events.find { e -> e.name == "async" }!!
+    val sync = events.find { e -> e.name == "sync" }!!
+    Assertions.assertEquals(0L, sync.parent)
+    Assertions.assertEquals(Thread.currentThread().id, async.threadId)
+  }
+
+  /**
+   * Spans beyond the size of the trace are dropped.
+   */
+
+  @Test
+  fun testDropped() {
+    Tracing.start(maximumEvents = 2)
+
+    for (index in 0 until 5) {
+      Tracing.trace("span$index") { }
+    }
+
+    Assertions.assertEquals(2, Tracing.events().size)
+    Assertions.assertEquals(3, Tracing.droppedEvents())
+  }
+
+  /**
+   * Traces are written in the Chrome trace event format.
+   */
+
+  @Test
+  fun testChromeTrace() {
+    Tracing.start()
+
+    Tracing.trace("outer \"quoted\"", "boot") {
+      Tracing.trace("inner") { }
+    }
+
+    val output = ByteArrayOutputStream()
+    Tracing.writeChromeTrace(output)
+
+    val root = ObjectMapper().readTree(output.toByteArray()) as ObjectNode
+    val events = root["traceEvents"].toList()
+    Assertions.assertEquals(3, events.size)
+
+    Assertions.assertEquals("M", events[0]["ph"].asText())
+    Assertions.assertEquals("thread_name", events[0]["name"].asText())
+    Assertions.assertEquals(Thread.currentThread().name, events[0]["args"]["name"].asText())
+
+    val outer = events[1]
+    Assertions.assertEquals("X", outer["ph"].asText())
+    Assertions.assertEquals("outer \"quoted\"", outer["name"].asText())
+    Assertions.assertEquals("boot", outer["cat"].asText())
+    Assertions.assertEquals(Thread.currentThread().id, outer["tid"].asLong())
+
+    val inner = events[2]
+    Assertions.assertEquals("inner", inner["name"].asText())
+    Assertions.assertEquals(outer["args"]["id"].asLong(), inner["args"]["parent"].asLong())
+    Assertions.assertTrue(inner["ts"].asDouble() >= outer["ts"].asDouble())
+  }
+
+  /**
+   * Measure the cost of spans while tracing is disabled.
+   */
+
+  @Test
+  fun testDisabledOverhead() {
+    val timeThen = System.nanoTime()
+    for (index in 0 until 1_000_000) {
+      Tracing.trace("x") { }
+    }
+    val timeNow = System.nanoTime()
+    this.logger.debug("disabled: {}ns per span", (timeNow - timeThen) / 1_000_000L)
+    Assertions.assertEquals(listOf<Any>(), Tracing.events())
+  }
+}
@@ -534,11 +534,15 @@ abstract class MigrationFrom3MasterContract {
     Assertions.assertTrue(bookDatabase.books().contains(bookId))
     val format = bookDatabase.entry(bookId).book.findPreferredFormat() as BookFormatEPUB
     Assertions.assertEquals(epubData.toList(), format.file!!.readBytes().toList())
+    Assertions.assertEquals(1, report.throughput!!.books)
+    Assertions.assertEquals(32L, report.throughput!!.bytes)
 
     /*
-     * All files should be gone.
+     * All files should be gone, including the checkpoint of the completed migration.
      */
 
+    Assertions.assertFalse(File(this.tempDir, "migration-from3master-checkpoint.json").exists())
+
     for (
       file in listOf(
         booksDir,
@@ -665,7 +669,7 @@ abstract class MigrationFrom3MasterContract {
 
     Mockito.`when`(bookDatabaseEntryFormatHandle.setBookmarks(Mockito.anyList()))
       .thenThrow(IOException("Bad bookmarks"))
-    Mockito.`when`(bookDatabaseEntryFormatHandle.copyInBook(bookEPUBFile))
+    Mockito.`when`(bookDatabaseEntryFormatHandle.moveInBook(bookEPUBFile))
       .thenThrow(IOException("Bad book"))
 
     val migration = this.migrations.create(this.services)
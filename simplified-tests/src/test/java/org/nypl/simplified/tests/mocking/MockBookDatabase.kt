@@ -1,5 +1,6 @@
 package org.nypl.simplified.tests.mocking
 
+import org.joda.time.Instant
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.books.api.Book
 import org.nypl.simplified.books.api.BookID
@@ -18,6 +19,7 @@ class MockBookDatabase(
 
   var deleted = false
   val entries = mutableMapOf<BookID, MockBookDatabaseEntry>()
+  val downloads = mutableListOf<BookID>()
 
   override fun owner(): AccountID {
     return this.owner
@@ -68,4 +70,28 @@ class MockBookDatabase(
   ): BookDatabaseEntryType {
     return this.entries[id] ?: throw IllegalStateException("No such database entry")
   }
+
+  override fun downloadsQueued(): List<BookID> {
+    synchronized(this.downloads) {
+      return this.downloads.toList()
+    }
+  }
+
+  override fun downloadQueued(id: BookID) {
+    synchronized(this.downloads) {
+      if (!this.downloads.contains(id)) {
+        this.downloads.add(id)
+      }
+    }
+  }
+
+  override fun downloadFinished(id: BookID) {
+    synchronized(this.downloads) {
+      this.downloads.remove(id)
+    }
+  }
+
+  override fun deleteTemporaryFiles(modifiedBefore: Instant): Long {
+    return 0L
+  }
 }
@@ -1,5 +1,6 @@
 package org.nypl.simplified.tests.mocking
 
+import org.joda.time.Instant
 import org.librarysimplified.audiobook.api.PlayerPosition
 import org.nypl.simplified.books.api.BookDRMInformation
 import org.nypl.simplified.books.api.BookDRMKind
@@ -67,4 +68,13 @@ class MockBookDatabaseEntryFormatHandleAudioBook(
     this.bookFile = null
     this.formatField = this.formatField.copy(manifest = null)
   }
+
+  var lastOpenedField: Instant? = null
+
+  override val lastOpened: Instant?
+    get() = this.lastOpenedField
+
+  override fun setLastOpened(time: Instant) {
+    this.lastOpenedField = time
+  }
 }
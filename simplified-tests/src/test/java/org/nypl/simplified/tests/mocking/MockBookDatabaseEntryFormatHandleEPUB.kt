@@ -1,5 +1,6 @@
 package org.nypl.simplified.tests.mocking
 
+import org.joda.time.Instant
 import org.nypl.simplified.books.api.BookDRMInformation
 import org.nypl.simplified.books.api.BookDRMKind
 import org.nypl.simplified.books.api.BookFormat
@@ -7,6 +8,8 @@ import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.api.Bookmark
 import org.nypl.simplified.books.book_database.api.BookDRMInformationHandle
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
+import org.nypl.simplified.books.book_database.api.BookTextIndexType
+import org.nypl.simplified.books.book_database.api.EPUBIndex
 import org.nypl.simplified.books.formats.api.StandardFormatNames
 import java.io.File
 
@@ -42,6 +45,10 @@ class MockBookDatabaseEntryFormatHandleEPUB(
     check(this.formatField.isDownloaded)
   }
 
+  override fun moveInBook(file: File) {
+    this.copyInBook(file)
+  }
+
   override fun setLastReadLocation(bookmark: Bookmark?) {
     this.formatField = this.formatField.copy(lastReadLocation = bookmark)
   }
@@ -61,4 +68,26 @@ class MockBookDatabaseEntryFormatHandleEPUB(
     this.bookFile = null
     this.formatField = this.formatField.copy(file = this.bookFile)
   }
+
+  var lastOpenedField: Instant? = null
+
+  override val lastOpened: Instant?
+    get() = this.lastOpenedField
+
+  override fun setLastOpened(time: Instant) {
+    this.lastOpenedField = time
+  }
+
+  var indexField: EPUBIndex? = null
+
+  override fun index(): EPUBIndex? =
+    this.indexField
+
+  var textIndexField: BookTextIndexType? = null
+
+  override fun textIndex(): BookTextIndexType? =
+    this.textIndexField
+
+  override fun buildTextIndex(): BookTextIndexType? =
+    this.textIndexField
 }
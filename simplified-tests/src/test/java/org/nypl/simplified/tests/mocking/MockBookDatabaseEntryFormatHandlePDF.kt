@@ -1,6 +1,7 @@
 package org.nypl.simplified.tests.mocking
 
 import com.io7m.junreachable.UnimplementedCodeException
+import org.joda.time.Instant
 import org.nypl.simplified.books.api.BookDRMInformation
 import org.nypl.simplified.books.api.BookDRMKind
 import org.nypl.simplified.books.api.BookFormat
@@ -57,4 +58,13 @@ class MockBookDatabaseEntryFormatHandlePDF(
     this.bookFile = null
     this.formatField = this.formatField.copy(file = this.bookFile)
   }
+
+  var lastOpenedField: Instant? = null
+
+  override val lastOpened: Instant?
+    get() = this.lastOpenedField
+
+  override fun setLastOpened(time: Instant) {
+    this.lastOpenedField = time
+  }
 }
@@ -1,5 +1,6 @@
 package org.nypl.simplified.tests.mocking
 
+import one.irradia.mime.api.MIMEType
 import org.joda.time.Instant
 import org.librarysimplified.http.api.LSHTTPClientType
 import org.librarysimplified.services.api.ServiceDirectoryType
@@ -9,10 +10,14 @@ import org.nypl.simplified.accounts.api.AccountReadableType
 import org.nypl.simplified.books.api.Book
 import org.nypl.simplified.books.audio.AudioBookManifestStrategiesType
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannel
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressCounter
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookWithStatus
 import org.nypl.simplified.books.borrowing.BorrowContextType
+import org.nypl.simplified.books.borrowing.BorrowPartialDownloads
 import org.nypl.simplified.books.borrowing.BorrowTimeoutConfiguration
 import org.nypl.simplified.books.bundled.api.BundledContentResolverType
 import org.nypl.simplified.content.api.ContentResolverType
@@ -44,6 +49,9 @@ class MockBorrowContext(
 
   var cacheDirectory = TestDirectories.temporaryDirectory()
 
+  var downloadProgress: BookDownloadProgressChannelType =
+    BookDownloadProgressChannel.create()
+
   override fun cacheDirectory(): File {
     return this.cacheDirectory
   }
@@ -61,11 +69,18 @@ class MockBorrowContext(
   override var bookCurrent: Book = bookInitial
 
   override fun bookPublishStatus(status: BookStatus) {
+    if (status !is BookStatus.Downloading) {
+      this.downloadProgress.finish(this.bookCurrent.id)
+    }
     val bookNext = this.bookDatabaseEntry.book
     this.bookCurrent = bookNext
     this.bookRegistry.update(BookWithStatus(bookNext, status))
   }
 
+  override fun bookDownloadProgress(): BookDownloadProgressCounter {
+    return this.downloadProgress.counterFor(this.bookCurrent.id)
+  }
+
   override fun bookDownloadSucceeded() {
     val book = this.bookDatabaseEntry.book
     check(book.isDownloaded)
@@ -172,6 +187,12 @@ class MockBorrowContext(
     throw IOException("Could not create a temporary file within 100 attempts!")
   }
 
+  override fun partialDownloadFile(contentType: MIMEType): File {
+    this.temporaryDirectory.mkdirs()
+    val book = this.bookCurrent
+    return BorrowPartialDownloads.file(this.temporaryDirectory, book.account, book.id, contentType)
+  }
+
   override fun opdsAcquisitionPathRemaining(): List<OPDSAcquisitionPathElement> {
     return this.currentRemainingOPDSPathElements
   }
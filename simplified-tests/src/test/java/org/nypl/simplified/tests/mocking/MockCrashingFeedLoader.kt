@@ -2,6 +2,7 @@ package org.nypl.simplified.tests.mocking
 
 import com.google.common.util.concurrent.FluentFuture
 import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListeningExecutorService
 import org.librarysimplified.http.api.LSHTTPAuthorizationType
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.feeds.api.FeedLoaderResult
@@ -22,4 +23,14 @@ class MockCrashingFeedLoader : FeedLoaderType {
   ): FluentFuture<FeedLoaderResult> {
     return FluentFuture.from(Futures.immediateFailedFuture(IOException("Ouch!")))
   }
+
+  override fun fetchURI(
+    account: AccountID,
+    uri: URI,
+    auth: LSHTTPAuthorizationType?,
+    method: String,
+    executor: ListeningExecutorService
+  ): FluentFuture<FeedLoaderResult> {
+    return this.fetchURI(account, uri, auth, method)
+  }
 }
@@ -2,6 +2,7 @@ package org.nypl.simplified.tests.mocking
 
 import com.google.common.collect.ImmutableList
 import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.Futures
 import com.google.common.util.concurrent.SettableFuture
 import io.reactivex.Observable
 import io.reactivex.subjects.PublishSubject
@@ -145,6 +146,10 @@ class MockProfilesController(
     return FluentFuture.from(SettableFuture.create())
   }
 
+  override fun profileFlushPendingWrites(): FluentFuture<Unit> {
+    return FluentFuture.from(Futures.immediateFuture(Unit))
+  }
+
   override fun profileAccountForBook(bookID: BookID): AccountType {
     return TODO()
   }
@@ -1,7 +1,11 @@
 package org.nypl.simplified.tests.opds;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.nypl.simplified.json.core.JSONSerializerUtilities;
 import org.nypl.simplified.opds.core.OPDSAcquisition;
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeed;
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry;
@@ -13,6 +17,8 @@ import org.nypl.simplified.opds.core.OPDSJSONParser;
 import org.nypl.simplified.opds.core.OPDSJSONParserType;
 import org.nypl.simplified.opds.core.OPDSJSONSerializer;
 import org.nypl.simplified.opds.core.OPDSJSONSerializerType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -20,9 +26,13 @@ import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
 public final class OPDSJSONSerializerTest {
+  private static final Logger LOG = LoggerFactory.getLogger(OPDSJSONSerializerTest.class);
+
   private static InputStream getResource(
     final String name)
     throws Exception {
@@ -128,4 +138,136 @@ public final class OPDSJSONSerializerTest {
       }
     }
   }
+
+  private static List<OPDSAcquisitionFeedEntry> streamingTestEntries()
+    throws Exception {
+    final OPDSAcquisitionFeedEntryParserType ep =
+      OPDSAcquisitionFeedEntryParser.newParser();
+    final OPDSFeedParserType p =
+      OPDSFeedParser.newParser(ep);
+
+    final List<OPDSAcquisitionFeedEntry> entries = new ArrayList<>();
+    entries.add(ep.parseEntryStream(
+      URI.create("urn:test"), OPDSJSONSerializerTest.getResource("entry-0.xml")));
+    entries.add(ep.parseEntryStream(
+      URI.create("urn:test"), OPDSJSONSerializerTest.getResource("entry-with-drm.xml")));
+    entries.add(ep.parseEntryStream(
+      URI.create("urn:test"), OPDSJSONSerializerTest.getResource("entry-availability-held-timed-queued.xml")));
+    entries.add(ep.parseEntryStream(
+      URI.create("urn:test"), OPDSJSONSerializerTest.getResource("entry-availability-heldready-timed.xml")));
+    entries.add(ep.parseEntryStream(
+      URI.create("urn:test"), OPDSJSONSerializerTest.getResource("entry-availability-open-access.xml")));
+    entries.add(ep.parseEntryStream(
+      URI.create("urn:test"), OPDSJSONSerializerTest.getResource("entry-availability-holdable.xml")));
+    entries.addAll(p.parse(
+      new URI("http://example.com"), OPDSJSONSerializerTest.getResource("loans.xml")).getFeedEntries());
+    return entries;
+  }
+
+  /**
+   * The streaming serializer must produce exactly the bytes produced by the tree serializer,
+   * and the streaming parser must produce exactly the entries produced by the tree parser.
+   */
+
+  @Test
+  public void testStreamingRoundTripCompatible()
+    throws Exception {
+    final OPDSJSONParserType jp = OPDSJSONParser.newParser();
+    final OPDSJSONSerializerType s = OPDSJSONSerializer.newSerializer();
+
+    for (final OPDSAcquisitionFeedEntry e0 : streamingTestEntries()) {
+      final ByteArrayOutputStream treeOut = new ByteArrayOutputStream();
+      s.serializeToStream(s.serializeFeedEntry(e0), treeOut);
+
+      final ByteArrayOutputStream streamOut = new ByteArrayOutputStream();
+      s.serializeFeedEntryToStream(e0, streamOut);
+
+      Assertions.assertEquals(
+        new String(treeOut.toByteArray(), StandardCharsets.UTF_8),
+        new String(streamOut.toByteArray(), StandardCharsets.UTF_8));
+
+      final OPDSAcquisitionFeedEntry eTree =
+        jp.parseAcquisitionFeedEntry(
+          (ObjectNode)
+            new ObjectMapper().readTree(streamOut.toByteArray()));
+      final OPDSAcquisitionFeedEntry eStream =
+        jp.parseAcquisitionFeedEntryFromStream(new ByteArrayInputStream(streamOut.toByteArray()));
+
+      Assertions.assertEquals(eTree, eStream);
+      Assertions.assertEquals(eTree.getAnalytics(), eStream.getAnalytics());
+      Assertions.assertEquals(eTree.getAnnotations(), eStream.getAnnotations());
+      Assertions.assertEquals(eTree.getLicensor(), eStream.getLicensor());
+      Assertions.assertEquals(eTree.getDistribution(), eStream.getDistribution());
+    }
+  }
+
+  /**
+   * A rough throughput comparison of the tree-based and streaming paths. This does not assert
+   * anything about timing; the results are logged.
+   */
+
+  @Test
+  public void testStreamingThroughput()
+    throws Exception {
+    final OPDSJSONParserType jp = OPDSJSONParser.newParser();
+    final OPDSJSONSerializerType s = OPDSJSONSerializer.newSerializer();
+    final List<OPDSAcquisitionFeedEntry> entries = streamingTestEntries();
+    final int iterations = 200;
+
+    final byte[][] encoded = new byte[entries.size()][];
+    for (int index = 0; index < entries.size(); ++index) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      s.serializeFeedEntryToStream(entries.get(index), out);
+      encoded[index] = out.toByteArray();
+    }
+
+    for (int warm = 0; warm < 2; ++warm) {
+      final long treeWriteStart = System.nanoTime();
+      for (int i = 0; i < iterations; ++i) {
+        for (final OPDSAcquisitionFeedEntry e : entries) {
+          JSONSerializerUtilities.serializeToString(s.serializeFeedEntry(e))
+            .getBytes(StandardCharsets.UTF_8);
+        }
+      }
+      final long treeWriteTime = System.nanoTime() - treeWriteStart;
+
+      final long streamWriteStart = System.nanoTime();
+      for (int i = 0; i < iterations; ++i) {
+        for (final OPDSAcquisitionFeedEntry e : entries) {
+          s.serializeFeedEntryToStream(e, new ByteArrayOutputStream());
+        }
+      }
+      final long streamWriteTime = System.nanoTime() - streamWriteStart;
+
+      final long treeReadStart = System.nanoTime();
+      for (int i = 0; i < iterations; ++i) {
+        for (final byte[] data : encoded) {
+          jp.parseAcquisitionFeedEntry(
+            (ObjectNode)
+              new ObjectMapper().readTree(data));
+        }
+      }
+      final long treeReadTime = System.nanoTime() - treeReadStart;
+
+      final long streamReadStart = System.nanoTime();
+      for (int i = 0; i < iterations; ++i) {
+        for (final byte[] data : encoded) {
+          jp.parseAcquisitionFeedEntryFromStream(new ByteArrayInputStream(data));
+        }
+      }
+      final long streamReadTime = System.nanoTime() - streamReadStart;
+
+      final int count = iterations * entries.size();
+      LOG.debug(
+        "[{}] write: tree {} entries/s, streaming {} entries/s",
+        warm,
+        (count * 1_000_000_000L) / Math.max(1L, treeWriteTime),
+        (count * 1_000_000_000L) / Math.max(1L, streamWriteTime));
+      LOG.debug(
+        "[{}] read: tree {} entries/s, streaming {} entries/s",
+        warm,
+        (count * 1_000_000_000L) / Math.max(1L, treeReadTime),
+        (count * 1_000_000_000L) / Math.max(1L, streamReadTime));
+    }
+  }
 }
@@ -0,0 +1,115 @@
+package org.nypl.simplified.tests.tenprint
+
+import android.graphics.Bitmap
+import org.junit.Test
+import org.junit.jupiter.api.Assertions
+import org.junit.runner.RunWith
+import org.nypl.simplified.tenprint.TenPrintGenerator
+import org.nypl.simplified.tenprint.TenPrintInput
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.slf4j.LoggerFactory
+import java.lang.management.ManagementFactory
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+class TenPrintGeneratorTest {
+
+  private val logger =
+    LoggerFactory.getLogger(TenPrintGeneratorTest::class.java)
+
+  /**
+   * A title that contains every character of the C64 character set, so that every glyph
+   * is drawn.
+   */
+
+  private val everyGlyph =
+    " qQwWeErRtTyYuUiIoOpPaAsSdDfFgGhHjJkKlL:zZxXcCvVbBnNmM1234567890."
+
+  private val titles =
+    listOf(
+      "",
+      "A",
+      "Moby Dick",
+      "The Hitchhiker's Guide to the Galaxy",
+      "Ünïcödé tîtlé wïth nön-C64 chäracters — and punctuation!",
+      this.everyGlyph
+    )
+
+  private fun inputOf(
+    title: String,
+    height: Int,
+    debug: Boolean = false
+  ): TenPrintInput {
+    val builder = TenPrintInput.newBuilder()
+    builder.setTitle(title)
+    builder.setAuthor("An Author")
+    builder.setCoverHeight(height)
+    builder.setDebuggingArtwork(debug)
+    return builder.build()
+  }
+
+  /**
+   * Rendering the same input repeatedly, and on different threads, produces identical
+   * covers; drawing state reused between covers does not leak into later covers.
+   */
+
+  @Test
+  fun testRenderingIsRepeatable() {
+    val generator = TenPrintGenerator.newGenerator()
+    val executor = Executors.newSingleThreadExecutor()
+
+    try {
+      for (height in listOf(160, 800)) {
+        for (title in this.titles) {
+          val input = this.inputOf(title, height)
+          val first = generator.generate(input)
+          generator.generate(this.inputOf(this.everyGlyph, height, debug = true))
+          val second = generator.generate(input)
+          val other = executor.submit<Bitmap> { generator.generate(input) }.get(10L, TimeUnit.SECONDS)
+
+          Assertions.assertEquals(input.coverWidth, first.width)
+          Assertions.assertEquals(input.coverHeight, first.height)
+          Assertions.assertTrue(first.sameAs(second), "Title '$title' at $height renders identically")
+          Assertions.assertTrue(first.sameAs(other), "Title '$title' at $height renders identically on another thread")
+        }
+      }
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  /**
+   * Measure the time and memory allocated per cover at thumbnail and full-cover sizes.
+   */
+
+  @Test
+  fun testRenderBenchmark() {
+    val generator = TenPrintGenerator.newGenerator()
+    val threads = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+    val threadId = Thread.currentThread().id
+
+    for (height in listOf(160, 800)) {
+      val inputs = this.titles.map { title -> this.inputOf(title, height) }
+      repeat(20) { generator.generate(inputs[it % inputs.size]) }
+
+      val iterations = 200
+      val allocatedBefore = threads.getThreadAllocatedBytes(threadId)
+      val timeBefore = System.nanoTime()
+      for (index in 0 until iterations) {
+        generator.generate(inputs[index % inputs.size])
+      }
+      val timeAfter = System.nanoTime()
+      val allocatedAfter = threads.getThreadAllocatedBytes(threadId)
+
+      this.logger.debug(
+        "cover height {}: {} µs/cover, {} bytes allocated/cover",
+        height,
+        TimeUnit.NANOSECONDS.toMicros((timeAfter - timeBefore) / iterations),
+        (allocatedAfter - allocatedBefore) / iterations
+      )
+    }
+  }
+}
@@ -2,8 +2,13 @@ package org.nypl.simplified.threads
 
 import com.google.common.util.concurrent.ListeningScheduledExecutorService
 import com.google.common.util.concurrent.MoreExecutors
+import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
 import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * Functions to create thread pools.
@@ -29,6 +34,37 @@ object NamedThreadPools {
   ): ListeningScheduledExecutorService =
     this.namedThreadPoolOf(count, this.namedThreadPoolFactory(base, priority))
 
+  /**
+   * Create a fixed-size pool of daemon threads named `name-1`, `name-2`, and so on. Threads
+   * that are idle for a few seconds exit, and are created again when work is submitted.
+   *
+   * @param name The base name of the threads
+   * @param threads The maximum number of threads in the pool
+   *
+   * @return An executor service
+   */
+
+  @JvmStatic
+  fun namedDaemonThreadPool(
+    name: String,
+    threads: Int
+  ): ExecutorService {
+    val index = AtomicInteger(0)
+    return ThreadPoolExecutor(
+      threads,
+      threads,
+      5L,
+      TimeUnit.SECONDS,
+      LinkedBlockingQueue()
+    ) { runnable ->
+      val thread = Thread(runnable, "$name-${index.incrementAndGet()}")
+      thread.isDaemon = true
+      thread
+    }.apply {
+      this.allowCoreThreadTimeOut(true)
+    }
+  }
+
   @JvmStatic
   fun namedThreadPoolOf(
     count: Int,
@@ -9,6 +9,8 @@ import io.reactivex.disposables.CompositeDisposable
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.books.api.Book
 import org.nypl.simplified.books.api.BookFormat
+import org.nypl.simplified.books.book_registry.BookDownloadProgress
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookStatusEvent
@@ -34,6 +36,7 @@ class CatalogBookDetailViewModel(
   private val resources: Resources,
   private val profilesController: ProfilesControllerType,
   private val bookRegistry: BookRegistryType,
+  private val downloadProgress: BookDownloadProgressChannelType,
   private val buildConfiguration: BuildConfigurationServiceType,
   private val borrowViewModel: CatalogBorrowViewModel,
   private val parameters: CatalogBookDetailFragmentParameters,
@@ -45,10 +48,12 @@ class CatalogBookDetailViewModel(
 
   private val subscriptions =
     CompositeDisposable(
-      this.bookRegistry.bookEvents()
-        .filter { event -> event.bookId == this.parameters.bookID }
+      this.bookRegistry.bookEventsFor(this.parameters.bookID)
         .observeOn(AndroidSchedulers.mainThread())
-        .subscribe(this::onBookStatusEvent)
+        .subscribe(this::onBookStatusEvent),
+      this.downloadProgress.progressFor(this.parameters.bookID)
+        .observeOn(AndroidSchedulers.mainThread())
+        .subscribe(this::onDownloadProgress)
     )
 
   private val bookWithStatusMutable: MutableLiveData<BookWithStatus> =
@@ -62,6 +67,13 @@ class CatalogBookDetailViewModel(
     this.bookWithStatusMutable.value = bookWithStatus
   }
 
+  private fun onDownloadProgress(sample: BookDownloadProgress) {
+    val current = this.bookWithStatusMutable.value ?: return
+    if (current.status is BookStatus.Downloading) {
+      this.bookWithStatusMutable.value = CatalogDownloadProgress.overlay(current, sample)
+    }
+  }
+
   /*
    * Retrieve the current status of the book, or synthesize a status value based on the
    * OPDS feed entry if the book is not in the registry. The book will only be in the
@@ -69,8 +81,13 @@ class CatalogBookDetailViewModel(
    */
 
   private fun createBookWithStatus(): BookWithStatus {
-    return this.bookRegistry.bookOrNull(this.parameters.bookID)
-      ?: synthesizeBookWithStatus(this.parameters.feedEntry)
+    val bookWithStatus =
+      this.bookRegistry.bookOrNull(this.parameters.bookID)
+        ?: return synthesizeBookWithStatus(this.parameters.feedEntry)
+    return CatalogDownloadProgress.overlay(
+      bookWithStatus,
+      this.downloadProgress.progressNow(this.parameters.bookID)
+    )
   }
 
   private fun synthesizeBookWithStatus(
@@ -4,6 +4,7 @@ import android.app.Application
 import androidx.lifecycle.ViewModel
 import androidx.lifecycle.ViewModelProvider
 import org.librarysimplified.services.api.ServiceDirectoryType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.buildconfig.api.BuildConfigurationServiceType
 import org.nypl.simplified.listeners.api.FragmentListenerType
@@ -30,6 +31,8 @@ class CatalogBookDetailViewModelFactory(
           services.requireService(ProfilesControllerType::class.java)
         val bookRegistry =
           services.requireService(BookRegistryType::class.java)
+        val downloadProgress =
+          services.requireService(BookDownloadProgressChannelType::class.java)
         val configurationService =
           services.requireService(BuildConfigurationServiceType::class.java)
 
@@ -37,6 +40,7 @@ class CatalogBookDetailViewModelFactory(
           this.application.resources,
           profilesController,
           bookRegistry,
+          downloadProgress,
           configurationService,
           this.borrowViewModel,
           parameters,
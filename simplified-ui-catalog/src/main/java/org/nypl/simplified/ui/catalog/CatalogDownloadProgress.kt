@@ -0,0 +1,51 @@
+package org.nypl.simplified.ui.catalog
+
+import org.nypl.simplified.books.book_registry.BookDownloadProgress
+import org.nypl.simplified.books.book_registry.BookStatus
+import org.nypl.simplified.books.book_registry.BookWithStatus
+
+/**
+ * Functions to combine book statuses with samples from the download progress channel.
+ *
+ * The book registry only records that a book is downloading; the byte counts shown in the
+ * catalog come from the most recent progress sample.
+ */
+
+object CatalogDownloadProgress {
+
+  /**
+   * Replace the byte counts of a downloading book with those of the given sample. Books
+   * that are not downloading are returned unchanged.
+   */
+
+  fun overlay(
+    bookWithStatus: BookWithStatus,
+    sample: BookDownloadProgress?
+  ): BookWithStatus {
+    if (sample == null) {
+      return bookWithStatus
+    }
+    val status = bookWithStatus.status
+    if (status !is BookStatus.Downloading) {
+      return bookWithStatus
+    }
+    return BookWithStatus(
+      bookWithStatus.book,
+      BookStatus.Downloading(
+        id = status.id,
+        currentTotalBytes = sample.receivedBytes,
+        expectedTotalBytes = sample.expectedBytes,
+        detailMessage = this.messageOf(sample)
+      )
+    )
+  }
+
+  private fun messageOf(sample: BookDownloadProgress): String {
+    val expected = sample.expectedBytes
+    return if (expected == null) {
+      "Downloading..."
+    } else {
+      "Downloading ${sample.receivedBytes} / $expected (${sample.bytesPerSecond})..."
+    }
+  }
+}
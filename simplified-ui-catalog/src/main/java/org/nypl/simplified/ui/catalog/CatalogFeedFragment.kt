@@ -122,6 +122,8 @@ class CatalogFeedFragment : Fragment(R.layout.feed), AgeGateDialog.BirthYearSele
   private lateinit var feedNavigation: ViewGroup
   private lateinit var feedWithGroups: ViewGroup
   private lateinit var feedWithGroupsAdapter: CatalogFeedWithGroupsAdapter
+  private lateinit var feedWithGroupsLanePool: CatalogLaneViewPool
+  private lateinit var feedWithGroupsStatistics: CatalogFeedFrameStatistics
   private lateinit var feedWithGroupsFacets: LinearLayout
   private lateinit var feedWithGroupsFacetsScroll: ViewGroup
   private lateinit var feedWithGroupsHeader: ViewGroup
@@ -185,14 +187,19 @@ class CatalogFeedFragment : Fragment(R.layout.feed), AgeGateDialog.BirthYearSele
       CatalogFeedWithGroupsDecorator(this.screenInformation.dpToPixels(16).toInt())
     )
 
+    this.feedWithGroupsLanePool =
+      CatalogLaneViewPool(
+        coverLoader = this.bookCovers,
+        onBookSelected = this.viewModel::openBookDetail
+      )
     this.feedWithGroupsAdapter =
       CatalogFeedWithGroupsAdapter(
         groups = this.feedWithGroupsData,
-        coverLoader = this.bookCovers,
-        onFeedSelected = this.viewModel::openFeed,
-        onBookSelected = this.viewModel::openBookDetail
+        lanePool = this.feedWithGroupsLanePool,
+        onFeedSelected = this.viewModel::openFeed
       )
     this.feedWithGroupsList.adapter = this.feedWithGroupsAdapter
+    this.feedWithGroupsStatistics = CatalogFeedFrameStatistics(this.parameters.title)
 
     this.feedWithoutGroupsHeader =
       view.findViewById(R.id.feedWithoutGroupsHeader)
@@ -226,6 +233,7 @@ class CatalogFeedFragment : Fragment(R.layout.feed), AgeGateDialog.BirthYearSele
 
     this.feedWithoutGroupsScrollListener = CatalogScrollListener(this.bookCovers)
     this.feedWithoutGroupsList.addOnScrollListener(this.feedWithoutGroupsScrollListener)
+    this.feedWithGroupsList.addOnScrollListener(this.feedWithGroupsStatistics)
   }
 
   override fun onCreateOptionsMenu(menu: Menu, inflater: MenuInflater) {
@@ -291,10 +299,13 @@ class CatalogFeedFragment : Fragment(R.layout.feed), AgeGateDialog.BirthYearSele
      */
 
     this.feedWithoutGroupsList.removeOnScrollListener(this.feedWithoutGroupsScrollListener)
+    this.feedWithGroupsList.removeOnScrollListener(this.feedWithGroupsStatistics)
+    this.feedWithGroupsStatistics.stop()
   }
 
   override fun onDestroyView() {
     super.onDestroyView()
+    this.feedWithGroupsLanePool.cancelPreInflation()
     this.feedWithoutGroupsList.adapter = null
     this.feedWithGroupsList.adapter = null
   }
@@ -340,6 +351,14 @@ class CatalogFeedFragment : Fragment(R.layout.feed), AgeGateDialog.BirthYearSele
     this.feedWithoutGroups.visibility = View.INVISIBLE
 
     this.configureToolbar()
+
+    /*
+     * Warm the lane cover cells while the feed loads, in case the feed turns out to
+     * have groups.
+     */
+
+    this.feedWithGroupsStatistics.onLoadingStarted()
+    this.feedWithGroupsLanePool.preInflate(this.feedWithGroupsList)
   }
 
   private fun onCatalogFeedNavigation(
@@ -416,6 +435,7 @@ class CatalogFeedFragment : Fragment(R.layout.feed), AgeGateDialog.BirthYearSele
     this.feedWithGroupsData.clear()
     this.feedWithGroupsData.addAll(feedState.feed.feedGroupsInOrder)
     this.feedWithGroupsAdapter.notifyDataSetChanged()
+    this.feedWithGroupsStatistics.onLoaded(this.feedWithGroupsList)
   }
 
   private fun onCatalogFeedLoadFailed(
@@ -0,0 +1,123 @@
+package org.nypl.simplified.ui.catalog
+
+import android.os.SystemClock
+import android.view.Choreographer
+import android.view.View
+import android.view.ViewTreeObserver
+import androidx.recyclerview.widget.RecyclerView
+import org.slf4j.LoggerFactory
+import java.util.concurrent.TimeUnit
+
+/**
+ * Rendering statistics for a feed list.
+ *
+ * The time from the start of loading a feed to the first frame that displays it is logged,
+ * as is the number of frames dropped during each scroll of the list.
+ */
+
+class CatalogFeedFrameStatistics(
+  private val name: String
+) : RecyclerView.OnScrollListener(), Choreographer.FrameCallback {
+
+  private val logger =
+    LoggerFactory.getLogger(CatalogFeedFrameStatistics::class.java)
+
+  private var frameIntervalNanos = 0L
+  private var loadingStarted = 0L
+  private var frameLast = 0L
+  private var frames = 0
+  private var framesDropped = 0
+  private var counting = false
+
+  /**
+   * Indicate that the feed has started loading.
+   */
+
+  fun onLoadingStarted() {
+    this.loadingStarted = SystemClock.uptimeMillis()
+  }
+
+  /**
+   * Indicate that the feed has loaded and that [view] is about to display it.
+   */
+
+  fun onLoaded(view: View) {
+    val started = this.loadingStarted
+    if (started == 0L) {
+      return
+    }
+    this.loadingStarted = 0L
+
+    val observer = view.viewTreeObserver
+    observer.addOnPreDrawListener(object : ViewTreeObserver.OnPreDrawListener {
+      override fun onPreDraw(): Boolean {
+        if (observer.isAlive) {
+          observer.removeOnPreDrawListener(this)
+        }
+        this@CatalogFeedFrameStatistics.logger.debug(
+          "{}: first frame {}ms after loading started",
+          this@CatalogFeedFrameStatistics.name,
+          SystemClock.uptimeMillis() - started
+        )
+        return true
+      }
+    })
+  }
+
+  /**
+   * Stop counting frames, if frames are being counted.
+   */
+
+  fun stop() {
+    if (this.counting) {
+      Choreographer.getInstance().removeFrameCallback(this)
+      this.counting = false
+      this.logFrames()
+    }
+  }
+
+  override fun onScrollStateChanged(recyclerView: RecyclerView, newState: Int) {
+    when (newState) {
+      RecyclerView.SCROLL_STATE_DRAGGING,
+      RecyclerView.SCROLL_STATE_SETTLING -> {
+        if (!this.counting) {
+          val refreshRate = recyclerView.display?.refreshRate ?: 60.0f
+          this.counting = true
+          this.frameIntervalNanos = (TimeUnit.SECONDS.toNanos(1L) / refreshRate).toLong()
+          this.frameLast = 0L
+          this.frames = 0
+          this.framesDropped = 0
+          Choreographer.getInstance().postFrameCallback(this)
+        }
+      }
+      RecyclerView.SCROLL_STATE_IDLE ->
+        this.stop()
+    }
+  }
+
+  override fun doFrame(frameTimeNanos: Long) {
+    if (!this.counting) {
+      return
+    }
+
+    val last = this.frameLast
+    if (last != 0L) {
+      val missed = ((frameTimeNanos - last) / this.frameIntervalNanos) - 1L
+      if (missed > 0L) {
+        this.framesDropped += missed.toInt()
+      }
+    }
+    this.frameLast = frameTimeNanos
+    ++this.frames
+    Choreographer.getInstance().postFrameCallback(this)
+  }
+
+  private fun logFrames() {
+    this.logger.debug(
+      "{}: scrolled {} frames, {} dropped",
+      this.name,
+      this.frames,
+      this.framesDropped
+    )
+  }
+}
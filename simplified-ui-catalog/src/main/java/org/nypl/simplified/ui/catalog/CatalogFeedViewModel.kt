@@ -7,6 +7,7 @@ import androidx.lifecycle.ViewModel
 import androidx.paging.LivePagedListBuilder
 import androidx.paging.PagedList
 import com.google.common.util.concurrent.FluentFuture
+import io.reactivex.Observable
 import io.reactivex.android.schedulers.AndroidSchedulers
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.subjects.PublishSubject
@@ -27,9 +28,14 @@ import org.nypl.simplified.analytics.api.AnalyticsType
 import org.nypl.simplified.books.api.Book
 import org.nypl.simplified.books.api.BookFormat
 import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.book_registry.BookDownloadProgress
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
+import org.nypl.simplified.books.book_registry.BookRegistryReadableType
+import org.nypl.simplified.books.book_registry.BookRegistrySnapshotEvent
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookStatusEvent
+import org.nypl.simplified.books.book_registry.BookStatusEventThrottling
 import org.nypl.simplified.books.book_registry.BookWithStatus
 import org.nypl.simplified.books.controller.api.BooksControllerType
 import org.nypl.simplified.buildconfig.api.BuildConfigurationServiceType
@@ -46,6 +52,8 @@ import org.nypl.simplified.feeds.api.FeedSearch
 import org.nypl.simplified.futures.FluentFutureExtensions.map
 import org.nypl.simplified.futures.FluentFutureExtensions.onAnyError
 import org.nypl.simplified.listeners.api.FragmentListenerType
+import org.nypl.simplified.metrics.api.TraceSpan
+import org.nypl.simplified.metrics.api.Tracing
 import org.nypl.simplified.profiles.api.ProfileDateOfBirth
 import org.nypl.simplified.profiles.api.ProfileDescription
 import org.nypl.simplified.profiles.api.ProfilePreferences
@@ -77,6 +85,7 @@ class CatalogFeedViewModel(
   private val feedLoader: FeedLoaderType,
   private val booksController: BooksControllerType,
   private val bookRegistry: BookRegistryType,
+  private val downloadProgress: BookDownloadProgressChannelType,
   private val buildConfiguration: BuildConfigurationServiceType,
   private val analytics: AnalyticsType,
   private val borrowViewModel: CatalogBorrowViewModel,
@@ -113,7 +122,8 @@ class CatalogFeedViewModel(
 
   private data class LoaderResultWithArguments(
     val arguments: CatalogFeedArguments,
-    val result: FeedLoaderResult
+    val result: FeedLoaderResult,
+    val span: TraceSpan
   )
 
   @GuardedBy("loaderResults")
@@ -125,14 +135,37 @@ class CatalogFeedViewModel(
       this.profilesController.accountEvents()
         .observeOn(AndroidSchedulers.mainThread())
         .subscribe(this::onAccountEvent),
-      this.bookRegistry.bookEvents()
+      this.bookStatusEvents()
         .observeOn(AndroidSchedulers.mainThread())
         .subscribe(this::onBookStatusEvent),
+      this.bookRegistry.bookSnapshots()
+        .observeOn(AndroidSchedulers.mainThread())
+        .subscribe(this::onBookRegistrySnapshotEvent),
+      this.downloadProgress.progress()
+        .observeOn(AndroidSchedulers.mainThread())
+        .subscribe(this::onDownloadProgress),
       this.loaderResults
         .observeOn(AndroidSchedulers.mainThread())
         .subscribe(this::onFeedLoaderResult)
     )
 
+  /*
+   * A feed owned by an account only ever contains books from that account, so only events
+   * for that account's books are of interest.
+   */
+
+  private fun bookStatusEvents(): Observable<BookStatusEvent> {
+    return when (val ownership = this.feedArguments.ownership) {
+      is CatalogFeedOwnership.OwnedByAccount ->
+        this.bookRegistry.bookEventsForAccount(ownership.accountId)
+      CatalogFeedOwnership.CollectedFromAccounts ->
+        BookStatusEventThrottling.throttleProgress(
+          events = this.bookRegistry.bookEvents(),
+          intervalMilliseconds = BookRegistryReadableType.PROGRESS_INTERVAL_MILLISECONDS_DEFAULT
+        )
+    }
+  }
+
   private fun onAccountEvent(event: AccountEvent) {
     when (event) {
       is AccountEventCreation.AccountEventCreationSucceeded,
@@ -232,12 +265,37 @@ class CatalogFeedViewModel(
     }
   }
 
+  private fun onDownloadProgress(sample: BookDownloadProgress) {
+    this.bookModels[sample.bookID]?.let { model ->
+      model.onBookChanged.forEach { callback ->
+        this.notifyBookStatus(model.feedEntry, callback)
+      }
+    }
+  }
+
+  private fun onBookRegistrySnapshotEvent(event: BookRegistrySnapshotEvent) {
+    for (model in this.bookModels.values) {
+      if (event.replaced || event.bookIds.contains(model.feedEntry.bookID)) {
+        model.onBookChanged.forEach { callback ->
+          this.notifyBookStatus(model.feedEntry, callback)
+        }
+      }
+    }
+
+    if (this.state.arguments.isLocallyGenerated) {
+      this.reloadFeed()
+    }
+  }
+
   private fun notifyBookStatus(
     feedEntry: FeedEntry.FeedEntryOPDS,
     callback: (BookWithStatus) -> Unit
   ) {
     val bookWithStatus =
       this.bookRegistry.bookOrNull(feedEntry.bookID)
+        ?.let { book ->
+          CatalogDownloadProgress.overlay(book, this.downloadProgress.progressNow(feedEntry.bookID))
+        }
         ?: this.synthesizeBookWithStatus(feedEntry)
 
     callback(bookWithStatus)
@@ -414,20 +472,31 @@ class CatalogFeedViewModel(
 
     this.stateMutable.value = newState
 
+    /*
+     * The span covers loading the feed and applying the resulting state, and so ends
+     * when the feed is rendered.
+     */
+
+    val span = Tracing.beginAsync("catalogFeed", "catalog")
+
     /*
      * Register a callback that updates the feed status when the future completes.
      */
 
     future.map { feedLoaderResult ->
       synchronized(loaderResults) {
-        val resultWithArguments = LoaderResultWithArguments(arguments, feedLoaderResult)
+        val resultWithArguments = LoaderResultWithArguments(arguments, feedLoaderResult, span)
         this.loaderResults.onNext(resultWithArguments)
       }
     }
   }
 
   private fun onFeedLoaderResult(resultWithArguments: LoaderResultWithArguments) {
-    this.onFeedStatusUpdated(resultWithArguments.result, resultWithArguments.arguments)
+    try {
+      this.onFeedStatusUpdated(resultWithArguments.result, resultWithArguments.arguments)
+    } finally {
+      resultWithArguments.span.close()
+    }
   }
 
   private fun onFeedStatusUpdated(
@@ -5,6 +5,7 @@ import androidx.lifecycle.ViewModel
 import androidx.lifecycle.ViewModelProvider
 import org.librarysimplified.services.api.ServiceDirectoryType
 import org.nypl.simplified.analytics.api.AnalyticsType
+import org.nypl.simplified.books.book_registry.BookDownloadProgressChannelType
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.controller.api.BooksControllerType
 import org.nypl.simplified.buildconfig.api.BuildConfigurationServiceType
@@ -42,6 +43,8 @@ class CatalogFeedViewModelFactory(
           this.services.requireService(ProfilesControllerType::class.java)
         val bookRegistry =
           services.requireService(BookRegistryType::class.java)
+        val downloadProgress =
+          this.services.requireService(BookDownloadProgressChannelType::class.java)
         val buildConfig: BuildConfigurationServiceType =
           this.services.requireService(BuildConfigurationServiceType::class.java)
         val analytics: AnalyticsType =
@@ -53,6 +56,7 @@ class CatalogFeedViewModelFactory(
           feedLoader,
           booksController,
           bookRegistry,
+          downloadProgress,
           buildConfig,
           analytics,
           this.borrowViewModel,
@@ -3,21 +3,19 @@ package org.nypl.simplified.ui.catalog
 import android.view.LayoutInflater
 import android.view.ViewGroup
 import androidx.recyclerview.widget.RecyclerView
-import org.nypl.simplified.books.covers.BookCoverProviderType
-import org.nypl.simplified.feeds.api.FeedEntry
 import org.nypl.simplified.feeds.api.FeedGroup
 import org.slf4j.LoggerFactory
 import java.net.URI
 
 /**
- * An adapter that produces swimlanes for feeds that have groups.
+ * An adapter that produces swimlanes for feeds that have groups. All lanes share the cover
+ * cells held in the given [CatalogLaneViewPool].
  */
 
 class CatalogFeedWithGroupsAdapter(
   private val groups: List<FeedGroup>,
-  private val coverLoader: BookCoverProviderType,
-  private val onFeedSelected: (title: String, uri: URI) -> Unit,
-  private val onBookSelected: (FeedEntry.FeedEntryOPDS) -> Unit
+  private val lanePool: CatalogLaneViewPool,
+  private val onFeedSelected: (title: String, uri: URI) -> Unit
 ) : RecyclerView.Adapter<CatalogFeedWithGroupsLaneViewHolder>() {
 
   private val logger =
@@ -39,9 +37,8 @@ class CatalogFeedWithGroupsAdapter(
 
     return CatalogFeedWithGroupsLaneViewHolder(
       parent = item,
-      coverLoader = this.coverLoader,
-      onFeedSelected = this.onFeedSelected,
-      onBookSelected = this.onBookSelected
+      lanePool = this.lanePool,
+      onFeedSelected = this.onFeedSelected
     )
   }
 
@@ -4,7 +4,6 @@ import android.view.View
 import android.widget.TextView
 import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
-import org.nypl.simplified.books.covers.BookCoverProviderType
 import org.nypl.simplified.feeds.api.FeedEntry
 import org.nypl.simplified.feeds.api.FeedGroup
 import java.net.URI
@@ -14,11 +13,19 @@ import java.net.URI
  */
 class CatalogFeedWithGroupsLaneViewHolder(
   private val parent: View,
-  private val coverLoader: BookCoverProviderType,
-  private val onFeedSelected: (title: String, uri: URI) -> Unit,
-  private val onBookSelected: (FeedEntry.FeedEntryOPDS) -> Unit
+  private val lanePool: CatalogLaneViewPool,
+  private val onFeedSelected: (title: String, uri: URI) -> Unit
 ) : RecyclerView.ViewHolder(parent) {
 
+  companion object {
+
+    /**
+     * The number of covers laid out ahead of time when a lane is about to scroll into view.
+     */
+
+    const val INITIAL_PREFETCH_ITEM_COUNT = 4
+  }
+
   private val title =
     this.parent.findViewById<TextView>(R.id.feedLaneTitle)
   private val scrollView =
@@ -27,9 +34,13 @@ class CatalogFeedWithGroupsLaneViewHolder(
   init {
     scrollView.apply {
       setHasFixedSize(true)
+      setRecycledViewPool(lanePool.pool)
       layoutManager = LinearLayoutManager(
         this.context, LinearLayoutManager.HORIZONTAL, false
-      )
+      ).apply {
+        initialPrefetchItemCount = INITIAL_PREFETCH_ITEM_COUNT
+        recycleChildrenOnDetach = true
+      }
       addItemDecoration(
         SpaceItemDecoration(
           this.resources.getDimensionPixelSize(R.dimen.catalogFeedCoversSpace)
@@ -49,7 +60,7 @@ class CatalogFeedWithGroupsLaneViewHolder(
      */
 
     if (group.groupEntries.isEmpty()) {
-      this.scrollView.adapter = null
+      this.setAdapter(null)
       return
     }
 
@@ -58,12 +69,21 @@ class CatalogFeedWithGroupsLaneViewHolder(
      */
 
     val filtered = group.groupEntries.filterIsInstance<FeedEntry.FeedEntryOPDS>()
-    this.scrollView.adapter = CatalogLaneAdapter(
-      filtered, coverLoader, onBookSelected
-    )
+    this.setAdapter(this.lanePool.createAdapter(filtered))
   }
 
   fun unbind() {
-    this.scrollView.adapter = null
+    this.setAdapter(null)
+  }
+
+  /*
+   * Setting an adapter clears the shared pool whenever no lane has an adapter attached, which
+   * would discard the cells inflated ahead of time by the pool. Every lane adapter uses the
+   * same view type and cells, so adapters are swapped as compatible adapters instead; this
+   * still returns the lane's cells to the pool but never clears it.
+   */
+
+  private fun setAdapter(adapter: CatalogLaneAdapter?) {
+    this.scrollView.swapAdapter(adapter, true)
   }
 }
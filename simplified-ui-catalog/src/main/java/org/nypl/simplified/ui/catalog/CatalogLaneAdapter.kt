@@ -10,6 +10,7 @@ import org.nypl.simplified.feeds.api.FeedEntry
  * This adapter displays a list of feed items in a catalog lane.
  *
  * @see CatalogLaneItemViewHolder
+ * @see CatalogLaneViewPool
  */
 class CatalogLaneAdapter(
   private val items: List<FeedEntry.FeedEntryOPDS>,
@@ -17,11 +18,23 @@ class CatalogLaneAdapter(
   private val onBookSelected: (FeedEntry.FeedEntryOPDS) -> Unit
 ) : RecyclerView.Adapter<CatalogLaneItemViewHolder>() {
 
+  companion object {
+
+    /**
+     * The view type of book cells. Cells are shared between lanes, so every lane adapter
+     * must use the same view type.
+     */
+
+    const val VIEW_TYPE_BOOK = 0
+  }
+
   override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): CatalogLaneItemViewHolder {
     val view = LayoutInflater.from(parent.context).inflate(R.layout.feed_lane_item, parent, false)
     return CatalogLaneItemViewHolder(view, coverLoader, onBookSelected)
   }
 
+  override fun getItemViewType(position: Int) = VIEW_TYPE_BOOK
+
   override fun getItemCount() = items.size
 
   override fun onBindViewHolder(holder: CatalogLaneItemViewHolder, position: Int) {
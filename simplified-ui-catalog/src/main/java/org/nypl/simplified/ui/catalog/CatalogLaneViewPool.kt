@@ -0,0 +1,108 @@
+package org.nypl.simplified.ui.catalog
+
+import android.os.Looper
+import android.os.MessageQueue
+import android.view.ViewGroup
+import androidx.recyclerview.widget.RecyclerView
+import org.nypl.simplified.books.covers.BookCoverProviderType
+import org.nypl.simplified.feeds.api.FeedEntry
+import org.slf4j.LoggerFactory
+
+/**
+ * A view pool shared by every swimlane in a feed with groups.
+ *
+ * Each lane is a horizontal `RecyclerView` that would otherwise keep its own pool of cover
+ * cells, so a feed with many lanes inflates the same cell layout hundreds of times. Sharing one
+ * pool lets a lane that scrolls into view reuse the cells released by lanes that scrolled out.
+ * The pool can also be warmed ahead of time by inflating cells on the UI thread whenever the
+ * thread is idle, which is typically while the feed itself is still loading.
+ */
+
+class CatalogLaneViewPool(
+  private val coverLoader: BookCoverProviderType,
+  private val onBookSelected: (FeedEntry.FeedEntryOPDS) -> Unit
+) {
+
+  companion object {
+
+    /**
+     * The maximum number of cover cells kept in the pool.
+     */
+
+    const val MAXIMUM_POOLED_CELLS = 48
+
+    /**
+     * The number of cover cells inflated ahead of time.
+     */
+
+    const val PRE_INFLATED_CELLS = 24
+  }
+
+  private val logger =
+    LoggerFactory.getLogger(CatalogLaneViewPool::class.java)
+
+  private var preInflation: MessageQueue.IdleHandler? = null
+
+  /**
+   * The pool that lanes should use.
+   */
+
+  val pool: RecyclerView.RecycledViewPool =
+    RecyclerView.RecycledViewPool().apply {
+      this.setMaxRecycledViews(CatalogLaneAdapter.VIEW_TYPE_BOOK, MAXIMUM_POOLED_CELLS)
+    }
+
+  /**
+   * Create an adapter for a lane that displays the given entries. Cells created by the
+   * adapter are interchangeable with those of every other adapter created by this pool.
+   */
+
+  fun createAdapter(
+    items: List<FeedEntry.FeedEntryOPDS>
+  ): CatalogLaneAdapter {
+    return CatalogLaneAdapter(items, this.coverLoader, this.onBookSelected)
+  }
+
+  /**
+   * Start inflating cover cells into the pool, one cell each time the UI thread becomes idle,
+   * until the pool holds [count] cells. Must be called on the UI thread.
+   */
+
+  fun preInflate(
+    parent: ViewGroup,
+    count: Int = PRE_INFLATED_CELLS
+  ) {
+    if (this.preInflation != null) {
+      return
+    }
+
+    val adapter = this.createAdapter(listOf())
+    val handler = MessageQueue.IdleHandler {
+      val pooled = this.pool.getRecycledViewCount(CatalogLaneAdapter.VIEW_TYPE_BOOK)
+      if (pooled >= count) {
+        this.logger.debug("pre-inflated {} cover cells", pooled)
+        this.preInflation = null
+        false
+      } else {
+        this.pool.putRecycledView(
+          adapter.createViewHolder(parent, CatalogLaneAdapter.VIEW_TYPE_BOOK)
+        )
+        true
+      }
+    }
+
+    this.preInflation = handler
+    Looper.myQueue().addIdleHandler(handler)
+  }
+
+  /**
+   * Stop any pre-inflation that is in progress. Must be called on the UI thread.
+   */
+
+  fun cancelPreInflation() {
+    this.preInflation?.let { handler ->
+      Looper.myQueue().removeIdleHandler(handler)
+    }
+    this.preInflation = null
+  }
+}
@@ -5,6 +5,11 @@ import org.nypl.simplified.feeds.api.FeedEntry
 
 /**
  * Functions to compare feed entries for paged adapters.
+ *
+ * Entries are compared by book ID and by the content fingerprint computed when each entry
+ * was created, rather than by a structural comparison of the underlying OPDS entries. The
+ * paged adapter performs diffing on a background thread, and these comparisons keep each
+ * diff cheap regardless of the size of the entries.
  */
 
 object CatalogPagedAdapterDiffing {
@@ -15,14 +20,14 @@ object CatalogPagedAdapterDiffing {
         oldItem: FeedEntry,
         newItem: FeedEntry
       ): Boolean {
-        return oldItem == newItem
+        return oldItem.isSameItemAs(newItem)
       }
 
       override fun areContentsTheSame(
         oldItem: FeedEntry,
         newItem: FeedEntry
       ): Boolean {
-        return oldItem == newItem
+        return oldItem.isSameContentAs(newItem)
       }
     }
 }
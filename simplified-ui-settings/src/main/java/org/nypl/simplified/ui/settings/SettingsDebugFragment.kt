@@ -13,8 +13,11 @@ import android.widget.Toast
 import androidx.appcompat.widget.SwitchCompat
 import androidx.fragment.app.Fragment
 import androidx.fragment.app.viewModels
+import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.adobe.extensions.AdobeDRMExtensions
 import org.nypl.simplified.android.ktx.supportActionBar
+import org.nypl.simplified.books.controller.api.BookStorageUsage
+import org.nypl.simplified.books.controller.api.BookSyncStatistics
 import org.nypl.simplified.listeners.api.FragmentListenerType
 import org.nypl.simplified.listeners.api.fragmentListeners
 import org.nypl.simplified.taskrecorder.api.TaskStep
@@ -47,7 +50,10 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
   private lateinit var showErrorButton: Button
   private lateinit var showOnlySupportedBooks: SwitchCompat
   private lateinit var showTesting: SwitchCompat
+  private lateinit var storageUsageTable: TableLayout
   private lateinit var syncAccountsButton: Button
+  private lateinit var syncStatisticsTable: TableLayout
+  private lateinit var traceStartup: SwitchCompat
   private lateinit var enableOpenEBooksQA: Button
 
   override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
@@ -65,6 +71,10 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
       view.findViewById(R.id.settingsVersionDevSyncAnalytics)
     this.syncAccountsButton =
       view.findViewById(R.id.settingsVersionDevSyncAccounts)
+    this.syncStatisticsTable =
+      view.findViewById(R.id.settingsVersionDevSyncStatistics)
+    this.storageUsageTable =
+      view.findViewById(R.id.settingsVersionDevStorageUsage)
     this.forgetAnnouncementsButton =
       view.findViewById(R.id.settingsVersionDevUnacknowledgeAnnouncements)
     this.drmTable =
@@ -75,6 +85,8 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
       view.findViewById(R.id.settingsVersionDevProductionLibrariesSwitch)
     this.failNextBoot =
       view.findViewById(R.id.settingsVersionDevFailNextBootSwitch)
+    this.traceStartup =
+      view.findViewById(R.id.settingsVersionDevTraceStartupSwitch)
     this.hasSeenLibrarySelection =
       view.findViewById(R.id.settingsVersionDevSeenLibrarySelectionScreen)
     this.cardCreatorFakeLocation =
@@ -95,6 +107,14 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
       this.createDrmSupportRow("AxisNow", this.viewModel.axisNowSupported)
     )
 
+    this.viewModel.syncStatistics.observe(this.viewLifecycleOwner) { statistics ->
+      this.onSyncStatisticsChanged(statistics)
+    }
+
+    this.viewModel.storageUsage.observe(this.viewLifecycleOwner) { usage ->
+      this.onStorageUsageChanged(usage)
+    }
+
     this.viewModel.adeptActivations.observe(this.viewLifecycleOwner) { activations ->
       if (activations.isNotEmpty()) {
         this.onAdobeDRMReceivedActivations(activations)
@@ -105,6 +125,8 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
       this.viewModel.showTestingLibraries
     this.failNextBoot.isChecked =
       this.viewModel.isBootFailureEnabled
+    this.traceStartup.isChecked =
+      this.viewModel.isStartupTracingEnabled
     this.hasSeenLibrarySelection.isChecked =
       this.viewModel.hasSeenLibrarySelection
     this.cardCreatorFakeLocation.isChecked =
@@ -183,6 +205,15 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
       this.viewModel.isBootFailureEnabled = checked
     }
 
+    /*
+     * Configure the "trace startup" switch to enable/disable tracing on the next startup.
+     * Traces are attached to error reports.
+     */
+
+    this.traceStartup.setOnCheckedChangeListener { _, checked ->
+      this.viewModel.isStartupTracingEnabled = checked
+    }
+
     /*
      * Configure the "has seen library selection" switch
      */
@@ -294,6 +325,76 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
     return row
   }
 
+  private fun onSyncStatisticsChanged(statistics: Map<AccountID, BookSyncStatistics>) {
+    this.syncStatisticsTable.removeAllViews()
+
+    for (sync in statistics.values.sortedBy { it.accountID }) {
+      val row =
+        this.layoutInflater.inflate(
+          R.layout.settings_version_table_item, this.syncStatisticsTable, false
+        ) as TableRow
+      val key =
+        row.findViewById<TextView>(R.id.key)
+      val value =
+        row.findViewById<TextView>(R.id.value)
+
+      key.text = this.viewModel.accountTitle(sync.accountID)
+      value.text = buildString {
+        this.append(sync.durationMilliseconds)
+        this.append("ms")
+        if (!sync.providerResolved) {
+          this.append(" (cached provider)")
+        }
+      }
+      value.setTextColor(if (sync.succeeded) Color.GREEN else Color.RED)
+      this.syncStatisticsTable.addView(row)
+    }
+  }
+
+  private fun onStorageUsageChanged(usage: BookStorageUsage) {
+    this.storageUsageTable.removeAllViews()
+
+    for ((accountID, bytes) in usage.accounts.entries.sortedBy { it.key }) {
+      val title = this.viewModel.accountTitle(accountID)
+      this.storageUsageTable.addView(
+        this.createStorageUsageRow(title, bytes, usage.quotas.accountBytes)
+      )
+    }
+    this.storageUsageTable.addView(
+      this.createStorageUsageRow("Total", usage.totalBytes, usage.quotas.totalBytes)
+    )
+
+    val row =
+      this.layoutInflater.inflate(
+        R.layout.settings_version_table_item, this.storageUsageTable, false
+      ) as TableRow
+    row.findViewById<TextView>(R.id.key).text = "Evicted"
+    row.findViewById<TextView>(R.id.value).text =
+      "${usage.evictedBooks} books, ${usage.evictedBytes / 1_048_576L} MiB " +
+        "(${usage.temporaryBytesDeleted / 1_048_576L} MiB temporary)"
+    this.storageUsageTable.addView(row)
+  }
+
+  private fun createStorageUsageRow(
+    title: String,
+    bytes: Long,
+    quotaBytes: Long
+  ): TableRow {
+    val row =
+      this.layoutInflater.inflate(
+        R.layout.settings_version_table_item, this.storageUsageTable, false
+      ) as TableRow
+    val key =
+      row.findViewById<TextView>(R.id.key)
+    val value =
+      row.findViewById<TextView>(R.id.value)
+
+    key.text = title
+    value.text = "${bytes / 1_048_576L} / ${quotaBytes / 1_048_576L} MiB"
+    value.setTextColor(if (bytes <= quotaBytes) Color.GREEN else Color.RED)
+    return row
+  }
+
   private fun onAdobeDRMReceivedActivations(activations: List<AdobeDRMExtensions.Activation>) {
     this.adobeDRMActivationTable.removeAllViews()
 
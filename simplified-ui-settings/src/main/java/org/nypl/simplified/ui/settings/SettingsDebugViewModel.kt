@@ -11,18 +11,22 @@ import org.joda.time.LocalDateTime
 import org.librarysimplified.services.api.Services
 import org.nypl.drm.core.AdobeAdeptExecutorType
 import org.nypl.drm.core.AxisNowServiceType
+import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.accounts.api.AccountProvider
 import org.nypl.simplified.accounts.api.AccountProviderAuthenticationDescription
 import org.nypl.simplified.accounts.registry.api.AccountProviderRegistryType
 import org.nypl.simplified.adobe.extensions.AdobeDRMExtensions
 import org.nypl.simplified.analytics.api.AnalyticsEvent
 import org.nypl.simplified.analytics.api.AnalyticsType
+import org.nypl.simplified.books.controller.api.BookStorageUsage
+import org.nypl.simplified.books.controller.api.BookSyncStatistics
 import org.nypl.simplified.books.controller.api.BooksControllerType
 import org.nypl.simplified.boot.api.BootFailureTesting
 import org.nypl.simplified.buildconfig.api.BuildConfigurationServiceType
 import org.nypl.simplified.cardcreator.CardCreatorDebugging
 import org.nypl.simplified.crashlytics.api.CrashlyticsServiceType
 import org.nypl.simplified.feeds.api.FeedLoaderType
+import org.nypl.simplified.metrics.api.StartupTracing
 import org.nypl.simplified.profiles.api.ProfileEvent
 import org.nypl.simplified.profiles.api.ProfileUpdated
 import org.nypl.simplified.profiles.controller.api.ProfilesControllerType
@@ -146,6 +150,16 @@ class SettingsDebugViewModel(application: Application) : AndroidViewModel(applic
       )
     }
 
+  var isStartupTracingEnabled: Boolean
+    get() =
+      StartupTracing.isEnabled(getApplication())
+    set(value) {
+      StartupTracing.setEnabled(
+        context = getApplication(),
+        enabled = value
+      )
+    }
+
   var showTestingLibraries: Boolean
     get() =
       this.profilesController
@@ -176,6 +190,41 @@ class SettingsDebugViewModel(application: Application) : AndroidViewModel(applic
     )
   }
 
+  private val syncStatisticsMutable: MutableLiveData<Map<AccountID, BookSyncStatistics>> =
+    MutableLiveData(this.booksController.booksSyncStatistics())
+
+  /**
+   * Information about the most recent sync of each account.
+   */
+
+  val syncStatistics: LiveData<Map<AccountID, BookSyncStatistics>>
+    get() = this.syncStatisticsMutable
+
+  private val storageUsageMutable: MutableLiveData<BookStorageUsage> =
+    MutableLiveData(this.booksController.bookStorageUsage())
+
+  /**
+   * The space used by downloaded books in each account.
+   */
+
+  val storageUsage: LiveData<BookStorageUsage>
+    get() = this.storageUsageMutable
+
+  /**
+   * @return A displayable name for the given account
+   */
+
+  fun accountTitle(accountID: AccountID): String {
+    return try {
+      this.profilesController.profileCurrent()
+        .account(accountID)
+        .provider
+        .displayName
+    } catch (e: Exception) {
+      accountID.toString()
+    }
+  }
+
   fun syncAccounts() {
     try {
       this.profilesController.profileCurrent()
@@ -183,6 +232,10 @@ class SettingsDebugViewModel(application: Application) : AndroidViewModel(applic
         .keys
         .forEach { account ->
           this.booksController.booksSync(account)
+            .addListener(
+              { this.syncStatisticsMutable.postValue(this.booksController.booksSyncStatistics()) },
+              MoreExecutors.directExecutor()
+            )
         }
     } catch (e: Exception) {
       this.logger.error("ouch: ", e)
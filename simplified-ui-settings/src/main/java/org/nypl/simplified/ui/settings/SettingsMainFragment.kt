@@ -1,6 +1,7 @@
 package org.nypl.simplified.ui.settings
 
 import android.os.Bundle
+import android.text.format.Formatter
 import android.view.Gravity
 import android.widget.Toast
 import androidx.fragment.app.viewModels
@@ -29,6 +30,7 @@ class SettingsMainFragment : PreferenceFragmentCompat() {
   private lateinit var settingsEULA: Preference
   private lateinit var settingsFaq: Preference
   private lateinit var settingsLicense: Preference
+  private lateinit var settingsStorage: Preference
   private lateinit var settingsVersion: Preference
   private lateinit var settingsVersionCore: Preference
 
@@ -49,6 +51,7 @@ class SettingsMainFragment : PreferenceFragmentCompat() {
     this.settingsEULA = this.findPreference("settingsEULA")!!
     this.settingsFaq = this.findPreference("settingsFaq")!!
     this.settingsLicense = this.findPreference("settingsLicense")!!
+    this.settingsStorage = this.findPreference("settingsStorage")!!
     this.settingsVersion = this.findPreference("settingsVersion")!!
     this.settingsVersionCore = this.findPreference("settingsVersionCore")!!
 
@@ -60,6 +63,7 @@ class SettingsMainFragment : PreferenceFragmentCompat() {
     this.configureEULA(this.settingsEULA)
     this.configureFaq(this.settingsFaq)
     this.configureLicense(this.settingsLicense)
+    this.configureStorage(this.settingsStorage)
     this.configureVersion(this.settingsVersion)
     this.configureVersionCore(this.settingsVersionCore)
   }
@@ -118,6 +122,17 @@ class SettingsMainFragment : PreferenceFragmentCompat() {
     preference.isVisible = this.viewModel.showDebugSettings
   }
 
+  private fun configureStorage(preference: Preference) {
+    preference.setSummaryProvider {
+      val usage = this.viewModel.storageUsage
+      this.getString(
+        R.string.settingsStorageSummary,
+        Formatter.formatShortFileSize(this.requireContext(), usage.totalBytes),
+        Formatter.formatShortFileSize(this.requireContext(), usage.quotas.totalBytes)
+      )
+    }
+  }
+
   private fun configureLicense(preference: Preference) {
     preference.isEnabled = this.viewModel.documents.licenses != null
     preference.onPreferenceClickListener =
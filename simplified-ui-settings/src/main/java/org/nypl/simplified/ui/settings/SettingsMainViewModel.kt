@@ -6,6 +6,8 @@ import androidx.lifecycle.AndroidViewModel
 import org.librarysimplified.documents.DocumentStoreType
 import org.librarysimplified.services.api.ServiceDirectoryType
 import org.librarysimplified.services.api.Services
+import org.nypl.simplified.books.controller.api.BookStorageUsage
+import org.nypl.simplified.books.controller.api.BooksControllerType
 import org.nypl.simplified.buildconfig.api.BuildConfigurationServiceType
 import org.nypl.simplified.profiles.controller.api.ProfilesControllerType
 
@@ -26,6 +28,17 @@ class SettingsMainViewModel(application: Application) : AndroidViewModel(applica
     services
       .requireService(DocumentStoreType::class.java)
 
+  private val booksController =
+    services
+      .requireService(BooksControllerType::class.java)
+
+  /**
+   * The space currently used by downloaded books, and the limit on it.
+   */
+
+  val storageUsage: BookStorageUsage
+    get() = this.booksController.bookStorageUsage()
+
   var showDebugSettings: Boolean
     get() = this.profilesController
       .profileCurrent()
@@ -35,11 +35,22 @@ internal data class MigrationReportEmail(
     private fun reportEmailBody(report: MigrationReport): String {
       val errors = report.events.filterIsInstance<MigrationEvent.MigrationStepError>().size
 
-      return StringBuilder(128)
+      val builder = StringBuilder(128)
         .append("On ${report.timestamp}, a migration of ${report.application} occurred.")
         .append("\n")
         .append("There were $errors errors.")
         .append("\n")
+
+      val throughput = report.throughput
+      if (throughput != null) {
+        builder.append(
+          "${throughput.books} books (${throughput.bytes} bytes) were migrated " +
+            "in ${throughput.durationMilliseconds}ms."
+        )
+        builder.append("\n")
+      }
+
+      return builder
         .append("The attached log files give details of the migration.")
         .append("\n")
         .toString()
@@ -12,10 +12,10 @@ import com.google.common.util.concurrent.MoreExecutors
 import org.librarysimplified.audiobook.api.PlayerAudioBookType
 import org.librarysimplified.audiobook.api.PlayerAudioEngineRequest
 import org.librarysimplified.audiobook.api.PlayerAudioEngines
-import org.librarysimplified.audiobook.api.PlayerDownloadProviderType
 import org.librarysimplified.audiobook.api.PlayerEvent
 import org.librarysimplified.audiobook.api.PlayerEvent.PlayerEventError
 import org.librarysimplified.audiobook.api.PlayerEvent.PlayerEventPlaybackRateChanged
+import org.librarysimplified.audiobook.api.PlayerEvent.PlayerEventWithSpineElement
 import org.librarysimplified.audiobook.api.PlayerEvent.PlayerEventWithSpineElement.PlayerEventChapterCompleted
 import org.librarysimplified.audiobook.api.PlayerEvent.PlayerEventWithSpineElement.PlayerEventChapterWaiting
 import org.librarysimplified.audiobook.api.PlayerEvent.PlayerEventWithSpineElement.PlayerEventPlaybackBuffering
@@ -31,7 +31,6 @@ import org.librarysimplified.audiobook.api.PlayerSpineElementDownloadStatus.Play
 import org.librarysimplified.audiobook.api.PlayerType
 import org.librarysimplified.audiobook.api.PlayerUserAgent
 import org.librarysimplified.audiobook.api.extensions.PlayerExtensionType
-import org.librarysimplified.audiobook.downloads.DownloadProvider
 import org.librarysimplified.audiobook.feedbooks.FeedbooksPlayerExtension
 import org.librarysimplified.audiobook.manifest.api.PlayerManifest
 import org.librarysimplified.audiobook.views.PlayerAccessibilityEvent
@@ -48,6 +47,7 @@ import org.librarysimplified.services.api.Services
 import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
 import org.nypl.simplified.books.audio.AudioBookFeedbooksSecretServiceType
 import org.nypl.simplified.books.audio.AudioBookManifestStrategiesType
+import org.nypl.simplified.books.audio.AudioBookPartDownloadScheduler
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleAudioBook
 import org.nypl.simplified.books.controller.api.BooksControllerType
 import org.nypl.simplified.books.covers.BookCoverProviderType
@@ -64,6 +64,7 @@ import org.slf4j.LoggerFactory
 import rx.Subscription
 import java.io.IOException
 import java.util.ServiceLoader
+import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
@@ -113,12 +114,13 @@ class AudioBookPlayerActivity :
   private lateinit var bookTitle: String
   private lateinit var covers: BookCoverProviderType
   private lateinit var downloadExecutor: ListeningExecutorService
-  private lateinit var downloadProvider: PlayerDownloadProviderType
   private lateinit var formatHandle: BookDatabaseEntryFormatHandleAudioBook
   private lateinit var http: LSHTTPClientType
   private lateinit var loadingFragment: AudioBookLoadingFragment
   private lateinit var networkConnectivity: NetworkConnectivityType
   private lateinit var parameters: AudioBookPlayerParameters
+  private lateinit var partDownloadExecutor: ExecutorService
+  private lateinit var partDownloads: AudioBookPartDownloadScheduler
   private lateinit var player: PlayerType
   private lateinit var playerFragment: PlayerFragment
   private lateinit var playerScheduledExecutor: ScheduledExecutorService
@@ -129,6 +131,7 @@ class AudioBookPlayerActivity :
   private lateinit var strategies: AudioBookManifestStrategiesType
   private lateinit var uiThread: UIThreadServiceType
   private var playerInitialized: Boolean = false
+  private var bookOpen: Boolean = false
   private val reloadingManifest = AtomicBoolean(false)
 
   @Volatile
@@ -175,6 +178,13 @@ class AudioBookPlayerActivity :
     this.strategies =
       services.requireService(AudioBookManifestStrategiesType::class.java)
 
+    /*
+     * The book counts as open, and none of its parts are evicted, until onDestroy.
+     */
+
+    this.books.bookOpened(this.parameters.accountID, this.parameters.bookID)
+    this.bookOpen = true
+
     /*
      * Open the database format handle.
      */
@@ -207,8 +217,22 @@ class AudioBookPlayerActivity :
       MoreExecutors.listeningDecorator(
         NamedThreadPools.namedThreadPool(1, "audiobook-player", 19)
       )
-    this.downloadProvider =
-      DownloadProvider.create(this.downloadExecutor)
+
+    /*
+     * Create a scheduler that downloads book parts in parallel, prioritizing the parts
+     * around the playhead.
+     */
+
+    this.partDownloadExecutor =
+      NamedThreadPools.namedThreadPool(
+        this.parameters.partDownloadParallelism, "audiobook-parts", 19
+      )
+    this.partDownloads =
+      AudioBookPartDownloadScheduler(
+        http = this.http,
+        executor = this.partDownloadExecutor,
+        parallelism = this.parameters.partDownloadParallelism
+      )
 
     /*
      * Create a sleep timer.
@@ -257,6 +281,11 @@ class AudioBookPlayerActivity :
 
     this.destroying = true
 
+    if (this.bookOpen) {
+      this.books.bookClosed(this.parameters.accountID, this.parameters.bookID)
+      this.bookOpen = false
+    }
+
     /*
      * Cancel downloads, shut down the player, and close the book.
      */
@@ -281,6 +310,9 @@ class AudioBookPlayerActivity :
       }
     }
 
+    this.log.debug("part downloads: {}", this.partDownloads.statistics())
+    this.partDownloads.close()
+    this.partDownloadExecutor.shutdown()
     this.downloadExecutor.shutdown()
     this.playerScheduledExecutor.shutdown()
   }
@@ -328,7 +360,7 @@ class AudioBookPlayerActivity :
       PlayerAudioEngineRequest(
         manifest = manifest,
         filter = { true },
-        downloadProvider = DownloadProvider.create(this.downloadExecutor),
+        downloadProvider = this.partDownloads,
         userAgent = PlayerUserAgent(this.parameters.userAgent)
       )
     )
@@ -391,6 +423,7 @@ class AudioBookPlayerActivity :
 
     this.playerInitialized = true
 
+    this.partDownloads.setPartOrder(manifest.readingOrder.mapNotNull { link -> link.hrefURI })
     this.restoreSavedPlayerPosition()
     this.startAllPartsDownloading()
 
@@ -525,6 +558,10 @@ class AudioBookPlayerActivity :
   }
 
   private fun onPlayerEvent(event: PlayerEvent) {
+    if (event is PlayerEventWithSpineElement) {
+      this.partDownloads.setPlayheadPart(event.spineElement.index)
+    }
+
     return when (event) {
       is PlayerEventPlaybackStarted ->
         this.playerLastPosition =
@@ -62,7 +62,13 @@ data class AudioBookPlayerParameters(
    * The OPDS entry for the book.
    */
 
-  val opdsEntry: OPDSAcquisitionFeedEntry
+  val opdsEntry: OPDSAcquisitionFeedEntry,
+
+  /**
+   * The maximum number of book parts that will be downloaded in parallel.
+   */
+
+  val partDownloadParallelism: Int = 3
 ) : Serializable {
 
   /**
@@ -4,6 +4,7 @@ import android.app.Activity
 import android.content.Intent
 import android.content.pm.ApplicationInfo
 import android.os.Bundle
+import android.os.SystemClock
 import android.webkit.WebView
 import androidx.appcompat.app.AlertDialog
 import androidx.appcompat.app.AppCompatActivity
@@ -50,6 +51,9 @@ import org.nypl.simplified.accounts.database.api.AccountType
 import org.nypl.simplified.analytics.api.AnalyticsEvent
 import org.nypl.simplified.analytics.api.AnalyticsType
 import org.nypl.simplified.books.api.BookDRMInformation
+import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
+import org.nypl.simplified.books.book_database.api.EPUBIndex
+import org.nypl.simplified.books.controller.api.BooksControllerType
 import org.nypl.simplified.profiles.controller.api.ProfilesControllerType
 import org.nypl.simplified.reader.bookmarks.api.ReaderBookmarkServiceType
 import org.nypl.simplified.ui.thread.api.UIThreadServiceType
@@ -105,6 +109,8 @@ class Reader2Activity : AppCompatActivity(R.layout.reader2) {
     services.requireService(AnalyticsType::class.java)
   private val bookmarkService =
     services.requireService(ReaderBookmarkServiceType::class.java)
+  private val booksController =
+    services.optionalService(BooksControllerType::class.java)
   private val profilesController =
     services.requireService(ProfilesControllerType::class.java)
   private val uiThread =
@@ -120,8 +126,13 @@ class Reader2Activity : AppCompatActivity(R.layout.reader2) {
   private var controller: SR2ControllerType? = null
   private var controllerSubscription: Disposable? = null
   private var viewSubscription: Disposable? = null
+  private var parser: Reader2IndexedParser? = null
+  private var timeCreated = 0L
+  private var bookOpen = false
+  private var firstPageShown = false
 
   override fun onCreate(savedInstanceState: Bundle?) {
+    this.timeCreated = SystemClock.elapsedRealtime()
     this.logger.debug("loaded {} content protection providers", this.contentProtectionProviders.size)
     this.contentProtectionProviders.forEachIndexed { index, provider ->
       this.logger.debug("[{}] available provider {}", index, provider.javaClass.canonicalName)
@@ -145,6 +156,14 @@ class Reader2Activity : AppCompatActivity(R.layout.reader2) {
       return
     }
 
+    /*
+     * Record that the book is open, so that its content is kept until it is closed in
+     * onDestroy.
+     */
+
+    this.booksController?.bookOpened(this.parameters.accountId, this.parameters.bookId)
+    this.bookOpen = true
+
     val readerParameters =
       this.computeReaderParameters()
 
@@ -191,6 +210,17 @@ class Reader2Activity : AppCompatActivity(R.layout.reader2) {
       this.readerModel.viewEvents.subscribe(this::onViewEvent)
   }
 
+  override fun onPause() {
+    super.onPause()
+
+    /*
+     * Reader preference changes are written to disk lazily; make sure they reach the disk
+     * before the application is potentially killed.
+     */
+
+    this.profilesController.profileFlushPendingWrites()
+  }
+
   override fun onStop() {
     super.onStop()
     this.controllerSubscription?.dispose()
@@ -216,6 +246,15 @@ class Reader2Activity : AppCompatActivity(R.layout.reader2) {
     }
   }
 
+  override fun onDestroy() {
+    super.onDestroy()
+
+    if (this.bookOpen) {
+      this.booksController?.bookClosed(this.parameters.accountId, this.parameters.bookId)
+      this.bookOpen = false
+    }
+  }
+
   private fun computeReaderParameters(): SR2ReaderParameters {
 
     /*
@@ -228,10 +267,17 @@ class Reader2Activity : AppCompatActivity(R.layout.reader2) {
         provider.create(this)
       }
 
+    val parser =
+      Reader2IndexedParser(
+        delegate = EpubParser(),
+        index = this::loadIndex
+      )
+    this.parser = parser
+
     val streamer =
       Streamer(
         context = this,
-        parsers = listOf(EpubParser()),
+        parsers = listOf(parser),
         contentProtections = contentProtections,
         ignoreDefaultParsers = true
       )
@@ -278,6 +324,18 @@ class Reader2Activity : AppCompatActivity(R.layout.reader2) {
     )
   }
 
+  /**
+   * Load the index that the book database built for the book. This is called on the
+   * streamer's background thread.
+   */
+
+  private fun loadIndex(): EPUBIndex? {
+    return this.account.bookDatabase
+      .entry(this.parameters.bookId)
+      .findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)
+      ?.index()
+  }
+
   /**
    * Handle incoming messages from the view fragments.
    */
@@ -385,8 +443,10 @@ class Reader2Activity : AppCompatActivity(R.layout.reader2) {
         Unit
       }
 
+      is SR2Event.SR2ReadingPositionChanged ->
+        this.onReadingPositionChanged()
+
       is SR2Event.SR2OnCenterTapped,
-      is SR2Event.SR2ReadingPositionChanged,
       SR2BookmarksLoaded,
       is SR2ChapterNonexistent,
       is SR2WebViewInaccessible,
@@ -400,6 +460,21 @@ class Reader2Activity : AppCompatActivity(R.layout.reader2) {
     }
   }
 
+  /**
+   * Log the time taken to show the first page of the book after the activity was created.
+   */
+
+  private fun onReadingPositionChanged() {
+    if (!this.firstPageShown) {
+      this.firstPageShown = true
+      this.logger.debug(
+        "time to first page: {}ms (indexed: {})",
+        SystemClock.elapsedRealtime() - this.timeCreated,
+        this.parser?.indexUsed
+      )
+    }
+  }
+
   /**
    * Close the table of contents.
    */
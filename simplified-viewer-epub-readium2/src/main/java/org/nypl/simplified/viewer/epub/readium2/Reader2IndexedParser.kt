@@ -0,0 +1,105 @@
+package org.nypl.simplified.viewer.epub.readium2
+
+import org.nypl.simplified.books.book_database.api.EPUBIndex
+import org.readium.r2.shared.fetcher.Fetcher
+import org.readium.r2.shared.publication.Link
+import org.readium.r2.shared.publication.Locator
+import org.readium.r2.shared.publication.Publication
+import org.readium.r2.shared.publication.asset.PublicationAsset
+import org.readium.r2.shared.publication.services.PositionsService
+import org.readium.r2.shared.publication.services.positionsServiceFactory
+import org.readium.r2.shared.util.logging.WarningLogger
+import org.readium.r2.streamer.parser.PublicationParser
+import org.slf4j.LoggerFactory
+
+/**
+ * A publication parser that delegates to an EPUB parser, and then replaces the positions
+ * service of the resulting publication with one built from the book's [EPUBIndex].
+ *
+ * Readium otherwise computes the positions of a publication by visiting every resource in
+ * the reading order, which for large or protected books can take several seconds. The index
+ * is only used if its reading order matches the one the delegate parsed.
+ */
+
+class Reader2IndexedParser(
+  private val delegate: PublicationParser,
+  private val index: () -> EPUBIndex?
+) : PublicationParser {
+
+  private val logger =
+    LoggerFactory.getLogger(Reader2IndexedParser::class.java)
+
+  /**
+   * `true` if the most recently parsed publication used the index.
+   */
+
+  @Volatile
+  var indexUsed: Boolean = false
+    private set
+
+  override suspend fun parse(
+    asset: PublicationAsset,
+    fetcher: Fetcher,
+    warnings: WarningLogger?
+  ): Publication.Builder? {
+    this.indexUsed = false
+    val builder =
+      this.delegate.parse(asset, fetcher, warnings) ?: return null
+
+    val index = try {
+      this.index.invoke()
+    } catch (e: Exception) {
+      this.logger.error("could not load the book index: ", e)
+      null
+    } ?: return builder
+
+    val readingOrder = builder.manifest.readingOrder
+    val parsedHrefs = readingOrder.map { link -> link.href.removePrefix("/") }
+    val indexedHrefs = index.readingOrder.map { item -> item.href }
+    if (parsedHrefs != indexedHrefs) {
+      this.logger.warn("the book index does not match the publication; ignoring it")
+      return builder
+    }
+
+    builder.servicesBuilder.positionsServiceFactory = {
+      IndexedPositionsService(readingOrder, index)
+    }
+    this.indexUsed = true
+    return builder
+  }
+
+  /**
+   * A positions service that produces the same positions as Readium's EPUB positions service,
+   * using the archive entry lengths recorded in the index.
+   */
+
+  private class IndexedPositionsService(
+    private val readingOrder: List<Link>,
+    private val index: EPUBIndex
+  ) : PositionsService {
+
+    private val positions: List<List<Locator>> by lazy {
+      val total = this.index.readingOrder.sumOf { item -> item.positions }
+      var position = 0
+      this.readingOrder.mapIndexed { linkIndex, link ->
+        val count = this.index.readingOrder[linkIndex].positions
+        (0 until count).map { offset ->
+          ++position
+          Locator(
+            href = link.href,
+            type = link.type ?: this.index.readingOrder[linkIndex].mediaType,
+            title = link.title,
+            locations = Locator.Locations(
+              progression = offset.toDouble() / count.toDouble(),
+              position = position,
+              totalProgression = (position - 1).toDouble() / total.toDouble()
+            )
+          )
+        }
+      }
+    }
+
+    override suspend fun positionsByReadingOrder(): List<List<Locator>> =
+      this.positions
+  }
+}
@@ -16,6 +16,7 @@ import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandlePDF
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryType
 import org.nypl.simplified.books.book_database.api.BookDatabaseType
+import org.nypl.simplified.books.controller.api.BooksControllerType
 import org.nypl.simplified.profiles.api.ProfileReadableType
 import org.nypl.simplified.profiles.controller.api.ProfilesControllerType
 import org.slf4j.Logger
@@ -60,6 +61,7 @@ class PdfReaderActivity :
   private lateinit var books: BookDatabaseType
   private lateinit var entry: BookDatabaseEntryType
   private lateinit var handle: BookDatabaseEntryFormatHandlePDF
+  private var booksController: BooksControllerType? = null
 
   // vars for the activity to pass back to the reader or table of contents fragment
   private var documentPageIndex: Int = 0
@@ -79,6 +81,14 @@ class PdfReaderActivity :
     val services =
       Services.serviceDirectory()
 
+    /*
+     * The document must not be evicted while it is on screen.
+     */
+
+    this.booksController =
+      services.optionalService(BooksControllerType::class.java)
+    this.booksController?.bookOpened(this.accountId, this.id)
+
     this.currentProfile =
       services.requireService(ProfilesControllerType::class.java).profileCurrent()
     this.account = currentProfile.account(accountId)
@@ -106,6 +116,12 @@ class PdfReaderActivity :
     }
   }
 
+  override fun onDestroy() {
+    super.onDestroy()
+    this.booksController?.bookClosed(this.accountId, this.id)
+    this.booksController = null
+  }
+
   override fun onSaveInstanceState(outState: Bundle) {
     log.debug("onSaveInstanceState")
     outState.putParcelableArrayList(TABLE_OF_CONTENTS, tableOfContentsList)